@@ -0,0 +1,343 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package artisynth.core.femmodels;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import maspack.concurrency.ParallelLoopManager;
+import maspack.geometry.MeshBase;
+import maspack.geometry.Vertex3d;
+import maspack.matrix.Point3d;
+import maspack.matrix.Vector3d;
+import artisynth.core.mechmodels.Frame;
+import artisynth.core.mechmodels.Particle;
+import artisynth.core.mechmodels.PointAttachment;
+import artisynth.core.mechmodels.PointParticleAttachment;
+
+/**
+ * Compiled form of the vertex attachments of a FemMeshComp. The master
+ * nodes and weights of each vertex are stored in compressed row form, using
+ * <code>int[]</code> node indices and <code>double[]</code> weights, so that
+ * all vertex positions can be updated in a single loop that reads node
+ * positions from a packed array. A transposed (node to vertex) form is also
+ * kept so that vertex forces can be distributed to the nodes in parallel,
+ * with each node accumulating its own force.
+ *
+ * <p>Positions and forces are accumulated in the same order as in {@link
+ * PointFem3dAttachment} and {@link PointParticleAttachment}, so the results
+ * are identical. The table reflects the attachments at the time it was
+ * created and should be discarded whenever they change.
+ */
+class FemMeshAttachmentTable {
+
+   // minimum number of vertices per thread for a parallel update
+   static final int MIN_VERTICES_PER_THREAD = 2000;
+
+   MeshBase myMesh;
+   int myNumVertices;
+   Vertex3d[] myVertices;    // null for vertices with no attachment
+   int[] myOffsets;          // offsets into node indices and weights
+   int[] myNodeIdxs;
+   double[] myWeights;
+   boolean[] myFemAttached;  // true if attached using PointFem3dAttachment
+
+   Particle[] myNodes;
+   double[] myNodePos;
+
+   // transpose: entries for each node, in increasing vertex order
+   int[] myNodeOffsets;
+   int[] myNodeVertices;
+   double[] myNodeWeights;
+
+   // frame for frame-based FEMs, if any
+   Frame myFrame;
+
+   int myNumThreads = 1;
+   ParallelLoopManager myManager;
+
+   private FemMeshAttachmentTable() {
+   }
+
+   /**
+    * Creates a table from a list of vertex attachments. Returns
+    * <code>null</code> if any of the attachments are not instances of
+    * PointFem3dAttachment or PointParticleAttachment, or refer to nodes of
+    * more than one frame-based FEM.
+    */
+   static FemMeshAttachmentTable create (
+      MeshBase mesh, ArrayList<PointAttachment> attachments) {
+      if (mesh == null || attachments.size() > mesh.numVertices()) {
+         return null;
+      }
+      FemMeshAttachmentTable table = new FemMeshAttachmentTable();
+      return table.build (mesh, attachments) ? table : null;
+   }
+
+   private boolean build (
+      MeshBase mesh, ArrayList<PointAttachment> attachments) {
+
+      int numv = attachments.size();
+      int nume = 0;
+      for (int i=0; i<numv; i++) {
+         PointAttachment pa = attachments.get(i);
+         if (pa == null) {
+            continue;
+         }
+         Class<?> type = pa.getClass();
+         if (type == PointFem3dAttachment.class) {
+            FemNode[] nodes = ((PointFem3dAttachment)pa).getNodes();
+            if (nodes != null) {
+               nume += nodes.length;
+            }
+         }
+         else if (type == PointParticleAttachment.class) {
+            nume++;
+         }
+         else {
+            return false;
+         }
+      }
+      myMesh = mesh;
+      myNumVertices = numv;
+      myVertices = new Vertex3d[numv];
+      myOffsets = new int[numv+1];
+      myNodeIdxs = new int[nume];
+      myWeights = new double[nume];
+      myFemAttached = new boolean[numv];
+
+      IdentityHashMap<Particle,Integer> nodeMap =
+         new IdentityHashMap<Particle,Integer>();
+      ArrayList<Particle> nodeList = new ArrayList<Particle>();
+      int k = 0;
+      for (int i=0; i<numv; i++) {
+         myOffsets[i] = k;
+         PointAttachment pa = attachments.get(i);
+         if (pa instanceof PointFem3dAttachment) {
+            PointFem3dAttachment pfa = (PointFem3dAttachment)pa;
+            FemNode[] nodes = pfa.getNodes();
+            if (nodes == null) {
+               // getCurrentPos() does nothing in this case
+               continue;
+            }
+            double[] coords = pfa.getCoordinates().getBuffer();
+            for (int j=0; j<nodes.length; j++) {
+               Frame frame = nodes[j].getPointFrame();
+               if (frame != null) {
+                  if (myFrame == null) {
+                     myFrame = frame;
+                  }
+                  else if (myFrame != frame) {
+                     return false;
+                  }
+               }
+               myNodeIdxs[k] = getNodeIndex (nodeMap, nodeList, nodes[j]);
+               myWeights[k] = coords[j];
+               k++;
+            }
+            myFemAttached[i] = true;
+         }
+         else if (pa instanceof PointParticleAttachment) {
+            Particle p = ((PointParticleAttachment)pa).getParticle();
+            myNodeIdxs[k] = getNodeIndex (nodeMap, nodeList, p);
+            myWeights[k] = 1;
+            k++;
+         }
+         else {
+            continue;
+         }
+         myVertices[i] = mesh.getVertex(i);
+      }
+      myOffsets[numv] = k;
+      myNodes = nodeList.toArray (new Particle[0]);
+      myNodePos = new double[3*myNodes.length];
+      buildTranspose();
+      return true;
+   }
+
+   private int getNodeIndex (
+      IdentityHashMap<Particle,Integer> nodeMap,
+      ArrayList<Particle> nodeList, Particle node) {
+      Integer idx = nodeMap.get (node);
+      if (idx == null) {
+         idx = nodeList.size();
+         nodeMap.put (node, idx);
+         nodeList.add (node);
+      }
+      return idx;
+   }
+
+   private void buildTranspose() {
+      int numn = myNodes.length;
+      int nume = myNodeIdxs.length;
+      myNodeOffsets = new int[numn+1];
+      for (int k=0; k<nume; k++) {
+         myNodeOffsets[myNodeIdxs[k]+1]++;
+      }
+      for (int n=0; n<numn; n++) {
+         myNodeOffsets[n+1] += myNodeOffsets[n];
+      }
+      myNodeVertices = new int[nume];
+      myNodeWeights = new double[nume];
+      int[] fill = new int[numn];
+      for (int i=0; i<myNumVertices; i++) {
+         for (int k=myOffsets[i]; k<myOffsets[i+1]; k++) {
+            int n = myNodeIdxs[k];
+            int e = myNodeOffsets[n] + fill[n]++;
+            myNodeVertices[e] = i;
+            myNodeWeights[e] = myWeights[k];
+         }
+      }
+   }
+
+   /**
+    * Returns <code>true</code> if this table is consistent with a mesh and
+    * its current number of attachments.
+    */
+   boolean isValid (MeshBase mesh, int numAttachments) {
+      return (mesh == myMesh &&
+              numAttachments == myNumVertices &&
+              mesh.numVertices() >= myNumVertices);
+   }
+
+   void setNumThreads (int num) {
+      num = Math.max (1, num);
+      if (num != myNumThreads) {
+         myNumThreads = num;
+         if (myManager != null) {
+            myManager.setNumThreads (num);
+         }
+      }
+   }
+
+   void dispose() {
+      if (myManager != null) {
+         myManager.shutdown();
+         myManager = null;
+      }
+   }
+
+   private int numThreadsFor (int size) {
+      return Math.min (myNumThreads, size/MIN_VERTICES_PER_THREAD);
+   }
+
+   private ParallelLoopManager getManager() {
+      if (myManager == null) {
+         myManager = new ParallelLoopManager ("femMeshUpdate", myNumThreads);
+      }
+      return myManager;
+   }
+
+   /**
+    * Updates the positions of all vertices that have attachments.
+    */
+   void updateVertexPositions() {
+      for (int n=0; n<myNodes.length; n++) {
+         Point3d pos = myNodes[n].getPosition();
+         myNodePos[3*n  ] = pos.x;
+         myNodePos[3*n+1] = pos.y;
+         myNodePos[3*n+2] = pos.z;
+      }
+      if (numThreadsFor (myNumVertices) <= 1) {
+         updateVertices (new Point3d(), 0, myNumVertices);
+      }
+      else {
+         getManager().execute (
+            myNumVertices, new ParallelLoopManager.RangeTask() {
+               public void run (int tidx, int start, int end) {
+                  updateVertices (new Point3d(), start, end);
+               }
+            });
+      }
+   }
+
+   private void updateVertices (Point3d pos, int start, int end) {
+      double[] npos = myNodePos;
+      for (int i=start; i<end; i++) {
+         Vertex3d vtx = myVertices[i];
+         if (vtx == null) {
+            continue;
+         }
+         double px = 0;
+         double py = 0;
+         double pz = 0;
+         if (myFemAttached[i]) {
+            for (int k=myOffsets[i]; k<myOffsets[i+1]; k++) {
+               double w = myWeights[k];
+               int b = 3*myNodeIdxs[k];
+               px = w*npos[b  ] + px;
+               py = w*npos[b+1] + py;
+               pz = w*npos[b+2] + pz;
+            }
+         }
+         else {
+            int b = 3*myNodeIdxs[myOffsets[i]];
+            px = npos[b  ];
+            py = npos[b+1];
+            pz = npos[b+2];
+         }
+         pos.set (px, py, pz);
+         vtx.setPosition (pos);
+      }
+   }
+
+   /**
+    * Distributes a set of vertex forces to the master nodes, and to the
+    * frame of a frame-based FEM, if present.
+    *
+    * @param forces vertex forces, three values per vertex
+    */
+   void distributeVertexForces (final double[] forces) {
+      if (numThreadsFor (myNodeIdxs.length) <= 1) {
+         distributeToNodes (forces, 0, myNodes.length);
+      }
+      else {
+         getManager().execute (
+            myNodes.length, new ParallelLoopManager.RangeTask() {
+               public void run (int tidx, int start, int end) {
+                  distributeToNodes (forces, start, end);
+               }
+            });
+      }
+      if (myFrame != null) {
+         Point3d ploc = new Point3d();
+         Vector3d f = new Vector3d();
+         for (int i=0; i<myNumVertices; i++) {
+            if (myFemAttached[i]) {
+               ploc.inverseTransform (
+                  myFrame.getPose(), myVertices[i].getPosition());
+               f.set (forces[3*i], forces[3*i+1], forces[3*i+2]);
+               myFrame.addPointForce (ploc, f);
+            }
+         }
+      }
+   }
+
+   private void distributeToNodes (double[] forces, int start, int end) {
+      for (int n=start; n<end; n++) {
+         Vector3d nf = myNodes[n].getForce();
+         double fx = nf.x;
+         double fy = nf.y;
+         double fz = nf.z;
+         for (int e=myNodeOffsets[n]; e<myNodeOffsets[n+1]; e++) {
+            double w = myNodeWeights[e];
+            int b = 3*myNodeVertices[e];
+            if (myFemAttached[myNodeVertices[e]]) {
+               fx = w*forces[b  ] + fx;
+               fy = w*forces[b+1] + fy;
+               fz = w*forces[b+2] + fz;
+            }
+            else {
+               fx += forces[b  ];
+               fy += forces[b+1];
+               fz += forces[b+2];
+            }
+         }
+         nf.set (fx, fy, fz);
+      }
+   }
+}
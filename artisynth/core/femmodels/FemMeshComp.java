@@ -30,6 +30,7 @@ import artisynth.core.mechmodels.ContactMaster;
 import artisynth.core.mechmodels.ContactPoint;
 import artisynth.core.mechmodels.DynamicAttachment;
 import artisynth.core.mechmodels.DynamicComponent;
+import artisynth.core.mechmodels.Frame;
 import artisynth.core.mechmodels.Particle;
 import artisynth.core.mechmodels.Point;
 import artisynth.core.mechmodels.PointAttachable;
@@ -97,6 +98,14 @@ implements CollidableBody, PointAttachable {
 
    private float[] colorArray = new float[3];
 
+   // compiled form of the vertex attachments, created on demand
+   protected static final boolean DEFAULT_COMPILED_ATTACHMENTS = true;
+   protected boolean myCompiledAttachmentsP = DEFAULT_COMPILED_ATTACHMENTS;
+   protected static final int DEFAULT_NUM_ATTACHMENT_THREADS = 1;
+   protected int myNumAttachmentThreads = DEFAULT_NUM_ATTACHMENT_THREADS;
+   private FemMeshAttachmentTable myAttachmentTable;
+   private boolean myAttachmentTableFailed = false;
+
    public static PropertyList myProps =
       new PropertyList (FemMeshComp.class, FemMeshBase.class);
 
@@ -104,6 +113,14 @@ implements CollidableBody, PointAttachable {
       myProps.add (
          "collidable", 
          "sets the collidability of the mesh", DEFAULT_COLLIDABILITY);
+      myProps.add (
+         "compiledAttachments", 
+         "update vertex positions using a compiled attachment table",
+         DEFAULT_COMPILED_ATTACHMENTS);
+      myProps.add (
+         "numAttachmentThreads", 
+         "number of threads used to update vertex positions",
+         DEFAULT_NUM_ATTACHMENT_THREADS, "[1,inf)");
    }
 
    public PropertyList getAllPropertyInfo() {
@@ -195,6 +212,168 @@ implements CollidableBody, PointAttachable {
       return myVertexAttachments.get (idx);
    }
 
+   /**
+    * Queries whether vertex positions are updated using a compiled table of
+    * the vertex attachments.
+    *
+    * @return <code>true</code> if compiled attachments are enabled
+    */
+   public boolean getCompiledAttachments() {
+      return myCompiledAttachmentsP;
+   }
+
+   /**
+    * Sets whether vertex positions are updated using a compiled table of the
+    * vertex attachments, in which the master nodes and weights are stored in
+    * packed arrays. This is faster for large embedded meshes, and gives the
+    * same positions as updating each attachment separately. The table is
+    * only used if all the attachments are either PointFem3dAttachments or
+    * PointParticleAttachments.
+    *
+    * @param enable if <code>true</code>, enables compiled attachments
+    */
+   public void setCompiledAttachments (boolean enable) {
+      if (enable != myCompiledAttachmentsP) {
+         myCompiledAttachmentsP = enable;
+         invalidateAttachmentTable();
+      }
+   }
+
+   /**
+    * Returns the number of threads used to update vertex positions
+    * and distribute vertex forces when compiled attachments are enabled.
+    *
+    * @return number of attachment threads
+    */
+   public int getNumAttachmentThreads() {
+      return myNumAttachmentThreads;
+   }
+
+   /**
+    * Sets the number of threads used to update vertex positions and
+    * distribute vertex forces when compiled attachments are enabled.
+    * Multiple threads are only used for meshes with several thousand or
+    * more vertices.
+    *
+    * @param num number of attachment threads
+    */
+   public void setNumAttachmentThreads (int num) {
+      num = Math.max (1, num);
+      myNumAttachmentThreads = num;
+      if (myAttachmentTable != null) {
+         myAttachmentTable.setNumThreads (num);
+      }
+   }
+
+   /**
+    * Discards the compiled attachment table, causing it to be rebuilt the
+    * next time it is needed. This is done automatically when attachments
+    * are set through this component, but should be called if an attachment
+    * is modified directly.
+    */
+   public void invalidateAttachmentTable() {
+      if (myAttachmentTable != null) {
+         myAttachmentTable.dispose();
+         myAttachmentTable = null;
+      }
+      myAttachmentTableFailed = false;
+   }
+
+   /**
+    * Returns the compiled attachment table, creating it if necessary, or
+    * <code>null</code> if compiled attachments are disabled or the
+    * attachments can not be compiled.
+    */
+   FemMeshAttachmentTable getAttachmentTable() {
+      if (!myCompiledAttachmentsP) {
+         return null;
+      }
+      MeshBase mesh = getMesh();
+      FemMeshAttachmentTable table = myAttachmentTable;
+      if (table != null &&
+          !table.isValid (mesh, myVertexAttachments.size())) {
+         invalidateAttachmentTable();
+         table = null;
+      }
+      if (table == null && !myAttachmentTableFailed && mesh != null) {
+         table = FemMeshAttachmentTable.create (mesh, myVertexAttachments);
+         if (table != null) {
+            table.setNumThreads (myNumAttachmentThreads);
+            myAttachmentTable = table;
+         }
+         else {
+            myAttachmentTableFailed = true;
+         }
+      }
+      return table;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void updateSlavePos() {
+      FemMeshAttachmentTable table = getAttachmentTable();
+      if (table != null) {
+         table.updateVertexPositions();
+         getMesh().notifyVertexPositionsModified();
+      }
+      else {
+         super.updateSlavePos();
+      }
+   }
+
+   /**
+    * Distributes a set of forces acting on the mesh vertices to the FEM
+    * nodes that control them, using the vertex attachment weights. Forces
+    * are added to the nodes in the same way as by {@link
+    * PointFem3dAttachment#applyForces}, and when compiled attachments are
+    * enabled they are applied in a single pass over the nodes. Vertices
+    * without attachments, or whose attachments are not PointFem3dAttachments
+    * or PointParticleAttachments, are ignored.
+    *
+    * @param forces vertex forces, stored as three values per vertex in
+    * vertex order. Must have a length of at least
+    * <code>3*numAttachments()</code>.
+    */
+   public void distributeVertexForces (double[] forces) {
+      int numa = myVertexAttachments.size();
+      if (forces.length < 3*numa) {
+         throw new IllegalArgumentException (
+            "forces has length "+forces.length+"; expected at least "+3*numa);
+      }
+      FemMeshAttachmentTable table = getAttachmentTable();
+      if (table != null) {
+         table.distributeVertexForces (forces);
+      }
+      else {
+         Vector3d f = new Vector3d();
+         for (int i=0; i<numa; i++) {
+            PointAttachment pa = myVertexAttachments.get(i);
+            f.set (forces[3*i], forces[3*i+1], forces[3*i+2]);
+            if (pa instanceof PointFem3dAttachment) {
+               FemNode[] nodes = ((PointFem3dAttachment)pa).getNodes();
+               if (nodes == null) {
+                  continue;
+               }
+               VectorNd coords = ((PointFem3dAttachment)pa).getCoordinates();
+               for (int j=0; j<nodes.length; j++) {
+                  Vector3d nodeForce = nodes[j].getForce();
+                  nodeForce.scaledAdd (coords.get(j), f, nodeForce);
+               }
+               Frame frame = nodes[0].getPointFrame();
+               if (frame != null) {
+                  Point3d ploc = new Point3d(getVertex(i).getPosition());
+                  ploc.inverseTransform (frame.getPose());
+                  frame.addPointForce (ploc, f);
+               }
+            }
+            else if (pa instanceof PointParticleAttachment) {
+               ((PointParticleAttachment)pa).getParticle().addForce (f);
+            }
+         }
+      }
+   }
+
    /** 
     * Initialize data structures prior to adding vertices and faces to
     * this surface.
@@ -204,6 +383,7 @@ implements CollidableBody, PointAttachable {
       //myEdgeVtxs = new HashMap<EdgeDesc,Vertex3d[]>();
       myVertexAttachments = new ArrayList<PointAttachment>();
       myNodeVertexMap = null;
+      invalidateAttachmentTable();
    }
 
    protected void buildNodeVertexMap() {
@@ -236,6 +416,7 @@ implements CollidableBody, PointAttachable {
       if (myNodeVertexMap == null) {
          buildNodeVertexMap();
       }
+      invalidateAttachmentTable();
       //myEdgeVtxs.clear();
 
       notifyParentOfChange (
@@ -604,6 +785,7 @@ implements CollidableBody, PointAttachable {
          }
          myVertexAttachments.add(attachment);
       }
+      invalidateAttachmentTable();
    }
 
    public void setVertexAttachment (
@@ -1512,6 +1694,7 @@ implements CollidableBody, PointAttachable {
             }
          }
          buildNodeVertexMap();
+         invalidateAttachmentTable();
          return true;
       }
       return super.postscanItem (tokens, ancestor);
@@ -1579,6 +1762,8 @@ implements CollidableBody, PointAttachable {
          fm.myVertexAttachments.add(newPa);
       }
       fm.buildNodeVertexMap();
+      fm.myAttachmentTable = null;
+      fm.myAttachmentTableFailed = false;
 
       //      fm.myEdgeVtxs = new HashMap<EdgeDesc,Vertex3d[]>(myEdgeVtxs.size());
       //      for (Entry<EdgeDesc,Vertex3d[]> het : myEdgeVtxs.entrySet()) {
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package artisynth.core.femmodels;
+
+import maspack.geometry.MeshFactory;
+import maspack.geometry.PolygonalMesh;
+import maspack.matrix.Point3d;
+import maspack.matrix.Vector3d;
+import maspack.util.RandomGenerator;
+import maspack.util.TestException;
+import maspack.util.UnitTest;
+
+/**
+ * Checks that the compiled attachment table of a FemMeshComp gives the same
+ * vertex positions and node forces as the individual vertex attachments.
+ */
+public class FemMeshCompTest extends UnitTest {
+
+   FemModel3d myFem;
+   FemMeshComp myEmbedded;
+   FemMeshComp mySurface;
+
+   FemMeshCompTest() {
+      myFem = FemFactory.createHexGrid (null, 1.0, 1.0, 1.0, 3, 3, 3);
+      // icosahedral sphere with about 10000 vertices, so that the
+      // multithreaded update is actually used
+      PolygonalMesh mesh = MeshFactory.createIcosahedralSphere (0.45, 5);
+      myEmbedded = myFem.addMesh (mesh);
+      mySurface = myFem.getSurfaceMeshComp();
+   }
+
+   void moveNodes() {
+      for (FemNode3d n : myFem.getNodes()) {
+         Point3d pos = new Point3d (n.getRestPosition());
+         pos.x += RandomGenerator.nextDouble (-0.1, 0.1);
+         pos.y += RandomGenerator.nextDouble (-0.1, 0.1);
+         pos.z += RandomGenerator.nextDouble (-0.1, 0.1);
+         n.setPosition (pos);
+      }
+   }
+
+   Point3d[] getVertexPositions (
+      FemMeshComp mcomp, boolean compiled, int numThreads) {
+      mcomp.setCompiledAttachments (compiled);
+      mcomp.setNumAttachmentThreads (numThreads);
+      mcomp.updateSlavePos();
+      Point3d[] pos = new Point3d[mcomp.numVertices()];
+      for (int i=0; i<pos.length; i++) {
+         pos[i] = new Point3d (mcomp.getVertex(i).getPosition());
+      }
+      return pos;
+   }
+
+   Vector3d[] getNodeForces (
+      FemMeshComp mcomp, double[] forces, boolean compiled, int numThreads) {
+      mcomp.setCompiledAttachments (compiled);
+      mcomp.setNumAttachmentThreads (numThreads);
+      for (FemNode3d n : myFem.getNodes()) {
+         n.zeroForces();
+      }
+      mcomp.distributeVertexForces (forces);
+      Vector3d[] frcs = new Vector3d[myFem.numNodes()];
+      for (int i=0; i<frcs.length; i++) {
+         frcs[i] = new Vector3d (myFem.getNode(i).getForce());
+      }
+      return frcs;
+   }
+
+   void checkVectors (String msg, Vector3d[] vecs, Vector3d[] chk) {
+      for (int i=0; i<vecs.length; i++) {
+         if (!vecs[i].equals (chk[i])) {
+            throw new TestException (
+               msg + ": entry " + i + " is " + vecs[i] + ", expected " + chk[i]);
+         }
+      }
+   }
+
+   void test (String name, FemMeshComp mcomp) {
+      for (int k=0; k<3; k++) {
+         moveNodes();
+         Point3d[] chk = getVertexPositions (mcomp, false, 1);
+         checkVectors (
+            name + " positions, 1 thread",
+            getVertexPositions (mcomp, true, 1), chk);
+         checkVectors (
+            name + " positions, 3 threads",
+            getVertexPositions (mcomp, true, 3), chk);
+
+         double[] forces = new double[3*mcomp.numAttachments()];
+         for (int i=0; i<forces.length; i++) {
+            forces[i] = RandomGenerator.nextDouble (-1, 1);
+         }
+         Vector3d[] fchk = getNodeForces (mcomp, forces, false, 1);
+         checkVectors (
+            name + " forces, 1 thread",
+            getNodeForces (mcomp, forces, true, 1), fchk);
+         checkVectors (
+            name + " forces, 3 threads",
+            getNodeForces (mcomp, forces, true, 3), fchk);
+      }
+      mcomp.setNumAttachmentThreads (1);
+      mcomp.invalidateAttachmentTable();
+   }
+
+   public void test() {
+      test ("embedded", myEmbedded);
+      test ("surface", mySurface);
+   }
+
+   public static void main (String[] args) {
+      FemMeshCompTest tester = new FemMeshCompTest();
+      RandomGenerator.setSeed (0x1234);
+      tester.runtest();
+   }
+}
@@ -10,9 +10,11 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.FileWriter;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -30,6 +32,7 @@ import maspack.geometry.MeshBase;
 import maspack.geometry.PolygonalMesh;
 import maspack.geometry.Vertex3d;
 import maspack.geometry.GeometryTransformer;
+import maspack.concurrency.ParallelLoopManager;
 import maspack.render.*;
 import maspack.matrix.AxisAngle;
 import maspack.matrix.AffineTransform3dBase;
@@ -198,15 +201,20 @@ public class FemModel3d extends FemModel
    // incompressibility
    private static int MAX_NODAL_INCOMP_NODES = 8;
 
-   // temp space for computing pressures
-   private VectorNd myPressures = new VectorNd(MAX_PRESSURE_VALS);
-   private MatrixNd myRinv = new MatrixNd();
    // temp space for computing pressure stiffness
    private double[] myKp = new double[MAX_PRESSURE_VALS];
    // temp space for computing nodal incompressibility constraints
    private Vector3d[] myNodalConstraints = new Vector3d[MAX_NODAL_INCOMP_NODES];
-   // temp for computing element-wise linear stiffness strain
-   private SymmetricMatrix3d myEps = new SymmetricMatrix3d();
+   // temp space for computing element stresses and stiffnesses serially
+   private StressWorkspace mySerialWorkspace = new StressWorkspace(false);
+
+   public static int DEFAULT_NUM_ASSEMBLY_THREADS = 1;
+   private int myNumAssemblyThreads = DEFAULT_NUM_ASSEMBLY_THREADS;
+   // manages threads and per-thread workspaces for parallel assembly
+   private ParallelLoopManager myAssemblyManager;
+   private StressWorkspace[] myAssemblyWorkspaces;
+   // elements grouped so that no two elements in a group share a node
+   private FemElement3d[][] myElementColors;
 
    // protected ArrayList<FemSurface> myEmbeddedSurfaces;
    protected MeshComponentList<FemMeshComp> myMeshList;
@@ -253,12 +261,140 @@ public class FemModel3d extends FemModel
       myProps.add (
          "collidable", 
          "sets the collidability of the FEM", DEFAULT_COLLIDABILITY);
+      myProps.add (
+         "numAssemblyThreads",
+         "number of threads used to compute element stresses and stiffnesses",
+         DEFAULT_NUM_ASSEMBLY_THREADS, "[1,inf)");
    }
 
    public PropertyList getAllPropertyInfo() {
       return myProps;
    }
 
+   /**
+    * Temporary storage used when computing element stresses and
+    * stiffnesses. Each thread carrying out these computations requires its
+    * own workspace.
+    */
+   static class StressWorkspace {
+      VectorNd pressures = new VectorNd(MAX_PRESSURE_VALS);
+      MatrixNd rinv = new MatrixNd();
+      double[] kp = new double[MAX_PRESSURE_VALS];
+      Vector3d[] nodalConstraints = new Vector3d[MAX_NODAL_INCOMP_NODES];
+      SymmetricMatrix3d eps = new SymmetricMatrix3d();
+      Matrix6d D = new Matrix6d();
+      // deformation passed to the materials. For concurrent workspaces, it
+      // also holds this thread's material temporaries.
+      SolidDeformation def = new SolidDeformation();
+
+      // inversion data accumulated by this workspace
+      double minDetJ;
+      FemElement3d minDetJElement;
+      int numInverted;
+
+      // Private copies of the integration points, which are normally shared
+      // among all elements of the same type. These are null if the elements'
+      // own points should be used.
+      IdentityHashMap<IntegrationPoint3d,IntegrationPoint3d> myPointCopies;
+      IdentityHashMap<IntegrationPoint3d[],IntegrationPoint3d[]> myArrayCopies;
+
+      StressWorkspace (boolean copyPoints) {
+         for (int i = 0; i < MAX_NODAL_INCOMP_NODES; i++) {
+            nodalConstraints[i] = new Vector3d();
+         }
+         if (copyPoints) {
+            def.setMaterialScratchEnabled (true);
+            myPointCopies =
+               new IdentityHashMap<IntegrationPoint3d,IntegrationPoint3d>();
+            myArrayCopies =
+               new IdentityHashMap<IntegrationPoint3d[],IntegrationPoint3d[]>();
+         }
+         clearInversionData();
+      }
+
+      void clearInversionData() {
+         minDetJ = Double.MAX_VALUE;
+         minDetJElement = null;
+         numInverted = 0;
+      }
+
+      void clearPointCopies() {
+         if (myPointCopies != null) {
+            myPointCopies.clear();
+            myArrayCopies.clear();
+         }
+      }
+
+      private IntegrationPoint3d getPointCopy (IntegrationPoint3d pnt) {
+         IntegrationPoint3d copy = myPointCopies.get (pnt);
+         if (copy == null) {
+            copy = pnt.createTransientCopy();
+            myPointCopies.put (pnt, copy);
+         }
+         return copy;
+      }
+
+      IntegrationPoint3d[] getIntegrationPoints (FemElement3d e) {
+         IntegrationPoint3d[] ipnts = e.getIntegrationPoints();
+         if (myArrayCopies == null) {
+            return ipnts;
+         }
+         IntegrationPoint3d[] copy = myArrayCopies.get (ipnts);
+         if (copy == null) {
+            copy = new IntegrationPoint3d[ipnts.length];
+            for (int k = 0; k < ipnts.length; k++) {
+               copy[k] = getPointCopy (ipnts[k]);
+            }
+            myArrayCopies.put (ipnts, copy);
+         }
+         return copy;
+      }
+
+      IntegrationPoint3d getWarpingPoint (FemElement3d e) {
+         IntegrationPoint3d wpnt = e.getWarpingPoint();
+         if (myPointCopies == null) {
+            return wpnt;
+         }
+         return getPointCopy (wpnt);
+      }
+   }
+
+   /**
+    * Sets the number of threads used to compute element stresses and
+    * stiffnesses. If this is greater than one, the elements are partitioned
+    * into groups that share no nodes, and the elements within each group
+    * are processed concurrently. The results do not depend on the thread
+    * count, but may differ from those of the single-threaded computation by
+    * round-off error, since the element contributions to each node are
+    * accumulated in a different order.
+    *
+    * @param num number of threads (values less than 1 are set to 1)
+    */
+   public void setNumAssemblyThreads (int num) {
+      if (num < 1) {
+         num = 1;
+      }
+      if (num != myNumAssemblyThreads) {
+         myNumAssemblyThreads = num;
+         if (myAssemblyManager != null) {
+            myAssemblyManager.shutdown();
+            myAssemblyManager = null;
+         }
+         myAssemblyWorkspaces = null;
+      }
+   }
+
+   /**
+    * Returns the number of threads used to compute element stresses and
+    * stiffnesses.
+    *
+    * @return number of assembly threads
+    * @see #setNumAssemblyThreads
+    */
+   public int getNumAssemblyThreads() {
+      return myNumAssemblyThreads;
+   }
+
    public void setElementWidgetSize(double size) {
       myElementWidgetSize = size;
       myElementWidgetSizeMode =
@@ -320,6 +456,7 @@ public class FemModel3d extends FemModel
       myMassDamping = DEFAULT_MASS_DAMPING;
       myElementWidgetSize = DEFAULT_ELEMENT_WIDGET_SIZE;
       myElementWidgetSizeMode = PropertyMode.Inherited;
+      myNumAssemblyThreads = DEFAULT_NUM_ASSEMBLY_THREADS;
       myHardIncompMethod = DEFAULT_HARD_INCOMP;
       mySoftIncompMethod = DEFAULT_SOFT_INCOMP;
       myColorMap = defaultColorMap.copy();
@@ -688,23 +825,24 @@ public class FemModel3d extends FemModel
    }
 
    private void computePressuresAndRinv(
-      FemElement3d e, IncompressibleMaterial imat, double scale) {
+      FemElement3d e, IncompressibleMaterial imat, double scale,
+      StressWorkspace ws) {
 
       int npvals = e.numPressureVals();
 
-      myRinv.setSize(npvals, npvals);
-      myPressures.setSize(npvals);
+      ws.rinv.setSize(npvals, npvals);
+      ws.pressures.setSize(npvals);
 
-      double[] pbuf = myPressures.getBuffer();
+      double[] pbuf = ws.pressures.getBuffer();
       double restVol = e.getRestVolume();
 
       if (npvals > 1) {
-         myPressures.setZero();
-         IntegrationPoint3d[] ipnts = e.getIntegrationPoints();
+         ws.pressures.setZero();
+         IntegrationPoint3d[] ipnts = ws.getIntegrationPoints(e);
          IntegrationData3d[] idata = e.getIntegrationData();
 
          if (imat.getBulkPotential() != BulkPotential.QUADRATIC) {
-            myRinv.setZero();
+            ws.rinv.setZero();
          }
          for (int k = 0; k < ipnts.length; k++) {
             IntegrationPoint3d pt = ipnts[k];
@@ -720,31 +858,31 @@ public class FemModel3d extends FemModel
                double mod = imat.getEffectiveModulus(detJ);
                for (int i = 0; i < npvals; i++) {
                   for (int j = 0; j < npvals; j++) {
-                     myRinv.add(i, j, H[i] * H[j] * mod * dV);
+                     ws.rinv.add(i, j, H[i] * H[j] * mod * dV);
                   }
                }
             }
          }
          Matrix W = e.getPressureWeightMatrix();
-         W.mul(myPressures, myPressures);
-         myPressures.scale(1 / restVol);
+         W.mul(ws.pressures, ws.pressures);
+         ws.pressures.scale(1 / restVol);
          if (imat.getBulkPotential() == BulkPotential.QUADRATIC) {
-            myRinv.set(W);
-            myRinv.scale(scale*imat.getBulkModulus() / restVol);
+            ws.rinv.set(W);
+            ws.rinv.scale(scale*imat.getBulkModulus() / restVol);
          }
          else {
             // optimize later
             MatrixNd Wtmp = new MatrixNd(W);
             Wtmp.scale(scale / restVol);
-            myRinv.mul(Wtmp);
-            myRinv.mul(Wtmp, myRinv);
+            ws.rinv.mul(Wtmp);
+            ws.rinv.mul(Wtmp, ws.rinv);
          }
       }
       else {
          double Jpartial = e.myVolumes[0] / e.myRestVolumes[0];
          pbuf[0] = (imat.getEffectivePressure(Jpartial) +
                     0 * e.myLagrangePressures[0]);
-         myRinv.set(0, 0, scale*imat.getEffectiveModulus(Jpartial) / restVol);
+         ws.rinv.set(0, 0, scale*imat.getEffectiveModulus(Jpartial) / restVol);
       }
    }
 
@@ -770,9 +908,10 @@ public class FemModel3d extends FemModel
 
    // DIVBLK
    private void computeNonlinearStressAndStiffness(
-      FemElement3d e, FemMaterial mat, Matrix6d D, IncompMethod softIncomp) {
+      FemElement3d e, FemMaterial mat, Matrix6d D, IncompMethod softIncomp,
+      StressWorkspace ws) {
 
-      IntegrationPoint3d[] ipnts = e.getIntegrationPoints();
+      IntegrationPoint3d[] ipnts = ws.getIntegrationPoints(e);
       IntegrationData3d[] idata = e.getIntegrationData();
       FemNode3d[] nodes = e.getNodes();
       int npvals = e.numPressureVals();
@@ -806,20 +945,20 @@ public class FemModel3d extends FemModel
 
          linMat = (LinearMaterial)mat;
          corotated = linMat.isCorotated();
-         wpnt = e.getWarpingPoint();
+         wpnt = ws.getWarpingPoint(e);
          IntegrationData3d data = e.getWarpingData();
          wpnt.computeJacobianAndGradient(e.myNodes, data.myInvJ0);
          wpnt.sigma.setZero();
          if (corotated) {
-            e.computeWarping(wpnt.F, myEps);
+            e.computeWarping(wpnt.F, ws.eps);
          }
          else {
-            myEps.setSymmetric(wpnt.F);
+            ws.eps.setSymmetric(wpnt.F);
          }
          // compute Cauchy strain
-         myEps.m00 -= 1;
-         myEps.m11 -= 1;
-         myEps.m22 -= 1;
+         ws.eps.m00 -= 1;
+         ws.eps.m11 -= 1;
+         ws.eps.m22 -= 1;
       }
 
       e.setInverted(false); // will check this below
@@ -828,7 +967,7 @@ public class FemModel3d extends FemModel
          imat = (IncompressibleMaterial)mat;
          if (softIncomp == IncompMethod.ELEMENT) {
 
-            computePressuresAndRinv (e, imat, vebTangentScale);
+            computePressuresAndRinv (e, imat, vebTangentScale, ws);
             if (D != null) {
                constraints = e.getIncompressConstraints();
                for (int i = 0; i < e.myNodes.length; i++) {
@@ -840,14 +979,14 @@ public class FemModel3d extends FemModel
       }
       else if (softIncomp == IncompMethod.NODAL) {
          if (e instanceof TetElement) {
-            ((TetElement)e).getAreaWeightedNormals(myNodalConstraints);
+            ((TetElement)e).getAreaWeightedNormals(ws.nodalConstraints);
             for (int i = 0; i < 4; i++) {
-               myNodalConstraints[i].scale(-1 / 12.0);
+               ws.nodalConstraints[i].scale(-1 / 12.0);
             }
          }
          else {
             for (int i = 0; i < e.numNodes(); i++) {
-               myNodalConstraints[i].setZero();
+               ws.nodalConstraints[i].setZero();
             }
          }
 
@@ -875,7 +1014,7 @@ public class FemModel3d extends FemModel
          nodalExtrapMat = e.getNodalExtrapolationMatrix();
          if (linMat != null) {
             linMat.addStress(wpnt.sigma,
-               myEps, corotated ? e.myWarper.R : null);
+               ws.eps, corotated ? e.myWarper.R : null);
             for (int i = 0; i < nodes.length; i++) {
                FemNode3d nodei = nodes[i];
                if (myComputeNodalStress) {
@@ -884,17 +1023,17 @@ public class FemModel3d extends FemModel
                }
                if (myComputeNodalStrain) {
                   nodei.addScaledStrain(
-                     1.0 / nodei.numAdjacentElements(), myEps);
+                     1.0 / nodei.numAdjacentElements(), ws.eps);
                }
             }
          }
       }
 
-      double[] pbuf = myPressures.getBuffer();
+      double[] pbuf = ws.pressures.getBuffer();
       // e.myAvgStress.setZero();
       if (linMat == null || e.numAuxiliaryMaterials() > 0) {
 
-         SolidDeformation def = new SolidDeformation();
+         SolidDeformation def = ws.def;
 
          for (int k = 0; k < ipnts.length; k++) {
             IntegrationPoint3d pt = ipnts[k];
@@ -902,13 +1041,13 @@ public class FemModel3d extends FemModel
             pt.computeJacobianAndGradient(e.myNodes, idata[k].myInvJ0);
             def.setF(pt.F);
             double detJ = pt.computeInverseJacobian();
-            if (detJ < myMinDetJ) {
-               myMinDetJ = detJ;
-               myMinDetJElement = e;
+            if (detJ < ws.minDetJ) {
+               ws.minDetJ = detJ;
+               ws.minDetJElement = e;
             }
             if (detJ <= 0 && !e.materialsAreInvertible()) {
                e.setInverted(true);
-               myNumInverted++;
+               ws.numInverted++;
             }
             double dv = detJ * pt.getWeight();
             Vector3d[] GNx = pt.updateShapeGradient(pt.myInvJ);
@@ -1021,13 +1160,13 @@ public class FemModel3d extends FemModel
                   }
                   else if (softIncomp == IncompMethod.NODAL) {
                      if (e.integrationPointsMapToNodes()) {
-                        myNodalConstraints[i].scale(dv, GNx[i]);
+                        ws.nodalConstraints[i].scale(dv, GNx[i]);
                      }
                      else { // tet element
                         for (FemNodeNeighbor nbr : getNodeNeighbors(nodei)) {
                            int j = e.getLocalNodeIndex(nbr.myNode);
                            if (j != -1) {
-                              nbr.myDivBlk.scaledAdd(1, myNodalConstraints[j]);
+                              nbr.myDivBlk.scaledAdd(1, ws.nodalConstraints[j]);
                            }
                         }
                      }
@@ -1075,7 +1214,7 @@ public class FemModel3d extends FemModel
                for (FemNodeNeighbor nbr : getNodeNeighbors(e.myNodes[k])) {
                   int j = e.getLocalNodeIndex(nbr.myNode);
                   if (j != -1) {
-                     nbr.myDivBlk.scaledAdd(1, myNodalConstraints[j]);
+                     nbr.myDivBlk.scaledAdd(1, ws.nodalConstraints[j]);
                   }
                }
             }
@@ -1086,9 +1225,9 @@ public class FemModel3d extends FemModel
             boolean kpIsNonzero = false;
             for (int l = 0; l < npvals; l++) {
                double Jpartial = e.myVolumes[l] / e.myRestVolumes[l];
-               myKp[l] =
+               ws.kp[l] =
                imat.getEffectiveModulus(Jpartial) / e.myRestVolumes[l];
-               if (myKp[l] != 0) {
+               if (ws.kp[l] != 0) {
                   kpIsNonzero = true;
                }
             }
@@ -1101,7 +1240,7 @@ public class FemModel3d extends FemModel
                         int bj = e.myNodes[j].getSolveIndex();
                         if (!mySolveMatrixSymmetricP || bj >= bi) {
                            e.myNbrs[i][j].addDilationalStiffness(
-                              myRinv, constraints[i], constraints[j]);
+                              ws.rinv, constraints[i], constraints[j]);
                         } // end filling in symmetric
                      } // end filling in dilatational stiffness
                   } // end checking if valid index
@@ -1214,6 +1353,151 @@ public class FemModel3d extends FemModel
       myNodalRestVolumesValidP = true;
    }
 
+   /**
+    * Merges the inversion data accumulated in a workspace into the
+    * inversion data for this model.
+    */
+   private void addInversionData (StressWorkspace ws) {
+      if (ws.minDetJ < myMinDetJ) {
+         myMinDetJ = ws.minDetJ;
+         myMinDetJElement = ws.minDetJElement;
+      }
+      myNumInverted += ws.numInverted;
+   }
+
+   /**
+    * Returns the elements of this model partitioned into colors, such that
+    * no two elements with the same color share a node. Elements of the same
+    * color can therefore accumulate their forces and stiffnesses into the
+    * nodes concurrently.
+    */
+   protected FemElement3d[][] getElementColors() {
+      if (myElementColors == null) {
+         myElementColors = computeElementColors();
+      }
+      return myElementColors;
+   }
+
+   /**
+    * Partitions the elements into colors using a greedy first-fit coloring
+    * of the element adjacency graph. The results depend only on the
+    * ordering of the elements and nodes.
+    */
+   private FemElement3d[][] computeElementColors() {
+      HashMap<FemNode3d,Integer> nodeIdxs = new HashMap<FemNode3d,Integer>();
+      for (int i = 0; i < myNodes.size(); i++) {
+         nodeIdxs.put (myNodes.get(i), i);
+      }
+      // colors already assigned to elements adjacent to each node
+      BitSet[] nodeColors = new BitSet[myNodes.size()];
+      ArrayList<ArrayList<FemElement3d>> colors =
+         new ArrayList<ArrayList<FemElement3d>>();
+      BitSet used = new BitSet();
+      for (FemElement3d e : myElements) {
+         FemNode3d[] nodes = e.getNodes();
+         used.clear();
+         for (int i = 0; i < nodes.length; i++) {
+            BitSet ncolors = nodeColors[nodeIdxs.get(nodes[i])];
+            if (ncolors != null) {
+               used.or (ncolors);
+            }
+         }
+         int c = used.nextClearBit (0);
+         if (c == colors.size()) {
+            colors.add (new ArrayList<FemElement3d>());
+         }
+         colors.get(c).add (e);
+         for (int i = 0; i < nodes.length; i++) {
+            int idx = nodeIdxs.get(nodes[i]);
+            if (nodeColors[idx] == null) {
+               nodeColors[idx] = new BitSet();
+            }
+            nodeColors[idx].set (c);
+         }
+      }
+      FemElement3d[][] elemColors = new FemElement3d[colors.size()][];
+      for (int c = 0; c < colors.size(); c++) {
+         elemColors[c] = colors.get(c).toArray (new FemElement3d[0]);
+      }
+      return elemColors;
+   }
+
+   private StressWorkspace[] getAssemblyWorkspaces (int numThreads) {
+      if (myAssemblyWorkspaces == null ||
+          myAssemblyWorkspaces.length != numThreads) {
+         myAssemblyWorkspaces = new StressWorkspace[numThreads];
+         for (int i = 0; i < numThreads; i++) {
+            myAssemblyWorkspaces[i] = new StressWorkspace(/*copyPoints=*/true);
+         }
+      }
+      return myAssemblyWorkspaces;
+   }
+
+   /**
+    * Performs, in a single thread, any lazy initialization of element data
+    * that would otherwise be triggered inside the parallel element loop.
+    * This includes data that is shared among elements of the same type.
+    */
+   private void prepareElementsForParallelUpdate() {
+      for (FemElement3d e : myElements) {
+         e.getIntegrationPoints();
+         e.getIntegrationData();
+         if (e.numPressureVals() > 1) {
+            e.getPressureWeightMatrix();
+         }
+         if (getElementMaterial(e) instanceof LinearMaterial) {
+            e.getWarpingPoint();
+            e.getWarpingData();
+            if (!e.myWarpingStiffnessValidP) {
+               e.updateWarpingStiffness();
+            }
+         }
+         if (myComputeNodalStress || myComputeNodalStrain) {
+            e.getNodalExtrapolationMatrix();
+         }
+      }
+   }
+
+   /**
+    * Computes the element stresses, and optionally the stiffnesses, using
+    * multiple threads. Elements are processed one color at a time, so that
+    * each node receives at most one contribution from each color, in color
+    * order. This makes the results independent of the number of threads.
+    */
+   private void computeStressAndStiffnessInParallel (
+      final IncompMethod softIncomp, final boolean computeTangent) {
+
+      if (myAssemblyManager == null) {
+         myAssemblyManager = new ParallelLoopManager (
+            "FemModel3d-assembly", myNumAssemblyThreads);
+      }
+      FemElement3d[][] colors = getElementColors();
+      final StressWorkspace[] workspaces =
+         getAssemblyWorkspaces (myAssemblyManager.getNumThreads());
+      prepareElementsForParallelUpdate();
+      for (StressWorkspace ws : workspaces) {
+         ws.clearInversionData();
+      }
+      for (int c = 0; c < colors.length; c++) {
+         final FemElement3d[] elems = colors[c];
+         myAssemblyManager.execute (
+            elems.length, new ParallelLoopManager.RangeTask() {
+               public void run (int tidx, int start, int end) {
+                  StressWorkspace ws = workspaces[tidx];
+                  Matrix6d D = (computeTangent ? ws.D : null);
+                  for (int k = start; k < end; k++) {
+                     FemElement3d e = elems[k];
+                     computeNonlinearStressAndStiffness (
+                        e, getElementMaterial(e), D, softIncomp, ws);
+                  }
+               }
+            });
+      }
+      for (StressWorkspace ws : workspaces) {
+         addInversionData (ws);
+      }
+   }
+
    // DIVBLK
    public void updateStressAndStiffness() {
 
@@ -1268,16 +1552,24 @@ public class FemModel3d extends FemModel
       double mins = Double.MAX_VALUE;
       FemElement3d minE = null;
 
-      for (FemElement3d e : myElements) {
-         FemMaterial mat = getElementMaterial(e);
-         computeNonlinearStressAndStiffness(e, mat, D, softIncomp);
-         if (checkTangentStability) {
-            double s = checkMatrixStability(D);
-            if (s < mins) {
-               mins = s;
-               minE = e;
+      if (myNumAssemblyThreads > 1 && !checkTangentStability) {
+         computeStressAndStiffnessInParallel (softIncomp, /*tangent=*/true);
+      }
+      else {
+         StressWorkspace ws = mySerialWorkspace;
+         ws.clearInversionData();
+         for (FemElement3d e : myElements) {
+            FemMaterial mat = getElementMaterial(e);
+            computeNonlinearStressAndStiffness(e, mat, D, softIncomp, ws);
+            if (checkTangentStability) {
+               double s = checkMatrixStability(D);
+               if (s < mins) {
+                  mins = s;
+                  minE = e;
+               }
             }
          }
+         addInversionData (ws);
       }
       if (softIncomp == IncompMethod.NODAL) {
          IncompressibleMaterial imat = (IncompressibleMaterial)myMaterial;
@@ -1391,10 +1683,18 @@ public class FemModel3d extends FemModel
 
       // compute new forces as well as stiffness matrix if warping is enabled
       // myMinDetJ = Double.MAX_VALUE;
-      for (FemElement3d e : myElements) {
-         FemMaterial mat = getElementMaterial(e);
-         computeNonlinearStressAndStiffness(
-            e, mat, /* D= */null, softIncomp);
+      if (myNumAssemblyThreads > 1) {
+         computeStressAndStiffnessInParallel (softIncomp, /*tangent=*/false);
+      }
+      else {
+         StressWorkspace ws = mySerialWorkspace;
+         ws.clearInversionData();
+         for (FemElement3d e : myElements) {
+            FemMaterial mat = getElementMaterial(e);
+            computeNonlinearStressAndStiffness(
+               e, mat, /* D= */null, softIncomp, ws);
+         }
+         addInversionData (ws);
       }
       myStressesValidP = true;
    }
@@ -2755,6 +3055,12 @@ public class FemModel3d extends FemModel
       mySolveMatrix = null;
       // myActiveNodes = null;
       myBVTreeValid = false;
+      myElementColors = null;
+      if (myAssemblyWorkspaces != null) {
+         for (StressWorkspace ws : myAssemblyWorkspaces) {
+            ws.clearPointCopies();
+         }
+      }
       mySoftIncompMethodValidP = false;
       myHardIncompMethodValidP = false;
       myHardIncompConfigValidP = false;
@@ -3901,7 +4207,11 @@ public class FemModel3d extends FemModel
         fem.myNodalIncompBlocksAllocatedP = false;
         fem.myNodalIncompConstraintsAllocatedP = false;
 
-        fem.myPressures = new VectorNd(MAX_PRESSURE_VALS);
+        fem.mySerialWorkspace = new StressWorkspace(false);
+        fem.myNumAssemblyThreads = myNumAssemblyThreads;
+        fem.myAssemblyManager = null;
+        fem.myAssemblyWorkspaces = null;
+        fem.myElementColors = null;
         fem.myKp = new double[MAX_PRESSURE_VALS];
         fem.myNodalConstraints = new Vector3d[MAX_NODAL_INCOMP_NODES];
         for (int i = 0; i < MAX_NODAL_INCOMP_NODES; i++) {
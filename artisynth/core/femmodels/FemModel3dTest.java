@@ -7,6 +7,8 @@
 package artisynth.core.femmodels;
 
 import java.io.*;
+import java.util.Iterator;
+import java.util.Random;
 
 import maspack.util.*;
 import maspack.matrix.*;
@@ -315,8 +317,83 @@ public class FemModel3dTest extends UnitTest {
          e.printStackTrace(); 
       }
    }
+
+   private FemModel3d createPerturbedGrid (boolean useHexes) {
+      FemModel3d fem;
+      if (useHexes) {
+         fem = FemFactory.createHexGrid (null, 1.0, 0.5, 0.5, 6, 3, 3);
+      }
+      else {
+         fem = FemFactory.createTetGrid (null, 1.0, 0.5, 0.5, 6, 3, 3);
+      }
+      fem.setMaterial (new MooneyRivlinMaterial (150000, 0, 0, 0, 0, 5000000));
+      // perturb the nodes deterministically so that every copy of the
+      // model is in the same deformed configuration
+      Random rand = new Random (0x1234);
+      Vector3d del = new Vector3d();
+      for (FemNode3d n : fem.getNodes()) {
+         del.setRandom (-0.02, 0.02, rand);
+         Point3d pos = new Point3d (n.getPosition());
+         pos.add (del);
+         n.setPosition (pos);
+      }
+      return fem;
+   }
+
+   private void checkStiffnessEquals (
+      FemModel3d fem, FemModel3d chk, double tol, String msg) {
+
+      for (int i=0; i<fem.numNodes(); i++) {
+         FemNode3d node = fem.getNodes().get(i);
+         FemNode3d nchk = chk.getNodes().get(i);
+         Vector3d f = node.getInternalForce();
+         Vector3d fchk = nchk.getInternalForce();
+         if (!f.epsilonEquals (fchk, tol*(1+fchk.norm()))) {
+            throw new TestException (
+               msg + ": internal force for node " + i + " is " +
+               f.toString ("%g") + ", expected " + fchk.toString ("%g"));
+         }
+         Iterator<FemNodeNeighbor> it = nchk.getNodeNeighbors().iterator();
+         for (FemNodeNeighbor nbr : node.getNodeNeighbors()) {
+            Matrix3d K = nbr.getK();
+            Matrix3d Kchk = it.next().getK();
+            if (!K.epsilonEquals (Kchk, tol*(1+Kchk.frobeniusNorm()))) {
+               throw new TestException (
+                  msg + ": stiffness block for node " + i + " is\n" +
+                  K.toString ("%g") + "\nexpected\n" + Kchk.toString ("%g"));
+            }
+         }
+      }
+   }
+
+   /**
+    * Checks that stress and stiffness computed with multiple assembly threads
+    * match the serial computation, and that the result does not depend on
+    * the number of threads.
+    */
+   public void testParallelAssembly() {
+      for (int k=0; k<2; k++) {
+         boolean useHexes = (k == 1);
+         FemModel3d fem1 = createPerturbedGrid (useHexes);
+         FemModel3d fem2 = createPerturbedGrid (useHexes);
+         FemModel3d fem4 = createPerturbedGrid (useHexes);
+         fem2.setNumAssemblyThreads (2);
+         fem4.setNumAssemblyThreads (4);
+         for (int i=0; i<2; i++) {
+            // second pass exercises reuse of the cached coloring and
+            // workspaces
+            fem1.updateStressAndStiffness();
+            fem2.updateStressAndStiffness();
+            fem4.updateStressAndStiffness();
+            checkStiffnessEquals (fem2, fem4, 0, "2 vs. 4 threads");
+            checkStiffnessEquals (fem4, fem1, 1e-10, "4 threads vs. serial");
+         }
+      }
+   }
+
    public void test() {
       testFrameRelativeMass();
+      testParallelAssembly();
    }
 
    public static void main (String[] args) {
@@ -80,6 +80,30 @@ public class IntegrationPoint3d {
       init(nnodes, 1);
    }
 
+   /**
+    * Creates a copy of this integration point that shares its readonly data
+    * (coordinates, weight, shape and pressure weights, and shape gradients)
+    * but has its own transient data. Such copies allow stiffness computations
+    * for different elements to be carried out in different threads.
+    *
+    * @return copy of this point with separate transient data
+    */
+   public IntegrationPoint3d createTransientCopy() {
+      IntegrationPoint3d pnt = new IntegrationPoint3d (0);
+      pnt.myNumNodes = myNumNodes;
+      pnt.coords = coords;
+      pnt.N = N;
+      pnt.H = H;
+      pnt.GNs = GNs;
+      pnt.GNx = new Vector3d[myNumNodes];
+      for (int i=0; i<myNumNodes; i++) {
+         pnt.GNx[i] = new Vector3d();
+      }
+      pnt.myWeight = myWeight;
+      pnt.myNum = myNum;
+      return pnt;
+   }
+
    /**
     * Returns the number of this integration point. This will be
     * in the range 0 to numi-1, where numi is the number of
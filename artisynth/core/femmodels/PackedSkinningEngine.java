@@ -0,0 +1,417 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package artisynth.core.femmodels;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import maspack.concurrency.ParallelLoopManager;
+import maspack.geometry.MeshBase;
+import maspack.geometry.Vertex3d;
+import maspack.matrix.DualQuaternion;
+import maspack.matrix.Point3d;
+import maspack.matrix.RigidTransform3d;
+import maspack.matrix.RotationMatrix3d;
+import maspack.matrix.Vector3d;
+import artisynth.core.femmodels.PointSkinAttachment.BaseConnection;
+import artisynth.core.femmodels.PointSkinAttachment.Connection;
+import artisynth.core.femmodels.PointSkinAttachment.FemDisplacementConnection;
+import artisynth.core.femmodels.PointSkinAttachment.FrameConnection;
+import artisynth.core.femmodels.PointSkinAttachment.ParticleConnection;
+import artisynth.core.femmodels.SkinMeshBody.FrameBlending;
+import artisynth.core.femmodels.SkinMeshBody.FrameInfo;
+import artisynth.core.mechmodels.Particle;
+
+/**
+ * Computes the vertex positions of a SkinMeshBody from a packed copy of its
+ * PointSkinAttachments. The connection types, weights and master indices of
+ * all attachments are stored in primitive arrays, and the master frame
+ * transforms and FEM node positions are gathered once per update, so that
+ * the per-vertex loop does no allocation (apart from that done internally by
+ * dual quaternion normalization) and can be split across threads. The
+ * arithmetic is done in the same order as {@link
+ * PointSkinAttachment#getCurrentPos}, so the results are identical.
+ *
+ * <p>The engine reflects the attachments at the time it was created; it
+ * should be discarded whenever attachments or their connections change.
+ * Attachment base positions are referenced directly and so may change
+ * freely.
+ */
+class PackedSkinningEngine {
+
+   static final byte FRAME = 0;
+   static final byte FEM_DISPLACEMENT = 1;
+   static final byte BASE = 2;
+   static final byte PARTICLE = 3;
+
+   // minimum number of vertices per thread for a parallel update
+   static final int MIN_VERTICES_PER_THREAD = 2000;
+
+   SkinMeshBody mySkinMesh;
+   MeshBase myMesh;
+   int myNumVertices;
+
+   Vertex3d[] myVertices;        // null for vertices with no attachment
+   Point3d[] myBasePositions;
+   int[] myOffsets;              // connection offsets for each vertex
+   byte[] myTypes;
+   int[] myIndices;
+   double[] myWeights;
+   int myMaxFrameConnections;
+
+   FrameInfo[] myFrames;
+   double[] myFrameTransforms;   // R (row major) and p for each frame
+   DualQuaternion[] myBlendQuaternions;
+
+   FemNode3d[] myNodes;
+   double[] myNodePos;
+   double[] myNodeRest;
+
+   Particle[] myParticles;
+   double[] myParticlePos;
+
+   int myNumThreads = 1;
+   ParallelLoopManager myManager;
+   Workspace[] myWorkspaces;
+
+   private class Workspace {
+      Point3d pos = new Point3d();
+      Point3d tmp = new Point3d();
+      DualQuaternion blendQ = new DualQuaternion();
+      double[] weights = new double[myMaxFrameConnections];
+      DualQuaternion[] dualqs = new DualQuaternion[myMaxFrameConnections];
+   }
+
+   private PackedSkinningEngine (SkinMeshBody skinMesh) {
+      mySkinMesh = skinMesh;
+   }
+
+   /**
+    * Creates a packed engine for the current attachments of a
+    * SkinMeshBody. Returns <code>null</code> if any of the attachments
+    * cannot be packed, such as attachments belonging to a different
+    * SkinMeshBody, or connections of an unknown type, in which case the
+    * vertices must be updated through their attachments.
+    */
+   static PackedSkinningEngine create (SkinMeshBody skinMesh) {
+      MeshBase mesh = skinMesh.getMesh();
+      if (mesh == null) {
+         return null;
+      }
+      PackedSkinningEngine engine = new PackedSkinningEngine (skinMesh);
+      return engine.build (mesh) ? engine : null;
+   }
+
+   private boolean build (MeshBase mesh) {
+      List<FrameInfo> frameInfo = mySkinMesh.getAllFrameInfo();
+      int numa = mySkinMesh.numAttachments();
+      int numc = 0;
+      for (int i=0; i<numa; i++) {
+         PointSkinAttachment a = mySkinMesh.getAttachment (i);
+         if (a != null) {
+            if (a.getSkinMesh() != mySkinMesh) {
+               return false;
+            }
+            numc += a.numConnections();
+         }
+      }
+      myMesh = mesh;
+      myNumVertices = numa;
+      myVertices = new Vertex3d[numa];
+      myBasePositions = new Point3d[numa];
+      myOffsets = new int[numa+1];
+      myTypes = new byte[numc];
+      myIndices = new int[numc];
+      myWeights = new double[numc];
+
+      myFrames = frameInfo.toArray (new FrameInfo[0]);
+      for (int f=0; f<myFrames.length; f++) {
+         if (myFrames[f].getIndex() != f) {
+            return false;
+         }
+      }
+      IdentityHashMap<FemNode3d,Integer> nodeMap =
+         new IdentityHashMap<FemNode3d,Integer>();
+      IdentityHashMap<Particle,Integer> particleMap =
+         new IdentityHashMap<Particle,Integer>();
+
+      int k = 0;
+      myMaxFrameConnections = 0;
+      for (int i=0; i<numa; i++) {
+         myOffsets[i] = k;
+         PointSkinAttachment a = mySkinMesh.getAttachment (i);
+         if (a == null) {
+            continue;
+         }
+         myVertices[i] = mesh.getVertices().get(i);
+         myBasePositions[i] = a.getBasePosition();
+         int nframes = 0;
+         for (int j=0; j<a.numConnections(); j++) {
+            Connection c = a.getConnection (j);
+            Class<?> type = c.getClass();
+            if (type == FrameConnection.class) {
+               FrameInfo finfo = ((FrameConnection)c).myFrameInfo;
+               int fidx = finfo.getIndex();
+               if (fidx < 0 || fidx >= myFrames.length ||
+                   myFrames[fidx] != finfo) {
+                  return false;
+               }
+               myTypes[k] = FRAME;
+               myIndices[k] = fidx;
+               nframes++;
+            }
+            else if (type == FemDisplacementConnection.class) {
+               myTypes[k] = FEM_DISPLACEMENT;
+               myIndices[k] = getIndex (
+                  nodeMap, ((FemDisplacementConnection)c).myNode);
+            }
+            else if (type == BaseConnection.class) {
+               myTypes[k] = BASE;
+            }
+            else if (type == ParticleConnection.class) {
+               myTypes[k] = PARTICLE;
+               myIndices[k] = getIndex (
+                  particleMap, ((ParticleConnection)c).myParticle);
+            }
+            else {
+               return false;
+            }
+            myWeights[k] = c.myWeight;
+            k++;
+         }
+         myMaxFrameConnections = Math.max (myMaxFrameConnections, nframes);
+      }
+      myOffsets[numa] = k;
+
+      myFrameTransforms = new double[12*myFrames.length];
+      myBlendQuaternions = new DualQuaternion[myFrames.length];
+      myNodes = new FemNode3d[nodeMap.size()];
+      for (FemNode3d node : nodeMap.keySet()) {
+         myNodes[nodeMap.get(node)] = node;
+      }
+      myNodePos = new double[3*myNodes.length];
+      myNodeRest = new double[3*myNodes.length];
+      myParticles = new Particle[particleMap.size()];
+      for (Particle p : particleMap.keySet()) {
+         myParticles[particleMap.get(p)] = p;
+      }
+      myParticlePos = new double[3*myParticles.length];
+      return true;
+   }
+
+   private static <T> int getIndex (IdentityHashMap<T,Integer> map, T comp) {
+      Integer idx = map.get (comp);
+      if (idx == null) {
+         idx = map.size();
+         map.put (comp, idx);
+      }
+      return idx;
+   }
+
+   /**
+    * Returns <code>true</code> if this engine was built for the current mesh
+    * and number of attachments of its SkinMeshBody.
+    */
+   boolean isValid() {
+      return (mySkinMesh.getMesh() == myMesh &&
+              mySkinMesh.numAttachments() == myNumVertices &&
+              myMesh.numVertices() >= myNumVertices);
+   }
+
+   void setNumThreads (int num) {
+      num = Math.max (1, num);
+      if (num != myNumThreads) {
+         myNumThreads = num;
+         if (myManager != null) {
+            myManager.setNumThreads (num);
+         }
+         myWorkspaces = null;
+      }
+   }
+
+   void dispose() {
+      if (myManager != null) {
+         myManager.shutdown();
+         myManager = null;
+      }
+   }
+
+   /**
+    * Gathers the frame transforms, blend quaternions and master positions
+    * required by the vertex updates.
+    */
+   private void gatherMasterData() {
+      for (int f=0; f<myFrames.length; f++) {
+         RigidTransform3d T = myFrames[f].getDeltaPose();
+         RotationMatrix3d R = T.R;
+         Vector3d p = T.p;
+         double[] X = myFrameTransforms;
+         int b = 12*f;
+         X[b   ] = R.m00; X[b+1 ] = R.m01; X[b+2 ] = R.m02;
+         X[b+3 ] = R.m10; X[b+4 ] = R.m11; X[b+5 ] = R.m12;
+         X[b+6 ] = R.m20; X[b+7 ] = R.m21; X[b+8 ] = R.m22;
+         X[b+9 ] = p.x;   X[b+10] = p.y;   X[b+11] = p.z;
+         myBlendQuaternions[f] = myFrames[f].getBlendQuaternion();
+      }
+      for (int n=0; n<myNodes.length; n++) {
+         Point3d pos = myNodes[n].getPosition();
+         Point3d rest = myNodes[n].getRestPosition();
+         myNodePos[3*n  ] = pos.x;
+         myNodePos[3*n+1] = pos.y;
+         myNodePos[3*n+2] = pos.z;
+         myNodeRest[3*n  ] = rest.x;
+         myNodeRest[3*n+1] = rest.y;
+         myNodeRest[3*n+2] = rest.z;
+      }
+      for (int n=0; n<myParticles.length; n++) {
+         Point3d pos = myParticles[n].getPosition();
+         myParticlePos[3*n  ] = pos.x;
+         myParticlePos[3*n+1] = pos.y;
+         myParticlePos[3*n+2] = pos.z;
+      }
+   }
+
+   private Workspace[] getWorkspaces() {
+      if (myWorkspaces == null) {
+         myWorkspaces = new Workspace[myNumThreads];
+         for (int i=0; i<myNumThreads; i++) {
+            myWorkspaces[i] = new Workspace();
+         }
+      }
+      return myWorkspaces;
+   }
+
+   /**
+    * Updates the positions of all the mesh vertices that have attachments.
+    * Frame delta poses and blend quaternions are assumed to be current.
+    */
+   void updateVertexPositions() {
+      gatherMasterData();
+      final FrameBlending blending = mySkinMesh.getFrameBlending();
+      final Workspace[] workspaces = getWorkspaces();
+      int nthreads = Math.min (
+         myNumThreads, myNumVertices/MIN_VERTICES_PER_THREAD);
+      if (nthreads <= 1) {
+         updateVertices (workspaces[0], blending, 0, myNumVertices);
+      }
+      else {
+         if (myManager == null) {
+            myManager = new ParallelLoopManager ("skinning", myNumThreads);
+         }
+         myManager.execute (myNumVertices, new ParallelLoopManager.RangeTask() {
+               public void run (int tidx, int start, int end) {
+                  updateVertices (workspaces[tidx], blending, start, end);
+               }
+            });
+      }
+   }
+
+   private void updateVertices (
+      Workspace ws, FrameBlending blending, int start, int end) {
+
+      double[] X = myFrameTransforms;
+      boolean linear = (blending == FrameBlending.LINEAR);
+      for (int v=start; v<end; v++) {
+         Vertex3d vtx = myVertices[v];
+         if (vtx == null) {
+            continue;
+         }
+         Point3d base = myBasePositions[v];
+         double px = 0;
+         double py = 0;
+         double pz = 0;
+         boolean blendingQ = false;
+         int fidx = 0;
+         double dualw = 0;
+         for (int k=myOffsets[v]; k<myOffsets[v+1]; k++) {
+            double w = myWeights[k];
+            int idx = myIndices[k];
+            switch (myTypes[k]) {
+               case FRAME: {
+                  if (linear) {
+                     int b = 12*idx;
+                     double tx = X[b  ]*base.x + X[b+1]*base.y + X[b+2]*base.z;
+                     double ty = X[b+3]*base.x + X[b+4]*base.y + X[b+5]*base.z;
+                     double tz = X[b+6]*base.x + X[b+7]*base.y + X[b+8]*base.z;
+                     tx += X[b+9];
+                     ty += X[b+10];
+                     tz += X[b+11];
+                     tx *= w;
+                     ty *= w;
+                     tz *= w;
+                     px += tx;
+                     py += ty;
+                     pz += tz;
+                  }
+                  else if (blending == FrameBlending.DUAL_QUATERNION_LINEAR) {
+                     if (!blendingQ) {
+                        ws.blendQ.scale (w, myBlendQuaternions[idx]);
+                        blendingQ = true;
+                     }
+                     else {
+                        ws.blendQ.scaledAdd (w, myBlendQuaternions[idx]);
+                     }
+                     dualw += w;
+                  }
+                  else if (
+                     blending == FrameBlending.DUAL_QUATERNION_ITERATIVE) {
+                     ws.dualqs[fidx] = myBlendQuaternions[idx];
+                     ws.weights[fidx] = w;
+                     dualw += w;
+                     fidx++;
+                  }
+                  break;
+               }
+               case FEM_DISPLACEMENT: {
+                  int b = 3*idx;
+                  double nw = -w;
+                  px += w*myNodePos[b  ];
+                  py += w*myNodePos[b+1];
+                  pz += w*myNodePos[b+2];
+                  px += nw*myNodeRest[b  ];
+                  py += nw*myNodeRest[b+1];
+                  pz += nw*myNodeRest[b+2];
+                  break;
+               }
+               case BASE: {
+                  px += w*base.x;
+                  py += w*base.y;
+                  pz += w*base.z;
+                  break;
+               }
+               case PARTICLE: {
+                  int b = 3*idx;
+                  px += w*myParticlePos[b  ];
+                  py += w*myParticlePos[b+1];
+                  pz += w*myParticlePos[b+2];
+                  break;
+               }
+            }
+         }
+         if (blendingQ) {
+            ws.blendQ.normalize();
+            ws.blendQ.transform (ws.tmp, base);
+            px += dualw*ws.tmp.x;
+            py += dualw*ws.tmp.y;
+            pz += dualw*ws.tmp.z;
+         }
+         else if (blending == FrameBlending.DUAL_QUATERNION_ITERATIVE &&
+                  fidx > 0) {
+            ws.blendQ.dualQuaternionIterativeBlending (
+               ws.weights, ws.dualqs, fidx,
+               SkinMeshBody.DQ_BLEND_TOLERANCE,
+               SkinMeshBody.DQ_MAX_BLEND_STEPS);
+            ws.blendQ.transform (ws.tmp, base);
+            px += dualw*ws.tmp.x;
+            py += dualw*ws.tmp.y;
+            pz += dualw*ws.tmp.z;
+         }
+         ws.pos.set (px, py, pz);
+         vtx.setPosition (ws.pos);
+      }
+   }
+}
@@ -114,6 +114,17 @@ public class PointSkinAttachment extends PointAttachment
       myConnections = new Connection[0];
       myNumConnections = 0;
       myMasters = null;
+      invalidatePackedSkinning();
+   }
+
+   /**
+    * Notifies the associated SkinMeshBody, if any, that the packed copy of
+    * its attachment data is no longer valid.
+    */
+   protected void invalidatePackedSkinning() {
+      if (mySkinMesh != null) {
+         mySkinMesh.invalidatePackedSkinning();
+      }
    }
 
    /**
@@ -155,6 +166,7 @@ public class PointSkinAttachment extends PointAttachment
     */
    public void setWeight(int idx, double w) {
       myConnections[idx].myWeight = w;
+      invalidatePackedSkinning();
    }
 
    /**
@@ -263,6 +275,7 @@ public class PointSkinAttachment extends PointAttachment
       ensureCapacity(numc + 1);
       myConnections[numc] = connection;
       myNumConnections++;
+      invalidatePackedSkinning();
    }
 
    /**
@@ -284,6 +297,7 @@ public class PointSkinAttachment extends PointAttachment
        */
       public void setWeight(double w) {
          myWeight = w;
+         invalidatePackedSkinning();
       }
 
       /**
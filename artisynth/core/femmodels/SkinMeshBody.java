@@ -219,6 +219,16 @@ public class SkinMeshBody extends SkinMeshBase
    
    FrameBlending myFrameBlending = DEFAULT_FRAME_BLENDING;
 
+   public static boolean DEFAULT_PACKED_SKINNING = true;
+   protected boolean myPackedSkinningP = DEFAULT_PACKED_SKINNING;
+
+   public static int DEFAULT_NUM_SKINNING_THREADS = 1;
+   protected int myNumSkinningThreads = DEFAULT_NUM_SKINNING_THREADS;
+
+   // packed copy of the attachments, used to update the vertices
+   protected PackedSkinningEngine myPackedEngine;
+   protected boolean myPackedEngineValid = false;
+
    protected ArrayList<FrameInfo> myFrameInfo;
    protected ArrayList<FemModelInfo> myFemModelInfo;
    protected ComponentList<PointSkinAttachment> myVertexAttachments;
@@ -346,7 +356,7 @@ public class SkinMeshBody extends SkinMeshBase
          myDeltaPose.mulInverseRight (
             myFrame.getPose(), myBasePose);
          if (myFrameBlending != FrameBlending.LINEAR) {
-            updateDualQuaternions();
+            updateDualQuaternion();
          }
       }
 
@@ -521,6 +531,14 @@ public class SkinMeshBody extends SkinMeshBase
       myProps.add (
          "collidable", 
          "sets the collidability of this SkinMeshBody mesh", DEFAULT_COLLIDABILITY);      
+      myProps.add (
+         "packedSkinning",
+         "update vertices using packed attachment data",
+         DEFAULT_PACKED_SKINNING);
+      myProps.add (
+         "numSkinningThreads",
+         "number of threads used for packed vertex updates",
+         DEFAULT_NUM_SKINNING_THREADS, "[1,inf)");
    }
 
    public PropertyList getAllPropertyInfo() {
@@ -563,6 +581,103 @@ public class SkinMeshBody extends SkinMeshBase
       return myFrameBlending;
    }
 
+   /**
+    * Enables or disables packed skinning. When enabled, the vertex positions
+    * are computed from a packed copy of the attachment weights and master
+    * indices, rather than by calling each attachment, which is much faster
+    * for large meshes. The results are identical. Attachments with
+    * connection types other than those defined in {@link
+    * PointSkinAttachment} are always updated through the attachments.
+    *
+    * <p>The packed data is rebuilt automatically when attachments, frames or
+    * connections are added or removed, or when connection weights are set
+    * using {@link PointSkinAttachment#setWeight}. If the weight fields of
+    * connections are modified directly, {@link #invalidatePackedSkinning}
+    * must be called.
+    *
+    * @param enable if <code>true</code>, enables packed skinning
+    */
+   public void setPackedSkinning (boolean enable) {
+      if (enable != myPackedSkinningP) {
+         myPackedSkinningP = enable;
+         invalidatePackedSkinning();
+      }
+   }
+
+   /**
+    * Queries whether packed skinning is enabled. See {@link
+    * #setPackedSkinning}.
+    *
+    * @return <code>true</code> if packed skinning is enabled
+    */
+   public boolean getPackedSkinning() {
+      return myPackedSkinningP;
+   }
+
+   /**
+    * Sets the number of threads used to update the vertex positions when
+    * packed skinning is enabled. The default value of 1 causes the update
+    * to be done in the calling thread. Small meshes are always updated in
+    * the calling thread.
+    *
+    * @param num number of skinning threads
+    */
+   public void setNumSkinningThreads (int num) {
+      if (num < 1) {
+         num = 1;
+      }
+      myNumSkinningThreads = num;
+      if (myPackedEngine != null) {
+         myPackedEngine.setNumThreads (num);
+      }
+   }
+
+   /**
+    * Returns the number of threads used to update the vertex positions. See
+    * {@link #setNumSkinningThreads}.
+    *
+    * @return number of skinning threads
+    */
+   public int getNumSkinningThreads() {
+      return myNumSkinningThreads;
+   }
+
+   /**
+    * Notifies this SkinMeshBody that its packed skinning data needs to be
+    * rebuilt, because of changes to its attachments.
+    */
+   public void invalidatePackedSkinning() {
+      if (myPackedEngine != null) {
+         myPackedEngine.dispose();
+         myPackedEngine = null;
+      }
+      myPackedEngineValid = false;
+   }
+
+   /**
+    * Returns the packed skinning engine, building it if necessary, or
+    * <code>null</code> if the attachments cannot be packed.
+    */
+   protected PackedSkinningEngine getPackedEngine() {
+      if (myPackedEngine != null &&
+          (myPackedEngine.mySkinMesh != this || !myPackedEngine.isValid())) {
+         // engine was copied from another body, or attachments changed
+         if (myPackedEngine.mySkinMesh == this) {
+            myPackedEngine.dispose();
+         }
+         myPackedEngine = null;
+         myPackedEngineValid = false;
+      }
+      if (!myPackedEngineValid) {
+         myPackedEngine = PackedSkinningEngine.create (this);
+         if (myPackedEngine != null) {
+            myPackedEngine.setNumThreads (myNumSkinningThreads);
+         }
+         myPackedEngineValid = true;
+      }
+      return myPackedEngine;
+   }
+
    /**
     * Returns the number of attachments currently in this SkinMeshBody.
     */
@@ -599,6 +714,7 @@ public class SkinMeshBody extends SkinMeshBase
       int vidx = myVertexAttachments.size();
       myVertexAttachments.addNumbered (a, vidx);
       a.setSkinMesh (this);
+      invalidatePackedSkinning();
       if (initBase) {
          a.setBasePosition (getVertex(vidx).getPosition());
       }
@@ -611,6 +727,7 @@ public class SkinMeshBody extends SkinMeshBase
    public void setAttachment( int idx, PointSkinAttachment a, boolean initBase) {
       myVertexAttachments.set(idx, a);
       a.setSkinMesh (this);
+      invalidatePackedSkinning();
       if (initBase) {
          a.setBasePosition (getVertex(idx).getPosition());
       }
@@ -621,6 +738,7 @@ public class SkinMeshBody extends SkinMeshBase
     */
    public void clearAttachments() {
       myVertexAttachments.clear();
+      invalidatePackedSkinning();
    }
 
    /**
@@ -660,6 +778,7 @@ public class SkinMeshBody extends SkinMeshBase
       int numVtxs = mesh.numVertices();
       myVertexAttachments.removeAll();
       myVertexAttachments.ensureCapacity (numVtxs);
+      invalidatePackedSkinning();
    }
 
    /**
@@ -676,6 +795,7 @@ public class SkinMeshBody extends SkinMeshBase
       FrameInfo finfo = new FrameInfo (frame);
       finfo.setIndex (myFrameInfo.size());
       myFrameInfo.add (finfo);
+      invalidatePackedSkinning();
    }
 
    /**
@@ -704,6 +824,7 @@ public class SkinMeshBody extends SkinMeshBase
             myFrameInfo.set(idx, last);
             myFrameInfo.remove(lastIdx);
          }
+         invalidatePackedSkinning();
          return true;
       }
       
@@ -1024,7 +1145,17 @@ public class SkinMeshBody extends SkinMeshBase
       for (FrameInfo finfo : myFrameInfo) {
          finfo.updatePosState();
       }
-      super.updateSlavePos();
+      PackedSkinningEngine engine = null;
+      if (myPackedSkinningP) {
+         engine = getPackedEngine();
+      }
+      if (engine != null) {
+         engine.updateVertexPositions();
+         getMesh().notifyVertexPositionsModified();
+      }
+      else {
+         super.updateSlavePos();
+      }
    }
 
    public void transformGeometry (
@@ -1156,6 +1287,7 @@ public class SkinMeshBody extends SkinMeshBase
       for (int i=0; i<myVertexAttachments.size(); i++) {
          myVertexAttachments.get(i).setSkinMesh (this);
       }      
+      invalidatePackedSkinning();
    }
 
    protected boolean postscanItem (
@@ -1204,6 +1336,7 @@ public class SkinMeshBody extends SkinMeshBase
    public void disconnectFromHierarchy() {
       // XXX not sure what to do here ... see comment in connectToParent()
       super.disconnectFromHierarchy();
+      invalidatePackedSkinning();
    }
 
    /**
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package artisynth.core.femmodels;
+
+import maspack.geometry.MeshFactory;
+import maspack.geometry.PolygonalMesh;
+import maspack.matrix.Point3d;
+import maspack.matrix.RigidTransform3d;
+import maspack.util.RandomGenerator;
+import maspack.util.TestException;
+import maspack.util.UnitTest;
+import artisynth.core.femmodels.SkinMeshBody.FrameBlending;
+import artisynth.core.mechmodels.RigidBody;
+
+/**
+ * Checks that packed skinning gives the same vertex positions as updating
+ * each vertex through its attachment.
+ */
+public class SkinMeshBodyTest extends UnitTest {
+
+   RigidBody myBody0;
+   RigidBody myBody1;
+   FemModel3d myFem;
+   SkinMeshBody mySkin;
+
+   SkinMeshBodyTest() {
+      myBody0 = RigidBody.createBox ("body0", 1.0, 0.5, 0.5, 1000);
+      myBody0.setPose (new RigidTransform3d (-0.6, 0, 0));
+      myBody1 = RigidBody.createBox ("body1", 1.0, 0.5, 0.5, 1000);
+      myBody1.setPose (new RigidTransform3d (0.6, 0, 0));
+      myFem = FemFactory.createHexGrid (null, 0.5, 0.5, 1.5, 2, 2, 6);
+
+      // icosahedral sphere with about 10000 vertices, so that the
+      // multithreaded update is actually used
+      PolygonalMesh mesh = MeshFactory.createIcosahedralSphere (1.0, 5);
+      mySkin = new SkinMeshBody (mesh);
+      mySkin.addFrame (myBody0);
+      mySkin.addFrame (myBody1);
+      mySkin.addFemModel (myFem);
+      mySkin.computeWeights();
+   }
+
+   void moveMasters() {
+      RigidTransform3d T = new RigidTransform3d();
+      T.setRandom();
+      T.p.scale (0.1);
+      myBody0.setPose (T);
+      T.setRandom();
+      T.p.scale (0.1);
+      myBody1.setPose (T);
+      for (FemNode3d n : myFem.getNodes()) {
+         Point3d pos = new Point3d (n.getRestPosition());
+         pos.x += RandomGenerator.nextDouble (-0.1, 0.1);
+         pos.y += RandomGenerator.nextDouble (-0.1, 0.1);
+         pos.z += RandomGenerator.nextDouble (-0.1, 0.1);
+         n.setPosition (pos);
+      }
+   }
+
+   Point3d[] getVertexPositions (boolean packed, int numThreads) {
+      mySkin.setPackedSkinning (packed);
+      mySkin.setNumSkinningThreads (numThreads);
+      mySkin.updateSlavePos();
+      PolygonalMesh mesh = (PolygonalMesh)mySkin.getMesh();
+      Point3d[] pos = new Point3d[mesh.numVertices()];
+      for (int i=0; i<pos.length; i++) {
+         pos[i] = new Point3d (mesh.getVertex(i).getPosition());
+      }
+      return pos;
+   }
+
+   void checkPositions (
+      String msg, Point3d[] pos, Point3d[] chk) {
+      for (int i=0; i<pos.length; i++) {
+         if (!pos[i].equals (chk[i])) {
+            throw new TestException (
+               msg + ": vertex " + i + " is " + pos[i] + ", expected " + chk[i]);
+         }
+      }
+   }
+
+   public void test() {
+      for (FrameBlending blending : FrameBlending.values()) {
+         mySkin.setFrameBlending (blending);
+         for (int k=0; k<3; k++) {
+            moveMasters();
+            Point3d[] chk = getVertexPositions (false, 1);
+            checkPositions (
+               blending + ", 1 thread", getVertexPositions (true, 1), chk);
+            checkPositions (
+               blending + ", 3 threads", getVertexPositions (true, 3), chk);
+         }
+      }
+      // changing a weight should cause the packed data to be rebuilt
+      PointSkinAttachment a = mySkin.getAttachment (0);
+      a.setWeight (0, 2*a.getWeight (0));
+      Point3d[] chk = getVertexPositions (false, 1);
+      checkPositions ("modified weight", getVertexPositions (true, 1), chk);
+      mySkin.setNumSkinningThreads (1);
+      mySkin.invalidatePackedSkinning();
+   }
+
+   public static void main (String[] args) {
+      SkinMeshBodyTest tester = new SkinMeshBodyTest();
+      RandomGenerator.setSeed (0x1234);
+      tester.runtest();
+   }
+}
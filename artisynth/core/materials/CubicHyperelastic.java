@@ -24,9 +24,6 @@ public class CubicHyperelastic extends IncompressibleMaterial {
    PropertyMode myG30Mode = PropertyMode.Inherited;
    PropertyMode myG20Mode = PropertyMode.Inherited;
 
-   private SymmetricMatrix3d myB;
-   private SymmetricMatrix3d myTmp;
-
    static {
       myProps.addInheritable (
          "G10:Inherited", "G10 parameter", DEFAULT_G10);
@@ -40,9 +37,29 @@ public class CubicHyperelastic extends IncompressibleMaterial {
       return myProps;
    }
 
+   // temporaries for computing stress and tangent. A thread that evaluates
+   // the material concurrently with others uses its own set instead,
+   // stored in its SolidDeformation.
+   private static class Workspace {
+      SymmetricMatrix3d B = new SymmetricMatrix3d();
+      SymmetricMatrix3d tmp = new SymmetricMatrix3d();
+   }
+
+   private Workspace myWorkspace = new Workspace();
+
+   private Workspace getWorkspace (SolidDeformation def) {
+      if (!def.isMaterialScratchEnabled()) {
+         return myWorkspace;
+      }
+      Workspace ws = (Workspace)def.getMaterialScratch (Workspace.class);
+      if (ws == null) {
+         ws = new Workspace();
+         def.setMaterialScratch (Workspace.class, ws);
+      }
+      return ws;
+   }
+
    public CubicHyperelastic (){
-      myB = new SymmetricMatrix3d();
-      myTmp = new SymmetricMatrix3d();
    }
 
    public CubicHyperelastic (
@@ -129,16 +146,18 @@ public class CubicHyperelastic extends IncompressibleMaterial {
    public void computeStress (
       SymmetricMatrix3d sigma, SolidDeformation def, Matrix3d Q,
       FemMaterial baseMat) {
+      Workspace ws = getWorkspace (def);
+      SymmetricMatrix3d B = ws.B;
 
       double J = def.getDetF();
       double avgp = def.getAveragePressure();
 
       // calculate deviatoric left Cauchy-Green tensor
-      def.computeDevLeftCauchyGreen(myB);
+      def.computeDevLeftCauchyGreen(B);
 
       // Invariants of B (= invariants of C)
       // Note that these are the invariants of Btilde, not of B!
-      double I1 = myB.trace();
+      double I1 = B.trace();
 
       //
       // W = G10*(I1-3) + G20*(I1-3)^2 + G30*(I1-3)^3
@@ -151,7 +170,7 @@ public class CubicHyperelastic extends IncompressibleMaterial {
       // T = F*dW/dC*Ft
       // 
       //   mat3ds T = B*(W1 + W2*I1) - B2*W2;
-      sigma.scale (W1, myB);
+      sigma.scale (W1, B);
 
       // calculate stress: s = pI + (2/J)dev[T]
       // 
@@ -168,15 +187,18 @@ public class CubicHyperelastic extends IncompressibleMaterial {
    public void computeTangent (
       Matrix6d D, SymmetricMatrix3d stress, SolidDeformation def, 
       Matrix3d Q, FemMaterial baseMat) {
+      Workspace ws = getWorkspace (def);
+      SymmetricMatrix3d B = ws.B;
+      SymmetricMatrix3d tmp = ws.tmp;
 
       double J = def.getDetF();
       double Ji = 1.0/J;
 
       // calculate deviatoric left Cauchy-Green tensor
-      def.computeDevLeftCauchyGreen(myB);
+      def.computeDevLeftCauchyGreen(B);
 
       // Invariants of B (= invariants of C)
-      double I1 = myB.trace();
+      double I1 = B.trace();
 
       // --- TODO: put strain energy derivatives here ---
       //
@@ -213,15 +235,15 @@ public class CubicHyperelastic extends IncompressibleMaterial {
       TensorUtils.addScaledIdentityProduct (D, p + 4.0/9.0*Ji*(wcc-w0));
       TensorUtils.addScaledIdentity (D, -2*p + 4.0/3.0*Ji*w0);
 
-      myTmp.deviator (stress);
+      tmp.deviator (stress);
       TensorUtils.addSymmetricTensorProduct (
-         D, -2.0/3.0, myTmp, SymmetricMatrix3d.IDENTITY);
+         D, -2.0/3.0, tmp, SymmetricMatrix3d.IDENTITY);
 
-      TensorUtils.addTensorProduct (D, w2*4.0*Ji, myB);
+      TensorUtils.addTensorProduct (D, w2*4.0*Ji, B);
 
-      myTmp.scale (wc1, myB);  
+      tmp.scale (wc1, B);  
       TensorUtils.addSymmetricTensorProduct (
-         D, -4.0/3.0*Ji,myTmp,SymmetricMatrix3d.IDENTITY);
+         D, -4.0/3.0*Ji,tmp,SymmetricMatrix3d.IDENTITY);
 
       D.setLowerToUpper();
       
@@ -244,8 +266,7 @@ public class CubicHyperelastic extends IncompressibleMaterial {
 
    public CubicHyperelastic clone() {
       CubicHyperelastic mat = (CubicHyperelastic)super.clone();
-      mat.myB = new SymmetricMatrix3d();
-      mat.myTmp = new SymmetricMatrix3d();
+      mat.myWorkspace = new Workspace();
       return mat;
    }
 
@@ -40,15 +40,34 @@ public class FullBlemkerMuscle extends MuscleMaterial {
    protected PropertyMode myG1Mode = PropertyMode.Inherited;
    protected PropertyMode myG2Mode = PropertyMode.Inherited;
 
-   protected SymmetricMatrix3d myB = new SymmetricMatrix3d();
-   protected SymmetricMatrix3d myB2 = new SymmetricMatrix3d();
-   protected Vector3d myTmp = new Vector3d();
-   protected SymmetricMatrix3d myMat = new SymmetricMatrix3d();
-
    // Set this true to keep the tangent matrix continuous (and symmetric) at
    // lam = lamOpt, at the expense of slightly negative forces for lam < lamOpt
    protected static boolean myZeroForceBelowLamOptP = false;
 
+   // temporaries for computing stress and tangent. A thread that evaluates
+   // the material concurrently with others uses its own set instead,
+   // stored in its SolidDeformation.
+   private static class Workspace {
+      SymmetricMatrix3d B = new SymmetricMatrix3d();
+      SymmetricMatrix3d B2 = new SymmetricMatrix3d();
+      SymmetricMatrix3d mat = new SymmetricMatrix3d();
+      Vector3d tmp = new Vector3d();
+   }
+
+   private Workspace myWorkspace = new Workspace();
+
+   private Workspace getWorkspace (SolidDeformation def) {
+      if (!def.isMaterialScratchEnabled()) {
+         return myWorkspace;
+      }
+      Workspace ws = (Workspace)def.getMaterialScratch (Workspace.class);
+      if (ws == null) {
+         ws = new Workspace();
+         def.setMaterialScratch (Workspace.class, ws);
+      }
+      return ws;
+   }
+
    public FullBlemkerMuscle() {
       super();
    }
@@ -274,8 +293,12 @@ public class FullBlemkerMuscle extends MuscleMaterial {
    public void computeStress (
       SymmetricMatrix3d sigma, double excitation, Vector3d dir0,
       SolidDeformation def, FemMaterial baseMat) {
+      Workspace ws = getWorkspace (def);
+      SymmetricMatrix3d B = ws.B;
+      SymmetricMatrix3d B2 = ws.B2;
+      SymmetricMatrix3d tmpMat = ws.mat;
       
-      Vector3d a = myTmp;
+      Vector3d a = ws.tmp;
       def.getF().mul (a, dir0);
       double mag = a.norm();
       a.scale (1/mag);
@@ -292,16 +315,16 @@ public class FullBlemkerMuscle extends MuscleMaterial {
       double I5 = 0;
 
        // calculate deviatoric left Cauchy-Green tensor
-      def.computeDevLeftCauchyGreen(myB);     
+      def.computeDevLeftCauchyGreen(B);     
       
       // calculate square of B
-      myB2.mulTransposeLeft (myB);
+      B2.mulTransposeLeft (B);
       Vector3d Ba = new Vector3d();
-      myB.mul (Ba, a);
+      B.mul (Ba, a);
 
       // Invariants of deviatoric part of B
-      I1 = myB.trace();
-      I2 = 0.5*(I1*I1 - myB2.trace());      
+      I1 = B.trace();
+      I2 = 0.5*(I1*I1 - B2.trace());      
       I5 = I4*Ba.dot(a);
 
       // calculate new invariants
@@ -393,21 +416,25 @@ public class FullBlemkerMuscle extends MuscleMaterial {
       W4 = F1D4 + F2D4 + FfD4;
       W5 = F1D5 + F2D5;
 
-      myMat.scale (W1 + W2*I1, myB);
-      myMat.scaledAdd (-W2, myB2, myMat);
-      myMat.addScaledDyad (I4*W4, a);
-      myMat.addScaledSymmetricDyad (I4*W5, Ba, a);
-      myMat.deviator();
-      myMat.scale (2.0/J);
+      tmpMat.scale (W1 + W2*I1, B);
+      tmpMat.scaledAdd (-W2, B2, tmpMat);
+      tmpMat.addScaledDyad (I4*W4, a);
+      tmpMat.addScaledSymmetricDyad (I4*W5, Ba, a);
+      tmpMat.deviator();
+      tmpMat.scale (2.0/J);
 
-      sigma.set (myMat);
+      sigma.set (tmpMat);
    }
 
    public void computeTangent (
       Matrix6d D, SymmetricMatrix3d stress, double excitation, Vector3d dir0, 
       SolidDeformation def, FemMaterial baseMat) {
+      Workspace ws = getWorkspace (def);
+      SymmetricMatrix3d B = ws.B;
+      SymmetricMatrix3d B2 = ws.B2;
+      SymmetricMatrix3d tmpMat = ws.mat;
 
-      Vector3d a = myTmp;
+      Vector3d a = ws.tmp;
       def.getF().mul (a, dir0);
       double mag = a.norm();
       a.scale (1/mag);
@@ -423,15 +450,15 @@ public class FullBlemkerMuscle extends MuscleMaterial {
       double I5 = 0;
 
        // calculate deviatoric left Cauchy-Green tensor
-      def.computeDevLeftCauchyGreen(myB);     
+      def.computeDevLeftCauchyGreen(B);     
       // calculate square of B
-      myB2.mulTransposeLeft (myB);
+      B2.mulTransposeLeft (B);
       Vector3d Ba = new Vector3d();
-      myB.mul (Ba, a);
+      B.mul (Ba, a);
 
       // Invariants of deviatoric part of B
-      I1 = myB.trace();
-      I2 = 0.5*(I1*I1 - myB2.trace());      
+      I1 = B.trace();
+      I2 = 0.5*(I1*I1 - B2.trace());      
       I5 = I4*Ba.dot(a);
 
       // calculate new invariants
@@ -582,16 +609,16 @@ public class FullBlemkerMuscle extends MuscleMaterial {
 
       SymmetricMatrix3d AA = new SymmetricMatrix3d();
       SymmetricMatrix3d AB = new SymmetricMatrix3d();
-      SymmetricMatrix3d WCCC = myMat;
+      SymmetricMatrix3d WCCC = tmpMat;
 
       AA.dyad (a);
       AB.symmetricDyad (a, Ba);
 
       WCCC.scale (
          W11*I1 + W12*I1*I1 + W2*I1 + 2*W12*I2 + 2*W22*I1*I2 +
-         W14*I4 + W24*I1*I4 + 2*W15*I5 + 2*W25*I1*I5, myB);
+         W14*I4 + W24*I1*I4 + 2*W15*I5 + 2*W25*I1*I5, B);
       WCCC.scaledAdd (
-         -(W12*I1 + 2*W22*I2 + W2 + W24*I4 + 2*W25*I5), myB2, WCCC);
+         -(W12*I1 + 2*W22*I2 + W2 + W24*I4 + 2*W25*I5), B2, WCCC);
       WCCC.scaledAdd (
          (W14*I1 + 2*W24*I2 + W44*I4 + 2*W45*I5)*I4, AA, WCCC);
       WCCC.scaledAdd (
@@ -599,42 +626,43 @@ public class FullBlemkerMuscle extends MuscleMaterial {
 
       D.setZero();
       TensorUtils.addTensorProduct (
-         D, (W11 + 2.0*W12*I1 + W2 + W22*I1*I1)*4*Ji, myB);
-      TensorUtils.addSymmetricTensorProduct (D, -(W12+W22*I1)*4*Ji, myB, myB2);
-      TensorUtils.addTensorProduct (D, W22*4*Ji, myB2);
-      TensorUtils.addSymmetricTensorProduct (D, (W14+W24*I1)*I4*4*Ji, myB, AA);
-      TensorUtils.addSymmetricTensorProduct (D, (W15+W25*I1)*I4*4*Ji, myB, AB);
-      TensorUtils.addSymmetricTensorProduct (D, (-W24*I4)*4*Ji, myB2, AA);
+         D, (W11 + 2.0*W12*I1 + W2 + W22*I1*I1)*4*Ji, B);
+      TensorUtils.addSymmetricTensorProduct (D, -(W12+W22*I1)*4*Ji, B, B2);
+      TensorUtils.addTensorProduct (D, W22*4*Ji, B2);
+      TensorUtils.addSymmetricTensorProduct (D, (W14+W24*I1)*I4*4*Ji, B, AA);
+      TensorUtils.addSymmetricTensorProduct (D, (W15+W25*I1)*I4*4*Ji, B, AB);
+      TensorUtils.addSymmetricTensorProduct (D, (-W24*I4)*4*Ji, B2, AA);
 
       TensorUtils.addTensorProduct (D, (W44*I4*I4)*4*Ji, AA);
       TensorUtils.addSymmetricTensorProduct (D, (W45*I4)*I4*4*Ji, AA, AB);
       TensorUtils.addTensorProduct (D, (W55)*I4*I4*4*Ji, AB);
-      TensorUtils.addSymmetricTensorProduct4 (D, W5*I4*4*Ji, AA, myB);
+      TensorUtils.addSymmetricTensorProduct4 (D, W5*I4*4*Ji, AA, B);
         
       TensorUtils.addScaledIdentityProduct (D, 4/9.0*Ji*(CW2CCC-WCC));
       WCCC.scale (-4/3.0*Ji);
       TensorUtils.addSymmetricIdentityProduct (D, WCCC);
       TensorUtils.addScaledIdentity (D, 4/3.0*Ji*WCC);
 
-      // compute stress (in myMat) due to this material 
-      myMat.scale (W1 + W2*I1, myB);
-      myMat.scaledAdd (-W2, myB2, myMat);
+      // compute stress (in tmpMat) due to this material 
+      tmpMat.scale (W1 + W2*I1, B);
+      tmpMat.scaledAdd (-W2, B2, tmpMat);
 
-      myMat.scaledAdd (I4*W4, AA);
-      myMat.scaledAdd (I4*W5, AB);
-      myMat.deviator();
-      myMat.scale (2.0/J);
+      tmpMat.scaledAdd (I4*W4, AA);
+      tmpMat.scaledAdd (I4*W5, AB);
+      tmpMat.deviator();
+      tmpMat.scale (2.0/J);
         
-      //myMat.set (def.getStrain());
-      //myMat.deviator();
-      myMat.scale (-2.0/3.0);
-      TensorUtils.addSymmetricIdentityProduct (D, myMat);
+      //tmpMat.set (def.getStrain());
+      //tmpMat.deviator();
+      tmpMat.scale (-2.0/3.0);
+      TensorUtils.addSymmetricIdentityProduct (D, tmpMat);
 
       D.setLowerToUpper();
    }
 
    public double computeStretch (Vector3d dir0, SolidDeformation def) {
-      Vector3d a = myTmp;
+      Workspace ws = getWorkspace (def);
+      Vector3d a = ws.tmp;
       def.getF().mul(a, dir0);
       double mag = a.norm();
       double J = def.getDetF();
@@ -660,10 +688,7 @@ public class FullBlemkerMuscle extends MuscleMaterial {
 
    public FullBlemkerMuscle clone() {
       FullBlemkerMuscle mat = (FullBlemkerMuscle)super.clone();
-      mat.myTmp = new Vector3d();
-      mat.myMat = new SymmetricMatrix3d();
-      mat.myB = new SymmetricMatrix3d();
-      mat.myB2 = new SymmetricMatrix3d();
+      mat.myWorkspace = new Workspace();
       return mat;
    }
 
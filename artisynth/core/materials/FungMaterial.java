@@ -37,9 +37,6 @@ public class FungMaterial extends IncompressibleMaterial {
    private double myL31 = DEFAULT_L31; 
    private double myCC  = DEFAULT_CC; 
 
-   private double[]   mu = new double[3]; 
-   private double[][] lam = new double[3][3]; 
-
    PropertyMode myMU1Mode = PropertyMode.Inherited;
    PropertyMode myMU2Mode = PropertyMode.Inherited;
    PropertyMode myMU3Mode = PropertyMode.Inherited;
@@ -51,10 +48,6 @@ public class FungMaterial extends IncompressibleMaterial {
    PropertyMode myL31Mode = PropertyMode.Inherited;
    PropertyMode myCCMode  = PropertyMode.Inherited;
 
-   private SymmetricMatrix3d myB;
-   private SymmetricMatrix3d myC;
-   private SymmetricMatrix3d myC2;
-
    static {
       myProps.addInheritable (
          "MU1:Inherited", "MU1", DEFAULT_MU1, "[0,inf]");
@@ -82,10 +75,32 @@ public class FungMaterial extends IncompressibleMaterial {
       return myProps;
    }
 
+   // temporaries for computing stress and tangent. A thread that evaluates
+   // the material concurrently with others uses its own set instead,
+   // stored in its SolidDeformation.
+   private static class Workspace {
+      SymmetricMatrix3d B = new SymmetricMatrix3d();
+      SymmetricMatrix3d C = new SymmetricMatrix3d();
+      SymmetricMatrix3d C2 = new SymmetricMatrix3d();
+      double[] mu = new double[3];
+      double[][] lam = new double[3][3];
+   }
+
+   private Workspace myWorkspace = new Workspace();
+
+   private Workspace getWorkspace (SolidDeformation def) {
+      if (!def.isMaterialScratchEnabled()) {
+         return myWorkspace;
+      }
+      Workspace ws = (Workspace)def.getMaterialScratch (Workspace.class);
+      if (ws == null) {
+         ws = new Workspace();
+         def.setMaterialScratch (Workspace.class, ws);
+      }
+      return ws;
+   }
+
    public FungMaterial () {
-      myB   = new SymmetricMatrix3d();
-      myC   = new SymmetricMatrix3d();
-      myC2  = new SymmetricMatrix3d();
    }
 
    public FungMaterial (double MU1, double MU2, double MU3, double L11, double L22, 
@@ -306,6 +321,12 @@ public class FungMaterial extends IncompressibleMaterial {
    public void computeStress (
       SymmetricMatrix3d sigma, SolidDeformation def, Matrix3d Q,
       FemMaterial baseMat) {
+      Workspace ws = getWorkspace (def);
+      SymmetricMatrix3d B = ws.B;
+      SymmetricMatrix3d C = ws.C;
+      SymmetricMatrix3d C2 = ws.C2;
+      double[] mu = ws.mu;
+      double[][] lam = ws.lam;
 
       sigma.setZero();
 
@@ -348,13 +369,13 @@ public class FungMaterial extends IncompressibleMaterial {
       double avgp = def.getAveragePressure();
 
       // Calculate deviatoric left Cauchy-Green tensor
-      def.computeDevLeftCauchyGreen(myB);
+      def.computeDevLeftCauchyGreen(B);
 
       // Calculate deviatoric right Cauchy-Green tensor
-      def.computeDevRightCauchyGreen(myC);
+      def.computeDevRightCauchyGreen(C);
 
       // calculate square of C
-      myC2.mulTransposeLeft (myC);
+      C2.mulTransposeLeft (C);
 
       Matrix3d mydevF = new Matrix3d(def.getF());
       mydevF.scale(Math.pow(J,-1.0 / 3.0));
@@ -365,10 +386,10 @@ public class FungMaterial extends IncompressibleMaterial {
          a0[i].y = Q.get(1,i);
          a0[i].z = Q.get(2,i);
 
-         vtmp.mul(myC,a0[i]);
+         vtmp.mul(C,a0[i]);
          K[i] = a0[i].dot(vtmp);
 
-         vtmp.mul(myC2,a0[i]);
+         vtmp.mul(C2,a0[i]);
          L[i] = a0[i].dot(vtmp);
 
          a[i].mul(mydevF,a0[i]);
@@ -390,7 +411,7 @@ public class FungMaterial extends IncompressibleMaterial {
 
       // Evaluate the stress
       SymmetricMatrix3d bmi = new SymmetricMatrix3d(); 
-      bmi.sub(myB,SymmetricMatrix3d.IDENTITY);
+      bmi.sub(B,SymmetricMatrix3d.IDENTITY);
       for (int i=0; i<3; i++) {
          //       s += mu[i]*K[i]*(A[i]*bmi + bmi*A[i]);
          tmpMatrix.mul(A[i], bmi);
@@ -426,6 +447,12 @@ public class FungMaterial extends IncompressibleMaterial {
    public void computeTangent (
       Matrix6d c, SymmetricMatrix3d stress, SolidDeformation def, 
       Matrix3d Q, FemMaterial baseMat) {
+      Workspace ws = getWorkspace (def);
+      SymmetricMatrix3d B = ws.B;
+      SymmetricMatrix3d C = ws.C;
+      SymmetricMatrix3d C2 = ws.C2;
+      double[] mu = ws.mu;
+      double[][] lam = ws.lam;
       
       c.setZero();
 
@@ -470,13 +497,13 @@ public class FungMaterial extends IncompressibleMaterial {
       double avgp = def.getAveragePressure();
 
       // Calculate deviatoric left Cauchy-Green tensor
-      def.computeDevLeftCauchyGreen(myB);
+      def.computeDevLeftCauchyGreen(B);
 
       // Calculate deviatoric right Cauchy-Green tensor
-      def.computeDevRightCauchyGreen(myC);
+      def.computeDevRightCauchyGreen(C);
 
       // calculate square of C
-      myC2.mulTransposeLeft (myC);
+      C2.mulTransposeLeft (C);
 
       Matrix3d mydevF = new Matrix3d(def.getF());
       mydevF.scale(Math.pow(J,-1.0 / 3.0));
@@ -487,10 +514,10 @@ public class FungMaterial extends IncompressibleMaterial {
          a0[i].y = Q.get(1,i);
          a0[i].z = Q.get(2,i);
 
-         vtmp.mul(myC,a0[i]);
+         vtmp.mul(C,a0[i]);
          K[i] = a0[i].dot(vtmp);
          
-         vtmp.mul(myC2,a0[i]);
+         vtmp.mul(C2,a0[i]);
          L[i] = a0[i].dot(vtmp);
 
          a[i].mul(mydevF,a0[i]);
@@ -514,7 +541,7 @@ public class FungMaterial extends IncompressibleMaterial {
       SymmetricMatrix3d sd = new SymmetricMatrix3d();
 
       SymmetricMatrix3d bmi = new SymmetricMatrix3d(); 
-      bmi.sub(myB,SymmetricMatrix3d.IDENTITY);
+      bmi.sub(B,SymmetricMatrix3d.IDENTITY);
       
       for (int i=0; i<3; i++) {
 
@@ -532,7 +559,7 @@ public class FungMaterial extends IncompressibleMaterial {
             sd.scaledAdd(lam[i][j]/2.0*(K[i]-1.0)*K[j], A[j]);
             sd.scaledAdd(lam[i][j]/2.0*(K[j]-1.0)*K[i], A[i]);
          }
-         addTensorProduct4(cFung, mu[i]*K[i], A[i], myB);
+         addTensorProduct4(cFung, mu[i]*K[i], A[i], B);
          
          // C += mu[i]*K[i]*dyad4s(A[i],b);
          for (int j=0; j<3; j++) {
@@ -617,7 +644,7 @@ public class FungMaterial extends IncompressibleMaterial {
 
    public FungMaterial clone() {
       FungMaterial mat = (FungMaterial)super.clone();
-      mat.myB = new SymmetricMatrix3d();
+      mat.myWorkspace = new Workspace();
       return mat;
    }
 
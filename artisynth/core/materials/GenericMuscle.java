@@ -42,13 +42,32 @@ public class GenericMuscle extends MuscleMaterial {
    protected PropertyMode myExpStressCoeffMode = PropertyMode.Inherited;
    protected PropertyMode myUncrimpingFactorMode = PropertyMode.Inherited;
 
-   protected Vector3d myTmp = new Vector3d();
-   protected Matrix3d myMat = new Matrix3d();
-
    // Set this true to keep the tangent matrix continuous (and symmetric) at
    // lam = lamOpt, at the expense of slightly negative forces for lam < lamOpt
    protected static boolean myZeroForceBelowLamOptP = false;
 
+   // temporaries for computing stress and tangent. A thread that evaluates
+   // the material concurrently with others uses its own set instead,
+   // stored in its SolidDeformation.
+   private static class Workspace {
+      Vector3d tmp = new Vector3d();
+      Matrix3d mat = new Matrix3d();
+   }
+
+   private Workspace myWorkspace = new Workspace();
+
+   private Workspace getWorkspace (SolidDeformation def) {
+      if (!def.isMaterialScratchEnabled()) {
+         return myWorkspace;
+      }
+      Workspace ws = (Workspace)def.getMaterialScratch (Workspace.class);
+      if (ws == null) {
+         ws = new Workspace();
+         def.setMaterialScratch (Workspace.class, ws);
+      }
+      return ws;
+   }
+
    public GenericMuscle() {
       super();
    }
@@ -292,7 +311,8 @@ public class GenericMuscle extends MuscleMaterial {
       // Weiss, Makerc, and Govindjeed, Computer Methods in Applied Mechanical
       // Engineering, 1996.
 
-      Vector3d dir = myTmp;
+      Workspace ws = getWorkspace (def);
+      Vector3d dir = ws.tmp;
       def.getF().mul (dir, dir0);
       double mag = dir.norm();
       dir.scale (1/mag);
@@ -328,8 +348,10 @@ public class GenericMuscle extends MuscleMaterial {
    public void computeTangent (
       Matrix6d D, SymmetricMatrix3d stress, double excitation, Vector3d dir0, 
       SolidDeformation def, FemMaterial baseMat) {
+      Workspace ws = getWorkspace (def);
+      Matrix3d tmpMat = ws.mat;
 
-      Vector3d a = myTmp;
+      Vector3d a = ws.tmp;
       def.getF().mul (a, dir0);
       double lam = a.norm();
       a.scale (1/lam);
@@ -372,11 +394,11 @@ public class GenericMuscle extends MuscleMaterial {
       //
       // compute -2/3 (dev sigma (X) I)' - 4 wa/(3J) (a (X) a (X) I)'
       //
-      myMat.outerProduct (a, a);
-      myMat.scale (2*wa/J); // will be scaled again by -2/3 below
-      addStress (myMat, J, I4, W4, a);
-      myMat.scale (-2/3.0);
-      TensorUtils.addSymmetricIdentityProduct (D, myMat);
+      tmpMat.outerProduct (a, a);
+      tmpMat.scale (2*wa/J); // will be scaled again by -2/3 below
+      addStress (tmpMat, J, I4, W4, a);
+      tmpMat.scale (-2/3.0);
+      TensorUtils.addSymmetricIdentityProduct (D, tmpMat);
       TensorUtils.addScaledIdentity (D, 4/3.0*w0/J);
       TensorUtils.addScaledIdentityProduct (D, 4/9.0*(wa-w0)/J);
 
@@ -406,8 +428,7 @@ public class GenericMuscle extends MuscleMaterial {
 
    public GenericMuscle clone() {
       GenericMuscle mat = (GenericMuscle)super.clone();
-      mat.myTmp = new Vector3d();
-      mat.myMat = new Matrix3d();
+      mat.myWorkspace = new Workspace();
       return mat;
    }
 
@@ -19,8 +19,6 @@ public class IncompNeoHookeanMaterial extends IncompressibleMaterial {
 
    PropertyMode myGMode = PropertyMode.Inherited;
 
-   private SymmetricMatrix3d myB;
-
    static {
       myProps.addInheritable (
          "shearModulus:Inherited", "shear modulus", DEFAULT_G);
@@ -30,12 +28,31 @@ public class IncompNeoHookeanMaterial extends IncompressibleMaterial {
       return myProps;
    }
 
+   // temporaries for computing stress and tangent. A thread that evaluates
+   // the material concurrently with others uses its own set instead,
+   // stored in its SolidDeformation.
+   private static class Workspace {
+      SymmetricMatrix3d B = new SymmetricMatrix3d();
+   }
+
+   private Workspace myWorkspace = new Workspace();
+
+   private Workspace getWorkspace (SolidDeformation def) {
+      if (!def.isMaterialScratchEnabled()) {
+         return myWorkspace;
+      }
+      Workspace ws = (Workspace)def.getMaterialScratch (Workspace.class);
+      if (ws == null) {
+         ws = new Workspace();
+         def.setMaterialScratch (Workspace.class, ws);
+      }
+      return ws;
+   }
+
    public IncompNeoHookeanMaterial (){
-      myB = new SymmetricMatrix3d();
    }
 
    public IncompNeoHookeanMaterial (double E, double kappa) {
-      myB = new SymmetricMatrix3d();
       setShearModulus (E);
       setBulkModulus (kappa);
    }
@@ -63,16 +80,18 @@ public class IncompNeoHookeanMaterial extends IncompressibleMaterial {
    public void computeStress (
       SymmetricMatrix3d sigma, SolidDeformation def, Matrix3d Q,
       FemMaterial baseMat) {
+      Workspace ws = getWorkspace (def);
+      SymmetricMatrix3d B = ws.B;
 
       double J = def.getDetF();
       double p = def.getAveragePressure();
 
-      def.computeLeftCauchyGreen (myB);
+      def.computeLeftCauchyGreen (B);
 
       double muJ = myG/Math.pow(J, 5.0/3.0);
-      double diagTerm = -muJ*(myB.m00 + myB.m11 + myB.m22)/3.0 + p;
+      double diagTerm = -muJ*(B.m00 + B.m11 + B.m22)/3.0 + p;
 
-      sigma.scale (muJ, myB);
+      sigma.scale (muJ, B);
       sigma.m00 += diagTerm;
       sigma.m11 += diagTerm;
       sigma.m22 += diagTerm;
@@ -81,12 +100,14 @@ public class IncompNeoHookeanMaterial extends IncompressibleMaterial {
    public void computeTangent (
       Matrix6d D, SymmetricMatrix3d stress, SolidDeformation def, 
       Matrix3d Q, FemMaterial baseMat) {
+      Workspace ws = getWorkspace (def);
+      SymmetricMatrix3d B = ws.B;
 
       double J = def.getDetF();
 
-      def.computeLeftCauchyGreen (myB);
+      def.computeLeftCauchyGreen (B);
 
-      double Ib = myB.m00+myB.m11+myB.m22;
+      double Ib = B.m00+B.m11+B.m22;
       double muJ = myG/Math.pow(J, 5.0/3.0);
       double p = def.getAveragePressure();
 
@@ -95,7 +116,7 @@ public class IncompNeoHookeanMaterial extends IncompressibleMaterial {
       TensorUtils.addScaledIdentityProduct (D, p+ 2/9.0*muJ*Ib);
       TensorUtils.addScaledIdentity (D, -2*p + 2/3.0*muJ*Ib);
       TensorUtils.addSymmetricTensorProduct (
-         D, -2/3.0*muJ, myB, SymmetricMatrix3d.IDENTITY);
+         D, -2/3.0*muJ, B, SymmetricMatrix3d.IDENTITY);
       D.setLowerToUpper();
    }
 
@@ -114,7 +135,7 @@ public class IncompNeoHookeanMaterial extends IncompressibleMaterial {
 
    public IncompNeoHookeanMaterial clone() {
       IncompNeoHookeanMaterial mat = (IncompNeoHookeanMaterial)super.clone();
-      mat.myB = new SymmetricMatrix3d();
+      mat.myWorkspace = new Workspace();
       return mat;
    }
 
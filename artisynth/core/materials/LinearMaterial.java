@@ -27,8 +27,6 @@ public class LinearMaterial extends FemMaterial {
    PropertyMode myEMode = PropertyMode.Inherited;
    PropertyMode myCorotatedMode = PropertyMode.Inherited;
 
-   private SVDecomposition3d mySVD;
-
    static {
       myProps.addInheritable (
          "YoungsModulus:Inherited", "Youngs modulus", DEFAULT_E, "[0,inf]");
@@ -43,6 +41,27 @@ public class LinearMaterial extends FemMaterial {
       return myProps;
    }
 
+   // temporaries for computing stress and tangent. A thread that evaluates
+   // the material concurrently with others uses its own set instead,
+   // stored in its SolidDeformation.
+   private static class Workspace {
+      SVDecomposition3d svd = new SVDecomposition3d();
+   }
+
+   private Workspace myWorkspace = new Workspace();
+
+   private Workspace getWorkspace (SolidDeformation def) {
+      if (!def.isMaterialScratchEnabled()) {
+         return myWorkspace;
+      }
+      Workspace ws = (Workspace)def.getMaterialScratch (Workspace.class);
+      if (ws == null) {
+         ws = new Workspace();
+         def.setMaterialScratch (Workspace.class, ws);
+      }
+      return ws;
+   }
+
    public LinearMaterial (){
    }
 
@@ -179,11 +198,10 @@ public class LinearMaterial extends FemMaterial {
 
       if (myCorotated) {
          R = new RotationMatrix3d();
-         if (mySVD == null) {
-            mySVD = new SVDecomposition3d();
-         }
+         Workspace ws = getWorkspace (def);
+         SVDecomposition3d svd = ws.svd;
          // use sigma to store P; this will be converted to Cauchy strain
-         mySVD.polarDecomposition (R, sigma, F);
+         svd.polarDecomposition (R, sigma, F);
       }
       else {
          // set sigma to symmetric part of F
@@ -236,10 +254,9 @@ public class LinearMaterial extends FemMaterial {
          // need to rotate this tensor from linear frame into material one
          Matrix3d F = def.getF();
          RotationMatrix3d R = new RotationMatrix3d();
-         if (mySVD == null) {
-            mySVD = new SVDecomposition3d();
-         }
-         mySVD.polarDecomposition (R, (Matrix3d)null, F);
+         Workspace ws = getWorkspace (def);
+         SVDecomposition3d svd = ws.svd;
+         svd.polarDecomposition (R, (Matrix3d)null, F);
          // R rotates from linear frame to the material one. Transpose
          // of R rotates from material frame to linear one.
          R.transpose();
@@ -264,6 +281,7 @@ public class LinearMaterial extends FemMaterial {
 
    public LinearMaterial clone() {
       LinearMaterial mat = (LinearMaterial)super.clone();
+      mat.myWorkspace = new Workspace();
       return mat;
    }
 
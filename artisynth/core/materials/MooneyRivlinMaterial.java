@@ -40,13 +40,6 @@ public class MooneyRivlinMaterial extends IncompressibleMaterial {
    PropertyMode myC02Mode = PropertyMode.Inherited;
    PropertyMode myJLimitMode = PropertyMode.Inherited;
 
-   private SymmetricMatrix3d myB;
-   private SymmetricMatrix3d myB2;
-   private SymmetricMatrix3d myTmp;
-
-   // storage for phi and it's first two derivatives
-   private double[] myPhiVals = new double[3];
-
    static {
       myProps.addInheritable (
          "C10:Inherited", "C10 parameter", DEFAULT_C10);
@@ -68,10 +61,31 @@ public class MooneyRivlinMaterial extends IncompressibleMaterial {
       return myProps;
    }
 
+   // temporaries for computing stress and tangent. A thread that evaluates
+   // the material concurrently with others uses its own set instead,
+   // stored in its SolidDeformation.
+   private static class Workspace {
+      SymmetricMatrix3d B = new SymmetricMatrix3d();
+      SymmetricMatrix3d B2 = new SymmetricMatrix3d();
+      SymmetricMatrix3d tmp = new SymmetricMatrix3d();
+      double[] phiVals = new double[3];
+   }
+
+   private Workspace myWorkspace = new Workspace();
+
+   private Workspace getWorkspace (SolidDeformation def) {
+      if (!def.isMaterialScratchEnabled()) {
+         return myWorkspace;
+      }
+      Workspace ws = (Workspace)def.getMaterialScratch (Workspace.class);
+      if (ws == null) {
+         ws = new Workspace();
+         def.setMaterialScratch (Workspace.class, ws);
+      }
+      return ws;
+   }
+
    public MooneyRivlinMaterial (){
-      myB = new SymmetricMatrix3d();
-      myB2 = new SymmetricMatrix3d();
-      myTmp = new SymmetricMatrix3d();
    }
 
    public MooneyRivlinMaterial (
@@ -229,9 +243,11 @@ public class MooneyRivlinMaterial extends IncompressibleMaterial {
    }
 
    public double computeDeviatoricEnergy (Matrix3dBase Cdev) {
+      Workspace ws = myWorkspace;
+      SymmetricMatrix3d tmp = ws.tmp;
       double I1 = Cdev.trace();
-      myTmp.mulTransposeLeft (Cdev);
-      double I2 = 0.5*(I1*I1 - myTmp.trace());
+      tmp.mulTransposeLeft (Cdev);
+      double I2 = 0.5*(I1*I1 - tmp.trace());
       double I1_3 = I1-3;
       double I2_3 = I2-3;
       double W = (myC10*I1_3 + myC01*I2_3 + myC11*I1_3*I2_3 +
@@ -243,6 +259,10 @@ public class MooneyRivlinMaterial extends IncompressibleMaterial {
    public void computeStress (
       SymmetricMatrix3d sigma, SolidDeformation def, Matrix3d Q,
       FemMaterial baseMat) {
+      Workspace ws = getWorkspace (def);
+      SymmetricMatrix3d B = ws.B;
+      SymmetricMatrix3d B2 = ws.B2;
+      double[] phiVals = ws.phiVals;
 
       // Methods and naming conventions follow the paper "Finite element
       // implementation of incompressible, isotropic hyperelasticity", by
@@ -252,24 +272,24 @@ public class MooneyRivlinMaterial extends IncompressibleMaterial {
       double J = def.getDetF();
       double avgp = def.getAveragePressure();
 
-      computePhiVals (myPhiVals, J);
-      double phi = myPhiVals[0];
-      double dphi = myPhiVals[1];
+      computePhiVals (phiVals, J);
+      double phi = phiVals[0];
+      double dphi = phiVals[1];
 
-      def.computeLeftCauchyGreen(myB);
+      def.computeLeftCauchyGreen(B);
       // scale to compute deviatoric part; use phi in place of pow(J,-2/3);
-      myB.scale (phi);
+      B.scale (phi);
 
-      myB2.mulTransposeLeft (myB); // compute B*B
+      B2.mulTransposeLeft (B); // compute B*B
 
-      double I1 = myB.trace();
-      double I2 = 0.5*(I1*I1 - myB2.trace());
+      double I1 = B.trace();
+      double I2 = 0.5*(I1*I1 - B2.trace());
 
       double W1 = myC10 + myC11*(I2-3) + myC20*2*(I1-3);
       double W2 = myC01 + myC11*(I1-3) + myC02*2*(I2-3);
 
-      sigma.scale (W1 + W2*I1, myB);
-      sigma.scaledAdd (-W2, myB2, sigma);
+      sigma.scale (W1 + W2*I1, B);
+      sigma.scaledAdd (-W2, B2, sigma);
 
       if (usePhi) {
          double dev = (dphi/phi)*sigma.trace();
@@ -291,22 +311,27 @@ public class MooneyRivlinMaterial extends IncompressibleMaterial {
    public void computeTangent (
       Matrix6d D, SymmetricMatrix3d stress, SolidDeformation def, 
       Matrix3d Q, FemMaterial baseMat) {
+      Workspace ws = getWorkspace (def);
+      SymmetricMatrix3d B = ws.B;
+      SymmetricMatrix3d B2 = ws.B2;
+      SymmetricMatrix3d tmp = ws.tmp;
+      double[] phiVals = ws.phiVals;
 
       double J = def.getDetF();
       double Ji = 1.0/J;
 
-      computePhiVals (myPhiVals, J);
-      double phi = myPhiVals[0];
-      double dphi = myPhiVals[1];
-      double ddphi = myPhiVals[2];
+      computePhiVals (phiVals, J);
+      double phi = phiVals[0];
+      double dphi = phiVals[1];
+      double ddphi = phiVals[2];
 
-      def.computeLeftCauchyGreen(myB);
+      def.computeLeftCauchyGreen(B);
       // scale to compute deviatoric part; use phi in place of pow(J,-2/3);
-      myB.scale (phi);
-      myB2.mulTransposeLeft (myB);
+      B.scale (phi);
+      B2.mulTransposeLeft (B);
 
-      double I1 = myB.trace();
-      double I2 = 0.5*(I1*I1 - myB2.trace());
+      double I1 = B.trace();
+      double I2 = 0.5*(I1*I1 - B2.trace());
 
       double W1, W2;
       double W11, W12, W22;
@@ -341,42 +366,42 @@ public class MooneyRivlinMaterial extends IncompressibleMaterial {
          TensorUtils.addScaledIdentityProduct (D, p + zeta);
          TensorUtils.addScaledIdentity (D, -2*p - 2*r*w0);
 
-         myTmp.set (stress);
+         tmp.set (stress);
          // remove pressure from diagonal to obtain the deviatoric stress
-         myTmp.m00 -= p;
-         myTmp.m11 -= p;       
-         myTmp.m22 -= p;
+         tmp.m00 -= p;
+         tmp.m11 -= p;       
+         tmp.m22 -= p;
       
          TensorUtils.addSymmetricTensorProduct (
-            D, J*r, myTmp, SymmetricMatrix3d.IDENTITY);
+            D, J*r, tmp, SymmetricMatrix3d.IDENTITY);
 
-         TensorUtils.addTensorProduct4 (D, w1*4.0*Ji, myB);
-         TensorUtils.addTensorProduct (D, w2*4.0*Ji, myB);
-         TensorUtils.addSymmetricTensorProduct (D, w3*4.0*Ji, myB, myB2);
-         TensorUtils.addTensorProduct (D, w4*4.0*Ji, myB2);
+         TensorUtils.addTensorProduct4 (D, w1*4.0*Ji, B);
+         TensorUtils.addTensorProduct (D, w2*4.0*Ji, B);
+         TensorUtils.addSymmetricTensorProduct (D, w3*4.0*Ji, B, B2);
+         TensorUtils.addTensorProduct (D, w4*4.0*Ji, B2);
 
-         myTmp.scale (wc1, myB);  
-         myTmp.scaledAdd (wc2, myB2);
+         tmp.scale (wc1, B);  
+         tmp.scaledAdd (wc2, B2);
          TensorUtils.addSymmetricTensorProduct (
-            D, 2*r,myTmp,SymmetricMatrix3d.IDENTITY);
+            D, 2*r,tmp,SymmetricMatrix3d.IDENTITY);
       }
       else {
          TensorUtils.addScaledIdentityProduct (D, p + 4.0/9.0*Ji*(wcc-w0));
          TensorUtils.addScaledIdentity (D, -2*p + 4.0/3.0*Ji*w0);
 
-         myTmp.deviator (stress);
+         tmp.deviator (stress);
          TensorUtils.addSymmetricTensorProduct (
-            D, -2.0/3.0, myTmp, SymmetricMatrix3d.IDENTITY);
+            D, -2.0/3.0, tmp, SymmetricMatrix3d.IDENTITY);
 
-         TensorUtils.addTensorProduct4 (D, w1*4.0*Ji, myB);
-         TensorUtils.addTensorProduct (D, w2*4.0*Ji, myB);
-         TensorUtils.addSymmetricTensorProduct (D, w3*4.0*Ji, myB, myB2);
-         TensorUtils.addTensorProduct (D, w4*4.0*Ji, myB2);
+         TensorUtils.addTensorProduct4 (D, w1*4.0*Ji, B);
+         TensorUtils.addTensorProduct (D, w2*4.0*Ji, B);
+         TensorUtils.addSymmetricTensorProduct (D, w3*4.0*Ji, B, B2);
+         TensorUtils.addTensorProduct (D, w4*4.0*Ji, B2);
 
-         myTmp.scale (wc1, myB);  
-         myTmp.scaledAdd (wc2, myB2);
+         tmp.scale (wc1, B);  
+         tmp.scaledAdd (wc2, B2);
          TensorUtils.addSymmetricTensorProduct (
-            D, -4.0/3.0*Ji,myTmp,SymmetricMatrix3d.IDENTITY);
+            D, -4.0/3.0*Ji,tmp,SymmetricMatrix3d.IDENTITY);
       }
 
       D.setLowerToUpper();
@@ -402,9 +427,7 @@ public class MooneyRivlinMaterial extends IncompressibleMaterial {
 
    public MooneyRivlinMaterial clone() {
       MooneyRivlinMaterial mat = (MooneyRivlinMaterial)super.clone();
-      mat.myB = new SymmetricMatrix3d();
-      mat.myB2 = new SymmetricMatrix3d();
-      mat.myTmp = new SymmetricMatrix3d();
+      mat.myWorkspace = new Workspace();
       return mat;
    }
 
@@ -21,7 +21,6 @@ public class NeoHookeanMaterial extends FemMaterial {
    PropertyMode myNuMode = PropertyMode.Inherited;
    PropertyMode myEMode = PropertyMode.Inherited;
 
-   private SymmetricMatrix3d myB;
    //private SymmetricMatrix3d myB2;
 
    static {
@@ -35,8 +34,28 @@ public class NeoHookeanMaterial extends FemMaterial {
       return myProps;
    }
 
+   // temporaries for computing stress and tangent. A thread that evaluates
+   // the material concurrently with others uses its own set instead,
+   // stored in its SolidDeformation.
+   private static class Workspace {
+      SymmetricMatrix3d B = new SymmetricMatrix3d();
+   }
+
+   private Workspace myWorkspace = new Workspace();
+
+   private Workspace getWorkspace (SolidDeformation def) {
+      if (!def.isMaterialScratchEnabled()) {
+         return myWorkspace;
+      }
+      Workspace ws = (Workspace)def.getMaterialScratch (Workspace.class);
+      if (ws == null) {
+         ws = new Workspace();
+         def.setMaterialScratch (Workspace.class, ws);
+      }
+      return ws;
+   }
+
    public NeoHookeanMaterial (){
-      myB = new SymmetricMatrix3d();
       //myB2 = new SymmetricMatrix3d();
    }
    
@@ -89,6 +108,8 @@ public class NeoHookeanMaterial extends FemMaterial {
    public void computeStress (
       SymmetricMatrix3d sigma, SolidDeformation def, Matrix3d Q,
       FemMaterial baseMat) {
+      Workspace ws = getWorkspace (def);
+      SymmetricMatrix3d B = ws.B;
 
       double J = def.getDetF();
 
@@ -97,9 +118,9 @@ public class NeoHookeanMaterial extends FemMaterial {
       double lam = (myE*myNu)/((1-2*myNu)*(1+myNu));
       double mu = G;
 
-      def.computeLeftCauchyGreen (myB);
+      def.computeLeftCauchyGreen (B);
 
-      sigma.scale (mu/J, myB);
+      sigma.scale (mu/J, B);
       double diagTerm = (lam*Math.log(J)-mu)/J;
       sigma.m00 += diagTerm;
       sigma.m11 += diagTerm;
@@ -109,10 +130,12 @@ public class NeoHookeanMaterial extends FemMaterial {
    public void computeTangent (
       Matrix6d D, SymmetricMatrix3d stress, SolidDeformation def, 
       Matrix3d Q, FemMaterial baseMat) {
+      Workspace ws = getWorkspace (def);
+      SymmetricMatrix3d B = ws.B;
 
       double J = def.getDetF();
 
-      def.computeLeftCauchyGreen (myB);
+      def.computeLeftCauchyGreen (B);
 
       // express constitutive law in terms of Lama parameters
       double G = myE/(2*(1+myNu)); // bulk modulus
@@ -141,7 +164,7 @@ public class NeoHookeanMaterial extends FemMaterial {
 
    public NeoHookeanMaterial clone() {
       NeoHookeanMaterial mat = (NeoHookeanMaterial)super.clone();
-      mat.myB = new SymmetricMatrix3d();
+      mat.myWorkspace = new Workspace();
       //mat.myB2 = new SymmetricMatrix3d();
       return mat;
    }
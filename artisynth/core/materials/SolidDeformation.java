@@ -1,5 +1,7 @@
 package artisynth.core.materials;
 
+import java.util.HashMap;
+
 import maspack.matrix.*;
 
 /**
@@ -12,6 +14,10 @@ public class SolidDeformation {
    double myDetF;   // determinant of the deformation gradient
    double myP;      // local pressure
 
+   // scratch data for materials evaluated concurrently, keyed by class, or
+   // null if materials should use their own temporaries
+   HashMap<Class<?>,Object> myMaterialScratch;
+
    public SolidDeformation() {
       myF = new Matrix3d();
       myDetF = 0;
@@ -94,4 +100,59 @@ public class SolidDeformation {
       BD.scale (Math.pow(myDetF, -2.0/3.0));
    }
 
+   /**
+    * Sets whether this deformation holds its own scratch data for the
+    * materials that evaluate it. This should be enabled when materials are
+    * evaluated by several threads at once, with each thread using its own
+    * SolidDeformation. Otherwise, materials use their own temporaries.
+    *
+    * @param enable if <code>true</code>, enables material scratch data
+    */
+   public void setMaterialScratchEnabled (boolean enable) {
+      if (enable) {
+         if (myMaterialScratch == null) {
+            myMaterialScratch = new HashMap<Class<?>,Object>();
+         }
+      }
+      else {
+         myMaterialScratch = null;
+      }
+   }
+
+   /**
+    * Queries whether this deformation holds scratch data for the materials
+    * that evaluate it. See {@link #setMaterialScratchEnabled}.
+    *
+    * @return <code>true</code> if material scratch data is enabled
+    */
+   public boolean isMaterialScratchEnabled() {
+      return myMaterialScratch != null;
+   }
+
+   /**
+    * Returns the material scratch data stored under a given class, or
+    * <code>null</code> if there is none.
+    *
+    * @param type class of the scratch data
+    * @return scratch data, or <code>null</code>
+    */
+   public Object getMaterialScratch (Class<?> type) {
+      return myMaterialScratch != null ? myMaterialScratch.get (type) : null;
+   }
+
+   /**
+    * Stores material scratch data under a given class. Material scratch
+    * data must be enabled.
+    *
+    * @param type class of the scratch data
+    * @param data scratch data
+    */
+   public void setMaterialScratch (Class<?> type, Object data) {
+      if (myMaterialScratch == null) {
+         throw new IllegalStateException (
+            "Material scratch data is not enabled");
+      }
+      myMaterialScratch.put (type, data);
+   }
+
 }
@@ -27,9 +27,6 @@ public class StVenantKirchoffMaterial extends FemMaterial {
    PropertyMode myNuMode = PropertyMode.Inherited;
    PropertyMode myEMode = PropertyMode.Inherited;
 
-   private SymmetricMatrix3d myB;
-   private SymmetricMatrix3d myB2;
-
    static {
       myProps.addInheritable (
          "YoungsModulus:Inherited", "Youngs modulus", DEFAULT_E);
@@ -41,9 +38,29 @@ public class StVenantKirchoffMaterial extends FemMaterial {
       return myProps;
    }
 
+   // temporaries for computing stress and tangent. A thread that evaluates
+   // the material concurrently with others uses its own set instead,
+   // stored in its SolidDeformation.
+   private static class Workspace {
+      SymmetricMatrix3d B = new SymmetricMatrix3d();
+      SymmetricMatrix3d B2 = new SymmetricMatrix3d();
+   }
+
+   private Workspace myWorkspace = new Workspace();
+
+   private Workspace getWorkspace (SolidDeformation def) {
+      if (!def.isMaterialScratchEnabled()) {
+         return myWorkspace;
+      }
+      Workspace ws = (Workspace)def.getMaterialScratch (Workspace.class);
+      if (ws == null) {
+         ws = new Workspace();
+         def.setMaterialScratch (Workspace.class, ws);
+      }
+      return ws;
+   }
+
    public StVenantKirchoffMaterial (){
-      myB = new SymmetricMatrix3d();
-      myB2 = new SymmetricMatrix3d();
    }
 
    public StVenantKirchoffMaterial (double E, double nu) {
@@ -95,6 +112,9 @@ public class StVenantKirchoffMaterial extends FemMaterial {
    public void computeStress (
       SymmetricMatrix3d sigma, SolidDeformation def, Matrix3d Q,
       FemMaterial baseMat) {
+      Workspace ws = getWorkspace (def);
+      SymmetricMatrix3d B = ws.B;
+      SymmetricMatrix3d B2 = ws.B2;
 
       double J = def.getDetF();
 
@@ -103,23 +123,25 @@ public class StVenantKirchoffMaterial extends FemMaterial {
       double lam = (myE*myNu)/((1-2*myNu)*(1+myNu));
       double mu = G;
 
-      def.computeLeftCauchyGreen (myB);
+      def.computeLeftCauchyGreen (B);
 
-      double tr = 0.5*(myB.m00 + myB.m11 + myB.m22 - 3);
+      double tr = 0.5*(B.m00 + B.m11 + B.m22 - 3);
 
-      myB2.mulTransposeLeft (myB); // myB2 = B*B
+      B2.mulTransposeLeft (B); // B2 = B*B
 
-      sigma.scale ((lam*tr-mu)/J, myB);
-      sigma.scaledAdd (mu/J, myB2);
+      sigma.scale ((lam*tr-mu)/J, B);
+      sigma.scaledAdd (mu/J, B2);
    }
 
    public void computeTangent (
       Matrix6d D, SymmetricMatrix3d stress, SolidDeformation def, 
       Matrix3d Q, FemMaterial baseMat) {
+      Workspace ws = getWorkspace (def);
+      SymmetricMatrix3d B = ws.B;
 
       double J = def.getDetF();
 
-      def.computeLeftCauchyGreen (myB);
+      def.computeLeftCauchyGreen (B);
 
       // express constitutive law in terms of Lama parameters
       double G = myE/(2*(1+myNu)); // bulk modulus
@@ -127,8 +149,8 @@ public class StVenantKirchoffMaterial extends FemMaterial {
       double mu = G;
 
       D.setZero();
-      TensorUtils.addTensorProduct (D, lam/J, myB, myB);
-      TensorUtils.addSymmetricTensorProduct4 (D, mu/J, myB, myB);
+      TensorUtils.addTensorProduct (D, lam/J, B, B);
+      TensorUtils.addSymmetricTensorProduct4 (D, mu/J, B, B);
       D.setLowerToUpper();
    }
 
@@ -148,8 +170,7 @@ public class StVenantKirchoffMaterial extends FemMaterial {
 
    public StVenantKirchoffMaterial clone() {
       StVenantKirchoffMaterial mat = (StVenantKirchoffMaterial)super.clone();
-      mat.myB = new SymmetricMatrix3d();
-      mat.myB2 = new SymmetricMatrix3d();
+      mat.myWorkspace = new Workspace();
       return mat;
    }
 
@@ -0,0 +1,249 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package artisynth.core.mechmodels;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+import maspack.geometry.PolygonalMesh;
+import maspack.matrix.Point3d;
+import maspack.matrix.RigidTransform3d;
+import maspack.matrix.RotationMatrix3d;
+import maspack.matrix.Vector3d;
+
+/**
+ * Broad phase collision culling for a CollisionManager, based on
+ * sweep-and-prune over the world-coordinate axis-aligned bounding boxes of
+ * each body's collision mesh.
+ *
+ * <p>Bodies are kept in a list sorted by the x coordinate of their box
+ * minimum. The list persists from one call of {@link #update} to the next,
+ * and is re-sorted using insertion sort, so that when bodies move coherently
+ * between time steps the cost of the sort is close to linear. A single sweep
+ * through the list then finds all pairs of bodies whose boxes overlap.
+ *
+ * <p>Each box can be enlarged by a margin (see {@link #setMargin}), so
+ * that bodies separated by less than the margin are still reported as
+ * overlapping.
+ */
+public class CollisionBroadPhase {
+
+   private class Entry {
+      CollidableBody myBody;
+      Point3d myMin = new Point3d();
+      Point3d myMax = new Point3d();
+      ArrayList<CollidableBody> myOverlaps = new ArrayList<CollidableBody>();
+      boolean myCurrent;
+
+      Entry (CollidableBody body) {
+         myBody = body;
+      }
+   }
+
+   private ArrayList<Entry> mySorted = new ArrayList<Entry>();
+   private HashMap<CollidableBody,Entry> myEntryMap =
+      new HashMap<CollidableBody,Entry>();
+   private int myNumOverlappingPairs = 0;
+   private double myMargin = 0;
+
+   /**
+    * Sets the margin by which each bounding box is enlarged on every side.
+    * The new value takes effect at the next {@link #update}.
+    *
+    * @param margin bounding box margin
+    */
+   public void setMargin (double margin) {
+      myMargin = Math.max (0, margin);
+   }
+
+   /**
+    * Returns the margin by which each bounding box is enlarged.
+    *
+    * @return bounding box margin
+    */
+   public double getMargin() {
+      return myMargin;
+   }
+
+   /**
+    * Computes the world bounding box of a body's collision mesh. For meshes
+    * with a non-identity mesh-to-world transform (such as those of rigid
+    * bodies), the box is formed by transforming the local bounds, which
+    * avoids a loop through the vertices.
+    */
+   private void computeBounds (Entry entry) {
+      PolygonalMesh mesh = entry.myBody.getCollisionMesh();
+      if (mesh == null || mesh.numVertices() == 0) {
+         double inf = Double.POSITIVE_INFINITY;
+         // no mesh: make the box empty so that it overlaps nothing
+         entry.myMin.set (inf, inf, inf);
+         entry.myMax.set (-inf, -inf, -inf);
+      }
+      else if (mesh.meshToWorldIsIdentity()) {
+         mesh.getWorldBounds (entry.myMin, entry.myMax);
+      }
+      else {
+         Point3d cen = new Point3d();
+         Vector3d hw = new Vector3d();
+         mesh.getLocalBounds (entry.myMin, entry.myMax);
+         cen.add (entry.myMin, entry.myMax);
+         cen.scale (0.5);
+         hw.sub (entry.myMax, entry.myMin);
+         hw.scale (0.5);
+         RigidTransform3d X = mesh.getMeshToWorld();
+         RotationMatrix3d R = X.R;
+         cen.transform (X);
+         // half widths of the transformed box are given by |R| hw
+         Vector3d ext = new Vector3d (
+            Math.abs(R.m00)*hw.x + Math.abs(R.m01)*hw.y + Math.abs(R.m02)*hw.z,
+            Math.abs(R.m10)*hw.x + Math.abs(R.m11)*hw.y + Math.abs(R.m12)*hw.z,
+            Math.abs(R.m20)*hw.x + Math.abs(R.m21)*hw.y + Math.abs(R.m22)*hw.z);
+         entry.myMin.sub (cen, ext);
+         entry.myMax.add (cen, ext);
+      }
+      if (myMargin > 0) {
+         entry.myMin.add (-myMargin, -myMargin, -myMargin);
+         entry.myMax.add (myMargin, myMargin, myMargin);
+      }
+   }
+
+   private boolean boxesOverlap (Entry e0, Entry e1) {
+      return (e0.myMin.x <= e1.myMax.x && e1.myMin.x <= e0.myMax.x &&
+              e0.myMin.y <= e1.myMax.y && e1.myMin.y <= e0.myMax.y &&
+              e0.myMin.z <= e1.myMax.z && e1.myMin.z <= e0.myMax.z);
+   }
+
+   /**
+    * Updates the bounding boxes and overlapping pairs for a set of bodies.
+    * Bodies that were present in a previous update but are not in
+    * <code>bodies</code> are removed from the structure.
+    *
+    * @param bodies bodies to be included in the broad phase
+    */
+   public void update (Collection<CollidableBody> bodies) {
+      for (Entry entry : mySorted) {
+         entry.myCurrent = false;
+      }
+      ArrayList<Entry> added = new ArrayList<Entry>();
+      for (CollidableBody body : bodies) {
+         Entry entry = myEntryMap.get (body);
+         if (entry == null) {
+            entry = new Entry (body);
+            myEntryMap.put (body, entry);
+            added.add (entry);
+         }
+         entry.myCurrent = true;
+         entry.myOverlaps.clear();
+         computeBounds (entry);
+      }
+      // remove stale entries, preserving the order of the others
+      int k = 0;
+      for (int i=0; i<mySorted.size(); i++) {
+         Entry entry = mySorted.get(i);
+         if (entry.myCurrent) {
+            mySorted.set (k++, entry);
+         }
+         else {
+            myEntryMap.remove (entry.myBody);
+         }
+      }
+      while (mySorted.size() > k) {
+         mySorted.remove (mySorted.size()-1);
+      }
+      mySorted.addAll (added);
+
+      // insertion sort on the box minimum along x
+      for (int i=1; i<mySorted.size(); i++) {
+         Entry entry = mySorted.get(i);
+         double minx = entry.myMin.x;
+         int j = i-1;
+         while (j >= 0 && mySorted.get(j).myMin.x > minx) {
+            mySorted.set (j+1, mySorted.get(j));
+            j--;
+         }
+         mySorted.set (j+1, entry);
+      }
+
+      // sweep
+      myNumOverlappingPairs = 0;
+      for (int i=0; i<mySorted.size(); i++) {
+         Entry ei = mySorted.get(i);
+         for (int j=i+1; j<mySorted.size(); j++) {
+            Entry ej = mySorted.get(j);
+            if (ej.myMin.x > ei.myMax.x) {
+               break;
+            }
+            if (boxesOverlap (ei, ej)) {
+               ei.myOverlaps.add (ej.myBody);
+               ej.myOverlaps.add (ei.myBody);
+               myNumOverlappingPairs++;
+            }
+         }
+      }
+   }
+
+   /**
+    * Returns the bodies whose bounding boxes overlap that of a given body,
+    * as determined by the most recent call to {@link #update}.
+    *
+    * @param body body to query
+    * @return overlapping bodies, or <code>null</code> if <code>body</code>
+    * was not included in the last update
+    */
+   public List<CollidableBody> getOverlappingBodies (CollidableBody body) {
+      Entry entry = myEntryMap.get (body);
+      return entry != null ? entry.myOverlaps : null;
+   }
+
+   /**
+    * Queries whether the bounding boxes of two bodies overlap. If either body
+    * was not included in the most recent update, the method conservatively
+    * returns <code>true</code>.
+    *
+    * @param c0 first body
+    * @param c1 second body
+    * @return <code>false</code> if the bodies are known not to be in contact
+    */
+   public boolean mayOverlap (CollidableBody c0, CollidableBody c1) {
+      Entry e0 = myEntryMap.get (c0);
+      Entry e1 = myEntryMap.get (c1);
+      if (e0 == null || e1 == null) {
+         return true;
+      }
+      return boxesOverlap (e0, e1);
+   }
+
+   /**
+    * Returns the number of bodies in this broad phase.
+    *
+    * @return number of bodies
+    */
+   public int numBodies() {
+      return mySorted.size();
+   }
+
+   /**
+    * Returns the number of overlapping pairs found by the most recent
+    * update.
+    *
+    * @return number of overlapping pairs
+    */
+   public int numOverlappingPairs() {
+      return myNumOverlappingPairs;
+   }
+
+   /**
+    * Removes all bodies from this broad phase.
+    */
+   public void clear() {
+      mySorted.clear();
+      myEntryMap.clear();
+      myNumOverlappingPairs = 0;
+   }
+}
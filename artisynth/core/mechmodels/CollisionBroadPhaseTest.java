@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package artisynth.core.mechmodels;
+
+import java.util.*;
+
+import maspack.util.*;
+import maspack.matrix.*;
+
+public class CollisionBroadPhaseTest extends UnitTest {
+
+   private void checkOverlaps (
+      CollisionBroadPhase broad, ArrayList<CollidableBody> bodies) {
+
+      int npairs = 0;
+      for (int i=0; i<bodies.size(); i++) {
+         CollidableBody ci = bodies.get(i);
+         List<CollidableBody> overlaps = broad.getOverlappingBodies (ci);
+         if (overlaps == null) {
+            throw new TestException ("body "+i+" not found in broad phase");
+         }
+         for (int j=0; j<bodies.size(); j++) {
+            CollidableBody cj = bodies.get(j);
+            if (i != j) {
+               boolean chk = broad.mayOverlap (ci, cj);
+               if (overlaps.contains (cj) != chk) {
+                  throw new TestException (
+                     "overlap for bodies "+i+" and "+j+" is "+
+                     overlaps.contains(cj)+", expected "+chk);
+               }
+               if (chk && i < j) {
+                  npairs++;
+               }
+            }
+         }
+      }
+      checkEquals ("number of overlapping pairs",
+                   broad.numOverlappingPairs(), npairs);
+      checkEquals ("number of bodies", broad.numBodies(), bodies.size());
+   }
+
+   public void testSweepAndPrune() {
+      int nbodies = 40;
+      ArrayList<RigidBody> allBodies = new ArrayList<RigidBody>();
+      for (int i=0; i<nbodies; i++) {
+         RigidBody body = RigidBody.createBox (
+            "box"+i, RandomGenerator.nextDouble (0.05, 0.3),
+            RandomGenerator.nextDouble (0.05, 0.3),
+            RandomGenerator.nextDouble (0.05, 0.3), /*density=*/1000);
+         RigidTransform3d T = new RigidTransform3d();
+         T.setRandom();
+         body.setPose (T);
+         allBodies.add (body);
+      }
+      CollisionBroadPhase broad = new CollisionBroadPhase();
+      RigidTransform3d T = new RigidTransform3d();
+      for (int k=0; k<20; k++) {
+         // use a changing subset of the bodies, so that bodies are both
+         // added to and removed from the broad phase
+         ArrayList<CollidableBody> bodies = new ArrayList<CollidableBody>();
+         for (int i=0; i<nbodies; i++) {
+            if ((i+k)%7 != 0) {
+               bodies.add (allBodies.get(i));
+            }
+         }
+         broad.update (bodies);
+         checkOverlaps (broad, bodies);
+         // perturb the poses, as would happen over a time step
+         for (RigidBody body : allBodies) {
+            T.set (body.getPose());
+            T.p.x += RandomGenerator.nextDouble (-0.05, 0.05);
+            T.p.y += RandomGenerator.nextDouble (-0.05, 0.05);
+            T.p.z += RandomGenerator.nextDouble (-0.05, 0.05);
+            body.setPose (T);
+         }
+      }
+      broad.clear();
+      checkEquals ("number of bodies after clear", broad.numBodies(), 0);
+   }
+
+   public void testMargin() {
+      RigidBody box0 = RigidBody.createBox ("box0", 0.1, 0.1, 0.1, 1000);
+      RigidBody box1 = RigidBody.createBox ("box1", 0.1, 0.1, 0.1, 1000);
+      // boxes are separated by a gap of 0.01 along x
+      box1.setPose (new RigidTransform3d (0.11, 0, 0));
+      ArrayList<CollidableBody> bodies = new ArrayList<CollidableBody>();
+      bodies.add (box0);
+      bodies.add (box1);
+
+      CollisionBroadPhase broad = new CollisionBroadPhase();
+      broad.update (bodies);
+      checkEquals ("overlap without margin",
+                   broad.mayOverlap (box0, box1), false);
+      broad.setMargin (0.006);
+      broad.update (bodies);
+      checkEquals ("overlap with margin",
+                   broad.mayOverlap (box0, box1), true);
+      checkOverlaps (broad, bodies);
+   }
+
+   private MechModel createContactModel (ArrayList<RigidTransform3d> poses) {
+      MechModel mech = new MechModel ("mech");
+      MechModel sub = new MechModel ("sub");
+      mech.addModel (sub);
+      for (int i=0; i<poses.size(); i++) {
+         RigidBody body = RigidBody.createBox ("box"+i, 0.3, 0.2, 0.1, 1000);
+         body.setPose (poses.get(i));
+         if (i%2 == 0) {
+            mech.addRigidBody (body);
+         }
+         else {
+            sub.addRigidBody (body);
+         }
+      }
+      mech.setDefaultCollisionBehavior (true, 0);
+      sub.setDefaultCollisionBehavior (true, 0);
+      return mech;
+   }
+
+   private LinkedHashMap<String,Integer> findContacts (
+      ArrayList<RigidTransform3d> poses, boolean useBroadPhase) {
+      MechModel mech = createContactModel (poses);
+      CollisionManager cm = mech.getCollisionManager();
+      cm.setUseBroadPhase (useBroadPhase);
+      cm.updateConstraints (0, 0);
+
+      ArrayList<CollisionHandler> handlers = new ArrayList<CollisionHandler>();
+      cm.collectHandlers (handlers);
+      LinkedHashMap<String,Integer> contacts =
+         new LinkedHashMap<String,Integer>();
+      for (CollisionHandler ch : handlers) {
+         String key =
+            ch.getCollidable(0).getName()+"-"+ch.getCollidable(1).getName();
+         contacts.put (
+            key, ch.numUnilateralConstraints()+ch.numBilateralConstraints());
+      }
+      if (useBroadPhase && cm.getNumCulledPairs() == 0) {
+         throw new TestException ("no body pairs culled by the broad phase");
+      }
+      return contacts;
+   }
+
+   /**
+    * Checks that a collision manager finds the same contacts, in the same
+    * order, whether or not it uses the broad phase.
+    */
+   public void testContacts() {
+      int nbodies = 30;
+      for (int k=0; k<5; k++) {
+         ArrayList<RigidTransform3d> poses = new ArrayList<RigidTransform3d>();
+         for (int i=0; i<nbodies; i++) {
+            RigidTransform3d T = new RigidTransform3d();
+            T.setRandom();
+            T.p.scale (0.5);
+            poses.add (T);
+         }
+         LinkedHashMap<String,Integer> check = findContacts (poses, false);
+         LinkedHashMap<String,Integer> contacts = findContacts (poses, true);
+         if (check.size() == 0) {
+            throw new TestException ("no contacts found");
+         }
+         if (!new ArrayList<String>(contacts.keySet()).equals (
+                new ArrayList<String>(check.keySet()))) {
+            throw new TestException (
+               "contacts with broad phase:\n" + contacts.keySet() +
+               "\nexpected:\n" + check.keySet());
+         }
+         for (String key : check.keySet()) {
+            checkEquals (
+               "number of constraints for "+key,
+               contacts.get(key), check.get(key));
+         }
+      }
+   }
+
+   public void test() {
+      testSweepAndPrune();
+      testMargin();
+      testContacts();
+   }
+
+   public static void main (String[] args) {
+      CollisionBroadPhaseTest tester = new CollisionBroadPhaseTest();
+      RandomGenerator.setSeed (0x1234);
+      tester.runtest();
+   }
+}
@@ -50,6 +50,10 @@ public class CollisionHandler extends ConstrainerBase
    LinkedHashMap<ContactPoint,ContactConstraint> myBilaterals0;
    LinkedHashMap<ContactPoint,ContactConstraint> myBilaterals1;
    ArrayList<ContactConstraint> myUnilaterals;
+   // unilaterals from the previous step, used to warm start new contacts
+   ArrayList<ContactConstraint> myPrevUnilaterals;
+   // indices of the previous unilaterals, hashed by grid cell
+   HashMap<Long,ArrayList<Integer>> myPrevUnilateralGrid;
    int myMaxUnilaterals = 100;
    ContactInfo myLastContactInfo; // last contact info produced by this handler
    ContactInfo myRenderContactInfo; // contact info to be used for rendering
@@ -117,6 +121,8 @@ public class CollisionHandler extends ConstrainerBase
       myBilaterals0 = new LinkedHashMap<ContactPoint,ContactConstraint>();
       myBilaterals1 = new LinkedHashMap<ContactPoint,ContactConstraint>();
       myUnilaterals = new ArrayList<ContactConstraint>();
+      myPrevUnilaterals = new ArrayList<ContactConstraint>();
+      myPrevUnilateralGrid = new HashMap<Long,ArrayList<Integer>>();
       //myCollider = SurfaceMeshCollider.newCollider();
       myManager = manager;
    }
@@ -696,19 +702,114 @@ public class CollisionHandler extends ConstrainerBase
       return maxpen;
    }
 
+   /**
+    * Returns <code>true</code> if the solver of the top-level MechModel warm
+    * starts its contact solver, in which case the impulses of contour region
+    * contacts are carried over from the previous step.
+    */
+   private boolean contactWarmStartEnabled() {
+      MechModel mech = MechModel.topMechModel (myManager);
+      return (mech != null && mech.getSolver() != null &&
+              mech.getSolver().getContactSolverWarmStart());
+   }
+
+   private static long gridKey (int xi, int yi, int zi) {
+      // 21 bits per cell index; wrap-around only causes extra candidates
+      return ((((long)xi) & 0x1fffff) << 42 |
+              (((long)yi) & 0x1fffff) << 21 |
+              (((long)zi) & 0x1fffff));
+   }
+
+   /**
+    * Hashes the points of the previous unilateral contacts into a grid whose
+    * cell size equals the matching tolerance, so that candidate matches for
+    * a new contact need only be sought in the adjacent cells.
+    */
+   private void buildPreviousUnilateralGrid (double cellSize) {
+      myPrevUnilateralGrid.clear();
+      for (int i=0; i<myPrevUnilaterals.size(); i++) {
+         Point3d p = myPrevUnilaterals.get(i).myCpnt0.getPoint();
+         long key = gridKey (
+            (int)Math.floor (p.x/cellSize),
+            (int)Math.floor (p.y/cellSize),
+            (int)Math.floor (p.z/cellSize));
+         ArrayList<Integer> cell = myPrevUnilateralGrid.get (key);
+         if (cell == null) {
+            cell = new ArrayList<Integer>();
+            myPrevUnilateralGrid.put (key, cell);
+         }
+         cell.add (i);
+      }
+   }
+
+   /**
+    * Finds the unilateral contact from the previous step that corresponds to
+    * a new contact with a given point and normal, or returns
+    * <code>null</code> if there is none. A previous contact corresponds if
+    * it has not already been matched, its normal is close to the new normal,
+    * and its point is the closest one within the rigid point tolerance.
+    */
+   private ContactConstraint findPreviousUnilateral (
+      Point3d pnt, Vector3d nrm, double tol, boolean[] matched) {
+      double mind = tol;
+      int mini = -1;
+      int xi = (int)Math.floor (pnt.x/tol);
+      int yi = (int)Math.floor (pnt.y/tol);
+      int zi = (int)Math.floor (pnt.z/tol);
+      for (int dx=-1; dx<=1; dx++) {
+         for (int dy=-1; dy<=1; dy++) {
+            for (int dz=-1; dz<=1; dz++) {
+               ArrayList<Integer> cell =
+                  myPrevUnilateralGrid.get (gridKey (xi+dx, yi+dy, zi+dz));
+               if (cell == null) {
+                  continue;
+               }
+               for (int k=0; k<cell.size(); k++) {
+                  int i = cell.get(k);
+                  ContactConstraint c = myPrevUnilaterals.get(i);
+                  if (!matched[i] && c.myNormal.dot (nrm) > 0.9) {
+                     double d = c.myCpnt0.getPoint().distance (pnt);
+                     // ties go to the highest index, independent of the
+                     // order in which the cells are visited
+                     if (d < mind || (d == mind && i > mini)) {
+                        mind = d;
+                        mini = i;
+                     }
+                  }
+               }
+            }
+         }
+      }
+      if (mini != -1) {
+         matched[mini] = true;
+         return myPrevUnilaterals.get(mini);
+      }
+      return null;
+   }
+
    double computeContourRegionConstraints (
       ContactInfo info, CollidableBody collidable0, CollidableBody collidable1) {
 
+      // If the contact solver is warm started, new contacts are matched to
+      // those of the previous step by proximity and given their impulses.
+      // The previous contacts are obtained by swapping the lists.
+      double tol = myBehavior.myRigidPointTol;
+      boolean[] matched = null;
+      if (contactWarmStartEnabled() && tol > 0) {
+         ArrayList<ContactConstraint> prev = myPrevUnilaterals;
+         myPrevUnilaterals = myUnilaterals;
+         myUnilaterals = prev;
+         buildPreviousUnilateralGrid (tol);
+         matched = new boolean[myPrevUnilaterals.size()];
+      }
+      else {
+         myPrevUnilaterals.clear();
+      }
       myUnilaterals.clear();
       double maxpen = 0;
 
       //clearRenderData();
 
-      // Currently, no correspondence is established between new contacts and
-      // previous contacts. If there was, then we could set the multipliers for
-      // the new contacts to something based on the old contacts, thereby
-      // providing initial "warm start" values for the solver.
-
       if (info != null) {
          int numc = 0;
          info.setPointTol (myBehavior.myRigidPointTol);
@@ -727,6 +828,13 @@ public class CollisionHandler extends ConstrainerBase
 
                maxpen = region.depth;
                c.setDistance (-region.depth);
+               if (matched != null) {
+                  ContactConstraint prev =
+                     findPreviousUnilateral (p, region.normal, tol, matched);
+                  if (prev != null) {
+                     c.setImpulse (prev.getImpulse());
+                  }
+               }
                myUnilaterals.add (c);
                numc++;
             }
@@ -739,6 +847,8 @@ public class CollisionHandler extends ConstrainerBase
       myBilaterals0.clear();
       myBilaterals1.clear();
       myUnilaterals.clear();
+      myPrevUnilaterals.clear();
+      myPrevUnilateralGrid.clear();
    }
 
    public void clearContactActivity() {
@@ -3,11 +3,14 @@ package artisynth.core.mechmodels;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -17,7 +20,9 @@ import maspack.collision.MeshCollider;
 import maspack.collision.SurfaceMeshIntersector;
 import maspack.collision.SurfaceMeshIntersector.RegionType;
 import maspack.collision.SignedDistanceCollider;
+import maspack.concurrency.ParallelLoopManager;
 import maspack.geometry.PolygonalMesh;
+import maspack.geometry.SignedDistanceGrid;
 import maspack.matrix.SparseBlockMatrix;
 import maspack.matrix.Vector3d;
 import maspack.matrix.VectorNd;
@@ -146,6 +151,12 @@ public class CollisionManager extends RenderableCompositeBase
    ArrayList<CollidableBody> myDeformableExts;
    ArrayList<CollidableBody> myDeformableInts;
 
+   // indices of the bodies in the above lists, used to order the candidate
+   // pairs found by the broad phase. Rebuilt along with the lists.
+   HashMap<CollidableBody,Integer> myRigidExtIdxs;
+   HashMap<CollidableBody,Integer> myDeformableExtIdxs;
+   HashMap<CollidableBody,Integer> myDeformableIntIdxs;
+
    HashMap<CollidablePair,ArrayList<CollisionResponse>> myPairResponses;
    HashMap<CollidableBody,ArrayList<CollisionResponse>> myGroupResponses;
 
@@ -155,9 +166,18 @@ public class CollisionManager extends RenderableCompositeBase
 
    AbstractCollider myCollider = null;
 
-   SurfaceMeshIntersector myAjlIntersector = null;
-   SignedDistanceCollider mySDCollider = null;
-   MeshCollider myTriTriCollider = null;
+   NarrowPhaseColliders mySerialColliders = new NarrowPhaseColliders();
+
+   // structures for performing the narrow phase in parallel
+   ArrayList<ContactCheck> myDeferredChecks = null;
+   ParallelLoopManager myNarrowPhaseManager = null;
+   NarrowPhaseColliders[] myThreadColliders = null;
+
+   CollisionBroadPhase myBroadPhase = null;
+   // true if the broad phase has been updated for the current step
+   boolean myBroadPhaseActive = false;
+   int myNumCandidatePairs = 0;
+   int myNumCulledPairs = 0;
 
    double myMaxpen; // accumulates maximum penetration 
 
@@ -298,6 +318,12 @@ public class CollisionManager extends RenderableCompositeBase
    static ScalarRange defaultPenetrationDepthRange = new ScalarRange();
    ScalarRange myPenetrationDepthRange = defaultPenetrationDepthRange.clone();
 
+   static boolean defaultUseBroadPhase = false;
+   boolean myUseBroadPhase = defaultUseBroadPhase;
+
+   static int defaultNumCollisionThreads = 1;
+   int myNumCollisionThreads = defaultNumCollisionThreads;
+
    ContactForceBehavior myForceBehavior;
 
    public static PropertyList myProps =
@@ -371,6 +397,19 @@ public class CollisionManager extends RenderableCompositeBase
       myProps.addInheritable (
          "colliderType", "type of collider to use for collisions",
          myDefaultColliderType);
+
+      myProps.add (
+         "useBroadPhase",
+         "cull body pairs whose bounding boxes do not overlap",
+         defaultUseBroadPhase);
+      myProps.addReadOnly (
+         "numCandidatePairs", "number of body pairs passed to the colliders");
+      myProps.addReadOnly (
+         "numCulledPairs", "number of body pairs culled by the broad phase");
+      myProps.add (
+         "numCollisionThreads",
+         "number of threads used for narrow phase collision detection",
+         defaultNumCollisionThreads, "[1,inf)");
    }
 
    public PropertyList getAllPropertyInfo() {
@@ -427,6 +466,10 @@ public class CollisionManager extends RenderableCompositeBase
       myDeformableExts = new ArrayList<CollidableBody>();
       myDeformableInts = new ArrayList<CollidableBody>();
 
+      myRigidExtIdxs = new HashMap<CollidableBody,Integer>();
+      myDeformableExtIdxs = new HashMap<CollidableBody,Integer>();
+      myDeformableIntIdxs = new HashMap<CollidableBody,Integer>();
+
       myBehaviorStructuresValid = false;
       myResponseStructuresValid = false;
       myHandlerTableValid = false;
@@ -470,6 +513,8 @@ public class CollisionManager extends RenderableCompositeBase
       myDrawContactNormals = defaultDrawContactNormals;
       myDrawContactNormalsMode = PropertyMode.Inherited;
       setPenetrationDepthRange (defaultPenetrationDepthRange);
+      myUseBroadPhase = defaultUseBroadPhase;
+      myNumCollisionThreads = defaultNumCollisionThreads;
       myForceBehavior = null;
    }
 
@@ -661,6 +706,87 @@ public class CollisionManager extends RenderableCompositeBase
       return myReduceConstraintsMode;
    }
 
+   /**
+    * Queries whether broad phase culling is enabled. See {@link
+    * #setUseBroadPhase} for details.
+    *
+    * @return true if broad phase culling is enabled
+    */
+   public boolean getUseBroadPhase() {
+      return myUseBroadPhase;
+   }
+
+   /**
+    * Sets whether broad phase culling is enabled. If enabled, the world
+    * bounding boxes of all collidable bodies are maintained in a
+    * sweep-and-prune structure, and pairs of bodies whose boxes do not
+    * overlap are skipped without invoking the collider. The numbers of pairs
+    * checked and culled are available through {@link #getNumCandidatePairs}
+    * and {@link #getNumCulledPairs}.
+    *
+    * @param enable if true, enables broad phase culling
+    */
+   public void setUseBroadPhase (boolean enable) {
+      myUseBroadPhase = enable;
+      if (!enable) {
+         myBroadPhase = null;
+      }
+   }
+
+   /**
+    * Returns the number of body pairs that were passed to the colliders
+    * during the most recent collision detection step.
+    *
+    * @return number of body pairs checked for contact
+    */
+   public int getNumCandidatePairs() {
+      return myNumCandidatePairs;
+   }
+
+   /**
+    * Returns the number of body pairs that were culled by the broad phase
+    * during the most recent collision detection step. Will be 0 if the broad
+    * phase is not enabled.
+    *
+    * @return number of body pairs culled
+    */
+   public int getNumCulledPairs() {
+      return myNumCulledPairs;
+   }
+
+   /**
+    * Returns the number of threads used for narrow phase collision
+    * detection. See {@link #setNumCollisionThreads}.
+    *
+    * @return number of narrow phase threads
+    */
+   public int getNumCollisionThreads() {
+      return myNumCollisionThreads;
+   }
+
+   /**
+    * Sets the number of threads used for narrow phase collision detection.
+    * If greater than 1, the colliders for all candidate body pairs are run
+    * concurrently, after which the results are merged into the collision
+    * handlers in the same order used by serial detection. The default value
+    * is 1.
+    *
+    * @param num number of narrow phase threads
+    */
+   public void setNumCollisionThreads (int num) {
+      if (num < 1) {
+         num = 1;
+      }
+      if (num != myNumCollisionThreads) {
+         myNumCollisionThreads = num;
+         if (myNarrowPhaseManager != null) {
+            myNarrowPhaseManager.shutdown();
+            myNarrowPhaseManager = null;
+         }
+         myThreadColliders = null;
+      }
+   }
+
    /** 
     * Queries whether body face contact is enabled. See {@link
     * #setBodyFaceContact} for details.
@@ -1619,6 +1745,9 @@ public class CollisionManager extends RenderableCompositeBase
                }
             }
          }
+         updateIndexMap (myRigidExtIdxs, myRigidExts);
+         updateIndexMap (myDeformableExtIdxs, myDeformableExts);
+         updateIndexMap (myDeformableIntIdxs, myDeformableInts);
          myBehaviorStructuresValid = true;
       }
    }
@@ -1993,33 +2122,25 @@ public class CollisionManager extends RenderableCompositeBase
       }
    }
 
-   void checkForContact (
-      CollidableBody c0, CollidableBody c1, 
-      CollisionBehavior behav, boolean testMode) {
-      if (c0.getCollidableIndex() > c1.getCollidableIndex()) {
-         CollidableBody tmp = c0;
-         c0 = c1;
-         c1 = tmp;
-      }
-      PolygonalMesh mesh0 = c0.getCollisionMesh();
-      PolygonalMesh mesh1 = c1.getCollisionMesh();
-      ContactInfo cinfo;
-      if (testMode) {
-         cinfo = new ContactInfo (mesh0, mesh1);
-      }
-      else {
-         ColliderType colliderType = behav.getColliderType();
-         if (colliderType == ColliderType.SIGNED_DISTANCE) {
-            // if using signed distance collider, at least one collidable
-            // must be rigid and support signed distance grids
-            if ((c0.isDeformable() || !c0.hasDistanceGrid()) &&
-                (c1.isDeformable() || !c1.hasDistanceGrid())) {
-               colliderType = ColliderType.AJL_CONTOUR;
-            }
-         }
+   /**
+    * Colliders used to perform narrow phase collision detection. Since the
+    * colliders are not thread-safe, each thread performing collision
+    * detection needs its own set.
+    */
+   static class NarrowPhaseColliders {
+      SurfaceMeshIntersector myAjlIntersector = null;
+      SignedDistanceCollider mySDCollider = null;
+      MeshCollider myTriTriCollider = null;
+
+      ContactInfo getContacts (ContactCheck chk) {
+         CollidableBody c0 = chk.myBody0;
+         CollidableBody c1 = chk.myBody1;
+         PolygonalMesh mesh0 = c0.getCollisionMesh();
+         PolygonalMesh mesh1 = c1.getCollisionMesh();
+         ContactInfo cinfo;
          //FunctionTimer timer = new FunctionTimer();
          //timer.start();
-         switch (colliderType) {
+         switch (chk.myColliderType) {
             case AJL_CONTOUR: {
                if (myAjlIntersector == null) {
                   myAjlIntersector = new SurfaceMeshIntersector();
@@ -2027,10 +2148,10 @@ public class CollisionManager extends RenderableCompositeBase
                // types of regions that we need to compute for mesh0 and mesh1
                RegionType regions0 = RegionType.INSIDE;
                RegionType regions1 = RegionType.INSIDE;
-               Method method = behav.getMethod();
+               Method method = chk.myBehavior.getMethod();
                if (method != Method.VERTEX_EDGE_PENETRATION &&
                    method != Method.CONTOUR_REGION &&
-                   behav.getBodyFaceContact() == false) {
+                   chk.myBehavior.getBodyFaceContact() == false) {
                   // vertex penetration method may not require computing
                   // regions for both meshes
                   if (CollisionHandler.isRigid (c0) && 
@@ -2058,32 +2179,282 @@ public class CollisionManager extends RenderableCompositeBase
                   mySDCollider = new SignedDistanceCollider();
                }
                cinfo = mySDCollider.getContacts (
-                  mesh0, c0.getDistanceGrid(),
-                  mesh1, c1.getDistanceGrid());
+                  mesh0, chk.myGrid0, mesh1, chk.myGrid1);
                break;
             }
             default: {
                throw new UnsupportedOperationException (
-                  "Unimplemented collider type " + colliderType);
+                  "Unimplemented collider type " + chk.myColliderType);
             }
          }
          //timer.stop();
          //System.out.println ("time=" + timer.getTimeUsec());
-         //cinfo = myCollider.getContacts (mesh0, mesh1);
+         return cinfo;
       }
-      if (cinfo != null) {
+   }
+
+   /**
+    * Describes a narrow phase contact check for a pair of bodies.
+    */
+   static class ContactCheck {
+      CollidableBody myBody0;
+      CollidableBody myBody1;
+      CollisionBehavior myBehavior;
+      ColliderType myColliderType;
+      SignedDistanceGrid myGrid0;
+      SignedDistanceGrid myGrid1;
+      ContactInfo myContactInfo;
+
+      ContactCheck (
+         CollidableBody c0, CollidableBody c1, CollisionBehavior behav) {
+         if (c0.getCollidableIndex() > c1.getCollidableIndex()) {
+            CollidableBody tmp = c0;
+            c0 = c1;
+            c1 = tmp;
+         }
+         myBody0 = c0;
+         myBody1 = c1;
+         myBehavior = behav;
+         ColliderType colliderType = behav.getColliderType();
+         if (colliderType == ColliderType.SIGNED_DISTANCE) {
+            // if using signed distance collider, at least one collidable
+            // must be rigid and support signed distance grids
+            if ((c0.isDeformable() || !c0.hasDistanceGrid()) &&
+                (c1.isDeformable() || !c1.hasDistanceGrid())) {
+               colliderType = ColliderType.AJL_CONTOUR;
+            }
+            else {
+               myGrid0 = c0.getDistanceGrid();
+               myGrid1 = c1.getDistanceGrid();
+            }
+         }
+         myColliderType = colliderType;
+      }
+   }
+
+   void checkForContact (
+      CollidableBody c0, CollidableBody c1, 
+      CollisionBehavior behav, boolean testMode) {
+      myNumCandidatePairs++;
+      ContactInfo cinfo;
+      if (testMode) {
+         if (c0.getCollidableIndex() > c1.getCollidableIndex()) {
+            CollidableBody tmp = c0;
+            c0 = c1;
+            c1 = tmp;
+         }
+         cinfo = new ContactInfo (
+            c0.getCollisionMesh(), c1.getCollisionMesh());
          addOrUpdateHandler (cinfo, c0, c1, behav);
+         return;
+      }
+      ContactCheck chk = new ContactCheck (c0, c1, behav);
+      if (myDeferredChecks != null) {
+         // narrow phase will be performed later in parallel
+         myDeferredChecks.add (chk);
+         return;
+      }
+      cinfo = mySerialColliders.getContacts (chk);
+      if (cinfo != null) {
+         addOrUpdateHandler (cinfo, chk.myBody0, chk.myBody1, behav);
       }     
    }
 
+   /**
+    * Updates cached mesh data which the colliders would otherwise compute on
+    * demand, so that meshes can be shared safely between threads.
+    */
+   private void prepareMeshForCollision (PolygonalMesh mesh) {
+      mesh.getLocalBounds (null, null);
+      mesh.getWorldBounds (null, null);
+      mesh.isTriangular();
+      mesh.isClosed();
+      mesh.updateFaceNormals();
+      mesh.getBVTree();
+   }
+
+   /**
+    * Performs the narrow phase for all deferred contact checks, dividing the
+    * checks among multiple threads. Handlers are then added or updated
+    * serially, in the order that the checks were requested, so that the
+    * resulting constraints are the same as for serial collision detection.
+    */
+   private void processDeferredChecks() {
+      final ArrayList<ContactCheck> checks = myDeferredChecks;
+      myDeferredChecks = null;
+      if (checks.size() == 0) {
+         return;
+      }
+      HashSet<PolygonalMesh> meshes = new HashSet<PolygonalMesh>();
+      for (ContactCheck chk : checks) {
+         meshes.add (chk.myBody0.getCollisionMesh());
+         meshes.add (chk.myBody1.getCollisionMesh());
+      }
+      for (PolygonalMesh mesh : meshes) {
+         prepareMeshForCollision (mesh);
+      }
+      // distance grid normals are otherwise computed lazily by
+      // getLocalDistanceAndNormal(), so compute them all here
+      HashSet<SignedDistanceGrid> grids = new HashSet<SignedDistanceGrid>();
+      for (ContactCheck chk : checks) {
+         if (chk.myGrid0 != null) {
+            grids.add (chk.myGrid0);
+         }
+         if (chk.myGrid1 != null) {
+            grids.add (chk.myGrid1);
+         }
+      }
+      for (SignedDistanceGrid grid : grids) {
+         grid.computeNormals();
+      }
+      if (myNarrowPhaseManager == null) {
+         myNarrowPhaseManager = new ParallelLoopManager (
+            "collision", myNumCollisionThreads);
+      }
+      int nthreads = myNarrowPhaseManager.getNumThreads();
+      if (myThreadColliders == null || myThreadColliders.length != nthreads) {
+         myThreadColliders = new NarrowPhaseColliders[nthreads];
+         for (int i=0; i<nthreads; i++) {
+            myThreadColliders[i] = new NarrowPhaseColliders();
+         }
+      }
+      // checks are interleaved among threads since their costs vary widely
+      // and pairs of similar bodies tend to be adjacent
+      final int nchecks = checks.size();
+      myNarrowPhaseManager.execute (
+         nthreads, new ParallelLoopManager.RangeTask() {
+            public void run (int tidx, int start, int end) {
+               for (int t=start; t<end; t++) {
+                  NarrowPhaseColliders colliders = myThreadColliders[t];
+                  for (int k=t; k<nchecks; k+=myThreadColliders.length) {
+                     ContactCheck chk = checks.get(k);
+                     chk.myContactInfo = colliders.getContacts (chk);
+                  }
+               }
+            }
+         });
+      for (ContactCheck chk : checks) {
+         if (chk.myContactInfo != null) {
+            addOrUpdateHandler (
+               chk.myContactInfo, chk.myBody0, chk.myBody1, chk.myBehavior);
+         }
+      }
+   }
+
+   /**
+    * Updates the broad phase, if enabled, using all bodies that may be
+    * checked for collision by this manager.
+    */
+   private void updateBroadPhase (
+      ArrayList<MechModel> subMechs, boolean testMode) {
+      // broad phase is disabled in test mode, which expects a handler for
+      // every pair
+      if (!myUseBroadPhase || testMode) {
+         myBroadPhaseActive = false;
+         return;
+      }
+      if (myBroadPhase == null) {
+         myBroadPhase = new CollisionBroadPhase();
+      }
+      LinkedHashSet<CollidableBody> bodies =
+         new LinkedHashSet<CollidableBody>();
+      bodies.addAll (myRigidExts);
+      bodies.addAll (myDeformableExts);
+      bodies.addAll (myDeformableInts);
+      for (CollidablePair pair : myExplicitBehaviors.keySet()) {
+         bodies.add ((CollidableBody)pair.myComp0);
+         bodies.add ((CollidableBody)pair.myComp1);
+      }
+      for (MechModel mech : subMechs) {
+         CollisionManager cm = mech.getCollisionManager();
+         if (cm != this) {
+            bodies.addAll (cm.myRigidExts);
+            bodies.addAll (cm.myDeformableExts);
+         }
+      }
+      myBroadPhase.setMargin (getMaxPenetrationTol (subMechs));
+      myBroadPhase.update (bodies);
+      myBroadPhaseActive = true;
+   }
+
+   /**
+    * Returns the largest penetration tolerance among the behaviors of this
+    * manager and those of the sub-models. The broad phase enlarges its
+    * bounding boxes by this amount, so that bodies that are not quite
+    * touching are still passed to the narrow phase.
+    */
+   private double getMaxPenetrationTol (ArrayList<MechModel> subMechs) {
+      double tol = 0;
+      for (CollisionBehavior behav : myBehaviors) {
+         tol = Math.max (tol, behav.getPenetrationTol());
+      }
+      for (MechModel mech : subMechs) {
+         CollisionManager cm = mech.getCollisionManager();
+         if (cm != this) {
+            for (CollisionBehavior behav : cm.myBehaviors) {
+               tol = Math.max (tol, behav.getPenetrationTol());
+            }
+         }
+      }
+      return tol;
+   }
+
+   private void updateIndexMap (
+      HashMap<CollidableBody,Integer> map, ArrayList<CollidableBody> cols) {
+      map.clear();
+      for (int j=0; j<cols.size(); j++) {
+         map.put (cols.get(j), j);
+      }
+   }
+
+   /**
+    * Returns, in ascending order, the indices of the bodies in a list whose
+    * bounding boxes overlap that of <code>ci</code> and whose indices are
+    * at least <code>jmin</code>. Indices are supplied by
+    * <code>indexMap</code>. Checking candidates in ascending order ensures
+    * that contact is checked in the same order as without the broad phase.
+    */
+   private int[] getCandidateIndices (
+      CollidableBody ci, HashMap<CollidableBody,Integer> indexMap, int jmin) {
+
+      List<CollidableBody> overlaps = myBroadPhase.getOverlappingBodies (ci);
+      int[] idxs = new int[overlaps.size()];
+      int num = 0;
+      for (CollidableBody cj : overlaps) {
+         Integer j = indexMap.get (cj);
+         if (j != null && j >= jmin) {
+            idxs[num++] = j;
+         }
+      }
+      Arrays.sort (idxs, 0, num);
+      return Arrays.copyOf (idxs, num);
+   }
+
    /**
     * Check external collisions for different component lists cols0 and cols1.
     */
    void checkExternalCollisions (
       ArrayList<CollidableBody> cols0,
       ArrayList<CollidableBody> cols1,
-      boolean testMode) {
-
+      HashMap<CollidableBody,Integer> indexMap, boolean testMode) {
+
+      if (myBroadPhaseActive) {
+         for (int i=0; i<cols0.size(); i++) {
+            CollidableBody ci = cols0.get(i);
+            int[] cands = getCandidateIndices (ci, indexMap, 0);
+            myNumCulledPairs += cols1.size()-cands.length;
+            for (int j : cands) {
+               CollidableBody cj = cols1.get(j);
+               if (getExplicitBehavior (ci, cj) == null) {
+                  CollisionBehavior behav = getExternalBehavior (ci, cj);
+                  if (behav.isEnabled()) {
+                     checkForContact (ci, cj, behav, testMode);
+                  }
+               }
+            }
+         }
+         return;
+      }
       for (int i=0; i<cols0.size(); i++) {
          CollidableBody ci = cols0.get(i);
          for (int j=0; j<cols1.size(); j++) {
@@ -2102,8 +2473,27 @@ public class CollisionManager extends RenderableCompositeBase
     * Check external collisions among elements of the same component list cols
     */
    void checkExternalCollisions (
-      ArrayList<CollidableBody> cols, boolean testMode) {
-
+      ArrayList<CollidableBody> cols,
+      HashMap<CollidableBody,Integer> indexMap, boolean testMode) {
+
+      if (myBroadPhaseActive) {
+         for (int i=0; i<cols.size(); i++) {
+            CollidableBody ci = cols.get(i);
+            int[] cands = getCandidateIndices (ci, indexMap, i+1);
+            myNumCulledPairs += cols.size()-i-1-cands.length;
+            for (int j : cands) {
+               CollidableBody cj = cols.get(j);
+               if (getExplicitBehavior (ci, cj) == null &&
+                   nearestCommonCollidableAncestor (ci, cj) == null) {
+                  CollisionBehavior behav = getExternalBehavior (ci, cj);
+                  if (behav.isEnabled()) {
+                     checkForContact (ci, cj, behav, testMode);
+                  }
+               }
+            }
+         }
+         return;
+      }
       for (int i=0; i<cols.size(); i++) {
          CollidableBody ci = cols.get(i);
          for (int j=i+1; j<cols.size(); j++) {
@@ -2123,8 +2513,30 @@ public class CollisionManager extends RenderableCompositeBase
     * Check internal collisions among elements of the same component list cols
     */
    void checkInternalCollisions (
-      ArrayList<CollidableBody> cols, boolean testMode) {
-
+      ArrayList<CollidableBody> cols,
+      HashMap<CollidableBody,Integer> indexMap, boolean testMode) {
+
+      if (myBroadPhaseActive) {
+         for (int i=0; i<cols.size(); i++) {
+            CollidableBody ci = cols.get(i);
+            int[] cands = getCandidateIndices (ci, indexMap, i+1);
+            myNumCulledPairs += cols.size()-i-1-cands.length;
+            for (int j : cands) {
+               CollidableBody cj = cols.get(j);
+               if (getExplicitBehavior (ci, cj) == null) {
+                  Collidable ancestor =
+                     nearestCommonCollidableAncestor (ci, cj);
+                  if (ancestor != null) {
+                     CollisionBehavior behav = getInternalBehavior (ancestor);
+                     if (behav.isEnabled()) {
+                        checkForContact (ci, cj, behav, testMode);
+                     }
+                  }
+               }
+            }
+         }
+         return;
+      }
       for (int i=0; i<cols.size(); i++) {
          CollidableBody ci = cols.get(i);
          for (int j=i+1; j<cols.size(); j++) {
@@ -2423,6 +2835,16 @@ public class CollisionManager extends RenderableCompositeBase
       int hidx1 = handlers.size(); 
       myHandlerTable.setHandlerActivity (false);
 
+      myNumCandidatePairs = 0;
+      myNumCulledPairs = 0;
+      updateBroadPhase (subMechs, testMode);
+      if (myNumCollisionThreads > 1 && !testMode) {
+         myDeferredChecks = new ArrayList<ContactCheck>();
+      }
+      else {
+         myDeferredChecks = null;
+      }
+
       // compute explicit collisions
       for (Map.Entry<CollidablePair,CollisionBehavior> e :
               myExplicitBehaviors.entrySet()) {
@@ -2431,15 +2853,22 @@ public class CollisionManager extends RenderableCompositeBase
             CollidablePair pair = e.getKey();
             CollidableBody c0 = (CollidableBody)pair.myComp0;
             CollidableBody c1 = (CollidableBody)pair.myComp1;
+            if (myBroadPhaseActive && !myBroadPhase.mayOverlap (c0, c1)) {
+               myNumCulledPairs++;
+               continue;
+            }
             checkForContact (c0, c1, behav, testMode);            
          }
       }
       // compute implicit collisions
 
-      checkExternalCollisions (myRigidExts, testMode);
-      checkExternalCollisions (myDeformableExts, myRigidExts, testMode);
-      checkExternalCollisions (myDeformableExts, testMode);
-      checkInternalCollisions (myDeformableInts, testMode);
+      checkExternalCollisions (myRigidExts, myRigidExtIdxs, testMode);
+      checkExternalCollisions (
+         myDeformableExts, myRigidExts, myRigidExtIdxs, testMode);
+      checkExternalCollisions (
+         myDeformableExts, myDeformableExtIdxs, testMode);
+      checkInternalCollisions (
+         myDeformableInts, myDeformableIntIdxs, testMode);
 
       for (int i=0; i<subMechs.size(); i++) {
          CollisionManager cmi = null;
@@ -2449,16 +2878,23 @@ public class CollisionManager extends RenderableCompositeBase
             cmj = subMechs.get(j).getCollisionManager();
             
             checkExternalCollisions (
-               cmi.myRigidExts, cmj.myRigidExts, testMode);
+               cmi.myRigidExts, cmj.myRigidExts,
+               cmj.myRigidExtIdxs, testMode);
             checkExternalCollisions (
-               cmi.myRigidExts, cmj.myDeformableExts, testMode);
+               cmi.myRigidExts, cmj.myDeformableExts,
+               cmj.myDeformableExtIdxs, testMode);
             checkExternalCollisions (
-               cmi.myDeformableExts, cmj.myRigidExts, testMode);
+               cmi.myDeformableExts, cmj.myRigidExts,
+               cmj.myRigidExtIdxs, testMode);
             checkExternalCollisions (
-               cmi.myDeformableExts, cmj.myDeformableExts, testMode);
+               cmi.myDeformableExts, cmj.myDeformableExts,
+               cmj.myDeformableExtIdxs, testMode);
          }
       }
 
+      if (myDeferredChecks != null) {
+         processDeferredChecks();
+      }
       myHandlerTable.removeInactiveHandlers();
       myHandlerTable.collectHandlers (handlers);
 
@@ -23,6 +23,7 @@ import maspack.matrix.VectorNd;
 import maspack.properties.PropertyList;
 import maspack.properties.PropertyMode;
 import maspack.properties.PropertyUtils;
+import maspack.solvers.PreconditionedCGSolver;
 import maspack.render.Renderer;
 import maspack.render.RenderableUtils;
 import maspack.util.FunctionTimer;
@@ -125,6 +126,10 @@ TransformableGeometry, ScalableUnits, MechSystemModel {
    protected double myPenetrationTol = DEFAULT_PENETRATION_TOL;
    protected PropertyMode myPenetrationTolMode = PropertyMode.Inherited;
 
+   protected static final int DEFAULT_NUM_WRAP_THREADS = 1;
+   protected int myNumWrapThreads = DEFAULT_NUM_WRAP_THREADS;
+   protected ParallelWrapUpdater myWrapUpdater;
+
    protected double myMaxTranslationalVel = 1e10;
    protected double myMaxRotationalVel = 1e10;
 
@@ -159,6 +164,29 @@ TransformableGeometry, ScalableUnits, MechSystemModel {
          DEFAULT_PENETRATION_TOL);
       myProps.add("staticTikhonovFactor", "Tikhonov regularization factor for static solves", 0);
       myProps.add("staticIncrements", "Number of load increments for incremental static solves", 20);
+      myProps.add (
+         "preconditionerDropTolerance",
+         "drop tolerance for the PreconditionedCG incomplete Cholesky "+
+         "preconditioner (0 for IC(0))",
+         PreconditionedCGSolver.DEFAULT_DROP_TOLERANCE, "[0,inf]");
+      myProps.add (
+         "preconditionerRebuildThreshold",
+         "convergence rate degradation factor at which the PreconditionedCG "+
+         "preconditioner is rebuilt",
+         PreconditionedCGSolver.DEFAULT_REBUILD_THRESHOLD);
+      myProps.addReadOnly (
+         "iterativeSolverIterations",
+         "number of iterations used by the last iterative solve");
+      myProps.addReadOnly (
+         "preconditionerRebuilds",
+         "number of times the PreconditionedCG preconditioner has been built");
+      myProps.add (
+         "numWrapThreads",
+         "number of threads used to update MultiPointSpring wrap paths",
+         DEFAULT_NUM_WRAP_THREADS, "[1,inf)");
+      myProps.addReadOnly (
+         "lastWrapUpdateTime",
+         "time for the last concurrent wrap path update (msec)");
       myProps.addInheritable (
          "excitationColor", "color of activated muscles", null);
       myProps.addInheritable (
@@ -974,6 +1002,121 @@ TransformableGeometry, ScalableUnits, MechSystemModel {
       return 0;
    }
 
+   public void setPreconditionerDropTolerance (double tol) {
+      if (mySolver != null) {
+         mySolver.setPreconditionerDropTolerance (tol);
+      }
+   }
+
+   public double getPreconditionerDropTolerance() {
+      if (mySolver != null) {
+         return mySolver.getPreconditionerDropTolerance();
+      }
+      return PreconditionedCGSolver.DEFAULT_DROP_TOLERANCE;
+   }
+
+   public void setPreconditionerRebuildThreshold (double thresh) {
+      if (mySolver != null) {
+         mySolver.setPreconditionerRebuildThreshold (thresh);
+      }
+   }
+
+   public double getPreconditionerRebuildThreshold() {
+      if (mySolver != null) {
+         return mySolver.getPreconditionerRebuildThreshold();
+      }
+      return PreconditionedCGSolver.DEFAULT_REBUILD_THRESHOLD;
+   }
+
+   public int getIterativeSolverIterations() {
+      if (mySolver != null) {
+         return mySolver.getIterativeSolverIterations();
+      }
+      return 0;
+   }
+
+   public int getPreconditionerRebuilds() {
+      if (mySolver != null) {
+         return mySolver.getPreconditionerRebuilds();
+      }
+      return 0;
+   }
+
+   /**
+    * Returns the number of threads used to update the wrap paths of
+    * MultiPointSprings. See {@link #setNumWrapThreads}.
+    *
+    * @return number of wrap update threads
+    */
+   public int getNumWrapThreads() {
+      return myNumWrapThreads;
+   }
+
+   /**
+    * Sets the number of threads used to update the wrap paths of the
+    * MultiPointSprings (including muscles) contained in this model. If
+    * greater than 1, then at the start of each step the wrap segments of all
+    * such springs are updated concurrently using a {@link
+    * ParallelWrapUpdater}, rather than serially within each spring's {@link
+    * MultiPointSpring#preadvance preadvance()} method. Springs that share a
+    * {@link RigidMesh} without a distance grid are updated in the same
+    * thread. The default value is 1.
+    *
+    * @param num number of wrap update threads
+    */
+   public void setNumWrapThreads (int num) {
+      if (num < 1) {
+         num = 1;
+      }
+      if (num != myNumWrapThreads) {
+         myNumWrapThreads = num;
+         if (myWrapUpdater != null) {
+            myWrapUpdater.shutdown();
+            myWrapUpdater = null;
+         }
+      }
+   }
+
+   /**
+    * Returns the elapsed time, in msec, of the most recent concurrent wrap
+    * path update, or 0 if concurrent updating is not in use. Per-spring
+    * iteration counts and times are available from {@link
+    * MultiPointSpring#getLastWrapIterations} and {@link
+    * MultiPointSpring#getLastWrapTime}.
+    *
+    * @return time of the last concurrent wrap update (msec)
+    */
+   public double getLastWrapUpdateTime() {
+      if (myWrapUpdater != null) {
+         return myWrapUpdater.getLastUpdateTime();
+      }
+      return 0;
+   }
+
+   /**
+    * Concurrently updates the wrap segments of the MultiPointSprings among
+    * the local advance components, if there are enough of them to make this
+    * worthwhile.
+    */
+   protected void updateWrapSegmentsConcurrently() {
+      ArrayList<MultiPointSpring> springs = new ArrayList<MultiPointSpring>();
+      for (RequiresPrePostAdvance c : myLocalPrePostAdvanceComps) {
+         if (c instanceof MultiPointSpring &&
+             ((MultiPointSpring)c).hasWrapSegments()) {
+            springs.add ((MultiPointSpring)c);
+         }
+      }
+      if (springs.size() > 1) {
+         if (myWrapUpdater == null) {
+            myWrapUpdater = new ParallelWrapUpdater (myNumWrapThreads);
+         }
+         myWrapUpdater.update (springs);
+         for (MultiPointSpring spr : springs) {
+            spr.markWrapSegmentsUpdated();
+         }
+      }
+   }
+
    public PointList<Particle> particles() {
       return myParticles;
    }
@@ -1755,6 +1898,9 @@ TransformableGeometry, ScalableUnits, MechSystemModel {
          mySolver.projectPosConstraints (0);
       }     
       updateLocalAdvanceComponents();
+      if (myNumWrapThreads > 1) {
+         updateWrapSegmentsConcurrently();
+      }
       for (RequiresPrePostAdvance c : myLocalPrePostAdvanceComps) {
          c.preadvance (t0, t1, flags);
       }
@@ -2208,6 +2354,10 @@ TransformableGeometry, ScalableUnits, MechSystemModel {
    public void dispose() {
       recursivelyDispose (this);
       mySolver.dispose();
+      if (myWrapUpdater != null) {
+         myWrapUpdater.shutdown();
+         myWrapUpdater = null;
+      }
    }
 
    // ForceEffector that implements gravity for MechModels
@@ -8,6 +8,7 @@ package artisynth.core.mechmodels;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 
 import artisynth.core.mechmodels.MechSystem.ConstraintInfo;
@@ -33,6 +34,8 @@ import maspack.solvers.IterativeSolver;
 import maspack.solvers.IterativeSolver.ToleranceType;
 import maspack.solvers.KKTSolver;
 import maspack.solvers.PardisoSolver;
+import maspack.solvers.PreconditionedCGSolver;
+import maspack.solvers.SupernodalSolver;
 import maspack.solvers.UmfpackSolver;
 import maspack.util.FunctionTimer;
 import maspack.util.InternalErrorException;
@@ -47,6 +50,7 @@ public class MechSystemSolver {
 
    public boolean profileKKTSolveTime = false;
    public boolean profileWholeSolve = false;
+   public boolean profileKKTAnalysis = false;
 
    //public static boolean useStiffnessPosProjection = true;
    public static boolean useVelProjection = true;
@@ -175,7 +179,7 @@ public class MechSystemSolver {
    }
 
    public static enum MatrixSolver {
-      Pardiso, Umfpack, ConjugateGradient, None
+      Pardiso, Umfpack, Supernodal, ConjugateGradient, PreconditionedCG, None
    }
 
    public static enum Integrator {
@@ -219,9 +223,13 @@ public class MechSystemSolver {
 
    PardisoSolver myPardisoSolver;
    UmfpackSolver myUmfpackSolver;
+   SupernodalSolver mySupernodalSolver;
    KKTSolver myKKTSolver;
    KKTSolver myConSolver;
    KKTSolver myStaticSolver;
+   Boolean myPardisoAvailable = null;
+   boolean myIntegratorDegradedPrinted = false;
+   boolean myStabilizationDegradedPrinted = false;
 
    MatrixSolver myMatrixSolver = MatrixSolver.None;
    Integrator myIntegrator = Integrator.SymplecticEuler;
@@ -229,6 +237,16 @@ public class MechSystemSolver {
    double myTol = 0.01;
    ToleranceType myTolType = ToleranceType.RelativeResidual;
    int myMaxIterations = 20;
+   int myIterativeNumThreads = 1;
+   double myPreconditionerDropTol =
+      PreconditionedCGSolver.DEFAULT_DROP_TOLERANCE;
+   double myPreconditionerRebuildThreshold =
+      PreconditionedCGSolver.DEFAULT_REBUILD_THRESHOLD;
+   KKTSolver.ContactSolverType myContactSolverType =
+      KKTSolver.ContactSolverType.Dantzig;
+   double myContactSolverTol = 1e-6;
+   int myContactSolverMaxIterations = 500;
+   boolean myContactSolverWarmStart = false;
    boolean myUseDirectSolver = true;
    PosStabilization myStabilization = PosStabilization.GlobalMass;
    
@@ -392,13 +410,40 @@ public class MechSystemSolver {
       }
    }
 
+   /**
+    * Returns the integrator that can actually be used for the system's
+    * current solve matrix. SupernodalSolver supports only symmetric
+    * matrices, so if the solve matrix is non-symmetric and Pardiso is not
+    * available, the integrator is degraded in the same way as for
+    * MatrixSolver.None.
+    */
+   private Integrator getIntegratorForSystem (Integrator integrator) {
+      if (myMatrixSolver == MatrixSolver.Supernodal &&
+          integrator != Integrator.SymplecticEuler &&
+          (mySys.getSolveMatrixType() & Matrix.SYMMETRIC) == 0 &&
+          !pardisoAvailable()) {
+         Integrator degraded =
+            getIntegratorForSolver (integrator, MatrixSolver.None);
+         if (degraded != integrator && !myIntegratorDegradedPrinted) {
+            System.out.println (
+               "Warning: non-symmetric system not supported by " +
+               "Supernodal solver; using " + degraded + " instead of " +
+               integrator);
+            myIntegratorDegradedPrinted = true;
+         }
+         return degraded;
+      }
+      return integrator;
+   }
+
    private Integrator getIntegratorForSolver (
       Integrator integrator, MatrixSolver solver) {
       Integrator result = integrator;
       switch (integrator) {
          case BackwardEuler: {
             if (solver != MatrixSolver.Umfpack &&
-               solver != MatrixSolver.Pardiso) {
+               solver != MatrixSolver.Pardiso &&
+               solver != MatrixSolver.Supernodal) {
                return Integrator.SymplecticEuler;
             }
             break;
@@ -406,7 +451,8 @@ public class MechSystemSolver {
          case Trapezoidal:
          case FullBackwardEuler:
          case ConstrainedBackwardEuler: {
-            if (solver != MatrixSolver.Pardiso) {
+            if (solver != MatrixSolver.Pardiso &&
+                solver != MatrixSolver.Supernodal) {
                if (solver == MatrixSolver.Umfpack) {
                   return Integrator.BackwardEuler;
                }
@@ -478,9 +524,197 @@ public class MechSystemSolver {
       solver.setMaxIterations (myMaxIterations);
       solver.setToleranceType (myTolType);
       solver.setTolerance (myTol);
+      solver.setNumThreads (myIterativeNumThreads);
+      if (solver instanceof PreconditionedCGSolver) {
+         PreconditionedCGSolver pcg = (PreconditionedCGSolver)solver;
+         pcg.setDropTolerance (myPreconditionerDropTol);
+         pcg.setRebuildThreshold (myPreconditionerRebuildThreshold);
+      }
       myIterativeSolver = solver;
    }
 
+   /**
+    * Sets the number of threads used by the iterative solver for
+    * matrix-vector products and vector operations. Results do not depend on
+    * the number of threads.
+    *
+    * @param num number of threads
+    */
+   public void setIterativeSolverNumThreads (int num) {
+      myIterativeNumThreads = Math.max (num, 1);
+      if (myIterativeSolver != null) {
+         myIterativeSolver.setNumThreads (myIterativeNumThreads);
+      }
+   }
+
+   /**
+    * Returns the number of threads used by the iterative solver for
+    * matrix-vector products and vector operations. See {@link
+    * #setIterativeSolverNumThreads}.
+    *
+    * @return number of threads
+    */
+   public int getIterativeSolverNumThreads() {
+      return myIterativeNumThreads;
+   }
+
+   /**
+    * Sets the drop tolerance for the incomplete Cholesky preconditioner used
+    * by the {@link MatrixSolver#PreconditionedCG PreconditionedCG} matrix
+    * solver. A value of 0 specifies an IC(0) decomposition.
+    *
+    * @param tol drop tolerance
+    */
+   public void setPreconditionerDropTolerance (double tol) {
+      myPreconditionerDropTol = Math.max (tol, 0);
+      if (myIterativeSolver instanceof PreconditionedCGSolver) {
+         ((PreconditionedCGSolver)myIterativeSolver).setDropTolerance (
+            myPreconditionerDropTol);
+      }
+   }
+
+   public double getPreconditionerDropTolerance() {
+      return myPreconditionerDropTol;
+   }
+
+   /**
+    * Sets the threshold controlling when the incomplete Cholesky
+    * preconditioner used by the {@link MatrixSolver#PreconditionedCG
+    * PreconditionedCG} matrix solver is rebuilt. See {@link
+    * PreconditionedCGSolver#setRebuildThreshold}.
+    *
+    * @param thresh rebuild threshold
+    */
+   public void setPreconditionerRebuildThreshold (double thresh) {
+      myPreconditionerRebuildThreshold = thresh;
+      if (myIterativeSolver instanceof PreconditionedCGSolver) {
+         ((PreconditionedCGSolver)myIterativeSolver).setRebuildThreshold (
+            thresh);
+      }
+   }
+
+   public double getPreconditionerRebuildThreshold() {
+      return myPreconditionerRebuildThreshold;
+   }
+
+   /**
+    * Sets the method used by the KKT solvers to solve the LCP associated
+    * with unilateral and frictional constraints. See {@link
+    * KKTSolver#setContactSolverType}.
+    *
+    * @param type contact solver type
+    */
+   public void setContactSolverType (KKTSolver.ContactSolverType type) {
+      myContactSolverType = type;
+      for (KKTSolver solver : getKKTSolvers()) {
+         solver.setContactSolverType (type);
+      }
+   }
+
+   public KKTSolver.ContactSolverType getContactSolverType() {
+      return myContactSolverType;
+   }
+
+   /**
+    * Sets the relative tolerance used by the iterative contact solver. See
+    * {@link KKTSolver#setContactSolverTolerance}.
+    *
+    * @param tol contact solver tolerance
+    */
+   public void setContactSolverTolerance (double tol) {
+      myContactSolverTol = tol;
+      for (KKTSolver solver : getKKTSolvers()) {
+         solver.setContactSolverTolerance (tol);
+      }
+   }
+
+   public double getContactSolverTolerance() {
+      return myContactSolverTol;
+   }
+
+   /**
+    * Sets the maximum number of iterations used by the iterative contact
+    * solver.
+    *
+    * @param max maximum number of contact solver iterations
+    */
+   public void setContactSolverMaxIterations (int max) {
+      myContactSolverMaxIterations = max;
+      for (KKTSolver solver : getKKTSolvers()) {
+         solver.setContactSolverMaxIterations (max);
+      }
+   }
+
+   public int getContactSolverMaxIterations() {
+      return myContactSolverMaxIterations;
+   }
+
+   /**
+    * Enables warm starting of the Dantzig contact solver from the basis
+    * implied by the previous step's contact impulses. See {@link
+    * KKTSolver#setContactSolverWarmStart}.
+    *
+    * @param enable if <code>true</code>, enables warm starting
+    */
+   public void setContactSolverWarmStart (boolean enable) {
+      myContactSolverWarmStart = enable;
+      for (KKTSolver solver : getKKTSolvers()) {
+         solver.setContactSolverWarmStart (enable);
+      }
+   }
+
+   public boolean getContactSolverWarmStart() {
+      return myContactSolverWarmStart;
+   }
+
+   /**
+    * Returns the number of iterations used by the most recent contact solve
+    * of each KKT solver, summed over all the KKT solvers. For the Dantzig
+    * contact solver, this is the number of pivots.
+    *
+    * @return number of recent contact solver iterations
+    */
+   public int getContactSolverIterations() {
+      int num = 0;
+      for (KKTSolver solver : getKKTSolvers()) {
+         num += solver.getContactSolverIterations();
+      }
+      return num;
+   }
+
+   /**
+    * Returns the number of iterations used by the most recent iterative
+    * solve, or 0 if the current matrix solver is not iterative.
+    *
+    * @return number of iterations for the last solve
+    */
+   public int getIterativeSolverIterations() {
+      if (!myUseDirectSolver && myIterativeSolver != null) {
+         return myIterativeSolver.getNumIterations();
+      }
+      else {
+         return 0;
+      }
+   }
+
+   /**
+    * Returns the number of times the incomplete Cholesky preconditioner has
+    * been built, or 0 if the current matrix solver is not {@link
+    * MatrixSolver#PreconditionedCG PreconditionedCG}.
+    *
+    * @return number of preconditioner builds
+    */
+   public int getPreconditionerRebuilds() {
+      if (myMatrixSolver == MatrixSolver.PreconditionedCG &&
+          myIterativeSolver instanceof PreconditionedCGSolver) {
+         return ((PreconditionedCGSolver)myIterativeSolver).
+            getNumPreconditionerRebuilds();
+      }
+      else {
+         return 0;
+      }
+   }
+
    public Integrator getIntegrator() {
       return myIntegrator;
    }
@@ -535,10 +769,17 @@ public class MechSystemSolver {
                }
                break;
             }
+            case Supernodal: {
+               break;
+            }
             case ConjugateGradient: {
                setIterativeSolver (new CGSolver());
                break;
             }
+            case PreconditionedCG: {
+               setIterativeSolver (new PreconditionedCGSolver());
+               break;
+            }
             case None: {
                break;
             }
@@ -551,9 +792,190 @@ public class MechSystemSolver {
          mySolveMatrix = null;
          //myKKTSolveMatrix = null;
          myMatrixSolver = solver;
+         disposeKKTSolvers();
       }
    }
 
+   /**
+    * Disposes of the KKT solvers, which are specific to the matrix solver
+    * type, and ensures that they will be reanalyzed when they are next
+    * created.
+    */
+   private void disposeKKTSolvers() {
+      if (myKKTSolver != null) {
+         myKKTSolver.dispose();
+         myKKTSolver = null;
+      }
+      if (myStaticSolver != null) {
+         myStaticSolver.dispose();
+         myStaticSolver = null;
+      }
+      if (myConSolver != null) {
+         myConSolver.dispose();
+         myConSolver = null;
+      }
+      myRegSolveMatrixVersion = -1;
+      myKKTSolveMatrixVersion = -1;
+      myKKTGTVersion = -1;
+      myConMassVersion = -1;
+      myConGTVersion = -1;
+      myStaticKKTVersion = -1;
+      if (myRBSolver != null) {
+         myRBSolver.setDirectSolverType (getKKTDirectSolverType (Matrix.SPD));
+      }
+   }
+
+   private void clearKKTCounts() {
+      if (myKKTSolver != null) {
+         myKKTSolver.clearCounts();
+      }
+      if (myStaticSolver != null) {
+         myStaticSolver.clearCounts();
+      }
+      if (myConSolver != null) {
+         myConSolver.clearCounts();
+      }
+   }
+
+   /**
+    * Returns the number of KKT analyze calls made during the most recent
+    * step, summed over all the KKT solvers.
+    *
+    * @return number of KKT analyze calls in the last step
+    */
+   public int getNumKKTAnalyzeCalls() {
+      int num = 0;
+      for (KKTSolver solver : getKKTSolvers()) {
+         num += solver.getNumAnalyzeCalls();
+      }
+      return num;
+   }
+
+   /**
+    * Returns the number of symbolic analyses actually performed during the
+    * most recent step, summed over all the KKT solvers. Analyze calls for
+    * which the matrix structure is unchanged do not require an analysis.
+    *
+    * @return number of KKT analyses in the last step
+    */
+   public int getNumKKTAnalyses() {
+      int num = 0;
+      for (KKTSolver solver : getKKTSolvers()) {
+         num += solver.getNumAnalyses();
+      }
+      return num;
+   }
+
+   /**
+    * Returns the number of fill-reducing orderings computed during the most
+    * recent step, summed over all the KKT solvers.
+    *
+    * @return number of KKT orderings in the last step
+    */
+   public int getNumKKTOrderings() {
+      int num = 0;
+      for (KKTSolver solver : getKKTSolvers()) {
+         num += solver.getNumOrderings();
+      }
+      return num;
+   }
+
+   /**
+    * Returns the number of numeric KKT factorizations performed during the
+    * most recent step, summed over all the KKT solvers.
+    *
+    * @return number of KKT factorizations in the last step
+    */
+   public int getNumKKTFactorizations() {
+      int num = 0;
+      for (KKTSolver solver : getKKTSolvers()) {
+         num += solver.getNumFactorizations();
+      }
+      return num;
+   }
+
+   private ArrayList<KKTSolver> getKKTSolvers() {
+      ArrayList<KKTSolver> solvers = new ArrayList<KKTSolver>(3);
+      if (myKKTSolver != null) {
+         solvers.add (myKKTSolver);
+      }
+      if (myStaticSolver != null) {
+         solvers.add (myStaticSolver);
+      }
+      if (myConSolver != null) {
+         solvers.add (myConSolver);
+      }
+      return solvers;
+   }
+
+   private boolean pardisoAvailable() {
+      if (myPardisoAvailable == null) {
+         myPardisoAvailable = PardisoSolver.isAvailable();
+      }
+      return myPardisoAvailable;
+   }
+
+   /**
+    * Returns the type of direct solver that a KKTSolver should use for a
+    * matrix of the specified type, given the current matrix solver.
+    * SupernodalSolver is used only for symmetric matrices, unless Pardiso is
+    * not available, in which case non-symmetric systems are handled by
+    * degrading the integrator (see {@link #getIntegratorForSystem}).
+    *
+    * @param matrixType type of the matrix to be solved
+    * @return direct solver type for the KKTSolver
+    */
+   KKTSolver.DirectSolverType getKKTDirectSolverType (int matrixType) {
+      if (myMatrixSolver == MatrixSolver.Supernodal) {
+         if ((matrixType & Matrix.SYMMETRIC) != 0 || !pardisoAvailable()) {
+            return KKTSolver.DirectSolverType.Supernodal;
+         }
+      }
+      else if (myMatrixSolver != MatrixSolver.Pardiso &&
+               myMatrixSolver != MatrixSolver.Umfpack &&
+               !pardisoAvailable()) {
+         // iterative or no matrix solver; KKT systems still need a
+         // direct solver
+         return KKTSolver.DirectSolverType.Supernodal;
+      }
+      return KKTSolver.DirectSolverType.Pardiso;
+   }
+
+   /**
+    * Returns true if a KKTSolver can be created for a matrix of the
+    * specified type. This is false for a non-symmetric matrix when only
+    * SupernodalSolver is available, since it supports only symmetric
+    * matrices.
+    */
+   private boolean kktSolveSupported (int matrixType) {
+      return ((matrixType & Matrix.SYMMETRIC) != 0 ||
+              getKKTDirectSolverType (matrixType) !=
+              KKTSolver.DirectSolverType.Supernodal);
+   }
+
+   /**
+    * Returns true if an existing KKTSolver can be used for a matrix of the
+    * specified type.
+    */
+   private boolean kktSolverMatches (KKTSolver solver, int matrixType) {
+      return (solver != null &&
+              solver.getDirectSolverType() ==
+              getKKTDirectSolverType (matrixType));
+   }
+
+   /**
+    * Creates a KKTSolver for a matrix of the specified type that uses the
+    * current matrix solver.
+    */
+   private KKTSolver createKKTSolver (int matrixType) {
+      KKTSolver solver = new KKTSolver (getKKTDirectSolverType (matrixType));
+      solver.setContactSolverType (myContactSolverType);
+      solver.setContactSolverTolerance (myContactSolverTol);
+      solver.setContactSolverMaxIterations (myContactSolverMaxIterations);
+      solver.setContactSolverWarmStart (myContactSolverWarmStart);
+      return solver;
+   }
+
    public void setStabilization (PosStabilization stabilization) {
       myStabilization = stabilization;
    }
@@ -584,6 +1006,14 @@ public class MechSystemSolver {
             myUseDirectSolver = true;
             break;
          }
+         case Supernodal: {
+            if (mySupernodalSolver == null) {
+               mySupernodalSolver = new SupernodalSolver();
+            }
+            myDirectSolver = mySupernodalSolver;
+            myUseDirectSolver = true;
+            break;
+         }
          case ConjugateGradient: {
             if (!(myIterativeSolver instanceof CGSolver)) {
                setIterativeSolver (new CGSolver());
@@ -591,6 +1021,13 @@ public class MechSystemSolver {
             myUseDirectSolver = false;
             break;
          }
+         case PreconditionedCG: {
+            if (!(myIterativeSolver instanceof PreconditionedCGSolver)) {
+               setIterativeSolver (new PreconditionedCGSolver());
+            }
+            myUseDirectSolver = false;
+            break;
+         }
          case None: {
             myUseDirectSolver = false;
             break;
@@ -615,7 +1052,11 @@ public class MechSystemSolver {
          case Umfpack: {
             return UmfpackSolver.isAvailable();
          }
-         case ConjugateGradient: {
+         case Supernodal: {
+            return true;
+         }
+         case ConjugateGradient:
+         case PreconditionedCG: {
             return true;
          }
          case None: {
@@ -636,6 +1077,10 @@ public class MechSystemSolver {
       if (PardisoSolver.isAvailable()) {
          setMatrixSolver (MatrixSolver.Pardiso);
       }
+      else {
+         // pure Java solver, which does not require native libraries
+         setMatrixSolver (MatrixSolver.Supernodal);
+      }
       // Umfpack no longer supported ...
       // else if (UmfpackSolver.isAvailable()) {
       //    setMatrixSolver (MatrixSolver.Umfpack);
@@ -673,6 +1118,7 @@ public class MechSystemSolver {
       if (profileWholeSolve) {
          timerStart();
       }
+      clearKKTCounts();
       updateStateSizes();
       updateMassMatrix (t0);
       setParametricTargets (1, t1-t0);
@@ -680,7 +1126,7 @@ public class MechSystemSolver {
       if (myUpdateForcesAtStepEnd) {
          myFcon.setZero();
       }
-      switch (myIntegrator) {
+      switch (getIntegratorForSystem (myIntegrator)) {
          case ForwardEuler: {
             forwardEuler (t0, t1, stepAdjust);
             break;
@@ -737,6 +1183,13 @@ public class MechSystemSolver {
       if (profileWholeSolve) {
          timerStop ("wholeSolve");
       }
+      if (profileKKTAnalysis) {
+         System.out.println (
+            "KKT: analyzeCalls=" + getNumKKTAnalyzeCalls() +
+            " analyses=" + getNumKKTAnalyses() +
+            " orderings=" + getNumKKTOrderings() +
+            " factorizations=" + getNumKKTFactorizations());
+      }
    }
 
    protected void forwardEuler (double t0, double t1, StepAdjustment stepAdjust) {
@@ -1178,6 +1631,11 @@ public class MechSystemSolver {
                   throw new UnsupportedOperationException (
                      "Matrix cannot be solved by the chosen iterative solver");
                }
+               if (myIterativeSolver instanceof PreconditionedCGSolver) {
+                  // matrix structure has changed
+                  ((PreconditionedCGSolver)myIterativeSolver).
+                     invalidatePreconditioner();
+               }
             }
          }
       }
@@ -1484,8 +1942,13 @@ public class MechSystemSolver {
          bf.sub (btmp);
       }
 
-      if (myKKTSolver == null) {
-         myKKTSolver = new KKTSolver();
+      int matrixType = mySys.getSolveMatrixType();
+      if (!kktSolverMatches (myKKTSolver, matrixType)) {
+         if (myKKTSolver != null) {
+            myKKTSolver.dispose();
+         }
+         myKKTSolver = createKKTSolver (matrixType);
+         analyze = true;
       }
 
       updateBilateralConstraints ();
@@ -1552,7 +2015,7 @@ public class MechSystemSolver {
          }
          if (analyze) {
             myKKTSolver.analyze (
-               S, velSize, myGT, myRg, mySys.getSolveMatrixType());
+               S, velSize, myGT, myRg, matrixType);
          }
          if (myHybridSolveP && !analyze && myNT.colSize() == 0) {
             if (profileKKTSolveTime) {
@@ -1740,8 +2203,19 @@ public class MechSystemSolver {
          bf.scaledAdd (beta, myC);
       }
       
-      if (myStaticSolver == null) {
-         myStaticSolver = new KKTSolver();
+      int matrixType = mySys.getSolveMatrixType();
+      if (!kktSolveSupported (matrixType)) {
+         throw new UnsupportedOperationException (
+            "Static solves of non-symmetric systems require Pardiso, which "+
+            "is not available; SupernodalSolver supports only symmetric "+
+            "matrices");
+      }
+      if (!kktSolverMatches (myStaticSolver, matrixType)) {
+         if (myStaticSolver != null) {
+            myStaticSolver.dispose();
+         }
+         myStaticSolver = createKKTSolver (matrixType);
+         analyze = true;
       }
 
       updateBilateralConstraints ();
@@ -1807,7 +2281,7 @@ public class MechSystemSolver {
          u.setZero();
          if (analyze) {
             myStaticSolver.analyze (
-               S, velSize, myGT, myRg, mySys.getSolveMatrixType());
+               S, velSize, myGT, myRg, matrixType);
          }
          if (myHybridSolveP && !analyze && myNT.colSize() == 0) {
             if (profileKKTSolveTime) {
@@ -2139,7 +2613,7 @@ public class MechSystemSolver {
          return;
       }            
       if (myConSolver == null) {
-         myConSolver = new KKTSolver();
+         myConSolver = createKKTSolver (Matrix.SPD);
       }
       updateBilateralConstraints ();
       updateUnilateralConstraints ();
@@ -2225,7 +2699,7 @@ public class MechSystemSolver {
          return;
       }            
       if (myConSolver == null) {
-         myConSolver = new KKTSolver();
+         myConSolver = createKKTSolver (Matrix.SPD);
       }
       updateBilateralConstraints ();
       updateUnilateralConstraints ();
@@ -2342,7 +2816,7 @@ public class MechSystemSolver {
          return false;
       }            
       if (myConSolver == null) {
-         myConSolver = new KKTSolver();
+         myConSolver = createKKTSolver (Matrix.SPD);
       }
       updateBilateralConstraints ();
       updateUnilateralConstraints ();
@@ -2397,6 +2871,26 @@ public class MechSystemSolver {
       }
    }
 
+   /**
+    * Returns true if position corrections can be computed using the
+    * stiffness matrix. If the solve matrix is non-symmetric and Pardiso is
+    * not available, this is false and GlobalMass stabilization is used
+    * instead.
+    */
+   private boolean stiffnessPosCorrectionSupported() {
+      if (kktSolveSupported (mySys.getSolveMatrixType())) {
+         return true;
+      }
+      if (!myStabilizationDegradedPrinted) {
+         System.out.println (
+            "Warning: non-symmetric system not supported by " +
+            "Supernodal solver; using GlobalMass instead of " +
+            "GlobalStiffness stabilization");
+         myStabilizationDegradedPrinted = true;
+      }
+      return false;
+   }
+
    protected void computeStiffnessPosCorrection (VectorNd vel, int velSize) {
       boolean analyze = false;
       updateSolveMatrixStructure();
@@ -2409,8 +2903,12 @@ public class MechSystemSolver {
       mySys.addVelJacobian (S, null, -1);
       mySys.addPosJacobian (S, null, -1);
       addActiveMassMatrix (mySys, S);
-      if (myKKTSolver == null) {
-         myKKTSolver = new KKTSolver();
+      int matrixType = mySys.getSolveMatrixType();
+      if (!kktSolverMatches (myKKTSolver, matrixType)) {
+         if (myKKTSolver != null) {
+            myKKTSolver.dispose();
+         }
+         myKKTSolver = createKKTSolver (matrixType);
          analyze = true;
       }
       if (myKKTGTVersion != myGTVersion) {
@@ -2419,7 +2917,7 @@ public class MechSystemSolver {
       }
       if (analyze) {
          myKKTSolver.analyze (
-            S, velSize, myGT, myRg, mySys.getSolveMatrixType());
+            S, velSize, myGT, myRg, matrixType);
       }
       if (myHybridSolveP && !analyze && myNT.colSize() == 0) {
          myKKTSolver.factorAndSolve (
@@ -2482,7 +2980,7 @@ public class MechSystemSolver {
          return;
       }            
       if (myConSolver == null) {
-         myConSolver = new KKTSolver();
+         myConSolver = createKKTSolver (Matrix.SPD);
       }
       updateBilateralConstraints ();
       updateUnilateralConstraints ();
@@ -2527,7 +3025,8 @@ public class MechSystemSolver {
             myBf.setSize (velSize);
             myBf.setZero();
             if (myStabilization == PosStabilization.GlobalStiffness &&
-               integratorIsImplicit (myIntegrator)) {
+               integratorIsImplicit (myIntegrator) &&
+               stiffnessPosCorrectionSupported()) {
                computeStiffnessPosCorrection (vel, velSize);
             }
             else {
@@ -3594,6 +4093,10 @@ public class MechSystemSolver {
          myPardisoSolver.dispose();
          myPardisoSolver = null;
       }
+      if (mySupernodalSolver != null) {
+         mySupernodalSolver.dispose();
+         mySupernodalSolver = null;
+      }
       if (myKKTSolver != null) {
          myKKTSolver.dispose();
          myKKTSolver = null;
@@ -100,6 +100,19 @@ public class MultiPointSpring extends PointSpringBase
    protected double myMaxWrapDisplacement = DEFAULT_MAX_WRAP_DISPLACEMENT;
    protected boolean myLineSearchP = true;
 
+   protected static boolean DEFAULT_WRAP_CULLING = true;
+   protected boolean myWrapCullingP = DEFAULT_WRAP_CULLING;
+
+   // number of knots in each group used for culling knot/wrappable checks
+   protected static final int CULL_GROUP_SIZE = 8;
+   // world bounding spheres for the wrappables, set by updateWrappableBounds()
+   protected Point3d[] myWrapBoundCenters = new Point3d[0];
+   protected double[] myWrapBoundRadii = new double[0];
+   // incremented whenever the wrappables change, to reset culling data
+   protected int myWrappablesVersion = 0;
+   // number of knot/wrappable distance checks in the last wrap update
+   protected int myNumDistanceChecks = 0;
+
    public double getSor() {
       return mySor;
    }
@@ -491,6 +504,20 @@ public class MultiPointSpring extends PointSpringBase
 
       protected int[] myContactCnts; // number of knots contacting each wrappable
 
+      // Culling data. Knots are divided into groups of CULL_GROUP_SIZE, each
+      // with a bounding sphere and a list of the wrappables whose bounds come
+      // near that sphere. A group's list remains valid, across iterations and
+      // time steps, while its knots stay inside the sphere and no wrappable
+      // moves more than myCullMargin from its reference position.
+      Point3d[] myCullCenters;
+      double[] myCullRadii;
+      int[][] myCullCandidates;
+      int[] myNumCullCandidates;      // -1 if the group's list is invalid
+      Point3d[] myCullWrapRefs;       // wrappable centers for the lists
+      double[] myCullWrapRadii;       // wrappable radii for the lists
+      double myCullMargin;
+      int myCullVersion = -1;
+
 
       private abstract class LineSearchFunc implements DifferentiableFunction1x1 {
 
@@ -743,6 +770,12 @@ public class MultiPointSpring extends PointSpringBase
                contactCnts[i] = 0;
             }
          }
+         boolean culling = myWrapCullingP && myWrappables.size() > 0;
+         if (culling) {
+            updateCullingData();
+         }
+         int[] cands = null;
+         int numc = myWrappables.size();
          for (int k=0; k<myNumKnots; k++) {
             WrapKnot knot = myKnots[k];
             Wrappable lastWrappable = knot.getWrappable();
@@ -752,10 +785,34 @@ public class MultiPointSpring extends PointSpringBase
             }
             knot.setWrappableIdx (-1);
             knot.myDist = Wrappable.OUTSIDE;
-            for (int i=0; i<myWrappables.size(); i++) {
+            if (culling && knot.myPrevWrappableIdx == -1) {
+               int g = k/CULL_GROUP_SIZE;
+               cands = myCullCandidates[g];
+               numc = myNumCullCandidates[g];
+            }
+            else {
+               // Knots that were in contact are checked against all
+               // wrappables, since their positive distances are used to
+               // find the pullback when contact is broken, and culling would
+               // change these for wrappables (such as meshes) whose
+               // distances are finite outside their bounds.
+               cands = null;
+               numc = myWrappables.size();
+            }
+            for (int j=0; j<numc; j++) {
+               int i = (cands != null ? cands[j] : j);
+               if (cands != null) {
+                  // skip wrappables whose bounds do not contain the knot
+                  double r = myWrapBoundRadii[i];
+                  if (r != Double.POSITIVE_INFINITY &&
+                      knot.myPos.distanceSquared (myWrapBoundCenters[i]) >= r*r) {
+                     continue;
+                  }
+               }
                Wrappable wrappable = myWrappables.get(i);
                double d = wrappable.penetrationDistance (
                   nrml, dnrm, knot.myPos);
+               myNumDistanceChecks++;
                if (d < knot.myDist) {
                   knot.myDist = d;
                   if (d < 0) {
@@ -777,6 +834,131 @@ public class MultiPointSpring extends PointSpringBase
          return changed;
       }
 
+      /**
+       * Allocates the culling data and marks all knot group lists as
+       * invalid, using the current wrappable bounds as the reference.
+       */
+      private void resetCullingData (int numg, double margin) {
+         int numw = myWrappables.size();
+         if (myCullCenters == null || myCullCenters.length != numg) {
+            myCullCenters = new Point3d[numg];
+            myCullRadii = new double[numg];
+            myCullCandidates = new int[numg][];
+            myNumCullCandidates = new int[numg];
+            for (int g=0; g<numg; g++) {
+               myCullCenters[g] = new Point3d();
+            }
+         }
+         if (myCullWrapRefs == null || myCullWrapRefs.length != numw) {
+            myCullWrapRefs = new Point3d[numw];
+            myCullWrapRadii = new double[numw];
+            for (int i=0; i<numw; i++) {
+               myCullWrapRefs[i] = new Point3d();
+            }
+         }
+         for (int g=0; g<numg; g++) {
+            if (myCullCandidates[g] == null ||
+                myCullCandidates[g].length != numw) {
+               myCullCandidates[g] = new int[numw];
+            }
+            myNumCullCandidates[g] = -1;
+         }
+         for (int i=0; i<numw; i++) {
+            myCullWrapRefs[i].set (myWrapBoundCenters[i]);
+            myCullWrapRadii[i] = myWrapBoundRadii[i];
+         }
+         myCullMargin = margin;
+         myCullVersion = myWrappablesVersion;
+      }
+
+      /**
+       * Rebuilds the bounding sphere and candidate wrappable list for
+       * the knots in the range [k0, k1).
+       */
+      private void buildCullGroup (int g, int k0, int k1) {
+         Point3d c = myCullCenters[g];
+         c.setZero();
+         for (int k=k0; k<k1; k++) {
+            c.add (myKnots[k].myPos);
+         }
+         c.scale (1.0/(k1-k0));
+         double r = 0;
+         for (int k=k0; k<k1; k++) {
+            double d = c.distance (myKnots[k].myPos);
+            if (d > r) {
+               r = d;
+            }
+         }
+         double rad = r + myCullMargin;
+         myCullRadii[g] = rad;
+         // A knot within rad of c is at least |c-w|-rad-myCullMargin from a
+         // wrappable whose center w has moved less than myCullMargin, so it
+         // can be excluded if that exceeds the wrappable's radius
+         int[] cands = myCullCandidates[g];
+         int numc = 0;
+         for (int i=0; i<myCullWrapRefs.length; i++) {
+            double wr = myCullWrapRadii[i];
+            if (wr == Double.POSITIVE_INFINITY ||
+                c.distance (myCullWrapRefs[i]) < rad + myCullMargin + wr) {
+               cands[numc++] = i;
+            }
+         }
+         myNumCullCandidates[g] = numc;
+      }
+
+      /**
+       * Updates the data used to cull knot/wrappable distance checks. Only
+       * knot groups which have moved outside their bounding spheres have
+       * their candidate lists rebuilt, unless the wrappables have changed or
+       * moved by more than the culling margin.
+       */
+      void updateCullingData () {
+         updateWrappableBounds();
+         int numw = myWrappables.size();
+         int numg = (myNumKnots+CULL_GROUP_SIZE-1)/CULL_GROUP_SIZE;
+         // margin is half the typical extent of a knot group
+         double len = 0;
+         for (int k=1; k<myNumKnots; k++) {
+            len += myKnots[k].myPos.distance (myKnots[k-1].myPos);
+         }
+         double margin =
+            myNumKnots > 1 ? 0.5*CULL_GROUP_SIZE*len/(myNumKnots-1) : 0;
+         boolean reset =
+            (myCullVersion != myWrappablesVersion ||
+             myCullCenters == null || myCullCenters.length != numg ||
+             myCullWrapRefs.length != numw ||
+             margin > 2*myCullMargin || margin < 0.5*myCullMargin);
+         for (int i=0; i<numw && !reset; i++) {
+            double r = myWrapBoundRadii[i];
+            if (r != myCullWrapRadii[i] ||
+                (r != Double.POSITIVE_INFINITY &&
+                 myWrapBoundCenters[i].distance (
+                    myCullWrapRefs[i]) > myCullMargin)) {
+               reset = true;
+            }
+         }
+         if (reset) {
+            resetCullingData (numg, margin);
+         }
+         for (int g=0; g<numg; g++) {
+            int k0 = g*CULL_GROUP_SIZE;
+            int k1 = Math.min (k0+CULL_GROUP_SIZE, myNumKnots);
+            if (myNumCullCandidates[g] != -1) {
+               double rsqr = myCullRadii[g]*myCullRadii[g];
+               for (int k=k0; k<k1; k++) {
+                  if (myKnots[k].myPos.distanceSquared (
+                         myCullCenters[g]) > rsqr) {
+                     myNumCullCandidates[g] = -1;
+                     break;
+                  }
+               }
+            }
+            if (myNumCullCandidates[g] == -1) {
+               buildCullGroup (g, k0, k1);
+            }
+         }
+      }
+
       void updateContactCounts (int[] contactCnts) {
          if (contactCnts != null) {
             for (int i=0; i<contactCnts.length; i++) {
@@ -2844,6 +3026,12 @@ public class MultiPointSpring extends PointSpringBase
 
    protected double convTol = 1e-6;
 
+   // statistics for the most recent call to updateWrapSegments()
+   protected int myLastWrapIterations = 0;
+   protected double myLastWrapTime = 0;
+   // set when the wrap segments have already been updated for preadvance
+   protected boolean myWrapSegmentsPreupdatedP = false;
+
    public static boolean myIgnoreCoriolisInJacobian = true;
    public static boolean myDrawWrapPoints = true;
 
@@ -2881,6 +3069,17 @@ public class MultiPointSpring extends PointSpringBase
          "dnrmGain", "gain for dnrm K term", 1.0);
       myProps.add (
          "debugLevel", "turns on debug prints if > 0", DEFAULT_DEBUG_LEVEL);
+      myProps.addReadOnly (
+         "lastWrapIterations",
+         "number of wrap strand iterations in the last wrap update");
+      myProps.addReadOnly (
+         "lastWrapTime", "time for the last wrap update (msec)");
+      myProps.add (
+         "wrapCulling", "cull knot/wrappable contact checks using bounds",
+         DEFAULT_WRAP_CULLING);
+      myProps.addReadOnly (
+         "lastWrapDistanceChecks",
+         "number of knot/wrappable distance checks in the last wrap update");
    }
 
    public PropertyList getAllPropertyInfo() {
@@ -3006,6 +3205,7 @@ public class MultiPointSpring extends PointSpringBase
    protected void invalidateSegments() {
       mySegsValidP = false;
       myRenderObjValidP = false;
+      myWrappablesVersion++;
    }
 
    protected void updateSegsIfNecessary() {
@@ -3038,16 +3238,171 @@ public class MultiPointSpring extends PointSpringBase
    }
 
    protected void updateWrapSegments (int maxIter) {
+      long t0 = System.nanoTime();
+      int icnt = 0;
+      myNumDistanceChecks = 0;
       for (int i=0; i<numSegments(); i++) {
          Segment seg = mySegments.get(i);
          if (seg instanceof WrapSegment) {
             WrapSegment wrapSeg = (WrapSegment)seg;
-            wrapSeg.updateWrapStrand(maxIter);
+            icnt += wrapSeg.updateWrapStrand(maxIter);
             wrapSeg.updateSubSegments();
          }
       }
+      myLastWrapIterations = icnt;
+      myLastWrapTime = (System.nanoTime()-t0)/1e6;
    }      
 
+   /**
+    * Returns the total number of wrap strand iterations performed by all
+    * the wrap segments during the most recent wrap segment update.
+    *
+    * @return number of iterations in the last wrap update
+    */
+   public int getLastWrapIterations() {
+      return myLastWrapIterations;
+   }
+
+   /**
+    * Returns the time, in msec, required by the most recent wrap segment
+    * update. If the update was performed by a {@link ParallelWrapUpdater},
+    * this is the time spent in the thread that performed it.
+    *
+    * @return time for the last wrap update (msec)
+    */
+   public double getLastWrapTime() {
+      return myLastWrapTime;
+   }
+
+   /**
+    * Returns the number of knot/wrappable penetration distance evaluations
+    * performed during the most recent wrap segment update.
+    *
+    * @return number of distance evaluations in the last wrap update
+    */
+   public int getLastWrapDistanceChecks() {
+      return myNumDistanceChecks;
+   }
+
+   /**
+    * Queries whether wrap culling is enabled. See {@link #setWrapCulling}.
+    *
+    * @return <code>true</code> if wrap culling is enabled
+    */
+   public boolean getWrapCulling() {
+      return myWrapCullingP;
+   }
+
+   /**
+    * Enables or disables wrap culling. When enabled, the knots of each
+    * wrappable segment are only tested for contact against wrappables whose
+    * bounds (as determined by {@link #getWrappableBounds}) contain them.
+    * Knots that were in contact at the previous contact update are still
+    * tested against all wrappables, so that culling does not change the
+    * result. Candidate wrappables are found for groups of knots using
+    * bounding spheres, and these candidate lists are reused across
+    * iterations and time steps until the knots or wrappables move
+    * sufficiently. Wrap culling is enabled by default.
+    *
+    * @param enable if <code>true</code>, enables wrap culling
+    */
+   public void setWrapCulling (boolean enable) {
+      myWrapCullingP = enable;
+   }
+
+   /**
+    * Computes a bounding sphere for a wrappable, in the wrappable's local
+    * coordinate frame. For points outside the sphere, the wrappable's {@link
+    * Wrappable#penetrationDistance penetrationDistance()} method should
+    * return {@link Wrappable#OUTSIDE} or a positive distance. Knots that were
+    * in contact at the previous contact update are not culled, so positive
+    * distances used to pull back knots that leave contact are not affected.
+    * Bounds are provided for spheres, ellipsoids, tori and meshes; other
+    * wrappables (including cylinders, which are unbounded along their axis)
+    * are never culled. Subclasses may override this method to provide bounds
+    * for other wrappables.
+    *
+    * @param center returns the sphere center, in local coordinates
+    * @param wrappable wrappable for which the bounds are needed
+    * @return sphere radius, or <code>Double.POSITIVE_INFINITY</code>
+    * if the wrappable should not be culled
+    */
+   protected double getWrappableBounds (Point3d center, Wrappable wrappable) {
+      center.setZero();
+      if (wrappable instanceof RigidSphere) {
+         return 1.5*((RigidSphere)wrappable).getRadius();
+      }
+      else if (wrappable instanceof RigidEllipsoid) {
+         // distance is OUTSIDE beyond the ellipsoid scaled by sqrt(2)
+         Vector3d axes = ((RigidEllipsoid)wrappable).getAxisLengths();
+         return Math.sqrt(2)*axes.maxElement();
+      }
+      else if (wrappable instanceof RigidTorus) {
+         RigidTorus torus = (RigidTorus)wrappable;
+         return torus.getOuterRadius() + 1.5*torus.getInnerRadius();
+      }
+      else if (wrappable instanceof RigidMesh) {
+         PolygonalMesh mesh = ((RigidMesh)wrappable).getSurfaceMesh();
+         if (mesh != null && mesh.numVertices() > 0) {
+            // mesh distances are finite everywhere, so use the same 1.5
+            // scaling as the analytic wrappables; positive distances beyond
+            // this only matter for knots leaving contact, which aren't culled
+            Point3d pmin = new Point3d();
+            Point3d pmax = new Point3d();
+            mesh.getLocalBounds (pmin, pmax);
+            center.combine (0.5, pmin, 0.5, pmax);
+            return 0.75*pmin.distance (pmax);
+         }
+      }
+      return Double.POSITIVE_INFINITY;
+   }
+
+   /**
+    * Updates the world coordinate bounding spheres of the wrappables.
+    */
+   protected void updateWrappableBounds() {
+      int numw = myWrappables.size();
+      if (myWrapBoundRadii.length != numw) {
+         myWrapBoundCenters = new Point3d[numw];
+         myWrapBoundRadii = new double[numw];
+         for (int i=0; i<numw; i++) {
+            myWrapBoundCenters[i] = new Point3d();
+         }
+      }
+      for (int i=0; i<numw; i++) {
+         Wrappable wrappable = myWrappables.get(i);
+         Point3d center = myWrapBoundCenters[i];
+         double r = getWrappableBounds (center, wrappable);
+         if (r != Double.POSITIVE_INFINITY) {
+            center.transform (wrappable.getPose());
+         }
+         myWrapBoundRadii[i] = r;
+      }
+   }
+
+   /**
+    * Queries whether this spring contains any wrappable segments.
+    *
+    * @return <code>true</code> if there are wrappable segments
+    */
+   public boolean hasWrapSegments() {
+      for (int i=0; i<numSegments(); i++) {
+         if (mySegments.get(i) instanceof WrapSegment) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Called by {@link MechModel} when the wrap segments have already been
+    * updated for the coming step (by a {@link ParallelWrapUpdater}), so
+    * that the update is not repeated in {@link #preadvance}.
+    */
+   void markWrapSegmentsUpdated() {
+      myWrapSegmentsPreupdatedP = true;
+   }
+
    // /**
    //  * Calculates the sum of distances between the entry and exit points of the
    //  * two paths.
@@ -3836,7 +4191,12 @@ public class MultiPointSpring extends PointSpringBase
    }
 
    public void preadvance (double t0, double t1, int flags) {
-      updateWrapSegments(myMaxWrapIterations);
+      if (myWrapSegmentsPreupdatedP) {
+         myWrapSegmentsPreupdatedP = false;
+      }
+      else {
+         updateWrapSegments(myMaxWrapIterations);
+      }
    }
    
    public void postadvance (double t0, double t1, int flags) {
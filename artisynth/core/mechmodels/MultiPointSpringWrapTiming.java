@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package artisynth.core.mechmodels;
+
+import java.util.ArrayList;
+
+import maspack.matrix.Point3d;
+import maspack.util.FunctionTimer;
+
+/**
+ * Compares the time required to update the wrap segments of a set of
+ * MultiPointSprings with and without wrap culling. A number of strands pass
+ * through a lattice of spheres, ellipsoids and tori, which is moved slightly
+ * at each step. Since the culling is conservative for these wrappables, the
+ * resulting knot positions should be identical in both cases.
+ *
+ * <p>Usage: java artisynth.core.mechmodels.MultiPointSpringWrapTiming
+ * [numWrappablesPerSide [numKnots [cnt]]]
+ */
+public class MultiPointSpringWrapTiming {
+
+   int myNumSide = 5;     // wrappables per side of the lattice
+   int myNumStrands = 8;
+   int myNumKnots = 200;
+
+   ArrayList<MultiPointSpring> mySprings;
+   ArrayList<RigidBody> myWrappables;
+
+   /**
+    * Creates the strands and wrappables. The wrappables are arranged in a
+    * lattice in the y-z plane, repeated along x, with the strands running
+    * along x between them.
+    */
+   MechModel createModel () {
+      MechModel mech = new MechModel ("mech");
+      mySprings = new ArrayList<MultiPointSpring>();
+      myWrappables = new ArrayList<RigidBody>();
+
+      double spacing = 1.0;
+      double width = spacing*(myNumSide-1);
+      int idx = 0;
+      for (int i=0; i<myNumSide; i++) {
+         for (int j=0; j<myNumSide; j++) {
+            for (int k=0; k<myNumSide; k++) {
+               RigidBody body;
+               switch (idx++ % 3) {
+                  case 0: {
+                     body = new RigidSphere (null, 0.3, 1000);
+                     break;
+                  }
+                  case 1: {
+                     body = new RigidEllipsoid (null, 0.4, 0.2, 0.3, 1000);
+                     break;
+                  }
+                  default: {
+                     body = new RigidTorus (null, 0.3, 0.1, 1000);
+                     break;
+                  }
+               }
+               body.setPose (
+                  i*spacing-width/2, j*spacing-width/2, k*spacing-width/2,
+                  30*i, 20*j, 10*k);
+               body.setDynamic (false);
+               mech.addRigidBody (body);
+               myWrappables.add (body);
+            }
+         }
+      }
+      double len = width + 2*spacing;
+      for (int s=0; s<myNumStrands; s++) {
+         // offset the strands so that they pass near the wrappables
+         double y = (s % myNumSide)*spacing - width/2 + 0.2;
+         double z = ((s*3) % myNumSide)*spacing - width/2 - 0.15;
+         Particle p0 = new Particle (0.1, -len/2, y, z);
+         Particle p1 = new Particle (0.1, len/2, y+0.1, z);
+         p0.setDynamic (false);
+         p1.setDynamic (false);
+         mech.addParticle (p0);
+         mech.addParticle (p1);
+         MultiPointSpring spr = new MultiPointSpring (null, 1, 0, 0);
+         spr.addPoint (p0);
+         spr.setSegmentWrappable (myNumKnots);
+         spr.addPoint (p1);
+         for (RigidBody body : myWrappables) {
+            spr.addWrappable ((Wrappable)body);
+         }
+         spr.setMaxWrapIterations (10);
+         mech.addMultiPointSpring (spr);
+         // initialize the segment pointers and strand
+         spr.computeLength (/*activeOnly=*/false);
+         spr.initializeSegment (0, null);
+         mySprings.add (spr);
+      }
+      return mech;
+   }
+
+   /**
+    * Moves the wrappables by a small amount for step k.
+    */
+   void moveWrappables (int k) {
+      double dz = 0.002*Math.sin (k*0.1);
+      for (RigidBody body : myWrappables) {
+         Point3d pos = new Point3d (body.getPosition());
+         pos.z += dz;
+         body.setPosition (pos);
+      }
+   }
+
+   Point3d[] run (boolean culling, int cnt) {
+      createModel();
+      for (MultiPointSpring spr : mySprings) {
+         spr.setWrapCulling (culling);
+      }
+      FunctionTimer timer = new FunctionTimer();
+      long numChecks = 0;
+      int numIters = 0;
+      for (int k=0; k<cnt; k++) {
+         moveWrappables (k);
+         timer.restart();
+         for (MultiPointSpring spr : mySprings) {
+            spr.updateWrapSegments();
+         }
+         timer.stop();
+         for (MultiPointSpring spr : mySprings) {
+            numChecks += spr.getLastWrapDistanceChecks();
+            numIters += spr.getLastWrapIterations();
+         }
+      }
+      System.out.printf (
+         "culling=%-5s time per step=%s  distance checks per step=%d  "+
+         "iterations per step=%d\n",
+         culling, timer.result(cnt), numChecks/cnt, numIters/cnt);
+
+      Point3d[] knots = new Point3d[myNumStrands*myNumKnots];
+      int idx = 0;
+      for (MultiPointSpring spr : mySprings) {
+         for (int k=0; k<myNumKnots; k++) {
+            knots[idx++] = new Point3d (spr.getKnot (0, k).myPos);
+         }
+      }
+      return knots;
+   }
+
+   public static void main (String[] args) {
+      MultiPointSpringWrapTiming tester = new MultiPointSpringWrapTiming();
+      int cnt = 100;
+      if (args.length > 0) {
+         tester.myNumSide = Integer.parseInt (args[0]);
+      }
+      if (args.length > 1) {
+         tester.myNumKnots = Integer.parseInt (args[1]);
+      }
+      if (args.length > 2) {
+         cnt = Integer.parseInt (args[2]);
+      }
+      System.out.println (
+         "wrappables=" + tester.myNumSide*tester.myNumSide*tester.myNumSide +
+         " strands=" + tester.myNumStrands + " knots=" + tester.myNumKnots);
+      // warm up the JIT
+      tester.run (false, 10);
+      tester.run (true, 10);
+
+      Point3d[] knots0 = tester.run (false, cnt);
+      Point3d[] knots1 = tester.run (true, cnt);
+      double maxDiff = 0;
+      for (int i=0; i<knots0.length; i++) {
+         maxDiff = Math.max (maxDiff, knots0[i].distance (knots1[i]));
+      }
+      System.out.println ("max knot difference=" + maxDiff);
+   }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package artisynth.core.mechmodels;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import maspack.concurrency.ParallelLoopManager;
+import maspack.geometry.PolygonalMesh;
+
+/**
+ * Updates the wrap segments of a collection of {@link MultiPointSpring}s
+ * concurrently, using a pool of worker threads. Each spring's wrap strands
+ * are updated exactly as in {@link MultiPointSpring#updateWrapSegments()},
+ * so the results are the same as for a serial update.
+ *
+ * <p>Wrap strand updates only modify data belonging to their own spring, and
+ * most wrappables are queried without side effects. The exception is a
+ * {@link RigidMesh} without a distance grid, whose nearest-feature queries
+ * use working storage belonging to the mesh. Springs that wrap around such
+ * a mesh (directly or through other springs) are therefore placed in the
+ * same group, and each group is updated serially within a single thread.
+ * Lazily built structures, such as distance grids and their vertex normals,
+ * mesh bounds and bounding volume trees, are created before the threads are
+ * started.
+ */
+public class ParallelWrapUpdater {
+
+   private ParallelLoopManager myManager;
+   private int myNumThreads;
+
+   private int myLastNumGroups = 0;
+   private int myLastIterations = 0;
+   private double myLastUpdateTime = 0;
+
+   public ParallelWrapUpdater (int numThreads) {
+      myNumThreads = Math.max (1, numThreads);
+   }
+
+   /**
+    * Returns the number of threads used for updating. See {@link
+    * #setNumThreads}.
+    *
+    * @return number of update threads
+    */
+   public int getNumThreads() {
+      return myNumThreads;
+   }
+
+   /**
+    * Sets the number of threads used for updating. A value of 1 causes all
+    * updates to be done in the calling thread.
+    *
+    * @param num number of update threads
+    */
+   public void setNumThreads (int num) {
+      if (num < 1) {
+         num = 1;
+      }
+      if (num != myNumThreads) {
+         myNumThreads = num;
+         if (myManager != null) {
+            myManager.setNumThreads (num);
+         }
+      }
+   }
+
+   /**
+    * Returns the number of independent spring groups found during the last
+    * call to {@link #update}.
+    *
+    * @return number of groups in the last update
+    */
+   public int getLastNumGroups() {
+      return myLastNumGroups;
+   }
+
+   /**
+    * Returns the total number of wrap strand iterations, summed over all
+    * springs, performed during the last call to {@link #update}.
+    *
+    * @return number of iterations in the last update
+    */
+   public int getLastIterations() {
+      return myLastIterations;
+   }
+
+   /**
+    * Returns the elapsed time, in msec, of the last call to {@link #update}.
+    * Per-spring times are available from {@link
+    * MultiPointSpring#getLastWrapTime}.
+    *
+    * @return elapsed time for the last update (msec)
+    */
+   public double getLastUpdateTime() {
+      return myLastUpdateTime;
+   }
+
+   private static boolean isSharedQuery (Wrappable wrappable) {
+      return (wrappable instanceof RigidMesh &&
+              !((RigidMesh)wrappable).hasDistanceGrid());
+   }
+
+   /**
+    * Builds lazily created wrappable data, so that this is not done
+    * concurrently by the worker threads.
+    */
+   private void initializeWrappable (Wrappable wrappable) {
+      if (wrappable instanceof RigidBody) {
+         RigidBody body = (RigidBody)wrappable;
+         if (body.hasDistanceGrid()) {
+            body.getDistanceGrid().computeNormals();
+         }
+         PolygonalMesh mesh = body.getSurfaceMesh();
+         if (mesh != null) {
+            mesh.getBVTree();
+            mesh.getLocalBounds (null, null);
+         }
+      }
+   }
+
+   private static int find (int[] parent, int i) {
+      while (parent[i] != i) {
+         parent[i] = parent[parent[i]];
+         i = parent[i];
+      }
+      return i;
+   }
+
+   /**
+    * Partitions the springs into groups that can be updated independently.
+    */
+   ArrayList<ArrayList<MultiPointSpring>> createGroups (
+      ArrayList<MultiPointSpring> springs) {
+
+      int[] parent = new int[springs.size()];
+      HashMap<Wrappable,Integer> owners = new HashMap<Wrappable,Integer>();
+      for (int i=0; i<springs.size(); i++) {
+         parent[i] = i;
+         MultiPointSpring spr = springs.get(i);
+         for (int k=0; k<spr.numWrappables(); k++) {
+            Wrappable wrappable = spr.getWrappable(k);
+            initializeWrappable (wrappable);
+            if (isSharedQuery (wrappable)) {
+               Integer j = owners.get (wrappable);
+               if (j == null) {
+                  owners.put (wrappable, i);
+               }
+               else {
+                  parent[find (parent, i)] = find (parent, j);
+               }
+            }
+         }
+      }
+      ArrayList<ArrayList<MultiPointSpring>> groups =
+         new ArrayList<ArrayList<MultiPointSpring>>();
+      int[] groupIdx = new int[springs.size()];
+      for (int i=0; i<springs.size(); i++) {
+         int r = find (parent, i);
+         if (r == i) {
+            groupIdx[i] = groups.size();
+            groups.add (new ArrayList<MultiPointSpring>());
+         }
+      }
+      for (int i=0; i<springs.size(); i++) {
+         groups.get(groupIdx[find (parent, i)]).add (springs.get(i));
+      }
+      return groups;
+   }
+
+   /**
+    * Updates the wrap segments of all the specified springs. When this
+    * method returns, all updates are complete. Exceptions thrown during an
+    * update are rethrown in the calling thread.
+    *
+    * @param springs springs whose wrap segments should be updated
+    */
+   public void update (Collection<? extends MultiPointSpring> springs) {
+      long t0 = System.nanoTime();
+      final ArrayList<ArrayList<MultiPointSpring>> groups =
+         createGroups (new ArrayList<MultiPointSpring>(springs));
+      int nthreads = Math.min (myNumThreads, groups.size());
+      if (nthreads <= 1) {
+         for (ArrayList<MultiPointSpring> group : groups) {
+            updateGroup (group);
+         }
+      }
+      else {
+         if (myManager == null) {
+            myManager = new ParallelLoopManager ("wrapUpdate", myNumThreads);
+         }
+         // groups are handed out dynamically, since wrap costs vary widely
+         final AtomicInteger next = new AtomicInteger();
+         myManager.execute (nthreads, new ParallelLoopManager.RangeTask() {
+               public void run (int tidx, int start, int end) {
+                  int k;
+                  while ((k = next.getAndIncrement()) < groups.size()) {
+                     updateGroup (groups.get(k));
+                  }
+               }
+            });
+      }
+      int icnt = 0;
+      for (ArrayList<MultiPointSpring> group : groups) {
+         for (MultiPointSpring spr : group) {
+            icnt += spr.getLastWrapIterations();
+         }
+      }
+      myLastNumGroups = groups.size();
+      myLastIterations = icnt;
+      myLastUpdateTime = (System.nanoTime()-t0)/1e6;
+   }
+
+   private void updateGroup (ArrayList<MultiPointSpring> group) {
+      for (MultiPointSpring spr : group) {
+         spr.updateWrapSegments();
+      }
+   }
+
+   /**
+    * Shuts down the worker threads. They will be restarted if {@link
+    * #update} is called again.
+    */
+   public void shutdown() {
+      if (myManager != null) {
+         myManager.shutdown();
+         myManager = null;
+      }
+   }
+}
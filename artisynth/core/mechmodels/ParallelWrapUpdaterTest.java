@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package artisynth.core.mechmodels;
+
+import java.util.ArrayList;
+
+import artisynth.core.mechmodels.MultiPointSpring.WrapKnot;
+import maspack.geometry.MeshFactory;
+import maspack.matrix.Point3d;
+import maspack.matrix.RigidTransform3d;
+import maspack.util.TestException;
+import maspack.util.UnitTest;
+
+public class ParallelWrapUpdaterTest extends UnitTest {
+
+   static int NUM_SPRINGS = 8;
+   static int NUM_KNOTS = 50;
+
+   ArrayList<MultiPointSpring> mySprings;
+   ArrayList<Particle> myEndPoints;
+
+   /**
+    * Creates a model in which several springs wrap around a row of spheres.
+    * All but the last sphere use distance grids, and the last one is
+    * queried directly through its mesh.
+    */
+   MechModel createModel() {
+      MechModel mech = new MechModel ("mech");
+      ArrayList<RigidMesh> spheres = new ArrayList<RigidMesh>();
+      for (int i=0; i<3; i++) {
+         RigidMesh sphere = new RigidMesh (
+            "sphere"+i, MeshFactory.createOctahedralSphere (0.8, 3),
+            null, 1000, 1.0);
+         sphere.setPose (new RigidTransform3d (2*(i-1), 0, 0));
+         if (i == 2) {
+            sphere.setDistanceGridMaxRes (0);
+         }
+         mech.addRigidBody (sphere);
+         spheres.add (sphere);
+      }
+      mySprings = new ArrayList<MultiPointSpring>();
+      myEndPoints = new ArrayList<Particle>();
+      for (int k=0; k<NUM_SPRINGS; k++) {
+         double y = -0.4 + 0.8*k/(NUM_SPRINGS-1);
+         double z = (k%2 == 0 ? 0.5 : -0.5);
+         Particle p0 = new Particle (0.1, 3.5, y, z);
+         Particle p1 = new Particle (0.1, -3.5, -y, z);
+         p0.setDynamic (false);
+         p1.setDynamic (false);
+         mech.addParticle (p0);
+         mech.addParticle (p1);
+         MultiPointSpring spr = new MultiPointSpring ("spring"+k, 100, 0, 0);
+         spr.addPoint (p0);
+         spr.setSegmentWrappable (NUM_KNOTS);
+         for (RigidMesh sphere : spheres) {
+            spr.addWrappable (sphere);
+         }
+         spr.addPoint (p1);
+         mech.addMultiPointSpring (spr);
+         mySprings.add (spr);
+         myEndPoints.add (p0);
+         myEndPoints.add (p1);
+      }
+      return mech;
+   }
+
+   void moveEndPoints (ArrayList<Particle> pnts, int step) {
+      for (int i=0; i<pnts.size(); i++) {
+         Particle p = pnts.get(i);
+         Point3d pos = new Point3d (p.getPosition());
+         pos.z += 0.05*Math.sin (step + i);
+         p.setPosition (pos);
+      }
+   }
+
+   void checkKnots (
+      ArrayList<MultiPointSpring> springs, ArrayList<MultiPointSpring> check,
+      int step) {
+      for (int k=0; k<springs.size(); k++) {
+         MultiPointSpring spr = springs.get(k);
+         MultiPointSpring chk = check.get(k);
+         for (int i=0; i<NUM_KNOTS; i++) {
+            WrapKnot knot = spr.getKnot (0, i);
+            WrapKnot kchk = chk.getKnot (0, i);
+            if (!knot.myPos.equals (kchk.myPos) ||
+                knot.getWrappableIdx() != kchk.getWrappableIdx()) {
+               throw new TestException (
+                  "step " + step + ", spring " + k + ", knot " + i +
+                  ": parallel position " + knot.myPos.toString ("%g") +
+                  " (wrappable " + knot.getWrappableIdx() + ")" +
+                  ", serial position " + kchk.myPos.toString ("%g") +
+                  " (wrappable " + kchk.getWrappableIdx() + ")");
+            }
+         }
+      }
+   }
+
+   /**
+    * Checks that concurrent wrap updates produce exactly the same knot
+    * positions as serial updates, starting from distance grids whose
+    * normals have not yet been computed.
+    */
+   public void testParallelWrap (int numThreads) {
+      createModel();
+      ArrayList<MultiPointSpring> serialSprings = mySprings;
+      ArrayList<Particle> serialPnts = myEndPoints;
+      createModel();
+      ArrayList<MultiPointSpring> parallelSprings = mySprings;
+      ArrayList<Particle> parallelPnts = myEndPoints;
+
+      ParallelWrapUpdater updater = new ParallelWrapUpdater (numThreads);
+      try {
+         for (int step=0; step<5; step++) {
+            moveEndPoints (serialPnts, step);
+            moveEndPoints (parallelPnts, step);
+            for (MultiPointSpring spr : serialSprings) {
+               spr.updateWrapSegments();
+            }
+            updater.update (parallelSprings);
+            checkKnots (parallelSprings, serialSprings, step);
+         }
+         // all springs share the sphere without a grid
+         checkEquals ("number of groups", updater.getLastNumGroups(), 1);
+      }
+      finally {
+         updater.shutdown();
+      }
+   }
+
+   /**
+    * Checks that springs which only wrap around distance grids are updated
+    * in separate groups, and still match serial updates.
+    */
+   public void testIndependentGroups (int numThreads) {
+      createModel();
+      ArrayList<MultiPointSpring> serialSprings = mySprings;
+      ArrayList<Particle> serialPnts = myEndPoints;
+      createModel();
+      ArrayList<MultiPointSpring> parallelSprings = mySprings;
+      ArrayList<Particle> parallelPnts = myEndPoints;
+      for (int k=0; k<NUM_SPRINGS; k++) {
+         // remove the sphere without a grid
+         Wrappable w = serialSprings.get(k).getWrappable(2);
+         serialSprings.get(k).removeWrappable (w);
+         w = parallelSprings.get(k).getWrappable(2);
+         parallelSprings.get(k).removeWrappable (w);
+      }
+      ParallelWrapUpdater updater = new ParallelWrapUpdater (numThreads);
+      try {
+         for (int step=0; step<5; step++) {
+            moveEndPoints (serialPnts, step);
+            moveEndPoints (parallelPnts, step);
+            for (MultiPointSpring spr : serialSprings) {
+               spr.updateWrapSegments();
+            }
+            updater.update (parallelSprings);
+            checkKnots (parallelSprings, serialSprings, step);
+         }
+         checkEquals (
+            "number of groups", updater.getLastNumGroups(), NUM_SPRINGS);
+      }
+      finally {
+         updater.shutdown();
+      }
+   }
+
+   public void test() {
+      testParallelWrap (4);
+      testIndependentGroups (4);
+      testIndependentGroups (NUM_SPRINGS);
+   }
+
+   public static void main (String[] args) {
+      ParallelWrapUpdaterTest tester = new ParallelWrapUpdaterTest();
+      tester.runtest();
+   }
+}
@@ -67,6 +67,8 @@ public class RigidBodySolver {
    VectorNd myPhi = new VectorNd();
 
    KKTSolver mySolver;
+   KKTSolver.DirectSolverType myDirectSolverType =
+      KKTSolver.DirectSolverType.Pardiso;
 
    // map from local GT indices to global GT indices
    private int[] myGTMap;
@@ -83,6 +85,30 @@ public class RigidBodySolver {
       mySys = sys;
    }
 
+   /**
+    * Sets the type of direct solver used by this solver's KKTSolver. The
+    * mass matrices involved are always SPD. If the type changes, the current
+    * KKTSolver is disposed and a new one will be created and analyzed when
+    * next needed.
+    *
+    * @param type direct solver type
+    */
+   public void setDirectSolverType (KKTSolver.DirectSolverType type) {
+      if (type != myDirectSolverType) {
+         dispose();
+         myDirectSolverType = type;
+      }
+   }
+
+   /**
+    * Returns the type of direct solver used by this solver's KKTSolver.
+    *
+    * @return direct solver type
+    */
+   public KKTSolver.DirectSolverType getDirectSolverType() {
+      return myDirectSolverType;
+   }
+
    /**
     * XXX this is currently a hack - a rigid body is assumed to correspond to
     * any component whose velocity state size is >= 6. Instead, we should get this
@@ -273,7 +299,9 @@ public class RigidBodySolver {
    public void updateStructure (
       SparseBlockMatrix M, SparseBlockMatrix GT, int GTversion) {
       if (mySolver == null) {
-         mySolver = new KKTSolver();
+         mySolver = new KKTSolver (myDirectSolverType);
+         // force a new structure update and analysis
+         myStructureVersion = -1;
       }
       if (myStructureVersion != mySys.getStructureVersion() ||
          myBilateralVersion != GTversion) {
@@ -652,6 +652,10 @@ public class RigidMesh extends RigidBody implements Wrappable {
          if (Dnrm != null) {
             Dnrm.setZero();
          }
+         if (nrm == null) {
+            // the normal is still needed to determine the distance sign
+            nrm = new Vector3d();
+         }
          if (mySmooth) {
             myNagata.nearestPointOnMesh (near, nrm, mesh, p0, 1e-8, myQuery);
          }
@@ -660,9 +664,7 @@ public class RigidMesh extends RigidBody implements Wrappable {
                near, /*uv=*/null, mesh.getBVTree(), p0);
             if(face == null)
                return Wrappable.OUTSIDE;
-            if (nrm != null) {
-               nrm.set (face.getWorldNormal());
-            }
+            nrm.set (face.getWorldNormal());
          }
          diff.sub (p0, near);
          double d = diff.dot(nrm);
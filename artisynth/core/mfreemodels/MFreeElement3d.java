@@ -450,6 +450,38 @@ public class MFreeElement3d extends FemElement implements Boundable {
       }
    }
    
+   /**
+    * Adds the warped linear stiffness for nodes i and j, using
+    * <code>tmp</code> as temporary storage. The warping stiffness must
+    * already be valid (see {@link #ensureWarpingStiffness}). Stiffness
+    * blocks in different rows may be computed concurrently.
+    */
+   void addNodeStiffness(int i, int j, boolean corotated, Matrix3d tmp) {
+      if (active[i][j]) {
+         myWarper.addNodeStiffness(
+            myKBlocks[i][j], active, i, j, corotated, tmp);
+      }
+   }
+
+   /**
+    * Adds the warped linear force for node i, using <code>tmp</code> and
+    * <code>pos</code> as temporary storage. The warping stiffness must
+    * already be valid (see {@link #ensureWarpingStiffness}).
+    */
+   void addNodeForce(
+      Vector3d f, int i, boolean corotated, Vector3d tmp, Vector3d pos) {
+      myWarper.addNodeForce(f, active, i, myNodes, corotated, tmp, pos);
+   }
+
+   /**
+    * Updates the warping stiffness if it is not currently valid.
+    */
+   void ensureWarpingStiffness() {
+      if (!myWarpingStiffnessValidP) {
+         updateWarpingStiffness();
+      }
+   }
+
    public void addMaterialStiffness(int i, int j, Vector3d gi, Matrix6d D,
       SymmetricMatrix3d sig, Vector3d gj, double dv) {
       if (active[i][j]) {
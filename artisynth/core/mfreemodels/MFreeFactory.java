@@ -31,7 +31,6 @@ import maspack.graph.DirectedGraph;
 import maspack.graph.Vertex;
 import maspack.matrix.AffineTransform3d;
 import maspack.matrix.Matrix3d;
-import maspack.matrix.MatrixNd;
 import maspack.matrix.Point3d;
 import maspack.matrix.RigidTransform3d;
 import maspack.matrix.Vector3d;
@@ -63,6 +62,7 @@ public class MFreeFactory {
    public static MFreeShapeFunctionType DEFAULT_SHAPE_FUNCTION_TYPE = 
       MFreeShapeFunctionType.MLS;
 
+
    public static MFreeModel3d createBeam(MFreeModel3d model,
       double[] size, int res[], double rfactor) {
       return createBeam(model, DEFAULT_RADIAL_KERNEL_TYPE, DEFAULT_SHAPE_FUNCTION_TYPE,
@@ -382,20 +382,22 @@ public class MFreeFactory {
 
       AABBTree tree = new AABBTree();
       tree.build(nodeArray, nodeArray.length);
+      MFreeShapeFunctionCache cache = model.getShapeFunctionCache();
 
       // compute node coordinates
       for (MFreeNode3d node : nodes) {
          ArrayList<MFreeNode3d> deps =
             findNodesContaining(node.getRestPosition(), tree, 0);
          VectorNd coords = new VectorNd();
-         getShapeCoords(coords, node.getRestPosition(), deps);
+         getShapeCoords(coords, node.getRestPosition(), deps, cache);
          node.setDependentNodes(deps, coords);
       }
       model.addNodes(nodes);
 
       ArrayList<MFreeElement3d> elemList = createPairedElements(nodes, iChart);
 
-      MFreeIntegrationPoint3d[] ipnts = createIntegrationPoints(cpnts, tree);
+      MFreeIntegrationPoint3d[] ipnts =
+         createIntegrationPoints(cpnts, tree, cache);
 
       MFreeElement3d[] elemArray =
          elemList.toArray(new MFreeElement3d[elemList.size()]);
@@ -405,9 +407,10 @@ public class MFreeFactory {
       distributePairedIPoints(elemArray, ipnts, null, elemTree, 0);
       trimEmptyElements(elemList);
 
-      addWarpingPoints(elemList, tree);
+      addWarpingPoints(elemList, tree, cache);
 
-      surface = (PolygonalMesh)convertToMFreeMesh(surface, tree, DEFAULT_TOLERANCE);
+      surface = (PolygonalMesh)convertToMFreeMesh(
+         surface, tree, DEFAULT_TOLERANCE, cache);
 
       model.addElements(elemList);
       model.addMesh(surface);
@@ -421,6 +424,11 @@ public class MFreeFactory {
       List<MFreeNode3d> nodes, PolygonalMesh surface,
       CubaturePoint3d[] cpnts) {
 
+      if (model == null) {
+         model = new MFreeModel3d();
+      }
+      MFreeShapeFunctionCache cache = model.getShapeFunctionCache();
+
       MFreeNode3d[] nodeArray = nodes.toArray(new MFreeNode3d[nodes.size()]);
 
       FunctionTimer timer = new FunctionTimer();
@@ -445,7 +453,7 @@ public class MFreeFactory {
          ArrayList<MFreeNode3d> deps =
             findNodesContaining(node.getRestPosition(), nodeTree, 0);
          VectorNd coords = new VectorNd();
-         getShapeCoords(coords, node.getRestPosition(), deps);
+         getShapeCoords(coords, node.getRestPosition(), deps, cache);
          node.setDependentNodes(deps, coords);
       }
       timer.stop();
@@ -467,7 +475,7 @@ public class MFreeFactory {
 
       timer.start();
       MFreeIntegrationPoint3d[] ipnts =
-         createIntegrationPoints(cpnts, nodeTree);
+         createIntegrationPoints(cpnts, nodeTree, cache);
       timer.stop();
       System.out.println("Integration points: " + timer.getTimeUsec() / 1000
          + " ms");
@@ -489,13 +497,10 @@ public class MFreeFactory {
 
       trimEmptyElements(elemList);
 
-      addWarpingPoints(elemList, nodeTree);
-
-      surface = (PolygonalMesh)convertToMFreeMesh(surface, nodeTree, DEFAULT_TOLERANCE);
+      addWarpingPoints(elemList, nodeTree, cache);
 
-      if (model == null) {
-         model = new MFreeModel3d();
-      }
+      surface = (PolygonalMesh)convertToMFreeMesh(
+         surface, nodeTree, DEFAULT_TOLERANCE, cache);
 
       model.addNodes(nodes);
       model.addElements(elemList);
@@ -526,6 +531,22 @@ public class MFreeFactory {
 
    public static MFreeIntegrationPoint3d[] createIntegrationPoints(
       CubaturePoint3d[] cpnts, BVTree nodeTree) {
+      return createIntegrationPoints(cpnts, nodeTree, null);
+   }
+
+   /**
+    * Creates integration points at a set of cubature points, using an
+    * optional cache to look up or store the shape function values and
+    * gradients.
+    *
+    * @param cpnts cubature points
+    * @param nodeTree bounding volume tree containing the nodes
+    * @param cache shape function cache, or <code>null</code>
+    * @return created integration points
+    */
+   public static MFreeIntegrationPoint3d[] createIntegrationPoints(
+      CubaturePoint3d[] cpnts, BVTree nodeTree,
+      MFreeShapeFunctionCache cache) {
 
       MFreeIntegrationPoint3d[] ipnts =
          new MFreeIntegrationPoint3d[cpnts.length];
@@ -535,7 +556,7 @@ public class MFreeFactory {
             findNodesContaining(cpnts[i], nodeTree, 0);
          VectorNd coords = new VectorNd(deps.size());
          ArrayList<Vector3d> grad = new ArrayList<Vector3d>(deps.size());
-         getShapeCoordsAndGradients(coords, grad, cpnts[i], deps);
+         getShapeCoordsAndGradients(coords, grad, cpnts[i], deps, cache);
          ipnts[i] =
             MFreeIntegrationPoint3d.create(deps, coords, grad, cpnts[i].w);
          ipnts[i].setID(i);
@@ -621,9 +642,14 @@ public class MFreeFactory {
 
    public static void addWarpingPoints(List<MFreeElement3d> elems,
       BVTree nodeTree) {
+      addWarpingPoints(elems, nodeTree, null);
+   }
+
+   public static void addWarpingPoints(List<MFreeElement3d> elems,
+      BVTree nodeTree, MFreeShapeFunctionCache cache) {
       for (MFreeElement3d elem : elems) {
          MFreeIntegrationPoint3d wpnt =
-            createWarpingPoint(elem, null, nodeTree);
+            createWarpingPoint(elem, null, nodeTree, cache);
          IntegrationData3d wdat = new IntegrationData3d();
          wdat.setRestInverseJacobian(new Matrix3d(Matrix3d.IDENTITY), 1);
          elem.setWarpingPoint(wpnt, wdat);
@@ -632,6 +658,12 @@ public class MFreeFactory {
 
    public static MFreeIntegrationPoint3d createWarpingPoint(
       MFreeElement3d elem, Point3d pos, BVTree nodeTree) {
+      return createWarpingPoint(elem, pos, nodeTree, null);
+   }
+
+   public static MFreeIntegrationPoint3d createWarpingPoint(
+      MFreeElement3d elem, Point3d pos, BVTree nodeTree,
+      MFreeShapeFunctionCache cache) {
       if (pos == null) {
          pos = new Point3d();
          elem.computeCentroid(pos);
@@ -640,7 +672,7 @@ public class MFreeFactory {
       ArrayList<MFreeNode3d> deps = findNodesContaining(pos, nodeTree, 0);
       VectorNd coords = new VectorNd(deps.size());
       ArrayList<Vector3d> grad = new ArrayList<Vector3d>(deps.size());
-      getShapeCoordsAndGradients(coords, grad, pos, deps);
+      getShapeCoordsAndGradients(coords, grad, pos, deps, cache);
       return MFreeIntegrationPoint3d.create(deps, coords, grad, 1);
 
    }
@@ -968,18 +1000,48 @@ public class MFreeFactory {
 
    public static void updatePointCoordinates(List<? extends MFreePoint3d> pnts,
       BVTree nodeTree, double tol) {
+      updatePointCoordinates(pnts, nodeTree, tol, null);
+   }
+
+   /**
+    * Recomputes the dependent nodes and shape function values of a set of
+    * points, using an optional cache to look up or store the values.
+    *
+    * @param pnts points to update
+    * @param nodeTree bounding volume tree containing the nodes
+    * @param tol tolerance used to find the dependent nodes
+    * @param cache shape function cache, or <code>null</code>
+    */
+   public static void updatePointCoordinates(List<? extends MFreePoint3d> pnts,
+      BVTree nodeTree, double tol, MFreeShapeFunctionCache cache) {
 
       VectorNd coords = new VectorNd();
       for (MFreePoint3d pnt : pnts) {
          ArrayList<MFreeNode3d> deps =
             findNodesContaining(pnt.getRestPosition(), nodeTree, tol);
-         getShapeCoords(coords, pnt.getRestPosition(), deps);
+         getShapeCoords(coords, pnt.getRestPosition(), deps, cache);
          pnt.setDependentNodes(deps, coords);
       }
    }
 
    public static MeshBase convertToMFreeMesh(MeshBase orig,
       BVTree nodeTree, double tol) {
+      return convertToMFreeMesh(orig, nodeTree, tol, null);
+   }
+
+   /**
+    * Converts a mesh to one whose vertices are embedded in the nodes of
+    * <code>nodeTree</code>, using an optional cache to look up or store the
+    * shape function values.
+    *
+    * @param orig mesh to convert
+    * @param nodeTree bounding volume tree containing the nodes
+    * @param tol tolerance used to find the dependent nodes
+    * @param cache shape function cache, or <code>null</code>
+    * @return converted mesh
+    */
+   public static MeshBase convertToMFreeMesh(MeshBase orig,
+      BVTree nodeTree, double tol, MFreeShapeFunctionCache cache) {
 
       VectorNd coords = new VectorNd();
 
@@ -991,7 +1053,7 @@ public class MFreeFactory {
       for (Vertex3d vtx : orig.getVertices()) {
          ArrayList<MFreeNode3d> deps =
             findNodesContaining(vtx.getPosition(), nodeTree, tol);
-         getShapeCoords(coords, vtx.getPosition(), deps);
+         getShapeCoords(coords, vtx.getPosition(), deps, cache);
          MFreeVertex3d nvtx = new MFreeVertex3d(deps, coords);
          vtxMap.put(vtx, nvtx);
          vtxs.add(nvtx);
@@ -1009,75 +1071,72 @@ public class MFreeFactory {
 
    }
 
+   private static boolean allMLS(ArrayList<MFreeNode3d> deps) {
+      for (MFreeNode3d node : deps) {
+         if (!(node.getShapeFunction() instanceof MLSShapeFunction)) {
+            return false;
+         }
+      }
+      return deps.size() > 0;
+   }
+
    private static void getShapeCoords(VectorNd coords, Point3d pnt,
-      ArrayList<MFreeNode3d> deps) {
+      ArrayList<MFreeNode3d> deps, MFreeShapeFunctionCache cache) {
+
+      if (cache != null && cache.get(coords, null, pnt, deps)) {
+         return;
+      }
 
       int nDeps = deps.size();
       coords.setSize(deps.size());
-      MatrixNd MInv = null;
-
-      for (int i = 0; i < nDeps; i++) {
-         MFreeNode3d bnode = deps.get(i);
-         MFreeShapeFunction fun = bnode.getShapeFunction();
-
-         if (fun instanceof MLSShapeFunction) {
-            MLSShapeFunction mls = (MLSShapeFunction)fun;
-            if (MInv == null) {
-               MInv = new MatrixNd();
-               double d = mls.computeMInv(MInv, pnt, deps);
-               if (d > 1e10) {
-                  System.out.println("Poorly conditioned point: " + pnt);
-               }
-            }
-
-            double v = mls.eval(pnt, MInv, deps);
-            coords.set(i, v);
 
-         } else {
+      if (allMLS(deps)) {
+         MLSShapeFunction mls = (MLSShapeFunction)deps.get(0).getShapeFunction();
+         double d = mls.evalAll(coords.getBuffer(), null, pnt, deps);
+         if (d > 1e10) {
+            System.out.println("Poorly conditioned point: " + pnt);
+         }
+      } else {
+         for (int i = 0; i < nDeps; i++) {
+            MFreeShapeFunction fun = deps.get(i).getShapeFunction();
             coords.set(i, fun.eval(pnt));
          }
       }
-
+      if (cache != null) {
+         cache.put(pnt, deps, coords, null);
+      }
    }
 
    private static int getShapeCoordsAndGradients(VectorNd coords,
       ArrayList<Vector3d> grad,
-      Point3d pnt, ArrayList<MFreeNode3d> deps) {
+      Point3d pnt, ArrayList<MFreeNode3d> deps,
+      MFreeShapeFunctionCache cache) {
 
       int nDeps = deps.size();
+      if (cache != null && cache.get(coords, grad, pnt, deps)) {
+         return nDeps;
+      }
+
       grad.clear();
       grad.ensureCapacity(nDeps);
       coords.setSize(deps.size());
 
-      MatrixNd MInv = null;
-      int[] dx = { 1, 0, 0 };
-      int[] dy = { 0, 1, 0 };
-      int[] dz = { 0, 0, 1 };
-
-      for (int i = 0; i < nDeps; i++) {
-         MFreeNode3d bnode = deps.get(i);
-         MFreeShapeFunction fun = bnode.getShapeFunction();
-
-         if (fun instanceof MLSShapeFunction) {
-            MLSShapeFunction mls = (MLSShapeFunction)fun;
-            if (MInv == null) {
-               MInv = new MatrixNd();
-               double d = mls.computeMInv(MInv, pnt, deps);
-               if (d > 1e10) {
-                  System.out.println("Poorly conditioned point: " + pnt);
-               }
-            }
-
-            double v = mls.eval(pnt, MInv, deps);
-            coords.set(i, v);
-
-            Vector3d nodegrad = new Vector3d();
-            nodegrad.x = mls.evalDerivative(pnt, dx, MInv, deps);
-            nodegrad.y = mls.evalDerivative(pnt, dy, MInv, deps);
-            nodegrad.z = mls.evalDerivative(pnt, dz, MInv, deps);
-            grad.add(nodegrad);
-
-         } else {
+      if (allMLS(deps)) {
+         MLSShapeFunction mls = (MLSShapeFunction)deps.get(0).getShapeFunction();
+         double[] grads = new double[3*nDeps];
+         double d = mls.evalAll(coords.getBuffer(), grads, pnt, deps);
+         if (d > 1e10) {
+            System.out.println("Poorly conditioned point: " + pnt);
+         }
+         for (int i = 0; i < nDeps; i++) {
+            grad.add(new Vector3d(grads[3*i], grads[3*i+1], grads[3*i+2]));
+         }
+      } else {
+         int[] dx = { 1, 0, 0 };
+         int[] dy = { 0, 1, 0 };
+         int[] dz = { 0, 0, 1 };
+         for (int i = 0; i < nDeps; i++) {
+            MFreeShapeFunction fun = deps.get(i).getShapeFunction();
             coords.set(i, fun.eval(pnt));
             Vector3d nodegrad = new Vector3d();
             nodegrad.x = fun.evalDerivative(pnt, dx);
@@ -1086,7 +1145,9 @@ public class MFreeFactory {
             grad.add(nodegrad);
          }
       }
-
+      if (cache != null) {
+         cache.put(pnt, deps, coords, grad);
+      }
       return nDeps;
    }
 
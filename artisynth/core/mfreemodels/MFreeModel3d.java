@@ -8,9 +8,13 @@ package artisynth.core.mfreemodels;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import maspack.concurrency.ParallelLoopManager;
 
 import maspack.function.ConstantFuntion3x1;
 import maspack.function.Function3x1;
@@ -97,6 +101,12 @@ public class MFreeModel3d extends FemModel implements TransformableGeometry,
    protected AABBTree myNodeAABBTree;
    protected boolean myBVTreeValid;
 
+   // shape function values and gradients computed while embedding points in
+   // this model; cleared whenever the model's structure changes
+   protected MFreeShapeFunctionCache myShapeFunctionCache =
+      new MFreeShapeFunctionCache();
+   protected boolean myShapeFunctionCachingP = true;
+
    protected boolean mySurfaceMeshValid = false;
    protected int myCollidableIndex;
 
@@ -134,6 +144,18 @@ public class MFreeModel3d extends FemModel implements TransformableGeometry,
    protected ColorMapBase myColorMap;
    protected PropertyMode myColorMapMode = PropertyMode.Inherited;
 
+   public static int DEFAULT_NUM_ASSEMBLY_THREADS = 1;
+   private int myNumAssemblyThreads = DEFAULT_NUM_ASSEMBLY_THREADS;
+   // manages threads and per-thread workspaces for parallel assembly
+   private ParallelLoopManager myAssemblyManager;
+   private AssemblyWorkspace[] myAssemblyWorkspaces;
+   // cached structure for parallel assembly, cleared when structure changes
+   private MFreeElement3d[] myAssemblyRegions;
+   private RegionStressData[] myRegionStressData;
+   private int[][] myRegionGroups;   // regions that share integration points
+   private int[][] myNodeRegions;    // regions containing each node
+   private int[][] myNodeLocalIdxs;  // local index of each node in its regions
+
    public static PropertyList myProps =
       new PropertyList(MFreeModel3d.class, FemModel.class);
 
@@ -147,12 +169,54 @@ public class MFreeModel3d extends FemModel implements TransformableGeometry,
          DEFAULT_ELEMENT_WIDGET_SIZE, "[0,1]");
       myProps.addInheritable("colorMap:Inherited", "color map for stress/strain", 
          defaultColorMap, "CE");
+      myProps.add (
+         "numAssemblyThreads",
+         "number of threads used to compute region stresses and stiffnesses",
+         DEFAULT_NUM_ASSEMBLY_THREADS, "[1,inf)");
    }
 
    public PropertyList getAllPropertyInfo() {
       return myProps;
    }
 
+   /**
+    * Sets the number of threads used to compute the stresses and
+    * stiffnesses of the integration regions. If this is greater than one,
+    * the material stresses and tangents at the integration points are
+    * computed concurrently, region by region, after which the contributions
+    * to each node's force and stiffness blocks are accumulated concurrently
+    * node by node. Each node receives its contributions in the same order
+    * as in the single-threaded computation, so the results are identical
+    * and do not depend on the thread count. Incompressibility terms are
+    * still computed serially.
+    *
+    * @param num number of threads (values less than 1 are set to 1)
+    */
+   public void setNumAssemblyThreads (int num) {
+      if (num < 1) {
+         num = 1;
+      }
+      if (num != myNumAssemblyThreads) {
+         myNumAssemblyThreads = num;
+         if (myAssemblyManager != null) {
+            myAssemblyManager.shutdown();
+            myAssemblyManager = null;
+         }
+         myAssemblyWorkspaces = null;
+      }
+   }
+
+   /**
+    * Returns the number of threads used to compute region stresses and
+    * stiffnesses.
+    *
+    * @return number of assembly threads
+    * @see #setNumAssemblyThreads
+    */
+   public int getNumAssemblyThreads() {
+      return myNumAssemblyThreads;
+   }
+
    public void setElementWidgetSize(double size) {
       myElementWidgetSize = size;
       myElementWidgetSizeMode =
@@ -280,6 +344,42 @@ public class MFreeModel3d extends FemModel implements TransformableGeometry,
       myBVTreeValid = true;
    }
 
+   /**
+    * Returns the cache used to store the shape function values and gradients
+    * of points embedded in this model, or <code>null</code> if caching is
+    * disabled. The cache is cleared whenever the structure of the model
+    * changes.
+    *
+    * @return shape function cache, or <code>null</code>
+    */
+   public MFreeShapeFunctionCache getShapeFunctionCache() {
+      return myShapeFunctionCachingP ? myShapeFunctionCache : null;
+   }
+
+   /**
+    * Enables or disables caching of the shape function values and gradients
+    * of points embedded in this model. Caching is enabled by default.
+    * Disabling it also clears the cache.
+    *
+    * @param enable if <code>true</code>, enables caching
+    */
+   public void setShapeFunctionCaching(boolean enable) {
+      myShapeFunctionCachingP = enable;
+      if (!enable) {
+         myShapeFunctionCache.clear();
+      }
+   }
+
+   /**
+    * Queries whether caching of shape function values and gradients is
+    * enabled for this model.
+    *
+    * @return <code>true</code> if caching is enabled
+    */
+   public boolean getShapeFunctionCaching() {
+      return myShapeFunctionCachingP;
+   }
+
    public BVTree getNodeBVTree() {
       if (myNodeAABBTree == null || !myBVTreeValid) {
          updateBVHierarchies();
@@ -334,6 +434,7 @@ public class MFreeModel3d extends FemModel implements TransformableGeometry,
    public boolean removeNode(MFreeNode3d p) {
       if (myNodes.remove(p)) {
          // myEvaluationPoints.remove(p);
+         myShapeFunctionCache.invalidate(p);
          return true;
       }
       return false;
@@ -480,14 +581,19 @@ public class MFreeModel3d extends FemModel implements TransformableGeometry,
       MFreeElement3d minE = null;
       IncompMethod softIncomp = getSoftIncompMethod();
 
-      for (MFreeElement3d region : myElements) {
-         FemMaterial mat = getRegionMaterial(region);
-         computeMaterialStressAndStiffness(region, mat, D);
-         if (checkTangentStability) {
-            double s = checkMatrixStability(D);
-            if (s < mins) {
-               mins = s;
-               minE = region;
+      if (myNumAssemblyThreads > 1 && !checkTangentStability) {
+         computeMaterialStressAndStiffnessInParallel();
+      }
+      else {
+         for (MFreeElement3d region : myElements) {
+            FemMaterial mat = getRegionMaterial(region);
+            computeMaterialStressAndStiffness(region, mat, D);
+            if (checkTangentStability) {
+               double s = checkMatrixStability(D);
+               if (s < mins) {
+                  mins = s;
+                  minE = region;
+               }
             }
          }
       }
@@ -953,6 +1059,412 @@ public class MFreeModel3d extends FemModel implements TransformableGeometry,
 
    }
 
+   /**
+    * Per-thread temporary storage for parallel assembly.
+    */
+   private static class AssemblyWorkspace {
+      SymmetricMatrix3d eps = new SymmetricMatrix3d();
+      SymmetricMatrix3d sigmaAux = new SymmetricMatrix3d();
+      Matrix6d DAux = new Matrix6d();
+      SolidDeformation def = new SolidDeformation();
+      Matrix3d A = new Matrix3d();
+      Vector3d tmp = new Vector3d();
+      Vector3d pos = new Vector3d();
+   }
+
+   /**
+    * Stress, tangent and shape gradient results for the integration points
+    * of a region, computed in the first phase of parallel assembly and
+    * accumulated into the nodes in the second.
+    */
+   private static class RegionStressData {
+      boolean linear;        // region material is linear
+      boolean corotated;     // linear material is corotated
+      boolean nonlinear;     // integration point stresses are needed
+      boolean[] shared;      // integration point belongs to other regions
+      double[] dv;
+      SymmetricMatrix3d[] sig;
+      Matrix6d[] D;
+      Vector3d[][] GNx;
+      double minDetJ;
+      int numInverted;
+
+      void setNumPoints (int num) {
+         if (dv == null || dv.length != num) {
+            dv = new double[num];
+            sig = new SymmetricMatrix3d[num];
+            D = new Matrix6d[num];
+            GNx = new Vector3d[num][];
+            for (int k = 0; k < num; k++) {
+               sig[k] = new SymmetricMatrix3d();
+               D[k] = new Matrix6d();
+            }
+         }
+      }
+
+      Vector3d[] copyGradient (int k, Vector3d[] GNx_k) {
+         Vector3d[] copy = GNx[k];
+         if (copy == null || copy.length != GNx_k.length) {
+            copy = new Vector3d[GNx_k.length];
+            for (int i = 0; i < copy.length; i++) {
+               copy[i] = new Vector3d();
+            }
+         }
+         for (int i = 0; i < copy.length; i++) {
+            copy[i].set (GNx_k[i]);
+         }
+         return copy;
+      }
+   }
+
+   private static int findRoot (int[] parent, int i) {
+      while (parent[i] != i) {
+         parent[i] = parent[parent[i]];
+         i = parent[i];
+      }
+      return i;
+   }
+
+   /**
+    * Builds the structures used for parallel assembly: the regions
+    * containing each node, and groups of regions that share integration
+    * points (and so must be processed in the same thread, in order).
+    */
+   private void updateAssemblyStructure() {
+      MFreeElement3d[] regions = myElements.toArray (new MFreeElement3d[0]);
+      int numr = regions.length;
+
+      // group regions that share integration points
+      int[] parent = new int[numr];
+      IdentityHashMap<MFreeIntegrationPoint3d,Integer> pntRegions =
+         new IdentityHashMap<MFreeIntegrationPoint3d,Integer>();
+      RegionStressData[] data = new RegionStressData[numr];
+      for (int r = 0; r < numr; r++) {
+         parent[r] = r;
+         data[r] = new RegionStressData();
+         ArrayList<MFreeIntegrationPoint3d> ipnts =
+            regions[r].getIntegrationPoints();
+         data[r].shared = new boolean[ipnts.size()];
+         for (MFreeIntegrationPoint3d pt : ipnts) {
+            Integer r0 = pntRegions.get (pt);
+            if (r0 == null) {
+               pntRegions.put (pt, r);
+            }
+            else {
+               parent[findRoot (parent, r)] = findRoot (parent, r0);
+            }
+         }
+      }
+      IdentityHashMap<MFreeIntegrationPoint3d,Integer> pntCounts =
+         new IdentityHashMap<MFreeIntegrationPoint3d,Integer>();
+      for (int r = 0; r < numr; r++) {
+         for (MFreeIntegrationPoint3d pt : regions[r].getIntegrationPoints()) {
+            Integer cnt = pntCounts.get (pt);
+            pntCounts.put (pt, cnt == null ? 1 : cnt+1);
+         }
+      }
+      for (int r = 0; r < numr; r++) {
+         ArrayList<MFreeIntegrationPoint3d> ipnts =
+            regions[r].getIntegrationPoints();
+         for (int k = 0; k < ipnts.size(); k++) {
+            data[r].shared[k] = (pntCounts.get (ipnts.get(k)) > 1);
+         }
+      }
+      int[] groupIdx = new int[numr];
+      int[] groupSizes = new int[numr];
+      int numg = 0;
+      for (int r = 0; r < numr; r++) {
+         if (findRoot (parent, r) == r) {
+            groupIdx[r] = numg++;
+         }
+      }
+      for (int r = 0; r < numr; r++) {
+         groupSizes[groupIdx[findRoot (parent, r)]]++;
+      }
+      int[][] groups = new int[numg][];
+      for (int g = 0; g < numg; g++) {
+         groups[g] = new int[groupSizes[g]];
+         groupSizes[g] = 0;
+      }
+      for (int r = 0; r < numr; r++) {
+         int g = groupIdx[findRoot (parent, r)];
+         groups[g][groupSizes[g]++] = r;
+      }
+
+      // regions containing each node, in region order
+      IdentityHashMap<MFreeNode3d,Integer> nodeIdxs =
+         new IdentityHashMap<MFreeNode3d,Integer>();
+      for (int i = 0; i < myNodes.size(); i++) {
+         nodeIdxs.put (myNodes.get(i), i);
+      }
+      int[] nodeCnts = new int[myNodes.size()];
+      for (int r = 0; r < numr; r++) {
+         for (MFreeNode3d n : regions[r].getNodes()) {
+            nodeCnts[nodeIdxs.get(n)]++;
+         }
+      }
+      int[][] nodeRegions = new int[myNodes.size()][];
+      int[][] nodeLocalIdxs = new int[myNodes.size()][];
+      for (int i = 0; i < nodeCnts.length; i++) {
+         nodeRegions[i] = new int[nodeCnts[i]];
+         nodeLocalIdxs[i] = new int[nodeCnts[i]];
+         nodeCnts[i] = 0;
+      }
+      for (int r = 0; r < numr; r++) {
+         MFreeNode3d[] nodes = regions[r].getNodes();
+         for (int li = 0; li < nodes.length; li++) {
+            int i = nodeIdxs.get(nodes[li]);
+            nodeRegions[i][nodeCnts[i]] = r;
+            nodeLocalIdxs[i][nodeCnts[i]] = li;
+            nodeCnts[i]++;
+         }
+      }
+      myRegionStressData = data;
+      myRegionGroups = groups;
+      myNodeRegions = nodeRegions;
+      myNodeLocalIdxs = nodeLocalIdxs;
+      myAssemblyRegions = regions;
+   }
+
+   /**
+    * Checks that the cached assembly structure is consistent with the
+    * current regions, nodes and integration points.
+    */
+   private boolean assemblyStructureIsValid() {
+      if (myAssemblyRegions == null ||
+          myAssemblyRegions.length != myElements.size() ||
+          myNodeRegions.length != myNodes.size()) {
+         return false;
+      }
+      for (int r = 0; r < myAssemblyRegions.length; r++) {
+         MFreeElement3d e = myAssemblyRegions[r];
+         if (e != myElements.get(r) ||
+             myRegionStressData[r].shared.length != e.numIntegrationPoints()) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private AssemblyWorkspace[] getAssemblyWorkspaces (int numThreads) {
+      if (myAssemblyWorkspaces == null ||
+          myAssemblyWorkspaces.length != numThreads) {
+         myAssemblyWorkspaces = new AssemblyWorkspace[numThreads];
+         for (int i = 0; i < numThreads; i++) {
+            myAssemblyWorkspaces[i] = new AssemblyWorkspace();
+         }
+      }
+      return myAssemblyWorkspaces;
+   }
+
+   /**
+    * Computes the integration point stresses and tangents for a region, and
+    * stores them in <code>rd</code>. This is the same computation as in
+    * {@link #computeMaterialStressAndStiffness}, except that nothing is
+    * accumulated into the nodes.
+    */
+   private void computeRegionStresses (
+      MFreeElement3d e, FemMaterial mat, RegionStressData rd,
+      AssemblyWorkspace ws) {
+
+      ArrayList<MFreeIntegrationPoint3d> ipnts = e.getIntegrationPoints();
+      ArrayList<IntegrationData3d> idata = e.getIntegrationData();
+      VectorNd iwgts = e.getIntegrationWeights();
+
+      rd.minDetJ = Double.MAX_VALUE;
+      rd.numInverted = 0;
+      rd.linear = false;
+      rd.corotated = false;
+      if (mat instanceof LinearMaterial) {
+         LinearMaterial linMat = (LinearMaterial)mat;
+         rd.linear = true;
+         rd.corotated = linMat.isCorotated();
+         MFreeIntegrationPoint3d wpnt = e.getWarpingPoint();
+         IntegrationData3d wdat = e.getWarpingData();
+         wpnt.computeJacobianAndGradient(wdat.getInvJ0());
+         wpnt.getStress().setZero();
+         if (rd.corotated) {
+            e.computeWarping(wpnt.getF(), ws.eps);
+         }
+      }
+      e.setInverted(false);
+      rd.nonlinear = (!rd.linear || e.numAuxiliaryMaterials() > 0);
+      if (!rd.nonlinear) {
+         return;
+      }
+      rd.setNumPoints (ipnts.size());
+      SolidDeformation def = ws.def;
+      for (int k = 0; k < ipnts.size(); k++) {
+         MFreeIntegrationPoint3d pt = ipnts.get(k);
+         IntegrationData3d dt = idata.get(k);
+         pt.setWeight(iwgts.get(k));
+         pt.computeJacobianAndGradient(dt.getInvJ0());
+         def.setF (pt.getF());
+         double detJ = pt.computeInverseJacobian();
+         if (detJ < rd.minDetJ) {
+            rd.minDetJ = detJ;
+         }
+         if (detJ <= 0) {
+            e.setInverted(true);
+            rd.numInverted++;
+         }
+         rd.dv[k] = detJ * iwgts.get(k);
+         Vector3d[] GNx = pt.updateShapeGradient(pt.getInvJ());
+         // points shared with later regions will have their gradients
+         // overwritten, so these must be copied
+         rd.GNx[k] = (rd.shared[k] ? rd.copyGradient (k, GNx) : GNx);
+
+         Matrix6d D = rd.D[k];
+         if (rd.linear) {
+            pt.getStress().setZero();
+            D.setZero();
+         }
+         else {
+            Matrix3d Q = dt.getFrame();
+            if (Q == null) {
+               Q = Matrix3d.IDENTITY;
+            }
+            pt.setAveragePressure(0);
+            mat.computeStress (pt.getStress(), def, Q, null);
+            mat.computeTangent (D, pt.getStress(), def, Q, null);
+         }
+         if (e.numAuxiliaryMaterials() > 0) {
+            for (AuxiliaryMaterial aux : e.myAuxMaterials) {
+               aux.computeStress (ws.sigmaAux, def, pt, dt, mat);
+               pt.getStress().add (ws.sigmaAux);
+               aux.computeTangent (ws.DAux, ws.sigmaAux, def, pt, dt, mat);
+               D.add (ws.DAux);
+            }
+         }
+         rd.sig[k].set (pt.getStress());
+      }
+   }
+
+   /**
+    * Accumulates the force and stiffness contributions for the node with
+    * index <code>ni</code>, from all the regions that contain it. The
+    * contributions are added in the same order as in
+    * {@link #computeMaterialStressAndStiffness}, and only modify the node's
+    * own force and stiffness blocks.
+    */
+   private void accumulateNodeStressAndStiffness (
+      int ni, AssemblyWorkspace ws) {
+
+      MFreeNode3d n = myNodes.get(ni);
+      int bi = n.getSolveIndex();
+      Vector3d f = n.getInternalForce();
+      int[] regionIdxs = myNodeRegions[ni];
+      int[] localIdxs = myNodeLocalIdxs[ni];
+      for (int m = 0; m < regionIdxs.length; m++) {
+         MFreeElement3d e = myAssemblyRegions[regionIdxs[m]];
+         RegionStressData rd = myRegionStressData[regionIdxs[m]];
+         MFreeNode3d[] nodes = e.getNodes();
+         int i = localIdxs[m];
+         if (rd.linear && bi != -1) {
+            if (!myStiffnessesValidP) {
+               for (int j = 0; j < nodes.length; j++) {
+                  int bj = nodes[j].getSolveIndex();
+                  if (!mySolveMatrixSymmetricP || bj >= bi) {
+                     e.addNodeStiffness(i, j, rd.corotated, ws.A);
+                  }
+               }
+            }
+            e.addNodeForce(f, i, rd.corotated, ws.tmp, ws.pos);
+         }
+         if (rd.nonlinear) {
+            ArrayList<int[]> idxs = e.getIntegrationIndices();
+            for (int k = 0; k < rd.dv.length; k++) {
+               Vector3d[] GNx = rd.GNx[k];
+               int[] ids = idxs.get(k);
+               double dv = rd.dv[k];
+               if (e.isTermActive(i, i)) {
+                  FemUtilities.addStressForce(f, GNx[ids[i]], rd.sig[k], dv);
+               }
+               if (bi != -1) {
+                  for (int j = 0; j < nodes.length; j++) {
+                     int bj = nodes[j].getSolveIndex();
+                     if (!mySolveMatrixSymmetricP || bj >= bi) {
+                        e.addMaterialStiffness(
+                           i, j, GNx[ids[i]], rd.D[k], rd.sig[k],
+                           GNx[ids[j]], dv);
+                     }
+                  }
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * Parallel version of the region loop in {@link
+    * #updateStressAndStiffness}. In the first phase, integration point
+    * stresses and tangents are computed concurrently for groups of regions
+    * that do not share integration points. In the second phase, each node
+    * accumulates its own force and stiffness blocks, so that no two threads
+    * write to the same block and the summation order matches the serial
+    * computation.
+    */
+   private void computeMaterialStressAndStiffnessInParallel() {
+      if (!assemblyStructureIsValid()) {
+         updateAssemblyStructure();
+      }
+      if (myAssemblyManager == null) {
+         myAssemblyManager = new ParallelLoopManager (
+            "MFreeModel3d-assembly", myNumAssemblyThreads);
+      }
+      final AssemblyWorkspace[] workspaces =
+         getAssemblyWorkspaces (myAssemblyManager.getNumThreads());
+      final MFreeElement3d[] regions = myAssemblyRegions;
+      // lazily computed warping stiffness is built serially
+      for (MFreeElement3d e : regions) {
+         if (getRegionMaterial(e) instanceof LinearMaterial) {
+            e.ensureWarpingStiffness();
+         }
+      }
+
+      // phase 1: region groups are handed out dynamically, since their
+      // costs can vary considerably
+      final int[][] groups = myRegionGroups;
+      final AtomicInteger next = new AtomicInteger();
+      int nthreads = Math.min (workspaces.length, groups.length);
+      myAssemblyManager.execute (
+         nthreads, new ParallelLoopManager.RangeTask() {
+            public void run (int tidx, int start, int end) {
+               AssemblyWorkspace ws = workspaces[tidx];
+               int g;
+               while ((g = next.getAndIncrement()) < groups.length) {
+                  for (int r : groups[g]) {
+                     MFreeElement3d e = regions[r];
+                     computeRegionStresses (
+                        e, getRegionMaterial(e), myRegionStressData[r], ws);
+                  }
+               }
+            }
+         });
+
+      // inversion statistics are reduced in region order, as for the
+      // serial computation
+      for (int r = 0; r < regions.length; r++) {
+         RegionStressData rd = myRegionStressData[r];
+         if (rd.minDetJ < myMinDetJ) {
+            myMinDetJ = rd.minDetJ;
+            myMinDetJElement = regions[r];
+         }
+         myNumInverted += rd.numInverted;
+      }
+
+      // phase 2: per-node accumulation
+      myAssemblyManager.execute (
+         myNodes.size(), new ParallelLoopManager.RangeTask() {
+            public void run (int tidx, int start, int end) {
+               AssemblyWorkspace ws = workspaces[tidx];
+               for (int ni = start; ni < end; ni++) {
+                  accumulateNodeStressAndStiffness (ni, ws);
+               }
+            }
+         });
+   }
+
    public void checkInversion() {
       myMinDetJ = Double.MAX_VALUE;
       myMinDetJElement = null;
@@ -1051,7 +1563,8 @@ public class MFreeModel3d extends FemModel implements TransformableGeometry,
       
       // check that it's an mfree mesh
       if (!(mesh.getVertex(0) instanceof MFreeVertex3d)) {
-        mesh = MFreeFactory.convertToMFreeMesh(mesh, getNodeBVTree(), 1e-5);
+        mesh = MFreeFactory.convertToMFreeMesh(
+           mesh, getNodeBVTree(), 1e-5, getShapeFunctionCache());
       }
       
       MeshComponent mc = new MeshComponent(mesh, null, null);
@@ -1577,6 +2090,11 @@ public class MFreeModel3d extends FemModel implements TransformableGeometry,
       super.clearCachedData(e);
       mySolveMatrix = null;
       myBVTreeValid = false;
+      myAssemblyRegions = null;
+      // may be called from the super constructor, before initialization
+      if (myShapeFunctionCache != null) {
+         myShapeFunctionCache.clear();
+      }
    }
 
    private void handleGeometryChange() {
@@ -1752,6 +2270,10 @@ public class MFreeModel3d extends FemModel implements TransformableGeometry,
    }
 
    public void dispose() {
+      if (myAssemblyManager != null) {
+         myAssemblyManager.shutdown();
+         myAssemblyManager = null;
+      }
    }
 
    @Override
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package artisynth.core.mfreemodels;
+
+import artisynth.core.femmodels.FemNodeNeighbor;
+import artisynth.core.materials.NeoHookeanMaterial;
+import artisynth.core.mechmodels.MechModel;
+import maspack.matrix.Matrix3d;
+import maspack.matrix.Point3d;
+import maspack.matrix.Vector3d;
+import maspack.util.FunctionTimer;
+
+/**
+ * Times the stress and stiffness assembly of MFreeModel3d beams of
+ * increasing resolution, using a single thread and then multiple threads.
+ * Since the multithreaded assembly is deterministic, the resulting nodal
+ * forces and stiffness blocks should be identical in both cases.
+ *
+ * <p>Usage: java artisynth.core.mfreemodels.MFreeModel3dAssemblyTiming
+ * [numThreads [cnt]]
+ */
+public class MFreeModel3dAssemblyTiming {
+
+   int myNumThreads = Runtime.getRuntime().availableProcessors();
+
+   MFreeModel3d createBeam (int res) {
+      MFreeModel3d model = new MFreeModel3d ("beam");
+      MFreeFactory.createBeam (
+         model, new double[] { 1.0, 0.25, 0.25 },
+         new int[] { 2*res, res, res }, 1.5);
+      model.setMaterial (new NeoHookeanMaterial (50000, 0.33));
+      // add to a MechModel so that the nodes are assigned solve indices
+      MechModel mech = new MechModel ("mech");
+      mech.addModel (model);
+      mech.getActiveVelStateSize();
+
+      // deform the beam deterministically, so the assembly is nonlinear
+      for (MFreeNode3d n : model.getNodes()) {
+         Point3d pos = new Point3d (n.getRestPosition());
+         pos.z += 0.05*Math.sin (3*pos.x) + 0.01*Math.cos (7*pos.y);
+         pos.y += 0.02*Math.sin (5*pos.z);
+         n.setFalsePosition (pos);
+      }
+      model.updateSlavePos();
+      return model;
+   }
+
+   double time (MFreeModel3d model, int numThreads, int cnt) {
+      model.setNumAssemblyThreads (numThreads);
+      // warm up
+      for (int k=0; k<5; k++) {
+         model.updateStressAndStiffness();
+      }
+      FunctionTimer timer = new FunctionTimer();
+      timer.start();
+      for (int k=0; k<cnt; k++) {
+         model.updateStressAndStiffness();
+      }
+      timer.stop();
+      return timer.getTimeUsec()/cnt;
+   }
+
+   /**
+    * Returns the forces and stiffness blocks of all nodes, in a fixed order.
+    */
+   double[] getResults (MFreeModel3d model) {
+      int size = 0;
+      for (MFreeNode3d n : model.getNodes()) {
+         size += 3 + 9*n.getNodeNeighbors().size();
+      }
+      double[] vals = new double[size];
+      int idx = 0;
+      for (MFreeNode3d n : model.getNodes()) {
+         Vector3d f = n.getInternalForce();
+         vals[idx++] = f.x;
+         vals[idx++] = f.y;
+         vals[idx++] = f.z;
+         for (FemNodeNeighbor nbr : n.getNodeNeighbors()) {
+            Matrix3d K = nbr.getK();
+            for (int i=0; i<3; i++) {
+               for (int j=0; j<3; j++) {
+                  vals[idx++] = K.get (i, j);
+               }
+            }
+         }
+      }
+      return vals;
+   }
+
+   void run (int res, int cnt) {
+      MFreeModel3d model = createBeam (res);
+      double t1 = time (model, 1, cnt);
+      double[] vals1 = getResults (model);
+      double tn = time (model, myNumThreads, cnt);
+      double[] valsn = getResults (model);
+      model.setNumAssemblyThreads (1);
+      model.dispose();
+
+      int ndiff = 0;
+      for (int i=0; i<vals1.length; i++) {
+         if (vals1[i] != valsn[i]) {
+            ndiff++;
+         }
+      }
+      System.out.printf (
+         "res=%-3d nodes=%-6d serial=%10.1f usec  threads=%d: %10.1f usec  "+
+         "speedup=%5.2f  differing values=%d\n",
+         res, model.getNodes().size(), t1, myNumThreads, tn, t1/tn, ndiff);
+   }
+
+   public static void main (String[] args) {
+      MFreeModel3dAssemblyTiming tester = new MFreeModel3dAssemblyTiming();
+      int cnt = 20;
+      if (args.length > 0) {
+         tester.myNumThreads = Integer.parseInt (args[0]);
+      }
+      if (args.length > 1) {
+         cnt = Integer.parseInt (args[1]);
+      }
+      for (int res : new int[] { 3, 5, 7, 9 }) {
+         tester.run (res, cnt);
+      }
+   }
+}
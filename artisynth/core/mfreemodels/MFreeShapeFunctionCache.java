@@ -0,0 +1,330 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package artisynth.core.mfreemodels;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import maspack.function.DifferentiableFunction3x1;
+import maspack.matrix.Point3d;
+import maspack.matrix.Vector3d;
+import maspack.matrix.VectorNd;
+
+/**
+ * Caches the shape function values, and optionally gradients, of a set of
+ * dependent nodes evaluated at a point. Entries are keyed on the point
+ * location and the (ordered) list of dependent nodes, and store the values
+ * in primitive arrays. Each {@link MFreeModel3d} owns its own cache, which
+ * it clears whenever its structure changes.
+ *
+ * <p>Each entry also records the rest position, weight function and shape
+ * function of each of its nodes at the time it was computed, together with
+ * the basis functions of MLS shape functions. An entry is only used if these
+ * are unchanged, so that moving a node's rest position, changing its weight
+ * function center or radius, or changing its shape function or basis,
+ * invalidates all entries that depend on it. Entries containing a particular
+ * node can also be removed explicitly using {@link #invalidate(MFreeNode3d)}.
+ * The number of entries is bounded, with the least recently used entries
+ * discarded first.
+ */
+public class MFreeShapeFunctionCache {
+
+   public static final int DEFAULT_MAX_ENTRIES = 200000;
+
+   // rest position, weight function center and radius for each node
+   private static final int NODE_DATA_SIZE = 7;
+
+   private int myMaxEntries = DEFAULT_MAX_ENTRIES;
+   private LinkedHashMap<Key,Entry> myEntries;
+   private int myNumHits = 0;
+   private int myNumMisses = 0;
+
+   private static class Key {
+      double x, y, z;
+      MFreeNode3d[] nodes;
+      int hash;
+
+      Key (Point3d pnt, List<MFreeNode3d> deps) {
+         x = pnt.x;
+         y = pnt.y;
+         z = pnt.z;
+         nodes = deps.toArray (new MFreeNode3d[deps.size()]);
+         long bits = Double.doubleToLongBits (x);
+         bits = 31*bits + Double.doubleToLongBits (y);
+         bits = 31*bits + Double.doubleToLongBits (z);
+         int h = (int)(bits ^ (bits >>> 32));
+         for (int i=0; i<nodes.length; i++) {
+            h = 31*h + System.identityHashCode (nodes[i]);
+         }
+         hash = h;
+      }
+
+      public int hashCode() {
+         return hash;
+      }
+
+      public boolean equals (Object obj) {
+         if (!(obj instanceof Key)) {
+            return false;
+         }
+         Key key = (Key)obj;
+         if (key.hash != hash ||
+             Double.doubleToLongBits (key.x) != Double.doubleToLongBits (x) ||
+             Double.doubleToLongBits (key.y) != Double.doubleToLongBits (y) ||
+             Double.doubleToLongBits (key.z) != Double.doubleToLongBits (z) ||
+             key.nodes.length != nodes.length) {
+            return false;
+         }
+         for (int i=0; i<nodes.length; i++) {
+            if (key.nodes[i] != nodes[i]) {
+               return false;
+            }
+         }
+         return true;
+      }
+   }
+
+   private static class Entry {
+      double[] values;
+      double[] gradients;    // null if gradients were not computed
+      double[] nodeData;
+      MFreeWeightFunction[] weightFunctions;
+      MFreeShapeFunction[] shapeFunctions;
+      DifferentiableFunction3x1[][] bases;
+
+      Entry (MFreeNode3d[] nodes) {
+         nodeData = new double[NODE_DATA_SIZE*nodes.length];
+         weightFunctions = new MFreeWeightFunction[nodes.length];
+         shapeFunctions = new MFreeShapeFunction[nodes.length];
+         bases = new DifferentiableFunction3x1[nodes.length][];
+         for (int i=0; i<nodes.length; i++) {
+            getNodeData (nodeData, NODE_DATA_SIZE*i, nodes[i]);
+            weightFunctions[i] = nodes[i].getWeightFunction();
+            shapeFunctions[i] = nodes[i].getShapeFunction();
+            bases[i] = getBasis (shapeFunctions[i]);
+         }
+      }
+
+      boolean isValid (MFreeNode3d[] nodes) {
+         double[] data = new double[NODE_DATA_SIZE];
+         for (int i=0; i<nodes.length; i++) {
+            MFreeShapeFunction fun = nodes[i].getShapeFunction();
+            if (nodes[i].getWeightFunction() != weightFunctions[i] ||
+                fun != shapeFunctions[i] ||
+                getBasis (fun) != bases[i]) {
+               return false;
+            }
+            getNodeData (data, 0, nodes[i]);
+            int off = NODE_DATA_SIZE*i;
+            for (int k=0; k<NODE_DATA_SIZE; k++) {
+               if (data[k] != nodeData[off+k]) {
+                  return false;
+               }
+            }
+         }
+         return true;
+      }
+   }
+
+   private static DifferentiableFunction3x1[] getBasis (
+      MFreeShapeFunction fun) {
+      if (fun instanceof MLSShapeFunction) {
+         return ((MLSShapeFunction)fun).getBasisFunctions();
+      }
+      else {
+         return null;
+      }
+   }
+
+   private static void getNodeData (double[] data, int off, MFreeNode3d node) {
+      Point3d rest = node.getRestPosition();
+      data[off++] = rest.x;
+      data[off++] = rest.y;
+      data[off++] = rest.z;
+      MFreeWeightFunction fun = node.getWeightFunction();
+      if (fun instanceof RadialWeightFunction) {
+         RadialWeightFunction rfun = (RadialWeightFunction)fun;
+         Point3d c = rfun.getCenter();
+         data[off++] = c.x;
+         data[off++] = c.y;
+         data[off++] = c.z;
+         data[off++] = rfun.getRadius();
+      }
+      else {
+         for (int k=0; k<4; k++) {
+            data[off++] = 0;
+         }
+      }
+   }
+
+   public MFreeShapeFunctionCache() {
+      myEntries = new LinkedHashMap<Key,Entry>(1024, 0.75f, true) {
+         private static final long serialVersionUID = 1L;
+
+         protected boolean removeEldestEntry (Map.Entry<Key,Entry> eldest) {
+            return size() > myMaxEntries;
+         }
+      };
+   }
+
+   /**
+    * Returns the maximum number of entries stored in this cache.
+    *
+    * @return maximum number of entries
+    */
+   public int getMaxEntries() {
+      return myMaxEntries;
+   }
+
+   /**
+    * Sets the maximum number of entries stored in this cache. When this is
+    * exceeded, the least recently used entries are discarded.
+    *
+    * @param max maximum number of entries
+    */
+   public synchronized void setMaxEntries (int max) {
+      myMaxEntries = Math.max (0, max);
+      if (myEntries.size() > myMaxEntries) {
+         Iterator<Key> it = myEntries.keySet().iterator();
+         while (myEntries.size() > myMaxEntries) {
+            it.next();
+            it.remove();
+         }
+      }
+   }
+
+   /**
+    * Returns the number of entries currently stored in this cache.
+    *
+    * @return number of entries
+    */
+   public synchronized int numEntries() {
+      return myEntries.size();
+   }
+
+   /**
+    * Returns the number of successful lookups since the cache was created or
+    * last cleared.
+    *
+    * @return number of cache hits
+    */
+   public int getNumHits() {
+      return myNumHits;
+   }
+
+   /**
+    * Returns the number of unsuccessful lookups since the cache was created
+    * or last cleared.
+    *
+    * @return number of cache misses
+    */
+   public int getNumMisses() {
+      return myNumMisses;
+   }
+
+   /**
+    * Looks up the shape function values, and optionally the gradients, of
+    * the nodes <code>deps</code> evaluated at <code>pnt</code>.
+    *
+    * @param coords returns the shape function values
+    * @param grads if non-null, returns the shape function gradients
+    * @param pnt point at which the functions are evaluated
+    * @param deps dependent nodes
+    * @return <code>true</code> if a valid entry was found, in which case
+    * <code>coords</code> and <code>grads</code> are set
+    */
+   public synchronized boolean get (
+      VectorNd coords, ArrayList<Vector3d> grads,
+      Point3d pnt, List<MFreeNode3d> deps) {
+
+      Key key = new Key (pnt, deps);
+      Entry entry = myEntries.get (key);
+      if (entry == null ||
+          (grads != null && entry.gradients == null) ||
+          !entry.isValid (key.nodes)) {
+         myNumMisses++;
+         return false;
+      }
+      int n = key.nodes.length;
+      coords.setSize (n);
+      coords.set (entry.values);
+      if (grads != null) {
+         grads.clear();
+         grads.ensureCapacity (n);
+         double[] g = entry.gradients;
+         for (int i=0; i<n; i++) {
+            grads.add (new Vector3d (g[3*i], g[3*i+1], g[3*i+2]));
+         }
+      }
+      myNumHits++;
+      return true;
+   }
+
+   /**
+    * Stores the shape function values, and optionally the gradients, of the
+    * nodes <code>deps</code> evaluated at <code>pnt</code>.
+    *
+    * @param pnt point at which the functions were evaluated
+    * @param deps dependent nodes
+    * @param coords shape function values
+    * @param grads if non-null, shape function gradients
+    */
+   public synchronized void put (
+      Point3d pnt, List<MFreeNode3d> deps,
+      VectorNd coords, ArrayList<Vector3d> grads) {
+
+      if (myMaxEntries == 0) {
+         return;
+      }
+      Key key = new Key (pnt, deps);
+      int n = key.nodes.length;
+      Entry entry = new Entry (key.nodes);
+      entry.values = new double[n];
+      coords.get (entry.values);
+      if (grads != null) {
+         entry.gradients = new double[3*n];
+         double[] g = entry.gradients;
+         for (int i=0; i<n; i++) {
+            Vector3d grad = grads.get(i);
+            g[3*i  ] = grad.x;
+            g[3*i+1] = grad.y;
+            g[3*i+2] = grad.z;
+         }
+      }
+      myEntries.put (key, entry);
+   }
+
+   /**
+    * Removes all entries that depend on a specified node.
+    *
+    * @param node node whose entries should be removed
+    */
+   public synchronized void invalidate (MFreeNode3d node) {
+      Iterator<Key> it = myEntries.keySet().iterator();
+      while (it.hasNext()) {
+         MFreeNode3d[] nodes = it.next().nodes;
+         for (int i=0; i<nodes.length; i++) {
+            if (nodes[i] == node) {
+               it.remove();
+               break;
+            }
+         }
+      }
+   }
+
+   /**
+    * Removes all entries from this cache and resets the hit and miss counts.
+    */
+   public synchronized void clear() {
+      myEntries.clear();
+      myNumHits = 0;
+      myNumMisses = 0;
+   }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package artisynth.core.mfreemodels;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import maspack.geometry.AABBTree;
+import maspack.matrix.Vector3d;
+import maspack.matrix.VectorNd;
+import maspack.util.RandomGenerator;
+import maspack.util.TestException;
+import maspack.util.UnitTest;
+
+public class MFreeShapeFunctionCacheTest extends UnitTest {
+
+   private ArrayList<MFreeNode3d> createNodes (int res, double rad) {
+      ArrayList<MFreeNode3d> nodes = new ArrayList<MFreeNode3d>();
+      double h = 1.0/(res-1);
+      for (int i=0; i<res; i++) {
+         for (int j=0; j<res; j++) {
+            for (int k=0; k<res; k++) {
+               MFreeNode3d node = new MFreeNode3d (i*h, j*h, k*h);
+               node.setWeightFunction (
+                  RadialWeightFunction.createWeightFunction (
+                     MFreeFactory.DEFAULT_RADIAL_KERNEL_TYPE,
+                     node.getRestPosition(), rad));
+               node.setShapeFunction (
+                  MFreeShapeFunction.create (
+                     MFreeShapeFunction.MFreeShapeFunctionType.MLS, node));
+               nodes.add (node);
+            }
+         }
+      }
+      return nodes;
+   }
+
+   private CubaturePoint3d[] createPoints (int num) {
+      Random rand = RandomGenerator.get();
+      CubaturePoint3d[] cpnts = new CubaturePoint3d[num];
+      for (int i=0; i<num; i++) {
+         cpnts[i] = new CubaturePoint3d (
+            0.1+0.8*rand.nextDouble(), 0.1+0.8*rand.nextDouble(),
+            0.1+0.8*rand.nextDouble(), 1.0);
+      }
+      return cpnts;
+   }
+
+   private AABBTree createNodeTree (ArrayList<MFreeNode3d> nodes) {
+      MFreeNode3d[] nodeArray = nodes.toArray (new MFreeNode3d[nodes.size()]);
+      AABBTree tree = new AABBTree();
+      tree.build (nodeArray, nodeArray.length);
+      return tree;
+   }
+
+   private void checkEquals (
+      MFreeIntegrationPoint3d[] ipnts, MFreeIntegrationPoint3d[] chk,
+      String msg) {
+
+      for (int i=0; i<ipnts.length; i++) {
+         VectorNd N = ipnts[i].getShapeWeights();
+         VectorNd Nchk = chk[i].getShapeWeights();
+         if (!N.equals (Nchk)) {
+            throw new TestException (
+               msg + ": shape values for point " + i + " are\n" +
+               N.toString ("%g") + "\nexpected\n" + Nchk.toString ("%g"));
+         }
+         Vector3d[] GNs = ipnts[i].getGNs();
+         Vector3d[] GNschk = chk[i].getGNs();
+         for (int j=0; j<GNschk.length; j++) {
+            if (!GNs[j].equals (GNschk[j])) {
+               throw new TestException (
+                  msg + ": shape gradient " + j + " for point " + i +
+                  " is " + GNs[j].toString ("%g") +
+                  ", expected " + GNschk[j].toString ("%g"));
+            }
+         }
+      }
+   }
+
+   private void checkCounts (
+      MFreeShapeFunctionCache cache, int hits, int misses, String msg) {
+      if (cache.getNumHits() != hits || cache.getNumMisses() != misses) {
+         throw new TestException (
+            msg + ": cache has " + cache.getNumHits() + " hits and " +
+            cache.getNumMisses() + " misses, expected " + hits +
+            " and " + misses);
+      }
+   }
+
+   /**
+    * Checks that cache hits return the same values as a fresh computation,
+    * and that changing the basis functions causes the entries to be
+    * recomputed.
+    */
+   public void testHitsAndBasisChange() {
+      int npnts = 50;
+      ArrayList<MFreeNode3d> nodes = createNodes (5, 0.6);
+      AABBTree tree = createNodeTree (nodes);
+      MFreeModel3d model = new MFreeModel3d();
+      model.addNodes (nodes);
+      MFreeShapeFunctionCache cache = model.getShapeFunctionCache();
+      cache.clear();
+
+      CubaturePoint3d[] cpnts = createPoints (npnts);
+      MFreeIntegrationPoint3d[] fresh =
+         MFreeFactory.createIntegrationPoints (cpnts, tree);
+      MFreeIntegrationPoint3d[] ipnts =
+         MFreeFactory.createIntegrationPoints (cpnts, tree, cache);
+      checkCounts (cache, 0, npnts, "first pass");
+      checkEquals (ipnts, fresh, "first pass");
+      ipnts = MFreeFactory.createIntegrationPoints (cpnts, tree, cache);
+      checkCounts (cache, npnts, npnts, "second pass");
+      checkEquals (ipnts, fresh, "cache hit");
+
+      // switching to a quadratic basis must invalidate every entry
+      for (MFreeNode3d node : nodes) {
+         MLSShapeFunction fun = (MLSShapeFunction)node.getShapeFunction();
+         fun.setBasisFunctions (
+            MLSShapeFunction.getPolynomialBasis (
+               MLSShapeFunction.QUADRATIC_ORDER));
+      }
+      fresh = MFreeFactory.createIntegrationPoints (cpnts, tree);
+      ipnts = MFreeFactory.createIntegrationPoints (cpnts, tree, cache);
+      checkCounts (cache, npnts, 2*npnts, "basis change");
+      checkEquals (ipnts, fresh, "basis change");
+      ipnts = MFreeFactory.createIntegrationPoints (cpnts, tree, cache);
+      checkCounts (cache, 2*npnts, 2*npnts, "after basis change");
+      checkEquals (ipnts, fresh, "cache hit after basis change");
+   }
+
+   /**
+    * Checks that removing a node from the model removes the cache entries
+    * that depend on it.
+    */
+   public void testNodeRemoval() {
+      ArrayList<MFreeNode3d> nodes = createNodes (5, 0.6);
+      AABBTree tree = createNodeTree (nodes);
+      MFreeModel3d model = new MFreeModel3d();
+      model.addNodes (nodes);
+      MFreeShapeFunctionCache cache = model.getShapeFunctionCache();
+
+      CubaturePoint3d[] cpnts = createPoints (10);
+      MFreeIntegrationPoint3d[] ipnts =
+         MFreeFactory.createIntegrationPoints (cpnts, tree, cache);
+      ArrayList<MFreeNode3d> deps = ipnts[0].getDependentNodes();
+      VectorNd coords = new VectorNd();
+      ArrayList<Vector3d> grads = new ArrayList<Vector3d>();
+      if (!cache.get (coords, grads, cpnts[0], deps)) {
+         throw new TestException ("entry not found before node removal");
+      }
+      model.removeNode (deps.get(0));
+      if (cache.get (coords, grads, cpnts[0], deps)) {
+         throw new TestException ("entry found after node removal");
+      }
+   }
+
+   public void test() {
+      testHitsAndBasisChange();
+      testNodeRemoval();
+   }
+
+   public static void main (String[] args) {
+      MFreeShapeFunctionCacheTest tester = new MFreeShapeFunctionCacheTest();
+      RandomGenerator.setSeed (0x1234);
+      tester.runtest();
+   }
+
+}
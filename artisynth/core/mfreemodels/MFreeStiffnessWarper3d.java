@@ -165,6 +165,17 @@ public class MFreeStiffnessWarper3d {
    }
    
    public void addNodeStiffness (FemNodeNeighbor nbr, boolean [][] active, int i, int j, boolean warping) {
+      addNodeStiffness (nbr, active, i, j, warping, A);
+   }
+
+   /**
+    * Version of {@link #addNodeStiffness(FemNodeNeighbor,boolean[][],int,int,
+    * boolean)} that uses caller-supplied temporary storage, so that
+    * different stiffness blocks may be computed concurrently.
+    */
+   public void addNodeStiffness (
+      FemNodeNeighbor nbr, boolean [][] active, int i, int j, boolean warping,
+      Matrix3d A) {
       
       if (active[i][j]) {
          if (warping) {
@@ -190,6 +201,18 @@ public class MFreeStiffnessWarper3d {
 
    public void addNodeForce (
       Vector3d f, boolean[][] active, int i, MFreeNode3d[] nodes, boolean warping, FemNodeNeighbor[] nbr) {
+      addNodeForce (f, active, i, nodes, warping, tmp, pos);
+   }
+
+   /**
+    * Version of {@link #addNodeForce(Vector3d,boolean[][],int,MFreeNode3d[],
+    * boolean,FemNodeNeighbor[])} that uses caller-supplied temporary
+    * storage, so that the forces for different nodes may be computed
+    * concurrently.
+    */
+   public void addNodeForce (
+      Vector3d f, boolean[][] active, int i, MFreeNode3d[] nodes,
+      boolean warping, Vector3d tmp, Vector3d pos) {
 
       if (warping) {
          tmp.setZero();
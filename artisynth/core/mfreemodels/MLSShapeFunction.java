@@ -59,6 +59,10 @@ public class MLSShapeFunction extends MFreeShapeFunction {
       nBasis = functions.length;
    }
    
+   public DifferentiableFunction3x1[] getBasisFunctions() {
+      return myBasisFunctions;
+   }
+   
    public static DifferentiableFunction3x1[] getPolynomialBasis(int order) {
       
       int order3 = (order+1)*(order+2)*(order+3)/6;
@@ -454,10 +458,80 @@ public class MLSShapeFunction extends MFreeShapeFunction {
    public double evalDerivative(double x, double y, double z, int dx, int dy,
       int dz) {
       Point3d in = new Point3d(x,y,z);
-      int derivatives[] = new int[]{dx,dy,dz}; 
+      int derivatives[] = new int[]{dx,dy,dz};
       return evalDerivative(in, derivatives);
    }
 
+   /**
+    * Evaluates the shape functions of all nodes in <code>nodeList</code> at
+    * a given point, and optionally their gradients. The values are the same
+    * as those given by {@link #eval(Point3d,MatrixNd,ArrayList)} and {@link
+    * #evalDerivative(Point3d,int[],MatrixNd,ArrayList)} for each node, but
+    * the moment matrix inverse and its derivatives are computed only once,
+    * rather than once per node and derivative. All nodes are assumed to use
+    * the same basis functions as this shape function.
+    *
+    * @param vals returns the shape function values, one per node
+    * @param grads if non-null, returns the shape function gradients,
+    * stored as three consecutive values per node
+    * @param pnt point at which to evaluate the shape functions
+    * @param nodeList nodes whose shape functions should be evaluated
+    * @return condition number of the moment matrix
+    */
+   public double evalAll(double[] vals, double[] grads, Point3d pnt,
+      ArrayList<MFreeNode3d> nodeList) {
+
+      MatrixNd MInv = new MatrixNd(nBasis,nBasis);
+      double cond = computeMInv(MInv, pnt, nodeList);
+
+      VectorNd p = new VectorNd(nBasis);
+      VectorNd pTMInv = new VectorNd(nBasis);
+      computeP(p, pnt.x, pnt.y, pnt.z);
+      pTMInv.mulTranspose(MInv, p);
+
+      // point-dependent terms of the first derivatives
+      VectorNd[] pkTMInv = null;
+      VectorNd[] pTDMInv = null;
+      if (grads != null) {
+         pkTMInv = new VectorNd[3];
+         pTDMInv = new VectorNd[3];
+         MatrixNd DMInv = new MatrixNd(nBasis, nBasis);
+         VectorNd pk = new VectorNd(nBasis);
+         for (int k=0; k<3; k++) {
+            computeDMInv(DMInv, k, MInv, pnt, nodeList);
+            computeDP(pk, pnt.x, pnt.y, pnt.z, k==0?1:0, k==1?1:0, k==2?1:0);
+            pkTMInv[k] = new VectorNd(nBasis);
+            pkTMInv[k].mulTranspose(MInv, pk);
+            pTDMInv[k] = new VectorNd(nBasis);
+            pTDMInv[k].mulTranspose(DMInv, p);
+         }
+      }
+
+      VectorNd pi = new VectorNd(nBasis);
+      int[] derivatives = new int[3];
+      for (int i=0; i<nodeList.size(); i++) {
+         MFreeNode3d node = nodeList.get(i);
+         MFreeWeightFunction fun = node.getWeightFunction();
+         Point3d xi = node.getRestPosition();
+         computeP(pi, xi.x, xi.y, xi.z);
+         double w = fun.eval(pnt);
+         double ppi = pTMInv.dot(pi);
+         vals[i] = w*ppi;
+         if (grads != null) {
+            for (int k=0; k<3; k++) {
+               derivatives[k] = 1;
+               double wk = fun.evalDerivative(pnt, derivatives);
+               derivatives[k] = 0;
+               double out = w*pkTMInv[k].dot(pi);
+               out += w*pTDMInv[k].dot(pi);
+               out += wk*ppi;
+               grads[3*i+k] = out;
+            }
+         }
+      }
+      return cond;
+   }
+
    @Override
    public MFreeShapeFunctionType getType() {
       return MFreeShapeFunctionType.MLS;
@@ -136,7 +136,6 @@ public class CompositeState implements ComponentState {
       dos.writeInt (myStates.size());
       for (ComponentState substate : myStates) {
          writeString (dos, substate.getClass().getName());
-         System.out.println ("writing " + substate.getClass().getName());
          substate.writeBinary (dos);
       }
    }
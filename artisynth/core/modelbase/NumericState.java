@@ -9,6 +9,7 @@ package artisynth.core.modelbase;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 import maspack.matrix.*;
 import maspack.util.DataBuffer;
@@ -29,31 +30,33 @@ public class NumericState extends DataBuffer implements ComponentState {
    }
 
    public void writeBinary (DataOutputStream dos) throws IOException {
+      // values are transferred in bulk, using the same big-endian layout
+      // as DataOutputStream.writeInt() and writeDouble()
       int zsize = zsize();
-      int[] zbuf = zbuffer();
       dos.writeInt (zsize);
-      for (int i=0; i<zsize; i++) {
-         dos.writeInt (zbuf[i]);
-      }
+      ByteBuffer buf = ByteBuffer.allocate (4*zsize);
+      buf.asIntBuffer().put (zbuffer(), 0, zsize);
+      dos.write (buf.array(), 0, 4*zsize);
       int dsize = dsize();
-      double[] dbuf = dbuffer();
       dos.writeInt (dsize);
-      for (int i=0; i<dsize; i++) {
-         dos.writeDouble (dbuf[i]);
-      }  
+      buf = ByteBuffer.allocate (8*dsize);
+      buf.asDoubleBuffer().put (dbuffer(), 0, dsize);
+      dos.write (buf.array(), 0, 8*dsize);
    }
 
    public void readBinary (DataInputStream dis) throws IOException {
       int zsize = dis.readInt();
-      zEnsureCapacity (zsize()+zsize);
-      for (int i=0; i<zsize; i++) {
-         zput (dis.readInt());
-      }
+      byte[] bytes = new byte[4*zsize];
+      dis.readFully (bytes);
+      int zoff = zsize();
+      zsetSize (zoff+zsize);
+      ByteBuffer.wrap(bytes).asIntBuffer().get (zbuffer(), zoff, zsize);
       int dsize = dis.readInt();
-      dEnsureCapacity (dsize()+dsize);
-      for (int i=0; i<dsize; i++) {
-         dput (dis.readDouble());
-      }
+      bytes = new byte[8*dsize];
+      dis.readFully (bytes);
+      int doff = dsize();
+      dsetSize (doff+dsize);
+      ByteBuffer.wrap(bytes).asDoubleBuffer().get (dbuffer(), doff, dsize);
    }
 
    public void set (NumericState state) {
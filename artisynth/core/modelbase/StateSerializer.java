@@ -0,0 +1,555 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package artisynth.core.modelbase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import maspack.util.LZ4Codec;
+
+/**
+ * Writes and reads component states to and from NIO channels in a compact
+ * binary form, for use in checkpointing. Unlike {@link
+ * ComponentState#writeBinary}, which writes each value individually, the
+ * double and integer buffers of all the {@link NumericState}s within a state
+ * are gathered and transferred in bulk. The data can optionally be
+ * compressed using {@link LZ4Codec}, after the bytes of each value have been
+ * shuffled so that bytes of the same significance are adjacent.
+ *
+ * <p>The output consists of a fixed header, a layout section describing the
+ * structure of the state, and a data section. All values are little-endian:
+ * <pre>
+ * header:
+ *    int    MAGIC
+ *    int    VERSION
+ *    int    flags (COMPRESSED)
+ *    int    layout length in bytes
+ *    int    total number of doubles
+ *    int    total number of integers
+ *
+ * layout, in depth-first order, for each state:
+ *    byte   COMPOSITE, followed by the number of sub-states (int)
+ *    byte   NUMERIC, followed by the class name, double size, integer
+ *           size, double offset and integer offset (ints)
+ *    byte   OTHER, followed by the class name and the length (int) and
+ *           bytes of the state's writeBinary output
+ *    byte   NULL
+ *
+ * data, uncompressed:
+ *    all doubles, followed by all integers
+ *
+ * data, compressed, as a sequence of blocks:
+ *    int    raw length
+ *    int    compressed length, or 0 if the block is stored raw
+ *    bytes  block data
+ * </pre>
+ * Class names are written as a short length followed by UTF-8 bytes. As with
+ * {@link ComponentState#writeBinary}, the Object buffers of NumericStates
+ * are not written.
+ */
+public class StateSerializer {
+
+   public static final int MAGIC = 0x53545341; // "ASTS"
+   public static final int VERSION = 1;
+   public static final int COMPRESSED = 0x1;
+
+   private static final int HEADER_SIZE = 24;
+   private static final int BLOCK_SIZE = (1 << 20);
+
+   private static final byte COMPOSITE = 1;
+   private static final byte NUMERIC = 2;
+   private static final byte OTHER = 3;
+   private static final byte NULL = 4;
+
+   private boolean myCompressP = false;
+   private LZ4Codec myCodec;
+
+   // reusable buffers
+   private ByteBuffer myLayout;
+   private ByteBuffer myData;
+   private byte[] myShuffled = new byte[0];
+   private byte[] myBlock = new byte[0];
+
+   public StateSerializer() {
+      this (false);
+   }
+
+   public StateSerializer (boolean compress) {
+      setCompression (compress);
+   }
+
+   /**
+    * Returns <code>true</code> if data is compressed when written.
+    *
+    * @return <code>true</code> if compression is enabled
+    */
+   public boolean getCompression() {
+      return myCompressP;
+   }
+
+   /**
+    * Enables or disables compression of written data. Compressed data is
+    * detected automatically when reading.
+    *
+    * @param enable if <code>true</code>, enables compression
+    */
+   public void setCompression (boolean enable) {
+      myCompressP = enable;
+   }
+
+   private static ByteBuffer allocate (int size) {
+      ByteBuffer buf = ByteBuffer.allocate (size);
+      buf.order (ByteOrder.LITTLE_ENDIAN);
+      return buf;
+   }
+
+   private ByteBuffer ensureLayoutCapacity (int extra) {
+      if (myLayout == null) {
+         myLayout = allocate (Math.max (1024, extra));
+      }
+      else if (myLayout.remaining() < extra) {
+         ByteBuffer buf = allocate (
+            Math.max (2*myLayout.capacity(), myLayout.position()+extra));
+         myLayout.flip();
+         buf.put (myLayout);
+         myLayout = buf;
+      }
+      return myLayout;
+   }
+
+   private ByteBuffer ensureDataCapacity (int size) {
+      if (myData == null || myData.capacity() < size) {
+         myData = allocate (size);
+      }
+      myData.clear();
+      myData.limit (size);
+      return myData;
+   }
+
+   private void putString (String str) {
+      byte[] bytes = str.getBytes (StandardCharsets.UTF_8);
+      ensureLayoutCapacity (2+bytes.length);
+      myLayout.putShort ((short)bytes.length);
+      myLayout.put (bytes);
+   }
+
+   private String getString (ByteBuffer buf) {
+      byte[] bytes = new byte[buf.getShort() & 0xffff];
+      buf.get (bytes);
+      return new String (bytes, StandardCharsets.UTF_8);
+   }
+
+   /**
+    * Writes the layout for a state and collects its NumericStates.
+    */
+   private void writeLayout (
+      ComponentState state, ArrayList<NumericState> leaves)
+      throws IOException {
+      if (state == null) {
+         ensureLayoutCapacity (1).put (NULL);
+      }
+      else if (state instanceof CompositeState) {
+         CompositeState cstate = (CompositeState)state;
+         ensureLayoutCapacity (5);
+         myLayout.put (COMPOSITE);
+         myLayout.putInt (cstate.numSubStates());
+         Iterator<ComponentState> it = cstate.getStates();
+         while (it.hasNext()) {
+            writeLayout (it.next(), leaves);
+         }
+      }
+      else if (state instanceof NumericState) {
+         NumericState nstate = (NumericState)state;
+         ensureLayoutCapacity (1).put (NUMERIC);
+         putString (nstate.getClass().getName());
+         ensureLayoutCapacity (16);
+         myLayout.putInt (nstate.dsize());
+         myLayout.putInt (nstate.zsize());
+         myLayout.putInt (nstate.doffset());
+         myLayout.putInt (nstate.zoffset());
+         leaves.add (nstate);
+      }
+      else {
+         ensureLayoutCapacity (1).put (OTHER);
+         putString (state.getClass().getName());
+         ByteArrayOutputStream bos = new ByteArrayOutputStream();
+         DataOutputStream dos = new DataOutputStream (bos);
+         state.writeBinary (dos);
+         dos.close();
+         byte[] bytes = bos.toByteArray();
+         ensureLayoutCapacity (4+bytes.length);
+         myLayout.putInt (bytes.length);
+         myLayout.put (bytes);
+      }
+   }
+
+   private static ComponentState newInstance (String className)
+      throws IOException {
+      Object obj;
+      try {
+         obj = Class.forName (className).getDeclaredConstructor().newInstance();
+      }
+      catch (NoSuchMethodException e) {
+         throw new IOException (
+            "Class "+className+" has no no-argument constructor", e);
+      }
+      catch (InvocationTargetException e) {
+         throw new IOException (
+            "Constructor for class "+className+" threw an exception",
+            e.getCause());
+      }
+      catch (ReflectiveOperationException e) {
+         throw new IOException (
+            "Class "+className+" cannot be instantiated", e);
+      }
+      if (!(obj instanceof ComponentState)) {
+         throw new IOException (
+            "Class "+className+" is not a ComponentState");
+      }
+      return (ComponentState)obj;
+   }
+
+   /**
+    * Creates a state from its layout and collects its NumericStates, whose
+    * double and integer buffers are sized but not yet filled.
+    */
+   private ComponentState readLayout (
+      ByteBuffer buf, ArrayList<NumericState> leaves) throws IOException {
+      byte type = buf.get();
+      switch (type) {
+         case NULL: {
+            return null;
+         }
+         case COMPOSITE: {
+            int numSub = buf.getInt();
+            CompositeState cstate = new CompositeState (numSub);
+            for (int i=0; i<numSub; i++) {
+               cstate.addState (readLayout (buf, leaves));
+            }
+            return cstate;
+         }
+         case NUMERIC: {
+            ComponentState state = newInstance (getString (buf));
+            if (!(state instanceof NumericState)) {
+               throw new IOException (
+                  state.getClass().getName()+" is not a NumericState");
+            }
+            NumericState nstate = (NumericState)state;
+            nstate.dsetSize (buf.getInt());
+            nstate.zsetSize (buf.getInt());
+            nstate.dsetOffset (buf.getInt());
+            nstate.zsetOffset (buf.getInt());
+            leaves.add (nstate);
+            return nstate;
+         }
+         case OTHER: {
+            ComponentState state = newInstance (getString (buf));
+            byte[] bytes = new byte[buf.getInt()];
+            buf.get (bytes);
+            state.readBinary (
+               new DataInputStream (new ByteArrayInputStream (bytes)));
+            return state;
+         }
+         default: {
+            throw new IOException ("unknown state type " + type);
+         }
+      }
+   }
+
+   private static void writeFully (WritableByteChannel ch, ByteBuffer buf)
+      throws IOException {
+      while (buf.hasRemaining()) {
+         ch.write (buf);
+      }
+   }
+
+   private static void readFully (ReadableByteChannel ch, ByteBuffer buf)
+      throws IOException {
+      while (buf.hasRemaining()) {
+         if (ch.read (buf) < 0) {
+            throw new EOFException ("unexpected end of state data");
+         }
+      }
+   }
+
+   /**
+    * Rearranges the bytes of each value so that bytes of equal significance
+    * are stored contiguously, or reverses this rearrangement.
+    */
+   private static void shuffle (
+      byte[] src, int soff, byte[] dst, int doff,
+      int num, int width, boolean inverse) {
+      for (int b=0; b<width; b++) {
+         int si = soff + b;
+         int di = doff + b*num;
+         if (inverse) {
+            for (int i=0; i<num; i++) {
+               dst[si+i*width] = src[di+i];
+            }
+         }
+         else {
+            for (int i=0; i<num; i++) {
+               dst[di+i] = src[si+i*width];
+            }
+         }
+      }
+   }
+
+   /**
+    * Writes a state to a channel.
+    *
+    * @param ch channel to write to
+    * @param state state to write
+    * @throws IOException if an I/O error occurs
+    */
+   public void write (WritableByteChannel ch, ComponentState state)
+      throws IOException {
+      ArrayList<NumericState> leaves = new ArrayList<NumericState>();
+      ensureLayoutCapacity (0).clear();
+      writeLayout (state, leaves);
+      myLayout.flip();
+
+      long numd = 0;
+      long numz = 0;
+      for (NumericState leaf : leaves) {
+         numd += leaf.dsize();
+         numz += leaf.zsize();
+      }
+      long dataSize = 8*numd + 4*numz;
+      if (dataSize > Integer.MAX_VALUE-64) {
+         throw new IOException ("state too large to serialize");
+      }
+      ByteBuffer data = ensureDataCapacity ((int)dataSize);
+      for (NumericState leaf : leaves) {
+         data.asDoubleBuffer().put (leaf.dbuffer(), 0, leaf.dsize());
+         data.position (data.position() + 8*leaf.dsize());
+      }
+      for (NumericState leaf : leaves) {
+         data.asIntBuffer().put (leaf.zbuffer(), 0, leaf.zsize());
+         data.position (data.position() + 4*leaf.zsize());
+      }
+      data.flip();
+
+      ByteBuffer header = allocate (HEADER_SIZE);
+      header.putInt (MAGIC);
+      header.putInt (VERSION);
+      header.putInt (myCompressP ? COMPRESSED : 0);
+      header.putInt (myLayout.remaining());
+      header.putInt ((int)numd);
+      header.putInt ((int)numz);
+      header.flip();
+      writeFully (ch, header);
+      writeFully (ch, myLayout);
+      if (!myCompressP) {
+         writeFully (ch, data);
+      }
+      else {
+         writeCompressed (ch, data.array(), (int)numd, (int)numz);
+      }
+   }
+
+   private void writeCompressed (
+      WritableByteChannel ch, byte[] data, int numd, int numz)
+      throws IOException {
+      int size = 8*numd + 4*numz;
+      if (myShuffled.length < size) {
+         myShuffled = new byte[size];
+      }
+      shuffle (data, 0, myShuffled, 0, numd, 8, /*inverse=*/false);
+      shuffle (data, 8*numd, myShuffled, 8*numd, numz, 4, /*inverse=*/false);
+      if (myCodec == null) {
+         myCodec = new LZ4Codec();
+      }
+      int maxlen = 8 + LZ4Codec.maxCompressedLength (BLOCK_SIZE);
+      if (myBlock.length < maxlen) {
+         myBlock = new byte[maxlen];
+      }
+      ByteBuffer block = ByteBuffer.wrap (myBlock);
+      block.order (ByteOrder.LITTLE_ENDIAN);
+      for (int off=0; off<size; off+=BLOCK_SIZE) {
+         int rawLen = Math.min (BLOCK_SIZE, size-off);
+         int compLen = myCodec.compress (myShuffled, off, rawLen, myBlock, 8);
+         block.clear();
+         block.putInt (rawLen);
+         if (compLen < rawLen) {
+            block.putInt (compLen);
+            block.limit (8+compLen);
+         }
+         else {
+            // incompressible, so store the block raw
+            block.putInt (0);
+            System.arraycopy (myShuffled, off, myBlock, 8, rawLen);
+            block.limit (8+rawLen);
+         }
+         block.position (0);
+         writeFully (ch, block);
+      }
+   }
+
+   private void readCompressed (
+      ReadableByteChannel ch, byte[] data, int numd, int numz)
+      throws IOException {
+      int size = 8*numd + 4*numz;
+      if (myShuffled.length < size) {
+         myShuffled = new byte[size];
+      }
+      ByteBuffer lens = allocate (8);
+      int off = 0;
+      while (off < size) {
+         lens.clear();
+         readFully (ch, lens);
+         lens.flip();
+         int rawLen = lens.getInt();
+         int compLen = lens.getInt();
+         if (rawLen <= 0 || off+rawLen > size ||
+             compLen < 0 || compLen > LZ4Codec.maxCompressedLength (rawLen)) {
+            throw new IOException ("corrupted compressed state data");
+         }
+         if (compLen == 0) {
+            readFully (ch, ByteBuffer.wrap (myShuffled, off, rawLen));
+         }
+         else {
+            if (myBlock.length < compLen) {
+               myBlock = new byte[Math.max (
+                  compLen, LZ4Codec.maxCompressedLength (BLOCK_SIZE))];
+            }
+            readFully (ch, ByteBuffer.wrap (myBlock, 0, compLen));
+            try {
+               LZ4Codec.decompress (
+                  myBlock, 0, compLen, myShuffled, off, rawLen);
+            }
+            catch (IllegalArgumentException e) {
+               throw new IOException (
+                  "corrupted compressed state data: " + e.getMessage());
+            }
+         }
+         off += rawLen;
+      }
+      shuffle (myShuffled, 0, data, 0, numd, 8, /*inverse=*/true);
+      shuffle (myShuffled, 8*numd, data, 8*numd, numz, 4, /*inverse=*/true);
+   }
+
+   /**
+    * Reads a state from a channel. The returned state has the same
+    * structure and class types as the state that was written.
+    *
+    * @param ch channel to read from
+    * @return state that was read
+    * @throws IOException if an I/O or format error occurs
+    */
+   public ComponentState read (ReadableByteChannel ch) throws IOException {
+      ByteBuffer header = allocate (HEADER_SIZE);
+      readFully (ch, header);
+      header.flip();
+      if (header.getInt() != MAGIC) {
+         throw new IOException ("not a serialized state");
+      }
+      int version = header.getInt();
+      if (version > VERSION) {
+         throw new IOException ("unsupported state version " + version);
+      }
+      int flags = header.getInt();
+      int layoutLen = header.getInt();
+      int numd = header.getInt();
+      int numz = header.getInt();
+      if (layoutLen < 0 || numd < 0 || numz < 0 ||
+          8L*numd + 4L*numz > Integer.MAX_VALUE-64) {
+         throw new IOException ("corrupted state header");
+      }
+      ByteBuffer layout = allocate (layoutLen);
+      readFully (ch, layout);
+      layout.flip();
+      ArrayList<NumericState> leaves = new ArrayList<NumericState>();
+      ComponentState state;
+      try {
+         state = readLayout (layout, leaves);
+      }
+      catch (RuntimeException e) {
+         throw new IOException ("corrupted state layout: " + e);
+      }
+      long checkd = 0;
+      long checkz = 0;
+      for (NumericState leaf : leaves) {
+         checkd += leaf.dsize();
+         checkz += leaf.zsize();
+      }
+      if (checkd != numd || checkz != numz) {
+         throw new IOException ("state layout inconsistent with header");
+      }
+
+      ByteBuffer data = ensureDataCapacity (8*numd + 4*numz);
+      if ((flags & COMPRESSED) != 0) {
+         readCompressed (ch, data.array(), numd, numz);
+      }
+      else {
+         readFully (ch, data);
+         data.flip();
+      }
+      data.position (0);
+      for (NumericState leaf : leaves) {
+         data.asDoubleBuffer().get (leaf.dbuffer(), 0, leaf.dsize());
+         data.position (data.position() + 8*leaf.dsize());
+      }
+      for (NumericState leaf : leaves) {
+         data.asIntBuffer().get (leaf.zbuffer(), 0, leaf.zsize());
+         data.position (data.position() + 4*leaf.zsize());
+      }
+      return state;
+   }
+
+   /**
+    * Writes a state to a file.
+    *
+    * @param file file to write to
+    * @param state state to write
+    * @throws IOException if an I/O error occurs
+    */
+   public void write (File file, ComponentState state) throws IOException {
+      FileOutputStream fos = new FileOutputStream (file);
+      try {
+         FileChannel ch = fos.getChannel();
+         write (ch, state);
+         ch.truncate (ch.position());
+      }
+      finally {
+         fos.close();
+      }
+   }
+
+   /**
+    * Reads a state from a file.
+    *
+    * @param file file to read from
+    * @return state that was read
+    * @throws IOException if an I/O or format error occurs
+    */
+   public ComponentState read (File file) throws IOException {
+      FileInputStream fis = new FileInputStream (file);
+      try {
+         return read (fis.getChannel());
+      }
+      finally {
+         fis.close();
+      }
+   }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package artisynth.core.modelbase;
+
+import maspack.util.*;
+import java.io.*;
+import java.nio.channels.Channels;
+
+public class StateSerializerTest extends UnitTest {
+
+   NumericState createNumericState (int dsize, int zsize) {
+      NumericState state = new NumericState();
+      double val = RandomGenerator.nextDouble (-1, 1);
+      for (int i=0; i<dsize; i++) {
+         // slowly varying values, with some zeros, similar to a model state
+         val += 1e-3*RandomGenerator.nextDouble (-1, 1);
+         state.dput (i%7 == 0 ? 0 : val);
+      }
+      for (int i=0; i<zsize; i++) {
+         state.zput (RandomGenerator.nextInt (-5, 100));
+      }
+      if (dsize > 0) {
+         state.dsetOffset (dsize/2);
+      }
+      return state;
+   }
+
+   CompositeState createState (int size) {
+      CompositeState state = new CompositeState();
+      state.addState (createNumericState (size, 10));
+      state.addState (new EmptyState());
+      CompositeState sub = new CompositeState();
+      sub.addState (createNumericState (0, 3));
+      sub.addState (createNumericState (size/3, 0));
+      sub.addState (new CompositeState());
+      state.addState (sub);
+      state.addState (createNumericState (5, 5));
+      return state;
+   }
+
+   void checkState (ComponentState state, ComponentState check) {
+      if (!check.equals (state)) {
+         throw new TestException ("restored state differs from original");
+      }
+      if (check instanceof CompositeState) {
+         CompositeState ccheck = (CompositeState)check;
+         CompositeState cstate = (CompositeState)state;
+         for (int i=0; i<ccheck.numSubStates(); i++) {
+            checkState (cstate.getState(i), ccheck.getState(i));
+         }
+      }
+      else if (check instanceof NumericState) {
+         checkEquals ("doffset",
+            ((NumericState)state).doffset(), ((NumericState)check).doffset());
+      }
+   }
+
+   void testRoundTrip (CompositeState state, boolean compress)
+      throws IOException {
+      StateSerializer serializer = new StateSerializer (compress);
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      serializer.write (Channels.newChannel (bos), state);
+      serializer.write (Channels.newChannel (bos), state);
+      ByteArrayInputStream bis = new ByteArrayInputStream (bos.toByteArray());
+      checkState (serializer.read (Channels.newChannel (bis)), state);
+      // use a new serializer to check that buffer reuse doesn't matter
+      serializer = new StateSerializer();
+      checkState (serializer.read (Channels.newChannel (bis)), state);
+   }
+
+   void testBinaryStreams (CompositeState state) throws IOException {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      DataOutputStream dos = new DataOutputStream (bos);
+      state.writeBinary (dos);
+      dos.close();
+      DataInputStream dis =
+         new DataInputStream (new ByteArrayInputStream (bos.toByteArray()));
+      CompositeState check = new CompositeState();
+      check.readBinary (dis);
+      if (!check.equals (state)) {
+         throw new TestException ("readBinary state differs from original");
+      }
+   }
+
+   public void test() throws IOException {
+      for (int size : new int[] { 0, 1, 100, 400000 }) {
+         CompositeState state = createState (size);
+         testRoundTrip (state, false);
+         testRoundTrip (state, true);
+         testBinaryStreams (state);
+      }
+   }
+
+   public static void main (String[] args) {
+      StateSerializerTest tester = new StateSerializerTest();
+      RandomGenerator.setSeed (0x1234);
+      tester.runtest();
+   }
+}
@@ -9,12 +9,14 @@ package artisynth.core.probes;
 import java.io.*;
 import java.util.*;
 
+import maspack.interpolation.BinaryNumericListReader;
 import maspack.interpolation.Interpolation;
 import maspack.interpolation.NumericList;
 import maspack.interpolation.NumericListKnot;
 import maspack.interpolation.Interpolation.Order;
 import maspack.matrix.VectorNd;
 import maspack.properties.NumericConverter;
+import maspack.properties.NumericPropertyAccessor;
 import maspack.properties.Property;
 import maspack.properties.PropertyList;
 import maspack.util.*;
@@ -270,6 +272,17 @@ public class NumericInputProbe extends NumericProbeBase
     * <p>
     * The character '#' is a comment character, causing all subsequent input up
     * to the next new line to be ignored.
+    *
+    * <p>
+    * The file may also be a binary file produced by a {@link
+    * NumericOutputProbe} in streaming mode (see {@link
+    * NumericOutputProbe#setStreamingOutput}), in which case it is read
+    * using a {@link BinaryNumericListReader}. The vector size stored in
+    * the file must match that of the probe. The file is read one chunk at a
+    * time, but since the probe interpolates from an in-memory numeric list,
+    * all the knots are still loaded into memory. Applications that need to
+    * access very large files without loading them completely should use a
+    * {@link BinaryNumericListReader} directly.
     * 
     * @param file
     * File from which to read the probe information
@@ -281,6 +294,10 @@ public class NumericInputProbe extends NumericProbeBase
     */
    public void read (File file, boolean setTimes) throws IOException {
       // myAttachedFile = null;
+      if (BinaryNumericListReader.isBinaryFile (file)) {
+         readBinary (file, setTimes);
+         return;
+      }
       ReaderTokenizer rtok =
          new ReaderTokenizer (new BufferedReader (new FileReader (file)));
       rtok.commentChar ('#');
@@ -349,6 +366,36 @@ public class NumericInputProbe extends NumericProbeBase
       addData (rtok, timeStep);
    }
 
+   /**
+    * Reads data from a binary file produced by a streaming output probe.
+    * Chunks are mapped one at a time by the reader, but every knot is
+    * copied into the probe's numeric list.
+    */
+   private void readBinary (File file, boolean setTimes) throws IOException {
+      BinaryNumericListReader reader = new BinaryNumericListReader (file);
+      try {
+         if (reader.getVectorSize() != myVsize) {
+            throw new IOException (
+               "file has vector size "+reader.getVectorSize()+
+               ", expecting "+myVsize);
+         }
+         if (setTimes) {
+            setStartTime (reader.getStartTime());
+            setStopTime (reader.getStopTime());
+            setScale (reader.getScale());
+         }
+         myNumericList = new NumericList (myVsize);
+         if (reader.getInterpolationOrder() != null) {
+            myInterpolation.setOrder (reader.getInterpolationOrder());
+         }
+         myNumericList.setInterpolation (myInterpolation);
+         reader.read (myNumericList);
+      }
+      finally {
+         reader.close();
+      }
+   }
+
    /**
     * Writes the start and stop times, scale value, and data for this probe to a
     * PrintWriter, using the format described for {@link #read(File,boolean)
@@ -596,11 +643,11 @@ public class NumericInputProbe extends NumericProbeBase
          k += var.getDimension();
       }
       updateJythonVariables (myVariables, tloc);
+      NumericPropertyAccessor accessor = getPropertyAccessor();
       for (int i = 0; i < myDrivers.size(); i++) {
          NumericProbeDriver driver = myDrivers.get (i);
-         double[] vals = driver.eval (myVariables, myJythonLocals);
-         Object valObj = myConverters[i].arrayToObject (vals);
-         myPropList.get (i).set (valObj);
+         double[] vals = driver.eval (myVariables, tloc, myJythonLocals);
+         accessor.setValue (i, vals, 0);
       }
    }
    
@@ -626,9 +673,10 @@ public class NumericInputProbe extends NumericProbeBase
       nstate.resetOffsets();
       nstate.dEnsureCapacity (myVsize);
       if (myVsize > 0) {
+         NumericPropertyAccessor accessor = getPropertyAccessor();
          for (int i=0; i<myPropList.size(); i++) {
-            Object obj = myPropList.get (i).get();
-            double[] vals = myConverters[i].objectToArray (obj);
+            double[] vals = new double[accessor.getDimension (i)];
+            accessor.getValue (i, vals, 0);
             for (int j=0; j<vals.length; j++) {
                nstate.dput (vals[j]);
             }
@@ -653,8 +701,7 @@ public class NumericInputProbe extends NumericProbeBase
             for (int j=0; j<vals.length; j++) {
                vals[j] = nstate.dget();
             }
-            Object valObj = myConverters[i].arrayToObject (vals);
-            myPropList.get (i).set (valObj);        
+            getPropertyAccessor().setValue (i, vals, 0);
          }
       }
    }
@@ -813,6 +860,7 @@ public class NumericInputProbe extends NumericProbeBase
 
    public void scan (ReaderTokenizer rtok, Object ref) throws IOException {
       myPropList = null;
+      myAccessor = null;
       tmpVariableNames = null;
       tmpDriverExpressions = null;
       tmpVariableDimensions = null;
@@ -955,6 +1003,7 @@ public class NumericInputProbe extends NumericProbeBase
 
       myPropList = createPropertyList (props);
       myConverters = newConverters;
+      myAccessor = null;
       // myPropValues = new double[props.length][];
       myVariables = newVariables;
       myDrivers = newDrivers;
@@ -13,10 +13,12 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.*;
 
+import maspack.interpolation.BinaryNumericListWriter;
 import maspack.interpolation.NumericList;
 import maspack.interpolation.NumericListKnot;
 import maspack.matrix.ImproperStateException;
 import maspack.properties.NumericConverter;
+import maspack.properties.NumericPropertyAccessor;
 import maspack.properties.Property;
 import maspack.properties.PropertyList;
 import maspack.util.*;
@@ -32,6 +34,17 @@ public class NumericOutputProbe extends NumericProbeBase
    private boolean myShowHeader;
    private static boolean defaultShowHeader = true;
 
+   private boolean myStreamingOutput;
+   private static boolean defaultStreamingOutput = false;
+
+   private int myStreamingWindow;
+   private static int defaultStreamingWindow = 1000;
+
+   // writer for streaming output, created when the first knot is written
+   private BinaryNumericListWriter myStreamWriter;
+   // number of knots currently held in myNumericList when streaming
+   private int myNumWindowKnots;
+
    public static PropertyList myProps =
       new PropertyList (NumericOutputProbe.class, NumericProbeBase.class);
 
@@ -43,6 +56,14 @@ public class NumericOutputProbe extends NumericProbeBase
       myProps.add (
          "showHeader * *", "show header explicitly in output file",
          defaultShowHeader);
+      myProps.add (
+         "streamingOutput * *",
+         "stream output data to a binary attached file as it is produced",
+         defaultStreamingOutput);
+      myProps.add (
+         "streamingWindow * *",
+         "maximum number of knots kept in memory when streaming",
+         defaultStreamingWindow, "[1,inf]");
    }
 
    public PropertyList getAllPropertyInfo() {
@@ -53,6 +74,8 @@ public class NumericOutputProbe extends NumericProbeBase
       super.setDefaultValues();
       myShowTime = defaultShowTime;
       myShowHeader = defaultShowHeader;
+      myStreamingOutput = defaultStreamingOutput;
+      myStreamingWindow = defaultStreamingWindow;
    }
 
    public boolean getShowTime() {
@@ -71,6 +94,98 @@ public class NumericOutputProbe extends NumericProbeBase
       myShowHeader = enable;
    }
 
+   public boolean getStreamingOutput() {
+      return myStreamingOutput;
+   }
+
+   /**
+    * Enables or disables streaming output. When streaming is enabled, each
+    * knot produced by this probe is written immediately to the attached file
+    * using a {@link BinaryNumericListWriter}, and only the most recent
+    * knots (as specified by the {@link #setStreamingWindow streaming
+    * window}) are kept in memory for display. The file is completed
+    * whenever {@link #save} is called. The resulting file can be read by
+    * {@link NumericInputProbe}.
+    *
+    * @param enable if <code>true</code>, enables streaming output
+    */
+   public void setStreamingOutput (boolean enable) {
+      if (enable != myStreamingOutput) {
+         if (!enable) {
+            closeStreamWriter();
+         }
+         else if (myNumericList != null) {
+            myNumWindowKnots = myNumericList.getNumKnots();
+         }
+         myStreamingOutput = enable;
+      }
+   }
+
+   public int getStreamingWindow() {
+      return myStreamingWindow;
+   }
+
+   /**
+    * Sets the maximum number of knots that are kept in memory when
+    * streaming output is enabled.
+    *
+    * @param num maximum number of knots kept in memory
+    */
+   public void setStreamingWindow (int num) {
+      myStreamingWindow = Math.max (1, num);
+   }
+
+   private void closeStreamWriter() {
+      if (myStreamWriter != null) {
+         try {
+            updateStreamHeader();
+            myStreamWriter.close();
+         }
+         catch (IOException e) {
+            System.out.println (
+               "Error writing file " + myStreamWriter.getFile().getName());
+            e.printStackTrace();
+         }
+         myStreamWriter = null;
+      }
+   }
+
+   private void updateStreamHeader() {
+      myStreamWriter.setHeaderTimes (getStartTime(), getStopTime(), myScale);
+      myStreamWriter.setInterpolationOrder (myInterpolation.getOrder());
+   }
+
+   /**
+    * Writes a knot to the attached file when streaming is enabled, creating
+    * the writer if necessary. Returns <code>false</code> if the knot could
+    * not be written.
+    */
+   private boolean writeStreamKnot (NumericListKnot knot) {
+      File file = getAttachedFile();
+      if (file == null || file.isDirectory()) {
+         return false;
+      }
+      try {
+         if (myStreamWriter == null) {
+            if (isAttachedFileRelative()) {
+               file.getParentFile().mkdirs();
+            }
+            myStreamWriter = new BinaryNumericListWriter (file, myVsize);
+            updateStreamHeader();
+         }
+         myStreamWriter.add (knot);
+         return true;
+      }
+      catch (IOException e) {
+         System.out.println ("Error writing file " + file.getName());
+         e.printStackTrace();
+         // disable streaming so that the error is not repeated
+         closeStreamWriter();
+         myStreamingOutput = false;
+         return false;
+      }
+   }
+
    public NumericOutputProbe() {
       setDefaultValues();
       myPlotTraceManager = new PlotTraceManager ("output");
@@ -174,6 +289,11 @@ public class NumericOutputProbe extends NumericProbeBase
       writeData (pw, fmtStr, showTime);
    }
 
+   public void setAttachedFileName (String fileName) {
+      closeStreamWriter();
+      super.setAttachedFileName (fileName);
+   }
+
    public void setAttachedFileName (String fileName, String fmtStr) {
       setAttachedFileName (fileName);
       setFormat (fmtStr);
@@ -189,11 +309,20 @@ public class NumericOutputProbe extends NumericProbeBase
 
    /**
     * When called (perhaps by the Artsynth timeline), causes information about
-    * this probe to be written to its attached file.
+    * this probe to be written to its attached file. If streaming output is
+    * enabled, the knots have already been written, and the file is instead
+    * completed by flushing the stream.
     * 
     * @see #write
     */
    public void save() throws IOException {
+      if (myStreamingOutput) {
+         if (myStreamWriter != null) {
+            updateStreamHeader();
+            myStreamWriter.flush();
+         }
+         return;
+      }
       File file = getAttachedFile();
       if (file != null && !file.isDirectory ()) {
          try {
@@ -247,24 +376,38 @@ public class NumericOutputProbe extends NumericProbeBase
       double tloc = (t-getStartTime())/myScale;
 
       NumericListKnot knot = new NumericListKnot (myVsize);
+      NumericPropertyAccessor accessor = getPropertyAccessor();
       int i = 0;
       for (NumericProbeVariable var : myVariables.values()) {
-         Object obj = myPropList.get (i).get();
-         var.setValues (myConverters[i].objectToArray (obj));
+         accessor.getValue (i, var.getValues(), 0);
          i++;
       }
       updateJythonVariables (myVariables, tloc);
       int k = 0;
       double[] buf = knot.v.getBuffer();
       for (NumericProbeDriver driver : myDrivers) {
-         double[] vals = driver.eval (myVariables, myJythonLocals);
+         double[] vals = driver.eval (myVariables, tloc, myJythonLocals);
          for (int j = 0; j < vals.length; j++) {
             buf[k++] = vals[j];
          }
       }
       knot.t = tloc;
+      NumericListKnot last = myNumericList.getLast();
       myNumericList.add (knot);
       myNumericList.clearAfter (knot);
+      if (myStreamingOutput && writeStreamKnot (knot)) {
+         if (last != null && last.t >= tloc) {
+            // time was reset, so recount the knots
+            myNumWindowKnots = myNumericList.getNumKnots();
+         }
+         else {
+            myNumWindowKnots++;
+         }
+         while (myNumWindowKnots > myStreamingWindow) {
+            myNumericList.remove (myNumericList.getFirst());
+            myNumWindowKnots--;
+         }
+      }
    }
 
    // public void display (Component c, Graphics g)
@@ -273,6 +416,7 @@ public class NumericOutputProbe extends NumericProbeBase
 
    public Object clone() throws CloneNotSupportedException {
       NumericOutputProbe probe = (NumericOutputProbe)super.clone();
+      probe.myStreamWriter = null;
       //probe.myNumericList.clear();
       return probe;
    }
@@ -341,6 +485,7 @@ public class NumericOutputProbe extends NumericProbeBase
 
    public void scan (ReaderTokenizer rtok, Object ref) throws IOException {
       myPropList = null;
+      myAccessor = null;
       tmpVariableNames = null;
       tmpDriverExpressions = null;
       tmpTraceInfos = null;
@@ -459,8 +604,11 @@ public class NumericOutputProbe extends NumericProbeBase
       myPropList = createPropertyList (props);
       myVariables = newVariables;
       myConverters = newConverters;
+      myAccessor = null;
 
+      closeStreamWriter();
       myNumericList = new NumericList (myVsize);
+      myNumWindowKnots = 0;
 
       if (traceInfos != null) {
          myPlotTraceManager.rebuild (getPropsOrDimens(), traceInfos);
@@ -488,6 +636,14 @@ public class NumericOutputProbe extends NumericProbeBase
       return true;
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   public void dispose() {
+      closeStreamWriter();
+      super.dispose();
+   }
+
    public ModelComponent copy (
       int flags, Map<ModelComponent,ModelComponent> copyMap) {
       NumericOutputProbe probe;
@@ -19,6 +19,7 @@ import maspack.interpolation.NumericList;
 import maspack.interpolation.NumericListKnot;
 import maspack.matrix.VectorNd;
 import maspack.properties.NumericConverter;
+import maspack.properties.NumericPropertyAccessor;
 import maspack.properties.Property;
 import maspack.properties.PropertyList;
 import maspack.util.*;
@@ -41,6 +42,8 @@ public abstract class NumericProbeBase extends Probe implements Displayable {
    protected ArrayList<NumericProbeDriver> myDrivers = null;
    protected ArrayList<Property> myPropList = null;
    protected NumericConverter[] myConverters;
+   // accessor for myPropList, created on demand:
+   protected NumericPropertyAccessor myAccessor;
    protected PyStringMap myJythonLocals; // maintained by createDrivers
 
    protected NumericProbePanel mySmallDisplay = null;
@@ -466,6 +469,19 @@ public abstract class NumericProbeBase extends Probe implements Displayable {
       return converters;
    }
 
+   /**
+    * Returns an accessor for reading and writing the values of the
+    * properties attached to this probe, creating it if necessary. Subclasses
+    * should set {@code myAccessor} to {@code null} whenever the attached
+    * properties or their converters are changed.
+    */
+   protected NumericPropertyAccessor getPropertyAccessor() {
+      if (myAccessor == null) {
+         myAccessor = new NumericPropertyAccessor (myPropList, myConverters);
+      }
+      return myAccessor;
+   }
+
    protected ArrayList<Property> createPropertyList (Property[] props) {
       ArrayList<Property> propList = new ArrayList<Property>();
       for (int i = 0; i < props.length; i++) {
@@ -625,6 +641,7 @@ public abstract class NumericProbeBase extends Probe implements Displayable {
       for (int i = 0; i < myConverters.length; i++) {
          probe.myConverters[i] = new NumericConverter (myConverters[i]);
       }
+      probe.myAccessor = null;
       // clear the displays because these are lazily allocated and
       // we don't want them reused
       probe.mySmallDisplay = null;
@@ -17,14 +17,26 @@ import maspack.matrix.*;
 /**
  * Encapsulates the code used to map inputs to properties for a
  * NumericInputProbe, or properties to outputs for a NumericOutputProbe.
+ *
+ * <p>Expressions that only involve arithmetic on the probe variables are
+ * compiled and evaluated directly in Java (see {@link
+ * NumericProbeExpression}). Other expressions are evaluated using Jython.
  */
 public class NumericProbeDriver {
+   /**
+    * Controls whether expressions that don't require Jython are compiled and
+    * evaluated directly. Setting this to <code>false</code> causes all
+    * expressions other than single variables to be evaluated by Jython.
+    */
+   public static boolean useCompiledExpressions = true;
+
    String myExpression = "";
    double[] myValues = new double[0];
    // LinkedHashMap<String,NumericProbeVariable> myVariables;
    String myVariable;
    PyCode myCode;
    NumericConverter myConverter;
+   NumericProbeExpression myCompiledExpr;
 
    public NumericProbeDriver() {
       // myVariables = new LinkedHashMap<String,NumericProbeVariable>();
@@ -33,6 +45,7 @@ public class NumericProbeDriver {
       myValues = new double[0];
       myCode = null;
       myConverter = null;
+      myCompiledExpr = null;
    }
 
    public NumericProbeDriver (NumericProbeDriver driver) {
@@ -46,6 +59,12 @@ public class NumericProbeDriver {
       else {
          myConverter = null;
       }
+      if (driver.myCompiledExpr != null) {
+         myCompiledExpr = driver.myCompiledExpr.copy();
+      }
+      else {
+         myCompiledExpr = null;
+      }
    }
 
    private void setOutputSize (int size) {
@@ -139,6 +158,7 @@ public class NumericProbeDriver {
       setOutputSize (conv.getDimension());
       myCode = code;
       myConverter = conv;
+      myCompiledExpr = null;
       myExpression = expr;
       myVariable = null;
    }
@@ -146,6 +166,7 @@ public class NumericProbeDriver {
    public void setExpression (
       String expr, HashMap<String,NumericProbeVariable> variables) {
       String varname = extractSingleVariable (expr);
+      NumericProbeExpression compiled;
       if (varname != null) {
          NumericProbeVariable var = variables.get (varname);
          if (var == null) {
@@ -157,6 +178,17 @@ public class NumericProbeDriver {
          myExpression = varname;
          myCode = null;
          myConverter = null;
+         myCompiledExpr = null;
+      }
+      else if (useCompiledExpressions &&
+               (compiled = NumericProbeExpression.compile (
+                  expr, variables)) != null) {
+         setOutputSize (compiled.getSize());
+         myVariable = null;
+         myExpression = expr;
+         myCode = null;
+         myConverter = null;
+         myCompiledExpr = compiled;
       }
       else {
          if (!JythonInit.jythonIsAvailable()) {
@@ -226,6 +258,14 @@ public class NumericProbeDriver {
       return myCode != null;
    }
 
+   /**
+    * Returns <code>true</code> if this driver's expression is evaluated
+    * directly in Java, without using Jython.
+    */
+   public boolean usesCompiledExpression() {
+      return myCompiledExpr != null;
+   }
+
    public boolean renameVariable (String oldname, String newname) {
       if (myVariable != null) {
          if (myVariable.equals (oldname)) {
@@ -234,14 +274,43 @@ public class NumericProbeDriver {
             return true;
          }
       }
-      else {
-         return replaceVariable (oldname, newname);
+      else if (replaceVariable (oldname, newname)) {
+         if (myCompiledExpr != null) {
+            myCompiledExpr.renameVariable (oldname, newname, myExpression);
+         }
+         return true;
       }
       return false;
    }
 
+   /**
+    * Evaluates this driver's expression, taking the time <code>t</code>
+    * from the Jython locals if they are provided.
+    */
    public double[] eval (
       HashMap<String,NumericProbeVariable> variables, PyStringMap locals) {
+      double t = 0;
+      if (locals != null) {
+         PyObject tobj = locals.__finditem__ ("t");
+         if (tobj != null) {
+            t = Py.py2double (tobj);
+         }
+      }
+      return eval (variables, t, locals);
+   }
+
+   /**
+    * Evaluates this driver's expression.
+    *
+    * @param variables current values of the probe variables
+    * @param t current (probe local) time
+    * @param locals Jython locals used to evaluate Jython expressions
+    * @return result of the evaluation. This buffer is owned by the driver
+    * and is overwritten by subsequent evaluations.
+    */
+   public double[] eval (
+      HashMap<String,NumericProbeVariable> variables, double t,
+      PyStringMap locals) {
       if (myVariable != null) {
          NumericProbeVariable var = variables.get (myVariable);
          if (var != null) {
@@ -254,6 +323,13 @@ public class NumericProbeDriver {
             Py.tojava (Py.runCode (myCode, locals, locals), Object.class);
          return myConverter.objectToArray (res);
       }
+      else if (myCompiledExpr != null) {
+         double[] vals = myCompiledExpr.eval (variables, t);
+         for (int i=0; i<myValues.length; i++) {
+            myValues[i] = vals[i];
+         }
+         return myValues;
+      }
       else {
          return null;
       }
@@ -0,0 +1,817 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package artisynth.core.probes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import maspack.matrix.ImproperStateException;
+
+/**
+ * Evaluates NumericProbeDriver expressions directly in Java, without using
+ * the Jython interpreter. Expressions are parsed into a tree of primitive
+ * operations, each of which stores its result in a preallocated buffer.
+ *
+ * <p>Only the subset of the Jython expression syntax that involves plain
+ * arithmetic on probe variables is handled. This consists of numeric
+ * constants, probe variables, the time <code>t</code>, the operators
+ * <code>+ - * / **</code>, parentheses, indexing of vector variables by
+ * integer constants, the built-in functions <code>abs</code>,
+ * <code>min</code>, <code>max</code> and <code>pow</code>, and the methods
+ * and constants of <code>java.lang.Math</code>. Vectors may be added,
+ * subtracted, multiplied or divided by scalars, and passed to
+ * <code>abs</code>. For any other expression, {@link #compile} returns
+ * <code>null</code>, and the expression should be handled by Jython instead.
+ * In particular, expressions whose Jython result would depend on integer
+ * arithmetic, such as <code>1/2</code>, are not handled.
+ *
+ * <p>Results are computed with the same floating point operations used by
+ * Jython. As with Jython, division by zero raises an ArithmeticException,
+ * as does raising zero to a negative power or a negative number to a
+ * fractional power.
+ */
+class NumericProbeExpression {
+
+   private String myText;
+   private String[] myVarNames;
+   private int[] myVarDims;
+   private NumericProbeVariable[] myVars;
+   private double myTime;
+   private Node myRoot;
+
+   /**
+    * Thrown internally when an expression can't be handled.
+    */
+   private static class UnsupportedException extends Exception {
+      private static final long serialVersionUID = 1L;
+   }
+
+   /**
+    * Base class for expression nodes. Each node evaluates to either a scalar
+    * or a vector, and returns its result in a buffer that remains valid
+    * until the next evaluation.
+    */
+   private abstract class Node {
+      int mySize;          // 1 for scalars
+      boolean myVectorP;   // true if the Jython result would be a vector
+      boolean myIntP;      // true if the Jython result would be an integer
+      double[] myVal;
+
+      Node (int size, boolean isVector, boolean isInt) {
+         mySize = size;
+         myVectorP = isVector;
+         myIntP = isInt;
+         myVal = new double[size];
+      }
+
+      abstract double[] eval();
+   }
+
+   private class ConstNode extends Node {
+      ConstNode (double value, boolean isInt) {
+         super (1, false, isInt);
+         myVal[0] = value;
+      }
+
+      double[] eval() {
+         return myVal;
+      }
+   }
+
+   private class TimeNode extends Node {
+      TimeNode() {
+         super (1, false, false);
+      }
+
+      double[] eval() {
+         myVal[0] = myTime;
+         return myVal;
+      }
+   }
+
+   private class VariableNode extends Node {
+      int myIdx;
+
+      VariableNode (int idx, int size) {
+         super (size, size > 1, false);
+         myIdx = idx;
+      }
+
+      double[] eval() {
+         return myVars[myIdx].getValues();
+      }
+   }
+
+   private class IndexNode extends Node {
+      Node myArg;
+      int myIndex;
+
+      IndexNode (Node arg, int index) {
+         super (1, false, false);
+         myArg = arg;
+         myIndex = index;
+      }
+
+      double[] eval() {
+         myVal[0] = myArg.eval()[myIndex];
+         return myVal;
+      }
+   }
+
+   private class NegateNode extends Node {
+      Node myArg;
+
+      NegateNode (Node arg) {
+         super (1, false, arg.myIntP);
+         myArg = arg;
+      }
+
+      double[] eval() {
+         myVal[0] = -myArg.eval()[0];
+         return myVal;
+      }
+   }
+
+   private class AddNode extends Node {
+      Node myArg0;
+      Node myArg1;
+      boolean mySubtract;
+
+      AddNode (Node arg0, Node arg1, boolean subtract) {
+         super (arg0.mySize, arg0.myVectorP, arg0.myIntP && arg1.myIntP);
+         myArg0 = arg0;
+         myArg1 = arg1;
+         mySubtract = subtract;
+      }
+
+      double[] eval() {
+         double[] v0 = myArg0.eval();
+         double[] v1 = myArg1.eval();
+         if (mySubtract) {
+            for (int i=0; i<mySize; i++) {
+               myVal[i] = v0[i] - v1[i];
+            }
+         }
+         else {
+            for (int i=0; i<mySize; i++) {
+               myVal[i] = v0[i] + v1[i];
+            }
+         }
+         return myVal;
+      }
+   }
+
+   private class MulNode extends Node {
+      Node myArg;      // scalar or vector
+      Node myScale;    // always a scalar
+
+      MulNode (Node arg, Node scale) {
+         super (arg.mySize, arg.myVectorP, arg.myIntP && scale.myIntP);
+         myArg = arg;
+         myScale = scale;
+      }
+
+      double[] eval() {
+         double[] v = myArg.eval();
+         double s = myScale.eval()[0];
+         for (int i=0; i<mySize; i++) {
+            myVal[i] = v[i]*s;
+         }
+         return myVal;
+      }
+   }
+
+   private class DivNode extends Node {
+      Node myArg;      // scalar or vector
+      Node myDivisor;  // always a scalar
+
+      DivNode (Node arg, Node divisor) {
+         super (arg.mySize, arg.myVectorP, false);
+         myArg = arg;
+         myDivisor = divisor;
+      }
+
+      double[] eval() {
+         double[] v = myArg.eval();
+         double d = myDivisor.eval()[0];
+         if (d == 0) {
+            throw new ArithmeticException ("float division by zero");
+         }
+         if (myVectorP) {
+            // vectors are scaled by the reciprocal, as in matrixBindings.py
+            double s = 1/d;
+            for (int i=0; i<mySize; i++) {
+               myVal[i] = v[i]*s;
+            }
+         }
+         else {
+            myVal[0] = v[0]/d;
+         }
+         return myVal;
+      }
+   }
+
+   private class PowNode extends Node {
+      Node myBase;
+      Node myExp;
+
+      PowNode (Node base, Node exp) {
+         super (1, false, base.myIntP && exp.myIntP);
+         myBase = base;
+         myExp = exp;
+      }
+
+      double[] eval() {
+         double x = myBase.eval()[0];
+         double y = myExp.eval()[0];
+         if (x == 0 && y < 0) {
+            throw new ArithmeticException (
+               "0.0 cannot be raised to a negative power");
+         }
+         if (x < 0 && y != Math.floor (y)) {
+            throw new ArithmeticException (
+               "negative number cannot be raised to a fractional power");
+         }
+         myVal[0] = Math.pow (x, y);
+         return myVal;
+      }
+   }
+
+   private class AbsNode extends Node {
+      Node myArg;
+
+      AbsNode (Node arg) {
+         super (arg.mySize, arg.myVectorP, arg.myIntP);
+         myArg = arg;
+      }
+
+      double[] eval() {
+         double[] v = myArg.eval();
+         for (int i=0; i<mySize; i++) {
+            myVal[i] = Math.abs (v[i]);
+         }
+         return myVal;
+      }
+   }
+
+   private enum Func {
+      SIN, COS, TAN, ASIN, ACOS, ATAN, SINH, COSH, TANH, EXP, LOG, LOG10,
+      SQRT, CBRT, FLOOR, CEIL, SIGNUM, TO_RADIANS, TO_DEGREES,
+      ATAN2, HYPOT, POW, MIN, MAX
+   }
+
+   private static HashMap<String,Func> myMathFunctions =
+      new HashMap<String,Func>();
+
+   static {
+      for (Func func : Func.values()) {
+         myMathFunctions.put (func.name().toLowerCase(), func);
+      }
+      myMathFunctions.remove ("to_radians");
+      myMathFunctions.remove ("to_degrees");
+      myMathFunctions.put ("toRadians", Func.TO_RADIANS);
+      myMathFunctions.put ("toDegrees", Func.TO_DEGREES);
+   }
+
+   private class FunctionNode extends Node {
+      Func myFunc;
+      Node[] myArgs;
+
+      FunctionNode (Func func, Node[] args, boolean isInt) {
+         super (1, false, isInt);
+         myFunc = func;
+         myArgs = args;
+      }
+
+      double[] eval() {
+         double x = myArgs[0].eval()[0];
+         double r;
+         switch (myFunc) {
+            case SIN: r = Math.sin (x); break;
+            case COS: r = Math.cos (x); break;
+            case TAN: r = Math.tan (x); break;
+            case ASIN: r = Math.asin (x); break;
+            case ACOS: r = Math.acos (x); break;
+            case ATAN: r = Math.atan (x); break;
+            case SINH: r = Math.sinh (x); break;
+            case COSH: r = Math.cosh (x); break;
+            case TANH: r = Math.tanh (x); break;
+            case EXP: r = Math.exp (x); break;
+            case LOG: r = Math.log (x); break;
+            case LOG10: r = Math.log10 (x); break;
+            case SQRT: r = Math.sqrt (x); break;
+            case CBRT: r = Math.cbrt (x); break;
+            case FLOOR: r = Math.floor (x); break;
+            case CEIL: r = Math.ceil (x); break;
+            case SIGNUM: r = Math.signum (x); break;
+            case TO_RADIANS: r = Math.toRadians (x); break;
+            case TO_DEGREES: r = Math.toDegrees (x); break;
+            case ATAN2: r = Math.atan2 (x, myArgs[1].eval()[0]); break;
+            case HYPOT: r = Math.hypot (x, myArgs[1].eval()[0]); break;
+            case POW: r = Math.pow (x, myArgs[1].eval()[0]); break;
+            case MIN: {
+               r = x;
+               for (int i=1; i<myArgs.length; i++) {
+                  r = Math.min (r, myArgs[i].eval()[0]);
+               }
+               break;
+            }
+            case MAX: {
+               r = x;
+               for (int i=1; i<myArgs.length; i++) {
+                  r = Math.max (r, myArgs[i].eval()[0]);
+               }
+               break;
+            }
+            default: {
+               throw new UnsupportedOperationException (
+                  "unimplemented function " + myFunc);
+            }
+         }
+         myVal[0] = r;
+         return myVal;
+      }
+   }
+
+   /**
+    * Implements the Jython built-in min() and max() functions, which return
+    * the first argument that is less than (or greater than) all the others.
+    */
+   private class MinMaxNode extends Node {
+      Node[] myArgs;
+      boolean myMax;
+
+      MinMaxNode (Node[] args, boolean max, boolean isInt) {
+         super (1, false, isInt);
+         myArgs = args;
+         myMax = max;
+      }
+
+      double[] eval() {
+         double r = myArgs[0].eval()[0];
+         for (int i=1; i<myArgs.length; i++) {
+            double x = myArgs[i].eval()[0];
+            if (myMax ? x > r : x < r) {
+               r = x;
+            }
+         }
+         myVal[0] = r;
+         return myVal;
+      }
+   }
+
+   /* --- tokenizer --- */
+
+   private static final int TT_EOF = -1;
+   private static final int TT_NUMBER = -2;
+   private static final int TT_NAME = -3;
+   private static final int TT_POW = -4;
+
+   private int myPos;
+   private int myToken;
+   private double myNumber;
+   private boolean myNumberIsInt;
+   private String myName;
+   private ArrayList<String> myNameList;
+   private Map<String,NumericProbeVariable> myVarMap;
+
+   private static boolean isDigit (char c) {
+      return c >= '0' && c <= '9';
+   }
+
+   private int scanDigits (int pos) {
+      while (pos < myText.length() && isDigit (myText.charAt (pos))) {
+         pos++;
+      }
+      return pos;
+   }
+
+   private void nextToken() throws UnsupportedException {
+      String s = myText;
+      while (myPos < s.length() && Character.isWhitespace (s.charAt (myPos))) {
+         myPos++;
+      }
+      if (myPos == s.length()) {
+         myToken = TT_EOF;
+         return;
+      }
+      char c = s.charAt (myPos);
+      if (isDigit (c) ||
+          (c == '.' && myPos+1 < s.length() && isDigit (s.charAt (myPos+1)))) {
+         int start = myPos;
+         int pos = scanDigits (myPos);
+         boolean isInt = true;
+         if (pos < s.length() && s.charAt (pos) == '.') {
+            pos = scanDigits (pos+1);
+            isInt = false;
+         }
+         if (pos < s.length() &&
+             (s.charAt (pos) == 'e' || s.charAt (pos) == 'E')) {
+            int epos = pos+1;
+            if (epos < s.length() &&
+                (s.charAt (epos) == '+' || s.charAt (epos) == '-')) {
+               epos++;
+            }
+            if (epos == s.length() || !isDigit (s.charAt (epos))) {
+               throw new UnsupportedException();
+            }
+            pos = scanDigits (epos);
+            isInt = false;
+         }
+         if (pos < s.length() &&
+             (Character.isJavaIdentifierPart (s.charAt (pos)) ||
+              s.charAt (pos) == '.')) {
+            // long, complex or hex literal, or some other suffix
+            throw new UnsupportedException();
+         }
+         String str = s.substring (start, pos);
+         if (isInt && (str.length() > 15 ||
+                       (str.length() > 1 && str.charAt (0) == '0'))) {
+            // octal literal, or too large to represent exactly
+            throw new UnsupportedException();
+         }
+         myNumber = Double.parseDouble (str);
+         myNumberIsInt = isInt;
+         myToken = TT_NUMBER;
+         myPos = pos;
+      }
+      else if (Character.isJavaIdentifierStart (c)) {
+         int start = myPos++;
+         while (myPos < s.length() &&
+                Character.isJavaIdentifierPart (s.charAt (myPos))) {
+            myPos++;
+         }
+         myName = s.substring (start, myPos);
+         myToken = TT_NAME;
+      }
+      else if (c == '*' && myPos+1 < s.length() && s.charAt (myPos+1) == '*') {
+         myPos += 2;
+         myToken = TT_POW;
+      }
+      else if ("+-*/()[],.".indexOf (c) != -1) {
+         if (c == '/' && myPos+1 < s.length() && s.charAt (myPos+1) == '/') {
+            // floor division
+            throw new UnsupportedException();
+         }
+         myPos++;
+         myToken = c;
+      }
+      else {
+         throw new UnsupportedException();
+      }
+   }
+
+   private void scanToken (int token) throws UnsupportedException {
+      if (myToken != token) {
+         throw new UnsupportedException();
+      }
+      nextToken();
+   }
+
+   /* --- parser --- */
+
+   // expr := term (('+'|'-') term)*
+   private Node parseExpression() throws UnsupportedException {
+      Node node = parseTerm();
+      while (myToken == '+' || myToken == '-') {
+         boolean subtract = (myToken == '-');
+         nextToken();
+         Node arg = parseTerm();
+         if (node.myVectorP != arg.myVectorP || node.mySize != arg.mySize) {
+            throw new UnsupportedException();
+         }
+         node = new AddNode (node, arg, subtract);
+      }
+      return node;
+   }
+
+   // term := factor (('*'|'/') factor)*
+   private Node parseTerm() throws UnsupportedException {
+      Node node = parseFactor();
+      while (myToken == '*' || myToken == '/') {
+         boolean divide = (myToken == '/');
+         nextToken();
+         Node arg = parseFactor();
+         if (arg.myVectorP) {
+            if (divide || node.myVectorP) {
+               throw new UnsupportedException();
+            }
+            node = new MulNode (arg, node);
+         }
+         else if (divide) {
+            if (node.myIntP && arg.myIntP) {
+               // integer division
+               throw new UnsupportedException();
+            }
+            node = new DivNode (node, arg);
+         }
+         else {
+            node = new MulNode (node, arg);
+         }
+      }
+      return node;
+   }
+
+   // factor := ('+'|'-') factor | power
+   private Node parseFactor() throws UnsupportedException {
+      if (myToken == '+') {
+         nextToken();
+         return parseFactor();
+      }
+      else if (myToken == '-') {
+         nextToken();
+         Node arg = parseFactor();
+         if (arg.myVectorP) {
+            // negation is not defined for vectors in matrixBindings.py
+            throw new UnsupportedException();
+         }
+         return new NegateNode (arg);
+      }
+      else {
+         return parsePower();
+      }
+   }
+
+   // power := primary ['**' factor]
+   private Node parsePower() throws UnsupportedException {
+      Node node = parsePrimary();
+      if (myToken == TT_POW) {
+         nextToken();
+         Node exp = parseFactor();
+         node = new PowNode (checkScalar (node), checkScalar (exp));
+      }
+      return node;
+   }
+
+   private Node checkScalar (Node node) throws UnsupportedException {
+      if (node.myVectorP) {
+         throw new UnsupportedException();
+      }
+      return node;
+   }
+
+   // primary := atom ('[' integer ']')*
+   private Node parsePrimary() throws UnsupportedException {
+      Node node = parseAtom();
+      while (myToken == '[') {
+         nextToken();
+         if (myToken != TT_NUMBER || !myNumberIsInt) {
+            throw new UnsupportedException();
+         }
+         int idx = (int)myNumber;
+         if (!node.myVectorP || idx >= node.mySize) {
+            throw new UnsupportedException();
+         }
+         nextToken();
+         scanToken (']');
+         node = new IndexNode (node, idx);
+      }
+      return node;
+   }
+
+   private Node[] parseArguments() throws UnsupportedException {
+      ArrayList<Node> args = new ArrayList<Node>();
+      scanToken ('(');
+      if (myToken != ')') {
+         args.add (parseExpression());
+         while (myToken == ',') {
+            nextToken();
+            args.add (parseExpression());
+         }
+      }
+      scanToken (')');
+      return args.toArray (new Node[0]);
+   }
+
+   private static boolean allScalars (Node[] args) {
+      for (Node arg : args) {
+         if (arg.myVectorP) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static boolean allInts (Node[] args) {
+      for (Node arg : args) {
+         if (!arg.myIntP) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private Node createMathMethod (String name, Node[] args)
+      throws UnsupportedException {
+      if (!allScalars (args)) {
+         throw new UnsupportedException();
+      }
+      if (name.equals ("abs") && args.length == 1) {
+         // Math.abs(int) returns an int
+         return new AbsNode (args[0]);
+      }
+      Func func = myMathFunctions.get (name);
+      if (func == null) {
+         throw new UnsupportedException();
+      }
+      int numArgs = (func.ordinal() >= Func.ATAN2.ordinal() ? 2 : 1);
+      if (args.length != numArgs) {
+         throw new UnsupportedException();
+      }
+      // Math.min(int,int) and Math.max(int,int) return ints
+      boolean isInt = ((func == Func.MIN || func == Func.MAX) && allInts (args));
+      return new FunctionNode (func, args, isInt);
+   }
+
+   private Node createBuiltinFunction (String name, Node[] args)
+      throws UnsupportedException {
+      if (name.equals ("abs") && args.length == 1) {
+         return new AbsNode (args[0]);
+      }
+      if (!allScalars (args)) {
+         throw new UnsupportedException();
+      }
+      if (name.equals ("pow") && args.length == 2) {
+         return new PowNode (args[0], args[1]);
+      }
+      else if (name.equals ("min") && args.length >= 2) {
+         return new MinMaxNode (args, /*max=*/false, allInts (args));
+      }
+      else if (name.equals ("max") && args.length >= 2) {
+         return new MinMaxNode (args, /*max=*/true, allInts (args));
+      }
+      throw new UnsupportedException();
+   }
+
+   private Node createVariable (String name) {
+      int idx = myNameList.indexOf (name);
+      if (idx == -1) {
+         idx = myNameList.size();
+         myNameList.add (name);
+      }
+      return new VariableNode (idx, myVarMap.get (name).getDimension());
+   }
+
+   // atom := number | name | name '(' args ')' | 'Math' '.' name ['(' args ')']
+   //         | '(' expr ')'
+   private Node parseAtom() throws UnsupportedException {
+      switch (myToken) {
+         case TT_NUMBER: {
+            Node node = new ConstNode (myNumber, myNumberIsInt);
+            nextToken();
+            return node;
+         }
+         case '(': {
+            nextToken();
+            Node node = parseExpression();
+            scanToken (')');
+            return node;
+         }
+         case TT_NAME: {
+            String name = myName;
+            nextToken();
+            if (name.equals ("t")) {
+               // t is bound after the variables, and so takes precedence
+               return new TimeNode();
+            }
+            else if (myVarMap.get (name) != null) {
+               return createVariable (name);
+            }
+            else if (name.equals ("Math") && myToken == '.') {
+               nextToken();
+               if (myToken != TT_NAME) {
+                  throw new UnsupportedException();
+               }
+               String method = myName;
+               nextToken();
+               if (myToken == '(') {
+                  return createMathMethod (method, parseArguments());
+               }
+               else if (method.equals ("PI")) {
+                  return new ConstNode (Math.PI, false);
+               }
+               else if (method.equals ("E")) {
+                  return new ConstNode (Math.E, false);
+               }
+            }
+            else if (myToken == '(') {
+               return createBuiltinFunction (name, parseArguments());
+            }
+            throw new UnsupportedException();
+         }
+         default: {
+            throw new UnsupportedException();
+         }
+      }
+   }
+
+   private NumericProbeExpression (
+      String text, Map<String,NumericProbeVariable> variables)
+      throws UnsupportedException {
+      myText = text;
+      myVarMap = variables;
+      myNameList = new ArrayList<String>();
+      myPos = 0;
+      nextToken();
+      myRoot = parseExpression();
+      if (myToken != TT_EOF) {
+         throw new UnsupportedException();
+      }
+      int numVars = myNameList.size();
+      myVarNames = myNameList.toArray (new String[0]);
+      myVarDims = new int[numVars];
+      for (int i=0; i<numVars; i++) {
+         myVarDims[i] = variables.get (myVarNames[i]).getDimension();
+      }
+      myVars = new NumericProbeVariable[numVars];
+      myNameList = null;
+      myVarMap = null;
+   }
+
+   /**
+    * Attempts to compile an expression.
+    *
+    * @param text expression to compile
+    * @param variables probe variables which the expression may reference
+    * @return compiled expression, or <code>null</code> if the expression
+    * contains features that require Jython
+    */
+   public static NumericProbeExpression compile (
+      String text, Map<String,NumericProbeVariable> variables) {
+      try {
+         return new NumericProbeExpression (text, variables);
+      }
+      catch (UnsupportedException e) {
+         return null;
+      }
+   }
+
+   /**
+    * Returns the number of values produced by this expression.
+    */
+   public int getSize() {
+      return myRoot.mySize;
+   }
+
+   /**
+    * Returns the expression text.
+    */
+   public String getText() {
+      return myText;
+   }
+
+   /**
+    * Evaluates this expression.
+    *
+    * @param variables current values of the probe variables
+    * @param t current time
+    * @return values of the expression. This buffer is owned by the
+    * expression and is overwritten by subsequent evaluations.
+    */
+   public double[] eval (
+      Map<String,NumericProbeVariable> variables, double t) {
+      for (int i=0; i<myVars.length; i++) {
+         NumericProbeVariable var = variables.get (myVarNames[i]);
+         if (var == null || var.getDimension() != myVarDims[i]) {
+            throw new ImproperStateException (
+               "variable '" + myVarNames[i] + "' not found or has changed size");
+         }
+         myVars[i] = var;
+      }
+      myTime = t;
+      return myRoot.eval();
+   }
+
+   /**
+    * Renames a variable referenced by this expression.
+    *
+    * @param oldname current variable name
+    * @param newname new variable name
+    * @param text expression text with the variable renamed
+    */
+   public void renameVariable (String oldname, String newname, String text) {
+      for (int i=0; i<myVarNames.length; i++) {
+         if (myVarNames[i].equals (oldname)) {
+            myVarNames[i] = newname;
+         }
+      }
+      myText = text;
+   }
+
+   /**
+    * Creates a copy of this expression, with its own evaluation buffers.
+    */
+   public NumericProbeExpression copy() {
+      HashMap<String,NumericProbeVariable> variables =
+         new HashMap<String,NumericProbeVariable>();
+      for (int i=0; i<myVarNames.length; i++) {
+         variables.put (myVarNames[i], new NumericProbeVariable (myVarDims[i]));
+      }
+      return compile (myText, variables);
+   }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package artisynth.core.probes;
+
+import java.util.HashMap;
+
+import maspack.matrix.VectorNd;
+import maspack.util.TestException;
+import maspack.util.UnitTest;
+
+public class NumericProbeExpressionTest extends UnitTest {
+
+   HashMap<String,NumericProbeVariable> myVariables;
+
+   NumericProbeExpressionTest() {
+      myVariables = new HashMap<String,NumericProbeVariable>();
+      NumericProbeVariable var = new NumericProbeVariable (1);
+      var.setValues (new double[] { 2.5 });
+      myVariables.put ("x", var);
+      var = new NumericProbeVariable (3);
+      var.setValues (new double[] { 1.0, -2.0, 4.0 });
+      myVariables.put ("v", var);
+   }
+
+   NumericProbeExpression compile (String text) {
+      NumericProbeExpression expr =
+         NumericProbeExpression.compile (text, myVariables);
+      if (expr == null) {
+         throw new TestException ("'" + text + "' was not compiled");
+      }
+      return expr;
+   }
+
+   void checkValueAtTime (String text, double t, double... check) {
+      NumericProbeExpression expr = compile (text);
+      checkEquals ("size of '" + text + "'", expr.getSize(), check.length);
+      double[] vals = expr.eval (myVariables, t);
+      checkEquals (
+         "value of '" + text + "'",
+         new VectorNd (expr.getSize(), vals), new VectorNd (check), 1e-15);
+   }
+
+   void checkValue (String text, double... check) {
+      checkValueAtTime (text, 0, check);
+   }
+
+   void checkFallback (String text) {
+      if (NumericProbeExpression.compile (text, myVariables) != null) {
+         throw new TestException (
+            "'" + text + "' was compiled but should be handled by Jython");
+      }
+   }
+
+   void checkArithmeticException (String text) {
+      NumericProbeExpression expr = compile (text);
+      try {
+         expr.eval (myVariables, 0);
+      }
+      catch (ArithmeticException e) {
+         return;
+      }
+      throw new TestException (
+         "evaluation of '" + text + "' did not raise ArithmeticException");
+   }
+
+   public void testPrecedence() {
+      // unary minus binds more loosely than '**'
+      checkValue ("-2**2", -4);
+      checkValue ("(-2)**2", 4);
+      checkValue ("2**-1", 0.5);
+      // '**' is right associative
+      checkValue ("2**3**2", 512);
+      checkValue ("(2**3)**2", 64);
+      checkValue ("2*3**2", 18);
+      checkValue ("1 - 2 - 3", -4);
+      checkValue ("8.0/2/2", 2);
+      checkValue ("1 + 2*x", 6);
+      checkValue ("-x**2", -6.25);
+   }
+
+   public void testValues() {
+      checkValue ("1.0/2", 0.5);
+      checkValue ("1/2.0", 0.5);
+      checkValue ("x/2", 1.25);
+      checkValue ("1e-3*4", 0.004);
+      checkValueAtTime ("2*t + 1", 3.0, 7);
+      checkValue ("v", 1.0, -2.0, 4.0);
+      checkValue ("2*v + v/2.0", 2.5, -5.0, 10.0);
+      checkValue ("v[2] - v[1]", 6);
+      checkValue ("abs(v)", 1.0, 2.0, 4.0);
+      checkValue ("max(x, 3)", 3);
+      checkValue ("pow(2, 0.5)", Math.sqrt (2));
+      checkValue ("Math.sqrt(16.0) + Math.cos(0)", 5);
+      checkValue ("Math.atan2(1.0, 1.0)", Math.PI/4);
+   }
+
+   public void testFallback() {
+      // integer division and modulus differ between Jython and Java
+      checkFallback ("1/2");
+      checkFallback ("x + 7/2");
+      checkFallback ("5 % 3");
+      checkFallback ("x % 1.0");
+      checkFallback ("7.0 // 2");
+      checkFallback ("x // 2");
+      // hex, octal, long and complex literals
+      checkFallback ("0x10");
+      checkFallback ("0x1f + x");
+      checkFallback ("010");
+      checkFallback ("10L");
+      checkFallback ("2j");
+      // other syntax that only Jython handles
+      checkFallback ("-v");
+      checkFallback ("v[5]");
+      checkFallback ("v*v");
+      checkFallback ("undefined + 1");
+      checkFallback ("sqrt(x)");
+      checkFallback ("x if t > 1 else 0");
+   }
+
+   public void testExceptions() {
+      // Jython raises an exception for these instead of returning NaN
+      checkArithmeticException ("(-8)**(1.0/3)");
+      checkArithmeticException ("pow(-8, 1.0/3)");
+      checkArithmeticException ("0.0**-1");
+      checkArithmeticException ("x/0.0");
+      checkArithmeticException ("v/(x - 2.5)");
+   }
+
+   public void test() {
+      testPrecedence();
+      testValues();
+      testFallback();
+      testExceptions();
+   }
+
+   public static void main (String[] args) {
+      NumericProbeExpressionTest tester = new NumericProbeExpressionTest();
+      tester.runtest();
+   }
+}
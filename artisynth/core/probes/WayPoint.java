@@ -15,6 +15,9 @@ public class WayPoint {
    protected CompositeState myState;
    protected boolean myValidP;
    protected boolean myBreakPointP;
+   // if non-null, the state is kept in this store instead of myState
+   protected WayPointStateStore myStateStore;
+   protected WayPointStateStore.StoredState myStoredState;
 
    public WayPoint (double t) {
       setTime (t);
@@ -42,26 +45,99 @@ public class WayPoint {
       myValidP = valid;
    }
 
+   /**
+    * Returns the state stored at this way point, or <code>null</code> if
+    * there is no state. If the state is kept in a {@link WayPointStateStore},
+    * a new copy of it is restored from the store with each call.
+    *
+    * @return state for this way point
+    */
    public CompositeState getState() {
+      if (myStoredState != null) {
+         return (CompositeState)myStateStore.restore (myStoredState);
+      }
       return myState;
    }
 
+   /**
+    * Returns <code>true</code> if a state is stored at this way point.
+    *
+    * @return <code>true</code> if there is a state
+    */
+   public boolean hasState() {
+      return myState != null || myStoredState != null;
+   }
+
    public void setState (RootModel model) {
-      myState = (CompositeState)model.createState(null);
+      CompositeState state = (CompositeState)model.createState(null);
       if (myTime == 0) {
-         model.getInitialState (myState, null);
+         model.getInitialState (state, null);
       }
       else {
-         model.getState (myState);
+         model.getState (state);
       }
+      storeState (state);
       setValid (true);
    }
    
    public void setState (CompositeState state) {
-      myState = state;
+      storeState (state);
       setValid (true);
    }
 
+   private void storeState (CompositeState state) {
+      releaseState();
+      if (myStateStore != null && state != null) {
+         myStoredState = myStateStore.store (state);
+      }
+      else {
+         myState = state;
+      }
+   }
+
+   /**
+    * Removes the state at this way point, releasing any storage associated
+    * with it, and marks the way point as invalid.
+    */
+   public void clearState() {
+      releaseState();
+      setValid (false);
+   }
+
+   private void releaseState() {
+      if (myStoredState != null) {
+         myStateStore.release (myStoredState);
+         myStoredState = null;
+      }
+      myState = null;
+   }
+
+   /**
+    * Returns the store used to keep the state of this way point, or
+    * <code>null</code> if the state is kept directly.
+    *
+    * @return state store for this way point
+    */
+   public WayPointStateStore getStateStore() {
+      return myStateStore;
+   }
+
+   /**
+    * Sets the store used to keep the state of this way point. Any existing
+    * state is moved into the new store, or kept directly if
+    * <code>store</code> is <code>null</code>.
+    *
+    * @param store state store for this way point
+    */
+   public void setStateStore (WayPointStateStore store) {
+      if (store != myStateStore) {
+         CompositeState state = getState();
+         releaseState();
+         myStateStore = store;
+         storeState (state);
+      }
+   }
+
    public boolean isBreakPoint() {
       return myBreakPointP;
    }
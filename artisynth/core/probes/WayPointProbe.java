@@ -12,6 +12,7 @@ import java.io.*;
 import artisynth.core.modelbase.*;
 import artisynth.core.util.*;
 import artisynth.core.workspace.RootModel;
+import maspack.properties.PropertyList;
 import maspack.util.*;
 
 public class WayPointProbe extends OutputProbe {
@@ -20,6 +21,48 @@ public class WayPointProbe extends OutputProbe {
    protected WayPoint myWay0;
    protected boolean myCheckStateP = false;
 
+   // store for compressed states, if compressStates is enabled
+   protected WayPointStateStore myStateStore = null;
+
+   protected static boolean defaultCompressStates = false;
+   protected boolean myCompressStatesP = defaultCompressStates;
+
+   protected static int defaultKeyFrameInterval =
+      WayPointStateStore.DEFAULT_KEY_FRAME_INTERVAL;
+   protected int myKeyFrameInterval = defaultKeyFrameInterval;
+
+   protected static double defaultStateMemoryLimit = 1024;
+   protected double myStateMemoryLimit = defaultStateMemoryLimit;
+
+   public static PropertyList myProps =
+      new PropertyList (WayPointProbe.class, OutputProbe.class);
+
+   static {
+      myProps.add (
+         "compressStates * *",
+         "store way point states as compressed key frames and deltas",
+         defaultCompressStates);
+      myProps.add (
+         "keyFrameInterval * *",
+         "number of compressed states between key frames",
+         defaultKeyFrameInterval, "[1,inf]");
+      myProps.add (
+         "stateMemoryLimit * *",
+         "memory (MB) for compressed states before they are moved to disk",
+         defaultStateMemoryLimit, "[0,inf]");
+      myProps.addReadOnly (
+         "stateMemoryUsage", "memory (MB) used by compressed states");
+      myProps.addReadOnly (
+         "stateDiskUsage", "disk space (MB) used by compressed states");
+      myProps.addReadOnly (
+         "averageRestoreTime",
+         "average time (msec) required to restore a compressed state");
+   }
+
+   public PropertyList getAllPropertyInfo() {
+      return myProps;
+   }
+
    public WayPointProbe() {
       setStartTime (0);
       setStopTime (Double.POSITIVE_INFINITY);
@@ -44,6 +87,91 @@ public class WayPointProbe extends OutputProbe {
       return myCheckStateP;
    }
 
+   public boolean getCompressStates() {
+      return myCompressStatesP;
+   }
+
+   /**
+    * Enables or disables compressed storage of way point states. When
+    * enabled, states are kept in a {@link WayPointStateStore}, which
+    * stores them as key frames and compressed deltas, and moves them to
+    * disk when their memory usage exceeds {@link #setStateMemoryLimit}.
+    * Existing states are moved into or out of the store as required.
+    *
+    * @param enable if <code>true</code>, enables compressed storage
+    */
+   public void setCompressStates (boolean enable) {
+      if (enable != myCompressStatesP) {
+         WayPointStateStore store = null;
+         if (enable) {
+            store = new WayPointStateStore();
+            store.setKeyFrameInterval (myKeyFrameInterval);
+            store.setMemoryLimit ((long)(myStateMemoryLimit*(1 << 20)));
+         }
+         for (WayPoint way : myWayPoints) {
+            way.setStateStore (store);
+         }
+         if (myStateStore != null) {
+            myStateStore.dispose();
+         }
+         myStateStore = store;
+         myCompressStatesP = enable;
+      }
+   }
+
+   public int getKeyFrameInterval() {
+      return myKeyFrameInterval;
+   }
+
+   public void setKeyFrameInterval (int interval) {
+      myKeyFrameInterval = Math.max (1, interval);
+      if (myStateStore != null) {
+         myStateStore.setKeyFrameInterval (myKeyFrameInterval);
+      }
+   }
+
+   public double getStateMemoryLimit() {
+      return myStateMemoryLimit;
+   }
+
+   /**
+    * Sets the amount of memory, in megabytes, that compressed states may
+    * use before the least recently accessed ones are moved to disk.
+    *
+    * @param mbytes memory limit, in megabytes
+    */
+   public void setStateMemoryLimit (double mbytes) {
+      myStateMemoryLimit = Math.max (0, mbytes);
+      if (myStateStore != null) {
+         myStateStore.setMemoryLimit ((long)(myStateMemoryLimit*(1 << 20)));
+      }
+   }
+
+   public double getStateMemoryUsage() {
+      return myStateStore != null ?
+         myStateStore.getMemoryUsage()/(double)(1 << 20) : 0;
+   }
+
+   public double getStateDiskUsage() {
+      return myStateStore != null ?
+         myStateStore.getDiskUsage()/(double)(1 << 20) : 0;
+   }
+
+   public double getAverageRestoreTime() {
+      return myStateStore != null ? myStateStore.getAverageRestoreTime() : 0;
+   }
+
+   /**
+    * Returns the store used for compressed states, or <code>null</code> if
+    * compression is not enabled. The store can be queried for additional
+    * statistics.
+    *
+    * @return compressed state store
+    */
+   public WayPointStateStore getStateStore() {
+      return myStateStore;
+   }
+
    /**
     * Adds a WayPoint to this probe, and returns any WayPoint that previously
     * occupied the same time location.
@@ -53,6 +181,7 @@ public class WayPointProbe extends OutputProbe {
     * @return previous WayPoint with the same time, if any
     */
    public WayPoint add (WayPoint newWay) {
+      newWay.setStateStore (myStateStore);
       ListIterator<WayPoint> it = myWayPoints.listIterator();
       while (it.hasNext()) {
          WayPoint way = it.next();
@@ -66,6 +195,7 @@ public class WayPointProbe extends OutputProbe {
             }
             if (newWay.getTime() == way.getTime()) {
                myWayPoints.remove (way);
+               way.clearState();
                return way;
             }
             else {
@@ -86,12 +216,21 @@ public class WayPointProbe extends OutputProbe {
       if (way == myWay0) {
          return false;
       }
+      else if (myWayPoints.remove (way)) {
+         way.clearState();
+         return true;
+      }
       else {
-         return myWayPoints.remove (way);
+         return false;
       }
    }
 
    public void clear() {
+      for (WayPoint way : myWayPoints) {
+         if (way != myWay0) {
+            way.clearState();
+         }
+      }
       myWayPoints.clear();
       myWayPoints.add (myWay0);
    }
@@ -265,7 +404,10 @@ public class WayPointProbe extends OutputProbe {
          if (TimeBase.equals (way.getTime(), t)) {
             ComponentState checkState = null;
             if (myCheckStateP && way.isValid()) {
-               checkState = way.getState().duplicate();
+               checkState = way.getState();
+               if (way.getStateStore() == null) {
+                  checkState = checkState.duplicate();
+               }
             }
             way.setState (myRootModel);
             if (myCheckStateP && checkState != null) {
@@ -320,7 +462,7 @@ public class WayPointProbe extends OutputProbe {
                new DataOutputStream (new BufferedOutputStream(new FileOutputStream (file)));
             dos.writeInt (numValid ());
             for (WayPoint way : myWayPoints) {
-               if (way.getState () != null) {
+               if (way.hasState()) {
                   System.out.println (" writing way " + way.getTime());
                   dos.writeDouble (way.getTime());
                   way.getState ().writeBinary (dos);
@@ -398,6 +540,7 @@ public class WayPointProbe extends OutputProbe {
                      way = new WayPoint(time);
                      li.add (way);
                   }
+                  way.setStateStore (myStateStore);
                   CompositeState cs = (CompositeState)myRootModel.createState (null);
                   cs.readBinary (dis);
                   way.setState (cs);
@@ -435,14 +578,14 @@ public class WayPointProbe extends OutputProbe {
 
       rtok.nextToken();
       if (scanAttributeName (rtok, "wayPoints")) {
-         myWayPoints.clear();
-         myWayPoints.add (myWay0);
+         clear();
          rtok.scanToken ('[');
          while (rtok.nextToken() != ']') {
             rtok.pushBack();
             double time = scanTimeQuantity(rtok);
             if (time != 0) {
                WayPoint newWay = new WayPoint (time);
+               newWay.setStateStore (myStateStore);
                myWayPoints.addLast (newWay);
                newWay.setValid (false);
 
@@ -490,4 +633,17 @@ public class WayPointProbe extends OutputProbe {
       return myRootModel;
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   public void dispose() {
+      super.dispose();
+      if (myStateStore != null) {
+         for (WayPoint way : myWayPoints) {
+            way.clearState();
+         }
+         myStateStore.dispose();
+      }
+   }
+
 }
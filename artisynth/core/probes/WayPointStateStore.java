@@ -0,0 +1,810 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package artisynth.core.probes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import artisynth.core.modelbase.ComponentState;
+import artisynth.core.modelbase.CompositeState;
+import artisynth.core.modelbase.NumericState;
+import maspack.util.InternalErrorException;
+
+/**
+ * Compact storage for the states of way points. Each stored state is
+ * flattened into the double and integer buffers of its {@link NumericState}
+ * components, which are then encoded either as a <i>key frame</i>, or as a
+ * <i>delta</i> relative to the most recent key frame. Deltas are formed by
+ * taking the exclusive-or of each value with the corresponding key frame
+ * value and discarding leading and trailing zero bytes, which compresses
+ * well since successive states usually differ in only a few bits of each
+ * value. A new key frame is created every {@link #setKeyFrameInterval key
+ * frame interval} states, or whenever the state size changes, so that
+ * restoring a state never requires decoding more than two entries.
+ *
+ * <p>When the memory used by the encoded states exceeds a {@link
+ * #setMemoryLimit memory limit}, the least recently accessed entries are
+ * moved to a temporary file, from which they are read back using memory
+ * mapping when needed. The file is compacted when more than half of it is
+ * occupied by released entries, and truncated when it no longer holds any
+ * entries.
+ *
+ * <p>The non-numeric parts of a state (such as Object buffer contents, or
+ * states that are not NumericStates) are retained in memory.
+ */
+public class WayPointStateStore {
+
+   public static int DEFAULT_KEY_FRAME_INTERVAL = 8;
+   public static long DEFAULT_MEMORY_LIMIT = (1L << 30);
+
+   // header value indicating a run of zero values
+   private static final int ZERO_RUN = 0xf0;
+
+   /**
+    * Handle for a state stored in a WayPointStateStore.
+    */
+   public static class StoredState {
+      // copy of the state structure, without the double and integer data
+      ComponentState myShell;
+      // dsize, zsize, doffset and zoffset for each NumericState
+      int[] myLayout;
+      int myDsize;
+      int myZsize;
+      // key frame this state is encoded relative to, or null
+      StoredState myKeyFrame;
+      int myRefCount;
+
+      byte[] myData;
+      int myDataLength;
+      long myFileOffset = -1;
+
+      boolean isKeyFrame() {
+         return myKeyFrame == null;
+      }
+
+      int numRawBytes() {
+         return 8*myDsize + 4*myZsize;
+      }
+   }
+
+   private int myKeyFrameInterval = DEFAULT_KEY_FRAME_INTERVAL;
+   private long myMemoryLimit = DEFAULT_MEMORY_LIMIT;
+
+   // key frame against which new deltas are encoded
+   private StoredState myCurrentKey;
+   private int myDeltasSinceKey;
+
+   // live entries that are held in memory, in least recently accessed order
+   private LinkedHashMap<StoredState,StoredState> myMemoryEntries =
+      new LinkedHashMap<StoredState,StoredState>(16, 0.75f, true);
+   private int myNumEntries;
+   private int myNumKeyFrames;
+   private long myMemoryBytes;
+   private long mySpilledBytes;
+   private long myRawBytes;
+
+   // file to which entries are spilled
+   private File mySpillFile;
+   private RandomAccessFile mySpillRaf;
+   private FileChannel mySpillChannel;
+   private long mySpillEnd;
+   // live entries that have been moved to the file
+   private HashSet<StoredState> mySpilledEntries = new HashSet<StoredState>();
+
+   // decoded values of the most recently used key frame
+   private StoredState myCachedKey;
+   private double[] myCachedD = new double[0];
+   private int[] myCachedZ = new int[0];
+
+   // encoding buffer
+   private byte[] myBuf = new byte[256];
+   private int myBufLen;
+
+   // statistics
+   private int myNumRestores;
+   private long myTotalRestoreNsec;
+   private long myMaxRestoreNsec;
+
+   public WayPointStateStore() {
+   }
+
+   /**
+    * Returns the number of states between key frames.
+    *
+    * @return key frame interval
+    */
+   public int getKeyFrameInterval() {
+      return myKeyFrameInterval;
+   }
+
+   /**
+    * Sets the number of states between key frames. A value of 1 causes
+    * every state to be stored as a key frame. Larger values give better
+    * compression, but deltas become less effective as the state moves
+    * further away from its key frame.
+    *
+    * @param interval key frame interval
+    */
+   public synchronized void setKeyFrameInterval (int interval) {
+      myKeyFrameInterval = Math.max (1, interval);
+   }
+
+   /**
+    * Returns the number of bytes of encoded data that may be held in memory
+    * before entries are moved to disk.
+    *
+    * @return memory limit, in bytes
+    */
+   public long getMemoryLimit() {
+      return myMemoryLimit;
+   }
+
+   /**
+    * Sets the number of bytes of encoded data that may be held in memory
+    * before entries are moved to disk.
+    *
+    * @param limit memory limit, in bytes
+    */
+   public synchronized void setMemoryLimit (long limit) {
+      myMemoryLimit = Math.max (0, limit);
+      spillIfNecessary();
+   }
+
+   /* --- flattening and restoring states --- */
+
+   private void collectNumericStates (
+      ComponentState state, ArrayList<NumericState> leaves) {
+      if (state instanceof CompositeState) {
+         Iterator<ComponentState> it = ((CompositeState)state).getStates();
+         while (it.hasNext()) {
+            collectNumericStates (it.next(), leaves);
+         }
+      }
+      else if (state instanceof NumericState) {
+         leaves.add ((NumericState)state);
+      }
+   }
+
+   private static ComponentState newInstance (ComponentState state) {
+      String className = state.getClass().getName();
+      try {
+         return state.getClass().getDeclaredConstructor().newInstance();
+      }
+      catch (NoSuchMethodException e) {
+         throw new InternalErrorException (
+            "Cannot instantiate " + className +
+            ": no no-argument constructor");
+      }
+      catch (InvocationTargetException e) {
+         throw new InternalErrorException (
+            "Cannot instantiate " + className +
+            ": constructor threw " + e.getCause());
+      }
+      catch (ReflectiveOperationException e) {
+         throw new InternalErrorException (
+            "Cannot instantiate " + className + ": " + e);
+      }
+   }
+
+   /**
+    * Creates a copy of a state that contains everything except the double
+    * and integer data of its NumericStates.
+    */
+   private ComponentState createShell (ComponentState state) {
+      if (state instanceof CompositeState) {
+         CompositeState cstate = (CompositeState)state;
+         CompositeState shell = (CompositeState)newInstance (cstate);
+         Iterator<ComponentState> it = cstate.getStates();
+         while (it.hasNext()) {
+            ComponentState substate = it.next();
+            shell.addState (substate != null ? createShell (substate) : null);
+         }
+         if (cstate.getComponents() != null) {
+            shell.addComponents (cstate.getComponents());
+         }
+         return shell;
+      }
+      else if (state instanceof NumericState) {
+         NumericState nstate = (NumericState)state;
+         NumericState shell = (NumericState)newInstance (nstate);
+         Object[] obuf = nstate.obuffer();
+         shell.oEnsureCapacity (nstate.osize());
+         for (int i=0; i<nstate.osize(); i++) {
+            shell.oput (obuf[i]);
+         }
+         shell.osetOffset (nstate.ooffset());
+         return shell;
+      }
+      else {
+         return state.duplicate();
+      }
+   }
+
+   /**
+    * Creates a new state from a shell, filling its NumericStates with data
+    * from the supplied buffers.
+    */
+   private ComponentState instantiate (
+      ComponentState shell, int[] layout, int[] idxs, double[] dbuf, int[] zbuf) {
+      if (shell instanceof CompositeState) {
+         CompositeState cshell = (CompositeState)shell;
+         CompositeState state = (CompositeState)newInstance (cshell);
+         Iterator<ComponentState> it = cshell.getStates();
+         while (it.hasNext()) {
+            ComponentState subshell = it.next();
+            state.addState (
+               subshell != null ?
+               instantiate (subshell, layout, idxs, dbuf, zbuf) : null);
+         }
+         if (cshell.getComponents() != null) {
+            state.addComponents (cshell.getComponents());
+         }
+         return state;
+      }
+      else if (shell instanceof NumericState) {
+         NumericState nshell = (NumericState)shell;
+         NumericState state = (NumericState)newInstance (nshell);
+         int li = 4*idxs[0]++;
+         int dsize = layout[li];
+         int zsize = layout[li+1];
+         state.dsetSize (dsize);
+         System.arraycopy (dbuf, idxs[1], state.dbuffer(), 0, dsize);
+         idxs[1] += dsize;
+         state.zsetSize (zsize);
+         System.arraycopy (zbuf, idxs[2], state.zbuffer(), 0, zsize);
+         idxs[2] += zsize;
+         state.dsetOffset (layout[li+2]);
+         state.zsetOffset (layout[li+3]);
+         Object[] obuf = nshell.obuffer();
+         state.oEnsureCapacity (nshell.osize());
+         for (int i=0; i<nshell.osize(); i++) {
+            state.oput (obuf[i]);
+         }
+         state.osetOffset (nshell.ooffset());
+         return state;
+      }
+      else {
+         return shell.duplicate();
+      }
+   }
+
+   /* --- encoding and decoding --- */
+
+   private void ensureBufferCapacity (int cap) {
+      if (myBuf.length < cap) {
+         myBuf = Arrays.copyOf (myBuf, Math.max (cap, 2*myBuf.length));
+      }
+   }
+
+   private void encodeDoubles (double[] vals, int size, double[] ref) {
+      int i = 0;
+      while (i < size) {
+         long x = Double.doubleToRawLongBits (vals[i]);
+         if (ref != null) {
+            x ^= Double.doubleToRawLongBits (ref[i]);
+         }
+         ensureBufferCapacity (myBufLen+9);
+         if (x == 0) {
+            // encode a run of values that are zero or unchanged
+            int run = 1;
+            while (run < 256 && i+run < size &&
+                   (Double.doubleToRawLongBits (vals[i+run]) ==
+                    (ref != null ?
+                     Double.doubleToRawLongBits (ref[i+run]) : 0))) {
+               run++;
+            }
+            myBuf[myBufLen++] = (byte)ZERO_RUN;
+            myBuf[myBufLen++] = (byte)(run-1);
+            i += run;
+         }
+         else {
+            int lead = Long.numberOfLeadingZeros (x)/8;
+            int trail = Long.numberOfTrailingZeros (x)/8;
+            myBuf[myBufLen++] = (byte)((lead << 4) | trail);
+            for (int b=7-lead; b>=trail; b--) {
+               myBuf[myBufLen++] = (byte)(x >>> (8*b));
+            }
+            i++;
+         }
+      }
+   }
+
+   private void decodeDoubles (
+      ByteBuffer buf, double[] vals, int size, double[] ref) {
+      int i = 0;
+      while (i < size) {
+         int header = (buf.get() & 0xff);
+         if (header == ZERO_RUN) {
+            int run = (buf.get() & 0xff) + 1;
+            for (int k=0; k<run; k++) {
+               vals[i+k] = (ref != null ? ref[i+k] : 0);
+            }
+            i += run;
+         }
+         else {
+            int lead = (header >>> 4);
+            int trail = (header & 0xf);
+            long x = 0;
+            for (int b=7-lead; b>=trail; b--) {
+               x |= ((long)(buf.get() & 0xff)) << (8*b);
+            }
+            if (ref != null) {
+               x ^= Double.doubleToRawLongBits (ref[i]);
+            }
+            vals[i++] = Double.longBitsToDouble (x);
+         }
+      }
+   }
+
+   private void encodeInts (int[] vals, int size, int[] ref) {
+      for (int i=0; i<size; i++) {
+         int x = (ref != null ? vals[i] ^ ref[i] : vals[i]);
+         ensureBufferCapacity (myBufLen+5);
+         // unsigned variable length encoding
+         while ((x & ~0x7f) != 0) {
+            myBuf[myBufLen++] = (byte)((x & 0x7f) | 0x80);
+            x >>>= 7;
+         }
+         myBuf[myBufLen++] = (byte)x;
+      }
+   }
+
+   private void decodeInts (ByteBuffer buf, int[] vals, int size, int[] ref) {
+      for (int i=0; i<size; i++) {
+         int x = 0;
+         int shift = 0;
+         int b;
+         do {
+            b = buf.get();
+            x |= (b & 0x7f) << shift;
+            shift += 7;
+         }
+         while ((b & 0x80) != 0);
+         vals[i] = (ref != null ? x ^ ref[i] : x);
+      }
+   }
+
+   private ByteBuffer getData (StoredState entry) {
+      if (entry.myData != null) {
+         myMemoryEntries.get (entry); // update access order
+         return ByteBuffer.wrap (entry.myData, 0, entry.myDataLength);
+      }
+      else {
+         try {
+            return mySpillChannel.map (
+               FileChannel.MapMode.READ_ONLY,
+               entry.myFileOffset, entry.myDataLength);
+         }
+         catch (IOException e) {
+            throw new InternalErrorException (
+               "Error reading way point state file: " + e.getMessage());
+         }
+      }
+   }
+
+   /**
+    * Decodes the values of a key frame into the cache.
+    */
+   private void loadKeyFrame (StoredState key) {
+      if (myCachedKey != key) {
+         if (myCachedD.length < key.myDsize) {
+            myCachedD = new double[key.myDsize];
+         }
+         if (myCachedZ.length < key.myZsize) {
+            myCachedZ = new int[key.myZsize];
+         }
+         ByteBuffer buf = getData (key);
+         decodeDoubles (buf, myCachedD, key.myDsize, null);
+         decodeInts (buf, myCachedZ, key.myZsize, null);
+         myCachedKey = key;
+      }
+   }
+
+   /* --- spilling --- */
+
+   private void openSpillFile() throws IOException {
+      mySpillFile = File.createTempFile ("artisynthWayPoints", ".dat");
+      mySpillFile.deleteOnExit();
+      mySpillRaf = new RandomAccessFile (mySpillFile, "rw");
+      mySpillChannel = mySpillRaf.getChannel();
+      mySpillEnd = 0;
+   }
+
+   private void spill (StoredState entry) throws IOException {
+      if (mySpillChannel == null) {
+         openSpillFile();
+      }
+      ByteBuffer buf = ByteBuffer.wrap (entry.myData, 0, entry.myDataLength);
+      long pos = mySpillEnd;
+      while (buf.hasRemaining()) {
+         pos += mySpillChannel.write (buf, pos);
+      }
+      entry.myFileOffset = mySpillEnd;
+      entry.myData = null;
+      mySpilledEntries.add (entry);
+      mySpillEnd = pos;
+      myMemoryBytes -= entry.myDataLength;
+      mySpilledBytes += entry.myDataLength;
+   }
+
+   private void spillIfNecessary() {
+      if (myMemoryBytes <= myMemoryLimit) {
+         return;
+      }
+      try {
+         Iterator<StoredState> it = myMemoryEntries.keySet().iterator();
+         while (it.hasNext() && myMemoryBytes > myMemoryLimit) {
+            StoredState entry = it.next();
+            spill (entry);
+            it.remove();
+         }
+      }
+      catch (IOException e) {
+         System.out.println (
+            "Warning: can't write way point state file: " + e.getMessage());
+      }
+   }
+
+   /**
+    * Moves the live spilled entries to the start of the file, in order of
+    * their current offsets, and truncates the file after them. Since entries
+    * only move towards the start, each can be read before it is overwritten.
+    */
+   private void compactSpillFile() throws IOException {
+      StoredState[] entries =
+         mySpilledEntries.toArray (new StoredState[mySpilledEntries.size()]);
+      Arrays.sort (entries, new Comparator<StoredState>() {
+            public int compare (StoredState e0, StoredState e1) {
+               return Long.compare (e0.myFileOffset, e1.myFileOffset);
+            }
+         });
+      long end = 0;
+      for (StoredState entry : entries) {
+         if (entry.myFileOffset != end) {
+            ByteBuffer buf = ByteBuffer.allocate (entry.myDataLength);
+            long pos = entry.myFileOffset;
+            while (buf.hasRemaining()) {
+               pos += mySpillChannel.read (buf, pos);
+            }
+            buf.flip();
+            pos = end;
+            while (buf.hasRemaining()) {
+               pos += mySpillChannel.write (buf, pos);
+            }
+            entry.myFileOffset = end;
+         }
+         end += entry.myDataLength;
+      }
+      mySpillChannel.truncate (end);
+      mySpillEnd = end;
+   }
+
+   /**
+    * Reclaims file space held by released entries once it exceeds the space
+    * used by live ones.
+    */
+   private void compactSpillFileIfNecessary() {
+      if (mySpillChannel == null ||
+          mySpillEnd-mySpilledBytes <= mySpilledBytes) {
+         return;
+      }
+      try {
+         if (mySpilledEntries.size() == 0) {
+            mySpillChannel.truncate (0);
+            mySpillEnd = 0;
+         }
+         else {
+            compactSpillFile();
+         }
+      }
+      catch (IOException e) {
+         System.out.println (
+            "Warning: can't compact way point state file: " + e.getMessage());
+      }
+   }
+
+   private void closeSpillFile() {
+      if (mySpillRaf != null) {
+         try {
+            mySpillRaf.close();
+         }
+         catch (IOException e) {
+            // ignore
+         }
+         mySpillFile.delete();
+         mySpillRaf = null;
+         mySpillChannel = null;
+         mySpillFile = null;
+         mySpillEnd = 0;
+      }
+      mySpilledEntries.clear();
+   }
+
+   /* --- public interface --- */
+
+   /**
+    * Stores a state and returns a handle for it. The handle should be
+    * released using {@link #release} when the state is no longer needed.
+    *
+    * @param state state to store
+    * @return handle for the stored state
+    */
+   public synchronized StoredState store (ComponentState state) {
+      ArrayList<NumericState> leaves = new ArrayList<NumericState>();
+      collectNumericStates (state, leaves);
+
+      StoredState entry = new StoredState();
+      entry.myShell = createShell (state);
+      entry.myLayout = new int[4*leaves.size()];
+      for (int i=0; i<leaves.size(); i++) {
+         NumericState leaf = leaves.get(i);
+         entry.myLayout[4*i] = leaf.dsize();
+         entry.myLayout[4*i+1] = leaf.zsize();
+         entry.myLayout[4*i+2] = leaf.doffset();
+         entry.myLayout[4*i+3] = leaf.zoffset();
+         entry.myDsize += leaf.dsize();
+         entry.myZsize += leaf.zsize();
+      }
+      double[] dbuf = new double[entry.myDsize];
+      int[] zbuf = new int[entry.myZsize];
+      int doff = 0;
+      int zoff = 0;
+      for (NumericState leaf : leaves) {
+         System.arraycopy (leaf.dbuffer(), 0, dbuf, doff, leaf.dsize());
+         doff += leaf.dsize();
+         System.arraycopy (leaf.zbuffer(), 0, zbuf, zoff, leaf.zsize());
+         zoff += leaf.zsize();
+      }
+
+      StoredState key = myCurrentKey;
+      if (key == null ||
+          key.myDsize != entry.myDsize || key.myZsize != entry.myZsize ||
+          myDeltasSinceKey+1 >= myKeyFrameInterval) {
+         key = null;
+      }
+      myBufLen = 0;
+      if (key == null) {
+         encodeDoubles (dbuf, entry.myDsize, null);
+         encodeInts (zbuf, entry.myZsize, null);
+         if (myCurrentKey != null) {
+            release (myCurrentKey);
+         }
+         // the store itself holds a reference to the current key frame
+         entry.myRefCount = 2;
+         myCurrentKey = entry;
+         myDeltasSinceKey = 0;
+         myNumKeyFrames++;
+         // the new key frame values can be cached without decoding
+         myCachedKey = entry;
+         myCachedD = dbuf;
+         myCachedZ = zbuf;
+      }
+      else {
+         loadKeyFrame (key);
+         encodeDoubles (dbuf, entry.myDsize, myCachedD);
+         encodeInts (zbuf, entry.myZsize, myCachedZ);
+         entry.myKeyFrame = key;
+         key.myRefCount++;
+         entry.myRefCount = 1;
+         myDeltasSinceKey++;
+      }
+      entry.myData = Arrays.copyOf (myBuf, myBufLen);
+      entry.myDataLength = myBufLen;
+      myMemoryEntries.put (entry, entry);
+      myMemoryBytes += myBufLen;
+      myRawBytes += entry.numRawBytes();
+      myNumEntries++;
+      spillIfNecessary();
+      return entry;
+   }
+
+   /**
+    * Restores a previously stored state. A new state object is created with
+    * each call.
+    *
+    * @param entry handle for the stored state
+    * @return restored state
+    */
+   public synchronized ComponentState restore (StoredState entry) {
+      if (entry.myRefCount <= 0) {
+         throw new IllegalArgumentException ("stored state has been released");
+      }
+      long t0 = System.nanoTime();
+      double[] dbuf = new double[entry.myDsize];
+      int[] zbuf = new int[entry.myZsize];
+      if (entry.isKeyFrame()) {
+         loadKeyFrame (entry);
+         System.arraycopy (myCachedD, 0, dbuf, 0, entry.myDsize);
+         System.arraycopy (myCachedZ, 0, zbuf, 0, entry.myZsize);
+      }
+      else {
+         loadKeyFrame (entry.myKeyFrame);
+         ByteBuffer buf = getData (entry);
+         decodeDoubles (buf, dbuf, entry.myDsize, myCachedD);
+         decodeInts (buf, zbuf, entry.myZsize, myCachedZ);
+      }
+      ComponentState state = instantiate (
+         entry.myShell, entry.myLayout, new int[3], dbuf, zbuf);
+      long nsec = System.nanoTime()-t0;
+      myNumRestores++;
+      myTotalRestoreNsec += nsec;
+      myMaxRestoreNsec = Math.max (myMaxRestoreNsec, nsec);
+      return state;
+   }
+
+   /**
+    * Releases a stored state. The handle may not be used after this call.
+    *
+    * @param entry handle for the stored state
+    */
+   public synchronized void release (StoredState entry) {
+      if (entry.myRefCount <= 0) {
+         return;
+      }
+      if (--entry.myRefCount == 0) {
+         if (entry.myData != null) {
+            myMemoryEntries.remove (entry);
+            myMemoryBytes -= entry.myDataLength;
+         }
+         else {
+            mySpilledEntries.remove (entry);
+            mySpilledBytes -= entry.myDataLength;
+         }
+         myRawBytes -= entry.numRawBytes();
+         myNumEntries--;
+         if (entry.isKeyFrame()) {
+            myNumKeyFrames--;
+         }
+         else {
+            release (entry.myKeyFrame);
+         }
+         if (myCachedKey == entry) {
+            myCachedKey = null;
+         }
+         entry.myData = null;
+         if (myCurrentKey != null && myCurrentKey.myRefCount == 1 &&
+             myNumEntries == 1) {
+            // the current key frame is held only by the store itself, as
+            // happens when all way points have been cleared, so drop it
+            StoredState key = myCurrentKey;
+            myCurrentKey = null;
+            release (key);
+         }
+         compactSpillFileIfNecessary();
+      }
+   }
+
+   /**
+    * Releases all resources used by this store, including its disk file.
+    * Stored states may not be restored after this call.
+    */
+   public synchronized void dispose() {
+      if (myCurrentKey != null) {
+         release (myCurrentKey);
+         myCurrentKey = null;
+      }
+      myMemoryEntries.clear();
+      myCachedKey = null;
+      closeSpillFile();
+   }
+
+   /**
+    * Returns the number of states currently stored, including key frames
+    * that are retained only because they are referenced by deltas.
+    *
+    * @return number of stored entries
+    */
+   public synchronized int numEntries() {
+      return myNumEntries;
+   }
+
+   /**
+    * Returns the number of key frames currently stored.
+    *
+    * @return number of key frames
+    */
+   public synchronized int numKeyFrames() {
+      return myNumKeyFrames;
+   }
+
+   /**
+    * Returns the number of bytes of encoded state data held in memory.
+    *
+    * @return memory usage, in bytes
+    */
+   public synchronized long getMemoryUsage() {
+      return myMemoryBytes;
+   }
+
+   /**
+    * Returns the number of bytes of encoded state data stored on disk.
+    *
+    * @return disk usage, in bytes
+    */
+   public synchronized long getDiskUsage() {
+      return mySpilledBytes;
+   }
+
+   /**
+    * Returns the current length of the file used to hold spilled entries,
+    * including space left by released entries that has not yet been
+    * reclaimed.
+    *
+    * @return spill file length, in bytes
+    */
+   public synchronized long getSpillFileLength() {
+      return mySpillEnd;
+   }
+
+   /**
+    * Returns the number of bytes that would be required to store the double
+    * and integer data of all entries without compression.
+    *
+    * @return uncompressed size, in bytes
+    */
+   public synchronized long getUncompressedSize() {
+      return myRawBytes;
+   }
+
+   /**
+    * Returns the ratio of the uncompressed size to the encoded size of the
+    * stored data.
+    *
+    * @return compression ratio
+    */
+   public synchronized double getCompressionRatio() {
+      long encoded = myMemoryBytes + mySpilledBytes;
+      return encoded > 0 ? myRawBytes/(double)encoded : 1;
+   }
+
+   /**
+    * Returns the number of restores performed since the last call to {@link
+    * #clearStatistics}.
+    *
+    * @return number of restores
+    */
+   public synchronized int numRestores() {
+      return myNumRestores;
+   }
+
+   /**
+    * Returns the average time required to restore a state, in msec.
+    *
+    * @return average restore time
+    */
+   public synchronized double getAverageRestoreTime() {
+      return myNumRestores > 0 ? 1e-6*myTotalRestoreNsec/myNumRestores : 0;
+   }
+
+   /**
+    * Returns the maximum time required to restore a state, in msec.
+    *
+    * @return maximum restore time
+    */
+   public synchronized double getMaxRestoreTime() {
+      return 1e-6*myMaxRestoreNsec;
+   }
+
+   /**
+    * Clears the restore time statistics.
+    */
+   public synchronized void clearStatistics() {
+      myNumRestores = 0;
+      myTotalRestoreNsec = 0;
+      myMaxRestoreNsec = 0;
+   }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package artisynth.core.probes;
+
+import java.util.ArrayList;
+
+import artisynth.core.modelbase.ComponentState;
+import artisynth.core.modelbase.CompositeState;
+import artisynth.core.modelbase.EmptyState;
+import artisynth.core.modelbase.NumericState;
+import artisynth.core.probes.WayPointStateStore.StoredState;
+import maspack.util.RandomGenerator;
+import maspack.util.TestException;
+import maspack.util.UnitTest;
+
+public class WayPointStateStoreTest extends UnitTest {
+
+   NumericState createNumericState (int dsize, int zsize) {
+      NumericState state = new NumericState();
+      double val = RandomGenerator.nextDouble (-1, 1);
+      for (int i=0; i<dsize; i++) {
+         val += 1e-3*RandomGenerator.nextDouble (-1, 1);
+         state.dput (i%7 == 0 ? 0 : val);
+      }
+      for (int i=0; i<zsize; i++) {
+         state.zput (RandomGenerator.nextInt (-5, 100));
+      }
+      if (dsize > 0) {
+         state.dsetOffset (dsize/2);
+      }
+      return state;
+   }
+
+   CompositeState createState (int size) {
+      CompositeState state = new CompositeState();
+      state.addState (createNumericState (size, 10));
+      state.addState (new EmptyState());
+      CompositeState sub = new CompositeState();
+      sub.addState (createNumericState (0, 3));
+      sub.addState (createNumericState (size/3, 0));
+      state.addState (sub);
+      return state;
+   }
+
+   void checkState (ComponentState state, ComponentState check) {
+      if (!check.equals (state)) {
+         throw new TestException ("restored state differs from original");
+      }
+      if (check instanceof CompositeState) {
+         CompositeState ccheck = (CompositeState)check;
+         CompositeState cstate = (CompositeState)state;
+         for (int i=0; i<ccheck.numSubStates(); i++) {
+            checkState (cstate.getState(i), ccheck.getState(i));
+         }
+      }
+      else if (check instanceof NumericState) {
+         checkEquals ("doffset",
+            ((NumericState)state).doffset(), ((NumericState)check).doffset());
+      }
+   }
+
+   void checkRestore (
+      WayPointStateStore store, ArrayList<StoredState> entries,
+      ArrayList<CompositeState> states) {
+      for (int i=0; i<entries.size(); i++) {
+         if (entries.get(i) != null) {
+            checkState (store.restore (entries.get(i)), states.get(i));
+         }
+      }
+   }
+
+   /**
+    * Stores states with no memory allowance, so that they are all spilled to
+    * disk, and checks that they restore correctly as way points are
+    * overwritten and cleared, and that the spill file shrinks accordingly.
+    */
+   public void testSpillRoundTrip (int size) {
+      int num = 40;
+      WayPointStateStore store = new WayPointStateStore();
+      store.setMemoryLimit (0);
+      ArrayList<StoredState> entries = new ArrayList<StoredState>();
+      ArrayList<CompositeState> states = new ArrayList<CompositeState>();
+      for (int i=0; i<num; i++) {
+         CompositeState state = createState (size);
+         states.add (state);
+         entries.add (store.store (state));
+      }
+      if (store.getMemoryUsage() != 0 || store.getDiskUsage() == 0) {
+         throw new TestException ("stored states were not spilled to disk");
+      }
+      checkRestore (store, entries, states);
+
+      // clear the first three quarters of the way points
+      int nclear = 3*num/4;
+      long length = store.getSpillFileLength();
+      for (int i=0; i<nclear; i++) {
+         store.release (entries.get(i));
+         entries.set (i, null);
+      }
+      if (store.getSpillFileLength() >= length) {
+         throw new TestException (
+            "spill file length " + store.getSpillFileLength() +
+            " not reduced from " + length + " after clearing way points");
+      }
+      if (store.getSpillFileLength() > 2*store.getDiskUsage()) {
+         throw new TestException (
+            "spill file length " + store.getSpillFileLength() +
+            " exceeds twice the disk usage " + store.getDiskUsage());
+      }
+      checkRestore (store, entries, states);
+
+      // overwrite the remaining way points several times
+      for (int k=0; k<3; k++) {
+         for (int i=nclear; i<num; i++) {
+            CompositeState state = createState (size);
+            StoredState entry = store.store (state);
+            store.release (entries.get(i));
+            states.set (i, state);
+            entries.set (i, entry);
+         }
+         if (store.getSpillFileLength() > 2*store.getDiskUsage()) {
+            throw new TestException (
+               "spill file length " + store.getSpillFileLength() +
+               " exceeds twice the disk usage " + store.getDiskUsage() +
+               " after overwriting way points");
+         }
+         checkRestore (store, entries, states);
+      }
+
+      // clear everything
+      for (int i=nclear; i<num; i++) {
+         store.release (entries.get(i));
+      }
+      checkEquals ("entries after clear", store.numEntries(), 0);
+      checkEquals ("disk usage after clear", store.getDiskUsage(), 0L);
+      checkEquals ("spill file length after clear",
+         store.getSpillFileLength(), 0L);
+
+      // check that the store is still usable
+      CompositeState state = createState (size);
+      StoredState entry = store.store (state);
+      checkState (store.restore (entry), state);
+      store.dispose();
+   }
+
+   public void test() {
+      for (int size : new int[] { 1, 100, 10000 }) {
+         testSpillRoundTrip (size);
+      }
+   }
+
+   public static void main (String[] args) {
+      WayPointStateStoreTest tester = new WayPointStateStoreTest();
+      RandomGenerator.setSeed (0x1234);
+      tester.runtest();
+   }
+}
@@ -21,10 +21,12 @@ import javax.swing.JFrame;
 import javax.swing.JTabbedPane;
 import javax.swing.JMenuItem;
 
+import maspack.concurrency.ParallelLoopManager;
 import maspack.matrix.AxisAngle;
 import maspack.matrix.NumericalException;
 import maspack.matrix.Point3d;
 import maspack.matrix.Vector3d;
+import maspack.properties.Property;
 import maspack.properties.PropertyList;
 import maspack.render.IsRenderable;
 import maspack.render.Renderer;
@@ -66,6 +68,7 @@ import artisynth.core.modelbase.StepAdjustment;
 import artisynth.core.modelbase.StructureChangeEvent;
 import artisynth.core.modelbase.Traceable;
 import artisynth.core.modelbase.ComponentChangeEvent.Code;
+import artisynth.core.probes.NumericProbeBase;
 import artisynth.core.probes.Probe;
 import artisynth.core.probes.TracingProbe;
 import artisynth.core.probes.WayPoint;
@@ -112,6 +115,14 @@ public class RootModel extends RenderableModelBase
    protected boolean myAdaptiveStepping = DEFAULT_ADAPTIVE_STEPPING;
    protected double myMinStepSize = DEFAULT_MIN_STEP_SIZE;
 
+   protected int myNumAdvanceThreads = DEFAULT_NUM_ADVANCE_THREADS;
+   private ParallelLoopManager myAdvanceManager = null;
+   // groups of models that must be advanced together, because they share
+   // components. Recomputed when the model info is updated.
+   private ArrayList<ArrayList<ModelInfo>> myModelGroups = null;
+   // true while models are being advanced concurrently
+   private volatile boolean myConcurrentAdvance = false;
+
    private static final Point3d DEFAULT_VIEWER_CENTER = new Point3d();
    private static final Point3d DEFAULT_VIEWER_EYE = new Point3d (0, -1, 0);
    private static final AxisAngle DEFAULT_VIEW_ORIENTATION = 
@@ -119,6 +130,7 @@ public class RootModel extends RenderableModelBase
    private static final double DEFAULT_MIN_STEP_SIZE = 1e-7;
    private static final double DEFAULT_MAX_STEP_SIZE = 0.01;
    private static final boolean DEFAULT_ADAPTIVE_STEPPING = false;
+   private static final int DEFAULT_NUM_ADVANCE_THREADS = 1;
 
    AxisAngle myDefaultViewOrientation = 
       new AxisAngle (DEFAULT_VIEW_ORIENTATION);
@@ -510,6 +522,10 @@ public class RootModel extends RenderableModelBase
       myProps.add (
          "adaptiveStepping",
          "enables/disables adaptive step sizing", DEFAULT_ADAPTIVE_STEPPING);
+      myProps.add (
+         "numAdvanceThreads",
+         "number of threads used to advance independent models concurrently",
+         DEFAULT_NUM_ADVANCE_THREADS, "[1,inf)");
       // remove and replace maxStepSize to redefine default value and range
       myProps.remove ("maxStepSize");
       myProps.add (
@@ -538,6 +554,47 @@ public class RootModel extends RenderableModelBase
    public void setMinStepSize (double step) {
       myMinStepSize = step;
    }
+
+   /**
+    * Returns the number of threads used to advance models concurrently. See
+    * {@link #setNumAdvanceThreads}.
+    *
+    * @return number of model advance threads
+    */
+   public int getNumAdvanceThreads() {
+      return myNumAdvanceThreads;
+   }
+
+   /**
+    * Sets the number of threads used to advance models concurrently. If
+    * greater than 1, then within each advance interval, models that do not
+    * share components are advanced in separate threads. Models that
+    * reference each other's components, or that are connected by a
+    * controller, monitor or probe associated with one of them, are placed in
+    * the same group and advanced serially, in the order in which they were
+    * added. Controllers, monitors and probes that are not associated with a
+    * specific model are applied serially before and after the models are
+    * advanced. Adaptive step size reductions are handled independently for
+    * each model. The default value is 1.
+    *
+    * <p>Controllers, monitors and probes that are associated with a model
+    * are applied in that model's thread, and so should not modify other
+    * models unless they reference them explicitly.
+    *
+    * @param num number of model advance threads
+    */
+   public void setNumAdvanceThreads (int num) {
+      if (num < 1) {
+         num = 1;
+      }
+      if (num != myNumAdvanceThreads) {
+         myNumAdvanceThreads = num;
+         if (myAdvanceManager != null) {
+            myAdvanceManager.shutdown();
+            myAdvanceManager = null;
+         }
+      }
+   }
    
    public void setMaxStepSize (double step) {
       if (step <= 0) {
@@ -1238,9 +1295,7 @@ public class RootModel extends RenderableModelBase
    public void componentChanged (ComponentChangeEvent e) {
       // no need to notify parent since there is none
       if (e.getCode() == ComponentChangeEvent.Code.STRUCTURE_CHANGED) {
-         synchronized (this) {
-            myModelInfoValid = false;
-         }
+         invalidateModelInfo();
       }
       // if called in constructor, myControlPanels might still be null ...
       if (myControlPanels != null) {
@@ -1252,10 +1307,21 @@ public class RootModel extends RenderableModelBase
    }
 
    public void notifyStructureChanged (Object comp) {
-      synchronized (this) {
+      invalidateModelInfo();
+      super.notifyStructureChanged (comp);
+   }
+
+   private void invalidateModelInfo() {
+      if (myConcurrentAdvance) {
+         // the lock is held by the thread coordinating the concurrent model
+         // advance, so acquiring it from a model thread would deadlock
          myModelInfoValid = false;
       }
-      super.notifyStructureChanged (comp);
+      else {
+         synchronized (this) {
+            myModelInfoValid = false;
+         }
+      }
    }
 
    private ModelInfo getModelInfo (ModelAgent agent)  {
@@ -1318,6 +1384,123 @@ public class RootModel extends RenderableModelBase
       }
       myRootInfo.createState();
       myRootInfo.outputProbes.add (myWayPoints);
+      myModelGroups = null;
+   }
+
+   /**
+    * Finds the index of the model in myModels that contains a component,
+    * or -1 if there is no such model.
+    */
+   private int findModelIndex (
+      ModelComponent comp, HashMap<ModelComponent,Integer> modelIdxs) {
+      while (comp != null) {
+         Integer idx = modelIdxs.get (comp);
+         if (idx != null) {
+            return idx;
+         }
+         comp = comp.getParent();
+      }
+      return -1;
+   }
+
+   private int findGroupRoot (int[] parents, int i) {
+      while (parents[i] != i) {
+         parents[i] = parents[parents[i]];
+         i = parents[i];
+      }
+      return i;
+   }
+
+   /**
+    * Merges the group of model i with the groups of all models containing
+    * the components in refs.
+    */
+   private void mergeModelGroups (
+      int i, List<ModelComponent> refs,
+      HashMap<ModelComponent,Integer> modelIdxs, int[] parents) {
+      for (ModelComponent r : refs) {
+         int j = findModelIndex (r, modelIdxs);
+         if (j != -1 && j != i) {
+            parents[findGroupRoot (parents, j)] = findGroupRoot (parents, i);
+         }
+      }
+   }
+
+   private void getAgentReferences (
+      ModelComponent agent, List<ModelComponent> refs) {
+      agent.getHardReferences (refs);
+      agent.getSoftReferences (refs);
+      if (agent instanceof NumericProbeBase) {
+         for (Property prop : ((NumericProbeBase)agent).getAttachedProperties()) {
+            ModelComponent host = ComponentUtils.getPropertyComponent (prop);
+            if (host != null) {
+               refs.add (host);
+            }
+         }
+      }
+   }
+
+   /**
+    * Partitions the models into groups that can be advanced independently.
+    * Two models are placed in the same group if either references a
+    * component of the other, or if a controller, monitor or probe associated
+    * with one references a component of the other.
+    */
+   private ArrayList<ArrayList<ModelInfo>> createModelGroups() {
+      int nmods = myModels.size();
+      HashMap<ModelComponent,Integer> modelIdxs =
+         new HashMap<ModelComponent,Integer>();
+      int[] parents = new int[nmods];
+      for (int i=0; i<nmods; i++) {
+         modelIdxs.put (myModels.get(i), i);
+         parents[i] = i;
+      }
+      ArrayList<ModelComponent> refs = new ArrayList<ModelComponent>();
+      LinkedList<ModelComponent> queue = new LinkedList<ModelComponent>();
+      for (int i=0; i<nmods; i++) {
+         Model model = myModels.get(i);
+         queue.add (model);
+         while (!queue.isEmpty()) {
+            ModelComponent c = queue.poll();
+            refs.clear();
+            c.getHardReferences (refs);
+            c.getSoftReferences (refs);
+            mergeModelGroups (i, refs, modelIdxs, parents);
+            if (c instanceof CompositeComponent) {
+               CompositeComponent cc = (CompositeComponent)c;
+               for (int k=0; k<cc.numComponents(); k++) {
+                  queue.add (cc.get(k));
+               }
+            }
+         }
+         ModelInfo info = myModelInfo.get (model);
+         refs.clear();
+         for (Controller ctl : info.controllers) {
+            getAgentReferences (ctl, refs);
+         }
+         for (Monitor mon : info.monitors) {
+            getAgentReferences (mon, refs);
+         }
+         for (Probe p : info.inputProbes) {
+            getAgentReferences (p, refs);
+         }
+         for (Probe p : info.outputProbes) {
+            getAgentReferences (p, refs);
+         }
+         mergeModelGroups (i, refs, modelIdxs, parents);
+      }
+      LinkedHashMap<Integer,ArrayList<ModelInfo>> groupMap =
+         new LinkedHashMap<Integer,ArrayList<ModelInfo>>();
+      for (int i=0; i<nmods; i++) {
+         int root = findGroupRoot (parents, i);
+         ArrayList<ModelInfo> group = groupMap.get (root);
+         if (group == null) {
+            group = new ArrayList<ModelInfo>();
+            groupMap.put (root, group);
+         }
+         group.add (myModelInfo.get (myModels.get(i)));
+      }
+      return new ArrayList<ArrayList<ModelInfo>> (groupMap.values());
    }
    
    public boolean hasState() {
@@ -1471,6 +1654,10 @@ public class RootModel extends RenderableModelBase
    }
 
    public synchronized void applyInputProbes (List<Probe> list, double t) {
+      doApplyInputProbes (list, t);
+   }
+
+   private void doApplyInputProbes (List<Probe> list, double t) {
       for (Probe p : list) {
          if (p.isActive() && 
              TimeBase.compare (p.getStartTime(), t) <= 0 && 
@@ -1482,6 +1669,11 @@ public class RootModel extends RenderableModelBase
 
    public synchronized void applyControllers (
       List<Controller> list, double t0, double t1) {
+      doApplyControllers (list, t0, t1);
+   }
+
+   private void doApplyControllers (
+      List<Controller> list, double t0, double t1) {
 
       for (Controller c : list) {
          c.apply (t0, t1);
@@ -1490,6 +1682,11 @@ public class RootModel extends RenderableModelBase
 
    public synchronized void applyMonitors (
       List<Monitor> list, double t0, double t1) {
+      doApplyMonitors (list, t0, t1);
+   }
+
+   private void doApplyMonitors (
+      List<Monitor> list, double t0, double t1) {
 
       for (Monitor m : list) {
          m.apply (t0, t1);
@@ -1498,6 +1695,11 @@ public class RootModel extends RenderableModelBase
 
    public synchronized void applyOutputProbes (
       List<Probe> list, double t1, ModelInfo info) {
+      doApplyOutputProbes (list, t1, info);
+   }
+
+   private void doApplyOutputProbes (
+      List<Probe> list, double t1, ModelInfo info) {
 
       // see if t1 coincides with the model's max step size
       double maxStep = info.model.getMaxStepSize();
@@ -1573,13 +1775,19 @@ public class RootModel extends RenderableModelBase
    protected void advanceModel (
       ModelInfo info, double t0, double t1, int flags) {
 
+      // When models are advanced concurrently, the coordinating thread holds
+      // the lock on this RootModel, and each model thread instead
+      // synchronizes on its own model info.
+      Object lock = (myConcurrentAdvance ? info : this);
       double ta = t0;
       if (t0 == 0) {
-         applyOutputProbes (info.outputProbes, t0, info);
+         synchronized (lock) {
+            doApplyOutputProbes (info.outputProbes, t0, info);
+         }
       }
       while (ta < t1) {
          double s;
-         synchronized (this) {
+         synchronized (lock) {
             info.getModelAndControllersState (info.state);
          }
          if (testSaveAndRestoreState) {  
@@ -1596,14 +1804,14 @@ public class RootModel extends RenderableModelBase
          }
          double tb = info.getNextAdvanceTime (ta, t1);
          do {
-            synchronized (this) {
+            synchronized (lock) {
                StepAdjustment adj;
                //info.model.setDefaultInputs (ta, tb);
                adj = info.model.preadvance (ta, tb, flags);
                s = getRecommendedScaling (adj);
                if (s >= 1) {
-                  applyInputProbes (info.inputProbes, tb);
-                  applyControllers (info.controllers, ta, tb);
+                  doApplyInputProbes (info.inputProbes, tb);
+                  doApplyControllers (info.controllers, ta, tb);
                   adj = info.model.advance (ta, tb, flags);
                   s = getRecommendedScaling (adj);
                }
@@ -1619,13 +1827,62 @@ public class RootModel extends RenderableModelBase
          if (!(myAdaptiveStepping && s < 1)) {
             // then we have advanced to tb:
             info.updateStepInfo (s);
-            applyMonitors (info.monitors, ta, tb);
-            applyOutputProbes (info.outputProbes, tb, info);
+            synchronized (lock) {
+               doApplyMonitors (info.monitors, ta, tb);
+               doApplyOutputProbes (info.outputProbes, tb, info);
+            }
             ta = tb;
          }
       }
    }
 
+   /**
+    * Advances the models from t0 to t1, with groups of models that do not
+    * share components being advanced concurrently.
+    */
+   protected void advanceModelsConcurrently (
+      final double t0, final double t1, final int flags) {
+
+      if (myModelGroups == null) {
+         myModelGroups = createModelGroups();
+      }
+      final ArrayList<ArrayList<ModelInfo>> groups = myModelGroups;
+      if (groups.size() < 2) {
+         for (Model m : myModels) {
+            advanceModel (myModelInfo.get(m), t0, t1, flags);
+         }
+         return;
+      }
+      if (myAdvanceManager == null) {
+         myAdvanceManager =
+            new ParallelLoopManager ("modelAdvance", myNumAdvanceThreads);
+      }
+      final int nthreads =
+         Math.min (myAdvanceManager.getNumThreads(), groups.size());
+      // hold the lock for the whole advance, so that other threads (such as
+      // the GUI) are excluded as they are for serial advances
+      synchronized (this) {
+         myConcurrentAdvance = true;
+         try {
+            myAdvanceManager.execute (
+               nthreads, new ParallelLoopManager.RangeTask() {
+                  public void run (int tidx, int start, int end) {
+                     for (int t=start; t<end; t++) {
+                        for (int k=t; k<groups.size(); k+=nthreads) {
+                           for (ModelInfo info : groups.get(k)) {
+                              advanceModel (info, t0, t1, flags);
+                           }
+                        }
+                     }
+                  }
+               });
+         }
+         finally {
+            myConcurrentAdvance = false;
+         }
+      }
+   }
+
    protected void doadvance (double t0, double t1, int flags) {
       
       double ta = t0;
@@ -1638,8 +1895,13 @@ public class RootModel extends RenderableModelBase
          //setDefaultInputs (ta, tb);
          applyInputProbes (myRootInfo.inputProbes, tb);
          applyControllers (myRootInfo.controllers, ta, tb);
-         for (Model m : myModels) {
-            advanceModel (myModelInfo.get(m), ta, tb, flags);
+         if (myNumAdvanceThreads > 1 && myModels.size() > 1) {
+            advanceModelsConcurrently (ta, tb, flags);
+         }
+         else {
+            for (Model m : myModels) {
+               advanceModel (myModelInfo.get(m), ta, tb, flags);
+            }
          }
          applyMonitors (myRootInfo.monitors, ta, tb);
          applyOutputProbes (myRootInfo.outputProbes, tb, myRootInfo);
@@ -1728,6 +1990,10 @@ public class RootModel extends RenderableModelBase
       for (Model m : myModels) {
          m.dispose();
       }
+      if (myAdvanceManager != null) {
+         myAdvanceManager.shutdown();
+         myAdvanceManager = null;
+      }
       for (Controller c : myControllers) {
          c.dispose();
       }
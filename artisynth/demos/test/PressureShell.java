@@ -38,11 +38,14 @@ public class PressureShell extends RootModel {
 
    /**
     * This controller sets the forces of the nodes of the interior surface in
-    * response to the (uniform) pressure inside the shell.
+    * response to the (uniform) pressure inside the shell. The forces are
+    * accumulated on the surface mesh vertices and then passed to the nodes
+    * in a single batch.
     */
    private class PressureController extends ControllerBase {
 
       FemModel3d myFem;
+      double[] myVertexForces = new double[0];
 
       PressureController (FemModel3d fem) {
          myFem = fem;
@@ -50,14 +53,24 @@ public class PressureShell extends RootModel {
 
       public void apply (double t0, double t1) {
          FemMeshComp meshc = myFem.getSurfaceMeshComp();
+         int numv = meshc.numVertices();
+         if (myVertexForces.length != 3*numv) {
+            myVertexForces = new double[3*numv];
+         }
+         else {
+            Arrays.fill (myVertexForces, 0);
+         }
          Vector3d f = new Vector3d();
          for (Face face : myInteriorFaces) {
             f.scale (-face.computeArea()*getPressure(), face.getNormal());
             for (Vertex3d vtx : face.getVertices()) {
-               FemNode3d n = meshc.getNodeForVertex (vtx);
-               n.addForce (f);
+               int idx = 3*vtx.getIndex();
+               myVertexForces[idx  ] += f.x;
+               myVertexForces[idx+1] += f.y;
+               myVertexForces[idx+2] += f.z;
             }
          }
+         meshc.distributeVertexForces (myVertexForces);
       }
    }
 
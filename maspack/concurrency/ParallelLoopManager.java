@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.concurrency;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Executes index-range loops over a fixed number of threads. The range
+ * <code>[0,n)</code> is always split into the same set of contiguous blocks
+ * for a given thread count, with block <code>k</code> handled by thread
+ * <code>k</code>. Results that are accumulated per-thread and then reduced in
+ * thread order are therefore reproducible from run to run, provided the
+ * thread count does not change.
+ *
+ * <p>The calling thread processes the first block itself, so a manager with
+ * one thread simply executes the loop inline. The remaining blocks are
+ * submitted to a {@link SimpleThreadManager}, whose threads are released
+ * after a period of inactivity.
+ */
+public class ParallelLoopManager {
+
+   /**
+    * Body of a loop executed by {@link ParallelLoopManager}.
+    */
+   public interface RangeTask {
+      /**
+       * Processes indices <code>[start,end)</code> of the loop.
+       *
+       * @param tidx index of the thread executing this block, in the
+       * range <code>0</code> to <code>numThreads-1</code>
+       * @param start first index of the block
+       * @param end one past the last index of the block
+       */
+      public void run (int tidx, int start, int end);
+   }
+
+   private String myName;
+   private int myNumThreads;
+   private SimpleThreadManager myThreadManager;
+
+   /**
+    * Creates a new manager with a specified thread count.
+    *
+    * @param name base name for the worker threads
+    * @param numThreads number of threads (including the calling thread)
+    */
+   public ParallelLoopManager (String name, int numThreads) {
+      myName = name;
+      setNumThreads (numThreads);
+   }
+
+   /**
+    * Returns the number of available processors, which is a reasonable
+    * upper limit on the number of threads.
+    *
+    * @return number of available processors
+    */
+   public static int getMaxUsefulThreads() {
+      return Runtime.getRuntime().availableProcessors();
+   }
+
+   /**
+    * Returns the number of threads used by this manager.
+    *
+    * @return number of threads
+    */
+   public int getNumThreads() {
+      return myNumThreads;
+   }
+
+   /**
+    * Sets the number of threads used by this manager. Values less than 1 are
+    * set to 1.
+    *
+    * @param num number of threads
+    */
+   public synchronized void setNumThreads (int num) {
+      if (num < 1) {
+         num = 1;
+      }
+      if (num != myNumThreads) {
+         myNumThreads = num;
+         if (myThreadManager != null) {
+            myThreadManager.shutdown();
+            myThreadManager = null;
+         }
+      }
+   }
+
+   private SimpleThreadManager getThreadManager() {
+      if (myThreadManager == null) {
+         myThreadManager = new SimpleThreadManager (myName, myNumThreads-1);
+      }
+      return myThreadManager;
+   }
+
+   /**
+    * Returns the start of the block of <code>[0,n)</code> assigned to
+    * thread <code>k</code> when the range is divided among
+    * <code>nthreads</code> threads. The block for thread <code>k</code>
+    * extends to the start of the block for thread <code>k+1</code>.
+    *
+    * @param k thread index (may equal <code>nthreads</code>)
+    * @param n size of the range
+    * @param nthreads number of threads
+    * @return start index of the block
+    */
+   public static int blockStart (int k, int n, int nthreads) {
+      return (int)(((long)k*n)/nthreads);
+   }
+
+   /**
+    * Executes a loop over the range <code>[0,n)</code>, dividing it into
+    * contiguous blocks that are handled concurrently. The method returns
+    * once all blocks have been processed. If any block throws an exception
+    * or error, the one thrown by the lowest numbered such block is rethrown
+    * in the calling thread, after all blocks have finished.
+    *
+    * @param n size of the range
+    * @param task loop body
+    */
+   public void execute (int n, final RangeTask task) {
+      int nthreads = Math.min (myNumThreads, n);
+      if (nthreads <= 1) {
+         if (n > 0) {
+            task.run (0, 0, n);
+         }
+         return;
+      }
+      ArrayList<Future<?>> futures = new ArrayList<Future<?>>(nthreads-1);
+      SimpleThreadManager threads;
+      synchronized (this) {
+         threads = getThreadManager();
+      }
+      for (int k=1; k<nthreads; k++) {
+         final int tidx = k;
+         final int start = blockStart (k, n, nthreads);
+         final int end = blockStart (k+1, n, nthreads);
+         futures.add (
+            threads.submit (new Runnable() {
+               public void run() {
+                  task.run (tidx, start, end);
+               }
+            }));
+      }
+      Throwable firstExc = null;
+      try {
+         task.run (0, 0, blockStart (1, n, nthreads));
+      }
+      catch (RuntimeException e) {
+         firstExc = e;
+      }
+      catch (Error e) {
+         firstExc = e;
+      }
+      // always wait for all blocks, so that no worker is still running
+      // when we return
+      for (Future<?> fut : futures) {
+         try {
+            fut.get();
+         }
+         catch (ExecutionException e) {
+            if (firstExc == null) {
+               Throwable cause = e.getCause();
+               if (cause instanceof RuntimeException ||
+                   cause instanceof Error) {
+                  firstExc = cause;
+               }
+               else {
+                  firstExc = new RuntimeException (cause);
+               }
+            }
+         }
+         catch (InterruptedException e) {
+            if (firstExc == null) {
+               firstExc = new RuntimeException (e);
+            }
+         }
+      }
+      if (firstExc instanceof Error) {
+         throw (Error)firstExc;
+      }
+      else if (firstExc != null) {
+         throw (RuntimeException)firstExc;
+      }
+   }
+
+   /**
+    * Releases the worker threads associated with this manager. The manager
+    * can still be used afterwards, in which case new threads are created as
+    * needed.
+    */
+   public synchronized void shutdown() {
+      if (myThreadManager != null) {
+         myThreadManager.shutdown();
+         myThreadManager = null;
+      }
+   }
+}
@@ -62,10 +62,14 @@ public class SimpleThreadManager implements ExecutorService {
    public SimpleThreadManager(String name, int nThreads,
      long timeoutMS) {
 
+      // use nThreads core threads, since with an unbounded queue a pool
+      // never grows beyond its core size; core threads are still released
+      // after the time-out
       _mainExecutorService =
          new ThreadPoolExecutor(
-            0, nThreads, timeoutMS, TimeUnit.MILLISECONDS,
+            nThreads, nThreads, timeoutMS, TimeUnit.MILLISECONDS,
             new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory(name));
+      _mainExecutorService.allowCoreThreadTimeOut(true);
    }
 
    /**
@@ -26,6 +26,10 @@ import maspack.matrix.Vector3d;
  * Point Set Registration: Coherent Point Drift, Andriy Myronenko and Xubo Song
  * 2010
  * 
+ * This implementation stores dense MxN probability and MxM kernel matrices,
+ * and so is limited to fairly small point sets. For large sets, see
+ * {@link SparseCPD}.
+ * 
  */
 public class CPD {
 
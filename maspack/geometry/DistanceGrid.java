@@ -62,6 +62,7 @@ public class DistanceGrid implements Renderable {
    protected Vector3d myCellWidths;     // cell widths along x, y, z
    protected double[] myPhi;            // distance values at each vertex
    protected Vector3d[] myNormals;      // normal values at each vertex
+   protected boolean myNormalsComputed; // true if all normals are computed
    public static double OUTSIDE = Double.MAX_VALUE;
 
    // colors, colorMap and color indices which can be used to assign colors to
@@ -358,6 +359,7 @@ public class DistanceGrid implements Renderable {
 
       myPhi = new double [numV];
       myNormals = new Vector3d [numV];
+      myNormalsComputed = false;
       myColorIndices = new int [numV];
 
       for (int p = 0; p < myPhi.length; p++) {
@@ -1081,6 +1083,24 @@ public class DistanceGrid implements Renderable {
       return myDiameter;
    }
 
+   /**
+    * Computes the normals at all vertices. Normals are otherwise computed
+    * lazily as they are needed, which is not thread-safe, so this method
+    * should be called before the grid is queried by multiple threads.
+    */
+   public void computeNormals() {
+      if (!myNormalsComputed) {
+         for (int xi=0; xi<numVX; xi++) {
+            for (int yj=0; yj<numVY; yj++) {
+               for (int zk=0; zk<numVZ; zk++) {
+                  getLocalVertexNormal (xi, yj, zk);
+               }
+            }
+         }
+         myNormalsComputed = true;
+      }
+   }
+
    /**
     * Returns the normal to the nearest feature at a vertex, as specified by
     * its x, y, z indices.
@@ -1703,7 +1723,9 @@ public class DistanceGrid implements Renderable {
       }
       
       myPhi = sphi;
-      
+      // normals depend on the distances and must be recomputed
+      myNormals = new Vector3d [myPhi.length];
+      myNormalsComputed = false;
    }
 
    public PolygonalMesh computeDistanceSurface() {
@@ -126,6 +126,7 @@ public class SignedDistanceGrid extends DistanceGrid implements Renderable {
 
       myPhi = new double [numV];
       myNormals = new Vector3d [numV];
+      myNormalsComputed = false;
       myColorIndices = new int [numV];
       myFeatures = features;
 
@@ -300,6 +301,7 @@ public class SignedDistanceGrid extends DistanceGrid implements Renderable {
 
       myPhi = new double [numV];
       myNormals = new Vector3d [numV];
+      myNormalsComputed = false;
       myColorIndices = new int [numV];
       myFeatures = features;
 
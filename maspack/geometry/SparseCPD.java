@@ -0,0 +1,1322 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.geometry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import maspack.concurrency.ParallelLoopManager;
+import maspack.matrix.AffineTransform3d;
+import maspack.matrix.Matrix3d;
+import maspack.matrix.Point3d;
+import maspack.matrix.SVDecomposition3d;
+import maspack.matrix.ScaledRigidTransform3d;
+import maspack.matrix.Vector3d;
+
+/**
+ * Coherent Point Drift for large point sets. This implements the same rigid,
+ * affine and coherent algorithms as {@link CPD}, but without forming the
+ * dense MxN probability matrix or the dense MxM Gaussian kernel matrix:
+ *
+ * <ul>
+ * <li>In the E-step, each reference point is only matched to transformed
+ * points lying within a cutoff radius of {@link #getCutoff()} standard
+ * deviations, found with a uniform grid that is rebuilt at each iteration.
+ * The posterior probabilities are streamed into the vectors
+ * <code>P*1</code>, <code>P'*1</code> and <code>P*X</code>, which is all
+ * the M-steps require, and the loop over the reference points is divided
+ * among {@link #getNumThreads()} threads.
+ * <li>In the coherent algorithm, the kernel matrix G is tapered to zero for
+ * points further apart than {@link #getKernelCutoff()} times beta and
+ * stored in sparse form. The displacement weights are found with a
+ * Jacobi-preconditioned conjugate gradient solve that is warm started from
+ * the previous iteration. Since the EM iterations only need the M-step to
+ * improve the objective, the solve tolerance can be fairly loose.
+ * </ul>
+ *
+ * Memory use is therefore proportional to M+N, plus M for each thread, plus
+ * the number of entries in the tapered kernel matrix. The taper narrows the
+ * effective kernel somewhat, so larger kernel cutoffs give results closer to
+ * {@link CPD}. Note that the initial variance estimate is usually comparable
+ * to the size of the point sets, so that the first few E-steps still
+ * consider most point pairs; the cost of each step drops as the variance
+ * decreases.
+ *
+ * @author antonio
+ */
+public class SparseCPD {
+
+   public static double DEFAULT_CUTOFF = 4.0;
+   public static double DEFAULT_KERNEL_CUTOFF = 4.0;
+   public static double DEFAULT_CG_TOL = 1e-4;
+   public static int DEFAULT_MAX_CG_ITERS = 1000;
+   public static boolean verbose = false;
+
+   // points whose total posterior is smaller than this are considered to
+   // have no correspondences, and are held fixed by the coherent solve
+   private static double MIN_P1 = 1e-200;
+
+   private double myCutoff = DEFAULT_CUTOFF;
+   private double myKernelCutoff = DEFAULT_KERNEL_CUTOFF;
+   private double myCGTol = DEFAULT_CG_TOL;
+   private int myMaxCGIters = DEFAULT_MAX_CG_ITERS;
+   private int myNumIterations = 0;
+   private int myNumCGIterations = 0;
+
+   private ParallelLoopManager myLoopManager;
+   private EStepWorkspace[] myWorkspaces = new EStepWorkspace[0];
+
+   /**
+    * Uniform grid of points, used to find all points within a given radius
+    * of a query point. The point coordinates are stored contiguously in
+    * cell order.
+    */
+   static class PointGrid {
+      double myMinX, myMinY, myMinZ;
+      double myH;
+      int myNx, myNy, myNz;
+      int[] myCellStart;
+      int[] myIdxs;
+      double[] myCoords;
+
+      /**
+       * Builds the grid for a set of points. The cell size is at least
+       * <code>radius</code>, and is increased if necessary to keep the
+       * number of cells proportional to the number of points.
+       */
+      void build (Point3d[] pnts, double radius) {
+         int num = pnts.length;
+         double maxx, maxy, maxz;
+         myMinX = myMinY = myMinZ = Double.POSITIVE_INFINITY;
+         maxx = maxy = maxz = Double.NEGATIVE_INFINITY;
+         for (int i=0; i<num; i++) {
+            Point3d p = pnts[i];
+            if (p.x < myMinX) myMinX = p.x;
+            if (p.y < myMinY) myMinY = p.y;
+            if (p.z < myMinZ) myMinZ = p.z;
+            if (p.x > maxx) maxx = p.x;
+            if (p.y > maxy) maxy = p.y;
+            if (p.z > maxz) maxz = p.z;
+         }
+         if (num == 0) {
+            myMinX = myMinY = myMinZ = 0;
+            maxx = maxy = maxz = 0;
+         }
+         double ex = maxx-myMinX;
+         double ey = maxy-myMinY;
+         double ez = maxz-myMinZ;
+         double emax = Math.max (ex, Math.max (ey, ez));
+         double h = radius;
+         if (!(h > 1e-12*emax)) {
+            h = (emax > 0 ? 1e-12*emax : 1.0);
+         }
+         double maxCells = 4.0*num + 64;
+         while ((ex/h+1)*(ey/h+1)*(ez/h+1) > maxCells) {
+            h *= 2;
+         }
+         myH = h;
+         myNx = (int)(ex/h)+1;
+         myNy = (int)(ey/h)+1;
+         myNz = (int)(ez/h)+1;
+
+         int ncells = myNx*myNy*myNz;
+         int[] cells = new int[num];
+         myCellStart = new int[ncells+1];
+         for (int i=0; i<num; i++) {
+            Point3d p = pnts[i];
+            int ix = Math.min ((int)((p.x-myMinX)/h), myNx-1);
+            int iy = Math.min ((int)((p.y-myMinY)/h), myNy-1);
+            int iz = Math.min ((int)((p.z-myMinZ)/h), myNz-1);
+            cells[i] = ix + myNx*(iy + myNy*iz);
+            myCellStart[cells[i]+1]++;
+         }
+         for (int c=0; c<ncells; c++) {
+            myCellStart[c+1] += myCellStart[c];
+         }
+         int[] offs = new int[ncells];
+         myIdxs = new int[num];
+         myCoords = new double[3*num];
+         for (int i=0; i<num; i++) {
+            int k = myCellStart[cells[i]] + offs[cells[i]]++;
+            Point3d p = pnts[i];
+            myIdxs[k] = i;
+            myCoords[3*k  ] = p.x;
+            myCoords[3*k+1] = p.y;
+            myCoords[3*k+2] = p.z;
+         }
+      }
+
+      private int clip (double x, int n) {
+         if (x < 0) {
+            return x > -1 ? 0 : -1;
+         }
+         else if (x >= n) {
+            return n;
+         }
+         else {
+            return (int)x;
+         }
+      }
+
+      /**
+       * Appends to <code>buf</code> the indices and squared distances of all
+       * points within <code>radius</code> of <code>p</code>.
+       */
+      void findNear (Point3d p, double radius, NeighbourBuffer buf) {
+         double h = myH;
+         int ix0 = Math.max (clip ((p.x-radius-myMinX)/h, myNx), 0);
+         int iy0 = Math.max (clip ((p.y-radius-myMinY)/h, myNy), 0);
+         int iz0 = Math.max (clip ((p.z-radius-myMinZ)/h, myNz), 0);
+         int ix1 = Math.min (clip ((p.x+radius-myMinX)/h, myNx), myNx-1);
+         int iy1 = Math.min (clip ((p.y+radius-myMinY)/h, myNy), myNy-1);
+         int iz1 = Math.min (clip ((p.z+radius-myMinZ)/h, myNz), myNz-1);
+         if (ix0 > ix1 || iy0 > iy1 || iz0 > iz1) {
+            return;
+         }
+         double r2 = radius*radius;
+         for (int iz=iz0; iz<=iz1; iz++) {
+            for (int iy=iy0; iy<=iy1; iy++) {
+               int c = ix0 + myNx*(iy + myNy*iz);
+               int kend = myCellStart[c + ix1-ix0 + 1];
+               for (int k=myCellStart[c]; k<kend; k++) {
+                  double dx = myCoords[3*k  ]-p.x;
+                  double dy = myCoords[3*k+1]-p.y;
+                  double dz = myCoords[3*k+2]-p.z;
+                  double d2 = dx*dx + dy*dy + dz*dz;
+                  if (d2 <= r2) {
+                     buf.add (myIdxs[k], d2);
+                  }
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * Growable list of neighbouring point indices and associated values.
+    */
+   static class NeighbourBuffer {
+      int[] idxs = new int[64];
+      double[] vals = new double[64];
+      int size = 0;
+
+      void add (int idx, double val) {
+         if (size == idxs.length) {
+            int[] newIdxs = new int[2*size];
+            double[] newVals = new double[2*size];
+            System.arraycopy (idxs, 0, newIdxs, 0, size);
+            System.arraycopy (vals, 0, newVals, 0, size);
+            idxs = newIdxs;
+            vals = newVals;
+         }
+         idxs[size] = idx;
+         vals[size] = val;
+         size++;
+      }
+   }
+
+   /**
+    * Per-thread accumulators for the E-step.
+    */
+   private static class EStepWorkspace {
+      double[] P1 = new double[0];
+      double[] PX = new double[0];
+      double Np;
+      NeighbourBuffer buf = new NeighbourBuffer();
+
+      void reset (int M) {
+         if (P1.length != M) {
+            P1 = new double[M];
+            PX = new double[3*M];
+         }
+         else {
+            Arrays.fill (P1, 0);
+            Arrays.fill (PX, 0);
+         }
+         Np = 0;
+      }
+   }
+
+   /**
+    * Truncated Gaussian kernel matrix, in compressed row form.
+    */
+   static class KernelMatrix {
+      int[] rowOffs;
+      int[] cols;
+      double[] vals;
+
+      int numNonZeros() {
+         return rowOffs[rowOffs.length-1];
+      }
+   }
+
+   /**
+    * Creates a new SparseCPD that uses all available processors.
+    */
+   public SparseCPD() {
+      this (ParallelLoopManager.getMaxUsefulThreads());
+   }
+
+   /**
+    * Creates a new SparseCPD that uses a specified number of threads.
+    *
+    * @param numThreads number of threads
+    */
+   public SparseCPD (int numThreads) {
+      myLoopManager = new ParallelLoopManager ("sparseCPD", numThreads);
+   }
+
+   /**
+    * Returns the number of threads used by this SparseCPD.
+    *
+    * @return number of threads
+    */
+   public int getNumThreads() {
+      return myLoopManager.getNumThreads();
+   }
+
+   /**
+    * Sets the number of threads used by this SparseCPD.
+    *
+    * @param num number of threads
+    */
+   public void setNumThreads (int num) {
+      myLoopManager.setNumThreads (num);
+   }
+
+   /**
+    * Returns the radius, in units of the standard deviation, beyond which
+    * points are considered to have no correspondence.
+    *
+    * @return correspondence cutoff radius
+    */
+   public double getCutoff() {
+      return myCutoff;
+   }
+
+   /**
+    * Sets the radius, in units of the standard deviation, beyond which
+    * points are considered to have no correspondence. Larger values give
+    * results closer to those of {@link CPD}, at greater cost. The default
+    * value is {@link #DEFAULT_CUTOFF}.
+    *
+    * @param cutoff correspondence cutoff radius
+    */
+   public void setCutoff (double cutoff) {
+      if (cutoff <= 0) {
+         throw new IllegalArgumentException ("cutoff must be positive");
+      }
+      myCutoff = cutoff;
+   }
+
+   /**
+    * Returns the radius, in units of beta, beyond which entries of the
+    * coherent kernel matrix are set to zero.
+    *
+    * @return kernel cutoff radius
+    */
+   public double getKernelCutoff() {
+      return myKernelCutoff;
+   }
+
+   /**
+    * Sets the radius, in units of beta, beyond which entries of the coherent
+    * kernel matrix are set to zero. The memory required by the coherent
+    * algorithm is proportional to the number of points within this radius
+    * of each point. The default value is {@link #DEFAULT_KERNEL_CUTOFF}.
+    *
+    * @param cutoff kernel cutoff radius
+    */
+   public void setKernelCutoff (double cutoff) {
+      if (cutoff <= 0) {
+         throw new IllegalArgumentException ("cutoff must be positive");
+      }
+      myKernelCutoff = cutoff;
+   }
+
+   /**
+    * Returns the relative residual tolerance for the conjugate gradient
+    * solves used by the coherent algorithm.
+    *
+    * @return conjugate gradient tolerance
+    */
+   public double getCGTolerance() {
+      return myCGTol;
+   }
+
+   /**
+    * Sets the relative residual tolerance for the conjugate gradient
+    * solves used by the coherent algorithm.
+    *
+    * @param tol conjugate gradient tolerance
+    */
+   public void setCGTolerance (double tol) {
+      myCGTol = tol;
+   }
+
+   /**
+    * Returns the maximum number of iterations for each conjugate gradient
+    * solve used by the coherent algorithm.
+    *
+    * @return maximum conjugate gradient iterations
+    */
+   public int getMaxCGIterations() {
+      return myMaxCGIters;
+   }
+
+   /**
+    * Sets the maximum number of iterations for each conjugate gradient
+    * solve used by the coherent algorithm.
+    *
+    * @param max maximum conjugate gradient iterations
+    */
+   public void setMaxCGIterations (int max) {
+      myMaxCGIters = max;
+   }
+
+   /**
+    * Returns the number of EM iterations performed by the most recent
+    * registration.
+    *
+    * @return number of EM iterations
+    */
+   public int getNumIterations() {
+      return myNumIterations;
+   }
+
+   /**
+    * Returns the total number of conjugate gradient iterations performed by
+    * the most recent coherent registration.
+    *
+    * @return number of conjugate gradient iterations
+    */
+   public int getNumCGIterations() {
+      return myNumCGIterations;
+   }
+
+   /**
+    * Releases the worker threads used by this SparseCPD.
+    */
+   public void dispose() {
+      myLoopManager.shutdown();
+   }
+
+   /**
+    * Computes the initial CPD variance, corresponding to P(m,n) = 1/M, in
+    * O(M+N) time.
+    *
+    * @param X N input points
+    * @param TY M transformed output points
+    * @return the estimated variance
+    */
+   public static double computeInitialVariance (Point3d[] X, Point3d[] TY) {
+      Point3d mx = new Point3d();
+      Point3d my = new Point3d();
+      for (int n=0; n<X.length; n++) {
+         mx.add (X[n]);
+      }
+      mx.scale (1.0/X.length);
+      for (int m=0; m<TY.length; m++) {
+         my.add (TY[m]);
+      }
+      my.scale (1.0/TY.length);
+
+      // mean of |x-y|^2 over all pairs = var(X) + var(Y) + |mx-my|^2
+      double varx = 0;
+      for (int n=0; n<X.length; n++) {
+         varx += X[n].distanceSquared (mx);
+      }
+      double vary = 0;
+      for (int m=0; m<TY.length; m++) {
+         vary += TY[m].distanceSquared (my);
+      }
+      return (varx/X.length + vary/TY.length + mx.distanceSquared(my))/3;
+   }
+
+   private void ensureWorkspaces (int nthreads) {
+      if (myWorkspaces.length < nthreads) {
+         EStepWorkspace[] workspaces = new EStepWorkspace[nthreads];
+         for (int k=0; k<nthreads; k++) {
+            if (k < myWorkspaces.length) {
+               workspaces[k] = myWorkspaces[k];
+            }
+            else {
+               workspaces[k] = new EStepWorkspace();
+            }
+         }
+         myWorkspaces = workspaces;
+      }
+   }
+
+   /**
+    * Computes the truncated CPD probabilities P(m|n), without storing them.
+    * Only the row and column sums of P, and the products P*X, are returned.
+    *
+    * @param X N input points
+    * @param TY M transformed output points
+    * @param sigma2 variance (&gt; 0)
+    * @param w weight to account for noise/outliers
+    * @param P1 Mx1 vector, P*1
+    * @param Pt1 Nx1 vector, trans(P)*1
+    * @param PX Mx3 matrix P*X, stored by rows
+    * @return Np the sum of all entries in P
+    */
+   public double computeP (
+      final Point3d[] X, final Point3d[] TY, double sigma2, double w,
+      final double[] P1, final double[] Pt1, final double[] PX) {
+
+      if (!(sigma2 > 0)) {
+         throw new IllegalArgumentException ("sigma2 must be positive");
+      }
+      final int N = X.length;
+      final int M = TY.length;
+
+      double cval = Math.pow (2*Math.PI*sigma2, 1.5);
+      if (w == 1) {
+         w = 1-1e-16;  // always between [0,1], so we can hard-code a tolerance here
+      }
+      cval = cval*M*w/((1-w)*N);
+
+      final double c = cval;
+      final double s = 1/(2*sigma2);
+      final double radius = myCutoff*Math.sqrt (sigma2);
+      final PointGrid grid = new PointGrid();
+      grid.build (TY, radius);
+
+      int nthreads = Math.min (getNumThreads(), N);
+      ensureWorkspaces (nthreads);
+      final EStepWorkspace[] workspaces = myWorkspaces;
+
+      myLoopManager.execute (N, new ParallelLoopManager.RangeTask() {
+         public void run (int tidx, int start, int end) {
+            EStepWorkspace ws = workspaces[tidx];
+            NeighbourBuffer buf = ws.buf;
+            ws.reset (M);
+            double[] wP1 = ws.P1;
+            double[] wPX = ws.PX;
+            for (int n=start; n<end; n++) {
+               Point3d xn = X[n];
+               buf.size = 0;
+               grid.findNear (xn, radius, buf);
+               double msum = 0;
+               for (int k=0; k<buf.size; k++) {
+                  double d = Math.exp (-buf.vals[k]*s);
+                  buf.vals[k] = d;
+                  msum += d;
+               }
+               msum += c;
+               if (msum == 0) {
+                  msum = 1;
+               }
+               double pt1 = 0;
+               for (int k=0; k<buf.size; k++) {
+                  int m = buf.idxs[k];
+                  double p = buf.vals[k]/msum;
+                  wP1[m] += p;
+                  wPX[3*m  ] += p*xn.x;
+                  wPX[3*m+1] += p*xn.y;
+                  wPX[3*m+2] += p*xn.z;
+                  pt1 += p;
+               }
+               Pt1[n] = pt1;
+               ws.Np += pt1;
+            }
+         }
+      });
+
+      // reduce per-thread results, in thread order
+      final int nt = nthreads;
+      myLoopManager.execute (M, new ParallelLoopManager.RangeTask() {
+         public void run (int tidx, int start, int end) {
+            for (int m=start; m<end; m++) {
+               double p1 = 0;
+               double px = 0, py = 0, pz = 0;
+               for (int k=0; k<nt; k++) {
+                  EStepWorkspace ws = workspaces[k];
+                  p1 += ws.P1[m];
+                  px += ws.PX[3*m  ];
+                  py += ws.PX[3*m+1];
+                  pz += ws.PX[3*m+2];
+               }
+               P1[m] = p1;
+               PX[3*m  ] = px;
+               PX[3*m+1] = py;
+               PX[3*m+2] = pz;
+            }
+         }
+      });
+      double Np = 0;
+      for (int k=0; k<nt; k++) {
+         Np += workspaces[k].Np;
+      }
+      return Np;
+   }
+
+   /**
+    * Computes A = (X-mx)'*P'*(Y-my), and optionally D =
+    * (Y-my)'*diag(P1)*(Y-my), from the streamed E-step results.
+    *
+    * @param tr trace values, <br>
+    *        tr[0] = trace( (X-mx)'*diag(P'1)(X-mx) )<br>
+    *        tr[1] = trace( (Y-my)'*diag(P1)(Y-my) )
+    */
+   private static void computeAD (
+      Point3d[] X, Point3d mx, double[] Pt1, Point3d[] Y, Point3d my,
+      double[] P1, double[] PX, Matrix3d A, Matrix3d D, double[] tr) {
+
+      Vector3d x = new Vector3d();
+      Vector3d y = new Vector3d();
+      A.setZero();
+      if (D != null) {
+         D.setZero();
+      }
+      // since sum_m P1[m]*(y_m-my) = 0, A = sum_m (PX_m - P1[m]*mx)(y_m-my)'
+      double yPy = 0;
+      for (int m=0; m<Y.length; m++) {
+         y.sub (Y[m], my);
+         x.set (PX[3*m], PX[3*m+1], PX[3*m+2]);
+         x.scaledAdd (-P1[m], mx);
+         A.addOuterProduct (x, y);
+         if (D != null) {
+            D.addScaledOuterProduct (P1[m], y, y);
+         }
+         yPy += P1[m]*y.normSquared();
+      }
+      double xPx = 0;
+      for (int n=0; n<X.length; n++) {
+         xPx += Pt1[n]*X[n].distanceSquared (mx);
+      }
+      tr[0] = xPx;
+      tr[1] = yPy;
+   }
+
+   private static Point3d[] createPoints (int num) {
+      Point3d[] pnts = new Point3d[num];
+      for (int i=0; i<num; i++) {
+         pnts[i] = new Point3d();
+      }
+      return pnts;
+   }
+
+   private static Point3d[] getVertexPoints (PolygonalMesh mesh) {
+      int num = mesh.numVertices();
+      Point3d[] pnts = new Point3d[num];
+      for (int i=0; i<num; i++) {
+         pnts[i] = mesh.getVertices().get(i).getWorldPoint();
+      }
+      return pnts;
+   }
+
+   /**
+    * Uses the rigid CPD algorithm to align a set of points
+    * @param X reference input points
+    * @param Y points to register
+    * @param w weight, accounting to noise (w=0 --&gt; no noise)
+    * @param tol will iterative until objective function changes by less than this
+    * @param maxIters maximum number of iterations
+    * @param allowScaling whether or not to allow scaling
+    * @param TY transformed points
+    * @param trans initial guess of scaled rigid transform
+    * @param sigma2Holder initial guess of variance
+    * @return the scaled rigid transform for registration
+    */
+   public ScaledRigidTransform3d rigid (
+      Point3d[] X, Point3d[] Y, double w, double tol, int maxIters,
+      boolean allowScaling, Point3d[] TY, ScaledRigidTransform3d trans,
+      double[] sigma2Holder) {
+
+      int M = Y.length;
+      int N = X.length;
+
+      if (trans == null) {
+         trans = new ScaledRigidTransform3d();
+         CPD.transformPoints (Y, TY);
+      }
+      else {
+         CPD.transformPoints (Y, trans, TY);
+      }
+
+      double sigma2;
+      if (sigma2Holder == null || sigma2Holder[0] < 0) {
+         sigma2 = computeInitialVariance (X, TY);
+      }
+      else {
+         sigma2 = sigma2Holder[0];
+      }
+
+      SVDecomposition3d svd = new SVDecomposition3d();
+
+      Matrix3d R = new Matrix3d (trans.R);
+      Vector3d t = new Vector3d (trans.p);
+      double s = trans.s;
+
+      double[] P1 = new double[M];
+      double[] Pt1 = new double[N];
+      double[] PX = new double[3*M];
+      double Np;
+      double[] tr = new double[2];
+
+      Matrix3d A = new Matrix3d();
+      Matrix3d UVt = new Matrix3d();
+      Matrix3d C = new Matrix3d();  C.set(0,0,1); C.set(1,1,1);
+
+      Point3d meanx = new Point3d();
+      Point3d meany = new Point3d();
+
+      double err = Double.MAX_VALUE;
+      int iters = 0;
+
+      double q, qprev;
+      q = Double.MAX_VALUE;
+
+      // iterative part of algorithm
+      while ( (iters < maxIters) && (err > tol) ) {
+
+         // E-step
+         Np = computeP (X, TY, sigma2, w, P1, Pt1, PX);
+         if (Np == 0) {
+            if (verbose) {
+               System.out.println (
+                  "SparseCPD.rigid(...): no correspondences within cutoff");
+            }
+            break;
+         }
+
+         // M-step
+         CPD.computeMean (X, Pt1, Np, meanx);
+         CPD.computeMean (Y, P1, Np, meany);
+         computeAD (X, meanx, Pt1, Y, meany, P1, PX, A, null, tr);
+
+         // R = U*C*V', C= diag([1 1 det(U*V')])
+         svd.factor (A);
+         UVt.set (svd.getU());
+         UVt.mulTranspose (svd.getV());
+         C.set (2,2,UVt.determinant());
+
+         R.set (svd.getU());
+         R.mul (C);
+         R.mulTranspose (svd.getV());
+
+         // s = trace(A'*R)/trace(Y'*diag(P1)*Y)
+         A.mulTransposeLeft (A, R);
+         double trAtR = A.trace();
+
+         if (allowScaling) {
+            s = trAtR/tr[1];
+         }
+
+         // t = mean(X)-s*R*mean(Y)
+         t.mul (R, meany);
+         t.scale (-s);
+         t.add (meanx);
+
+         CPD.transformPoints (Y, s, R, t, TY);
+
+         qprev = q;
+         q = (tr[0] - 2*s*trAtR + s*s*tr[1])/(2*sigma2)
+            + 1.5*Np*Math.log (sigma2);
+
+         sigma2 = (tr[0]-s*trAtR)/(3*Np);
+         if (sigma2 <= 0) {
+            sigma2 = tol;
+         }
+
+         err = Math.abs (q-qprev);
+         iters++;
+      }
+
+      if (verbose) {
+         System.out.println ("Registration complete in " + iters + " iterations");
+      }
+      myNumIterations = iters;
+
+      trans.R.set (R);
+      trans.p.set (t);
+      trans.setScale (s);   // triggers update of internal matrix
+
+      if (sigma2Holder != null) {
+         sigma2Holder[0] = sigma2;
+      }
+      return trans;
+   }
+
+   /**
+    * Uses the rigid CPD algorithm to align a set of points
+    * @param X reference input points
+    * @param Y points to register
+    * @param w weight, accounting to noise (w=0 --&gt; no noise)
+    * @param tol will iterative until objective function changes by less than this
+    * @param maxIters maximum number of iterations
+    * @param allowScaling whether or not to allow scaling
+    * @param TY transformed points
+    * @return the scaled rigid transform for registration
+    */
+   public ScaledRigidTransform3d rigid (
+      Point3d[] X, Point3d[] Y, double w, double tol, int maxIters,
+      boolean allowScaling, Point3d[] TY) {
+      return rigid (X, Y, w, tol, maxIters, allowScaling, TY, null, null);
+   }
+
+   /**
+    * Uses the rigid CPD algorithm to align two meshes
+    * @param meshRef reference mesh
+    * @param meshReg mesh to register
+    * @param w weight, accounting to noise (w=0 --&gt; no noise)
+    * @param tol will iterative until objective function changes by less than this
+    * @param maxIters maximum number of iterations
+    * @param allowScaling whether or not to allow scaling
+    * @return the scaled rigid transform for registration
+    */
+   public ScaledRigidTransform3d rigid (
+      PolygonalMesh meshRef, PolygonalMesh meshReg, double w, double tol,
+      int maxIters, boolean allowScaling) {
+
+      Point3d[] x = getVertexPoints (meshRef);
+      Point3d[] y = getVertexPoints (meshReg);
+      return rigid (
+         x, y, w, tol, maxIters, allowScaling, createPoints (y.length),
+         null, null);
+   }
+
+   /**
+    * Uses the affine CPD algorithm to align a set of points
+    * @param X reference input points
+    * @param Y points to register
+    * @param w weight, accounting to noise (w=0 --&gt; no noise)
+    * @param tol will iterative until objective function changes by less than this
+    * @param maxIters maximum number of iterations
+    * @param TY transformed points
+    * @param trans initial guess of affine transform
+    * @param sigma2Holder initial guess of variance
+    * @return the affine transform for registration
+    */
+   public AffineTransform3d affine (
+      Point3d[] X, Point3d[] Y, double w, double tol, int maxIters,
+      Point3d[] TY, AffineTransform3d trans, double[] sigma2Holder) {
+
+      int M = Y.length;
+      int N = X.length;
+
+      SVDecomposition3d svd = new SVDecomposition3d();
+
+      if (trans == null) {
+         trans = new AffineTransform3d();
+         CPD.transformPoints (Y, TY);
+      }
+      else {
+         CPD.transformPoints (Y, trans, TY);
+      }
+
+      double sigma2;
+      if (sigma2Holder == null || sigma2Holder[0] < 0) {
+         sigma2 = computeInitialVariance (X, TY);
+      }
+      else {
+         sigma2 = sigma2Holder[0];
+      }
+
+      Matrix3d B = new Matrix3d (trans.A);
+      Vector3d t = new Vector3d (trans.p);
+
+      double[] P1 = new double[M];
+      double[] Pt1 = new double[N];
+      double[] PX = new double[3*M];
+      double Np;
+
+      Matrix3d A = new Matrix3d();
+      Matrix3d D = new Matrix3d();
+      Matrix3d YPY = new Matrix3d();
+      double[] tr = new double[2];
+
+      Point3d meanx = new Point3d();
+      Point3d meany = new Point3d();
+
+      double err = Double.MAX_VALUE;
+      int iters = 0;
+
+      double q, qprev;
+      q = Double.MAX_VALUE;
+
+      // iterative part of algorithm
+      while ( (iters < maxIters) && (err > tol) ) {
+
+         // E-step
+         Np = computeP (X, TY, sigma2, w, P1, Pt1, PX);
+         if (Np == 0) {
+            if (verbose) {
+               System.out.println (
+                  "SparseCPD.affine(...): no correspondences within cutoff");
+            }
+            break;
+         }
+
+         // M-step
+         CPD.computeMean (X, Pt1, Np, meanx);
+         CPD.computeMean (Y, P1, Np, meany);
+         computeAD (X, meanx, Pt1, Y, meany, P1, PX, A, YPY, tr);
+
+         // B = A*inverse(D)
+         svd.factor (YPY);
+         svd.pseudoInverse (D);
+         B.mul (A, D);
+
+         // t = mean(X)-A*mean(Y)
+         t.mul (B, meany);
+         t.sub (meanx, t);
+
+         CPD.transformPoints (Y, B, t, TY);
+
+         A.mulTranspose (B);
+         double trABt = A.trace();
+         YPY.mulTranspose (B);
+         YPY.mul (B);
+         double trBYPYB = YPY.trace();
+
+         qprev = q;
+         q = (tr[0] - 2*trABt + trBYPYB)/(2*sigma2) + 1.5*Np*Math.log (sigma2);
+
+         sigma2 = (tr[0]-trABt)/(3*Np);
+         if (sigma2 <= 0) {
+            sigma2 = tol;
+         }
+
+         err = Math.abs (q-qprev);
+         iters++;
+      }
+
+      if (verbose) {
+         System.out.println ("Registration complete in " + iters + " iterations");
+      }
+      myNumIterations = iters;
+
+      trans.A.set (B);
+      trans.p.set (t);
+
+      if (sigma2Holder != null) {
+         sigma2Holder[0] = sigma2;
+      }
+      return trans;
+   }
+
+   /**
+    * Uses the affine CPD algorithm to align a set of points
+    * @param X reference input points
+    * @param Y points to register
+    * @param w weight, accounting to noise (w=0 --&gt; no noise)
+    * @param tol will iterative until objective function changes by less than this
+    * @param maxIters maximum number of iterations
+    * @param TY transformed points
+    * @return the affine transform for registration
+    */
+   public AffineTransform3d affine (
+      Point3d[] X, Point3d[] Y, double w, double tol, int maxIters,
+      Point3d[] TY) {
+      return affine (X, Y, w, tol, maxIters, TY, null, null);
+   }
+
+   /**
+    * Uses the affine CPD algorithm to align two meshes
+    * @param meshRef reference mesh
+    * @param meshReg mesh to register
+    * @param w weight, accounting to noise (w=0 --&gt; no noise)
+    * @param tol will iterative until objective function changes by less than this
+    * @param maxIters maximum number of iterations
+    * @return the affine transform for registration
+    */
+   public AffineTransform3d affine (
+      PolygonalMesh meshRef, PolygonalMesh meshReg, double w, double tol,
+      int maxIters) {
+
+      Point3d[] x = getVertexPoints (meshRef);
+      Point3d[] y = getVertexPoints (meshReg);
+      return affine (
+         x, y, w, tol, maxIters, createPoints (y.length), null, null);
+   }
+
+   /**
+    * Computes the truncated Gaussian kernel matrix for the coherent
+    * algorithm, keeping only entries for which the points are within
+    * <code>getKernelCutoff()*beta</code> of each other. Simply truncating
+    * the Gaussian can make G indefinite, so instead it is multiplied by the
+    * compactly supported Wendland function (1-r)^4 (4r+1), which is
+    * positive definite in 3D. The product is then also positive definite,
+    * as required by the conjugate gradient solve.
+    */
+   KernelMatrix computeKernel (final double beta2, final Point3d[] Y) {
+      final int M = Y.length;
+      final double radius = myKernelCutoff*Math.sqrt (beta2);
+      final PointGrid grid = new PointGrid();
+      grid.build (Y, radius);
+
+      final KernelMatrix G = new KernelMatrix();
+      G.rowOffs = new int[M+1];
+      final NeighbourBuffer[] bufs = new NeighbourBuffer[getNumThreads()];
+      for (int k=0; k<bufs.length; k++) {
+         bufs[k] = new NeighbourBuffer();
+      }
+      // count the entries in each row, then fill them in
+      myLoopManager.execute (M, new ParallelLoopManager.RangeTask() {
+         public void run (int tidx, int start, int end) {
+            NeighbourBuffer buf = bufs[tidx];
+            for (int i=start; i<end; i++) {
+               buf.size = 0;
+               grid.findNear (Y[i], radius, buf);
+               G.rowOffs[i+1] = buf.size;
+            }
+         }
+      });
+      long nnz = 0;
+      for (int i=0; i<M; i++) {
+         nnz += G.rowOffs[i+1];
+         if (nnz > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException (
+               "Truncated kernel matrix is too large; reduce kernel cutoff");
+         }
+         G.rowOffs[i+1] = (int)nnz;
+      }
+      G.cols = new int[(int)nnz];
+      G.vals = new double[(int)nnz];
+      final double s = 1/(2*beta2);
+      myLoopManager.execute (M, new ParallelLoopManager.RangeTask() {
+         public void run (int tidx, int start, int end) {
+            NeighbourBuffer buf = bufs[tidx];
+            for (int i=start; i<end; i++) {
+               buf.size = 0;
+               grid.findNear (Y[i], radius, buf);
+               int off = G.rowOffs[i];
+               for (int k=0; k<buf.size; k++) {
+                  // taper = (1-r)^4 (4r+1), r = dist/radius
+                  double r = Math.sqrt (buf.vals[k])/radius;
+                  double t = (1-r)*(1-r);
+                  G.cols[off+k] = buf.idxs[k];
+                  G.vals[off+k] = Math.exp (-buf.vals[k]*s)*t*t*(4*r+1);
+               }
+            }
+         }
+      });
+      return G;
+   }
+
+   /**
+    * Computes out = (G + diag(d))*v for Mx3 matrices stored by rows. Rows
+    * for which <code>Dinv</code> is zero are held fixed and set to zero.
+    */
+   private void mulKernel (
+      final double[] out, final KernelMatrix G, final double[] d,
+      final double[] Dinv, final double[] v) {
+
+      myLoopManager.execute (d.length, new ParallelLoopManager.RangeTask() {
+         public void run (int tidx, int start, int end) {
+            for (int i=start; i<end; i++) {
+               if (Dinv[i] == 0) {
+                  out[3*i] = out[3*i+1] = out[3*i+2] = 0;
+                  continue;
+               }
+               double sx = d[i]*v[3*i];
+               double sy = d[i]*v[3*i+1];
+               double sz = d[i]*v[3*i+2];
+               for (int k=G.rowOffs[i]; k<G.rowOffs[i+1]; k++) {
+                  int j = G.cols[k];
+                  double g = G.vals[k];
+                  sx += g*v[3*j];
+                  sy += g*v[3*j+1];
+                  sz += g*v[3*j+2];
+               }
+               out[3*i  ] = sx;
+               out[3*i+1] = sy;
+               out[3*i+2] = sz;
+            }
+         }
+      });
+   }
+
+   /**
+    * Computes TY = Y + G*W.
+    */
+   private void transformPoints (
+      final Point3d[] Y, final KernelMatrix G, final double[] W,
+      final Point3d[] TY) {
+
+      myLoopManager.execute (Y.length, new ParallelLoopManager.RangeTask() {
+         public void run (int tidx, int start, int end) {
+            for (int i=start; i<end; i++) {
+               double sx = 0, sy = 0, sz = 0;
+               for (int k=G.rowOffs[i]; k<G.rowOffs[i+1]; k++) {
+                  int j = G.cols[k];
+                  double g = G.vals[k];
+                  sx += g*W[3*j];
+                  sy += g*W[3*j+1];
+                  sz += g*W[3*j+2];
+               }
+               TY[i].set (Y[i].x+sx, Y[i].y+sy, Y[i].z+sz);
+            }
+         }
+      });
+   }
+
+   /**
+    * Solves (G + diag(d))*W = B for the three columns of W, using a
+    * Jacobi-preconditioned conjugate gradient method starting from the
+    * current value of W.
+    *
+    * @return number of iterations
+    */
+   private int solveKernelSystem (
+      double[] W, KernelMatrix G, double[] d, double[] Dinv, double[] B) {
+
+      int M = d.length;
+      double[] r = new double[3*M];
+      double[] z = new double[3*M];
+      double[] p = new double[3*M];
+      double[] q = new double[3*M];
+      double[] rz = new double[3];
+      double[] bnorm2 = new double[3];
+
+      mulKernel (q, G, d, Dinv, W);
+      for (int i=0; i<3*M; i++) {
+         r[i] = B[i]-q[i];
+         z[i] = Dinv[i/3]*r[i];
+         p[i] = z[i];
+         rz[i%3] += r[i]*z[i];
+         bnorm2[i%3] += B[i]*B[i];
+      }
+      double tol2 = myCGTol*myCGTol;
+      int iter = 0;
+      while (iter < myMaxCGIters) {
+         double[] rnorm2 = new double[3];
+         for (int i=0; i<3*M; i++) {
+            rnorm2[i%3] += r[i]*r[i];
+         }
+         if (rnorm2[0] <= tol2*bnorm2[0] &&
+             rnorm2[1] <= tol2*bnorm2[1] &&
+             rnorm2[2] <= tol2*bnorm2[2]) {
+            break;
+         }
+         mulKernel (q, G, d, Dinv, p);
+         double[] pq = new double[3];
+         for (int i=0; i<3*M; i++) {
+            pq[i%3] += p[i]*q[i];
+         }
+         double[] alpha = new double[3];
+         for (int k=0; k<3; k++) {
+            alpha[k] = (pq[k] > 0 ? rz[k]/pq[k] : 0);
+         }
+         double[] rznew = new double[3];
+         for (int i=0; i<3*M; i++) {
+            W[i] += alpha[i%3]*p[i];
+            r[i] -= alpha[i%3]*q[i];
+            z[i] = Dinv[i/3]*r[i];
+            rznew[i%3] += r[i]*z[i];
+         }
+         for (int i=0; i<3*M; i++) {
+            int k = i%3;
+            p[i] = z[i] + (rz[k] > 0 ? rznew[k]/rz[k] : 0)*p[i];
+         }
+         rz = rznew;
+         iter++;
+      }
+      if (iter == myMaxCGIters && verbose) {
+         System.out.println (
+            "SparseCPD.coherent(...): CG did not converge in " + iter +
+            " iterations");
+      }
+      return iter;
+   }
+
+   /**
+    * Uses the coherent CPD algorithm to align a set of points
+    * @param X reference input points
+    * @param Y points to register
+    * @param lambda weight factor for regularization term (&gt; 0)
+    * @param beta2 coherence factor, beta^2 (&gt; 0)
+    * @param w weight, accounting to noise (w=0 --&gt; no noise)
+    * @param tol will iterative until objective function changes by less than this
+    * @param maxIters maximum number of iterations
+    * @param TY transformed points
+    * @param sigma2Holder initial variance estimate
+    * @return TY transformed points
+    */
+   public Point3d[] coherent (
+      Point3d[] X, Point3d[] Y, double lambda, double beta2, double w,
+      double tol, int maxIters, Point3d[] TY, double[] sigma2Holder) {
+
+      int M = Y.length;
+      int N = X.length;
+
+      if (TY == null) {
+         TY = createPoints (M);
+      }
+      CPD.transformPoints (Y, TY);
+
+      double sigma2;
+      if (sigma2Holder == null || sigma2Holder[0] < 0) {
+         sigma2 = computeInitialVariance (X, TY);
+      }
+      else {
+         sigma2 = sigma2Holder[0];
+      }
+
+      KernelMatrix G = computeKernel (beta2, Y);
+      if (verbose) {
+         System.out.println (
+            "Kernel matrix: " + G.numNonZeros() + " non-zeros, " +
+            (double)G.numNonZeros()/M + " per row");
+      }
+
+      double[] W = new double[3*M];
+      double[] B = new double[3*M];
+      double[] d = new double[M];
+      double[] Dinv = new double[M];
+
+      double[] P1 = new double[M];
+      double[] Pt1 = new double[N];
+      double[] PX = new double[3*M];
+      double Np;
+
+      // variance is computed relative to the mean of X to reduce
+      // cancellation error
+      Point3d c = new Point3d();
+      for (int n=0; n<N; n++) {
+         c.add (X[n]);
+      }
+      c.scale (1.0/N);
+
+      double err = Double.MAX_VALUE;
+      int iters = 0;
+      myNumCGIterations = 0;
+
+      double sigma2prev;
+
+      // iterative part of algorithm
+      while ( (iters < maxIters) && (err > tol) ) {
+
+         // E-step
+         Np = computeP (X, TY, sigma2, w, P1, Pt1, PX);
+         if (Np == 0) {
+            if (verbose) {
+               System.out.println (
+                  "SparseCPD.coherent(...): no correspondences within cutoff");
+            }
+            break;
+         }
+
+         // M-step: solve (G + lambda*sigma2*inv(diag(P1)))W = PX/P1 - Y
+         for (int m=0; m<M; m++) {
+            if (P1[m] < MIN_P1) {
+               d[m] = 0;
+               Dinv[m] = 0;
+               W[3*m] = W[3*m+1] = W[3*m+2] = 0;
+               B[3*m] = B[3*m+1] = B[3*m+2] = 0;
+            }
+            else {
+               d[m] = lambda*sigma2/P1[m];
+               Dinv[m] = 1/(1+d[m]);  // diagonal of G is 1
+               B[3*m  ] = PX[3*m  ]/P1[m] - Y[m].x;
+               B[3*m+1] = PX[3*m+1]/P1[m] - Y[m].y;
+               B[3*m+2] = PX[3*m+2]/P1[m] - Y[m].z;
+            }
+         }
+         myNumCGIterations += solveKernelSystem (W, G, d, Dinv, B);
+
+         // update transformed points
+         transformPoints (Y, G, W, TY);
+
+         sigma2prev = sigma2;
+
+         // update variance estimate
+         double xPx = 0;
+         double trPXTY = 0;
+         double trTYPTY = 0;
+         for (int m=0; m<M; m++) {
+            double tx = TY[m].x-c.x;
+            double ty = TY[m].y-c.y;
+            double tz = TY[m].z-c.z;
+            trPXTY += ((PX[3*m  ]-P1[m]*c.x)*tx +
+                       (PX[3*m+1]-P1[m]*c.y)*ty +
+                       (PX[3*m+2]-P1[m]*c.z)*tz);
+            trTYPTY += P1[m]*(tx*tx + ty*ty + tz*tz);
+         }
+         for (int n=0; n<N; n++) {
+            xPx += Pt1[n]*X[n].distanceSquared (c);
+         }
+         sigma2 = (xPx - 2*trPXTY + trTYPTY)/(3*Np);
+         if (sigma2 <= 0) {
+            sigma2 = tol;
+         }
+
+         err = Math.abs (sigma2-sigma2prev);
+         iters++;
+      }
+
+      if (verbose) {
+         System.out.println (
+            "Registration complete in " + iters + " iterations, " +
+            myNumCGIterations + " CG iterations");
+      }
+      myNumIterations = iters;
+
+      if (sigma2Holder != null) {
+         sigma2Holder[0] = sigma2;
+      }
+      return TY;
+   }
+
+   /**
+    * Uses the coherent CPD algorithm to align a set of points
+    * @param X reference input points
+    * @param Y points to register
+    * @param lambda weight factor for regularization term (&gt; 0)
+    * @param beta2 coherence factor, beta^2 (&gt; 0)
+    * @param w weight, accounting to noise (w=0 --&gt; no noise)
+    * @param tol will iterative until objective function changes by less than this
+    * @param maxIters maximum number of iterations
+    * @param TY transformed points
+    * @return TY transformed points
+    */
+   public Point3d[] coherent (
+      Point3d[] X, Point3d[] Y, double lambda, double beta2, double w,
+      double tol, int maxIters, Point3d[] TY) {
+      return coherent (X, Y, lambda, beta2, w, tol, maxIters, TY, null);
+   }
+
+   /**
+    * Uses the coherent CPD algorithm to align two meshes
+    * @param meshRef reference mesh
+    * @param meshReg mesh to register
+    * @param lambda weight factor for regularization term (&gt; 0)
+    * @param beta2 coherence factor, beta^2 (&gt; 0)
+    * @param w weight, accounting to noise (w=0 --&gt; no noise)
+    * @param tol will iterative until objective function changes by less than this
+    * @param maxIters maximum number of iterations
+    * @param out transformed mesh
+    * @return out transformed mesh
+    */
+   public PolygonalMesh coherent (
+      PolygonalMesh meshRef, PolygonalMesh meshReg, double lambda,
+      double beta2, double w, double tol, int maxIters, PolygonalMesh out) {
+
+      int[][] faceIndices = new int[meshReg.numFaces()][];
+      ArrayList<Face> faces = meshReg.getFaces();
+      for (int i=0; i<meshReg.numFaces(); i++) {
+         faceIndices[i] = faces.get(i).getVertexIndices();
+      }
+
+      Point3d[] x = getVertexPoints (meshRef);
+      Point3d[] y = getVertexPoints (meshReg);
+      Point3d[] match = createPoints (y.length);
+      coherent (x, y, lambda, beta2, w, tol, maxIters, match, null);
+
+      if (out == null) {
+         out = new PolygonalMesh();
+      }
+      else {
+         out.clear();
+      }
+      out.set (match, faceIndices);
+      return out;
+   }
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.geometry;
+
+import maspack.matrix.AffineTransform3d;
+import maspack.matrix.Point3d;
+import maspack.matrix.RotationMatrix3d;
+import maspack.matrix.ScaledRigidTransform3d;
+import maspack.matrix.Vector3d;
+import maspack.util.RandomGenerator;
+import maspack.util.TestException;
+import maspack.util.UnitTest;
+
+public class SparseCPDTest extends UnitTest {
+
+   AffineTransform3d createTransform() {
+      AffineTransform3d trans = new AffineTransform3d();
+      RotationMatrix3d R = new RotationMatrix3d(0.7605, -0.6307, 0.1541, 0.6485, 0.7263, -0.2279, 0.0318, 0.2733, 0.9614);
+      double s = 2.7;
+      trans.setA(R, new Vector3d(s,s,s), new Vector3d(0,0,0));
+      trans.setTranslation(new Vector3d(1, 2, 3));
+      return trans;
+   }
+
+   Point3d[] createPoints (int num) {
+      Point3d[] pnts = new Point3d[num];
+      for (int i=0; i<num; i++) {
+         pnts[i] = new Point3d();
+      }
+      return pnts;
+   }
+
+   Point3d[] copyPoints (Point3d[] pnts, int num) {
+      Point3d[] copy = new Point3d[num];
+      for (int i=0; i<num; i++) {
+         copy[i] = new Point3d (pnts[i]);
+      }
+      return copy;
+   }
+
+   void checkPoints (String msg, Point3d[] result, Point3d[] check, double eps) {
+      for (int i=0; i<check.length; i++) {
+         if (result[i].distance (check[i]) > eps) {
+            throw new TestException (
+               msg + ": point " + i + " is " + result[i] +
+               ", expected " + check[i]);
+         }
+      }
+   }
+
+   double meanDistance (Point3d[] pnts, Point3d[] check) {
+      double sum = 0;
+      for (int i=0; i<pnts.length; i++) {
+         sum += pnts[i].distance (check[i]);
+      }
+      return sum/pnts.length;
+   }
+
+   void checkMeanDistance (
+      String msg, Point3d[] result, Point3d[] check, double maxDist) {
+      double dist = meanDistance (result, check);
+      if (dist > maxDist) {
+         throw new TestException (
+            msg + ": mean distance is " + dist + ", expected <= " + maxDist);
+      }
+   }
+
+   /**
+    * With cutoffs large enough to include all points, the results should
+    * match those of CPD.
+    */
+   public void testDenseEquivalence() {
+      Point3d[] X = CPDTest.get3DFish();
+      int N = X.length;
+      int M = N-20;
+      Point3d[] Y = copyPoints (X, M);
+      AffineTransform3d trans = createTransform();
+      for (int i=0; i<N; i++) {
+         X[i].transform (trans);
+      }
+
+      double w = 0.01;
+      double tol = 1e-10;
+      int maxIters = 100;
+
+      SparseCPD cpd = new SparseCPD (3);
+      cpd.setCutoff (1e4);
+      cpd.setKernelCutoff (1e4);
+      cpd.setCGTolerance (1e-14);
+
+      double sigma2 = SparseCPD.computeInitialVariance (X, Y);
+      double check = CPD.computeVariance (X, Y, null, 1.0/M);
+      if (Math.abs (sigma2-check) > 1e-12*check) {
+         throw new TestException (
+            "initial variance is " + sigma2 + ", expected " + check);
+      }
+
+      Point3d[] TY = createPoints (M);
+      Point3d[] TYcheck = createPoints (M);
+      ScaledRigidTransform3d rigidT =
+         cpd.rigid (X, Y, w, tol, maxIters, true, TY);
+      ScaledRigidTransform3d rigidCheck =
+         CPD.rigid (X, Y, w, tol, maxIters, true, TYcheck);
+      checkEquals ("rigid R", rigidT.R, rigidCheck.R, 1e-8);
+      checkEquals ("rigid p", rigidT.p, rigidCheck.p, 1e-8);
+      checkPoints ("rigid TY", TY, TYcheck, 1e-8);
+
+      AffineTransform3d affT = cpd.affine (X, Y, w, tol, maxIters, TY);
+      AffineTransform3d affCheck =
+         CPD.affine (X, Y, w, tol, maxIters, TYcheck);
+      checkEquals ("affine A", affT.A, affCheck.A, 1e-8);
+      checkEquals ("affine p", affT.p, affCheck.p, 1e-8);
+
+      double lambda = 0.1;
+      double beta2 = 3.5;
+      cpd.coherent (X, Y, lambda, beta2, w, tol, maxIters, TY);
+      CPD.coherent (X, Y, lambda, beta2, w, tol, maxIters, TYcheck);
+      checkPoints ("coherent TY", TY, TYcheck, 1e-6);
+      cpd.dispose();
+   }
+
+   /**
+    * Registers points distributed over a deformed sphere using the default
+    * cutoffs, with one and several threads.
+    */
+   public void testLargeRegistration() {
+      int N = 4000;
+      Point3d[] X = new Point3d[N];
+      for (int i=0; i<N; i++) {
+         Vector3d dir = new Vector3d();
+         dir.setRandom();
+         dir.normalize();
+         X[i] = new Point3d (dir);
+         X[i].scale (
+            1 + 0.2*Math.sin (3*dir.x) + 0.15*Math.cos (2*dir.y+dir.z));
+      }
+      int M = N/2;
+      Point3d[] Y = new Point3d[M];
+      for (int i=0; i<M; i++) {
+         Y[i] = new Point3d (X[2*i]);
+      }
+      ScaledRigidTransform3d trans = new ScaledRigidTransform3d();
+      trans.R.setRpy (0.3, -0.2, 0.1);
+      trans.p.set (0.2, -0.1, 0.3);
+      trans.setScale (1.0);
+      for (int i=0; i<N; i++) {
+         X[i].transform (trans);
+      }
+
+      double w = 0.01;
+      double tol = 1e-8;
+      int maxIters = 200;
+
+      SparseCPD cpd1 = new SparseCPD (1);
+      SparseCPD cpd4 = new SparseCPD (4);
+      Point3d[] TY1 = createPoints (M);
+      Point3d[] TY4 = createPoints (M);
+
+      ScaledRigidTransform3d rigid1 =
+         cpd1.rigid (X, Y, w, tol, maxIters, false, TY1);
+      ScaledRigidTransform3d rigid4 =
+         cpd4.rigid (X, Y, w, tol, maxIters, false, TY4);
+      checkEquals ("rigid R", rigid1.R, trans.R, 1e-4);
+      checkEquals ("rigid p", rigid1.p, trans.p, 1e-4);
+      checkEquals ("threaded rigid R", rigid4.R, rigid1.R, 1e-8);
+      checkEquals ("threaded rigid p", rigid4.p, rigid1.p, 1e-8);
+
+      AffineTransform3d aff1 = cpd1.affine (X, Y, w, tol, maxIters, TY1);
+      AffineTransform3d aff4 = cpd4.affine (X, Y, w, tol, maxIters, TY4);
+      checkEquals ("affine A", aff1.A, trans.R, 1e-3);
+      checkEquals ("threaded affine A", aff4.A, aff1.A, 1e-8);
+
+      // non-rigid registration of a deformed subset of the points
+      double lambda = 1.0;
+      double beta2 = 0.1;
+      int Mc = M/4;
+      Point3d[] Yc = new Point3d[Mc];
+      Point3d[] TX = new Point3d[Mc];
+      for (int i=0; i<Mc; i++) {
+         TX[i] = new Point3d (X[8*i]);
+         Yc[i] = new Point3d (X[8*i]);
+         Yc[i].scale (1 + 0.3*Math.sin (2*Yc[i].y));
+      }
+      TY1 = createPoints (Mc);
+      TY4 = createPoints (Mc);
+      double err0 = meanDistance (Yc, TX);
+      cpd1.coherent (X, Yc, lambda, beta2, w, 1e-8, 50, TY1);
+      cpd4.coherent (X, Yc, lambda, beta2, w, 1e-8, 50, TY4);
+      checkMeanDistance ("coherent", TY1, TX, 0.75*err0);
+      checkMeanDistance ("threaded coherent", TY4, TX, 0.75*err0);
+      cpd1.dispose();
+      cpd4.dispose();
+   }
+
+   public void test() {
+      testDenseEquivalence();
+      testLargeRegistration();
+   }
+
+   public static void main (String[] args) {
+      SparseCPDTest tester = new SparseCPDTest();
+      RandomGenerator.setSeed (0x1234);
+      tester.runtest();
+   }
+}
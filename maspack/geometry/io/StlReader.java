@@ -3,6 +3,7 @@ package maspack.geometry.io;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
@@ -10,6 +11,8 @@ import java.io.BufferedReader;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -33,6 +36,12 @@ public class StlReader extends MeshReaderBase {
 
    public static double DEFAULT_TOLERANCE = 1e-15;
    double myTol = DEFAULT_TOLERANCE;
+   boolean myMappedBinaryP = true;
+
+   // size of each facet in a binary file
+   private static final int FACET_SIZE = 50;
+   // maximum number of facets mapped into memory at one time
+   private static final int MAX_MAPPED_FACETS = (1 << 24);
    
    public StlReader (InputStream is) throws IOException {
       super (is);
@@ -59,6 +68,23 @@ public class StlReader extends MeshReaderBase {
    public double getTolerance() {
       return myTol;
    }
+
+   /**
+    * Sets whether binary files are read using
+    * {@link #readBinary(PolygonalMesh,File,double)}, which memory-maps
+    * the file. This is the default, and only applies when this reader
+    * was created from a file.
+    */
+   public void setMappedBinary (boolean enable) {
+      myMappedBinaryP = enable;
+   }
+
+   /**
+    * Queries whether binary files are read by memory-mapping them.
+    */
+   public boolean getMappedBinary() {
+      return myMappedBinaryP;
+   }
    
 //   public static PolygonalMesh read(PolygonalMesh mesh, Reader reader) throws IOException {
 //      
@@ -68,12 +94,7 @@ public class StlReader extends MeshReaderBase {
 //   public static PolygonalMesh read(PolygonalMesh mesh, Reader reader, double tol) throws IOException {
    public static PolygonalMesh read(PolygonalMesh mesh, InputStream is, double tol) throws IOException {
       // Determine if ASCII or Binary and call appropriate method
-      is.mark (5);
-      byte[] bbuf = new byte[5];
-      is.read (bbuf, 0, 5);
-      is.reset ();
-         
-      if ((new String(bbuf)).equals ("solid")) {
+      if (isASCII (is)) {
          BufferedReader iread = 
             new BufferedReader (new InputStreamReader(is));         
          return readASCII(mesh, iread, tol);
@@ -81,6 +102,129 @@ public class StlReader extends MeshReaderBase {
          return readBinary(mesh, is, tol);
       }
    }
+
+   /**
+    * Checks whether a stream contains an ASCII file, by looking for the
+    * keyword "solid" at its start. The stream must support mark and reset.
+    */
+   private static boolean isASCII (InputStream is) throws IOException {
+      is.mark (5);
+      byte[] bbuf = new byte[5];
+      is.read (bbuf, 0, 5);
+      is.reset ();
+      return (new String(bbuf)).equals ("solid");
+   }
+
+   /**
+    * Reads a binary STL file by memory-mapping it. Coordinates are decoded
+    * directly from the mapped buffer, and vertices closer than
+    * <code>tol</code> are merged using a primitive hash table on their
+    * quantized coordinates, so that no per-facet or per-vertex objects are
+    * created before the mesh itself is built. This is much faster than
+    * {@link #readBinary(PolygonalMesh,InputStream,double)} for large
+    * files. When several vertices are within <code>tol</code> of each
+    * other, the one appearing first in the file is used.
+    *
+    * @param mesh if non-null, mesh into which the file is read
+    * @param file binary STL file
+    * @param tol tolerance for merging vertices
+    * @return mesh that was read
+    */
+   public static PolygonalMesh readBinary (
+      PolygonalMesh mesh, File file, double tol) throws IOException {
+
+      RandomAccessFile raf = new RandomAccessFile (file, "r");
+      try {
+         FileChannel channel = raf.getChannel();
+         long fileSize = channel.size();
+         if (fileSize < 84) {
+            throw new IOException (
+               "Invalid STL file detected! (non-matching size)");
+         }
+         MappedByteBuffer header =
+            channel.map (FileChannel.MapMode.READ_ONLY, 0, 84);
+         header.order (ByteOrder.LITTLE_ENDIAN);
+         long numFacets = header.getInt (80) & 0xFFFFFFFFL;
+         if (84 + FACET_SIZE*numFacets > fileSize) {
+            throw new IOException (
+               "Invalid STL file detected! (non-matching size)");
+         }
+         if (numFacets > Integer.MAX_VALUE/3) {
+            throw new IOException (
+               "STL file has too many facets ("+numFacets+")");
+         }
+         int numf = (int)numFacets;
+
+         // first pass: find the coordinate range, which determines how
+         // vertices are hashed
+         double maxAbs = 0;
+         for (int f0=0; f0<numf; f0+=MAX_MAPPED_FACETS) {
+            int nf = Math.min (MAX_MAPPED_FACETS, numf-f0);
+            MappedByteBuffer buf = mapFacets (channel, f0, nf);
+            for (int i=0; i<nf; i++) {
+               int off = FACET_SIZE*i + 12;
+               for (int j=0; j<9; j++) {
+                  double c = Math.abs (buf.getFloat (off+4*j));
+                  if (c > maxAbs) {
+                     maxAbs = c;
+                  }
+               }
+            }
+         }
+
+         // second pass: merge vertices and build the face indices
+         StlVertexWelder welder = new StlVertexWelder (tol, maxAbs, numf/2);
+         int[] faceIdxs = new int[3*numf];
+         int k = 0;
+         for (int f0=0; f0<numf; f0+=MAX_MAPPED_FACETS) {
+            int nf = Math.min (MAX_MAPPED_FACETS, numf-f0);
+            MappedByteBuffer buf = mapFacets (channel, f0, nf);
+            for (int i=0; i<nf; i++) {
+               int off = FACET_SIZE*i + 12; // skip the normal
+               for (int j=0; j<3; j++) {
+                  double x = buf.getFloat (off);
+                  double y = buf.getFloat (off+4);
+                  double z = buf.getFloat (off+8);
+                  faceIdxs[k++] = welder.addVertex (x, y, z);
+                  off += 12;
+               }
+            }
+         }
+         return buildMesh (mesh, welder, faceIdxs);
+      }
+      finally {
+         raf.close();
+      }
+   }
+
+   private static MappedByteBuffer mapFacets (
+      FileChannel channel, int f0, int nf) throws IOException {
+      MappedByteBuffer buf = channel.map (
+         FileChannel.MapMode.READ_ONLY, 84 + FACET_SIZE*(long)f0,
+         FACET_SIZE*(long)nf);
+      buf.order (ByteOrder.LITTLE_ENDIAN);
+      return buf;
+   }
+
+   private static PolygonalMesh buildMesh (
+      PolygonalMesh mesh, StlVertexWelder welder, int[] faceIdxs) {
+
+      if (mesh == null) {
+         mesh = new PolygonalMesh();
+      } else {
+         mesh.clear();
+      }
+      double[] coords = welder.getCoords();
+      int numv = welder.numVertices();
+      for (int i=0; i<numv; i++) {
+         mesh.addVertex (coords[3*i], coords[3*i+1], coords[3*i+2]);
+      }
+      for (int k=0; k<faceIdxs.length; k+=3) {
+         mesh.addFace (
+            new int[] { faceIdxs[k], faceIdxs[k+1], faceIdxs[k+2] });
+      }
+      return mesh;
+   }
    
    public static PolygonalMesh readBinary(PolygonalMesh mesh, InputStream is, double tol) throws IOException {
       boolean _printDebug = false;
@@ -408,7 +552,11 @@ public class StlReader extends MeshReaderBase {
          mesh = new PolygonalMesh();
       }
       if (mesh instanceof PolygonalMesh) {
-         return read((PolygonalMesh)mesh, new BufferedInputStream(myIstream), myTol);
+         BufferedInputStream is = new BufferedInputStream(myIstream);
+         if (myFile != null && myMappedBinaryP && !isASCII (is)) {
+            return readBinary ((PolygonalMesh)mesh, myFile, myTol);
+         }
+         return read((PolygonalMesh)mesh, is, myTol);
       }
       else {
          throw new UnsupportedOperationException (
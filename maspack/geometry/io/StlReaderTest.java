@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.geometry.io;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import maspack.geometry.PolygonalMesh;
+import maspack.util.RandomGenerator;
+import maspack.util.TestException;
+import maspack.util.UnitTest;
+
+/**
+ * Checks that the memory-mapped binary STL reader produces the same mesh as
+ * the stream-based reader.
+ */
+public class StlReaderTest extends UnitTest {
+
+   /**
+    * Writes an n x n grid of triangle pairs, in which each vertex
+    * coordinate is perturbed by a random amount up to <code>jitter</code>.
+    */
+   void writeGridFile (File file, int n, double jitter) throws IOException {
+      ByteBuffer buf = ByteBuffer.allocate (84 + 100*n*n);
+      buf.order (ByteOrder.LITTLE_ENDIAN);
+      buf.put (new byte[80]);
+      buf.putInt (2*n*n);
+      int[][] tris = new int[][] {
+         { 0, 0, 1, 0, 1, 1 }, { 0, 0, 1, 1, 0, 1 } };
+      for (int i=0; i<n; i++) {
+         for (int j=0; j<n; j++) {
+            for (int[] tri : tris) {
+               buf.putFloat (0);
+               buf.putFloat (0);
+               buf.putFloat (1);
+               for (int k=0; k<3; k++) {
+                  double x = 0.1*(i+tri[2*k]);
+                  double y = 0.1*(j+tri[2*k+1]);
+                  buf.putFloat (
+                     (float)(x + RandomGenerator.nextDouble (-jitter, jitter)));
+                  buf.putFloat (
+                     (float)(y + RandomGenerator.nextDouble (-jitter, jitter)));
+                  buf.putFloat (
+                     (float)(x*y + RandomGenerator.nextDouble (-jitter, jitter)));
+               }
+               buf.putShort ((short)0);
+            }
+         }
+      }
+      FileOutputStream fos = new FileOutputStream (file);
+      try {
+         fos.write (buf.array());
+      }
+      finally {
+         fos.close();
+      }
+   }
+
+   void test (File file, int n, double jitter, double tol) throws IOException {
+      writeGridFile (file, n, jitter);
+      PolygonalMesh mapped = StlReader.readBinary (null, file, tol);
+      InputStream is = new BufferedInputStream (new FileInputStream (file));
+      PolygonalMesh check;
+      try {
+         check = StlReader.readBinary (null, is, tol);
+      }
+      finally {
+         is.close();
+      }
+      if (mapped.numVertices() != check.numVertices() ||
+          mapped.numFaces() != check.numFaces()) {
+         throw new TestException (
+            "mapped mesh has "+mapped.numVertices()+" vertices and "+
+            mapped.numFaces()+" faces, expected "+check.numVertices()+
+            " and "+check.numFaces());
+      }
+      if (!mapped.epsilonEquals (check, 0)) {
+         throw new TestException ("mapped mesh differs from stream mesh");
+      }
+      // reading through an StlReader should use the mapped reader
+      StlReader reader = new StlReader (file);
+      reader.setTolerance (tol);
+      try {
+         if (!reader.readMesh().epsilonEquals (check, 0)) {
+            throw new TestException ("StlReader mesh differs from stream mesh");
+         }
+      }
+      finally {
+         reader.close();
+      }
+   }
+
+   public void test() throws IOException {
+      File file = File.createTempFile ("stlTest", ".stl");
+      try {
+         test (file, 20, 0, StlReader.DEFAULT_TOLERANCE);
+         test (file, 20, 1e-5, 1e-3);
+      }
+      finally {
+         file.delete();
+      }
+   }
+
+   public static void main (String[] args) {
+      StlReaderTest tester = new StlReaderTest();
+      RandomGenerator.setSeed (0x1234);
+      tester.runtest();
+   }
+}
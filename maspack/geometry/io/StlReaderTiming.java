@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.geometry.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import maspack.geometry.PolygonalMesh;
+import maspack.util.FunctionTimer;
+
+/**
+ * Compares the time required to read large binary STL files using the
+ * stream-based reader and the memory-mapped reader. The files are synthetic
+ * height-field surfaces containing 2 n^2 triangles, for a set of grid sizes
+ * n, and are written to a temporary directory.
+ *
+ * <p>Usage: java maspack.geometry.io.StlReaderTiming [maxTriangles [-noStream]]
+ */
+public class StlReaderTiming {
+
+   /**
+    * Writes a binary STL file describing an n x n grid of quads, each
+    * divided into two triangles, on the surface z = sin(x) cos(y).
+    */
+   public static void writeGridFile (File file, int n) throws IOException {
+      OutputStream os =
+         new BufferedOutputStream (new FileOutputStream (file), 1 << 20);
+      try {
+         ByteBuffer buf = ByteBuffer.allocate (84);
+         buf.order (ByteOrder.LITTLE_ENDIAN);
+         buf.put (new byte[80]);
+         buf.putInt (2*n*n);
+         os.write (buf.array());
+         buf = ByteBuffer.allocate (100);
+         buf.order (ByteOrder.LITTLE_ENDIAN);
+         float h = 10f/n;
+         for (int i=0; i<n; i++) {
+            for (int j=0; j<n; j++) {
+               buf.clear();
+               putFacet (buf, h, i, j, i+1, j, i+1, j+1);
+               putFacet (buf, h, i, j, i+1, j+1, i, j+1);
+               os.write (buf.array());
+            }
+         }
+      }
+      finally {
+         os.close();
+      }
+   }
+
+   private static void putFacet (
+      ByteBuffer buf, float h, int i0, int j0, int i1, int j1, int i2, int j2) {
+      buf.putFloat (0);
+      buf.putFloat (0);
+      buf.putFloat (1);
+      putVertex (buf, h*i0, h*j0);
+      putVertex (buf, h*i1, h*j1);
+      putVertex (buf, h*i2, h*j2);
+      buf.putShort ((short)0);
+   }
+
+   private static void putVertex (ByteBuffer buf, float x, float y) {
+      buf.putFloat (x);
+      buf.putFloat (y);
+      buf.putFloat ((float)(Math.sin(x)*Math.cos(y)));
+   }
+
+   private static boolean meshesEqual (PolygonalMesh mesh0, PolygonalMesh mesh1) {
+      return (mesh0.numVertices() == mesh1.numVertices() &&
+              mesh0.numFaces() == mesh1.numFaces() &&
+              mesh0.epsilonEquals (mesh1, 0));
+   }
+
+   public void time (File file, int n, boolean timeStream) throws IOException {
+      FunctionTimer timer = new FunctionTimer();
+      writeGridFile (file, n);
+      double tol = StlReader.DEFAULT_TOLERANCE;
+
+      timer.start();
+      PolygonalMesh mapped = StlReader.readBinary (null, file, tol);
+      timer.stop();
+      System.out.println (
+         "triangles=" + 2*n*n + " vertices=" + mapped.numVertices());
+      System.out.printf ("  mapped: %8.3f sec\n", timer.getTimeUsec()/1e6);
+
+      if (timeStream) {
+         InputStream is =
+            new BufferedInputStream (new FileInputStream (file), 1 << 16);
+         PolygonalMesh streamed;
+         try {
+            timer.start();
+            streamed = StlReader.readBinary (null, is, tol);
+            timer.stop();
+         }
+         finally {
+            is.close();
+         }
+         System.out.printf (
+            "  stream: %8.3f sec\n", timer.getTimeUsec()/1e6);
+         if (!meshesEqual (mapped, streamed)) {
+            System.out.println ("  ERROR: meshes differ");
+         }
+      }
+   }
+
+   public static void main (String[] args) throws IOException {
+      int maxTriangles = 2000000;
+      boolean timeStream = true;
+      if (args.length > 0) {
+         maxTriangles = Integer.parseInt (args[0]);
+      }
+      if (args.length > 1 && args[1].equals ("-noStream")) {
+         timeStream = false;
+      }
+      StlReaderTiming tester = new StlReaderTiming();
+      File file = File.createTempFile ("stlTiming", ".stl");
+      file.deleteOnExit();
+      try {
+         // warm up
+         tester.time (file, 100, timeStream);
+         for (int n=100; 2*n*n<=maxTriangles; n*=2) {
+            tester.time (file, n, timeStream);
+         }
+      }
+      finally {
+         file.delete();
+      }
+   }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.geometry.io;
+
+/**
+ * Merges vertices that lie within a given tolerance of each other, using
+ * only primitive arrays. Vertices are hashed on their coordinates quantized
+ * to a grid whose cell size is twice the tolerance, so that any vertex lying
+ * within the tolerance of a given point is found by examining the 27 cells
+ * surrounding that point. Cells are stored in an open-addressing hash
+ * table, and the vertices within each cell are kept in a linked list.
+ *
+ * <p>If the tolerance is too small relative to the coordinate range for the
+ * quantized coordinates to be represented exactly, the welder instead
+ * hashes on the exact coordinate values, so that only coincident vertices
+ * are merged. If the tolerance is not positive, no vertices are merged.
+ */
+class StlVertexWelder {
+
+   // largest quantized coordinate for which the grid is used
+   private static final double MAX_GRID_INDEX = (double)(1L << 50);
+
+   private double myTolSq;
+   private boolean myWeldingP;
+   private boolean myGridP;     // quantize onto a grid; otherwise exact
+   private double myScale;      // inverse of the grid cell size
+
+   private double[] myCoords;   // coordinates of the unique vertices
+   private int[] myNext;        // next vertex in the same cell, or -1
+   private int myNumVertices;
+
+   // open-addressing hash table of cells
+   private long[] myCellKeys;   // three values per cell
+   private int[] myCellHeads;   // first vertex in each cell, or -1 if empty
+   private int myNumCells;
+   private int myMask;
+
+   /**
+    * Creates a new welder.
+    *
+    * @param tol vertices closer than this distance are merged
+    * @param maxAbs maximum absolute value of any vertex coordinate
+    * @param expectedVertices estimate of the number of unique vertices
+    */
+   StlVertexWelder (double tol, double maxAbs, int expectedVertices) {
+      expectedVertices = Math.max (16, expectedVertices);
+      myTolSq = tol*tol;
+      myWeldingP = (tol > 0);
+      if (myWeldingP) {
+         myScale = 1/(2*tol);
+         myGridP = (maxAbs*myScale < MAX_GRID_INDEX);
+         myNext = new int[expectedVertices];
+         int cap = 16;
+         while (cap < 2*expectedVertices && cap < (1 << 30)) {
+            cap <<= 1;
+         }
+         allocateCells (cap);
+      }
+      myCoords = new double[3*expectedVertices];
+   }
+
+   private void allocateCells (int cap) {
+      myCellKeys = new long[3*cap];
+      myCellHeads = new int[cap];
+      for (int i=0; i<cap; i++) {
+         myCellHeads[i] = -1;
+      }
+      myMask = cap-1;
+      myNumCells = 0;
+   }
+
+   private int hash (long kx, long ky, long kz) {
+      long h = (kx*0x9E3779B97F4A7C15L ^
+                ky*0xC2B2AE3D27D4EB4FL ^
+                kz*0x165667B19E3779F9L);
+      h ^= (h >>> 29);
+      return (int)(h ^ (h >>> 32)) & myMask;
+   }
+
+   private long key (double c) {
+      if (myGridP) {
+         return (long)Math.floor (c*myScale);
+      }
+      else {
+         // adding 0 converts -0.0 to 0.0
+         return Double.doubleToLongBits (c + 0.0);
+      }
+   }
+
+   /**
+    * Returns the slot of a cell, or the empty slot where it would be
+    * inserted.
+    */
+   private int findSlot (long kx, long ky, long kz) {
+      int slot = hash (kx, ky, kz);
+      while (myCellHeads[slot] != -1) {
+         int k = 3*slot;
+         if (myCellKeys[k] == kx &&
+             myCellKeys[k+1] == ky &&
+             myCellKeys[k+2] == kz) {
+            return slot;
+         }
+         slot = (slot+1) & myMask;
+      }
+      return slot;
+   }
+
+   private void growCells() {
+      long[] keys = myCellKeys;
+      int[] heads = myCellHeads;
+      allocateCells (2*heads.length);
+      for (int i=0; i<heads.length; i++) {
+         if (heads[i] != -1) {
+            int k = 3*i;
+            int slot = findSlot (keys[k], keys[k+1], keys[k+2]);
+            myCellKeys[3*slot  ] = keys[k  ];
+            myCellKeys[3*slot+1] = keys[k+1];
+            myCellKeys[3*slot+2] = keys[k+2];
+            myCellHeads[slot] = heads[i];
+            myNumCells++;
+         }
+      }
+   }
+
+   /**
+    * Searches a cell for the lowest-numbered vertex within the tolerance of
+    * (x, y, z), returning it if it is lower than <code>best</code>.
+    */
+   private int searchCell (
+      long kx, long ky, long kz, double x, double y, double z, int best) {
+      int slot = findSlot (kx, ky, kz);
+      for (int v=myCellHeads[slot]; v != -1; v=myNext[v]) {
+         if (best != -1 && v >= best) {
+            continue;
+         }
+         double dx = myCoords[3*v  ] - x;
+         double dy = myCoords[3*v+1] - y;
+         double dz = myCoords[3*v+2] - z;
+         if (dx*dx + dy*dy + dz*dz < myTolSq) {
+            best = v;
+         }
+      }
+      return best;
+   }
+
+   private int appendVertex (double x, double y, double z) {
+      int idx = myNumVertices;
+      if (3*idx == myCoords.length) {
+         double[] coords = new double[2*myCoords.length];
+         System.arraycopy (myCoords, 0, coords, 0, myCoords.length);
+         myCoords = coords;
+         if (myWeldingP) {
+            int[] next = new int[2*myNext.length];
+            System.arraycopy (myNext, 0, next, 0, myNext.length);
+            myNext = next;
+         }
+      }
+      myCoords[3*idx  ] = x;
+      myCoords[3*idx+1] = y;
+      myCoords[3*idx+2] = z;
+      myNumVertices++;
+      return idx;
+   }
+
+   /**
+    * Returns the index of the unique vertex within the tolerance of (x, y,
+    * z), or creates a new vertex if there is none. If several vertices are
+    * within the tolerance, the one created first is returned.
+    */
+   int addVertex (double x, double y, double z) {
+      if (!myWeldingP) {
+         return appendVertex (x, y, z);
+      }
+      long kx = key (x);
+      long ky = key (y);
+      long kz = key (z);
+      int best = -1;
+      if (myGridP) {
+         for (long ix=kx-1; ix<=kx+1; ix++) {
+            for (long iy=ky-1; iy<=ky+1; iy++) {
+               for (long iz=kz-1; iz<=kz+1; iz++) {
+                  best = searchCell (ix, iy, iz, x, y, z, best);
+               }
+            }
+         }
+      }
+      else {
+         best = searchCell (kx, ky, kz, x, y, z, best);
+      }
+      if (best != -1) {
+         return best;
+      }
+      int idx = appendVertex (x, y, z);
+      int slot = findSlot (kx, ky, kz);
+      if (myCellHeads[slot] == -1) {
+         myCellKeys[3*slot  ] = kx;
+         myCellKeys[3*slot+1] = ky;
+         myCellKeys[3*slot+2] = kz;
+         myNumCells++;
+      }
+      myNext[idx] = myCellHeads[slot];
+      myCellHeads[slot] = idx;
+      if (2*myNumCells > myCellHeads.length && myCellHeads.length < (1 << 30)) {
+         growCells();
+      }
+      return idx;
+   }
+
+   /**
+    * Returns the number of unique vertices.
+    */
+   int numVertices() {
+      return myNumVertices;
+   }
+
+   /**
+    * Returns the coordinates of the unique vertices, three per vertex. The
+    * array may be longer than required.
+    */
+   double[] getCoords() {
+      return myCoords;
+   }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+
+package maspack.image.dicom;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import maspack.image.dicom.DicomElement.VR;
+
+/**
+ * Location of the pixel data for a single frame within a DICOM file, used
+ * to load the frame on demand. The data consists of one or more contiguous
+ * byte ranges, which are memory-mapped when the frame is loaded.
+ * Uncompressed frames occupy a single range, while encapsulated
+ * (compressed) frames may be split into several fragments.
+ * @author Antonio
+ */
+class DicomFrameLocation {
+
+   File file;
+   VR vr;
+   boolean littleEndian;
+   long[] offsets;
+   int[] lengths;
+
+   DicomFrameLocation(
+      File file, VR vr, boolean littleEndian, long[] offsets, int[] lengths) {
+      this.file = file;
+      this.vr = vr;
+      this.littleEndian = littleEndian;
+      this.offsets = offsets;
+      this.lengths = lengths;
+   }
+
+   /**
+    * @return total number of bytes of pixel data
+    */
+   long getNumBytes() {
+      long n = 0;
+      for (int len : lengths) {
+         n += len;
+      }
+      return n;
+   }
+
+   /**
+    * Loads the raw pixel data for this frame from the file
+    * @return the raw (possibly encoded) pixel data
+    * @throws IOException if the file cannot be read
+    */
+   DicomPixelData load() throws IOException {
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+         FileChannel channel = raf.getChannel();
+         int nbytes = (int)getNumBytes();
+         switch (vr) {
+            case OW: {
+               DicomPixelData data = new DicomPixelData(vr, nbytes/2);
+               int off = 0;
+               for (int i=0; i<offsets.length; i++) {
+                  MappedByteBuffer buf = map(channel, i);
+                  int n = lengths[i]/2;
+                  buf.asShortBuffer().get(data.s, off, n);
+                  off += n;
+               }
+               return data;
+            }
+            case OF: {
+               DicomPixelData data = new DicomPixelData(vr, nbytes/4);
+               int off = 0;
+               for (int i=0; i<offsets.length; i++) {
+                  MappedByteBuffer buf = map(channel, i);
+                  int n = lengths[i]/4;
+                  buf.asFloatBuffer().get(data.f, off, n);
+                  off += n;
+               }
+               return data;
+            }
+            default: {
+               DicomPixelData data = new DicomPixelData(VR.OB, nbytes);
+               int off = 0;
+               for (int i=0; i<offsets.length; i++) {
+                  MappedByteBuffer buf = map(channel, i);
+                  buf.get(data.b, off, lengths[i]);
+                  off += lengths[i];
+               }
+               return data;
+            }
+         }
+      } finally {
+         raf.close();
+      }
+   }
+
+   private MappedByteBuffer map(FileChannel channel, int i) throws IOException {
+      MappedByteBuffer buf = channel.map(
+         FileChannel.MapMode.READ_ONLY, offsets[i], lengths[i]);
+      buf.order(littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+      return buf;
+   }
+
+}
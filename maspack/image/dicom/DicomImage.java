@@ -50,7 +50,7 @@ public class DicomImage {
       this.pixelSpacingCols = firstSlice.info.pixelSpacingCols;
       this.pixelSpacingSlice = firstSlice.getHeader().getDecimalValue(DicomTag.SPACING_BETWEEN_SLICES, 
          (float)firstSlice.info.pixelSpacingSlice);
-      this.pixelType = firstSlice.pixelBuff.getPixelType();
+      this.pixelType = firstSlice.getPixelType();
       
       slices = new DicomSlice[16];
       timeOffsets = new int[1];
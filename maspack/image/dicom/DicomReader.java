@@ -27,6 +27,7 @@ import java.util.regex.Pattern;
 
 import maspack.concurrency.NamedThreadFactory;
 import maspack.image.dicom.DicomElement.VR;
+import maspack.image.dicom.DicomPixelBuffer.PixelType;
 import maspack.util.BinaryInputStream;
 import maspack.util.FunctionTimer;
 
@@ -41,6 +42,12 @@ public class DicomReader {
     * List of known image decoders
     */
    private ArrayList<DicomImageDecoder> imageDecoders;
+   
+   /**
+    * Whether to load slice pixels on demand
+    */
+   private boolean lazyLoading = false;
+   private DicomSliceCache sliceCache = null;
 
    public DicomReader() {
       initializeDecoders();
@@ -87,6 +94,53 @@ public class DicomReader {
       imageDecoders.add(decoder);
    }
 
+   /**
+    * Sets whether slice pixels should be loaded on demand.  If enabled, 
+    * reading only records the location of each slice's pixel data within 
+    * its file.  The pixels are then loaded and decoded when first accessed,
+    * and kept in a bounded slice cache (see {@link #getSliceCache()}), so 
+    * that very large series can be viewed without holding all of their 
+    * pixels in memory.  Uncompressed pixel data is memory-mapped when it is 
+    * loaded.  Files whose pixel format cannot be determined from the header
+    * are still loaded immediately.
+    * 
+    * @param enable if true, enables lazy loading
+    */
+   public void setLazyLoading(boolean enable) {
+      lazyLoading = enable;
+   }
+   
+   /**
+    * @return true if slice pixels are loaded on demand
+    * @see #setLazyLoading(boolean)
+    */
+   public boolean isLazyLoading() {
+      return lazyLoading;
+   }
+   
+   /**
+    * Returns the cache used to store the pixels of slices loaded on demand.
+    * The cache is shared by all images read by this reader.
+    * 
+    * @return slice cache
+    */
+   public synchronized DicomSliceCache getSliceCache() {
+      if (sliceCache == null) {
+         sliceCache = new DicomSliceCache();
+      }
+      return sliceCache;
+   }
+   
+   /**
+    * Sets the cache used to store the pixels of slices that are
+    * subsequently read with lazy loading enabled.
+    * 
+    * @param cache slice cache
+    */
+   public synchronized void setSliceCache(DicomSliceCache cache) {
+      sliceCache = cache;
+   }
+
    private class SliceReaderCallable implements Callable<DicomSlice[]> {
 
       private File file;
@@ -467,6 +521,26 @@ public class DicomReader {
       // parse pixel data
       if (tagId == DicomTag.PIXEL_DATA) {
 
+         PixelType lazyType = null;
+         if (lazyLoading) {
+            lazyType = getPixelType(header);
+         }
+         if (lazyType != null) {
+            DicomFrameLocation[] frames = indexPixels(header, in, file);
+            DicomSliceCache cache = getSliceCache();
+            DicomSlice[] out = new DicomSlice[frames.length];
+            for (int i = 0; i < frames.length; i++) {
+               String title = sliceTitle;
+               if (frames.length > 1) {
+                  title = sliceTitle + "_" + i;
+               }
+               out[i] = new DicomSlice(
+                  title, header, lazyType, frames[i], this, cache);
+            }
+            in.close();
+            return out;
+         }
+
          DicomPixelBuffer[] pixels = parsePixels(header, in);
          DicomSlice[] out = new DicomSlice[pixels.length];
 
@@ -1001,7 +1075,7 @@ public class DicomReader {
 
    }
 
-   private DicomPixelBuffer decodeFrame(DicomHeader header, DicomPixelData data)
+   DicomPixelBuffer decodeFrame(DicomHeader header, DicomPixelData data)
       throws IOException {
 
       // find appropriate decoder
@@ -1016,6 +1090,149 @@ public class DicomReader {
 
    }
 
+   /**
+    * Determines the type of pixel buffer that decoding will produce, based on
+    * header information, or returns null if this cannot be determined
+    */
+   private static PixelType getPixelType(DicomHeader header) {
+      int nSamples = header.getIntValue(DicomTag.SAMPLES_PER_PIXEL, 1);
+      int bitsAllocated = header.getIntValue(DicomTag.BITS_ALLOCATED, 8);
+      if (nSamples == 1 && bitsAllocated == 8) {
+         return PixelType.BYTE;
+      } else if (nSamples == 1 && bitsAllocated == 16) {
+         return PixelType.SHORT;
+      } else if (nSamples == 3 && bitsAllocated == 8) {
+         return PixelType.BYTE_RGB;
+      }
+      return null;
+   }
+
+   private void skipFully(BinaryInputStream in, long n) throws IOException {
+      while (n > 0) {
+         long skipped = in.skip(n);
+         if (skipped <= 0) {
+            if (in.read() < 0) {
+               throw new EOFException("Unexpected end of pixel data");
+            }
+            skipped = 1;
+         }
+         n -= skipped;
+      }
+   }
+
+   /**
+    * Records the location of each frame of pixel data in the file, 
+    * skipping over the data itself.  Follows the same structure as
+    * {@link #parsePixels}.
+    */
+   private DicomFrameLocation[] indexPixels(
+      DicomHeader header, BinaryInputStream in, File file) throws IOException {
+
+      // check type
+      char c0 = in.readChar();
+      char c1 = in.readChar();
+      in.skip(2); // reserved
+
+      int nFrames = header.getIntValue(DicomTag.NUMBER_OF_FRAMES, 1);
+      DicomFrameLocation[] frames = new DicomFrameLocation[nFrames];
+
+      VR vr = VR.get(c0, c1);
+      boolean littleEndian = in.isLittleEndian();
+
+      // length
+      int length = in.readInt();
+
+      // undefined length, must be encapsulated OB
+      if (length == 0xFFFFFFFF) {
+         int[] offsets = new int[nFrames];
+
+         // read offset table
+         short s0 = in.readShort();
+         short s1 = in.readShort();
+         int tagId = toTagId(s0, s1);
+         if (tagId != DicomTag.ITEM) {
+            throw new IOException("Expected item tag for offset table, found "
+               + String.format("0x%08X", tagId));
+         }
+         length = in.readInt();
+         if (length > 0) {
+            int noffsets = length / 4;
+            for (int i = 0; i < noffsets; i++) {
+               offsets[i] = in.readInt();
+            }
+         }
+
+         int offsetStart = in.getByteCount();
+
+         for (int i = 0; i < nFrames; i++) {
+            ArrayList<Integer> fragOffsets = new ArrayList<Integer>();
+            ArrayList<Integer> fragLengths = new ArrayList<Integer>();
+
+            boolean doneFrame = false;
+            while (!doneFrame) {
+               s0 = in.readShort();
+               s1 = in.readShort();
+               tagId = toTagId(s0, s1);
+               length = in.readInt();
+               if (tagId == DicomTag.ITEM) {
+                  fragOffsets.add(in.getByteCount());
+                  fragLengths.add(length);
+                  skipFully(in, length);
+               }
+               else if (tagId == DicomTag.SEQUENCE_DELIMINATION) {
+                  doneFrame = true;
+               }
+               else {
+                  throw new IOException(
+                     "Invalid tag in pixel data: "
+                        + String.format("0x%08X", tagId));
+               }
+
+               // we're at the start of the next frame
+               if ((i < nFrames - 1)
+                  && (in.getByteCount() >= (offsetStart + offsets[i + 1]))) {
+                  doneFrame = true;
+               }
+            }
+
+            long[] foffs = new long[fragOffsets.size()];
+            int[] flens = new int[fragLengths.size()];
+            for (int j = 0; j < foffs.length; j++) {
+               foffs[j] = fragOffsets.get(j);
+               flens[j] = fragLengths.get(j);
+            }
+            frames[i] = new DicomFrameLocation(
+               file, VR.OB, littleEndian, foffs, flens);
+         }
+      }
+      else {
+         int frameBytes;
+         switch (vr) {
+            case OB:
+               frameBytes = length / nFrames;
+               break;
+            case OW:
+               frameBytes = 2 * (length / nFrames / 2);
+               break;
+            case OF:
+               frameBytes = 4 * (length / nFrames / 4);
+               break;
+            default:
+               throw new IOException("Invalid pixel data type: " + vr);
+         }
+         long start = in.getByteCount();
+         for (int i = 0; i < nFrames; i++) {
+            frames[i] = new DicomFrameLocation(
+               file, vr, littleEndian,
+               new long[] { start + (long)i * frameBytes },
+               new int[] { frameBytes });
+         }
+         skipFully(in, (long)nFrames * frameBytes);
+      }
+
+      return frames;
+   }
+
    private DicomPixelBuffer[] parsePixels(
       DicomHeader header, BinaryInputStream in) throws IOException {
 
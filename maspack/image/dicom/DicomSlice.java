@@ -7,6 +7,7 @@
 
 package maspack.image.dicom;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Map.Entry;
 
@@ -56,6 +57,15 @@ public class DicomSlice {
    private DicomHeader header;
    DicomPixelBuffer pixelBuff;
    
+   // information for loading pixels on demand, if pixelBuff is null
+   private PixelType pixelType;
+   private DicomFrameLocation frameLocation;
+   private DicomReader decoder;
+   private DicomSliceCache cache;
+   private int minIntensity;
+   private int maxIntensity;
+   private boolean intensityRangeKnown = false;
+   
    private static DicomElement findElement(DicomElement[] elems, int tagId) {
       for (DicomElement elem : elems) {
          if (elem.getTag() == tagId) {
@@ -101,8 +111,27 @@ public class DicomSlice {
     * image pixels
     */
    public DicomSlice(String title, DicomHeader header, DicomPixelBuffer pixels) {
-      this.header = header;
       this.pixelBuff = pixels;
+      this.pixelType = pixels.getPixelType();
+      initialize(title, header);
+   }
+   
+   /**
+    * Construct a DICOM slice whose pixels are loaded from file on demand,
+    * and stored in a slice cache
+    */
+   DicomSlice(String title, DicomHeader header, PixelType type, 
+      DicomFrameLocation location, DicomReader decoder, DicomSliceCache cache) {
+      this.pixelBuff = null;
+      this.pixelType = type;
+      this.frameLocation = location;
+      this.decoder = decoder;
+      this.cache = cache;
+      initialize(title, header);
+   }
+   
+   private void initialize(String title, DicomHeader header) {
+      this.header = header;
       this.info = new SliceInfo(title);
       
       this.info.cols = header.getIntValue(DicomTag.COLUMNS, 1);
@@ -172,14 +201,47 @@ public class DicomSlice {
     * @return Returns the pixel type of the slice (byte/short grayscale, byte RGB)
     */
    public PixelType getPixelType() {
-      return pixelBuff.getPixelType();
+      return pixelType;
    }
    
    /**
+    * @return true if the pixels of this slice are loaded from file on
+    * demand, rather than being stored in memory
+    */
+   public boolean isLazy() {
+      return pixelBuff == null;
+   }
+   
+   /**
+    * Returns the underlying pixel buffer.  If the slice is lazy, the buffer
+    * is obtained from the slice cache, loading it from file if necessary.
+    * 
     * @return the underlying pixel buffer
     */
    public DicomPixelBuffer getPixelBuffer() {
-      return pixelBuff;
+      if (pixelBuff != null) {
+         return pixelBuff;
+      }
+      try {
+         return cache.getPixelBuffer(this);
+      } catch (IOException e) {
+         throw new RuntimeException(
+            "Unable to load pixels for slice '" + info.title + "'", e);
+      }
+   }
+   
+   /**
+    * Loads and decodes the pixels of a lazy slice
+    */
+   DicomPixelBuffer loadPixelBuffer() throws IOException {
+      DicomPixelData data = frameLocation.load();
+      DicomPixelBuffer buff = decoder.decodeFrame(header, data);
+      if (buff.getPixelType() != pixelType) {
+         throw new IOException(
+            "Decoded pixel type " + buff.getPixelType() + 
+            " does not match expected type " + pixelType);
+      }
+      return buff;
    }
    
    /**
@@ -204,10 +266,11 @@ public class DicomSlice {
       DicomPixelInterpolator interp) {
     
       
+      DicomPixelBuffer buff = getPixelBuffer();
       for (int i=0; i<ny; i++) {
          int idx = (y + dy*i)*info.cols+x;
          int p = pixels.position ();
-         pixelBuff.getPixels (idx, dx, nx, type, pixels, interp);
+         buff.getPixels (idx, dx, nx, type, pixels, interp);
          if (scanline > 0) {
             pixels.position (p+scanline);
          }
@@ -234,9 +297,10 @@ public class DicomSlice {
       int nx, int ny, byte[] pixels, int offset,
       DicomPixelInterpolator interp) {
     
+      DicomPixelBuffer buff = getPixelBuffer();
       for (int i=0; i<ny; i++) {
          int idx = (y + dy*i)*info.cols+x;
-         offset = pixelBuff.getPixelsRGB(idx, dx, nx, pixels, offset, interp);
+         offset = buff.getPixelsRGB(idx, dx, nx, pixels, offset, interp);
       }
       
       return offset;
@@ -262,9 +326,10 @@ public class DicomSlice {
       int nx, int ny, byte[] pixels, int offset,
       DicomPixelInterpolator interp) {
       
+      DicomPixelBuffer buff = getPixelBuffer();
       for (int i=0; i<ny; i++) {
          int idx = (y + dy*i)*info.cols+x;
-         offset = pixelBuff.getPixelsByte(idx, dx, nx, pixels, offset, interp);
+         offset = buff.getPixelsByte(idx, dx, nx, pixels, offset, interp);
       }
       
       return offset;
@@ -290,9 +355,10 @@ public class DicomSlice {
       int nx, int ny, short[] pixels, int offset,
       DicomPixelInterpolator interp) {
       
+      DicomPixelBuffer buff = getPixelBuffer();
       for (int i=0; i<ny; i++) {
          int idx = (y + dy*i)*info.cols + x;
-         offset = pixelBuff.getPixelsShort(idx, dx, nx, pixels, offset, interp);
+         offset = buff.getPixelsShort(idx, dx, nx, pixels, offset, interp);
       }
       
       return offset;
@@ -318,9 +384,10 @@ public class DicomSlice {
       DicomPixelBuffer pixels, int offset,
       DicomPixelInterpolator interp) {
       
+      DicomPixelBuffer buff = getPixelBuffer();
       for (int i=0; i<ny; i++) {
          int idx = (y + dy*i)*info.cols + x;
-         offset = pixelBuff.getPixels(idx, dx, nx, pixels, offset, interp);
+         offset = buff.getPixels(idx, dx, nx, pixels, offset, interp);
       }
       return offset;
    }
@@ -329,14 +396,35 @@ public class DicomSlice {
     * @return maximum pixel intensity in the slice
     */
    public int getMaxIntensity() {
-      return pixelBuff.getMaxIntensity();
+      if (pixelBuff != null) {
+         return pixelBuff.getMaxIntensity();
+      }
+      updateIntensityRange();
+      return maxIntensity;
    }
    
    /**
     * @return minimum pixel intensity in the slice
     */
    public int getMinIntensity() {
-      return pixelBuff.getMinIntensity();
+      if (pixelBuff != null) {
+         return pixelBuff.getMinIntensity();
+      }
+      updateIntensityRange();
+      return minIntensity;
+   }
+   
+   /**
+    * For lazy slices, computes the intensity range once, so that it is
+    * not necessary to reload the pixels each time it is requested
+    */
+   private synchronized void updateIntensityRange() {
+      if (!intensityRangeKnown) {
+         DicomPixelBuffer buff = getPixelBuffer();
+         minIntensity = buff.getMinIntensity();
+         maxIntensity = buff.getMaxIntensity();
+         intensityRangeKnown = true;
+      }
    }
 
    /**
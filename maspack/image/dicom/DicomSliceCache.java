@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+
+package maspack.image.dicom;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, least-recently-used cache of decoded pixel buffers for DICOM
+ * slices whose pixel data is loaded on demand. When the total size of the
+ * cached buffers exceeds the maximum, the least recently used buffers are
+ * discarded, and are reloaded from file the next time they are needed.
+ * @author Antonio
+ */
+public class DicomSliceCache {
+
+   /**
+    * Default maximum cache size, in bytes
+    */
+   public static final long DEFAULT_MAX_BYTES = 512L*1024*1024;
+
+   private long maxBytes;
+   private long numBytes;
+   private LinkedHashMap<DicomSlice,DicomPixelBuffer> buffers;
+
+   /**
+    * Creates a cache with the default maximum size
+    */
+   public DicomSliceCache() {
+      this(DEFAULT_MAX_BYTES);
+   }
+
+   /**
+    * Creates a cache with a given maximum size
+    * @param maxBytes maximum total size of the cached pixel buffers, in bytes
+    */
+   public DicomSliceCache(long maxBytes) {
+      this.maxBytes = maxBytes;
+      this.numBytes = 0;
+      buffers = new LinkedHashMap<DicomSlice,DicomPixelBuffer>(16, 0.75f, true);
+   }
+
+   /**
+    * @return the maximum total size of the cached pixel buffers, in bytes
+    */
+   public long getMaxBytes() {
+      return maxBytes;
+   }
+
+   /**
+    * Sets the maximum total size of the cached pixel buffers, discarding
+    * buffers if necessary.  At least one buffer is always retained.
+    * @param max maximum size, in bytes
+    */
+   public synchronized void setMaxBytes(long max) {
+      maxBytes = max;
+      trim();
+   }
+
+   /**
+    * @return the current total size of the cached pixel buffers, in bytes
+    */
+   public synchronized long getNumBytes() {
+      return numBytes;
+   }
+
+   /**
+    * @return the number of pixel buffers currently cached
+    */
+   public synchronized int size() {
+      return buffers.size();
+   }
+
+   /**
+    * Discards all cached pixel buffers
+    */
+   public synchronized void clear() {
+      buffers.clear();
+      numBytes = 0;
+   }
+
+   /**
+    * Returns the pixel buffer for a slice, loading and decoding it if it is
+    * not already cached.
+    * @param slice slice whose pixels are requested
+    * @return the decoded pixel buffer
+    * @throws IOException if the pixel data cannot be loaded
+    */
+   synchronized DicomPixelBuffer getPixelBuffer(DicomSlice slice)
+      throws IOException {
+      DicomPixelBuffer buff = buffers.get(slice);
+      if (buff == null) {
+         buff = slice.loadPixelBuffer();
+         buffers.put(slice, buff);
+         numBytes += getNumBytes(buff);
+         trim();
+      }
+      return buff;
+   }
+
+   private void trim() {
+      Iterator<Map.Entry<DicomSlice,DicomPixelBuffer>> it =
+         buffers.entrySet().iterator();
+      while (numBytes > maxBytes && buffers.size() > 1) {
+         numBytes -= getNumBytes(it.next().getValue());
+         it.remove();
+      }
+   }
+
+   private static long getNumBytes(DicomPixelBuffer buff) {
+      switch (buff.getPixelType()) {
+         case SHORT:
+            return 2L*buff.getNumPixels();
+         case BYTE_RGB:
+            return 3L*buff.getNumPixels();
+         default:
+            return buff.getNumPixels();
+      }
+   }
+
+}
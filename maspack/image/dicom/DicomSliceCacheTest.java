@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+
+package maspack.image.dicom;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import maspack.image.dicom.DicomPixelBuffer.PixelType;
+import maspack.util.RandomGenerator;
+import maspack.util.TestException;
+import maspack.util.UnitTest;
+
+public class DicomSliceCacheTest extends UnitTest {
+
+   static final int ROWS = 6;
+   static final int COLS = 5;
+   static final int NUM_FRAMES = 4;
+
+   private static void writeShort(ByteArrayOutputStream out, int s) {
+      out.write(s & 0xFF);
+      out.write((s >>> 8) & 0xFF);
+   }
+
+   private static void writeInt(ByteArrayOutputStream out, int i) {
+      writeShort(out, i & 0xFFFF);
+      writeShort(out, (i >>> 16) & 0xFFFF);
+   }
+
+   private static void writeTag(ByteArrayOutputStream out, int tagId, String vr) {
+      writeShort(out, tagId >>> 16);
+      writeShort(out, tagId & 0xFFFF);
+      out.write(vr.charAt(0));
+      out.write(vr.charAt(1));
+   }
+
+   private static void writeString(
+      ByteArrayOutputStream out, int tagId, String vr, String str) {
+      if (str.length() % 2 != 0) {
+         str = str + (vr.equals("UI") ? '\0' : ' ');
+      }
+      writeTag(out, tagId, vr);
+      writeShort(out, str.length());
+      for (int i = 0; i < str.length(); i++) {
+         out.write(str.charAt(i));
+      }
+   }
+
+   private static void writeUnsignedShort(
+      ByteArrayOutputStream out, int tagId, int val) {
+      writeTag(out, tagId, "US");
+      writeShort(out, 2);
+      writeShort(out, val);
+   }
+
+   /**
+    * Writes a multi-frame, uncompressed grayscale DICOM file in explicit
+    * little endian, with random pixel values, and returns the file.
+    */
+   private File writeDicomFile(int bitsAllocated) throws IOException {
+      int bitsStored = (bitsAllocated == 16 ? 12 : 8);
+      Random rand = RandomGenerator.get();
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      out.write(new byte[128], 0, 128);
+      out.write('D');
+      out.write('I');
+      out.write('C');
+      out.write('M');
+      writeString(out, DicomTag.TRANSFER_SYNTAX_UID, "UI", "1.2.840.10008.1.2.1");
+
+      writeUnsignedShort(out, DicomTag.SAMPLES_PER_PIXEL, 1);
+      writeString(out, DicomTag.PHOTOMETRIC_ITERPRETATION, "CS", "MONOCHROME2");
+      writeString(
+         out, DicomTag.NUMBER_OF_FRAMES, "IS", Integer.toString(NUM_FRAMES));
+      writeUnsignedShort(out, DicomTag.ROWS, ROWS);
+      writeUnsignedShort(out, DicomTag.COLUMNS, COLS);
+      writeUnsignedShort(out, DicomTag.BITS_ALLOCATED, bitsAllocated);
+      writeUnsignedShort(out, DicomTag.BITS_STORED, bitsStored);
+      writeUnsignedShort(out, DicomTag.HIGH_BIT, bitsStored-1);
+      writeUnsignedShort(out, DicomTag.PIXEL_REPRESENTATION, 0);
+
+      int numPixels = NUM_FRAMES*ROWS*COLS;
+      if (bitsAllocated == 16) {
+         writeTag(out, DicomTag.PIXEL_DATA, "OW");
+         writeShort(out, 0);
+         writeInt(out, 2*numPixels);
+         for (int i = 0; i < numPixels; i++) {
+            writeShort(out, rand.nextInt(1 << bitsStored));
+         }
+      } else {
+         writeTag(out, DicomTag.PIXEL_DATA, "OB");
+         writeShort(out, 0);
+         writeInt(out, numPixels);
+         for (int i = 0; i < numPixels; i++) {
+            out.write(rand.nextInt(1 << bitsStored));
+         }
+      }
+
+      File file = File.createTempFile("DicomSliceCacheTest", ".dcm");
+      file.deleteOnExit();
+      FileOutputStream fout = new FileOutputStream(file);
+      try {
+         out.writeTo(fout);
+      } finally {
+         fout.close();
+      }
+      return file;
+   }
+
+   private void checkBuffer(
+      DicomPixelBuffer buff, DicomPixelBuffer check, String msg) {
+      if (buff.getPixelType() != check.getPixelType()) {
+         throw new TestException(
+            msg + ": pixel type " + buff.getPixelType() +
+            ", expected " + check.getPixelType());
+      }
+      Object b = buff.getBuffer();
+      Object c = check.getBuffer();
+      boolean equal;
+      if (c instanceof short[]) {
+         equal = Arrays.equals((short[])b, (short[])c);
+      } else {
+         equal = Arrays.equals((byte[])b, (byte[])c);
+      }
+      if (!equal) {
+         throw new TestException(msg + ": pixels differ from eager loading");
+      }
+   }
+
+   private void checkSlice(DicomSlice slice, DicomSlice check, String msg) {
+      checkEquals(msg + " pixel type", slice.getPixelType(), check.getPixelType());
+      checkBuffer(slice.getPixelBuffer(), check.getPixelBuffer(), msg);
+      checkEquals(
+         msg + " max intensity",
+         slice.getMaxIntensity(), check.getMaxIntensity());
+      checkEquals(
+         msg + " min intensity",
+         slice.getMinIntensity(), check.getMinIntensity());
+   }
+
+   /**
+    * Reads a file both eagerly and lazily, with a cache that only has room
+    * for two frames, and checks that the lazily loaded pixels match the
+    * eager ones as frames are evicted from the cache and reloaded.
+    */
+   public void testLazyLoading(int bitsAllocated) throws IOException {
+      File file = writeDicomFile(bitsAllocated);
+      PixelType type =
+         (bitsAllocated == 16 ? PixelType.SHORT : PixelType.BYTE);
+
+      DicomSlice[] eager = new DicomReader().readSlice("eager", file);
+      checkEquals("number of eager slices", eager.length, NUM_FRAMES);
+
+      long frameBytes = (bitsAllocated/8)*ROWS*COLS;
+      DicomSliceCache cache = new DicomSliceCache(2*frameBytes);
+      DicomReader reader = new DicomReader();
+      reader.setLazyLoading(true);
+      reader.setSliceCache(cache);
+      DicomSlice[] lazy = reader.readSlice("lazy", file);
+      checkEquals("number of lazy slices", lazy.length, NUM_FRAMES);
+
+      for (int i = 0; i < NUM_FRAMES; i++) {
+         if (eager[i].isLazy()) {
+            throw new TestException("eager slice " + i + " is lazy");
+         }
+         if (!lazy[i].isLazy()) {
+            throw new TestException("lazy slice " + i + " is not lazy");
+         }
+         checkEquals("eager slice " + i + " type", eager[i].getPixelType(), type);
+      }
+      checkEquals("cache size before access", cache.size(), 0);
+
+      // load every frame, evicting all but the last two
+      for (int i = 0; i < NUM_FRAMES; i++) {
+         checkSlice(lazy[i], eager[i], "slice " + i);
+      }
+      checkEquals("cache size", cache.size(), 2);
+      checkEquals("cache bytes", cache.getNumBytes(), 2*frameBytes);
+
+      // most recently used frame should be a cache hit
+      DicomPixelBuffer last = lazy[NUM_FRAMES-1].getPixelBuffer();
+      if (lazy[NUM_FRAMES-1].getPixelBuffer() != last) {
+         throw new TestException("cached frame was reloaded");
+      }
+
+      // evicted frames are reloaded and still match
+      for (int i = 0; i < NUM_FRAMES; i++) {
+         checkSlice(lazy[i], eager[i], "reloaded slice " + i);
+         if (cache.getNumBytes() > 2*frameBytes) {
+            throw new TestException(
+               "cache holds " + cache.getNumBytes() +
+               " bytes, maximum is " + 2*frameBytes);
+         }
+      }
+
+      // shrinking the cache still retains one frame
+      cache.setMaxBytes(0);
+      checkEquals("cache size after shrinking", cache.size(), 1);
+      for (int i = NUM_FRAMES-1; i >= 0; i--) {
+         checkSlice(lazy[i], eager[i], "slice " + i + " with minimal cache");
+         checkEquals("minimal cache size", cache.size(), 1);
+      }
+
+      cache.clear();
+      checkEquals("cache size after clear", cache.size(), 0);
+      checkEquals("cache bytes after clear", cache.getNumBytes(), 0L);
+      checkSlice(lazy[0], eager[0], "slice 0 after clear");
+   }
+
+   public void test() throws IOException {
+      testLazyLoading(16);
+      testLazyLoading(8);
+   }
+
+   public static void main(String[] args) {
+      DicomSliceCacheTest tester = new DicomSliceCacheTest();
+      RandomGenerator.setSeed(0x1234);
+      tester.runtest();
+   }
+
+}
@@ -0,0 +1,401 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.interpolation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+import maspack.interpolation.Interpolation.Order;
+import static maspack.interpolation.BinaryNumericListWriter.*;
+
+/**
+ * Reads numeric list data from a binary file created by {@link
+ * BinaryNumericListWriter}. Chunks of the file are memory-mapped on demand,
+ * so that individual knots can be accessed without reading the whole
+ * file. If the file has no valid index (because it was not properly closed),
+ * the chunks are located by scanning the file, and any incomplete chunk at
+ * the end is ignored.
+ */
+public class BinaryNumericListReader {
+
+   private RandomAccessFile myRaf;
+   private FileChannel myChannel;
+   private int myVsize;
+   private int myValueBytes;
+   private double myStartTime;
+   private double myStopTime;
+   private double myScale;
+   private Order myOrder;
+
+   private long[] myChunkOffsets;
+   private int[] myChunkSizes;
+   // index of the first knot in each chunk, with an extra final entry
+   private int[] myChunkStarts;
+
+   private int myMappedChunk = -1;
+   private MappedByteBuffer myMappedBuf;
+
+   /**
+    * Returns <code>true</code> if the specified file starts with the header
+    * of a binary numeric list file.
+    *
+    * @param file file to check
+    * @return <code>true</code> if the file is a binary numeric list file
+    */
+   public static boolean isBinaryFile (File file) {
+      if (!file.isFile() || file.length() < HEADER_SIZE) {
+         return false;
+      }
+      RandomAccessFile raf = null;
+      try {
+         raf = new RandomAccessFile (file, "r");
+         ByteBuffer buf = ByteBuffer.allocate (4);
+         buf.order (ByteOrder.LITTLE_ENDIAN);
+         raf.getChannel().read (buf, 0);
+         buf.flip();
+         return buf.remaining() == 4 && buf.getInt() == HEADER_MAGIC;
+      }
+      catch (IOException e) {
+         return false;
+      }
+      finally {
+         if (raf != null) {
+            try {
+               raf.close();
+            }
+            catch (IOException e) {
+               // ignore
+            }
+         }
+      }
+   }
+
+   /**
+    * Opens a binary numeric list file for reading.
+    *
+    * @param file file to read
+    * @throws IOException if the file cannot be read or has an invalid format
+    */
+   public BinaryNumericListReader (File file) throws IOException {
+      myRaf = new RandomAccessFile (file, "r");
+      myChannel = myRaf.getChannel();
+      try {
+         readHeader();
+         if (!readIndex()) {
+            scanChunks();
+         }
+      }
+      catch (IOException e) {
+         close();
+         throw e;
+      }
+   }
+
+   private ByteBuffer readBuffer (long pos, int size) throws IOException {
+      ByteBuffer buf = ByteBuffer.allocate (size);
+      buf.order (ByteOrder.LITTLE_ENDIAN);
+      while (buf.hasRemaining()) {
+         int nr = myChannel.read (buf, pos);
+         if (nr < 0) {
+            return null;
+         }
+         pos += nr;
+      }
+      buf.flip();
+      return buf;
+   }
+
+   private void readHeader() throws IOException {
+      ByteBuffer buf = readBuffer (0, HEADER_SIZE);
+      if (buf == null || buf.getInt() != HEADER_MAGIC) {
+         throw new IOException ("not a binary numeric list file");
+      }
+      int version = buf.getInt();
+      if (version > VERSION) {
+         throw new IOException ("unsupported file version " + version);
+      }
+      myVsize = buf.getInt();
+      myValueBytes = buf.getInt();
+      if (myVsize < 0 || (myValueBytes != 4 && myValueBytes != 8)) {
+         throw new IOException ("corrupted file header");
+      }
+      buf.getInt(); // chunk size
+      buf.getInt(); // reserved
+      myStartTime = buf.getDouble();
+      myStopTime = buf.getDouble();
+      myScale = buf.getDouble();
+      byte[] name = new byte[ORDER_NAME_SIZE];
+      buf.get (name);
+      int len = 0;
+      while (len < name.length && name[len] != 0) {
+         len++;
+      }
+      myOrder = Order.fromString (new String (name, 0, len, "US-ASCII"));
+   }
+
+   private long chunkBytes (int numKnots) {
+      return CHUNK_HEADER_SIZE + (8L + myValueBytes*(long)myVsize)*numKnots;
+   }
+
+   private void setChunks (ArrayList<long[]> chunks) {
+      int num = chunks.size();
+      myChunkOffsets = new long[num];
+      myChunkSizes = new int[num];
+      myChunkStarts = new int[num+1];
+      for (int i=0; i<num; i++) {
+         myChunkOffsets[i] = chunks.get(i)[0];
+         myChunkSizes[i] = (int)chunks.get(i)[1];
+         myChunkStarts[i+1] = myChunkStarts[i] + myChunkSizes[i];
+      }
+   }
+
+   /**
+    * Locates the chunks using the index at the end of the file. Returns
+    * <code>false</code> if there is no valid index.
+    */
+   private boolean readIndex() throws IOException {
+      long fileSize = myChannel.size();
+      if (fileSize < HEADER_SIZE + TRAILER_SIZE) {
+         return false;
+      }
+      ByteBuffer buf = readBuffer (fileSize-TRAILER_SIZE, TRAILER_SIZE);
+      long indexOffset = buf.getLong();
+      int numChunks = buf.getInt();
+      if (buf.getInt() != TRAILER_MAGIC ||
+          indexOffset < HEADER_SIZE || numChunks < 0 ||
+          indexOffset+8+INDEX_ENTRY_SIZE*(long)numChunks+TRAILER_SIZE
+          != fileSize) {
+         return false;
+      }
+      buf = readBuffer (indexOffset, 8+INDEX_ENTRY_SIZE*numChunks);
+      if (buf.getInt() != INDEX_MAGIC || buf.getInt() != numChunks) {
+         return false;
+      }
+      ArrayList<long[]> chunks = new ArrayList<long[]>();
+      for (int i=0; i<numChunks; i++) {
+         long offset = buf.getLong();
+         int numKnots = buf.getInt();
+         buf.getInt(); // reserved
+         buf.getDouble(); // t0
+         buf.getDouble(); // t1
+         if (numKnots < 0 || offset+chunkBytes(numKnots) > indexOffset) {
+            return false;
+         }
+         chunks.add (new long[] { offset, numKnots });
+      }
+      setChunks (chunks);
+      return true;
+   }
+
+   /**
+    * Locates the chunks by reading each chunk header in sequence.
+    */
+   private void scanChunks() throws IOException {
+      long fileSize = myChannel.size();
+      ArrayList<long[]> chunks = new ArrayList<long[]>();
+      long pos = HEADER_SIZE;
+      while (pos + CHUNK_HEADER_SIZE <= fileSize) {
+         ByteBuffer buf = readBuffer (pos, CHUNK_HEADER_SIZE);
+         if (buf.getInt() != CHUNK_MAGIC) {
+            break;
+         }
+         int numKnots = buf.getInt();
+         if (numKnots < 0 || pos + chunkBytes(numKnots) > fileSize) {
+            break;
+         }
+         chunks.add (new long[] { pos, numKnots });
+         pos += chunkBytes (numKnots);
+      }
+      setChunks (chunks);
+   }
+
+   /**
+    * Returns the vector size of the knots.
+    *
+    * @return knot vector size
+    */
+   public int getVectorSize() {
+      return myVsize;
+   }
+
+   /**
+    * Returns the total number of knots in the file.
+    *
+    * @return number of knots
+    */
+   public int getNumKnots() {
+      return myChunkStarts[myChunkStarts.length-1];
+   }
+
+   /**
+    * Returns the start time stored in the file header.
+    *
+    * @return start time
+    */
+   public double getStartTime() {
+      return myStartTime;
+   }
+
+   /**
+    * Returns the stop time stored in the file header.
+    *
+    * @return stop time
+    */
+   public double getStopTime() {
+      return myStopTime;
+   }
+
+   /**
+    * Returns the scale value stored in the file header.
+    *
+    * @return scale value
+    */
+   public double getScale() {
+      return myScale;
+   }
+
+   /**
+    * Returns the interpolation order stored in the file header, or
+    * <code>null</code> if the order is not recognized.
+    *
+    * @return interpolation order
+    */
+   public Order getInterpolationOrder() {
+      return myOrder;
+   }
+
+   private int findChunk (int k) {
+      if (k < 0 || k >= getNumKnots()) {
+         throw new IndexOutOfBoundsException (
+            "knot index "+k+" not in range [0,"+(getNumKnots()-1)+"]");
+      }
+      if (myMappedChunk != -1 &&
+          k >= myChunkStarts[myMappedChunk] &&
+          k < myChunkStarts[myMappedChunk+1]) {
+         return myMappedChunk;
+      }
+      int lo = 0;
+      int hi = myChunkSizes.length-1;
+      while (lo < hi) {
+         int mid = (lo+hi+1)/2;
+         if (myChunkStarts[mid] <= k) {
+            lo = mid;
+         }
+         else {
+            hi = mid-1;
+         }
+      }
+      return lo;
+   }
+
+   private MappedByteBuffer mapChunk (int cidx) throws IOException {
+      if (cidx != myMappedChunk) {
+         myMappedBuf = myChannel.map (
+            FileChannel.MapMode.READ_ONLY,
+            myChunkOffsets[cidx], chunkBytes (myChunkSizes[cidx]));
+         myMappedBuf.order (ByteOrder.LITTLE_ENDIAN);
+         myMappedChunk = cidx;
+      }
+      return myMappedBuf;
+   }
+
+   /**
+    * Returns the time of the <code>k</code>-th knot.
+    *
+    * @param k knot index
+    * @return knot time
+    * @throws IOException if an I/O error occurs
+    */
+   public double getTime (int k) throws IOException {
+      int cidx = findChunk (k);
+      MappedByteBuffer buf = mapChunk (cidx);
+      return buf.getDouble (CHUNK_HEADER_SIZE + 8*(k-myChunkStarts[cidx]));
+   }
+
+   /**
+    * Returns the values of the <code>k</code>-th knot.
+    *
+    * @param k knot index
+    * @param vals returns the values. Must have a length {@code >=} the
+    * vector size.
+    * @throws IOException if an I/O error occurs
+    */
+   public void getValues (int k, double[] vals) throws IOException {
+      int cidx = findChunk (k);
+      MappedByteBuffer buf = mapChunk (cidx);
+      int n = myChunkSizes[cidx];
+      int kc = k-myChunkStarts[cidx];
+      int base = CHUNK_HEADER_SIZE + 8*n;
+      for (int j=0; j<myVsize; j++) {
+         int idx = j*n + kc;
+         if (myValueBytes == 4) {
+            vals[j] = buf.getFloat (base + 4*idx);
+         }
+         else {
+            vals[j] = buf.getDouble (base + 8*idx);
+         }
+      }
+   }
+
+   /**
+    * Reads all the knots in the file and adds them to a numeric list. The
+    * vector size of the list must equal that of the file.
+    *
+    * @param list list to add the knots to
+    * @throws IOException if an I/O error occurs
+    */
+   public void read (NumericList list) throws IOException {
+      if (list.getVectorSize() != myVsize) {
+         throw new IllegalArgumentException (
+            "list has vector size "+list.getVectorSize()+
+            ", expecting "+myVsize);
+      }
+      NumericListKnot last = null;
+      for (int cidx=0; cidx<myChunkSizes.length; cidx++) {
+         MappedByteBuffer buf = mapChunk (cidx);
+         int n = myChunkSizes[cidx];
+         int base = CHUNK_HEADER_SIZE + 8*n;
+         for (int kc=0; kc<n; kc++) {
+            NumericListKnot knot = new NumericListKnot (myVsize);
+            knot.t = buf.getDouble (CHUNK_HEADER_SIZE + 8*kc);
+            double[] vals = knot.v.getBuffer();
+            for (int j=0; j<myVsize; j++) {
+               int idx = j*n + kc;
+               if (myValueBytes == 4) {
+                  vals[j] = buf.getFloat (base + 4*idx);
+               }
+               else {
+                  vals[j] = buf.getDouble (base + 8*idx);
+               }
+            }
+            list.add (knot, last);
+            last = knot;
+         }
+      }
+   }
+
+   /**
+    * Closes the file.
+    *
+    * @throws IOException if an I/O error occurs
+    */
+   public void close() throws IOException {
+      if (myRaf != null) {
+         myMappedBuf = null;
+         myMappedChunk = -1;
+         myChannel = null;
+         myRaf.close();
+         myRaf = null;
+      }
+   }
+}
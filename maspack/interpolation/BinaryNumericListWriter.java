@@ -0,0 +1,506 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.interpolation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+import maspack.interpolation.Interpolation.Order;
+
+/**
+ * Writes the knots of a numeric list incrementally to a binary file, so
+ * that long sequences of data can be stored without keeping them in
+ * memory. The file can be read using {@link BinaryNumericListReader}.
+ *
+ * <p>Knots are collected in memory and written out in chunks. Each chunk
+ * contains the times of its knots, followed by the values arranged by
+ * column (i.e., all values for the first vector entry, followed by all
+ * values for the second, etc.). Values are stored as either doubles or
+ * floats. Whenever {@link #flush} or {@link #close} is called, any
+ * partially filled chunk is written, followed by an index block giving the
+ * location and time range of every chunk, and a trailer locating the
+ * index. If the file is not closed properly, a reader can still recover all
+ * completed chunks by scanning them in sequence.
+ *
+ * <p>All values are stored in little-endian byte order. The file layout is
+ * as follows:
+ * <pre>
+ * header (64 bytes):
+ *    int    HEADER_MAGIC
+ *    int    VERSION
+ *    int    vector size
+ *    int    bytes per value (4 or 8)
+ *    int    maximum number of knots per chunk
+ *    int    (reserved)
+ *    double start time
+ *    double stop time
+ *    double scale
+ *    byte[16] interpolation order name (ASCII, zero padded)
+ *
+ * chunk (repeated):
+ *    int    CHUNK_MAGIC
+ *    int    number of knots n
+ *    double time of first knot
+ *    double time of last knot
+ *    double[n] knot times
+ *    n values for each vector entry, as doubles or floats
+ *
+ * index:
+ *    int    INDEX_MAGIC
+ *    int    number of chunks m
+ *    m entries of (long offset, int n, int reserved, double t0, double t1)
+ *
+ * trailer:
+ *    long   index offset
+ *    int    number of chunks m
+ *    int    TRAILER_MAGIC
+ * </pre>
+ */
+public class BinaryNumericListWriter {
+
+   public static final int HEADER_MAGIC = 0x464c4e42; // "BNLF"
+   public static final int CHUNK_MAGIC = 0x4b4e4843; // "CHNK"
+   public static final int INDEX_MAGIC = 0x58444e49; // "INDX"
+   public static final int TRAILER_MAGIC = 0x444e4542; // "BEND"
+   public static final int VERSION = 1;
+
+   static final int HEADER_SIZE = 64;
+   static final int CHUNK_HEADER_SIZE = 24;
+   static final int INDEX_ENTRY_SIZE = 32;
+   static final int TRAILER_SIZE = 16;
+   static final int ORDER_NAME_SIZE = 16;
+
+   /**
+    * Default maximum number of knots per chunk.
+    */
+   public static int DEFAULT_CHUNK_SIZE = 1024;
+
+   /**
+    * Maximum number of bytes used for the values of a single chunk, which
+    * limits the chunk size for large vector sizes.
+    */
+   public static int MAX_CHUNK_BYTES = (4 << 20);
+
+   private static class ChunkInfo {
+      long offset;
+      int numKnots;
+      double t0;
+      double t1;
+
+      ChunkInfo (long offset, int numKnots, double t0, double t1) {
+         this.offset = offset;
+         this.numKnots = numKnots;
+         this.t0 = t0;
+         this.t1 = t1;
+      }
+   }
+
+   private File myFile;
+   private RandomAccessFile myRaf;
+   private FileChannel myChannel;
+   private int myVsize;
+   private int myValueBytes;
+   private int myChunkSize;
+
+   // knots that have not yet been committed to a full chunk
+   private double[] myTimes;
+   private double[] myVals;
+   private int myNumPending;
+
+   private ArrayList<ChunkInfo> myChunks = new ArrayList<ChunkInfo>();
+   private long myDataEnd;
+   private boolean myIndexWritten = false;
+   private ByteBuffer myBuf;
+
+   private double myStartTime = 0;
+   private double myStopTime = 0;
+   private double myScale = 1;
+   private Order myOrder = Order.Linear;
+
+   /**
+    * Creates a writer for a specified file, storing values as doubles. Any
+    * existing contents of the file are discarded.
+    *
+    * @param file file to write to
+    * @param vsize vector size of the knots
+    * @throws IOException if the file cannot be opened
+    */
+   public BinaryNumericListWriter (File file, int vsize) throws IOException {
+      this (file, vsize, /*useFloats=*/false, /*chunkSize=*/-1);
+   }
+
+   /**
+    * Creates a writer for a specified file. Any existing contents of the file
+    * are discarded.
+    *
+    * @param file file to write to
+    * @param vsize vector size of the knots
+    * @param useFloats if <code>true</code>, values (but not times) are
+    * stored as floats instead of doubles
+    * @param chunkSize maximum number of knots per chunk. If {@code <= 0}, a
+    * default value is chosen based on the vector size.
+    * @throws IOException if the file cannot be opened
+    */
+   public BinaryNumericListWriter (
+      File file, int vsize, boolean useFloats, int chunkSize)
+      throws IOException {
+      if (vsize < 0) {
+         throw new IllegalArgumentException ("negative vector size");
+      }
+      myFile = file;
+      myVsize = vsize;
+      myValueBytes = useFloats ? 4 : 8;
+      if (chunkSize <= 0) {
+         chunkSize = DEFAULT_CHUNK_SIZE;
+         if (vsize > 0) {
+            chunkSize = Math.min (
+               chunkSize, Math.max (1, MAX_CHUNK_BYTES/(vsize*myValueBytes)));
+         }
+      }
+      myChunkSize = chunkSize;
+      myTimes = new double[chunkSize];
+      myVals = new double[chunkSize*vsize];
+      myBuf = ByteBuffer.allocateDirect (chunkBytes (chunkSize));
+      myBuf.order (ByteOrder.LITTLE_ENDIAN);
+
+      myRaf = new RandomAccessFile (file, "rw");
+      myChannel = myRaf.getChannel();
+      myChannel.truncate (0);
+      writeHeader();
+      myDataEnd = HEADER_SIZE;
+   }
+
+   /**
+    * Returns the file associated with this writer.
+    *
+    * @return file being written
+    */
+   public File getFile() {
+      return myFile;
+   }
+
+   /**
+    * Returns the vector size of the knots.
+    *
+    * @return knot vector size
+    */
+   public int getVectorSize() {
+      return myVsize;
+   }
+
+   /**
+    * Returns the maximum number of knots per chunk.
+    *
+    * @return chunk size
+    */
+   public int getChunkSize() {
+      return myChunkSize;
+   }
+
+   /**
+    * Returns the total number of knots written so far, including those not
+    * yet flushed to the file.
+    *
+    * @return number of knots
+    */
+   public int getNumKnots() {
+      int num = myNumPending;
+      for (ChunkInfo chunk : myChunks) {
+         num += chunk.numKnots;
+      }
+      return num;
+   }
+
+   /**
+    * Sets the start time, stop time, and scale values that are stored in
+    * the header. The header is updated on the next call to {@link #flush}
+    * or {@link #close}.
+    *
+    * @param startTime start time
+    * @param stopTime stop time
+    * @param scale scale value
+    */
+   public void setHeaderTimes (double startTime, double stopTime, double scale) {
+      myStartTime = startTime;
+      myStopTime = stopTime;
+      myScale = scale;
+   }
+
+   /**
+    * Sets the interpolation order that is stored in the header. The header
+    * is updated on the next call to {@link #flush} or {@link #close}.
+    *
+    * @param order interpolation order
+    */
+   public void setInterpolationOrder (Order order) {
+      myOrder = order;
+   }
+
+   private int chunkBytes (int numKnots) {
+      return CHUNK_HEADER_SIZE + 8*numKnots + myValueBytes*numKnots*myVsize;
+   }
+
+   private void writeBuffer (ByteBuffer buf, long pos) throws IOException {
+      buf.flip();
+      while (buf.hasRemaining()) {
+         pos += myChannel.write (buf, pos);
+      }
+   }
+
+   private void writeHeader() throws IOException {
+      ByteBuffer buf = ByteBuffer.allocate (HEADER_SIZE);
+      buf.order (ByteOrder.LITTLE_ENDIAN);
+      buf.putInt (HEADER_MAGIC);
+      buf.putInt (VERSION);
+      buf.putInt (myVsize);
+      buf.putInt (myValueBytes);
+      buf.putInt (myChunkSize);
+      buf.putInt (0);
+      buf.putDouble (myStartTime);
+      buf.putDouble (myStopTime);
+      buf.putDouble (myScale);
+      byte[] name = myOrder.toString().getBytes ("US-ASCII");
+      for (int i=0; i<ORDER_NAME_SIZE; i++) {
+         buf.put (i < name.length ? name[i] : 0);
+      }
+      writeBuffer (buf, 0);
+   }
+
+   /**
+    * Writes the pending knots as a chunk at the current end of the data.
+    */
+   private int writePendingChunk() throws IOException {
+      int n = myNumPending;
+      myBuf.clear();
+      myBuf.putInt (CHUNK_MAGIC);
+      myBuf.putInt (n);
+      myBuf.putDouble (myTimes[0]);
+      myBuf.putDouble (myTimes[n-1]);
+      for (int k=0; k<n; k++) {
+         myBuf.putDouble (myTimes[k]);
+      }
+      for (int j=0; j<myVsize; j++) {
+         if (myValueBytes == 4) {
+            for (int k=0; k<n; k++) {
+               myBuf.putFloat ((float)myVals[k*myVsize+j]);
+            }
+         }
+         else {
+            for (int k=0; k<n; k++) {
+               myBuf.putDouble (myVals[k*myVsize+j]);
+            }
+         }
+      }
+      writeBuffer (myBuf, myDataEnd);
+      return chunkBytes (n);
+   }
+
+   private void removeIndex() throws IOException {
+      if (myIndexWritten) {
+         // truncate so that a stale index can never be found by a reader
+         myChannel.truncate (myDataEnd);
+         myIndexWritten = false;
+      }
+   }
+
+   /**
+    * Adds a knot to the end of the data. If the knot time is less than or
+    * equal to that of the last knot, all knots with times greater than or
+    * equal to the new time are first removed, as with {@link #truncate}.
+    *
+    * @param t knot time
+    * @param vals knot values (must have a length {@code >=} the vector size)
+    * @throws IOException if an I/O error occurs
+    */
+   public void add (double t, double[] vals) throws IOException {
+      if (myChannel == null) {
+         throw new IOException ("writer has been closed");
+      }
+      if (vals.length < myVsize) {
+         throw new IllegalArgumentException (
+            "vals has length "+vals.length+", expecting "+myVsize);
+      }
+      if (hasKnotsAtOrAfter (t)) {
+         truncate (t);
+      }
+      removeIndex();
+      myTimes[myNumPending] = t;
+      System.arraycopy (vals, 0, myVals, myNumPending*myVsize, myVsize);
+      myNumPending++;
+      if (myNumPending == myChunkSize) {
+         int nbytes = writePendingChunk();
+         myChunks.add (
+            new ChunkInfo (myDataEnd, myNumPending, myTimes[0],
+                           myTimes[myNumPending-1]));
+         myDataEnd += nbytes;
+         myNumPending = 0;
+      }
+   }
+
+   /**
+    * Adds a knot to the end of the data. See {@link #add(double,double[])}.
+    *
+    * @param knot knot to add
+    * @throws IOException if an I/O error occurs
+    */
+   public void add (NumericListKnot knot) throws IOException {
+      add (knot.t, knot.v.getBuffer());
+   }
+
+   private boolean hasKnotsAtOrAfter (double t) {
+      if (myNumPending > 0) {
+         return myTimes[myNumPending-1] >= t;
+      }
+      else if (myChunks.size() > 0) {
+         return myChunks.get(myChunks.size()-1).t1 >= t;
+      }
+      else {
+         return false;
+      }
+   }
+
+   /**
+    * Reads back the knots of a committed chunk into the pending buffer.
+    */
+   private void readChunkIntoPending (ChunkInfo chunk) throws IOException {
+      int n = chunk.numKnots;
+      myBuf.clear();
+      myBuf.limit (chunkBytes (n));
+      long pos = chunk.offset;
+      while (myBuf.hasRemaining()) {
+         int nr = myChannel.read (myBuf, pos);
+         if (nr < 0) {
+            throw new IOException ("unexpected end of file");
+         }
+         pos += nr;
+      }
+      myBuf.flip();
+      myBuf.position (CHUNK_HEADER_SIZE);
+      for (int k=0; k<n; k++) {
+         myTimes[k] = myBuf.getDouble();
+      }
+      for (int j=0; j<myVsize; j++) {
+         for (int k=0; k<n; k++) {
+            myVals[k*myVsize+j] =
+               (myValueBytes == 4 ? myBuf.getFloat() : myBuf.getDouble());
+         }
+      }
+      myNumPending = n;
+   }
+
+   /**
+    * Removes all knots whose times are greater than or equal to
+    * <code>t</code>.
+    *
+    * @param t time at or after which knots should be removed
+    * @throws IOException if an I/O error occurs
+    */
+   public void truncate (double t) throws IOException {
+      removeIndex();
+      // find the number of pending knots with times less than t
+      int k = myNumPending;
+      while (k > 0 && myTimes[k-1] >= t) {
+         k--;
+      }
+      myNumPending = k;
+      if (myNumPending == 0) {
+         // remove committed chunks whose last time is >= t, and move
+         // the knots of the earliest such chunk back into the pending buffer
+         ChunkInfo reload = null;
+         while (myChunks.size() > 0 &&
+                myChunks.get(myChunks.size()-1).t1 >= t) {
+            reload = myChunks.remove (myChunks.size()-1);
+         }
+         if (reload != null) {
+            readChunkIntoPending (reload);
+            myDataEnd = reload.offset;
+            myChannel.truncate (myDataEnd);
+            k = myNumPending;
+            while (k > 0 && myTimes[k-1] >= t) {
+               k--;
+            }
+            myNumPending = k;
+         }
+      }
+   }
+
+   /**
+    * Writes any pending knots, together with an index and trailer, so that
+    * the file is complete and can be read. Further knots may be added
+    * afterwards.
+    *
+    * @throws IOException if an I/O error occurs
+    */
+   public void flush() throws IOException {
+      if (myChannel == null) {
+         return;
+      }
+      removeIndex();
+      writeHeader();
+      long pos = myDataEnd;
+      ArrayList<ChunkInfo> chunks = new ArrayList<ChunkInfo>(myChunks);
+      if (myNumPending > 0) {
+         // pending knots are written as a chunk, but remain pending, so that
+         // they will be overwritten when more knots are added
+         chunks.add (
+            new ChunkInfo (myDataEnd, myNumPending, myTimes[0],
+                           myTimes[myNumPending-1]));
+         pos += writePendingChunk();
+      }
+      long indexOffset = pos;
+      ByteBuffer buf = ByteBuffer.allocate (
+         8 + INDEX_ENTRY_SIZE*chunks.size() + TRAILER_SIZE);
+      buf.order (ByteOrder.LITTLE_ENDIAN);
+      buf.putInt (INDEX_MAGIC);
+      buf.putInt (chunks.size());
+      for (ChunkInfo chunk : chunks) {
+         buf.putLong (chunk.offset);
+         buf.putInt (chunk.numKnots);
+         buf.putInt (0);
+         buf.putDouble (chunk.t0);
+         buf.putDouble (chunk.t1);
+      }
+      buf.putLong (indexOffset);
+      buf.putInt (chunks.size());
+      buf.putInt (TRAILER_MAGIC);
+      writeBuffer (buf, indexOffset);
+      myChannel.truncate (indexOffset + buf.limit());
+      myIndexWritten = true;
+   }
+
+   /**
+    * Flushes all data to the file and closes it.
+    *
+    * @throws IOException if an I/O error occurs
+    */
+   public void close() throws IOException {
+      if (myChannel != null) {
+         try {
+            flush();
+         }
+         finally {
+            myChannel = null;
+            myRaf.close();
+            myRaf = null;
+         }
+      }
+   }
+
+   /**
+    * Returns <code>true</code> if this writer has been closed.
+    *
+    * @return <code>true</code> if closed
+    */
+   public boolean isClosed() {
+      return myChannel == null;
+   }
+}
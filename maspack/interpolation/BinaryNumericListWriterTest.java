@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.interpolation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import maspack.interpolation.Interpolation.Order;
+import maspack.util.*;
+
+public class BinaryNumericListWriterTest extends UnitTest {
+
+   int myVsize = 3;
+   // reference copy of the knots that should be in the file
+   ArrayList<double[]> myKnots = new ArrayList<double[]>();
+
+   double[] createValues (double t) {
+      double[] vals = new double[myVsize];
+      for (int j=0; j<myVsize; j++) {
+         vals[j] = Math.sin (t*(j+1)) + j;
+      }
+      return vals;
+   }
+
+   void addKnot (BinaryNumericListWriter writer, double t) throws IOException {
+      double[] vals = createValues (t);
+      writer.add (t, vals);
+      while (myKnots.size() > 0 &&
+             myKnots.get(myKnots.size()-1)[0] >= t) {
+         myKnots.remove (myKnots.size()-1);
+      }
+      double[] knot = new double[myVsize+1];
+      knot[0] = t;
+      System.arraycopy (vals, 0, knot, 1, myVsize);
+      myKnots.add (knot);
+   }
+
+   void checkFile (File file, double tol) throws IOException {
+      check ("not a binary file", BinaryNumericListReader.isBinaryFile (file));
+      BinaryNumericListReader reader = new BinaryNumericListReader (file);
+      checkEquals ("vector size", reader.getVectorSize(), myVsize);
+      checkEquals ("num knots", reader.getNumKnots(), myKnots.size());
+      double[] vals = new double[myVsize];
+      for (int k=0; k<myKnots.size(); k++) {
+         double[] knot = myKnots.get(k);
+         checkEquals ("time "+k, reader.getTime(k), knot[0]);
+         reader.getValues (k, vals);
+         for (int j=0; j<myVsize; j++) {
+            if (Math.abs (vals[j]-knot[j+1]) > tol) {
+               throw new TestException (
+                  "knot "+k+": value "+j+" is "+vals[j]+
+                  ", expected "+knot[j+1]);
+            }
+         }
+      }
+      NumericList list = new NumericList (myVsize);
+      reader.read (list);
+      checkEquals ("list knots", list.getNumKnots(), myKnots.size());
+      int k = 0;
+      for (NumericListKnot knot : list) {
+         checkEquals ("list time "+k, knot.t, myKnots.get(k)[0]);
+         k++;
+      }
+      reader.close();
+   }
+
+   void testWriteAndRead (boolean useFloats) throws IOException {
+      File file = File.createTempFile ("bnlTest", ".bin");
+      file.deleteOnExit();
+      myKnots.clear();
+      double tol = useFloats ? 1e-6 : 0;
+
+      BinaryNumericListWriter writer =
+         new BinaryNumericListWriter (file, myVsize, useFloats, 10);
+      writer.setHeaderTimes (1.0, 5.0, 2.0);
+      writer.setInterpolationOrder (Order.Cubic);
+      for (int i=0; i<35; i++) {
+         addKnot (writer, 0.1*i);
+      }
+      writer.flush();
+      checkFile (file, tol);
+
+      // continue adding after a flush
+      for (int i=35; i<52; i++) {
+         addKnot (writer, 0.1*i);
+      }
+      checkEquals ("writer knots", writer.getNumKnots(), myKnots.size());
+      writer.flush();
+      checkFile (file, tol);
+
+      // rewind into both the pending and committed knots
+      addKnot (writer, 4.75);
+      addKnot (writer, 4.85);
+      addKnot (writer, 1.05);
+      checkEquals ("writer knots", writer.getNumKnots(), myKnots.size());
+      for (int i=0; i<25; i++) {
+         addKnot (writer, 1.1+0.05*i);
+      }
+      writer.close();
+      checkFile (file, tol);
+
+      BinaryNumericListReader reader = new BinaryNumericListReader (file);
+      checkEquals ("start time", reader.getStartTime(), 1.0);
+      checkEquals ("stop time", reader.getStopTime(), 5.0);
+      checkEquals ("scale", reader.getScale(), 2.0);
+      checkEquals ("order", reader.getInterpolationOrder(), Order.Cubic);
+      reader.close();
+      file.delete();
+   }
+
+   void testRecovery() throws IOException {
+      File file = File.createTempFile ("bnlTest", ".bin");
+      file.deleteOnExit();
+      myKnots.clear();
+
+      BinaryNumericListWriter writer =
+         new BinaryNumericListWriter (file, myVsize, false, 8);
+      for (int i=0; i<29; i++) {
+         addKnot (writer, 0.01*i);
+      }
+      writer.close();
+      // remove the index and trailer (for 4 chunks), together with the end
+      // of the last chunk, so that only the first three chunks can be
+      // recovered
+      RandomAccessFile raf = new RandomAccessFile (file, "rw");
+      raf.setLength (raf.length()-(8+4*32+16)-20);
+      raf.close();
+      while (myKnots.size() > 24) {
+         myKnots.remove (myKnots.size()-1);
+      }
+      checkFile (file, 0);
+      file.delete();
+   }
+
+   public void test() throws IOException {
+      testWriteAndRead (false);
+      testWriteAndRead (true);
+      testRecovery();
+   }
+
+   public static void main (String[] args) {
+      BinaryNumericListWriterTest tester = new BinaryNumericListWriterTest();
+      RandomGenerator.setSeed (0x1234);
+      tester.runtest();
+   }
+}
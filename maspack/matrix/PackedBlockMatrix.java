@@ -0,0 +1,1110 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.matrix;
+
+import java.util.Random;
+
+import maspack.util.TestException;
+
+/**
+ * Packed representation of a {@link SparseBlockMatrix} whose block structure
+ * has been frozen. The block values are stored contiguously, in row-major
+ * order within each block, in a single <code>double</code> array, and the
+ * structure is described by block row pointers and block column indices, in
+ * the manner of a block compressed row storage (BCSR) matrix.
+ *
+ * <p>This avoids the pointer chasing and per-block virtual calls that are
+ * required to traverse the linked blocks of a SparseBlockMatrix, which makes
+ * matrix-vector products faster for large matrices. Products involving 3 x
+ * 3 and 6 x 6 blocks, which are the ones most commonly used for point and
+ * rigid body degrees of freedom, are handled with specialized loops.
+ *
+ * <p>A PackedBlockMatrix is created from a source SparseBlockMatrix. When the
+ * values of the source blocks change, they can be reloaded using {@link
+ * #updateValues} or {@link #updateValuesIfStructureEquals}. If the block
+ * structure of the source changes, a new packed matrix must be created;
+ * {@link #blockStructureEquals} can be used to check for this. Since
+ * reloading the values costs about as much as one product with the source,
+ * the packed form pays off when a matrix is multiplied many times between
+ * value changes, as it is within an iterative solve (see {@link
+ * maspack.solvers.CGSolver#setPackMatrix CGSolver.setPackMatrix}). For
+ * a single CRS value extraction, reloading and extracting takes longer than
+ * extracting directly from the source. The packed values may also be modified directly, via {@link
+ * #getValueBuffer} and {@link #getBlockValueOffset}, which allows a matrix to
+ * be assembled without accessing block objects.
+ *
+ * <p>Each block is stored as a dense matrix, so that blocks with an internal
+ * sparsity structure (such as {@link Matrix3x3DiagBlock}) contribute all of
+ * their entries to the CRS structure of this matrix.
+ */
+public class PackedBlockMatrix extends SparseMatrixBase {
+
+   protected int myNumBlockRows;
+   protected int myNumBlockCols;
+   protected int[] myRowOffsets;  // starting row index for each block row
+   protected int[] myColOffsets;  // starting col index for each block col
+   protected int myNumRows;
+   protected int myNumCols;
+
+   protected int[] myBlkRowPtrs;  // first block in each block row
+   protected int[] myBlkCols;     // block column index of each block
+   protected int[] myValOffs;     // offset of each block's values in myVals
+   protected double[] myVals;     // packed block values
+
+   protected SparseBlockMatrix mySource;
+   protected MatrixBlock[] mySourceBlks;
+
+   // cached row offsets for CRS extraction
+   protected Partition myRowIndicesPartition = Partition.None;
+   protected int myRowIndicesNumBlkRows = -1;
+   protected int myRowIndicesNumBlkCols = -1;
+   protected int[] myRowIndices;
+
+   /**
+    * Creates a packed copy of a SparseBlockMatrix. The block structure of
+    * <code>S</code> is frozen into this matrix, and its values are copied.
+    *
+    * @param S matrix to be packed
+    */
+   public PackedBlockMatrix (SparseBlockMatrix S) {
+      mySource = S;
+      myNumBlockRows = S.numBlockRows();
+      myNumBlockCols = S.numBlockCols();
+      myRowOffsets = new int[myNumBlockRows+1];
+      myColOffsets = new int[myNumBlockCols+1];
+      for (int bi=0; bi<myNumBlockRows; bi++) {
+         myRowOffsets[bi+1] = myRowOffsets[bi] + S.getBlockRowSize(bi);
+      }
+      for (int bj=0; bj<myNumBlockCols; bj++) {
+         myColOffsets[bj+1] = myColOffsets[bj] + S.getBlockColSize(bj);
+      }
+      myNumRows = myRowOffsets[myNumBlockRows];
+      myNumCols = myColOffsets[myNumBlockCols];
+
+      int numBlks = 0;
+      int numVals = 0;
+      for (int bi=0; bi<myNumBlockRows; bi++) {
+         for (MatrixBlock blk=S.firstBlockInRow(bi); blk!=null;
+              blk=blk.next()) {
+            numBlks++;
+            numVals += blk.rowSize()*blk.colSize();
+         }
+      }
+      myBlkRowPtrs = new int[myNumBlockRows+1];
+      myBlkCols = new int[numBlks];
+      myValOffs = new int[numBlks+1];
+      mySourceBlks = new MatrixBlock[numBlks];
+      myVals = new double[numVals];
+      int k = 0;
+      for (int bi=0; bi<myNumBlockRows; bi++) {
+         myBlkRowPtrs[bi] = k;
+         for (MatrixBlock blk=S.firstBlockInRow(bi); blk!=null;
+              blk=blk.next()) {
+            myBlkCols[k] = blk.getBlockCol();
+            myValOffs[k+1] = myValOffs[k] + blk.rowSize()*blk.colSize();
+            mySourceBlks[k] = blk;
+            k++;
+         }
+      }
+      myBlkRowPtrs[myNumBlockRows] = k;
+      updateValues();
+   }
+
+   /**
+    * Returns the SparseBlockMatrix from which this matrix was created.
+    *
+    * @return source matrix
+    */
+   public SparseBlockMatrix getSource() {
+      return mySource;
+   }
+
+   /**
+    * Reloads the values of this matrix from the blocks of the source
+    * matrix. The block structure of the source must not have changed since
+    * this matrix was created.
+    */
+   public void updateValues() {
+      for (int k=0; k<mySourceBlks.length; k++) {
+         copyValues (mySourceBlks[k], myValOffs[k]);
+      }
+   }
+
+   /**
+    * Reloads the values of this matrix from the blocks of the source matrix,
+    * provided that the block structure of the source has not changed since
+    * this matrix was created. The structure is checked while the values are
+    * copied, so that the source blocks are traversed only once. This is
+    * intended for applications, such as iterative solvers, that repeatedly
+    * multiply by a matrix whose values change between uses but whose
+    * structure rarely does.
+    *
+    * @return <code>false</code> if the block structure of the source has
+    * changed, in which case the values of this matrix are undefined and
+    * a new packed matrix must be created.
+    */
+   public boolean updateValuesIfStructureEquals() {
+      SparseBlockMatrix S = mySource;
+      if (S.numBlockRows() != myNumBlockRows ||
+          S.numBlockCols() != myNumBlockCols ||
+          S.rowSize() != myNumRows || S.colSize() != myNumCols) {
+         return false;
+      }
+      for (int bj=0; bj<myNumBlockCols; bj++) {
+         if (S.getBlockColOffset(bj) != myColOffsets[bj]) {
+            return false;
+         }
+      }
+      for (int bi=0; bi<myNumBlockRows; bi++) {
+         if (S.getBlockRowOffset(bi) != myRowOffsets[bi]) {
+            return false;
+         }
+         int k = myBlkRowPtrs[bi];
+         int kend = myBlkRowPtrs[bi+1];
+         for (MatrixBlock blk=S.firstBlockInRow(bi); blk!=null;
+              blk=blk.next()) {
+            if (k == kend || mySourceBlks[k] != blk ||
+                myBlkCols[k] != blk.getBlockCol()) {
+               return false;
+            }
+            copyValues (blk, myValOffs[k]);
+            k++;
+         }
+         if (k != kend) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private void copyValues (MatrixBlock blk, int off) {
+      double[] vals = myVals;
+      if (blk instanceof Matrix3x3Block) {
+         Matrix3x3Block b = (Matrix3x3Block)blk;
+         vals[off  ] = b.m00; vals[off+1] = b.m01; vals[off+2] = b.m02;
+         vals[off+3] = b.m10; vals[off+4] = b.m11; vals[off+5] = b.m12;
+         vals[off+6] = b.m20; vals[off+7] = b.m21; vals[off+8] = b.m22;
+      }
+      else if (blk instanceof Matrix6dBlock) {
+         Matrix6dBlock b = (Matrix6dBlock)blk;
+         vals[off   ] = b.m00; vals[off+ 1] = b.m01; vals[off+ 2] = b.m02;
+         vals[off+ 3] = b.m03; vals[off+ 4] = b.m04; vals[off+ 5] = b.m05;
+         vals[off+ 6] = b.m10; vals[off+ 7] = b.m11; vals[off+ 8] = b.m12;
+         vals[off+ 9] = b.m13; vals[off+10] = b.m14; vals[off+11] = b.m15;
+         vals[off+12] = b.m20; vals[off+13] = b.m21; vals[off+14] = b.m22;
+         vals[off+15] = b.m23; vals[off+16] = b.m24; vals[off+17] = b.m25;
+         vals[off+18] = b.m30; vals[off+19] = b.m31; vals[off+20] = b.m32;
+         vals[off+21] = b.m33; vals[off+22] = b.m34; vals[off+23] = b.m35;
+         vals[off+24] = b.m40; vals[off+25] = b.m41; vals[off+26] = b.m42;
+         vals[off+27] = b.m43; vals[off+28] = b.m44; vals[off+29] = b.m45;
+         vals[off+30] = b.m50; vals[off+31] = b.m51; vals[off+32] = b.m52;
+         vals[off+33] = b.m53; vals[off+34] = b.m54; vals[off+35] = b.m55;
+      }
+      else {
+         int nr = blk.rowSize();
+         int nc = blk.colSize();
+         for (int i=0; i<nr; i++) {
+            for (int j=0; j<nc; j++) {
+               vals[off++] = blk.get (i, j);
+            }
+         }
+      }
+   }
+
+   /**
+    * Returns <code>true</code> if the block structure of this matrix matches
+    * that of a SparseBlockMatrix. This can be used to determine if this
+    * matrix is still a valid representation of its source.
+    *
+    * @param S matrix to compare with
+    * @return <code>true</code> if the structures match
+    */
+   public boolean blockStructureEquals (SparseBlockMatrix S) {
+      if (S.numBlockRows() != myNumBlockRows ||
+          S.numBlockCols() != myNumBlockCols) {
+         return false;
+      }
+      for (int bi=0; bi<myNumBlockRows; bi++) {
+         if (S.getBlockRowOffset(bi) != myRowOffsets[bi] ||
+             S.getBlockRowSize(bi) != myRowOffsets[bi+1]-myRowOffsets[bi]) {
+            return false;
+         }
+      }
+      for (int bj=0; bj<myNumBlockCols; bj++) {
+         if (S.getBlockColOffset(bj) != myColOffsets[bj] ||
+             S.getBlockColSize(bj) != myColOffsets[bj+1]-myColOffsets[bj]) {
+            return false;
+         }
+      }
+      for (int bi=0; bi<myNumBlockRows; bi++) {
+         int k = myBlkRowPtrs[bi];
+         int kend = myBlkRowPtrs[bi+1];
+         for (MatrixBlock blk=S.firstBlockInRow(bi); blk!=null;
+              blk=blk.next()) {
+            if (k == kend || myBlkCols[k] != blk.getBlockCol()) {
+               return false;
+            }
+            k++;
+         }
+         if (k != kend) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Returns the array in which the block values are packed. The values
+    * for block <code>k</code> are stored in row-major order starting at
+    * {@link #getBlockValueOffset getBlockValueOffset(k)}.
+    *
+    * @return packed value array
+    */
+   public double[] getValueBuffer() {
+      return myVals;
+   }
+
+   /**
+    * Returns the offset within the value buffer of the values for a
+    * specific block.
+    *
+    * @param k block index, as returned by {@link #getBlockIndex}
+    * @return offset of the block's values
+    */
+   public int getBlockValueOffset (int k) {
+      return myValOffs[k];
+   }
+
+   /**
+    * Returns the index of the block located at a given block row and block
+    * column, or -1 if there is no such block.
+    *
+    * @param bi block row index
+    * @param bj block column index
+    * @return block index, or -1 if the block is not present
+    */
+   public int getBlockIndex (int bi, int bj) {
+      int lo = myBlkRowPtrs[bi];
+      int hi = myBlkRowPtrs[bi+1]-1;
+      while (lo <= hi) {
+         int mid = (lo+hi) >>> 1;
+         int c = myBlkCols[mid];
+         if (c < bj) {
+            lo = mid+1;
+         }
+         else if (c > bj) {
+            hi = mid-1;
+         }
+         else {
+            return mid;
+         }
+      }
+      return -1;
+   }
+
+   public int numBlocks() {
+      return myBlkCols.length;
+   }
+
+   public int numBlockRows() {
+      return myNumBlockRows;
+   }
+
+   public int numBlockCols() {
+      return myNumBlockCols;
+   }
+
+   public int getBlockRowOffset (int bi) {
+      return myRowOffsets[bi];
+   }
+
+   public int getBlockRowSize (int bi) {
+      return myRowOffsets[bi+1]-myRowOffsets[bi];
+   }
+
+   public int getBlockColOffset (int bj) {
+      return myColOffsets[bj];
+   }
+
+   public int getBlockColSize (int bj) {
+      return myColOffsets[bj+1]-myColOffsets[bj];
+   }
+
+   public int rowSize() {
+      return myNumRows;
+   }
+
+   public int colSize() {
+      return myNumCols;
+   }
+
+   /**
+    * Finds the block index containing a given element index, using a binary
+    * search of a block offset array. Returns -1 if the element index is out
+    * of range.
+    */
+   private static int findBlock (int[] offsets, int numBlks, int i) {
+      if (i < 0 || i >= offsets[numBlks]) {
+         return -1;
+      }
+      int lo = 0;
+      int hi = numBlks-1;
+      while (lo < hi) {
+         int mid = (lo+hi+1) >>> 1;
+         if (offsets[mid] <= i) {
+            lo = mid;
+         }
+         else {
+            hi = mid-1;
+         }
+      }
+      return lo;
+   }
+
+   /**
+    * Returns the block row index corresponding to an element row index.
+    *
+    * @param i element row index
+    * @return corresponding block row index, or -1 if the element index is out
+    * of range.
+    */
+   public int getBlockRow (int i) {
+      return findBlock (myRowOffsets, myNumBlockRows, i);
+   }
+
+   /**
+    * Returns the block column index corresponding to an element column
+    * index.
+    *
+    * @param j element column index
+    * @return corresponding block column index, or -1 if the element index is
+    * out of range.
+    */
+   public int getBlockCol (int j) {
+      return findBlock (myColOffsets, myNumBlockCols, j);
+   }
+
+   private int getAlignedBlockRow (int i) {
+      if (i == myNumRows) {
+         return myNumBlockRows;
+      }
+      int bi = getBlockRow (i);
+      return (bi != -1 && myRowOffsets[bi] == i) ? bi : -1;
+   }
+
+   private int getAlignedBlockCol (int j) {
+      if (j == myNumCols) {
+         return myNumBlockCols;
+      }
+      int bj = getBlockCol (j);
+      return (bj != -1 && myColOffsets[bj] == j) ? bj : -1;
+   }
+
+   private int getValueIndex (int i, int j) {
+      int bi = getBlockRow (i);
+      int bj = getBlockCol (j);
+      if (bi == -1 || bj == -1) {
+         throw new ArrayIndexOutOfBoundsException (
+            "element ("+i+","+j+") is out of range");
+      }
+      int k = getBlockIndex (bi, bj);
+      if (k == -1) {
+         return -1;
+      }
+      int nc = myColOffsets[bj+1]-myColOffsets[bj];
+      return myValOffs[k] + (i-myRowOffsets[bi])*nc + (j-myColOffsets[bj]);
+   }
+
+   public double get (int i, int j) {
+      int idx = getValueIndex (i, j);
+      return idx == -1 ? 0 : myVals[idx];
+   }
+
+   /**
+    * Sets an element of this matrix. Since the block structure is fixed,
+    * the element must lie within an existing block unless
+    * <code>val</code> is zero.
+    *
+    * @param i element row index
+    * @param j element column index
+    * @param val new element value
+    * @throws IllegalArgumentException if the element does not lie within a
+    * block and <code>val</code> is non-zero
+    */
+   public void set (int i, int j, double val) {
+      int idx = getValueIndex (i, j);
+      if (idx != -1) {
+         myVals[idx] = val;
+      }
+      else if (val != 0) {
+         throw new IllegalArgumentException (
+            "element ("+i+","+j+") is outside the fixed block structure");
+      }
+   }
+
+   public void set (double[] values, int[] indices, int nvals) {
+      if (values.length < nvals) {
+         throw new IllegalArgumentException (
+            "nvals exceeds length of values array");
+      }
+      if (indices.length < 2 * nvals) {
+         throw new IllegalArgumentException ("insufficient index values");
+      }
+      setZero();
+      for (int k = 0; k < nvals; k++) {
+         set (indices[2 * k], indices[2 * k + 1], values[k]);
+      }
+   }
+
+   public void setZero() {
+      for (int k=0; k<myVals.length; k++) {
+         myVals[k] = 0;
+      }
+   }
+
+   public void scale (double s) {
+      for (int k=0; k<myVals.length; k++) {
+         myVals[k] *= s;
+      }
+   }
+
+   public void setRandom (double lower, double upper, Random generator) {
+      double range = upper - lower;
+      for (int k=0; k<myVals.length; k++) {
+         myVals[k] = generator.nextDouble() * range + lower;
+      }
+   }
+
+   /** 
+    * {@inheritDoc}
+    */
+   public void checkConsistency () {
+      if (myRowOffsets[myNumBlockRows] != myNumRows) {
+         throw new TestException (
+            "Last row offset != number of rows "+myNumRows);
+      }
+      if (myColOffsets[myNumBlockCols] != myNumCols) {
+         throw new TestException (
+            "Last col offset != number of cols "+myNumCols);
+      }
+      for (int bi=0; bi<myNumBlockRows; bi++) {
+         int nr = myRowOffsets[bi+1]-myRowOffsets[bi];
+         for (int k=myBlkRowPtrs[bi]; k<myBlkRowPtrs[bi+1]; k++) {
+            int bj = myBlkCols[k];
+            if (bj < 0 || bj >= myNumBlockCols) {
+               throw new TestException (
+                  "Block column "+bj+" in block row "+bi+" out of range");
+            }
+            if (k > myBlkRowPtrs[bi] && myBlkCols[k-1] >= bj) {
+               throw new TestException (
+                  "Block columns in block row "+bi+" not increasing");
+            }
+            int nc = myColOffsets[bj+1]-myColOffsets[bj];
+            if (myValOffs[k+1]-myValOffs[k] != nr*nc) {
+               throw new TestException (
+                  "Block("+bi+","+bj+") has "+(myValOffs[k+1]-myValOffs[k])+
+                  " values vs "+(nr*nc));
+            }
+         }
+      }
+      if (myValOffs[myBlkCols.length] != myVals.length) {
+         throw new TestException (
+            "Value offsets inconsistent with value array length "+
+            myVals.length);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public int numNonZeroVals() {
+      return myVals.length;
+   }
+
+   private void checkBlockAligned (int numRows, int numCols) {
+      if (numRows > myNumRows || numCols > myNumCols) {
+         throw new IllegalArgumentException (
+            "specified sub-matrix is out of bounds");
+      }
+      if (getAlignedBlockRow (numRows) == -1 ||
+          getAlignedBlockCol (numCols) == -1) {
+         throw new IllegalArgumentException (
+            "specified sub-matrix is not block aligned");
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public int numNonZeroVals (Partition part, int numRows, int numCols) {
+      checkBlockAligned (numRows, numCols);
+      int numBlkRows = getAlignedBlockRow (numRows);
+      int numBlkCols = getAlignedBlockCol (numCols);
+      int num = 0;
+      for (int bi=0; bi<numBlkRows; bi++) {
+         int nr = myRowOffsets[bi+1]-myRowOffsets[bi];
+         for (int k=myBlkRowPtrs[bi]; k<myBlkRowPtrs[bi+1]; k++) {
+            int bj = myBlkCols[k];
+            if (bj >= numBlkCols) {
+               break;
+            }
+            int nc = myColOffsets[bj+1]-myColOffsets[bj];
+            if (part == Partition.UpperTriangular) {
+               if (bj == bi) {
+                  num += MatrixBlockBase.numNonZeros (nr, nc, part);
+               }
+               else if (bj > bi) {
+                  num += nr*nc;
+               }
+            }
+            else if (part == Partition.Full) {
+               num += nr*nc;
+            }
+            else {
+               throw new UnsupportedOperationException (
+                  "Matrix partition " + part + " not supported");
+            }
+         }
+      }
+      return num;
+   }
+
+   /**
+    * Multiplies the block rows <code>bi0</code> to <code>bi1-1</code>, and
+    * block columns <code>bj0</code> to <code>bj1-1</code>, of this matrix by
+    * <code>vec</code>, and adds the result to <code>res</code>. Element rows
+    * and columns are offset by <code>r0</code> and <code>c0</code>.
+    */
+   protected void mulAddBlockRows (
+      double[] res, double[] vec, int bi0, int bi1, int bj0, int bj1,
+      int r0, int c0) {
+
+      double[] vals = myVals;
+      for (int bi=bi0; bi<bi1; bi++) {
+         int r = myRowOffsets[bi]-r0;
+         int nr = myRowOffsets[bi+1]-myRowOffsets[bi];
+         int kend = myBlkRowPtrs[bi+1];
+         if (nr == 3) {
+            double s0 = 0, s1 = 0, s2 = 0;
+            for (int k=myBlkRowPtrs[bi]; k<kend; k++) {
+               int bj = myBlkCols[k];
+               if (bj < bj0) {
+                  continue;
+               }
+               else if (bj >= bj1) {
+                  break;
+               }
+               int c = myColOffsets[bj]-c0;
+               int nc = myColOffsets[bj+1]-myColOffsets[bj];
+               int off = myValOffs[k];
+               if (nc == 3) {
+                  double x0 = vec[c];
+                  double x1 = vec[c+1];
+                  double x2 = vec[c+2];
+                  s0 += vals[off  ]*x0 + vals[off+1]*x1 + vals[off+2]*x2;
+                  s1 += vals[off+3]*x0 + vals[off+4]*x1 + vals[off+5]*x2;
+                  s2 += vals[off+6]*x0 + vals[off+7]*x1 + vals[off+8]*x2;
+               }
+               else {
+                  for (int j=0; j<nc; j++) {
+                     double xj = vec[c+j];
+                     s0 += vals[off+j]*xj;
+                     s1 += vals[off+nc+j]*xj;
+                     s2 += vals[off+2*nc+j]*xj;
+                  }
+               }
+            }
+            res[r  ] += s0;
+            res[r+1] += s1;
+            res[r+2] += s2;
+         }
+         else if (nr == 6) {
+            double s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0, s5 = 0;
+            for (int k=myBlkRowPtrs[bi]; k<kend; k++) {
+               int bj = myBlkCols[k];
+               if (bj < bj0) {
+                  continue;
+               }
+               else if (bj >= bj1) {
+                  break;
+               }
+               int c = myColOffsets[bj]-c0;
+               int nc = myColOffsets[bj+1]-myColOffsets[bj];
+               int off = myValOffs[k];
+               if (nc == 6) {
+                  double x0 = vec[c];
+                  double x1 = vec[c+1];
+                  double x2 = vec[c+2];
+                  double x3 = vec[c+3];
+                  double x4 = vec[c+4];
+                  double x5 = vec[c+5];
+                  s0 += vals[off  ]*x0 + vals[off+1]*x1 + vals[off+2]*x2 +
+                     vals[off+3]*x3 + vals[off+4]*x4 + vals[off+5]*x5;
+                  s1 += vals[off+6]*x0 + vals[off+7]*x1 + vals[off+8]*x2 +
+                     vals[off+9]*x3 + vals[off+10]*x4 + vals[off+11]*x5;
+                  s2 += vals[off+12]*x0 + vals[off+13]*x1 + vals[off+14]*x2 +
+                     vals[off+15]*x3 + vals[off+16]*x4 + vals[off+17]*x5;
+                  s3 += vals[off+18]*x0 + vals[off+19]*x1 + vals[off+20]*x2 +
+                     vals[off+21]*x3 + vals[off+22]*x4 + vals[off+23]*x5;
+                  s4 += vals[off+24]*x0 + vals[off+25]*x1 + vals[off+26]*x2 +
+                     vals[off+27]*x3 + vals[off+28]*x4 + vals[off+29]*x5;
+                  s5 += vals[off+30]*x0 + vals[off+31]*x1 + vals[off+32]*x2 +
+                     vals[off+33]*x3 + vals[off+34]*x4 + vals[off+35]*x5;
+               }
+               else {
+                  for (int j=0; j<nc; j++) {
+                     double xj = vec[c+j];
+                     s0 += vals[off     +j]*xj;
+                     s1 += vals[off+  nc+j]*xj;
+                     s2 += vals[off+2*nc+j]*xj;
+                     s3 += vals[off+3*nc+j]*xj;
+                     s4 += vals[off+4*nc+j]*xj;
+                     s5 += vals[off+5*nc+j]*xj;
+                  }
+               }
+            }
+            res[r  ] += s0;
+            res[r+1] += s1;
+            res[r+2] += s2;
+            res[r+3] += s3;
+            res[r+4] += s4;
+            res[r+5] += s5;
+         }
+         else {
+            for (int k=myBlkRowPtrs[bi]; k<kend; k++) {
+               int bj = myBlkCols[k];
+               if (bj < bj0) {
+                  continue;
+               }
+               else if (bj >= bj1) {
+                  break;
+               }
+               int c = myColOffsets[bj]-c0;
+               int nc = myColOffsets[bj+1]-myColOffsets[bj];
+               int off = myValOffs[k];
+               for (int i=0; i<nr; i++) {
+                  double sum = 0;
+                  for (int j=0; j<nc; j++) {
+                     sum += vals[off++]*vec[c+j];
+                  }
+                  res[r+i] += sum;
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * Multiplies the transpose of block rows <code>bi0</code> to
+    * <code>bi1-1</code>, and block columns <code>bj0</code> to
+    * <code>bj1-1</code>, of this matrix by <code>vec</code>, and adds the
+    * result to <code>res</code>. Element rows and columns (of this matrix)
+    * are offset by <code>r0</code> and <code>c0</code>.
+    */
+   protected void mulTransposeAddBlockRows (
+      double[] res, double[] vec, int bi0, int bi1, int bj0, int bj1,
+      int r0, int c0) {
+
+      double[] vals = myVals;
+      for (int bi=bi0; bi<bi1; bi++) {
+         int r = myRowOffsets[bi]-r0;
+         int nr = myRowOffsets[bi+1]-myRowOffsets[bi];
+         int kend = myBlkRowPtrs[bi+1];
+         for (int k=myBlkRowPtrs[bi]; k<kend; k++) {
+            int bj = myBlkCols[k];
+            if (bj < bj0) {
+               continue;
+            }
+            else if (bj >= bj1) {
+               break;
+            }
+            int c = myColOffsets[bj]-c0;
+            int nc = myColOffsets[bj+1]-myColOffsets[bj];
+            int off = myValOffs[k];
+            if (nr == 3 && nc == 3) {
+               double x0 = vec[r];
+               double x1 = vec[r+1];
+               double x2 = vec[r+2];
+               res[c  ] += vals[off  ]*x0 + vals[off+3]*x1 + vals[off+6]*x2;
+               res[c+1] += vals[off+1]*x0 + vals[off+4]*x1 + vals[off+7]*x2;
+               res[c+2] += vals[off+2]*x0 + vals[off+5]*x1 + vals[off+8]*x2;
+            }
+            else if (nr == 6) {
+               double x0 = vec[r];
+               double x1 = vec[r+1];
+               double x2 = vec[r+2];
+               double x3 = vec[r+3];
+               double x4 = vec[r+4];
+               double x5 = vec[r+5];
+               if (nc == 6) {
+                  res[c  ] += vals[off  ]*x0 + vals[off+6]*x1 + vals[off+12]*x2 +
+                     vals[off+18]*x3 + vals[off+24]*x4 + vals[off+30]*x5;
+                  res[c+1] += vals[off+1]*x0 + vals[off+7]*x1 + vals[off+13]*x2 +
+                     vals[off+19]*x3 + vals[off+25]*x4 + vals[off+31]*x5;
+                  res[c+2] += vals[off+2]*x0 + vals[off+8]*x1 + vals[off+14]*x2 +
+                     vals[off+20]*x3 + vals[off+26]*x4 + vals[off+32]*x5;
+                  res[c+3] += vals[off+3]*x0 + vals[off+9]*x1 + vals[off+15]*x2 +
+                     vals[off+21]*x3 + vals[off+27]*x4 + vals[off+33]*x5;
+                  res[c+4] += vals[off+4]*x0 + vals[off+10]*x1 + vals[off+16]*x2 +
+                     vals[off+22]*x3 + vals[off+28]*x4 + vals[off+34]*x5;
+                  res[c+5] += vals[off+5]*x0 + vals[off+11]*x1 + vals[off+17]*x2 +
+                     vals[off+23]*x3 + vals[off+29]*x4 + vals[off+35]*x5;
+               }
+               else {
+                  for (int j=0; j<nc; j++) {
+                     res[c+j] +=
+                        vals[off     +j]*x0 + vals[off+  nc+j]*x1 +
+                        vals[off+2*nc+j]*x2 + vals[off+3*nc+j]*x3 +
+                        vals[off+4*nc+j]*x4 + vals[off+5*nc+j]*x5;
+                  }
+               }
+            }
+            else {
+               for (int i=0; i<nr; i++) {
+                  double xi = vec[r+i];
+                  for (int j=0; j<nc; j++) {
+                     res[c+j] += vals[off++]*xi;
+                  }
+               }
+            }
+         }
+      }
+   }
+
+   protected void mulVec (
+      double[] res, double[] vec, int r0, int nr, int c0, int nc) {
+      for (int i=0; i<nr; i++) {
+         res[i] = 0;
+      }
+      mulAddVec (res, vec, r0, nr, c0, nc);
+   }
+
+   protected void mulAddVec (
+      double[] res, double[] vec, int r0, int nr, int c0, int nc) {
+      mulAddBlockRows (
+         res, vec, getAlignedBlockRow (r0), getAlignedBlockRow (r0+nr),
+         getAlignedBlockCol (c0), getAlignedBlockCol (c0+nc), r0, c0);
+   }
+
+   protected void mulTransposeVec (
+      double[] res, double[] vec, int r0, int nr, int c0, int nc) {
+      // note that here r0, nr, c0 and nc refer to the *transposed* matrix
+      for (int j=0; j<nr; j++) {
+         res[j] = 0;
+      }
+      mulTransposeAddVec (res, vec, r0, nr, c0, nc);
+   }
+
+   protected void mulTransposeAddVec (
+      double[] res, double[] vec, int r0, int nr, int c0, int nc) {
+      // note that here r0, nr, c0 and nc refer to the *transposed* matrix
+      mulTransposeAddBlockRows (
+         res, vec, getAlignedBlockRow (c0), getAlignedBlockRow (c0+nc),
+         getAlignedBlockCol (r0), getAlignedBlockCol (r0+nr), c0, r0);
+   }
+
+   protected void mulCheckArgs (
+      VectorNd vr, VectorNd v1, int r0, int nr, int c0, int nc) {
+      super.mulCheckArgs (vr, v1, r0, nr, c0, nc);
+      if (getAlignedBlockRow (r0) == -1 ||
+          getAlignedBlockRow (r0+nr) == -1 ||
+          getAlignedBlockCol (c0) == -1 ||
+          getAlignedBlockCol (c0+nc) == -1) {
+         throw new ImproperSizeException (
+            "Specified submatrix "+getSubMatrixStr(r0,nr,c0,nc)+
+            " is not block aligned");
+      }
+   }
+
+   protected void mulTransposeCheckArgs (
+      VectorNd vr, VectorNd v1, int r0, int nr, int c0, int nc) {
+      super.mulTransposeCheckArgs (vr, v1, r0, nr, c0, nc);
+      if (getAlignedBlockCol (r0) == -1 ||
+          getAlignedBlockCol (r0+nr) == -1 ||
+          getAlignedBlockRow (c0) == -1 ||
+          getAlignedBlockRow (c0+nc) == -1) {
+         throw new ImproperSizeException (
+            "Specified submatrix "+getSubMatrixStr(r0,nr,c0,nc)+
+            " is not block aligned");
+      }
+   }
+
+   /**
+    * Adds the number of non-zero elements in each row of a principal
+    * sub-matrix of this matrix to <code>offsets</code>, starting at
+    * <code>idx</code>. The sub-matrix must be block-aligned.
+    *
+    * @param offsets accumulates the number of non-zeros in each row
+    * @param idx starting index within <code>offsets</code>
+    * @param part specifies what portion of the sub-matrix to use; must be
+    * either {@link maspack.matrix.Matrix.Partition#Full Full} or
+    * {@link maspack.matrix.Matrix.Partition#UpperTriangular UpperTriangular}
+    * @param numRows number of rows delimiting the sub-matrix
+    * @param numCols number of columns delimiting the sub-matrix
+    */
+   public void addNumNonZerosByRow (
+      int[] offsets, int idx, Partition part, int numRows, int numCols) {
+      checkBlockAligned (numRows, numCols);
+      boolean upper = MatrixBase.checkUpperTriangular (part);
+      int numBlkRows = getAlignedBlockRow (numRows);
+      int numBlkCols = getAlignedBlockCol (numCols);
+      for (int bi=0; bi<numBlkRows; bi++) {
+         int r = idx+myRowOffsets[bi];
+         int nr = myRowOffsets[bi+1]-myRowOffsets[bi];
+         for (int k=myBlkRowPtrs[bi]; k<myBlkRowPtrs[bi+1]; k++) {
+            int bj = myBlkCols[k];
+            if (bj >= numBlkCols) {
+               break;
+            }
+            int nc = myColOffsets[bj+1]-myColOffsets[bj];
+            if (!upper || bj > bi) {
+               for (int i=0; i<nr; i++) {
+                  offsets[r+i] += nc;
+               }
+            }
+            else if (bj == bi) {
+               for (int i=0; i<nr; i++) {
+                  offsets[r+i] += Math.max (nc-i, 0);
+               }
+            }
+         }
+      }
+   }
+
+   private void updateRowIndices (
+      Partition part, int numBlkRows, int numBlkCols) {
+      int numRows = myRowOffsets[numBlkRows];
+      myRowIndices = new int[numRows+1];
+      addNumNonZerosByRow (
+         myRowIndices, 0, part, numRows, myColOffsets[numBlkCols]);
+      int accum = 0;
+      for (int i=0; i<numRows; i++) {
+         int num = myRowIndices[i];
+         myRowIndices[i] = accum;
+         accum += num;
+      }
+      myRowIndices[numRows] = accum;
+      myRowIndicesPartition = part;
+      myRowIndicesNumBlkRows = numBlkRows;
+      myRowIndicesNumBlkCols = numBlkCols;
+   }
+
+   private void checkRowIndices (Partition part, int numRows, int numCols) {
+      checkBlockAligned (numRows, numCols);
+      int numBlkRows = getAlignedBlockRow (numRows);
+      int numBlkCols = getAlignedBlockCol (numCols);
+      if (myRowIndicesPartition != part ||
+          myRowIndicesNumBlkRows != numBlkRows ||
+          myRowIndicesNumBlkCols != numBlkCols) {
+         updateRowIndices (part, numBlkRows, numBlkCols);
+      }
+   }
+
+   /**
+    * Gets the compressed row storage (CRS) indices for a principal sub-matrix
+    * of this matrix delimited by the first <code>numRows</code> rows and the
+    * first <code>numCols</code> columns. The sub-matrix must be
+    * block-aligned. Indices are 1-based, as with {@link
+    * SparseBlockMatrix#getCRSIndices(int[],int[],Matrix.Partition,int,int)
+    * SparseBlockMatrix.getCRSIndices()}.
+    */
+   public int getCRSIndices (
+      int[] colIdxs, int[] rowOffs, Partition part, int numRows, int numCols) {
+      checkRowIndices (part, numRows, numCols);
+      int nnz = doGetBlockCRSIndices (
+         colIdxs, 1, null, part, myRowIndicesNumBlkRows,
+         myRowIndicesNumBlkCols);
+      if (rowOffs != null) {
+         for (int i=0; i<numRows; i++) {
+            rowOffs[i] = myRowIndices[i]+1;
+         }
+         rowOffs[numRows] = nnz+1;
+      }
+      return nnz;
+   }
+
+   /**
+    * Gets the compressed row storage (CRS) values for a principal sub-matrix
+    * of this matrix delimited by the first <code>numRows</code> rows and the
+    * first <code>numCols</code> columns. The sub-matrix must be
+    * block-aligned.
+    */
+   public int getCRSValues (
+      double[] vals, Partition part, int numRows, int numCols) {
+      checkRowIndices (part, numRows, numCols);
+      return doGetBlockCRSValues (
+         vals, myRowIndices, part, myRowIndicesNumBlkRows,
+         myRowIndicesNumBlkCols);
+   }
+
+   /**
+    * Gets the CRS indices for a principal sub-matrix of this matrix, placing
+    * them within a larger CRS structure. Works the same as {@link
+    * SparseBlockMatrix#getBlockCRSIndices(int[],int,int[],Matrix.Partition,int,int)
+    * SparseBlockMatrix.getBlockCRSIndices()}: <code>offsets</code> gives the
+    * location within <code>colIdxs</code> where the indices for each row
+    * should be placed, and is advanced past them on return.
+    */
+   public int getBlockCRSIndices (
+      int[] colIdxs, int colOff, int[] offsets, Partition part, int numRows,
+      int numCols) {
+      checkBlockAligned (numRows, numCols);
+      return doGetBlockCRSIndices (
+         colIdxs, colOff, offsets, part, getAlignedBlockRow (numRows),
+         getAlignedBlockCol (numCols));
+   }
+
+   /**
+    * Gets the CRS values for a principal sub-matrix of this matrix, placing
+    * them within a larger CRS structure. Works the same as {@link
+    * SparseBlockMatrix#getBlockCRSValues(double[],int[],Matrix.Partition,int,int)
+    * SparseBlockMatrix.getBlockCRSValues()}: <code>offsets</code> gives the
+    * location within <code>vals</code> where the values for each row should
+    * be placed, and is advanced past them on return. This allows values to be
+    * written directly into the buffers of a KKT system.
+    */
+   public int getBlockCRSValues (
+      double[] vals, int[] offsets, Partition part, int numRows, int numCols) {
+      checkBlockAligned (numRows, numCols);
+      return doGetBlockCRSValues (
+         vals, offsets, part, getAlignedBlockRow (numRows),
+         getAlignedBlockCol (numCols));
+   }
+
+   /**
+    * If <code>offsets</code> is <code>null</code>, the indices are written
+    * sequentially in row order, which gives a standard CRS layout.
+    */
+   private int doGetBlockCRSIndices (
+      int[] colIdxs, int colOff, int[] offsets, Partition part,
+      int numBlkRows, int numBlkCols) {
+      boolean upper = MatrixBase.checkUpperTriangular (part);
+      int nnz = 0;
+      int idx = 0;
+      for (int bi=0; bi<numBlkRows; bi++) {
+         int r = myRowOffsets[bi];
+         int nr = myRowOffsets[bi+1]-r;
+         int kend = myBlkRowPtrs[bi+1];
+         for (int i=0; i<nr; i++) {
+            if (offsets != null) {
+               idx = offsets[r+i];
+            }
+            int k = myBlkRowPtrs[bi];
+            if (upper) {
+               while (k < kend && myBlkCols[k] < bi) {
+                  k++;
+               }
+            }
+            for ( ; k<kend; k++) {
+               int bj = myBlkCols[k];
+               if (bj >= numBlkCols) {
+                  break;
+               }
+               int c = myColOffsets[bj];
+               int nc = myColOffsets[bj+1]-c;
+               int j0 = (upper && bj == bi) ? i : 0;
+               for (int j=j0; j<nc; j++) {
+                  colIdxs[idx++] = c+j+colOff;
+               }
+               nnz += nc-Math.min (j0, nc);
+            }
+            if (offsets != null) {
+               offsets[r+i] = idx;
+            }
+         }
+      }
+      return nnz;
+   }
+
+   /**
+    * Values are copied block by block, with the locations for each row given
+    * by <code>offsets</code>. If <code>offsets</code> is
+    * <code>myRowIndices</code>, it is not updated.
+    */
+   private int doGetBlockCRSValues (
+      double[] vals, int[] offsets, Partition part,
+      int numBlkRows, int numBlkCols) {
+      boolean upper = MatrixBase.checkUpperTriangular (part);
+      double[] packed = myVals;
+      int[] loc = new int[maxBlockRowSize()];
+      int nnz = 0;
+      for (int bi=0; bi<numBlkRows; bi++) {
+         int r = myRowOffsets[bi];
+         int nr = myRowOffsets[bi+1]-r;
+         int kend = myBlkRowPtrs[bi+1];
+         for (int i=0; i<nr; i++) {
+            loc[i] = offsets[r+i];
+         }
+         for (int k=myBlkRowPtrs[bi]; k<kend; k++) {
+            int bj = myBlkCols[k];
+            if (bj >= numBlkCols) {
+               break;
+            }
+            else if (upper && bj < bi) {
+               continue;
+            }
+            int nc = myColOffsets[bj+1]-myColOffsets[bj];
+            int off = myValOffs[k];
+            if (upper && bj == bi) {
+               for (int i=0; i<nr; i++) {
+                  int l = loc[i];
+                  for (int j=i; j<nc; j++) {
+                     vals[l++] = packed[off+i*nc+j];
+                  }
+                  nnz += l-loc[i];
+                  loc[i] = l;
+               }
+            }
+            else if (nr == 3 && nc == 3) {
+               int l = loc[0];
+               vals[l  ] = packed[off  ];
+               vals[l+1] = packed[off+1];
+               vals[l+2] = packed[off+2];
+               loc[0] = l+3;
+               l = loc[1];
+               vals[l  ] = packed[off+3];
+               vals[l+1] = packed[off+4];
+               vals[l+2] = packed[off+5];
+               loc[1] = l+3;
+               l = loc[2];
+               vals[l  ] = packed[off+6];
+               vals[l+1] = packed[off+7];
+               vals[l+2] = packed[off+8];
+               loc[2] = l+3;
+               nnz += 9;
+            }
+            else {
+               for (int i=0; i<nr; i++) {
+                  int l = loc[i];
+                  for (int j=0; j<nc; j++) {
+                     vals[l+j] = packed[off++];
+                  }
+                  loc[i] = l+nc;
+               }
+               nnz += nr*nc;
+            }
+         }
+         // Update the offsets *unless* offsets == myRowIndices, which
+         // indicates this routine is being called by getCRSValues()
+         if (offsets != myRowIndices) {
+            for (int i=0; i<nr; i++) {
+               offsets[r+i] = loc[i];
+            }
+         }
+      }
+      return nnz;
+   }
+
+   private int maxBlockRowSize() {
+      int max = 0;
+      for (int bi=0; bi<myNumBlockRows; bi++) {
+         max = Math.max (max, myRowOffsets[bi+1]-myRowOffsets[bi]);
+      }
+      return max;
+   }
+
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.matrix;
+
+import java.util.Arrays;
+
+import maspack.matrix.Matrix.Partition;
+import maspack.util.*;
+
+public class PackedBlockMatrixTest extends UnitTest {
+
+   SparseBlockMatrix createRandom (int[] sizes, double density) {
+      SparseBlockMatrix S = new SparseBlockMatrix (sizes, sizes);
+      for (int bi=0; bi<sizes.length; bi++) {
+         for (int bj=0; bj<sizes.length; bj++) {
+            if (bi == bj || RandomGenerator.nextDouble (0, 1) < density) {
+               MatrixBlock blk = MatrixBlockBase.alloc (sizes[bi], sizes[bj]);
+               MatrixNd MX = new MatrixNd (sizes[bi], sizes[bj]);
+               MX.setRandom();
+               blk.set (MX);
+               S.addBlock (bi, bj, blk);
+            }
+         }
+      }
+      return S;
+   }
+
+   void checkEquals (String msg, int[] result, int[] check) {
+      if (!Arrays.equals (result, check)) {
+         throw new TestException (
+            msg + " " + Arrays.toString (result) +
+            ", expected " + Arrays.toString (check));
+      }
+   }
+
+   void checkEquals (String msg, double[] result, double[] check) {
+      if (!Arrays.equals (result, check)) {
+         throw new TestException (
+            msg + " " + Arrays.toString (result) +
+            ", expected " + Arrays.toString (check));
+      }
+   }
+
+   void checkCRS (SparseBlockMatrix S, PackedBlockMatrix P, Partition part) {
+      for (int nb=1; nb<=S.numBlockRows(); nb++) {
+         int n = S.getBlockRowOffset (nb-1) + S.getBlockRowSize (nb-1);
+         int nnz = S.numNonZeroVals (part, n, n);
+         checkEquals ("numNonZeroVals", P.numNonZeroVals (part, n, n), nnz);
+         int[] colIdxsS = new int[nnz];
+         int[] rowOffsS = new int[n+1];
+         double[] valsS = new double[nnz];
+         S.getCRSIndices (colIdxsS, rowOffsS, part, n, n);
+         S.getCRSValues (valsS, part, n, n);
+         int[] colIdxsP = new int[nnz];
+         int[] rowOffsP = new int[n+1];
+         double[] valsP = new double[nnz];
+         P.getCRSIndices (colIdxsP, rowOffsP, part, n, n);
+         P.getCRSValues (valsP, part, n, n);
+         checkEquals ("CRS column indices", colIdxsP, colIdxsS);
+         checkEquals ("CRS row offsets", rowOffsP, rowOffsS);
+         checkEquals ("CRS values", valsP, valsS);
+
+         // extract into a larger structure, with one extra entry per row
+         int[] offsS = new int[n];
+         int[] offsP = new int[n];
+         for (int i=0; i<n; i++) {
+            offsS[i] = rowOffsS[i]-1+i;
+            offsP[i] = offsS[i];
+         }
+         valsS = new double[nnz+n];
+         valsP = new double[nnz+n];
+         S.getBlockCRSValues (valsS, offsS, part, n, n);
+         P.getBlockCRSValues (valsP, offsP, part, n, n);
+         checkEquals ("block CRS values", valsP, valsS);
+         checkEquals ("block CRS offsets", offsP, offsS);
+         colIdxsS = new int[nnz+n];
+         colIdxsP = new int[nnz+n];
+         for (int i=0; i<n; i++) {
+            offsS[i] = rowOffsS[i]-1+i;
+            offsP[i] = offsS[i];
+         }
+         S.getBlockCRSIndices (colIdxsS, 0, offsS, part, n, n);
+         P.getBlockCRSIndices (colIdxsP, 0, offsP, part, n, n);
+         checkEquals ("block CRS indices", colIdxsP, colIdxsS);
+         checkEquals ("block CRS offsets", offsP, offsS);
+      }
+   }
+
+   void checkMul (SparseBlockMatrix S, PackedBlockMatrix P) {
+      int size = S.rowSize();
+      VectorNd x = new VectorNd (size);
+      VectorNd yS = new VectorNd (size);
+      VectorNd yP = new VectorNd (size);
+      x.setRandom();
+      S.mul (yS, x);
+      P.mul (yP, x);
+      checkEquals ("mul", yP, yS, 1e-14);
+      S.mulTranspose (yS, x);
+      P.mulTranspose (yP, x);
+      checkEquals ("mulTranspose", yP, yS, 1e-14);
+      yS.setRandom();
+      yP.set (yS);
+      S.mulAdd (yS, x);
+      P.mulAdd (yP, x);
+      checkEquals ("mulAdd", yP, yS, 1e-14);
+
+      // block aligned sub-matrices
+      int nb = S.numBlockRows();
+      for (int bi0=0; bi0<nb; bi0+=2) {
+         for (int bj0=1; bj0<nb; bj0+=3) {
+            int r0 = S.getBlockRowOffset (bi0);
+            int c0 = S.getBlockColOffset (bj0);
+            int bi1 = Math.min (bi0+3, nb);
+            int nr = S.getBlockRowOffset (bi1-1)+S.getBlockRowSize (bi1-1)-r0;
+            int nc = size-c0;
+            VectorNd xc = new VectorNd (nc);
+            xc.setRandom();
+            VectorNd zS = new VectorNd (nr);
+            VectorNd zP = new VectorNd (nr);
+            S.mul (zS, xc, r0, nr, c0, nc);
+            P.mul (zP, xc, r0, nr, c0, nc);
+            checkEquals ("sub-matrix mul", zP, zS, 1e-14);
+            VectorNd xr = new VectorNd (nr);
+            xr.setRandom();
+            zS = new VectorNd (nc);
+            zP = new VectorNd (nc);
+            S.mulTranspose (zS, xr, c0, nc, r0, nr);
+            P.mulTranspose (zP, xr, c0, nc, r0, nr);
+            checkEquals ("sub-matrix mulTranspose", zP, zS, 1e-14);
+         }
+      }
+   }
+
+   void testPacking (int[] sizes, double density) {
+      SparseBlockMatrix S = createRandom (sizes, density);
+      PackedBlockMatrix P = new PackedBlockMatrix (S);
+      P.checkConsistency();
+      checkEquals ("packed matrix", P, S);
+      checkEquals ("numBlocks", P.numBlocks(), S.numBlocks());
+      checkMul (S, P);
+      checkCRS (S, P, Partition.Full);
+      checkCRS (S, P, Partition.UpperTriangular);
+
+      // change source values and reload them
+      for (int bi=0; bi<S.numBlockRows(); bi++) {
+         for (MatrixBlock blk=S.firstBlockInRow(bi); blk!=null;
+              blk=blk.next()) {
+            MatrixNd MX = new MatrixNd (blk.rowSize(), blk.colSize());
+            MX.setRandom();
+            blk.set (MX);
+         }
+      }
+      check ("structure not equal", P.blockStructureEquals (S));
+      P.updateValues();
+      checkEquals ("updated packed matrix", P, S);
+      checkMul (S, P);
+      S.scale (2.0);
+      check ("structure not equal on update",
+             P.updateValuesIfStructureEquals());
+      checkEquals ("conditionally updated packed matrix", P, S);
+
+      // modify values directly through the value buffer
+      int k = P.getBlockIndex (0, 0);
+      P.getValueBuffer()[P.getBlockValueOffset(k)] += 1.0;
+      S.set (0, 0, S.get (0, 0) + 1.0);
+      checkEquals ("directly modified packed matrix", P, S);
+
+      // a change in structure should be detected
+      int nb = sizes.length;
+      for (int bj=0; bj<nb; bj++) {
+         if (S.getBlock (nb-1, bj) == null) {
+            S.addBlock (
+               nb-1, bj, MatrixBlockBase.alloc (sizes[nb-1], sizes[bj]));
+            check ("structure change not detected",
+                   !P.blockStructureEquals (S));
+            check ("structure change not detected on update",
+                   !P.updateValuesIfStructureEquals());
+            break;
+         }
+      }
+   }
+
+   public void test() {
+      testPacking (new int[] { 3, 3, 3, 3, 3, 3, 3, 3 }, 0.3);
+      testPacking (new int[] { 6, 6, 3, 6, 3, 3, 6 }, 0.4);
+      testPacking (new int[] { 3, 6, 2, 3, 6, 1, 3, 6, 3 }, 0.3);
+      testPacking (new int[] { 6, 3, 2, 6, 4, 3, 1 }, 0.5);
+   }
+
+   public static void main (String[] args) {
+      PackedBlockMatrixTest tester = new PackedBlockMatrixTest();
+      RandomGenerator.setSeed (0x1234);
+      tester.runtest();
+   }
+}
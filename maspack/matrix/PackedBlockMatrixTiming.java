@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.matrix;
+
+import java.util.Random;
+
+import maspack.matrix.Matrix.Partition;
+import maspack.solvers.CGSolver;
+import maspack.solvers.IterativeSolver.ToleranceType;
+import maspack.util.FunctionTimer;
+
+/**
+ * Compares the timing of matrix-vector products and CRS value extraction
+ * for a {@link SparseBlockMatrix} and its {@link PackedBlockMatrix}
+ * equivalent. Two matrices are used: one with 3 x 3 blocks and the
+ * structure of a hexahedral FEM grid, and one with 6 x 6 blocks
+ * representing a grid of coupled rigid bodies. It also times conjugate
+ * gradient solves with and without {@link CGSolver#setPackMatrix packing},
+ * with the matrix values changed before each solve so that the packed
+ * values must be reloaded.
+ *
+ * <p>Usage: java maspack.matrix.PackedBlockMatrixTiming [gridSize [cnt]]
+ */
+public class PackedBlockMatrixTiming {
+
+   /**
+    * Creates a sparse block matrix with blocks of size bs x bs and the
+    * structure of an n x n x n grid of nodes, in which each node is coupled
+    * to the nodes in the neighboring grid cells. If <code>shuffle</code> is
+    * <code>true</code>, the nodes are numbered in random order, so that the
+    * blocks of each block row are not allocated together, as is typical
+    * for the stiffness matrices of FEM models whose node numbering does not
+    * follow their element order.
+    */
+   public static SparseBlockMatrix createGridMatrix (
+      int n, int bs, boolean shuffle) {
+      int numNodes = n*n*n;
+      int[] sizes = new int[numNodes];
+      int[] perm = new int[numNodes];
+      for (int i=0; i<numNodes; i++) {
+         sizes[i] = bs;
+         perm[i] = i;
+      }
+      if (shuffle) {
+         Random rand = new Random (0x1234);
+         for (int i=numNodes-1; i>0; i--) {
+            int k = rand.nextInt (i+1);
+            int tmp = perm[i];
+            perm[i] = perm[k];
+            perm[k] = tmp;
+         }
+      }
+      SparseBlockMatrix S = new SparseBlockMatrix (sizes, sizes);
+      for (int i=0; i<n; i++) {
+         for (int j=0; j<n; j++) {
+            for (int k=0; k<n; k++) {
+               int n0 = perm[(i*n + j)*n + k];
+               for (int di=-1; di<=1; di++) {
+                  for (int dj=-1; dj<=1; dj++) {
+                     for (int dk=-1; dk<=1; dk++) {
+                        int i1 = i+di;
+                        int j1 = j+dj;
+                        int k1 = k+dk;
+                        if (i1 < 0 || i1 >= n || j1 < 0 || j1 >= n ||
+                            k1 < 0 || k1 >= n) {
+                           continue;
+                        }
+                        int n1 = perm[(i1*n + j1)*n + k1];
+                        MatrixBlock blk = MatrixBlockBase.alloc (bs, bs);
+                        MatrixNd MX = new MatrixNd (bs, bs);
+                        MX.setRandom();
+                        blk.set (MX);
+                        S.addBlock (n0, n1, blk);
+                     }
+                  }
+               }
+            }
+         }
+      }
+      return S;
+   }
+
+   /**
+    * Makes a grid matrix symmetric positive definite, by symmetrizing it and
+    * adding a sufficiently large multiple of the identity.
+    */
+   public static void makeSPD (SparseBlockMatrix S) {
+      for (int bi=0; bi<S.numBlockRows(); bi++) {
+         for (MatrixBlock blk=S.firstBlockInRow(bi); blk!=null;
+              blk=blk.next()) {
+            int bj = blk.getBlockCol();
+            if (bj < bi) {
+               MatrixNd MX = new MatrixNd (S.getBlock (bj, bi));
+               MX.transpose();
+               blk.set (MX);
+            }
+            else if (bj == bi) {
+               MatrixNd MX = new MatrixNd (blk);
+               MatrixNd MT = new MatrixNd (MX);
+               MT.transpose();
+               MX.add (MT);
+               MX.scale (0.5);
+               for (int i=0; i<MX.rowSize(); i++) {
+                  MX.set (i, i, MX.get (i, i) + 14*MX.rowSize());
+               }
+               blk.set (MX);
+            }
+         }
+      }
+   }
+
+   private void perturbValues (SparseBlockMatrix S) {
+      for (int bi=0; bi<S.numBlockRows(); bi++) {
+         for (MatrixBlock blk=S.firstBlockInRow(bi); blk!=null;
+              blk=blk.next()) {
+            blk.scale (1.0001);
+         }
+      }
+   }
+
+   /**
+    * Times CG solves of <code>S</code> using a fixed number of iterations,
+    * with and without packing. Before each solve the values of
+    * <code>S</code> are changed, as they would be between time steps.
+    */
+   public void timeCG (SparseBlockMatrix S, int numIters, int cnt) {
+      FunctionTimer timer = new FunctionTimer();
+      int size = S.rowSize();
+      VectorNd b = new VectorNd (size);
+      VectorNd x = new VectorNd (size);
+      b.setRandom();
+
+      CGSolver solver = new CGSolver();
+      solver.setToleranceType (ToleranceType.AbsoluteResidual);
+      for (int pack=0; pack<2; pack++) {
+         solver.setPackMatrix (pack == 1);
+         // warm up
+         for (int i=0; i<cnt; i++) {
+            x.setZero();
+            solver.solve (x, S, b, 0, numIters);
+         }
+         timer.reset();
+         for (int i=0; i<cnt; i++) {
+            perturbValues (S);
+            x.setZero();
+            timer.restart();
+            solver.solve (x, S, b, 0, numIters);
+            timer.stop();
+         }
+         System.out.println (
+            "  CG, " + numIters + " iterations: " +
+            (pack == 1 ? "packed " : "sparse ") + timer.result(cnt));
+      }
+   }
+
+   public void time (SparseBlockMatrix S, String name, int cnt) {
+      FunctionTimer timer = new FunctionTimer();
+      int size = S.rowSize();
+      VectorNd x = new VectorNd (size);
+      VectorNd y = new VectorNd (size);
+      x.setRandom();
+
+      timer.start();
+      PackedBlockMatrix P = new PackedBlockMatrix (S);
+      timer.stop();
+      System.out.println (
+         name + ": size=" + size + " blocks=" + S.numBlocks() +
+         " pack=" + timer.result(1));
+
+      int nnz = S.numNonZeroVals (Partition.UpperTriangular, size, size);
+      int[] colIdxs = new int[nnz];
+      int[] rowOffs = new int[size+1];
+      double[] vals = new double[nnz];
+      S.getCRSIndices (colIdxs, rowOffs, Partition.UpperTriangular, size, size);
+
+      // warm up
+      for (int i=0; i<cnt; i++) {
+         S.mul (y, x);
+         P.mul (y, x);
+         S.mulTranspose (y, x);
+         P.mulTranspose (y, x);
+         S.getCRSValues (vals, Partition.UpperTriangular, size, size);
+         P.getCRSValues (vals, Partition.UpperTriangular, size, size);
+      }
+
+      timer.start();
+      for (int i=0; i<cnt; i++) {
+         S.mul (y, x);
+      }
+      timer.stop();
+      System.out.println ("  mul:          sparse " + timer.result(cnt));
+      timer.start();
+      for (int i=0; i<cnt; i++) {
+         P.mul (y, x);
+      }
+      timer.stop();
+      System.out.println ("                packed " + timer.result(cnt));
+
+      timer.start();
+      for (int i=0; i<cnt; i++) {
+         S.mulTranspose (y, x);
+      }
+      timer.stop();
+      System.out.println ("  mulTranspose: sparse " + timer.result(cnt));
+      timer.start();
+      for (int i=0; i<cnt; i++) {
+         P.mulTranspose (y, x);
+      }
+      timer.stop();
+      System.out.println ("                packed " + timer.result(cnt));
+
+      timer.start();
+      for (int i=0; i<cnt; i++) {
+         S.getCRSValues (vals, Partition.UpperTriangular, size, size);
+      }
+      timer.stop();
+      System.out.println ("  getCRSValues: sparse " + timer.result(cnt));
+      timer.start();
+      for (int i=0; i<cnt; i++) {
+         P.getCRSValues (vals, Partition.UpperTriangular, size, size);
+      }
+      timer.stop();
+      System.out.println ("                packed " + timer.result(cnt));
+
+      timer.start();
+      for (int i=0; i<cnt; i++) {
+         P.updateValues();
+      }
+      timer.stop();
+      System.out.println ("  updateValues:        " + timer.result(cnt));
+
+      makeSPD (S);
+      for (int numIters : new int[] { 2, 5, 20, 100 }) {
+         timeCG (S, numIters, cnt);
+      }
+   }
+
+   public static void main (String[] args) {
+      int n = 30;
+      int cnt = 20;
+      if (args.length > 0) {
+         n = Integer.parseInt (args[0]);
+      }
+      if (args.length > 1) {
+         cnt = Integer.parseInt (args[1]);
+      }
+      PackedBlockMatrixTiming timing = new PackedBlockMatrixTiming();
+      timing.time (createGridMatrix (n, 3, false), "3x3 grid", cnt);
+      timing.time (createGridMatrix (n, 3, true), "shuffled 3x3 grid", cnt);
+      timing.time (createGridMatrix (n/2, 6, false), "6x6 grid", cnt);
+   }
+}
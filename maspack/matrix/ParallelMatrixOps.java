@@ -0,0 +1,311 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.matrix;
+
+import maspack.concurrency.ParallelLoopManager;
+
+/**
+ * Multi-threaded matrix-vector products and vector operations, intended for
+ * use by iterative solvers operating on large sparse systems.
+ *
+ * <p>Matrix-vector products for {@link SparseBlockMatrix} and {@link
+ * PackedBlockMatrix} are partitioned by block rows, with the partition
+ * chosen to balance the number of blocks handled by each thread. Each row of
+ * the result is computed by a single thread in the same order as the serial
+ * product, so the results are identical to those of {@link
+ * MatrixBase#mul(VectorNd,VectorNd) mul()}. Other linear transforms are
+ * multiplied serially.
+ *
+ * <p>Reductions such as {@link #dot dot()} divide vectors into chunks of a
+ * fixed size. The partial sum for each chunk is computed by one thread, and
+ * the partial sums are then added in chunk order. The results are therefore
+ * deterministic and do not depend on the number of threads, although they
+ * may differ in the last few bits from those of the serial {@link
+ * VectorNd} methods.
+ *
+ * <p>Operations on vectors or matrices whose size is below a threshold are
+ * executed in the calling thread, since the threading overhead would
+ * otherwise dominate.
+ */
+public class ParallelMatrixOps {
+
+   /**
+    * Number of vector entries in each reduction chunk.
+    */
+   public static final int CHUNK_SIZE = 2048;
+
+   /**
+    * Minimum number of rows for which a matrix-vector product is
+    * parallelized.
+    */
+   public static int minParallelRows = 6000;
+
+   /**
+    * Minimum vector size for which vector operations are parallelized.
+    */
+   public static int minParallelSize = 4*CHUNK_SIZE;
+
+   private ParallelLoopManager myLoopManager;
+
+   // cached block row partition for matrix-vector products
+   private Object myPartitionMatrix;
+   private int myPartitionNumBlkRows = -1;
+   private int[] myPartition;
+
+   private double[] myPartialSums = new double[0];
+
+   /**
+    * Creates a new ParallelMatrixOps that uses a specified number of
+    * threads.
+    *
+    * @param numThreads number of threads (including the calling thread)
+    */
+   public ParallelMatrixOps (int numThreads) {
+      myLoopManager = new ParallelLoopManager ("parallelMatrixOps", numThreads);
+   }
+
+   /**
+    * Returns the number of threads used by this object.
+    *
+    * @return number of threads
+    */
+   public int getNumThreads() {
+      return myLoopManager.getNumThreads();
+   }
+
+   /**
+    * Sets the number of threads used by this object.
+    *
+    * @param num number of threads. Values less than 1 are set to 1.
+    */
+   public void setNumThreads (int num) {
+      myLoopManager.setNumThreads (num);
+      myPartition = null;
+   }
+
+   /**
+    * Releases the worker threads used by this object.
+    */
+   public void shutdown() {
+      myLoopManager.shutdown();
+   }
+
+   /**
+    * Computes the block row partition for a matrix, such that each thread
+    * handles roughly the same number of blocks. Each block row is weighted
+    * by its block count plus one.
+    */
+   private int[] getPartition (Object M, int numBlkRows) {
+      int nthreads = myLoopManager.getNumThreads();
+      if (myPartition != null && myPartitionMatrix == M &&
+          myPartitionNumBlkRows == numBlkRows &&
+          myPartition.length == nthreads+1) {
+         return myPartition;
+      }
+      long[] cumWeight = new long[numBlkRows+1];
+      for (int bi=0; bi<numBlkRows; bi++) {
+         int nblks;
+         if (M instanceof PackedBlockMatrix) {
+            PackedBlockMatrix P = (PackedBlockMatrix)M;
+            nblks = P.myBlkRowPtrs[bi+1]-P.myBlkRowPtrs[bi];
+         }
+         else {
+            nblks = ((SparseBlockMatrix)M).numBlocksInRow (bi);
+         }
+         cumWeight[bi+1] = cumWeight[bi] + nblks + 1;
+      }
+      int[] part = new int[nthreads+1];
+      long total = cumWeight[numBlkRows];
+      int bi = 0;
+      for (int k=1; k<nthreads; k++) {
+         long target = (k*total)/nthreads;
+         while (bi < numBlkRows && cumWeight[bi] < target) {
+            bi++;
+         }
+         part[k] = bi;
+      }
+      part[nthreads] = numBlkRows;
+      myPartition = part;
+      myPartitionMatrix = M;
+      myPartitionNumBlkRows = numBlkRows;
+      return part;
+   }
+
+   /**
+    * Notifies this object that the block structure of a matrix previously
+    * used with {@link #mul mul()} has changed, so that the block row
+    * partition should be recomputed. This is needed only for load
+    * balancing; results are correct regardless.
+    */
+   public void invalidatePartition() {
+      myPartition = null;
+   }
+
+   /**
+    * Computes <code>vr = A v1</code>. If <code>A</code> is a {@link
+    * SparseBlockMatrix} or {@link PackedBlockMatrix} with enough rows, the
+    * product is computed using multiple threads.
+    *
+    * @param vr result vector
+    * @param A linear transform to apply
+    * @param v1 vector to multiply
+    */
+   public void mul (VectorNd vr, LinearTransformNd A, VectorNd v1) {
+      int nthreads = myLoopManager.getNumThreads();
+      if (nthreads <= 1 || A.rowSize() < minParallelRows || vr == v1 ||
+          !(A instanceof SparseBlockMatrix || A instanceof PackedBlockMatrix)) {
+         A.mul (vr, v1);
+         return;
+      }
+      if (v1.size() < A.colSize()) {
+         throw new ImproperSizeException (
+            "v1 size "+v1.size()+" < column size "+A.colSize());
+      }
+      if (vr.size() != A.rowSize()) {
+         if (vr.isFixedSize()) {
+            throw new ImproperSizeException ("Incompatible dimensions");
+         }
+         vr.setSize (A.rowSize());
+      }
+      final double[] res = vr.getBuffer();
+      final double[] vec = v1.getBuffer();
+      for (int i=0; i<res.length && i<A.rowSize(); i++) {
+         res[i] = 0;
+      }
+      final int[] part;
+      if (A instanceof SparseBlockMatrix) {
+         final SparseBlockMatrix S = (SparseBlockMatrix)A;
+         part = getPartition (S, S.numBlockRows());
+         myLoopManager.execute (nthreads, new ParallelLoopManager.RangeTask() {
+               public void run (int tidx, int start, int end) {
+                  for (int t=start; t<end; t++) {
+                     S.mulAddBlockRows (res, vec, part[t], part[t+1]);
+                  }
+               }
+            });
+      }
+      else {
+         final PackedBlockMatrix P = (PackedBlockMatrix)A;
+         part = getPartition (P, P.numBlockRows());
+         final int nbc = P.numBlockCols();
+         myLoopManager.execute (nthreads, new ParallelLoopManager.RangeTask() {
+               public void run (int tidx, int start, int end) {
+                  for (int t=start; t<end; t++) {
+                     P.mulAddBlockRows (
+                        res, vec, part[t], part[t+1], 0, nbc, 0, 0);
+                  }
+               }
+            });
+      }
+   }
+
+   private double[] getPartialSums (int nchunks) {
+      if (myPartialSums.length < nchunks) {
+         myPartialSums = new double[nchunks];
+      }
+      return myPartialSums;
+   }
+
+   private void checkSizes (VectorNd v1, VectorNd v2) {
+      if (v1.size() != v2.size()) {
+         throw new ImproperSizeException ("Incompatible dimensions");
+      }
+   }
+
+   private void executeChunks (int nchunks, int size,
+      ParallelLoopManager.RangeTask task) {
+      if (size < minParallelSize) {
+         task.run (0, 0, nchunks);
+      }
+      else {
+         myLoopManager.execute (nchunks, task);
+      }
+   }
+
+   /**
+    * Returns the dot product of two vectors.
+    *
+    * @param v1 first vector
+    * @param v2 second vector
+    * @return dot product
+    */
+   public double dot (VectorNd v1, VectorNd v2) {
+      checkSizes (v1, v2);
+      final int size = v1.size();
+      final double[] buf1 = v1.getBuffer();
+      final double[] buf2 = v2.getBuffer();
+      int nchunks = (size+CHUNK_SIZE-1)/CHUNK_SIZE;
+      final double[] sums = getPartialSums (nchunks);
+      executeChunks (nchunks, size, new ParallelLoopManager.RangeTask() {
+            public void run (int tidx, int start, int end) {
+               for (int c=start; c<end; c++) {
+                  int iend = Math.min ((c+1)*CHUNK_SIZE, size);
+                  double sum = 0;
+                  for (int i=c*CHUNK_SIZE; i<iend; i++) {
+                     sum += buf1[i]*buf2[i];
+                  }
+                  sums[c] = sum;
+               }
+            }
+         });
+      double sum = 0;
+      for (int c=0; c<nchunks; c++) {
+         sum += sums[c];
+      }
+      return sum;
+   }
+
+   /**
+    * Returns the squared norm of a vector.
+    *
+    * @param v1 vector
+    * @return squared norm
+    */
+   public double normSquared (VectorNd v1) {
+      return dot (v1, v1);
+   }
+
+   /**
+    * Computes <code>vr = s v1 + v2</code>. The vectors must all have the
+    * same size.
+    *
+    * @param vr result vector
+    * @param s scaling factor
+    * @param v1 vector to be scaled
+    * @param v2 vector to be added
+    */
+   public void scaledAdd (VectorNd vr, double s, VectorNd v1, VectorNd v2) {
+      checkSizes (v1, v2);
+      checkSizes (vr, v1);
+      final int size = v1.size();
+      final double[] bufr = vr.getBuffer();
+      final double[] buf1 = v1.getBuffer();
+      final double[] buf2 = v2.getBuffer();
+      final double scale = s;
+      int nchunks = (size+CHUNK_SIZE-1)/CHUNK_SIZE;
+      executeChunks (nchunks, size, new ParallelLoopManager.RangeTask() {
+            public void run (int tidx, int start, int end) {
+               int iend = Math.min (end*CHUNK_SIZE, size);
+               for (int i=start*CHUNK_SIZE; i<iend; i++) {
+                  bufr[i] = scale*buf1[i] + buf2[i];
+               }
+            }
+         });
+   }
+
+   /**
+    * Computes <code>vr = v1 - v2</code>. The vectors must all have the same
+    * size.
+    *
+    * @param vr result vector
+    * @param v1 first vector
+    * @param v2 vector to be subtracted
+    */
+   public void sub (VectorNd vr, VectorNd v1, VectorNd v2) {
+      scaledAdd (vr, -1, v2, v1);
+   }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.matrix;
+
+import maspack.util.*;
+
+public class ParallelMatrixOpsTest extends UnitTest {
+
+   SparseBlockMatrix createRandom (int numBlks, double density) {
+      int[] sizes = new int[numBlks];
+      for (int bi=0; bi<numBlks; bi++) {
+         sizes[bi] = (bi%5 == 0 ? 6 : 3);
+      }
+      SparseBlockMatrix S = new SparseBlockMatrix (sizes, sizes);
+      for (int bi=0; bi<numBlks; bi++) {
+         for (int bj=0; bj<numBlks; bj++) {
+            if (bi == bj || RandomGenerator.nextDouble (0, 1) < density) {
+               MatrixBlock blk = MatrixBlockBase.alloc (sizes[bi], sizes[bj]);
+               MatrixNd MX = new MatrixNd (sizes[bi], sizes[bj]);
+               MX.setRandom();
+               blk.set (MX);
+               S.addBlock (bi, bj, blk);
+            }
+         }
+      }
+      return S;
+   }
+
+   void testMul (SparseBlockMatrix S) {
+      PackedBlockMatrix P = new PackedBlockMatrix (S);
+      int size = S.rowSize();
+      VectorNd x = new VectorNd (size);
+      VectorNd ycheck = new VectorNd (size);
+      VectorNd ycheckP = new VectorNd (size);
+      VectorNd y = new VectorNd (size);
+      x.setRandom();
+      S.mul (ycheck, x);
+      P.mul (ycheckP, x);
+      for (int nthreads=1; nthreads<=5; nthreads++) {
+         ParallelMatrixOps ops = new ParallelMatrixOps (nthreads);
+         y.setRandom();
+         ops.mul (y, S, x);
+         // results should be identical to the serial product
+         checkEquals ("parallel mul, nthreads="+nthreads, y, ycheck);
+         y.setRandom();
+         ops.mul (y, P, x);
+         checkEquals ("parallel packed mul, nthreads="+nthreads, y, ycheckP);
+         ops.shutdown();
+      }
+   }
+
+   void testVectorOps (int size) {
+      VectorNd v1 = new VectorNd (size);
+      VectorNd v2 = new VectorNd (size);
+      VectorNd vr = new VectorNd (size);
+      VectorNd vcheck = new VectorNd (size);
+      v1.setRandom();
+      v2.setRandom();
+      double dot1 = 0;
+      for (int nthreads=1; nthreads<=5; nthreads++) {
+         ParallelMatrixOps ops = new ParallelMatrixOps (nthreads);
+         double dot = ops.dot (v1, v2);
+         if (nthreads == 1) {
+            dot1 = dot;
+            double dotcheck = v1.dot (v2);
+            if (Math.abs (dot-dotcheck) > 1e-12*size) {
+               throw new TestException (
+                  "dot product is "+dot+", expected "+dotcheck);
+            }
+         }
+         else if (dot != dot1) {
+            // result should not depend on the number of threads
+            throw new TestException (
+               "dot product with "+nthreads+" threads is "+dot+
+               ", expected "+dot1);
+         }
+         ops.scaledAdd (vr, 1.5, v1, v2);
+         vcheck.scaledAdd (1.5, v1, v2);
+         checkEquals ("scaledAdd", vr, vcheck);
+         ops.sub (vr, v1, v2);
+         vcheck.sub (v1, v2);
+         checkEquals ("sub", vr, vcheck);
+         ops.shutdown();
+      }
+   }
+
+   public void test() {
+      int saveRows = ParallelMatrixOps.minParallelRows;
+      int saveSize = ParallelMatrixOps.minParallelSize;
+      try {
+         // force parallel execution for small sizes
+         ParallelMatrixOps.minParallelRows = 0;
+         ParallelMatrixOps.minParallelSize = 0;
+         testMul (createRandom (1, 1.0));
+         testMul (createRandom (7, 0.4));
+         testMul (createRandom (60, 0.1));
+         testVectorOps (1);
+         testVectorOps (ParallelMatrixOps.CHUNK_SIZE);
+         testVectorOps (5*ParallelMatrixOps.CHUNK_SIZE+17);
+      }
+      finally {
+         ParallelMatrixOps.minParallelRows = saveRows;
+         ParallelMatrixOps.minParallelSize = saveSize;
+      }
+   }
+
+   public static void main (String[] args) {
+      ParallelMatrixOpsTest tester = new ParallelMatrixOpsTest();
+      RandomGenerator.setSeed (0x1234);
+      tester.runtest();
+   }
+}
@@ -642,6 +642,29 @@ public class SparseBlockMatrix extends SparseMatrixBase implements Clonable {
       }
    }
 
+   /**
+    * Multiplies block rows <code>bi0</code> to <code>bi1-1</code> of this
+    * matrix by <code>vec</code> and adds the result to <code>res</code>.
+    * Both <code>res</code> and <code>vec</code> are indexed by the full
+    * matrix rows and columns. Different block row ranges can be processed
+    * concurrently.
+    */
+   void mulAddBlockRows (double[] res, double[] vec, int bi0, int bi1) {
+      for (int bi=bi0; bi<bi1; bi++) {
+         int rowOff = myRowOffsets[bi];
+         for (MatrixBlock blk=myRows[bi].myHead; blk!=null; blk=blk.next()) {
+            blk.mulAdd (res, rowOff, vec, myColOffsets[blk.getBlockCol()]);
+         }
+      }
+   }
+
+   /**
+    * Returns the number of blocks in a block row.
+    */
+   int numBlocksInRow (int bi) {
+      return myRows[bi].size();
+   }
+
    protected void mulTransposeVec (
       double[] res, double[] vec, int r0, int nr, int c0, int nc) {
       // note that here r0, nr, c0 and nc refer to the *transposed* matrix
@@ -6,6 +6,7 @@
  */
 package maspack.properties;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
@@ -39,6 +40,19 @@ public class GenericPropertyHandle implements Property {
    }
 
    public Object get() {
+      MethodHandle handle = myDesc.getGetHandle();
+      if (handle != null) {
+         try {
+            return (Object)handle.invokeExact ((Object)myHost);
+         }
+         catch (RuntimeException e) {
+            System.out.println ("exception invoking getMethod for " + getName());
+            throw e;
+         }
+         catch (Throwable e) {
+            throw PropertyDesc.handleInvocationError (e);
+         }
+      }
       try {
          return myGetMethod.invoke (myHost);
       }
@@ -64,6 +78,16 @@ public class GenericPropertyHandle implements Property {
          }
          return;
       }
+      MethodHandle handle = myDesc.getSetHandle();
+      if (handle != null) {
+         try {
+            handle.invokeExact ((Object)myHost, obj);
+         }
+         catch (Throwable e) {
+            throw PropertyDesc.handleInvocationError (e);
+         }
+         return;
+      }
       try {
          mySetMethod.invoke (myHost, obj);
       }
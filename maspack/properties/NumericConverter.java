@@ -281,8 +281,20 @@ public class NumericConverter {
    }
 
    public Object arrayToObject (double[] vals) {
+      return arrayToObject (vals, 0);
+   }
+
+   /**
+    * Creates or updates an object from numeric values stored in an array,
+    * starting at a specified offset.
+    *
+    * @param vals array containing the values
+    * @param off offset within <code>vals</code> of the first value
+    * @return object containing the values
+    */
+   public Object arrayToObject (double[] vals, int off) {
       int i;
-      if (vals.length < myDimension) {
+      if (vals.length < off+myDimension) {
          throw new IllegalArgumentException (
             "array not large enough for object");
       }
@@ -290,43 +302,43 @@ public class NumericConverter {
          case SHORT_ARRAY: {
             short[] shortAr = (short[])myObj;
             for (i = 0; i < myDimension; i++)
-               shortAr[i] = (short)vals[i];
+               shortAr[i] = (short)vals[off+i];
             break;
          }
          case INT_ARRAY: {
             int[] intAr = (int[])myObj;
             for (i = 0; i < myDimension; i++)
-               intAr[i] = (int)vals[i];
+               intAr[i] = (int)vals[off+i];
             break;
          }
          case LONG_ARRAY: {
             long[] longAr = (long[])myObj;
             for (i = 0; i < myDimension; i++)
-               longAr[i] = (long)vals[i];
+               longAr[i] = (long)vals[off+i];
             break;
          }
          case FLOAT_ARRAY: {
             float[] floatAr = (float[])myObj;
             for (i = 0; i < myDimension; i++)
-               floatAr[i] = (float)vals[i];
+               floatAr[i] = (float)vals[off+i];
             break;
          }
          case DOUBLE_ARRAY: {
             double[] doubleAr = (double[])myObj;
             for (i = 0; i < myDimension; i++)
-               doubleAr[i] = (double)vals[i];
+               doubleAr[i] = (double)vals[off+i];
             break;
          }
          case VECTOR: {
             Vector vec = (Vector)myObj;
             for (i = 0; i < myDimension; i++)
-               vec.set (i, vals[i]);
+               vec.set (i, vals[off+i]);
             break;
          }
          case VECTORI: {
             Vectori vec = (Vectori)myObj;
             for (i = 0; i < myDimension; i++)
-               vec.set (i, (int)vals[i]);
+               vec.set (i, (int)vals[off+i]);
             break;
          }
          case MATRIX: {
@@ -334,43 +346,43 @@ public class NumericConverter {
             i = 0;
             for (int j = 0; j < mat.rowSize(); j++)
                for (int k = 0; k < mat.colSize(); k++) {
-                  mat.set (j, k, vals[i++]);
+                  mat.set (j, k, vals[off+i++]);
                }
             break;
          }
          case COLOR: {
             myObj =
                new Color (
-                  (float)vals[0], (float)vals[1], (float)vals[2],
-                  (float)vals[3]);
+                  (float)vals[off], (float)vals[off+1], (float)vals[off+2],
+                  (float)vals[off+3]);
             break;
          }
          case AXIS_ANGLE: {
             myObj =
-               new AxisAngle (vals[0], vals[1], vals[2],
-                              Math.toRadians (vals[3]));
+               new AxisAngle (vals[off], vals[off+1], vals[off+2],
+                              Math.toRadians (vals[off+3]));
             break;
          }
          case BYTE: {
-            return (byte)vals[0];
+            return (byte)vals[off];
          }
          case SHORT: {
-            return (short)vals[0];
+            return (short)vals[off];
          }
          case INT: {
-            return (int)vals[0];
+            return (int)vals[off];
          }
          case LONG: {
-            return (long)vals[0];
+            return (long)vals[off];
          }
          case FLOAT: {
-            return (float)vals[0];
+            return (float)vals[off];
          }
          case DOUBLE: {
-            return (double)vals[0];
+            return (double)vals[off];
          }
          case BOOLEAN: {
-            if (vals[0] == 0.0)
+            if (vals[off] == 0.0)
                return false;
             else
                return true;
@@ -390,8 +402,20 @@ public class NumericConverter {
    }
 
    public void objectToArray (double[] array, Object obj) {
+      objectToArray (array, 0, obj);
+   }
+
+   /**
+    * Stores the numeric values of an object into an array, starting at a
+    * specified offset.
+    *
+    * @param array array to store the values in
+    * @param off offset within <code>array</code> at which to store the values
+    * @param obj object whose values are to be stored
+    */
+   public void objectToArray (double[] array, int off, Object obj) {
       int i;
-      if (array.length < myDimension) {
+      if (array.length < off+myDimension) {
          throw new IllegalArgumentException (
             "array not large enough for object");
       }
@@ -399,43 +423,43 @@ public class NumericConverter {
          case SHORT_ARRAY: {
             short[] shortAr = (short[])obj;
             for (i = 0; i < myDimension; i++)
-               array[i] = (double)shortAr[i];
+               array[off+i] = (double)shortAr[i];
             break;
          }
          case INT_ARRAY: {
             int[] intAr = (int[])obj;
             for (i = 0; i < myDimension; i++)
-               array[i] = (double)intAr[i];
+               array[off+i] = (double)intAr[i];
             break;
          }
          case LONG_ARRAY: {
             long[] longAr = (long[])obj;
             for (i = 0; i < myDimension; i++)
-               array[i] = (double)longAr[i];
+               array[off+i] = (double)longAr[i];
             break;
          }
          case FLOAT_ARRAY: {
             float[] floatAr = (float[])obj;
             for (i = 0; i < myDimension; i++)
-               array[i] = (double)floatAr[i];
+               array[off+i] = (double)floatAr[i];
             break;
          }
          case DOUBLE_ARRAY: {
             double[] doubleAr = (double[])obj;
             for (i = 0; i < myDimension; i++)
-               array[i] = doubleAr[i];
+               array[off+i] = doubleAr[i];
             break;
          }
          case VECTOR: {
             Vector vec = (Vector)obj;
             for (i = 0; i < myDimension; i++)
-               array[i] = vec.get(i);
+               array[off+i] = vec.get(i);
             break;
          }
          case VECTORI: {
             Vectori vec = (Vectori)obj;
             for (i = 0; i < myDimension; i++)
-               array[i] = vec.get(i);
+               array[off+i] = vec.get(i);
             break;
          }
          case MATRIX: {
@@ -443,56 +467,56 @@ public class NumericConverter {
             i = 0;
             for (int j = 0; j < mat.rowSize(); j++) {
                for (int k = 0; k < mat.colSize(); k++) {
-                  array[i++] = mat.get (j, k);
+                  array[off+i++] = mat.get (j, k);
                }
             }
             break;
          }
          case COLOR: {
             Color inColor = (Color)obj;
-            array[0] = inColor.getRed() / 255.0;
-            array[1] = inColor.getGreen() / 255.0;
-            array[2] = inColor.getBlue() / 255.0;
-            array[3] = inColor.getAlpha() / 255.0;
+            array[off] = inColor.getRed() / 255.0;
+            array[off+1] = inColor.getGreen() / 255.0;
+            array[off+2] = inColor.getBlue() / 255.0;
+            array[off+3] = inColor.getAlpha() / 255.0;
             break;
          }
          case AXIS_ANGLE: {
             AxisAngle axisAng = (AxisAngle)obj;
-            array[0] = axisAng.axis.x;
-            array[1] = axisAng.axis.y;
-            array[2] = axisAng.axis.z;
-            array[3] = Math.toDegrees (axisAng.angle);
+            array[off] = axisAng.axis.x;
+            array[off+1] = axisAng.axis.y;
+            array[off+2] = axisAng.axis.z;
+            array[off+3] = Math.toDegrees (axisAng.angle);
             break;
          }
          case BYTE: {
-            array[0] = (Byte)obj;
+            array[off] = (Byte)obj;
             break;
          }
          case SHORT: {
-            array[0] = (Short)obj;
+            array[off] = (Short)obj;
             break;
          }
          case INT: {
-            array[0] = (Integer)obj;
+            array[off] = (Integer)obj;
             break;
          }
          case LONG: {
-            array[0] = (Long)obj;
+            array[off] = (Long)obj;
             break;
          }
          case FLOAT: {
-            array[0] = (Float)obj;
+            array[off] = (Float)obj;
             break;
          }
          case DOUBLE: {
-            array[0] = (Double)obj;
+            array[off] = (Double)obj;
             break;
          }
          case BOOLEAN: {
             if ((Boolean)obj)
-               array[0] = 1.0;
+               array[off] = 1.0;
             else
-               array[0] = 0.0;
+               array[off] = 0.0;
             break;
          }
          default: {
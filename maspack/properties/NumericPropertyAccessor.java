@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.properties;
+
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+
+/**
+ * Reads and writes the values of a fixed list of numeric properties to and
+ * from <code>double</code> arrays. This is intended for code, such as
+ * probes, that repeatedly transfers the same set of property values.
+ *
+ * <p>For properties implemented by a {@link GenericPropertyHandle}, the
+ * values are accessed through method handles obtained from the property's
+ * {@link PropertyDesc}, rather than through reflection. Properties whose
+ * get or set methods use a primitive <code>double</code> are accessed
+ * without creating boxed values. Other properties are accessed through
+ * their {@link Property#get} and {@link Property#set} methods.
+ */
+public class NumericPropertyAccessor {
+
+   private Property[] myProps;
+   private NumericConverter[] myConverters;
+   private Object[] myHosts;
+   private MethodHandle[] myGetHandles;
+   private MethodHandle[] mySetHandles;
+   private int[] myOffsets;
+
+   /**
+    * Creates an accessor for a list of numeric properties.
+    *
+    * @param props properties to be accessed
+    * @param converters converters for each property, or <code>null</code>
+    * if the converters should be created from the current property values
+    */
+   public NumericPropertyAccessor (
+      List<? extends Property> props, NumericConverter[] converters) {
+
+      int numProps = props.size();
+      if (converters != null && converters.length < numProps) {
+         throw new IllegalArgumentException (
+            "number of converters is less than the number of properties");
+      }
+      myProps = new Property[numProps];
+      myConverters = new NumericConverter[numProps];
+      myHosts = new Object[numProps];
+      myGetHandles = new MethodHandle[numProps];
+      mySetHandles = new MethodHandle[numProps];
+      myOffsets = new int[numProps+1];
+      for (int i=0; i<numProps; i++) {
+         Property prop = props.get(i);
+         myProps[i] = prop;
+         if (converters != null) {
+            myConverters[i] = converters[i];
+         }
+         else {
+            myConverters[i] = new NumericConverter (prop.get());
+         }
+         // the generic handle just calls the get and set methods, so we can
+         // call them directly. Subclasses may do otherwise.
+         if (prop.getClass() == GenericPropertyHandle.class &&
+             myConverters[i].getDimension() == 1) {
+            PropertyDesc desc = ((GenericPropertyHandle)prop).myDesc;
+            myHosts[i] = prop.getHost();
+            myGetHandles[i] = desc.getGetDoubleHandle();
+            if (desc.mySetMethod != null) {
+               mySetHandles[i] = desc.getSetDoubleHandle();
+            }
+         }
+         myOffsets[i+1] = myOffsets[i] + myConverters[i].getDimension();
+      }
+   }
+
+   /**
+    * Returns the number of properties handled by this accessor.
+    *
+    * @return number of properties
+    */
+   public int numProperties() {
+      return myProps.length;
+   }
+
+   /**
+    * Returns a specific property handled by this accessor.
+    *
+    * @param idx index of the property
+    * @return property
+    */
+   public Property getProperty (int idx) {
+      return myProps[idx];
+   }
+
+   /**
+    * Returns the number of values associated with a specific property.
+    *
+    * @param idx index of the property
+    * @return dimension of the property
+    */
+   public int getDimension (int idx) {
+      return myConverters[idx].getDimension();
+   }
+
+   /**
+    * Returns the total number of values associated with all the properties.
+    *
+    * @return total dimension of all properties
+    */
+   public int getDimension() {
+      return myOffsets[myProps.length];
+   }
+
+   /**
+    * Stores the values of a specific property into an array.
+    *
+    * @param idx index of the property
+    * @param vals array in which to store the values
+    * @param off offset within <code>vals</code> of the first value
+    */
+   public void getValue (int idx, double[] vals, int off) {
+      MethodHandle handle = myGetHandles[idx];
+      if (handle != null) {
+         try {
+            vals[off] = (double)handle.invokeExact (myHosts[idx]);
+         }
+         catch (Throwable e) {
+            throw PropertyDesc.handleInvocationError (e);
+         }
+      }
+      else {
+         myConverters[idx].objectToArray (vals, off, myProps[idx].get());
+      }
+   }
+
+   /**
+    * Sets a specific property from values stored in an array.
+    *
+    * @param idx index of the property
+    * @param vals array containing the values
+    * @param off offset within <code>vals</code> of the first value
+    */
+   public void setValue (int idx, double[] vals, int off) {
+      MethodHandle handle = mySetHandles[idx];
+      if (handle != null) {
+         try {
+            handle.invokeExact (myHosts[idx], vals[off]);
+         }
+         catch (Throwable e) {
+            throw PropertyDesc.handleInvocationError (e);
+         }
+      }
+      else {
+         myProps[idx].set (myConverters[idx].arrayToObject (vals, off));
+      }
+   }
+
+   /**
+    * Stores the values of all the properties into an array, one after the
+    * other.
+    *
+    * @param vals array in which to store the values. Must have a length
+    * {@code >=} {@link #getDimension()}.
+    */
+   public void getValues (double[] vals) {
+      for (int i=0; i<myProps.length; i++) {
+         getValue (i, vals, myOffsets[i]);
+      }
+   }
+
+   /**
+    * Sets all the properties from values stored one after the other in an
+    * array.
+    *
+    * @param vals array containing the values. Must have a length
+    * {@code >=} {@link #getDimension()}.
+    */
+   public void setValues (double[] vals) {
+      for (int i=0; i<myProps.length; i++) {
+         setValue (i, vals, myOffsets[i]);
+      }
+   }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.properties;
+
+import java.util.ArrayList;
+
+import maspack.matrix.Vector3d;
+import maspack.util.RandomGenerator;
+import maspack.util.TestException;
+import maspack.util.UnitTest;
+
+public class NumericPropertyAccessorTest extends UnitTest {
+
+   public static class Host implements HasProperties {
+      double myDouble = 1.5;
+      int myInt = 3;
+      float myFloat = 2.5f;
+      Vector3d myVector = new Vector3d (1, 2, 3);
+
+      public static PropertyList myProps = new PropertyList (Host.class);
+
+      static {
+         myProps.add ("double", "double value", 1.5);
+         myProps.add ("int", "int value", 3);
+         myProps.add ("float", "float value", 2.5f);
+         myProps.add ("vector", "vector value", new Vector3d (1, 2, 3));
+         myProps.addReadOnly ("sum", "sum of the double and int values");
+      }
+
+      public PropertyList getAllPropertyInfo() {
+         return myProps;
+      }
+
+      public Property getProperty (String name) {
+         return PropertyList.getProperty (name, this);
+      }
+
+      public double getDouble() {
+         return myDouble;
+      }
+
+      public void setDouble (double val) {
+         myDouble = val;
+      }
+
+      public int getInt() {
+         return myInt;
+      }
+
+      public void setInt (int val) {
+         myInt = val;
+      }
+
+      public float getFloat() {
+         return myFloat;
+      }
+
+      public void setFloat (float val) {
+         myFloat = val;
+      }
+
+      public Vector3d getVector() {
+         return myVector;
+      }
+
+      public void setVector (Vector3d vec) {
+         myVector.set (vec);
+      }
+
+      public double getSum() {
+         return myDouble + myInt;
+      }
+   }
+
+   void checkValues (String msg, double[] vals, double[] check) {
+      for (int i=0; i<check.length; i++) {
+         if (vals[i] != check[i]) {
+            throw new TestException (
+               msg + ": value " + i + " is " + vals[i] +
+               ", expected " + check[i]);
+         }
+      }
+   }
+
+   public void test() {
+      Host host = new Host();
+      ArrayList<Property> props = new ArrayList<Property>();
+      props.add (host.getProperty ("double"));
+      props.add (host.getProperty ("int"));
+      props.add (host.getProperty ("vector"));
+      props.add (host.getProperty ("float"));
+      props.add (host.getProperty ("sum"));
+
+      NumericPropertyAccessor accessor =
+         new NumericPropertyAccessor (props, null);
+      if (accessor.getDimension() != 7) {
+         throw new TestException (
+            "dimension is " + accessor.getDimension() + ", expected 7");
+      }
+      double[] vals = new double[accessor.getDimension()];
+      accessor.getValues (vals);
+      checkValues (
+         "initial values", vals, new double[] { 1.5, 3, 1, 2, 3, 2.5, 4.5 });
+
+      double[] check = new double[7];
+      for (int i=0; i<5; i++) {
+         check[i] = RandomGenerator.nextDouble (-1, 1);
+      }
+      check[1] = 7;
+      check[5] = 0.25;
+      accessor.setValues (check);
+      // sum is read-only, so will reflect the new values:
+      check[6] = check[0] + check[1];
+      accessor.getValues (vals);
+      checkValues ("set values", vals, check);
+      if (host.myDouble != check[0] || host.myInt != 7 ||
+          host.myVector.z != check[4] || host.myFloat != 0.25f) {
+         throw new TestException ("host values not set correctly");
+      }
+
+      // check single property access at an offset
+      double[] single = new double[5];
+      accessor.getValue (2, single, 2);
+      checkValues (
+         "vector value", new double[] { single[2], single[3], single[4] },
+         new double[] { check[2], check[3], check[4] });
+      single[0] = -2.0;
+      accessor.setValue (0, single, 0);
+      if (host.myDouble != -2.0) {
+         throw new TestException (
+            "double value is " + host.myDouble + ", expected -2.0");
+      }
+   }
+
+   public static void main (String[] args) {
+      NumericPropertyAccessorTest tester = new NumericPropertyAccessorTest();
+      RandomGenerator.setSeed (0x1234);
+      tester.runtest();
+   }
+}
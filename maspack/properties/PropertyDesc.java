@@ -10,6 +10,9 @@ import java.awt.Color;
 import java.awt.Font;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 
 import maspack.matrix.AxisAngle;
@@ -57,6 +60,15 @@ public class PropertyDesc implements PropertyInfo {
    protected Method myCreateMethod;
    // protected Field myModeObjectField;
 
+   // method handles for the get and set methods, created on demand. These
+   // are null if the methods are not accessible through a public lookup,
+   // in which case reflection is used instead.
+   private MethodHandle myGetHandle;
+   private MethodHandle mySetHandle;
+   private MethodHandle myGetDoubleHandle;
+   private MethodHandle mySetDoubleHandle;
+   private volatile boolean myHandlesValid = false;
+
    boolean myDefaultIsAuto = false;
    Object myDefaultValue;
    PropertyMode myDefaultMode = PropertyMode.Explicit;
@@ -687,6 +699,7 @@ public class PropertyDesc implements PropertyInfo {
    }
 
    private void initGetMethod (String methodName) {
+      myHandlesValid = false;
       myGetMethod = locateMethod (methodName);
       if (myValueClass == null) {
          setPropertyType (myGetMethod.getReturnType());
@@ -695,6 +708,7 @@ public class PropertyDesc implements PropertyInfo {
    }
 
    private void initSetMethod (String methodName) {
+      myHandlesValid = false;
       if (myValueClass == null) {
          throw new IllegalStateException (
             "attempt to set set method with value class unknown");
@@ -1070,10 +1084,11 @@ public class PropertyDesc implements PropertyInfo {
    }
 
    protected void methodInvocationError (
-      Exception e, HasProperties host, Method method) {
+      Throwable e, HasProperties host, Method method) {
       e.printStackTrace(); 
       throw new InternalErrorException (
-         "Error invoking "+host.getClass().getName()+"."+method.getName());
+         "Error invoking "+host.getClass().getName()+"."+method.getName()+
+         " for property '"+myName+"'");
    }
 
    public Object createInstance (HasProperties host)
@@ -1092,12 +1107,124 @@ public class PropertyDesc implements PropertyInfo {
       }
    }
 
+   private static MethodHandle createMethodHandle (
+      Method method, MethodType type) {
+      if (method == null) {
+         return null;
+      }
+      try {
+         return MethodHandles.publicLookup().unreflect (method).asType (type);
+      }
+      catch (IllegalAccessException e) {
+         return null;
+      }
+   }
+
+   private synchronized void initHandles() {
+      if (!myHandlesValid) {
+         myGetHandle = createMethodHandle (
+            myGetMethod, MethodType.methodType (Object.class, Object.class));
+         mySetHandle = createMethodHandle (
+            mySetMethod,
+            MethodType.methodType (void.class, Object.class, Object.class));
+         myGetDoubleHandle = null;
+         mySetDoubleHandle = null;
+         if (myGetMethod != null &&
+             myGetMethod.getReturnType() == double.class) {
+            myGetDoubleHandle = createMethodHandle (
+               myGetMethod, MethodType.methodType (double.class, Object.class));
+         }
+         if (mySetMethod != null &&
+             mySetMethod.getParameterTypes()[0] == double.class) {
+            mySetDoubleHandle = createMethodHandle (
+               mySetMethod,
+               MethodType.methodType (void.class, Object.class, double.class));
+         }
+         myHandlesValid = true;
+      }
+   }
+
+   /**
+    * Returns a method handle for this property's get method, with the type
+    * <code>(Object)Object</code>. The handle is created the first time it
+    * is requested. Returns <code>null</code> if there is no get method, or
+    * if it is not publicly accessible.
+    */
+   MethodHandle getGetHandle() {
+      if (!myHandlesValid) {
+         initHandles();
+      }
+      return myGetHandle;
+   }
+
+   /**
+    * Returns a method handle for this property's set method, with the type
+    * <code>(Object,Object)void</code>, or <code>null</code> if there is no
+    * set method or it is not publicly accessible.
+    */
+   MethodHandle getSetHandle() {
+      if (!myHandlesValid) {
+         initHandles();
+      }
+      return mySetHandle;
+   }
+
+   /**
+    * Returns a method handle with the type <code>(Object)double</code> if
+    * this property's get method returns a primitive <code>double</code>,
+    * allowing the value to be read without boxing. Otherwise, returns
+    * <code>null</code>.
+    */
+   MethodHandle getGetDoubleHandle() {
+      if (!myHandlesValid) {
+         initHandles();
+      }
+      return myGetDoubleHandle;
+   }
+
+   /**
+    * Returns a method handle with the type <code>(Object,double)void</code>
+    * if this property's set method takes a primitive <code>double</code>.
+    * Otherwise, returns <code>null</code>.
+    */
+   MethodHandle getSetDoubleHandle() {
+      if (!myHandlesValid) {
+         initHandles();
+      }
+      return mySetDoubleHandle;
+   }
+
+   /**
+    * Rethrows an exception thrown by a method handle invocation, wrapping
+    * it in a RuntimeException if it is checked.
+    */
+   static RuntimeException handleInvocationError (Throwable e) {
+      if (e instanceof RuntimeException) {
+         throw (RuntimeException)e;
+      }
+      else if (e instanceof Error) {
+         throw (Error)e;
+      }
+      else {
+         throw new RuntimeException (e.getMessage(), e);
+      }
+   }
+
    public Object getValue (HasProperties host) {
       if (myGetMethod == null) {
          return host.getProperty (myName).get();
       }
       else {
          checkHostClass (host);
+         MethodHandle handle = getGetHandle();
+         if (handle != null) {
+            try {
+               return (Object)handle.invokeExact ((Object)host);
+            }
+            catch (Throwable e) {
+               methodInvocationError (e, host, myGetMethod);
+            }
+         }
          try {
             return myGetMethod.invoke (host);
          }
@@ -1133,6 +1260,16 @@ public class PropertyDesc implements PropertyInfo {
       }
       else {
          checkHostClass (host);
+         MethodHandle handle = getSetHandle();
+         if (handle != null) {
+            try {
+               handle.invokeExact ((Object)host, value);
+            }
+            catch (Throwable e) {
+               methodInvocationError (e, host, mySetMethod);
+            }
+            return;
+         }
          try {
             mySetMethod.invoke (host, value);
          }
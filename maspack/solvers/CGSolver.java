@@ -9,6 +9,9 @@ package maspack.solvers;
 import maspack.matrix.ImproperSizeException;
 import maspack.matrix.LinearTransformNd;
 import maspack.matrix.Matrix;
+import maspack.matrix.PackedBlockMatrix;
+import maspack.matrix.ParallelMatrixOps;
+import maspack.matrix.SparseBlockMatrix;
 import maspack.matrix.SparseMatrixNd;
 import maspack.matrix.VectorNd;
 
@@ -18,6 +21,7 @@ import maspack.matrix.VectorNd;
 public class CGSolver implements IterativeSolver {
    private int myLastIterationCnt;
    private double myLastResidualSquared;
+   private double myLastInitialResidualSquared;
    private double myTol = 0.001;
    private int myMaxIter = 100;
    private ToleranceType myTolType = ToleranceType.RelativeResidual;
@@ -29,6 +33,13 @@ public class CGSolver implements IterativeSolver {
    VectorNd dir = new VectorNd (0); // direction
    VectorNd A_dir = new VectorNd (0); // direction multiplied by A
 
+   // parallel kernels, or null if the solver is single-threaded
+   ParallelMatrixOps myParallelOps = null;
+
+   // packed copy of the most recent SparseBlockMatrix, used for products
+   boolean myPackMatrix = true;
+   PackedBlockMatrix myPackedMatrix = null;
+
    // public enum ToleranceType
    // {
    // RelativeResidual,
@@ -52,6 +63,118 @@ public class CGSolver implements IterativeSolver {
       myTolType = type;
    }
 
+   /**
+    * Sets the number of threads used for matrix-vector products and vector
+    * operations. If greater than one, products with {@link
+    * maspack.matrix.SparseBlockMatrix SparseBlockMatrix} and {@link
+    * maspack.matrix.PackedBlockMatrix PackedBlockMatrix} are partitioned by
+    * rows, and dot products are computed using {@link ParallelMatrixOps},
+    * whose results do not depend on the number of threads.
+    *
+    * @param num number of threads
+    */
+   public void setNumThreads (int num) {
+      if (num > 1) {
+         if (myParallelOps == null) {
+            myParallelOps = new ParallelMatrixOps (num);
+         }
+         else {
+            myParallelOps.setNumThreads (num);
+         }
+      }
+      else if (myParallelOps != null) {
+         myParallelOps.shutdown();
+         myParallelOps = null;
+      }
+   }
+
+   /**
+    * Returns the number of threads used for matrix-vector products and
+    * vector operations.
+    *
+    * @return number of threads
+    */
+   public int getNumThreads() {
+      return myParallelOps != null ? myParallelOps.getNumThreads() : 1;
+   }
+
+   /**
+    * Sets whether a {@link SparseBlockMatrix} supplied to {@link #solve
+    * solve} should be copied into a {@link PackedBlockMatrix}, which is then
+    * used for the matrix-vector products of the solve. The packed copy is
+    * kept between solves, and if the block structure of the matrix is
+    * unchanged, only its values are reloaded. Reloading costs about as much
+    * as one product with the original matrix, so this is worthwhile for
+    * large matrices when solves require more than a few iterations. The
+    * packed copy roughly doubles the memory used by the matrix values, and
+    * should be disabled if memory is tight. The default value is
+    * <code>true</code>.
+    *
+    * @param enable if <code>true</code>, products are computed using a
+    * packed copy of the matrix
+    */
+   public void setPackMatrix (boolean enable) {
+      myPackMatrix = enable;
+      if (!enable) {
+         myPackedMatrix = null;
+      }
+   }
+
+   /**
+    * Queries whether products are computed using a packed copy of the
+    * matrix. See {@link #setPackMatrix}.
+    *
+    * @return <code>true</code> if products use a packed copy of the matrix
+    */
+   public boolean getPackMatrix() {
+      return myPackMatrix;
+   }
+
+   /**
+    * Returns the transform to use for the matrix-vector products of a
+    * solve. If packing is enabled and <code>A</code> is a
+    * SparseBlockMatrix, this is a packed copy whose values have been
+    * updated from <code>A</code>.
+    */
+   private LinearTransformNd getProductTransform (LinearTransformNd A) {
+      if (!myPackMatrix || !(A instanceof SparseBlockMatrix)) {
+         return A;
+      }
+      SparseBlockMatrix S = (SparseBlockMatrix)A;
+      if (myPackedMatrix == null || myPackedMatrix.getSource() != S ||
+          !myPackedMatrix.updateValuesIfStructureEquals()) {
+         myPackedMatrix = new PackedBlockMatrix (S);
+      }
+      return myPackedMatrix;
+   }
+
+   private void mul (VectorNd vr, LinearTransformNd A, VectorNd v1) {
+      if (myParallelOps != null) {
+         myParallelOps.mul (vr, A, v1);
+      }
+      else {
+         A.mul (vr, v1);
+      }
+   }
+
+   private double dot (VectorNd v1, VectorNd v2) {
+      if (myParallelOps != null) {
+         return myParallelOps.dot (v1, v2);
+      }
+      else {
+         return v1.dot (v2);
+      }
+   }
+
+   private void scaledAdd (VectorNd vr, double s, VectorNd v1, VectorNd v2) {
+      if (myParallelOps != null) {
+         myParallelOps.scaledAdd (vr, s, v1, v2);
+      }
+      else {
+         vr.scaledAdd (s, v1, v2);
+      }
+   }
+
    public int getMaxIterations() {
       return myMaxIter;
    }
@@ -143,6 +266,7 @@ public class CGSolver implements IterativeSolver {
       }
       double dnew;
 
+      A = getProductTransform (A);
       int xsize = x.size();
 
       if (xsize != res.size()) {
@@ -154,7 +278,7 @@ public class CGSolver implements IterativeSolver {
          P_res.setSize (xsize);
       }
 
-      A.mul (res, x);
+      mul (res, A, x);
       res.sub (b, res);
       if (P != null) {
          P.mul (dir, res);
@@ -163,11 +287,12 @@ public class CGSolver implements IterativeSolver {
          dir.set (res);
       }
 
-      dnew = res.dot (dir);
+      dnew = dot (res, dir);
+      myLastInitialResidualSquared = dnew;
       double resLimit;
       switch (myTolType) {
          case RelativeResidual: {
-            resLimit = tol * tol * b.dot (b);
+            resLimit = tol * tol * dot (b, b);
             break;
          }
          case AbsoluteResidual:
@@ -189,33 +314,33 @@ public class CGSolver implements IterativeSolver {
          if (myTolType != ToleranceType.AbsoluteError && dnew <= resLimit) {
             break;
          }
-         A.mul (A_dir, dir);
+         mul (A_dir, A, dir);
          if (debug) {
             System.out.println ("  " + cnt + " " + dnew);
          }
-         double alpha = dnew / dir.dot (A_dir);
-         x.scaledAdd (alpha, dir, x);
+         double alpha = dnew / dot (dir, A_dir);
+         scaledAdd (x, alpha, dir, x);
          if (myTolType == ToleranceType.AbsoluteError) {
-            if (alpha * alpha * dir.normSquared() <= resLimit) {
+            if (alpha * alpha * dot (dir, dir) <= resLimit) {
                break;
             }
          }
          if (cnt > 0 && ((cnt % 100) == 0)) {
-            A.mul (res, x);
+            mul (res, A, x);
             res.sub (b, res);
          }
          else {
-            res.scaledAdd (-alpha, A_dir, res);
+            scaledAdd (res, -alpha, A_dir, res);
          }
          double dold = dnew;
          if (P != null) {
             P.mul (P_res, res);
-            dnew = res.dot (P_res);
-            dir.scaledAdd (dnew / dold, dir, P_res);
+            dnew = dot (res, P_res);
+            scaledAdd (dir, dnew / dold, dir, P_res);
          }
          else {
-            dnew = res.dot (res);
-            dir.scaledAdd (dnew / dold, dir, res);
+            dnew = dot (res, res);
+            scaledAdd (dir, dnew / dold, dir, res);
          }
          cnt++;
       }
@@ -244,6 +369,21 @@ public class CGSolver implements IterativeSolver {
       return Math.sqrt (myLastResidualSquared);
    }
 
+   /**
+    * Returns the factor by which the residual norm was reduced during the
+    * last call to {@link #solve solve}. If a preconditioner was supplied,
+    * the norm is the one induced by the preconditioner. Returns 0 if the
+    * initial residual was 0.
+    *
+    * @return last residual reduction factor
+    */
+   public double getResidualReduction() {
+      if (myLastInitialResidualSquared <= 0) {
+         return 0;
+      }
+      return Math.sqrt (myLastResidualSquared/myLastInitialResidualSquared);
+   }
+
    public boolean isCompatible (int matrixType) {
       return ((matrixType & Matrix.SYMMETRIC) != 0);
    }
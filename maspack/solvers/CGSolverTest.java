@@ -8,7 +8,11 @@ package maspack.solvers;
 
 import maspack.matrix.LUDecomposition;
 import maspack.matrix.Matrix3d;
+import maspack.matrix.MatrixBlockBase;
 import maspack.matrix.MatrixNd;
+import maspack.matrix.PackedBlockMatrix;
+import maspack.matrix.ParallelMatrixOps;
+import maspack.matrix.SparseBlockMatrix;
 import maspack.matrix.SparseMatrixNd;
 import maspack.matrix.Vector3d;
 import maspack.matrix.VectorNd;
@@ -205,6 +209,135 @@ public class CGSolverTest {
       }
    }
 
+   /**
+    * Creates an SPD block tridiagonal matrix with 3 x 3 blocks.
+    */
+   public SparseBlockMatrix createBlockTridiagonal (int nblocks) {
+      int[] sizes = new int[nblocks];
+      for (int k = 0; k < nblocks; k++) {
+         sizes[k] = 3;
+      }
+      SparseBlockMatrix S = new SparseBlockMatrix (sizes, sizes);
+      Matrix3d K = new Matrix3d();
+      for (int k = 0; k < nblocks; k++) {
+         S.addBlock (k, k, MatrixBlockBase.alloc (3, 3));
+      }
+      for (int k = 0; k < nblocks-1; k++) {
+         K.setRandom (-0.5, 0.5, randGen);
+         K.mulTranspose (K);
+         S.addBlock (k, k+1, MatrixBlockBase.alloc (3, 3));
+         S.addBlock (k+1, k, MatrixBlockBase.alloc (3, 3));
+         S.getBlock (k, k).add (K);
+         S.getBlock (k+1, k+1).add (K);
+         S.getBlock (k, k+1).sub (K);
+         S.getBlock (k+1, k).sub (K);
+      }
+      for (int i = 0; i < S.rowSize(); i++) {
+         S.set (i, i, S.get (i, i) + 0.01);
+      }
+      return S;
+   }
+
+   /**
+    * Checks that multi-threaded solves give the same answer regardless of
+    * the number of threads.
+    */
+   public void testThreads() {
+      int saveRows = ParallelMatrixOps.minParallelRows;
+      int saveSize = ParallelMatrixOps.minParallelSize;
+      ParallelMatrixOps.minParallelRows = 0;
+      ParallelMatrixOps.minParallelSize = 0;
+      try {
+         SparseBlockMatrix S = createBlockTridiagonal (2000);
+         VectorNd b = new VectorNd (S.rowSize());
+         b.setRandom (-0.5, 0.5, randGen);
+         VectorNd x1 = null;
+         for (int nthreads = 1; nthreads <= 4; nthreads++) {
+            CGSolver solver = new CGSolver();
+            solver.setNumThreads (nthreads);
+            VectorNd x = new VectorNd (S.rowSize());
+            solver.solve (x, S, b, 1e-10, 500);
+            if (nthreads == 2) {
+               x1 = x;
+            }
+            else if (nthreads > 2 && !x.equals (x1)) {
+               throw new TestException (
+                  "Solution with "+nthreads+" threads differs");
+            }
+            solver.setNumThreads (1);
+         }
+      }
+      finally {
+         ParallelMatrixOps.minParallelRows = saveRows;
+         ParallelMatrixOps.minParallelSize = saveSize;
+      }
+   }
+
+   private void checkPackedSolve (
+      CGSolver solver, SparseBlockMatrix S, VectorNd b, String msg) {
+      CGSolver check = new CGSolver();
+      VectorNd xcheck = new VectorNd (S.rowSize());
+      check.solve (xcheck, S, b, 1e-10, 500);
+      VectorNd x = new VectorNd (S.rowSize());
+      solver.solve (x, S, b, 1e-10, 500);
+      if (!x.epsilonEquals (xcheck, 1e-8*xcheck.norm())) {
+         throw new TestException (
+            msg + ": packed solution differs from unpacked solution");
+      }
+   }
+
+   /**
+    * Checks that solves using a packed copy of a SparseBlockMatrix match
+    * unpacked solves, and that the packed copy is reused when only the
+    * matrix values change.
+    */
+   public void testPacking() {
+      int saveRows = ParallelMatrixOps.minParallelRows;
+      ParallelMatrixOps.minParallelRows = 0;
+      try {
+         testPacking (createBlockTridiagonal (500));
+      }
+      finally {
+         ParallelMatrixOps.minParallelRows = saveRows;
+      }
+   }
+
+   private void testPacking (SparseBlockMatrix S) {
+      VectorNd b = new VectorNd (S.rowSize());
+      b.setRandom (-0.5, 0.5, randGen);
+      for (int nthreads = 1; nthreads <= 2; nthreads++) {
+         CGSolver solver = new CGSolver();
+         solver.setNumThreads (nthreads);
+         solver.setPackMatrix (true);
+         checkPackedSolve (solver, S, b, "initial solve");
+         PackedBlockMatrix packed = solver.myPackedMatrix;
+         if (packed == null || packed.getSource() != S) {
+            throw new TestException ("packed matrix not created");
+         }
+
+         // changed values should be reloaded into the same packed matrix
+         for (int bi = 0; bi < S.numBlockRows(); bi++) {
+            S.getBlock (bi, bi).scale (1.5);
+         }
+         checkPackedSolve (solver, S, b, "changed values");
+         if (solver.myPackedMatrix != packed) {
+            throw new TestException ("packed matrix not reused");
+         }
+
+         // a structure change should cause a new packed matrix
+         int nb = S.numBlockRows();
+         S.addBlock (0, nb-1, MatrixBlockBase.alloc (3, 3));
+         S.addBlock (nb-1, 0, MatrixBlockBase.alloc (3, 3));
+         checkPackedSolve (solver, S, b, "changed structure");
+         if (solver.myPackedMatrix == packed) {
+            throw new TestException ("packed matrix not rebuilt");
+         }
+         S.removeBlock (S.getBlock (0, nb-1));
+         S.removeBlock (S.getBlock (nb-1, 0));
+         solver.setNumThreads (1);
+      }
+   }
+
    public static void main (String[] args) {
       boolean dotiming = false;
       for (int i = 0; i < args.length; i++) {
@@ -222,6 +355,8 @@ public class CGSolverTest {
          }
          else {
             tester.test();
+            tester.testThreads();
+            tester.testPacking();
          }
       }
       catch (Exception e) {
@@ -7,6 +7,7 @@
 package maspack.solvers;
 
 import maspack.matrix.LinearTransformNd;
+import maspack.matrix.ParallelMatrixOps;
 import maspack.matrix.VectorNd;
 
 public class CRSolver implements IterativeSolver {
@@ -56,6 +57,55 @@ public class CRSolver implements IterativeSolver {
    double phi;
    int k;
 
+   // parallel kernels, or null if the solver is single-threaded
+   ParallelMatrixOps myParallelOps = null;
+
+   public void setNumThreads (int num) {
+      if (num > 1) {
+         if (myParallelOps == null) {
+            myParallelOps = new ParallelMatrixOps (num);
+         }
+         else {
+            myParallelOps.setNumThreads (num);
+         }
+      }
+      else if (myParallelOps != null) {
+         myParallelOps.shutdown();
+         myParallelOps = null;
+      }
+   }
+
+   public int getNumThreads() {
+      return myParallelOps != null ? myParallelOps.getNumThreads() : 1;
+   }
+
+   private void mul (VectorNd vr, LinearTransformNd A, VectorNd v1) {
+      if (myParallelOps != null) {
+         myParallelOps.mul (vr, A, v1);
+      }
+      else {
+         A.mul (vr, v1);
+      }
+   }
+
+   private double dot (VectorNd v1, VectorNd v2) {
+      if (myParallelOps != null) {
+         return myParallelOps.dot (v1, v2);
+      }
+      else {
+         return v1.dot (v2);
+      }
+   }
+
+   private void scaledAdd (VectorNd vr, double s, VectorNd v1, VectorNd v2) {
+      if (myParallelOps != null) {
+         myParallelOps.scaledAdd (vr, s, v1, v2);
+      }
+      else {
+         vr.scaledAdd (s, v1, v2);
+      }
+   }
+
    public boolean solve (
       VectorNd x, LinearTransformNd A, VectorNd b, double tol, int maxIter,
       LinearTransformNd P) {
@@ -76,11 +126,11 @@ public class CRSolver implements IterativeSolver {
       xkp.setZero();
       pkp.set (b);
       rkp.set (b);
-      A.mul (zkp, rkp);
-      A.mul (wkp, pkp);
+      mul (zkp, A, rkp);
+      mul (wkp, A, pkp);
 
       double phikp = b.norm();
-      double mukp = rkp.dot (zkp);
+      double mukp = dot (rkp, zkp);
 
       double phik = phikp;
       double muk = mukp;
@@ -91,18 +141,18 @@ public class CRSolver implements IterativeSolver {
          // System.out.println("cr iteration " + k + " " + maxIter + " " +
          // phik);
 
-         double alphak = mukp / wkp.normSquared();
-         xk.scaledAdd (alphak, pkp, xkp);
-         rk.scaledAdd (-alphak, wkp, rk);
+         double alphak = mukp / dot (wkp, wkp);
+         scaledAdd (xk, alphak, pkp, xkp);
+         scaledAdd (rk, -alphak, wkp, rk);
 
-         phik = rk.norm();
+         phik = Math.sqrt (dot (rk, rk));
 
-         A.mul (zk, rk);
-         muk = rk.dot (zk);
+         mul (zk, A, rk);
+         muk = dot (rk, zk);
 
          double betak = muk / mukp;
-         pk.scaledAdd (betak, pkp, rk);
-         wk.scaledAdd (betak, wkp, zk);
+         scaledAdd (pk, betak, pkp, rk);
+         scaledAdd (wk, betak, wkp, zk);
 
          k++;
 
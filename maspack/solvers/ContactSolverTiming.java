@@ -0,0 +1,235 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.solvers;
+
+import maspack.matrix.*;
+import maspack.util.FunctionTimer;
+import maspack.util.RandomGenerator;
+import argparser.*;
+
+/**
+ * Compares the timing of the {@link KKTSolver.ContactSolverType#Dantzig
+ * Dantzig} and {@link KKTSolver.ContactSolverType#APGD APGD} contact solvers
+ * in {@link KKTSolver}, for a stiffness matrix with the structure of a
+ * hexahedral FEM grid and an increasing number of randomly placed contacts.
+ * The times include both the factorization, which for the Dantzig solver
+ * forms the dense LCP matrix, and the solve. The Dantzig solver is also
+ * timed, with and without warm starting, for a sequence of slightly
+ * perturbed problems.
+ */
+public class ContactSolverTiming {
+
+   int myCnt = 3;
+   boolean myFriction = false;
+   double myTol = 1e-6;
+
+   /**
+    * Creates a contact constraint matrix for a stiffness matrix with 3x3
+    * blocks, with each contact acting on a randomly selected node along a
+    * random direction. If the entries of <code>dirs</code> are already set,
+    * the existing nodes are used instead, with directions perpendicular to
+    * those in <code>dirs</code>. On return, <code>nodes</code> and
+    * <code>dirs</code> contain the contact nodes and directions.
+    */
+   static SparseBlockMatrix createContactMatrix (
+      int numNodes, int numc, int[] nodes, Vector3d[] dirs) {
+      int[] rowSizes = new int[numNodes];
+      for (int i=0; i<numNodes; i++) {
+         rowSizes[i] = 3;
+      }
+      int[] colSizes = new int[numc];
+      for (int j=0; j<numc; j++) {
+         colSizes[j] = 1;
+      }
+      SparseBlockMatrix NT = new SparseBlockMatrix (rowSizes, colSizes);
+      for (int j=0; j<numc; j++) {
+         Vector3d dir = new Vector3d();
+         if (dirs[j] == null) {
+            nodes[j] = RandomGenerator.nextInt (0, numNodes-1);
+            dir.setRandom();
+         }
+         else {
+            dir.perpendicular (dirs[j]);
+         }
+         dir.normalize();
+         dirs[j] = dir;
+         Matrix3x1Block blk = new Matrix3x1Block();
+         blk.set (dir);
+         NT.addBlock (nodes[j], j, blk);
+      }
+      return NT;
+   }
+
+   /**
+    * Times the factorization and contact solve for a given number of
+    * contacts, using each of the contact solver types.
+    */
+   public void time (SparseBlockMatrix M, int numc) {
+      int size = M.rowSize();
+      int numNodes = M.numBlockRows();
+      FunctionTimer timer = new FunctionTimer();
+
+      int[] nodes = new int[numc];
+      Vector3d[] dirs = new Vector3d[numc];
+      SparseBlockMatrix NT = createContactMatrix (numNodes, numc, nodes, dirs);
+      SparseBlockMatrix DT = null;
+      int[] rowSizes = new int[numNodes];
+      for (int i=0; i<numNodes; i++) {
+         rowSizes[i] = 3;
+      }
+      SparseBlockMatrix GT = new SparseBlockMatrix (rowSizes, new int[0]);
+      VectorNd Rg = new VectorNd (0);
+      VectorNd Rn = new VectorNd (numc);
+      VectorNd bm = new VectorNd (size);
+      VectorNd bg = new VectorNd (0);
+      VectorNd bn = new VectorNd (numc);
+      VectorNd bd = null;
+      VectorNd flim = null;
+      bm.setRandom();
+      bn.setRandom (-1, 0.5);
+      if (myFriction) {
+         DT = createContactMatrix (numNodes, numc, nodes, dirs);
+         bd = new VectorNd (numc);
+         flim = new VectorNd (numc);
+         flim.setRandom (0.1, 1.0);
+      }
+      VectorNd vel = new VectorNd (size);
+      VectorNd lam = new VectorNd (0);
+      VectorNd the = new VectorNd (numc);
+      VectorNd phi = new VectorNd (myFriction ? numc : 0);
+      VectorNd velDantzig = new VectorNd (size);
+
+      System.out.println (
+         "contacts=" + numc + (myFriction ? " (with friction)" : ""));
+      KKTSolver.ContactSolverType[] types =
+         KKTSolver.ContactSolverType.values();
+      for (KKTSolver.ContactSolverType type : types) {
+         KKTSolver solver =
+            new KKTSolver (KKTSolver.DirectSolverType.Supernodal);
+         solver.setContactSolverType (type);
+         solver.setContactSolverTolerance (myTol);
+         solver.setContactSolverMaxIterations (10000);
+         solver.analyze (M, size, GT, Rg, Matrix.SPD);
+         KKTSolver.Status status = null;
+         timer.start();
+         for (int i=0; i<myCnt; i++) {
+            the.setZero();
+            if (myFriction) {
+               phi.setZero();
+               solver.factor (M, size, GT, Rg, NT, Rn, DT);
+               status = solver.solve (
+                  vel, lam, the, phi, bm, bg, bn, bd, flim);
+            }
+            else {
+               solver.factor (M, size, GT, Rg, NT, Rn);
+               status = solver.solve (vel, lam, the, bm, bg, bn);
+            }
+         }
+         timer.stop();
+         String msg = "  " + type + ": factor+solve=" + timer.resultMsec(myCnt);
+         if (type == KKTSolver.ContactSolverType.Dantzig) {
+            velDantzig.set (vel);
+         }
+         else {
+            msg += " iters=" + solver.getContactSolverIterations() +
+               " res=" + solver.getContactSolverResidual() +
+               " velErr=" +
+               vel.distance (velDantzig)/velDantzig.norm();
+         }
+         if (status != KKTSolver.Status.SOLVED) {
+            msg += " status=" + status;
+         }
+         System.out.println (msg);
+         solver.dispose();
+      }
+
+      // Dantzig solves of a sequence of slightly perturbed problems, as would
+      // occur over successive time steps, with and without warm starting
+      int numSteps = 10;
+      VectorNd bn0 = new VectorNd (bn);
+      VectorNd[] dbn = new VectorNd[numSteps];
+      for (int i=0; i<numSteps; i++) {
+         dbn[i] = new VectorNd (numc);
+         dbn[i].setRandom (-1e-3, 1e-3);
+      }
+      for (int k=0; k<2; k++) {
+         boolean warm = (k == 1);
+         KKTSolver solver =
+            new KKTSolver (KKTSolver.DirectSolverType.Supernodal);
+         solver.analyze (M, size, GT, Rg, Matrix.SPD);
+         if (myFriction) {
+            solver.factor (M, size, GT, Rg, NT, Rn, DT);
+         }
+         else {
+            solver.factor (M, size, GT, Rg, NT, Rn);
+         }
+         bn.set (bn0);
+         the.setZero();
+         phi.setZero();
+         // initial solve to obtain impulses for the first warm start
+         if (myFriction) {
+            solver.solve (vel, lam, the, phi, bm, bg, bn, bd, flim);
+         }
+         else {
+            solver.solve (vel, lam, the, bm, bg, bn);
+         }
+         solver.setContactSolverWarmStart (warm);
+         int pivots = 0;
+         int warmCnt = 0;
+         timer.start();
+         for (int i=0; i<numSteps; i++) {
+            bn.add (dbn[i]);
+            if (myFriction) {
+               solver.solve (vel, lam, the, phi, bm, bg, bn, bd, flim);
+            }
+            else {
+               solver.solve (vel, lam, the, bm, bg, bn);
+            }
+            pivots += solver.getContactSolverIterations();
+            if (solver.getContactSolverWarmStarted()) {
+               warmCnt++;
+            }
+         }
+         timer.stop();
+         System.out.println (
+            "  Dantzig sequence" + (warm ? " (warm)" : "") + ": solve=" +
+            timer.resultMsec(numSteps) + " pivots=" + pivots/numSteps +
+            (warm ? " warmStarts=" + warmCnt + "/" + numSteps : ""));
+         solver.dispose();
+      }
+      bn.set (bn0);
+   }
+
+   public static void main (String[] args) {
+      IntHolder gridSize = new IntHolder (8);
+      IntHolder maxContacts = new IntHolder (800);
+      IntHolder cnt = new IntHolder (3);
+      DoubleHolder tol = new DoubleHolder (1e-6);
+      BooleanHolder friction = new BooleanHolder (false);
+
+      ArgParser parser =
+         new ArgParser ("java maspack.solvers.ContactSolverTiming");
+      parser.addOption ("-grid %d # elements per side of the grid", gridSize);
+      parser.addOption (
+         "-maxContacts %d # maximum number of contacts", maxContacts);
+      parser.addOption ("-cnt %d # number of timed solves", cnt);
+      parser.addOption ("-tol %f # APGD contact solver tolerance", tol);
+      parser.addOption ("-friction %v # add friction constraints", friction);
+      parser.matchAllArgs (args);
+
+      RandomGenerator.setSeed (0x1234);
+      ContactSolverTiming timing = new ContactSolverTiming();
+      timing.myCnt = Math.max (cnt.value, 1);
+      timing.myTol = tol.value;
+      timing.myFriction = friction.value;
+      SparseBlockMatrix M =
+         SupernodalSolverTiming.createGridMatrix (gridSize.value);
+      for (int numc=50; numc<=maxContacts.value; numc *= 2) {
+         timing.time (M, numc);
+      }
+   }
+}
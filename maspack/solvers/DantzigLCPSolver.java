@@ -82,6 +82,7 @@ public class DantzigLCPSolver {
    protected double myTol;
    protected int myIterationLimit = 10;
    protected int myIterationCnt;
+   protected boolean myWarmStarted = false;
    protected boolean myComputeResidual = false;
    protected double myResidual = 0;
 
@@ -223,6 +224,18 @@ public class DantzigLCPSolver {
       return myIterationCnt;
    }
 
+   /**
+    * Returns true if the most recent call to one of the <code>warmSolve</code>
+    * methods was able to start from the supplied basis. If false, either
+    * the most recent solve was not a warm solve, or the supplied basis was
+    * infeasible and the solve started from scratch.
+    *
+    * @return true if the last solve was warm started
+    */
+   public boolean wasWarmStarted() {
+      return myWarmStarted;
+   }
+
    /**
     * Returns the current pivoted value of q in an array of doubles. Subclasses
     * can override this method if they have a particularly efficient way of
@@ -383,6 +396,47 @@ public class DantzigLCPSolver {
     * @return Status of the solution.
     */
    public Status solve (VectorNd z, MatrixNd M, VectorNd q, boolean[] zBasic) {
+      return solveLCP (z, M, q, zBasic, /*warm=*/false);
+   }
+
+   /**
+    * Solves the LCP
+    * 
+    * <pre>
+    * w = M z + q
+    * </pre>
+    * 
+    * where M is SPSD, starting the pivoting from an initial guess of which z
+    * variables are basic. This is useful when solving a sequence of closely
+    * related problems, such as the contact problems for successive simulation
+    * steps, for which the basis changes little between problems. If the basic
+    * z values resulting from the guess are infeasible (i.e., negative), or
+    * the associated submatrix of M is not positive definite, then the guess
+    * is discarded and the solve proceeds as for {@link
+    * #solve(VectorNd,MatrixNd,VectorNd,boolean[]) solve()}. {@link
+    * #wasWarmStarted} can be used to determine whether the guess was used.
+    * 
+    * @param z
+    * returns the solution for z
+    * @param M
+    * system matrix
+    * @param q
+    * system vector
+    * @param zBasic
+    * On input, identifies the z variables which are guessed to be basic. On
+    * output, identifies which z variables are basic in the solution.
+    * @return Status of the solution.
+    */
+   public Status warmSolve (
+      VectorNd z, MatrixNd M, VectorNd q, boolean[] zBasic) {
+      if (zBasic == null) {
+         throw new IllegalArgumentException ("zBasic must be specified");
+      }
+      return solveLCP (z, M, q, zBasic, /*warm=*/true);
+   }
+
+   private Status solveLCP (
+      VectorNd z, MatrixNd M, VectorNd q, boolean[] zBasic, boolean warm) {
       if (M.rowSize() != M.colSize()) {
          throw new IllegalArgumentException ("Matrix is not square");
       }
@@ -402,20 +456,26 @@ public class DantzigLCPSolver {
       myZBuf = z.getBuffer();
       setProblemSize (size);
       myWBuf = new double[size];
-      myCholesky.clear();
       myM = M;
       myQ = q;
       M.get (myMvBuf);
       q.get (myQvBuf);
+      myLo = null;
+      myHi = null;
       if (myLocalStateBuf.length < mySize) {
          myLocalStateBuf = new int[mySize];
       }
       myState = myLocalStateBuf;
-      for (int i = 0; i < size; i++) {
-         myState[i] = W_VAR_LOWER;
-         myPivotedToInitialIdxs[i] = i;
+      myWarmStarted = false;
+      if (warm) {
+         for (int i = 0; i < size; i++) {
+            myState[i] = (zBasic[i] ? Z_VAR : W_VAR_LOWER);
+         }
+         myWarmStarted = initializeWarmBasis (0);
+      }
+      if (!myWarmStarted) {
+         initializeColdBasis (0);
       }
-      myNumZBasic = 0;
       Status status = dosolve (size);
       // z.set (myZBuf);
       if (zBasic != null) {
@@ -429,6 +489,135 @@ public class DantzigLCPSolver {
       return status;
    }
 
+   /**
+    * Sets all variables beyond the first <code>nub</code> to be non-basic,
+    * with z values at their lower bound (or upper bound if the lower bound is
+    * -infinity), and computes the corresponding values of w. For the
+    * standard LCP, the lower bound is 0.
+    */
+   private void initializeColdBasis (int nub) {
+      myCholesky.clear();
+      for (int i = 0; i < mySize; i++) {
+         myPivotedToInitialIdxs[i] = i;
+      }
+      myNumZBasic = 0;
+      double[] qbuf = myQ.getBuffer();
+      if (myLo == null) {
+         for (int i = 0; i < mySize; i++) {
+            myState[i] = W_VAR_LOWER;
+            myWBuf[i] = qbuf[i];
+            myZBuf[i] = 0;
+         }
+      }
+      else {
+         setBoundedVariables (nub);
+      }
+   }
+
+   /**
+    * Sets up an initial basis from the variable states given in myState,
+    * with the first <code>nub</code> variables assumed to be unbounded.  The
+    * z values of the basic variables are solved for, given the z values of
+    * the non-basic variables as determined by their state, and the w values
+    * of the non-basic variables are then computed. Basic variables whose
+    * addition would make the basis matrix singular are made non-basic
+    * instead. Returns false if the basic z values are not within their
+    * bounds, in which case the basis cannot be used as a starting point.
+    */
+   private boolean initializeWarmBasis (int nub) {
+      double[] Mbuf = myM.getBuffer();
+      double[] xbuf = myX.getBuffer();
+      double[] qbuf = myQ.getBuffer();
+      int mw = myM.getBufferWidth();
+
+      myTol = myDefaultTol;
+      myCholesky.clear();
+      for (int i = 0; i < mySize; i++) {
+         myPivotedToInitialIdxs[i] = i;
+      }
+      myNumZBasic = 0;
+      for (int j = 0; j < mySize; j++) {
+         if (j < nub || myState[j] == Z_VAR) {
+            // updateZBasis adds j only if it is not currently a Z_VAR
+            myState[j] = W_VAR_LOWER;
+            if (updateZBasis (j)) {
+               myState[j] = Z_VAR;
+            }
+            else if (j < nub) {
+               throw new IllegalArgumentException (
+                  "unbounded variable basis is not positive definite");
+            }
+         }
+      }
+      // set the non-basic z values from their states
+      for (int j = 0; j < mySize; j++) {
+         if (myState[j] == Z_VAR) {
+            myZBuf[j] = 0;
+         }
+         else if (myLo == null) {
+            myState[j] = W_VAR_LOWER;
+            myZBuf[j] = 0;
+         }
+         else if (myState[j] == W_VAR_UPPER &&
+                  myHi[j] != Double.POSITIVE_INFINITY) {
+            myZBuf[j] = myHi[j];
+         }
+         else if (myLo[j] != Double.NEGATIVE_INFINITY) {
+            myState[j] = W_VAR_LOWER;
+            myZBuf[j] = myLo[j];
+         }
+         else {
+            myState[j] = W_VAR_UPPER;
+            myZBuf[j] = myHi[j];
+         }
+      }
+      // solve for the basic z values
+      if (myNumZBasic > 0) {
+         for (int ip = 0; ip < myNumZBasic; ip++) {
+            int i = myPivotedToInitialIdxs[ip];
+            double sum = qbuf[i];
+            for (int j = 0; j < mySize; j++) {
+               double z = myZBuf[j];
+               if (z != 0) {
+                  sum += Mbuf[i * mw + j] * z;
+               }
+            }
+            xbuf[ip] = -sum;
+         }
+         myCholesky.solve (myX, myX);
+         for (int ip = 0; ip < myNumZBasic; ip++) {
+            int i = myPivotedToInitialIdxs[ip];
+            double z = xbuf[ip];
+            if (i >= nub) {
+               double lo = (myLo != null ? myLo[i] : 0);
+               double hi = (myHi != null ? myHi[i] : Double.POSITIVE_INFINITY);
+               if (z < lo - myTol || z > hi + myTol) {
+                  return false;
+               }
+               z = Math.min (Math.max (z, lo), hi);
+            }
+            myZBuf[i] = z;
+         }
+      }
+      // compute w values
+      for (int i = 0; i < mySize; i++) {
+         if (myState[i] == Z_VAR) {
+            myWBuf[i] = 0;
+         }
+         else {
+            double sum = qbuf[i];
+            for (int j = 0; j < mySize; j++) {
+               double z = myZBuf[j];
+               if (z != 0) {
+                  sum += Mbuf[i * mw + j] * z;
+               }
+            }
+            myWBuf[i] = sum;
+         }
+      }
+      return true;
+   }
+
    protected double computeResidual (VectorNd z, MatrixNd M, VectorNd q) {
       VectorNd w = new VectorNd (z.size());
       M.mul (w, z);
@@ -509,6 +698,45 @@ public class DantzigLCPSolver {
    public Status solve (
       VectorNd z, VectorNd w, MatrixNd M, VectorNd q, VectorNd lo, VectorNd hi,
       int nub, int[] state) {
+      return solveBLCP (z, w, M, q, lo, hi, nub, state, /*warm=*/false);
+   }
+
+   /**
+    * Solves a bounded LCP, in the same way as {@link
+    * #solve(VectorNd,VectorNd,MatrixNd,VectorNd,VectorNd,VectorNd,int,int[])
+    * solve()}, except that the pivoting starts from an initial guess of the
+    * variable states. Variables whose state is {@link #Z_VAR} are guessed to
+    * be basic, while those whose state is {@link #W_VAR_LOWER} or {@link
+    * #W_VAR_UPPER} are guessed to be non-basic at their lower or upper
+    * bound. This is typically the state from a previous, closely related
+    * problem. If the basic z values resulting from the guess are not within
+    * their bounds, the guess is discarded and the pivoting starts from
+    * scratch. {@link #wasWarmStarted} can be used to determine whether the
+    * guess was used.
+    *
+    * @param z returns the solution for z
+    * @param w returns the solution for w
+    * @param M system matrix
+    * @param q system vector
+    * @param lo lower bounds for z
+    * @param hi upper bounds for z
+    * @param nub number of leading unbounded variables
+    * @param state on input, the guessed variable states; on output, the
+    * variable states in the solution
+    * @return Status of the solution.
+    */
+   public Status warmSolve (
+      VectorNd z, VectorNd w, MatrixNd M, VectorNd q, VectorNd lo, VectorNd hi,
+      int nub, int[] state) {
+      if (state == null) {
+         throw new IllegalArgumentException ("state must be specified");
+      }
+      return solveBLCP (z, w, M, q, lo, hi, nub, state, /*warm=*/true);
+   }
+
+   private Status solveBLCP (
+      VectorNd z, VectorNd w, MatrixNd M, VectorNd q, VectorNd lo, VectorNd hi,
+      int nub, int[] state, boolean warm) {
       if (M.rowSize() != M.colSize()) {
          throw new IllegalArgumentException ("Matrix is not square");
       }
@@ -529,8 +757,8 @@ public class DantzigLCPSolver {
          myState = state;
       }
       else {
-         if (myLocalStateBuf.length < mySize) {
-            myLocalStateBuf = new int[mySize];
+         if (myLocalStateBuf.length < size) {
+            myLocalStateBuf = new int[size];
          }
          myState = myLocalStateBuf;
       }
@@ -539,17 +767,19 @@ public class DantzigLCPSolver {
       myZBuf = z.getBuffer();
       myWBuf = w.getBuffer();
       setProblemSize (size);
-      myCholesky.clear();
       myM = M;
       myQ = q;
       myLo = lo.getBuffer();
       myHi = hi.getBuffer();
       M.get (myMvBuf);
-      for (int i = 0; i < size; i++) {
-         myState[i] = W_VAR_LOWER;
-         myPivotedToInitialIdxs[i] = i;
+      checkBounds (nub);
+      myWarmStarted = false;
+      if (warm) {
+         myWarmStarted = initializeWarmBasis (nub);
+      }
+      if (!myWarmStarted) {
+         initializeColdBasis (nub);
       }
-      myNumZBasic = 0;
       Status status = dosolveBLCP (size, nub);
       return status;
    }
@@ -625,11 +855,8 @@ public class DantzigLCPSolver {
 
       boolean mixed = false;
 
-      double[] qbuf = myQ.getBuffer();
       for (int i = 0; i < n; i++) {
          myPivotOK[i] = true;
-         myWBuf[i] = qbuf[i];
-         myZBuf[i] = 0;
       }
       while (myIterationCnt < maxIterations) {
          int r = -1;
@@ -847,37 +1074,18 @@ public class DantzigLCPSolver {
       }
    }
 
-   protected Status dosolveBLCP (int n, int nub) {
-      int maxIterations = myIterationLimit * n;
-      myIterationCnt = 0;
-
-      if (myPivotOK.length < mySize) {
-         myPivotOK = new boolean[mySize];
-      }
-
-      double[] Mbuf = myM.getBuffer();
-      double[] xbuf = myX.getBuffer();
-      double[] qbuf = myQ.getBuffer();
-      int mw = myM.getBufferWidth();
-
+   /**
+    * Checks that the lower and upper bounds are consistent with the number
+    * of unbounded variables <code>nub</code>.
+    */
+   private void checkBounds (int nub) {
       for (int j = 0; j < nub; j++) {
-         myX.setSize (j + 1);
-         for (int i = 0; i <= j; i++) {
-            xbuf[i] = Mbuf[i * mw + j];
-         }
          if (myLo[j] != Double.NEGATIVE_INFINITY ||
              myHi[j] != Double.POSITIVE_INFINITY) {
             throw new IllegalArgumentException ("unbounded variable " + j
             + " must have lo/hi settings -inf/+inf");
          }
-         if (!myCholesky.addRowAndColumn (myX, 0)) {
-            throw new IllegalArgumentException (
-               "unbounded variable basis is not positive definite");
-         }
-         myState[j] = Z_VAR;
-         myWBuf[j] = 0;
       }
-      myNumZBasic = nub;
       for (int j = nub; j < mySize; j++) {
          if (myLo[j] == Double.NEGATIVE_INFINITY &&
              myHi[j] == Double.POSITIVE_INFINITY) {
@@ -892,6 +1100,34 @@ public class DantzigLCPSolver {
             throw new IllegalArgumentException ("hi[" + j
             + "] set to -infinity");
          }
+      }
+   }
+
+   /**
+    * Makes the first <code>nub</code> variables basic, sets all other
+    * variables to be non-basic at one of their bounds, and computes the
+    * corresponding z and w values.
+    */
+   private void setBoundedVariables (int nub) {
+      double[] Mbuf = myM.getBuffer();
+      double[] xbuf = myX.getBuffer();
+      double[] qbuf = myQ.getBuffer();
+      int mw = myM.getBufferWidth();
+
+      for (int j = 0; j < nub; j++) {
+         myX.setSize (j + 1);
+         for (int i = 0; i <= j; i++) {
+            xbuf[i] = Mbuf[i * mw + j];
+         }
+         if (!myCholesky.addRowAndColumn (myX, 0)) {
+            throw new IllegalArgumentException (
+               "unbounded variable basis is not positive definite");
+         }
+         myState[j] = Z_VAR;
+         myWBuf[j] = 0;
+      }
+      myNumZBasic = nub;
+      for (int j = nub; j < mySize; j++) {
          if (myLo[j] == Double.NEGATIVE_INFINITY) {
             myState[j] = W_VAR_UPPER;
             myZBuf[j] = myHi[j];
@@ -931,6 +1167,16 @@ public class DantzigLCPSolver {
             }
          }
       }
+   }
+
+   protected Status dosolveBLCP (int n, int nub) {
+      int maxIterations = myIterationLimit * n;
+      myIterationCnt = 0;
+
+      if (myPivotOK.length < mySize) {
+         myPivotOK = new boolean[mySize];
+      }
+
       checkWValues();
       myTol = myDefaultTol;
 
@@ -970,6 +970,123 @@ public class DantzigLCPSolverTest {
       }
    }
 
+   private void checkSolved (DantzigLCPSolver.Status status, String msg) {
+      if (status != DantzigLCPSolver.Status.SOLVED) {
+         throw new TestException (msg + " returned " + status);
+      }
+   }
+
+   private void checkWarmSolution (VectorNd zwarm, VectorNd zcold) {
+      double tol = 1e-8 * Math.max (1, zcold.infinityNorm());
+      if (!zwarm.epsilonEquals (zcold, tol)) {
+         throw new TestException (
+            "warm started z=\n" + zwarm.toString ("%12.8f") +
+            "\nexpected\n" + zcold.toString ("%12.8f"));
+      }
+   }
+
+   /**
+    * Checks warm started solves, by solving sequences of slightly perturbed
+    * problems, each warm started from the basis of the one before, and
+    * comparing the results with those of cold solves.
+    */
+   public void testWarmStart() {
+      int size = 50;
+      MatrixNd M = new MatrixNd (size, size);
+      VectorNd q = new VectorNd (size);
+      VectorNd x = new VectorNd (size);
+      VectorNd dq = new VectorNd (size);
+      VectorNd zcold = new VectorNd (size);
+      VectorNd zwarm = new VectorNd (size);
+      boolean[] zBasicCold = new boolean[size];
+      boolean[] zBasicWarm = new boolean[size];
+      int coldPivots = 0;
+      int warmPivots = 0;
+
+      for (int i = 0; i < 100; i++) {
+         M.setRandom();
+         x.setRandom();
+         q.mul (M, x);
+         M.mulTransposeRight (M, M);
+         checkSolved (mySolver.solve (zcold, M, q, zBasicWarm), "solve");
+         // warm solving the same problem should require no pivots
+         checkSolved (mySolver.warmSolve (zwarm, M, q, zBasicWarm), "warmSolve");
+         if (!mySolver.wasWarmStarted() || mySolver.getIterationCount() != 0) {
+            throw new TestException (
+               "warm start from solution basis took " +
+               mySolver.getIterationCount() + " pivots");
+         }
+         checkWarmSolution (zwarm, zcold);
+         double mag = q.infinityNorm();
+         for (int k = 0; k < 10; k++) {
+            dq.setRandom (-0.01 * mag, 0.01 * mag);
+            q.add (dq);
+            checkSolved (mySolver.solve (zcold, M, q, zBasicCold), "solve");
+            coldPivots += mySolver.getIterationCount();
+            checkSolved (
+               mySolver.warmSolve (zwarm, M, q, zBasicWarm), "warmSolve");
+            warmPivots += mySolver.getIterationCount();
+            checkWarmSolution (zwarm, zcold);
+         }
+      }
+      if (warmPivots >= coldPivots) {
+         throw new TestException (
+            "warm started LCP solves used " + warmPivots +
+            " pivots, vs. " + coldPivots + " for cold solves");
+      }
+
+      size = 15;
+      int nub = 3;
+      M.setSize (size, size);
+      q.setSize (size);
+      dq.setSize (size);
+      zcold.setSize (size);
+      zwarm.setSize (size);
+      VectorNd w = new VectorNd (size);
+      VectorNd lo = new VectorNd (new double[] {
+            -inf, -inf, -inf, 0, 0, 0, 0, -inf, -inf, -inf, -inf,
+            -2, -2, -2, -2 });
+      VectorNd hi = new VectorNd (new double[] {
+            inf, inf, inf, inf, inf, inf, inf, 0, 0, 0, 0, 2, 2, 2, 2 });
+      int[] stateCold = new int[size];
+      int[] stateWarm = new int[size];
+      coldPivots = 0;
+      warmPivots = 0;
+      for (int i = 0; i < 100; i++) {
+         createTestCase (M, q, lo, hi, nub, 7, size);
+         checkSolved (
+            mySolver.solve (zcold, w, M, q, lo, hi, nub, stateWarm), "solve");
+         checkSolved (
+            mySolver.warmSolve (zwarm, w, M, q, lo, hi, nub, stateWarm),
+            "warmSolve");
+         if (!mySolver.wasWarmStarted() || mySolver.getIterationCount() != 0) {
+            throw new TestException (
+               "bounded warm start from solution basis took " +
+               mySolver.getIterationCount() + " pivots");
+         }
+         checkWarmSolution (zwarm, zcold);
+         double mag = q.infinityNorm();
+         for (int k = 0; k < 10; k++) {
+            dq.setRandom (-0.01 * mag, 0.01 * mag);
+            q.add (dq);
+            checkSolved (
+               mySolver.solve (zcold, w, M, q, lo, hi, nub, stateCold),
+               "solve");
+            coldPivots += mySolver.getIterationCount();
+            checkSolved (
+               mySolver.warmSolve (zwarm, w, M, q, lo, hi, nub, stateWarm),
+               "warmSolve");
+            warmPivots += mySolver.getIterationCount();
+            checkWarmSolution (zwarm, zcold);
+         }
+      }
+      if (warmPivots >= coldPivots) {
+         throw new TestException (
+            "warm started BLCP solves used " + warmPivots +
+            " pivots, vs. " + coldPivots + " for cold solves");
+      }
+   }
+
    public void execute() {
       testSpecial (Mvals0, qvals0);
       testSpecial (Mvals1, qvals1, loVals1, hiVals1, 0);
@@ -1054,6 +1171,7 @@ public class DantzigLCPSolverTest {
       for (double ang = 0; ang < Math.toRadians (45); ang += Math.toRadians (5)) {
          testMultiPointContact (ang, 0.3);
       }
+      testWarmStart();
 
       // System.out.println ("average time, matrix size of 50: " +
       // timer.result(2*numRandomTests) +
@@ -201,7 +201,6 @@ public class IncompleteCholeskyDecomposition implements LinearTransformNd {
          if (vii <= 0) {
             vii = cellij.value;
          }
-         System.out.println (vii);
          vii = Math.sqrt (vii);
          cellij.value = vii;
 
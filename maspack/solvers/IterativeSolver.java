@@ -28,6 +28,27 @@ public interface IterativeSolver {
 
    public int getNumIterations();
 
+   /**
+    * Sets the number of threads used for matrix-vector products and vector
+    * operations. The results should not depend on the number of threads.
+    * The default implementation does nothing, for solvers that are
+    * single-threaded.
+    *
+    * @param num number of threads
+    */
+   public default void setNumThreads (int num) {
+   }
+
+   /**
+    * Returns the number of threads used for matrix-vector products and
+    * vector operations. The default implementation returns 1.
+    *
+    * @return number of threads
+    */
+   public default int getNumThreads() {
+      return 1;
+   }
+
    public boolean solve (VectorNd x, LinearTransformNd A, VectorNd b);
 
    public double getRelativeResidual();
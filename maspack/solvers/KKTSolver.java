@@ -33,6 +33,8 @@ public class KKTSolver {
    SparseBlockMatrix myGT;
    UmfpackSolver myUmfpack;
    PardisoSolver myPardiso;
+   SupernodalSolver mySupernodal;
+   DirectSolverType myDirectSolverType;
    DirectSolver myMatrixSolver;
    boolean myIndices1Based = false;
    boolean myLastSolveWasIterative = false;
@@ -51,6 +53,20 @@ public class KKTSolver {
    int[] myLocalOffs = new int[0];
    double[] myVals = new double[0];
 
+   // structure of the most recent analysis performed by the direct solver
+   int myAnalyzedSize = -1;
+   int myAnalyzedNumVals = 0;
+   int myAnalyzedType = 0;
+   int[] myAnalyzedRowOffs = new int[0];
+   int[] myAnalyzedColIdxs = new int[0];
+   // rows whose diagonal was zero, since ordering and pivoting depend on this
+   boolean[] myAnalyzedZeroDiag = new boolean[0];
+
+   int myNumAnalyzeCalls = 0;
+   int myNumAnalyses = 0;
+   int myNumOrderings = 0;
+   int myNumFactorizations = 0;
+
    VectorNd myMGx = new VectorNd();
    VectorNd myMGy = new VectorNd();
 
@@ -65,6 +81,27 @@ public class KKTSolver {
    VectorNd myHi = new VectorNd();
    VectorNd myW = new VectorNd();
 
+   // settings and workspace for the implicit (APGD) contact solver
+   ContactSolverType myContactSolverType = ContactSolverType.Dantzig;
+   ContactSolverType myLcpType; // type used to set up the current LCP
+   boolean myContactWarmStart = false;
+   boolean myContactWarmStarted = false;
+   double myContactTol = 1e-6;
+   int myContactMaxIterations = 500;
+   int myContactIterations = 0;
+   int myContactMulCount = 0;
+   double myContactResidual = 0;
+   VectorNd myRn;
+   VectorNd myPgY = new VectorNd();
+   VectorNd myPgMz = new VectorNd();
+   VectorNd myPgMy = new VectorNd();
+   VectorNd myPgZ1 = new VectorNd();
+   VectorNd myPgMz1 = new VectorNd();
+   VectorNd myPgGrad = new VectorNd();
+   VectorNd myPgBest = new VectorNd();
+   VectorNd myPgN = new VectorNd();
+   VectorNd myPgD = new VectorNd();
+
    private enum State {
       NULL, ANALYZED, FACTORED
    };
@@ -94,8 +131,60 @@ public class KKTSolver {
       NUMERIC_ERROR
    };
 
+   /**
+    * Specifies which direct solver is used to factor the equality portion
+    * of the KKT system.
+    */
+   public enum DirectSolverType {
+      /**
+       * Native Pardiso solver
+       */
+      Pardiso,
+      /**
+       * Pure Java {@link SupernodalSolver}. This supports only symmetric
+       * matrices.
+       */
+      Supernodal
+   };
+
+   /**
+    * Specifies how the unilateral and friction constraints of the KKT
+    * system are solved.
+    */
+   public enum ContactSolverType {
+      /**
+       * The Schur complement of the constraints is formed explicitly, one
+       * column per constraint, and the resulting LCP is solved using
+       * {@link DantzigLCPSolver}. This gives an exact solution, but its cost
+       * grows with the cube of the number of constraints.
+       */
+      Dantzig,
+      /**
+       * The LCP is solved approximately using accelerated projected gradient
+       * descent (APGD), with the Schur complement applied implicitly using
+       * the factorization of the equality constraints. Each iteration costs
+       * one solve with this factorization. The solve is warm-started from
+       * the impulses supplied on input.
+       */
+      APGD
+   };
+
    public KKTSolver() {
-      if (myUseUmfpack) {
+      this (DirectSolverType.Pardiso);
+   }
+
+   /**
+    * Creates a KKTSolver which uses a specific type of direct solver.
+    *
+    * @param type direct solver type
+    */
+   public KKTSolver (DirectSolverType type) {
+      myDirectSolverType = type;
+      if (type == DirectSolverType.Supernodal) {
+         mySupernodal = new SupernodalSolver();
+         myMatrixSolver = mySupernodal;
+      }
+      else if (myUseUmfpack) {
          myUmfpack = new UmfpackSolver();
          myMatrixSolver = myUmfpack;
       }
@@ -105,6 +194,15 @@ public class KKTSolver {
       }
    }
 
+   /**
+    * Returns the type of direct solver used by this KKTSolver.
+    *
+    * @return direct solver type
+    */
+   public DirectSolverType getDirectSolverType() {
+      return myDirectSolverType;
+   }
+
    /**
     * Performs symbolic analysis on the equality portion of the KKT system
     * defined by M and G. This step must be called before any calls are made to
@@ -179,6 +277,8 @@ public class KKTSolver {
              UmfpackSolver.UMFPACK_OK) {
             throw new NumericalException ("Unable to analyze matrix");
          }
+         myNumAnalyses++;
+         myNumOrderings++;
       }
       else { // add 1 to indices, since Pardiso indices are 1-based
          // XXX
@@ -189,21 +289,47 @@ public class KKTSolver {
             myRowOffs[i]++;
          }
          myIndices1Based = true;
-         if ((myTypeM & Matrix.SYMMETRIC) != 0) {
-            // even if myTypeM is SPD, the KKT system won't be, so
-            // we need a symmetric solve regardless
-            myPardiso.analyze (
-               myVals, myColIdxs, myRowOffs, sizeMG, Matrix.SYMMETRIC);
-         }
-         else {
-            myPardiso.analyze (
-               myVals, myColIdxs, myRowOffs, sizeMG, Matrix.INDEFINITE);
+         // even if myTypeM is SPD, the KKT system won't be, so
+         // we need a symmetric solve regardless
+         int type = ((myTypeM & Matrix.SYMMETRIC) != 0 ?
+                     Matrix.SYMMETRIC : Matrix.INDEFINITE);
+         if (mySupernodal != null && type != Matrix.SYMMETRIC) {
+            throw new UnsupportedOperationException (
+               "SupernodalSolver does not support non-symmetric matrices; "+
+               "use a KKTSolver based on Pardiso instead");
          }
-         if (myPardiso.getState() == PardisoSolver.UNSET) {
-            throw new NumericalException (
-               "Pardiso: unable to analyze matrix: "+myPardiso.getErrorMessage());
+         // The structure version used by callers changes whenever the
+         // structure of M or G *may* have changed, so check the actual
+         // structure before doing a (possibly expensive) reanalysis. This
+         // is done only for SupernodalSolver, whose analysis depends only on
+         // the structure. Pardiso's analysis also uses the values, for
+         // scaling and matching, so it is always redone.
+         if (mySupernodal == null ||
+             !structureEqualsLastAnalysis (sizeMG, numVals, type)) {
+            if (mySupernodal != null) {
+               // order only M, and insert the constraint rows, so that the
+               // ordering can be reused when only the constraints change
+               mySupernodal.analyze (
+                  myVals, myColIdxs, myRowOffs, sizeMG, type, sizeM);
+               if (!mySupernodal.lastAnalysisReusedOrdering()) {
+                  myNumOrderings++;
+               }
+            }
+            else {
+               myPardiso.analyze (
+                  myVals, myColIdxs, myRowOffs, sizeMG, type);
+               if (myPardiso.getState() == PardisoSolver.UNSET) {
+                  throw new NumericalException (
+                     "Pardiso: unable to analyze matrix: "+
+                     myPardiso.getErrorMessage());
+               }
+               myNumOrderings++;
+            }
+            saveAnalyzedStructure (sizeMG, numVals, type);
+            myNumAnalyses++;
          }
       }
+      myNumAnalyzeCalls++;
       myMDiagonalP = (M instanceof VectorNd);
       myDirectCnt = 0;
       myDirectTimeMsec = 0;
@@ -212,6 +338,127 @@ public class KKTSolver {
       myState = State.ANALYZED;
    }
 
+   /**
+    * Returns true if the diagonal entry of row <code>i</code> in the current
+    * (1-based) CRS structure is either missing or has a value of zero.
+    */
+   private boolean isZeroDiagonal (int i) {
+      for (int k=myRowOffs[i]-1; k<myRowOffs[i+1]-1; k++) {
+         if (myColIdxs[k] == i+1) {
+            return myVals[k] == 0;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Returns true if the current (1-based) CRS structure, including which
+    * diagonal entries are zero, equals that used in the most recent analysis
+    * by the direct solver.
+    */
+   private boolean structureEqualsLastAnalysis (
+      int size, int numVals, int type) {
+      if (size != myAnalyzedSize || numVals != myAnalyzedNumVals ||
+          type != myAnalyzedType) {
+         return false;
+      }
+      for (int i=0; i<size+1; i++) {
+         if (myRowOffs[i] != myAnalyzedRowOffs[i]) {
+            return false;
+         }
+      }
+      for (int k=0; k<numVals; k++) {
+         if (myColIdxs[k] != myAnalyzedColIdxs[k]) {
+            return false;
+         }
+      }
+      for (int i=0; i<size; i++) {
+         if (isZeroDiagonal (i) != myAnalyzedZeroDiag[i]) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private void saveAnalyzedStructure (int size, int numVals, int type) {
+      if (myAnalyzedRowOffs.length < size+1) {
+         myAnalyzedRowOffs = new int[size+1];
+      }
+      if (myAnalyzedColIdxs.length < numVals) {
+         myAnalyzedColIdxs = new int[numVals];
+      }
+      System.arraycopy (myRowOffs, 0, myAnalyzedRowOffs, 0, size+1);
+      System.arraycopy (myColIdxs, 0, myAnalyzedColIdxs, 0, numVals);
+      if (myAnalyzedZeroDiag.length < size) {
+         myAnalyzedZeroDiag = new boolean[size];
+      }
+      for (int i=0; i<size; i++) {
+         myAnalyzedZeroDiag[i] = isZeroDiagonal (i);
+      }
+      myAnalyzedSize = size;
+      myAnalyzedNumVals = numVals;
+      myAnalyzedType = type;
+   }
+
+   /**
+    * Returns the number of calls to <code>analyze()</code> since the counts
+    * were last cleared.
+    *
+    * @return number of analyze calls
+    * @see #clearCounts
+    */
+   public int getNumAnalyzeCalls() {
+      return myNumAnalyzeCalls;
+   }
+
+   /**
+    * Returns the number of symbolic analyses actually performed by the
+    * direct solver since the counts were last cleared. This is less than
+    * the number of analyze calls when the matrix structure was found to be
+    * unchanged.
+    *
+    * @return number of symbolic analyses
+    * @see #clearCounts
+    */
+   public int getNumAnalyses() {
+      return myNumAnalyses;
+   }
+
+   /**
+    * Returns the number of fill-reducing orderings computed by the direct
+    * solver since the counts were last cleared. For the supernodal solver,
+    * this is less than the number of analyses when only the constraint
+    * structure changed.
+    *
+    * @return number of orderings computed
+    * @see #clearCounts
+    */
+   public int getNumOrderings() {
+      return myNumOrderings;
+   }
+
+   /**
+    * Returns the number of numeric factorizations performed since the
+    * counts were last cleared.
+    *
+    * @return number of factorizations
+    * @see #clearCounts
+    */
+   public int getNumFactorizations() {
+      return myNumFactorizations;
+   }
+
+   /**
+    * Clears the counts of analyze calls, analyses, orderings and
+    * factorizations.
+    */
+   public void clearCounts() {
+      myNumAnalyzeCalls = 0;
+      myNumAnalyses = 0;
+      myNumOrderings = 0;
+      myNumFactorizations = 0;
+   }
+
    private void getCRSRowOffsets (Object M, int sizeM, SparseBlockMatrix GT) {
       // start by finding the number of non-zeros in each row, and
       // accumulate this into myLocalOffs
@@ -461,7 +708,7 @@ public class KKTSolver {
          if ((myTypeM & Matrix.SYMMETRIC) == 0) {
             warnAboutUnsymmetricUnilateralSolves();
          }
-         buildLCP (NT, Rn);
+         setupLCP (NT, Rn, null);
       }
       myState = State.FACTORED;
       long t1 = System.nanoTime();
@@ -484,7 +731,7 @@ public class KKTSolver {
          if ((myTypeM & Matrix.SYMMETRIC) == 0) {
             warnAboutUnsymmetricUnilateralSolves();
          }
-         buildLCP (NT, Rn, DT);
+         setupLCP (NT, Rn, DT);
       }
       myState = State.FACTORED;
       long t1 = System.nanoTime();
@@ -519,7 +766,7 @@ public class KKTSolver {
          if ((myTypeM & Matrix.SYMMETRIC) == 0) {
             warnAboutUnsymmetricUnilateralSolves();
          }
-         buildLCP (NT, Rn);
+         setupLCP (NT, Rn, null);
       }
       myState = State.FACTORED;
    }
@@ -678,7 +925,7 @@ public class KKTSolver {
       myNumD = 0;
       myDT = null;
       
-      if (!myUseUmfpack && myDirectCnt > 0 &&
+      if (myPardiso != null && myDirectCnt > 0 &&
           (myIterativeCnt == 0 || myIterativeCnt+1 < estimateOptimalCount())) {
          long t0 = System.nanoTime();
          getCRSValues (M, sizeM, myNumVals, GT, Rg);
@@ -827,15 +1074,40 @@ public class KKTSolver {
       // System.out.println ("LCP M=[\n" + myLcpM + "]");
       // System.out.println ("Q=" + myQ);
 
-      myDantzig.setComputeResidual (true);
-      DantzigLCPSolver.Status status =
-         myDantzig.solve (myZ, myLcpM, myQ, myZBasic);
-      myDantzig.setComputeResidual (false);
+      DantzigLCPSolver.Status status;
+      if (myLcpType == ContactSolverType.APGD) {
+         for (int i = 0; i < myNumN; i++) {
+            myLo.set (i, 0);
+            myHi.set (i, Double.POSITIVE_INFINITY);
+         }
+         myZ.set (the);
+         status = solveImplicitLCP (myZ, myQ, myLo, myHi);
+         for (int i = 0; i < myNumN; i++) {
+            myZBasic[i] = (myZ.get(i) > 0);
+         }
+      }
+      else {
+         myDantzig.setComputeResidual (true);
+         if (myContactWarmStart) {
+            for (int i = 0; i < myNumN; i++) {
+               myZBasic[i] = (the.get(i) > 0);
+            }
+            status = myDantzig.warmSolve (myZ, myLcpM, myQ, myZBasic);
+         }
+         else {
+            status = myDantzig.solve (myZ, myLcpM, myQ, myZBasic);
+         }
+         myDantzig.setComputeResidual (false);
+         myContactIterations = myDantzig.getIterationCount();
+         myContactWarmStarted = myDantzig.wasWarmStarted();
+      }
       // System.out.println ("status=" + status + " res=" + myDantzig.getResidual());
       // System.out.println ("M=\n" + myLcpM);
       // System.out.println ("q=\n" + myQ);
       // System.out.println ("z=\n" + myZ);
-      if (status != DantzigLCPSolver.Status.SOLVED) {
+      if (status != DantzigLCPSolver.Status.SOLVED &&
+          (myLcpType != ContactSolverType.APGD ||
+           status != DantzigLCPSolver.Status.ITERATION_LIMIT_EXCEEDED)) {
          switch (status) {
             case NO_SOLUTION: {
                return Status.NO_SOLUTION;
@@ -875,6 +1147,10 @@ public class KKTSolver {
       for (int i = mySizeM; i < mySizeM + myNumG; i++) {
          lam.set (i - mySizeM, ybuf[i]);
       }
+      if (status == DantzigLCPSolver.Status.ITERATION_LIMIT_EXCEEDED) {
+         // APGD did not converge, but the solution may still be usable
+         return Status.ITERATION_LIMIT_EXCEEDED;
+      }
       return Status.SOLVED;
    }
 
@@ -915,9 +1191,60 @@ public class KKTSolver {
          myHi.set (myNumN+i, +fmax);
       }
 
-      DantzigLCPSolver.Status status =
-         myDantzig.solve (myZ, myW, myLcpM, myQ, myLo, myHi, 0, myZState);
-      if (status != DantzigLCPSolver.Status.SOLVED) {
+      DantzigLCPSolver.Status status;
+      if (myLcpType == ContactSolverType.APGD) {
+         for (int i = 0; i < myNumN; i++) {
+            myZ.set (i, the.get(i));
+         }
+         for (int i = 0; i < myNumD; i++) {
+            myZ.set (myNumN+i, phi.get(i));
+         }
+         status = solveImplicitLCP (myZ, myQ, myLo, myHi);
+         for (int i = 0; i < myNumN+myNumD; i++) {
+            double z = myZ.get(i);
+            if (z <= myLo.get(i)) {
+               myZState[i] = DantzigLCPSolver.W_VAR_LOWER;
+            }
+            else if (z >= myHi.get(i)) {
+               myZState[i] = DantzigLCPSolver.W_VAR_UPPER;
+            }
+            else {
+               myZState[i] = DantzigLCPSolver.Z_VAR;
+            }
+         }
+      }
+      else {
+         if (myContactWarmStart) {
+            for (int i = 0; i < myNumN; i++) {
+               myZState[i] = (the.get(i) > 0 ?
+                  DantzigLCPSolver.Z_VAR : DantzigLCPSolver.W_VAR_LOWER);
+            }
+            for (int i = 0; i < myNumD; i++) {
+               int k = myNumN+i;
+               double z = phi.get(i);
+               if (z <= myLo.get(k)) {
+                  myZState[k] = DantzigLCPSolver.W_VAR_LOWER;
+               }
+               else if (z >= myHi.get(k)) {
+                  myZState[k] = DantzigLCPSolver.W_VAR_UPPER;
+               }
+               else {
+                  myZState[k] = DantzigLCPSolver.Z_VAR;
+               }
+            }
+            status = myDantzig.warmSolve (
+               myZ, myW, myLcpM, myQ, myLo, myHi, 0, myZState);
+         }
+         else {
+            status = myDantzig.solve (
+               myZ, myW, myLcpM, myQ, myLo, myHi, 0, myZState);
+         }
+         myContactIterations = myDantzig.getIterationCount();
+         myContactWarmStarted = myDantzig.wasWarmStarted();
+      }
+      if (status != DantzigLCPSolver.Status.SOLVED &&
+          (myLcpType != ContactSolverType.APGD ||
+           status != DantzigLCPSolver.Status.ITERATION_LIMIT_EXCEEDED)) {
          switch (status) {
             case NO_SOLUTION: {
                return Status.NO_SOLUTION;
@@ -967,9 +1294,368 @@ public class KKTSolver {
       for (int i = mySizeM; i < mySizeM + myNumG; i++) {
          lam.set (i - mySizeM, ybuf[i]);
       }
+      if (status == DantzigLCPSolver.Status.ITERATION_LIMIT_EXCEEDED) {
+         // APGD did not converge, but the solution may still be usable
+         return Status.ITERATION_LIMIT_EXCEEDED;
+      }
       return Status.SOLVED;
    }
 
+   /**
+    * Sets up the LCP for the unilateral and friction constraints. For the
+    * Dantzig solver, this forms the LCP matrix explicitly; for APGD, it just
+    * records the constraint matrices.
+    */
+   private void setupLCP (
+      SparseBlockMatrix NT, VectorNd Rn, SparseBlockMatrix DT) {
+      myLcpType = myContactSolverType;
+      myRn = Rn;
+      if (myContactSolverType == ContactSolverType.APGD) {
+         int Nsize = NT.colSize();
+         int Dsize = (DT != null ? DT.colSize() : 0);
+         int n = Nsize + Dsize;
+         if (myZBasic.length < Nsize) {
+            myZBasic = new boolean[Nsize];
+         }
+         if (myZState.length < n) {
+            myZState = new int[n];
+         }
+         myQ.setSize (n);
+         myZ.setSize (n);
+         myW.setSize (n);
+         myHi.setSize (n);
+         myLo.setSize (n);
+         myNumN = Nsize;
+         myNT = NT;
+         myNumD = Dsize;
+         myDT = DT;
+      }
+      else if (DT != null) {
+         buildLCP (NT, Rn, DT);
+      }
+      else {
+         buildLCP (NT, Rn);
+      }
+   }
+
+   /**
+    * Computes the product of the LCP matrix and z implicitly, using the
+    * factorization of the equality constraint system.
+    */
+   private void mulLCP (VectorNd mz, VectorNd z) {
+      myContactMulCount++;
+      myPgN.setSize (myNumN);
+      myPgD.setSize (myNumD);
+      z.getSubVector (0, myPgN);
+      myNT.mul (myMGx, myPgN, mySizeM, myNumN);
+      if (myNumD > 0) {
+         z.getSubVector (myNumN, myPgD);
+         myDT.mulAdd (myMGx, myPgD, mySizeM, myNumD);
+      }
+      // reset size of MGx because myNT.mul will have set it to mySizeM
+      myMGx.setSize (mySizeM+myNumG);
+      double[] xbuf = myMGx.getBuffer();
+      for (int i = mySizeM; i < mySizeM + myNumG; i++) {
+         xbuf[i] = 0;
+      }
+      solveMG (myMGy, myMGx);
+      myNT.mulTranspose (myPgN, myMGy, myNumN, mySizeM);
+      mz.setSubVector (0, myPgN);
+      if (myNumD > 0) {
+         myDT.mulTranspose (myPgD, myMGy, myNumD, mySizeM);
+         mz.setSubVector (myNumN, myPgD);
+      }
+      if (myRn != null) {
+         double[] mbuf = mz.getBuffer();
+         double[] zbuf = z.getBuffer();
+         for (int i = 0; i < myNumN; i++) {
+            mbuf[i] += myRn.get(i)*zbuf[i];
+         }
+      }
+   }
+
+   private static double clip (double x, double lo, double hi) {
+      return (x < lo ? lo : (x > hi ? hi : x));
+   }
+
+   /**
+    * Computes z1 = proj (y - g/L), where proj() clips to [lo, hi].
+    */
+   private void projectStep (
+      VectorNd z1, VectorNd y, VectorNd g, double L, VectorNd lo, VectorNd hi) {
+      double[] z1buf = z1.getBuffer();
+      double[] ybuf = y.getBuffer();
+      double[] gbuf = g.getBuffer();
+      double[] lobuf = lo.getBuffer();
+      double[] hibuf = hi.getBuffer();
+      for (int i = 0; i < z1.size(); i++) {
+         z1buf[i] = clip (ybuf[i] - gbuf[i]/L, lobuf[i], hibuf[i]);
+      }
+   }
+
+   /**
+    * Computes the projected gradient residual for the LCP at z, given
+    * Mz = M z, using a step size of 1/L. This is zero if and only if z
+    * solves the LCP, and has the same units as q.
+    */
+   private double projectedResidual (
+      VectorNd z, VectorNd Mz, VectorNd q, double L, VectorNd lo, VectorNd hi) {
+      double[] zbuf = z.getBuffer();
+      double[] mbuf = Mz.getBuffer();
+      double[] qbuf = q.getBuffer();
+      double[] lobuf = lo.getBuffer();
+      double[] hibuf = hi.getBuffer();
+      double res = 0;
+      for (int i = 0; i < z.size(); i++) {
+         double g = mbuf[i] + qbuf[i];
+         double r = L*(zbuf[i] - clip (zbuf[i] - g/L, lobuf[i], hibuf[i]));
+         res = Math.max (res, Math.abs (r));
+      }
+      return res;
+   }
+
+   /**
+    * Solves the bounded LCP
+    * <pre>
+    * w = M z + q,  lo &lt;= z &lt;= hi
+    * </pre>
+    * by minimizing 1/2 z^T M z + q^T z over the bounds using accelerated
+    * projected gradient descent (APGD), with adaptive step size and restart.
+    * Products with M are computed implicitly using {@link #mulLCP}. On input,
+    * z contains the initial guess.
+    */
+   private DantzigLCPSolver.Status solveImplicitLCP (
+      VectorNd z, VectorNd q, VectorNd lo, VectorNd hi) {
+
+      int n = z.size();
+      myContactIterations = 0;
+      myContactMulCount = 0;
+      myContactResidual = 0;
+      if (n == 0) {
+         return DantzigLCPSolver.Status.SOLVED;
+      }
+      myPgY.setSize (n);
+      myPgMz.setSize (n);
+      myPgMy.setSize (n);
+      myPgZ1.setSize (n);
+      myPgMz1.setSize (n);
+      myPgGrad.setSize (n);
+      myPgBest.setSize (n);
+
+      // project the initial guess onto the bounds
+      double[] zbuf = z.getBuffer();
+      for (int i = 0; i < n; i++) {
+         zbuf[i] = clip (zbuf[i], lo.get(i), hi.get(i));
+      }
+      double tol = myContactTol*Math.max (q.infinityNorm(), 1e-12);
+
+      // initial Lipschitz estimate from a unit vector product
+      double[] ybuf = myPgY.getBuffer();
+      for (int i = 0; i < n; i++) {
+         ybuf[i] = 1/Math.sqrt(n);
+      }
+      mulLCP (myPgMy, myPgY);
+      double L = myPgMy.norm();
+      if (L == 0 || Double.isNaN (L)) {
+         L = 1;
+      }
+      mulLCP (myPgMz, z);
+      myPgY.set (z);
+      myPgMy.set (myPgMz);
+      myPgBest.set (z);
+      double bestRes = projectedResidual (z, myPgMz, q, L, lo, hi);
+      double theta = 1;
+
+      int iter = 0;
+      while (bestRes > tol && iter < myContactMaxIterations) {
+         iter++;
+         // gradient and objective at y
+         myPgGrad.add (myPgMy, q);
+         double fy = 0.5*myPgY.dot (myPgMy) + q.dot (myPgY);
+         double gy = myPgGrad.dot (myPgY);
+         // take a projected step, increasing L until the step is acceptable
+         while (true) {
+            projectStep (myPgZ1, myPgY, myPgGrad, L, lo, hi);
+            mulLCP (myPgMz1, myPgZ1);
+            double f1 = 0.5*myPgZ1.dot (myPgMz1) + q.dot (myPgZ1);
+            double gd = myPgGrad.dot (myPgZ1) - gy;
+            double dd = myPgZ1.distance (myPgY);
+            dd *= dd;
+            if (dd == 0 || f1 <= fy + gd + 0.5*L*dd + 1e-14*Math.abs(fy)) {
+               break;
+            }
+            L *= 2;
+         }
+         double res = projectedResidual (myPgZ1, myPgMz1, q, L, lo, hi);
+         if (res < bestRes) {
+            bestRes = res;
+            myPgBest.set (myPgZ1);
+         }
+         // Nesterov momentum, restarted if the objective is increasing
+         double theta1 = 0.5*theta*(Math.sqrt (theta*theta+4) - theta);
+         double beta = theta*(1-theta)/(theta*theta+theta1);
+         double[] mybuf = myPgMy.getBuffer();
+         double[] z1buf = myPgZ1.getBuffer();
+         double[] mz1buf = myPgMz1.getBuffer();
+         double[] mzbuf = myPgMz.getBuffer();
+         double[] gbuf = myPgGrad.getBuffer();
+         double gdot = 0;
+         for (int i = 0; i < n; i++) {
+            gdot += gbuf[i]*(z1buf[i]-zbuf[i]);
+         }
+         if (gdot > 0) {
+            myPgY.set (myPgZ1);
+            myPgMy.set (myPgMz1);
+            theta1 = 1;
+         }
+         else {
+            // M is linear, so M y can be updated without another solve
+            for (int i = 0; i < n; i++) {
+               ybuf[i] = z1buf[i] + beta*(z1buf[i]-zbuf[i]);
+               mybuf[i] = mz1buf[i] + beta*(mz1buf[i]-mzbuf[i]);
+            }
+         }
+         z.set (myPgZ1);
+         myPgMz.set (myPgMz1);
+         theta = theta1;
+         L *= 0.9;
+      }
+      z.set (myPgBest);
+      myContactIterations = iter;
+      myContactResidual = bestRes;
+      if (bestRes > tol) {
+         return DantzigLCPSolver.Status.ITERATION_LIMIT_EXCEEDED;
+      }
+      return DantzigLCPSolver.Status.SOLVED;
+   }
+
+   /**
+    * Sets the method used to solve the unilateral and friction constraints.
+    * The default is {@link ContactSolverType#Dantzig}. Changes take effect
+    * at the next call to factor().
+    *
+    * @param type contact solver type
+    */
+   public void setContactSolverType (ContactSolverType type) {
+      myContactSolverType = type;
+   }
+
+   /**
+    * Returns the method used to solve the unilateral and friction
+    * constraints.
+    *
+    * @return contact solver type
+    */
+   public ContactSolverType getContactSolverType() {
+      return myContactSolverType;
+   }
+
+   /**
+    * Sets the relative convergence tolerance for the {@link
+    * ContactSolverType#APGD} contact solver. The solve terminates when the
+    * infinity norm of the projected gradient residual falls below this
+    * tolerance times the infinity norm of the LCP's q vector.
+    *
+    * @param tol relative tolerance
+    */
+   public void setContactSolverTolerance (double tol) {
+      myContactTol = tol;
+   }
+
+   /**
+    * Returns the relative convergence tolerance for the APGD contact solver.
+    *
+    * @return relative tolerance
+    */
+   public double getContactSolverTolerance() {
+      return myContactTol;
+   }
+
+   /**
+    * Sets the maximum number of iterations for the {@link
+    * ContactSolverType#APGD} contact solver.
+    *
+    * @param max maximum number of iterations
+    */
+   public void setContactSolverMaxIterations (int max) {
+      myContactMaxIterations = max;
+   }
+
+   /**
+    * Returns the maximum number of iterations for the APGD contact solver.
+    *
+    * @return maximum number of iterations
+    */
+   public int getContactSolverMaxIterations() {
+      return myContactMaxIterations;
+   }
+
+   /**
+    * Enables warm starting of the {@link ContactSolverType#Dantzig} contact
+    * solver. When enabled, the pivoting starts from a basis guessed from the
+    * unilateral and friction impulses supplied to {@link #solve solve()},
+    * which are typically those computed for the same contacts in the
+    * previous step. Constraints with positive normal impulses, and friction
+    * constraints with impulses strictly inside their limits, are guessed to
+    * be basic. If the guessed basis is infeasible, the solver falls back to
+    * pivoting from scratch.
+    *
+    * @param enable if <code>true</code>, enables warm starting
+    */
+   public void setContactSolverWarmStart (boolean enable) {
+      myContactWarmStart = enable;
+   }
+
+   /**
+    * Queries whether warm starting of the Dantzig contact solver is enabled.
+    *
+    * @return <code>true</code> if warm starting is enabled
+    */
+   public boolean getContactSolverWarmStart() {
+      return myContactWarmStart;
+   }
+
+   /**
+    * Queries whether the most recent Dantzig contact solve was able to start
+    * from the basis guessed from the supplied impulses.
+    *
+    * @return <code>true</code> if the last contact solve was warm started
+    */
+   public boolean getContactSolverWarmStarted() {
+      return myContactWarmStarted;
+   }
+
+   /**
+    * Returns the number of iterations used by the most recent contact
+    * solve. For the APGD solver, this is the number of gradient iterations;
+    * for the Dantzig solver, it is the number of pivots.
+    *
+    * @return number of iterations for the last contact solve
+    */
+   public int getContactSolverIterations() {
+      return myContactIterations;
+   }
+
+   /**
+    * Returns the number of solves with the equality constraint
+    * factorization used by the most recent APGD contact solve.
+    *
+    * @return number of implicit matrix products for the last contact solve
+    */
+   public int getContactSolverMatrixProducts() {
+      return myContactMulCount;
+   }
+
+   /**
+    * Returns the projected gradient residual (in the units of the LCP q
+    * vector) for the most recent APGD contact solve.
+    *
+    * @return residual for the last contact solve
+    */
+   public double getContactSolverResidual() {
+      return myContactResidual;
+   }
+
    private void buildLCP (SparseBlockMatrix NT, VectorNd Rn) {
       int n = NT.colSize();
       myLcpM.setSize (n, n);
@@ -1284,7 +1970,7 @@ public class KKTSolver {
     */
    public void solveMG (VectorNd x, VectorNd b) {
       myMatrixSolver.solve (x, b);
-      if (computeResidualMG) {
+      if (computeResidualMG && myPardiso != null) {
          double res = 
             myPardiso.residual (
                myRowOffs, myColIdxs, myVals, mySizeM+myNumG, 
@@ -1345,6 +2031,7 @@ public class KKTSolver {
    private void factorMG (
       Object M, int sizeM, SparseBlockMatrix GT, VectorNd Rg) {
       getCRSValues (M, sizeM, myNumVals, GT, Rg);
+      myNumFactorizations++;
       if (myUseUmfpack) {
          loadUmfpackValues (mySizeM + myNumG, myNumVals);
          int status = myUmfpack.factor (myUmfpackVals);
@@ -1356,6 +2043,9 @@ public class KKTSolver {
                "Umfpack: Matrix is near singular, solve could fail");
          }
       }
+      else if (mySupernodal != null) {
+         mySupernodal.factor (myVals);
+      }
       else {
          myPardiso.factor (myVals);
          if (myPardiso.getState() != PardisoSolver.FACTORED) {
@@ -1370,6 +2060,9 @@ public class KKTSolver {
    }
 
    public int getNumNonZerosInFactors() {
+      if (mySupernodal != null) {
+         return mySupernodal.getNumNonZerosInFactors();
+      }
       return myPardiso.getNumNonZerosInFactors();
    }
 
@@ -1382,7 +2075,9 @@ public class KKTSolver {
          myMatrixSolver.dispose();
          myMatrixSolver = null;
          myPardiso = null;
+         mySupernodal = null;
          myUmfpack = null;
+         myAnalyzedSize = -1;
       }
    }
 
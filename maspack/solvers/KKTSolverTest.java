@@ -109,6 +109,55 @@ public class KKTSolverTest {
          M, 6, GT, NT, Rg, Rn, bm, bg, bn, vel, lam, the, Matrix.INDEFINITE);
    }
 
+   /**
+    * Checks that a Supernodal based solver skips its analysis when the
+    * structure is unchanged, and repeats it when the set of zero diagonal
+    * entries changes, even if the sparsity structure does not. A Pardiso
+    * based solver always repeats its analysis.
+    */
+   public void testReanalysis() {
+      MatrixNdBlock Mblk = new MatrixNdBlock (6, 6);
+      MatrixNdBlock GTblk = new MatrixNdBlock (6, 3);
+      GTblk.setRandom();
+      Mblk.setRandom();
+      Mblk.mulTranspose (Mblk);
+      SparseBlockMatrix M = new SparseBlockMatrix();
+      M.addBlock (0, 0, Mblk);
+      SparseBlockMatrix GT = new SparseBlockMatrix();
+      GT.addBlock (0, 0, GTblk);
+
+      if (PardisoSolver.isAvailable()) {
+         // Pardiso's analysis depends on the values, so it is always redone
+         testReanalysis (
+            new KKTSolver (KKTSolver.DirectSolverType.Pardiso), M, GT, 2, 3);
+      }
+      testReanalysis (
+         new KKTSolver (KKTSolver.DirectSolverType.Supernodal), M, GT, 1, 2);
+   }
+
+   private void testReanalysis (
+      KKTSolver solver, SparseBlockMatrix M, SparseBlockMatrix GT,
+      int numUnchanged, int numChanged) {
+
+      String name = solver.getDirectSolverType().toString();
+      VectorNd Rg = new VectorNd (3);
+      solver.analyze (M, 6, GT, Rg, Matrix.SYMMETRIC);
+      solver.analyze (M, 6, GT, Rg, Matrix.SYMMETRIC);
+      if (solver.getNumAnalyses() != numUnchanged) {
+         throw new TestException (
+            name+", unchanged structure: "+solver.getNumAnalyses()+
+            " analyses, expected "+numUnchanged);
+      }
+      Rg.set (1, 0.1);
+      solver.analyze (M, 6, GT, Rg, Matrix.SYMMETRIC);
+      if (solver.getNumAnalyses() != numChanged) {
+         throw new TestException (
+            name+", changed zero diagonal: "+solver.getNumAnalyses()+
+            " analyses, expected "+numChanged);
+      }
+      solver.dispose();
+   }
+
    private void solveAndCheck (
       Object M, int sizeM, SparseBlockMatrix GT, SparseBlockMatrix NT,
       VectorNd Rg, VectorNd Rn, VectorNd bm, VectorNd bg, VectorNd bn,
@@ -539,6 +588,163 @@ public class KKTSolverTest {
       }
    }
 
+   /**
+    * Creates a random SPD block mass matrix with nblks 6x6 diagonal blocks.
+    */
+   private SparseBlockMatrix createRandomMass (int nblks) {
+      SparseBlockMatrix M = new SparseBlockMatrix();
+      for (int i=0; i<nblks; i++) {
+         MatrixNdBlock blk = new MatrixNdBlock (6, 6);
+         blk.setRandom();
+         blk.mulTranspose (blk);
+         for (int j=0; j<6; j++) {
+            blk.add (j, j, 1.0);
+         }
+         M.addBlock (i, i, blk);
+      }
+      return M;
+   }
+
+   /**
+    * Creates a random constraint matrix whose columns each act on one
+    * randomly selected block of the mass matrix.
+    */
+   private SparseBlockMatrix createRandomConstraints (int nblks, int numc) {
+      int[] rowSizes = new int[nblks];
+      for (int i=0; i<nblks; i++) {
+         rowSizes[i] = 6;
+      }
+      int[] colSizes = new int[numc];
+      for (int j=0; j<numc; j++) {
+         colSizes[j] = 1;
+      }
+      SparseBlockMatrix CT = new SparseBlockMatrix (rowSizes, colSizes);
+      for (int j=0; j<numc; j++) {
+         MatrixNdBlock blk = new MatrixNdBlock (6, 1);
+         blk.setRandom();
+         CT.addBlock (RandomGenerator.nextInt (0, nblks-1), j, blk);
+      }
+      return CT;
+   }
+
+   /**
+    * Checks that the APGD contact solver gives the same solution as the
+    * Dantzig solver, for problems with and without friction.
+    */
+   public void testContactSolvers (int nblks, int numG, int numN, int numD) {
+      SparseBlockMatrix M = createRandomMass (nblks);
+      int sizeM = M.rowSize();
+      SparseBlockMatrix GT = createRandomConstraints (nblks, numG);
+      SparseBlockMatrix NT = createRandomConstraints (nblks, numN);
+      SparseBlockMatrix DT = null;
+      VectorNd bd = null;
+      VectorNd flim = null;
+      if (numD > 0) {
+         DT = createRandomConstraints (nblks, numD);
+         bd = new VectorNd (numD);
+         bd.setRandom();
+         flim = new VectorNd (numD);
+         flim.setRandom (0.1, 1.0);
+      }
+      VectorNd Rg = new VectorNd (numG);
+      VectorNd Rn = new VectorNd (numN);
+      Rn.setRandom (0, 1e-3);
+      VectorNd bm = new VectorNd (sizeM);
+      VectorNd bg = new VectorNd (numG);
+      VectorNd bn = new VectorNd (numN);
+      bm.setRandom();
+      bg.setRandom();
+      bn.setRandom();
+
+      VectorNd[] vel = new VectorNd[2];
+      VectorNd[] the = new VectorNd[2];
+      VectorNd[] phi = new VectorNd[2];
+      KKTSolver.ContactSolverType[] types = new KKTSolver.ContactSolverType[] {
+         KKTSolver.ContactSolverType.Dantzig,
+         KKTSolver.ContactSolverType.APGD };
+      for (int k=0; k<2; k++) {
+         KKTSolver solver = new KKTSolver (KKTSolver.DirectSolverType.Supernodal);
+         solver.setContactSolverType (types[k]);
+         solver.setContactSolverTolerance (1e-12);
+         solver.setContactSolverMaxIterations (100000);
+         vel[k] = new VectorNd (sizeM);
+         the[k] = new VectorNd (numN);
+         phi[k] = new VectorNd (numD);
+         VectorNd lam = new VectorNd (numG);
+         solver.analyze (M, sizeM, GT, Rg, Matrix.SPD);
+         Status status;
+         if (DT != null) {
+            solver.factor (M, sizeM, GT, Rg, NT, Rn, DT);
+            status = solver.solve (
+               vel[k], lam, the[k], phi[k], bm, bg, bn, bd, flim);
+         }
+         else {
+            solver.factor (M, sizeM, GT, Rg, NT, Rn);
+            status = solver.solve (vel[k], lam, the[k], bm, bg, bn);
+         }
+         if (status != Status.SOLVED) {
+            throw new TestException (
+               types[k] + " contact solve failed, status " + status);
+         }
+         if (types[k] == KKTSolver.ContactSolverType.Dantzig) {
+            // warm starting from the computed impulses should need no pivots
+            VectorNd velw = new VectorNd (sizeM);
+            VectorNd thew = new VectorNd (the[k]);
+            VectorNd phiw = new VectorNd (phi[k]);
+            solver.setContactSolverWarmStart (true);
+            if (DT != null) {
+               status = solver.solve (
+                  velw, lam, thew, phiw, bm, bg, bn, bd, flim);
+            }
+            else {
+               status = solver.solve (velw, lam, thew, bm, bg, bn);
+            }
+            if (status != Status.SOLVED ||
+                !solver.getContactSolverWarmStarted() ||
+                solver.getContactSolverIterations() != 0) {
+               throw new TestException (
+                  "warm started Dantzig solve: status " + status +
+                  ", warm started=" + solver.getContactSolverWarmStarted() +
+                  ", pivots=" + solver.getContactSolverIterations());
+            }
+            if (!velw.epsilonEquals (vel[k], 1e-8*vel[k].infinityNorm())) {
+               throw new TestException (
+                  "warm started vel=\n" + velw.toString ("%12.8f") +
+                  "\nexpected\n" + vel[k].toString ("%12.8f"));
+            }
+         }
+         if (verbose && types[k] == KKTSolver.ContactSolverType.APGD) {
+            System.out.println (
+               "APGD iterations=" + solver.getContactSolverIterations() +
+               " residual=" + solver.getContactSolverResidual());
+         }
+         solver.dispose();
+      }
+      double tol = 1e-6;
+      if (!vel[1].epsilonEquals (vel[0], tol*vel[0].infinityNorm())) {
+         throw new TestException (
+            "APGD vel=\n" + vel[1].toString ("%12.8f") +
+            "\nexpected\n" + vel[0].toString ("%12.8f"));
+      }
+      if (!the[1].epsilonEquals (the[0], tol*the[0].infinityNorm())) {
+         throw new TestException (
+            "APGD the=\n" + the[1].toString ("%12.8f") +
+            "\nexpected\n" + the[0].toString ("%12.8f"));
+      }
+      if (!phi[1].epsilonEquals (phi[0], tol*phi[0].infinityNorm())) {
+         throw new TestException (
+            "APGD phi=\n" + phi[1].toString ("%12.8f") +
+            "\nexpected\n" + phi[0].toString ("%12.8f"));
+      }
+   }
+
+   public void testContactSolvers() {
+      testContactSolvers (4, 3, 10, 0);
+      testContactSolvers (10, 6, 30, 0);
+      testContactSolvers (4, 3, 10, 20);
+      testContactSolvers (10, 6, 20, 40);
+   }
+
    public static double checkSolve (
       Object M, int sizeM, SparseBlockMatrix GT, SparseBlockMatrix NT,
       VectorNd vel, VectorNd lam, VectorNd the, VectorNd bm, VectorNd bmCheck) {
@@ -576,8 +782,10 @@ public class KKTSolverTest {
       PardisoSolver.printThreadInfo = false;
       try {
          //tester.test();
+         tester.testReanalysis();
          //tester.testFromFile ("blockCollide3.txt");
          tester.testFromFile ("MLCPtest.txt");
+         tester.testContactSolvers();
       }
       catch (Exception e) {
          e.printStackTrace();
@@ -0,0 +1,318 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.solvers;
+
+import java.util.Arrays;
+
+/**
+ * Computes a fill-reducing ordering for the factorization of a sparse
+ * symmetric matrix, using the minimum degree algorithm.
+ *
+ * <p>The elimination is carried out on a quotient graph, in which each
+ * eliminated variable becomes an <i>element</i> representing the clique
+ * formed by its neighbors. Elements that become subsets of a new element are
+ * absorbed, and the degree of each variable is approximated by an upper bound
+ * on its external degree, in the manner of the approximate minimum degree
+ * (AMD) algorithm.
+ *
+ * <p>Variables may be assigned weights, which allows the ordering to be
+ * computed on a compressed graph in which each variable represents several
+ * indistinguishable rows of the original matrix. Variables may also be
+ * marked as <i>delayed</i>, meaning that they will not be chosen as a pivot
+ * until at least one of their neighbors has been eliminated. This is used
+ * for rows of a KKT system whose diagonal entries are zero, which would
+ * otherwise produce zero pivots.
+ */
+public class MinimumDegreeOrdering {
+
+   private static final int ACTIVE = 0;
+   private static final int ELEMENT = 1;
+   private static final int ABSORBED = 2;
+
+   private int myNumVars;
+   private int[] myWeights;
+   private int[] myStatus;
+
+   // variables adjacent to each variable
+   private int[][] myVarAdj;
+   private int[] myNumVarAdj;
+   // elements adjacent to each variable
+   private int[][] myElemAdj;
+   private int[] myNumElemAdj;
+   // variables belonging to each element
+   private int[][] myElemVars;
+   private int[] myElemWeight;
+
+   // approximate external degree of each variable, and degree lists
+   private int[] myDegree;
+   private int[] myHead;
+   private int[] myNext;
+   private int[] myPrev;
+   private boolean[] myInList;
+   private int myMinDegree;
+
+   // workspace
+   private int[] myMark;
+   private int myTag;
+   private int[] myW;
+   private int[] myWTag;
+   private int myWCnt;
+
+   private MinimumDegreeOrdering() {
+   }
+
+   /**
+    * Computes a minimum degree ordering for a symmetric sparsity pattern
+    * described by an adjacency structure. The adjacency for variable
+    * <code>i</code> is given by the entries of <code>adjIdxs</code> in the
+    * range <code>[adjOffs[i], adjOffs[i+1])</code>. The structure must be
+    * symmetric and should not contain self references.
+    *
+    * @param n number of variables
+    * @param adjOffs offsets into <code>adjIdxs</code> (length
+    * <code>n+1</code>)
+    * @param adjIdxs 0-based indices of the adjacent variables
+    * @param weights if non-<code>null</code>, gives a positive weight for
+    * each variable
+    * @param delayed if non-<code>null</code>, indicates variables that should
+    * not be eliminated until one of their neighbors has been eliminated
+    * @return ordering, such that the <code>k</code>-th entry gives the
+    * <code>k</code>-th variable to be eliminated
+    */
+   public static int[] computeOrdering (
+      int n, int[] adjOffs, int[] adjIdxs, int[] weights, boolean[] delayed) {
+
+      MinimumDegreeOrdering mdo = new MinimumDegreeOrdering();
+      return mdo.doComputeOrdering (n, adjOffs, adjIdxs, weights, delayed);
+   }
+
+   private void insert (int i, int deg) {
+      myDegree[i] = deg;
+      int h = myHead[deg];
+      myNext[i] = h;
+      myPrev[i] = -1;
+      if (h != -1) {
+         myPrev[h] = i;
+      }
+      myHead[deg] = i;
+      myInList[i] = true;
+      if (deg < myMinDegree) {
+         myMinDegree = deg;
+      }
+   }
+
+   private void remove (int i) {
+      if (myPrev[i] != -1) {
+         myNext[myPrev[i]] = myNext[i];
+      }
+      else {
+         myHead[myDegree[i]] = myNext[i];
+      }
+      if (myNext[i] != -1) {
+         myPrev[myNext[i]] = myPrev[i];
+      }
+      myInList[i] = false;
+   }
+
+   private void appendElement (int i, int e) {
+      int num = myNumElemAdj[i];
+      if (myElemAdj[i] == null) {
+         myElemAdj[i] = new int[4];
+      }
+      else if (num == myElemAdj[i].length) {
+         myElemAdj[i] = Arrays.copyOf (myElemAdj[i], 2*num);
+      }
+      myElemAdj[i][num] = e;
+      myNumElemAdj[i] = num+1;
+   }
+
+   private int[] doComputeOrdering (
+      int n, int[] adjOffs, int[] adjIdxs, int[] weights, boolean[] delayed) {
+
+      myNumVars = n;
+      myWeights = new int[n];
+      int totalWeight = 0;
+      for (int i=0; i<n; i++) {
+         myWeights[i] = (weights != null ? weights[i] : 1);
+         totalWeight += myWeights[i];
+      }
+      myStatus = new int[n];
+      myVarAdj = new int[n][];
+      myNumVarAdj = new int[n];
+      myElemAdj = new int[n][];
+      myNumElemAdj = new int[n];
+      myElemVars = new int[n][];
+      myElemWeight = new int[n];
+      myDegree = new int[n];
+      myHead = new int[totalWeight+1];
+      myNext = new int[n];
+      myPrev = new int[n];
+      myInList = new boolean[n];
+      myMark = new int[n];
+      myW = new int[n];
+      myWTag = new int[n];
+      Arrays.fill (myHead, -1);
+      myMinDegree = totalWeight;
+
+      for (int i=0; i<n; i++) {
+         int num = adjOffs[i+1]-adjOffs[i];
+         myVarAdj[i] = Arrays.copyOfRange (adjIdxs, adjOffs[i], adjOffs[i+1]);
+         myNumVarAdj[i] = num;
+         int deg = 0;
+         for (int k=0; k<num; k++) {
+            deg += myWeights[myVarAdj[i][k]];
+         }
+         myDegree[i] = deg;
+         if (delayed == null || !delayed[i]) {
+            insert (i, deg);
+         }
+      }
+
+      int[] order = new int[n];
+      int[] le = new int[n];
+      int activeWeight = totalWeight;
+      int firstActive = 0;
+      for (int cnt=0; cnt<n; cnt++) {
+         // select pivot
+         int p = -1;
+         while (myMinDegree <= totalWeight && myHead[myMinDegree] == -1) {
+            myMinDegree++;
+         }
+         if (myMinDegree <= totalWeight) {
+            p = myHead[myMinDegree];
+            remove (p);
+         }
+         else {
+            // only delayed variables remain; take the first one
+            while (myStatus[firstActive] != ACTIVE) {
+               firstActive++;
+            }
+            p = firstActive;
+         }
+         order[cnt] = p;
+         myStatus[p] = ELEMENT;
+         activeWeight -= myWeights[p];
+
+         // form the new element from the variables adjacent to p and the
+         // variables of the elements adjacent to p, which are absorbed
+         myTag++;
+         myMark[p] = myTag;
+         int nle = 0;
+         int leWeight = 0;
+         for (int k=0; k<myNumVarAdj[p]; k++) {
+            int v = myVarAdj[p][k];
+            if (myStatus[v] == ACTIVE && myMark[v] != myTag) {
+               myMark[v] = myTag;
+               le[nle++] = v;
+               leWeight += myWeights[v];
+            }
+         }
+         for (int k=0; k<myNumElemAdj[p]; k++) {
+            int e = myElemAdj[p][k];
+            if (myStatus[e] == ELEMENT) {
+               int[] evars = myElemVars[e];
+               for (int l=0; l<evars.length; l++) {
+                  int v = evars[l];
+                  if (myStatus[v] == ACTIVE && myMark[v] != myTag) {
+                     myMark[v] = myTag;
+                     le[nle++] = v;
+                     leWeight += myWeights[v];
+                  }
+               }
+               myStatus[e] = ABSORBED;
+               myElemVars[e] = null;
+            }
+         }
+         myElemVars[p] = Arrays.copyOf (le, nle);
+         myElemWeight[p] = leWeight;
+         myVarAdj[p] = null;
+         myNumVarAdj[p] = 0;
+         myElemAdj[p] = null;
+         myNumElemAdj[p] = 0;
+
+         // update the adjacency of the variables in the new element
+         for (int l=0; l<nle; l++) {
+            int i = le[l];
+            if (myInList[i]) {
+               remove (i);
+            }
+            int[] eadj = myElemAdj[i];
+            int num = 0;
+            for (int k=0; k<myNumElemAdj[i]; k++) {
+               if (myStatus[eadj[k]] == ELEMENT) {
+                  eadj[num++] = eadj[k];
+               }
+            }
+            myNumElemAdj[i] = num;
+            appendElement (i, p);
+            // variables in the new element are now connected through it
+            int[] vadj = myVarAdj[i];
+            num = 0;
+            for (int k=0; k<myNumVarAdj[i]; k++) {
+               int v = vadj[k];
+               if (myStatus[v] == ACTIVE && myMark[v] != myTag) {
+                  vadj[num++] = v;
+               }
+            }
+            myNumVarAdj[i] = num;
+         }
+
+         // compute the weight of each adjacent element outside of the new
+         // element
+         myWCnt++;
+         for (int l=0; l<nle; l++) {
+            int i = le[l];
+            int[] eadj = myElemAdj[i];
+            for (int k=0; k<myNumElemAdj[i]; k++) {
+               int e = eadj[k];
+               if (e != p) {
+                  if (myWTag[e] != myWCnt) {
+                     myWTag[e] = myWCnt;
+                     myW[e] = myElemWeight[e];
+                  }
+                  myW[e] -= myWeights[i];
+               }
+            }
+         }
+
+         // update the approximate degrees
+         for (int l=0; l<nle; l++) {
+            int i = le[l];
+            int wi = myWeights[i];
+            int deg = leWeight - wi;
+            int[] eadj = myElemAdj[i];
+            int num = 0;
+            for (int k=0; k<myNumElemAdj[i]; k++) {
+               int e = eadj[k];
+               if (e == p) {
+                  eadj[num++] = e;
+               }
+               else if (myStatus[e] == ELEMENT) {
+                  if (myW[e] <= 0) {
+                     // element is a subset of the new element: absorb it
+                     myStatus[e] = ABSORBED;
+                     myElemVars[e] = null;
+                  }
+                  else {
+                     deg += myW[e];
+                     eadj[num++] = e;
+                  }
+               }
+            }
+            myNumElemAdj[i] = num;
+            int[] vadj = myVarAdj[i];
+            for (int k=0; k<myNumVarAdj[i]; k++) {
+               deg += myWeights[vadj[k]];
+            }
+            deg = Math.min (deg, myDegree[i] + leWeight - wi);
+            deg = Math.min (deg, activeWeight - wi);
+            insert (i, Math.max (deg, 0));
+         }
+      }
+      return order;
+   }
+}
@@ -0,0 +1,305 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.solvers;
+
+import maspack.matrix.LinearTransformNd;
+import maspack.matrix.Matrix;
+import maspack.matrix.Matrix.Partition;
+import maspack.matrix.SparseMatrixNd;
+import maspack.matrix.VectorNd;
+
+/**
+ * Solves symmetric positive definite systems using the conjugate gradient
+ * method, preconditioned by an incomplete Cholesky decomposition of the
+ * system matrix. The decomposition is either IC(0), which retains the
+ * sparsity pattern of the matrix, or a threshold based ICT decomposition,
+ * depending on the {@link #setDropTolerance drop tolerance}.
+ *
+ * <p>This solver is intended for sequences of systems whose matrices change
+ * slowly, such as those arising in the time integration of mechanical
+ * models. The preconditioner is built from the matrix supplied to the first
+ * solve and is then reused for subsequent solves. It is rebuilt lazily,
+ * only when the convergence rate of the solver (measured as the log of the
+ * residual reduction per iteration) drops below the rate obtained right
+ * after the last rebuild divided by the {@link #setRebuildThreshold rebuild
+ * threshold}, or when the solver fails to converge. It is also rebuilt if
+ * the matrix size changes, or if {@link #invalidatePreconditioner} is
+ * called.
+ *
+ * <p>A preconditioner can only be built for matrices that implement {@link
+ * Matrix}. Other linear transforms are solved without preconditioning.
+ */
+public class PreconditionedCGSolver implements IterativeSolver {
+
+   public static double DEFAULT_REBUILD_THRESHOLD = 1.5;
+   public static double DEFAULT_DROP_TOLERANCE = 0;
+
+   private CGSolver myCGSolver = new CGSolver();
+   private IncompleteCholeskyDecomposition myPreconditioner =
+      new IncompleteCholeskyDecomposition();
+   private boolean myPreconditionerValid = false;
+   private int myPreconditionerSize = -1;
+
+   private double myRebuildThreshold = DEFAULT_REBUILD_THRESHOLD;
+   private double myDropTolerance = DEFAULT_DROP_TOLERANCE;
+
+   // convergence rate for the first solve after the last rebuild
+   private double myReferenceRate = -1;
+   private int mySolvesSinceRebuild = 0;
+
+   // statistics
+   private int myNumRebuilds = 0;
+   private int myNumSolves = 0;
+   private long myTotalIterations = 0;
+
+   // storage for extracting the matrix values
+   private int[] myColIdxs = new int[0];
+   private int[] myRowOffs = new int[0];
+   private double[] myVals = new double[0];
+
+   public PreconditionedCGSolver() {
+   }
+
+   public double getTolerance() {
+      return myCGSolver.getTolerance();
+   }
+
+   public void setTolerance (double tol) {
+      myCGSolver.setTolerance (tol);
+   }
+
+   public ToleranceType getToleranceType() {
+      return myCGSolver.getToleranceType();
+   }
+
+   public void setToleranceType (ToleranceType type) {
+      myCGSolver.setToleranceType (type);
+   }
+
+   public int getMaxIterations() {
+      return myCGSolver.getMaxIterations();
+   }
+
+   public void setMaxIterations (int max) {
+      myCGSolver.setMaxIterations (max);
+   }
+
+   public void setNumThreads (int num) {
+      myCGSolver.setNumThreads (num);
+   }
+
+   public int getNumThreads() {
+      return myCGSolver.getNumThreads();
+   }
+
+   /**
+    * Returns the threshold controlling when the preconditioner is rebuilt.
+    *
+    * @return rebuild threshold
+    * @see #setRebuildThreshold
+    */
+   public double getRebuildThreshold() {
+      return myRebuildThreshold;
+   }
+
+   /**
+    * Sets the threshold controlling when the preconditioner is rebuilt. The
+    * preconditioner is rebuilt when the convergence rate falls below the
+    * rate observed right after the last rebuild divided by this threshold.
+    * Roughly speaking, this allows the number of iterations to grow by this
+    * factor before the preconditioner is rebuilt. A value of 1 or less
+    * causes the preconditioner to be rebuilt whenever the convergence rate
+    * decreases at all.
+    *
+    * @param thresh rebuild threshold
+    */
+   public void setRebuildThreshold (double thresh) {
+      myRebuildThreshold = thresh;
+   }
+
+   /**
+    * Returns the drop tolerance for the incomplete Cholesky decomposition.
+    *
+    * @return drop tolerance
+    * @see #setDropTolerance
+    */
+   public double getDropTolerance() {
+      return myDropTolerance;
+   }
+
+   /**
+    * Sets the drop tolerance for the incomplete Cholesky decomposition. If
+    * the tolerance is 0, an IC(0) decomposition is used. Otherwise, an ICT
+    * decomposition is used, in which fill-in entries whose magnitude is less
+    * than the tolerance times the norm of their row are dropped. Changing
+    * the tolerance causes the preconditioner to be rebuilt.
+    *
+    * @param tol drop tolerance
+    */
+   public void setDropTolerance (double tol) {
+      if (tol < 0) {
+         tol = 0;
+      }
+      if (tol != myDropTolerance) {
+         myDropTolerance = tol;
+         myPreconditionerValid = false;
+      }
+   }
+
+   /**
+    * Forces the preconditioner to be rebuilt at the next solve. This should
+    * be called if the structure of the system matrix changes.
+    */
+   public void invalidatePreconditioner() {
+      myPreconditionerValid = false;
+   }
+
+   /**
+    * Returns the number of times the preconditioner has been built since
+    * the last call to {@link #clearStatistics}.
+    *
+    * @return number of preconditioner builds
+    */
+   public int getNumPreconditionerRebuilds() {
+      return myNumRebuilds;
+   }
+
+   /**
+    * Returns the number of solves performed since the last call to {@link
+    * #clearStatistics}.
+    *
+    * @return number of solves
+    */
+   public int getNumSolves() {
+      return myNumSolves;
+   }
+
+   /**
+    * Returns the average number of iterations per solve since the last call
+    * to {@link #clearStatistics}.
+    *
+    * @return average number of iterations
+    */
+   public double getAverageIterations() {
+      return myNumSolves > 0 ? myTotalIterations/(double)myNumSolves : 0;
+   }
+
+   /**
+    * Clears the solve and rebuild statistics.
+    */
+   public void clearStatistics() {
+      myNumRebuilds = 0;
+      myNumSolves = 0;
+      myTotalIterations = 0;
+   }
+
+   public int getNumIterations() {
+      return myCGSolver.getNumIterations();
+   }
+
+   public double getRelativeResidual() {
+      return myCGSolver.getRelativeResidual();
+   }
+
+   public boolean isCompatible (int matrixType) {
+      return ((matrixType & Matrix.SYMMETRIC) != 0);
+   }
+
+   /**
+    * Copies a matrix into a SparseMatrixNd, which is the form required by
+    * IncompleteCholeskyDecomposition.
+    */
+   private SparseMatrixNd createSparseMatrix (Matrix A) {
+      int n = A.rowSize();
+      int nnz = A.numNonZeroVals (Partition.Full, n, n);
+      if (myColIdxs.length < nnz) {
+         myColIdxs = new int[nnz];
+         myVals = new double[nnz];
+      }
+      if (myRowOffs.length < n+1) {
+         myRowOffs = new int[n+1];
+      }
+      A.getCRSIndices (myColIdxs, myRowOffs, Partition.Full, n, n);
+      A.getCRSValues (myVals, Partition.Full, n, n);
+      SparseMatrixNd S = new SparseMatrixNd (n, n);
+      for (int i=0; i<n; i++) {
+         // CRS indices are 1-based
+         for (int k=myRowOffs[i]-1; k<myRowOffs[i+1]-1; k++) {
+            int j = myColIdxs[k]-1;
+            if (myVals[k] != 0) {
+               S.set (i, j, myVals[k]);
+            }
+            else if (i == j) {
+               // the factorization requires explicit diagonal entries
+               S.setZero (i, j);
+            }
+         }
+      }
+      return S;
+   }
+
+   private void buildPreconditioner (Matrix A) {
+      SparseMatrixNd S = createSparseMatrix (A);
+      if (myDropTolerance > 0) {
+         myPreconditioner.factor (S, myDropTolerance);
+      }
+      else {
+         myPreconditioner.factor (S);
+      }
+      myPreconditionerValid = true;
+      myPreconditionerSize = A.rowSize();
+      mySolvesSinceRebuild = 0;
+      myReferenceRate = -1;
+      myNumRebuilds++;
+   }
+
+   /**
+    * Solves a linear system A x = b, using an incomplete Cholesky
+    * preconditioner which is built or rebuilt as needed.
+    *
+    * @param x
+    * result vector, as well as initial guess of the solution
+    * @param A
+    * linear transform for the system to be solved
+    * @param b
+    * input vector
+    * @return true if a solution was found within the specified tolerance
+    */
+   public boolean solve (VectorNd x, LinearTransformNd A, VectorNd b) {
+      LinearTransformNd P = null;
+      if (A instanceof Matrix) {
+         if (!myPreconditionerValid || myPreconditionerSize != A.rowSize()) {
+            buildPreconditioner ((Matrix)A);
+         }
+         P = myPreconditioner;
+      }
+      boolean converged = myCGSolver.solve (
+         x, A, b, getTolerance(), getMaxIterations(), P);
+
+      // CGSolver counts the initial residual evaluation as an iteration
+      int iters = myCGSolver.getNumIterations()-1;
+      myNumSolves++;
+      myTotalIterations += iters;
+      if (P != null) {
+         double reduction = myCGSolver.getResidualReduction();
+         if (iters > 0 && reduction > 0) {
+            double rate = -Math.log (reduction)/iters;
+            if (mySolvesSinceRebuild == 0 || myReferenceRate < 0) {
+               myReferenceRate = rate;
+            }
+            else if (rate*myRebuildThreshold < myReferenceRate) {
+               myPreconditionerValid = false;
+            }
+         }
+         if (!converged && mySolvesSinceRebuild > 0) {
+            myPreconditionerValid = false;
+         }
+         mySolvesSinceRebuild++;
+      }
+      return converged;
+   }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.solvers;
+
+import maspack.matrix.Matrix3d;
+import maspack.matrix.MatrixBlock;
+import maspack.matrix.MatrixBlockBase;
+import maspack.matrix.SparseBlockMatrix;
+import maspack.matrix.VectorNd;
+import maspack.util.*;
+
+public class PreconditionedCGSolverTest extends UnitTest {
+
+   /**
+    * Creates an SPD matrix with 3 x 3 blocks and the structure of an n x n
+    * grid of nodes connected to their neighbors by springs of stiffness k,
+    * with a mass of 1 at each node.
+    */
+   SparseBlockMatrix createGridMatrix (int n, double k) {
+      int numNodes = n*n;
+      int[] sizes = new int[numNodes];
+      for (int i=0; i<numNodes; i++) {
+         sizes[i] = 3;
+      }
+      SparseBlockMatrix S = new SparseBlockMatrix (sizes, sizes);
+      for (int i=0; i<numNodes; i++) {
+         S.addBlock (i, i, MatrixBlockBase.alloc (3, 3));
+      }
+      Matrix3d K = new Matrix3d();
+      for (int i=0; i<n; i++) {
+         for (int j=0; j<n; j++) {
+            int n0 = i*n + j;
+            int[] nbrs = new int[] { j<n-1 ? n0+1 : -1, i<n-1 ? n0+n : -1 };
+            for (int n1 : nbrs) {
+               if (n1 != -1) {
+                  K.setRandom (-0.5, 0.5);
+                  K.mulTranspose (K);
+                  K.scale (k);
+                  S.addBlock (n0, n1, MatrixBlockBase.alloc (3, 3));
+                  S.addBlock (n1, n0, MatrixBlockBase.alloc (3, 3));
+                  S.getBlock (n0, n0).add (K);
+                  S.getBlock (n1, n1).add (K);
+                  S.getBlock (n0, n1).sub (K);
+                  S.getBlock (n1, n0).sub (K);
+               }
+            }
+         }
+      }
+      for (int i=0; i<S.rowSize(); i++) {
+         S.set (i, i, S.get (i, i) + 1.0);
+      }
+      return S;
+   }
+
+   // residuals are computed by the solver in the norm induced by the
+   // preconditioner, so the residual check uses a looser tolerance
+   void checkSolution (
+      SparseBlockMatrix S, VectorNd x, VectorNd b, double tol) {
+      VectorNd r = new VectorNd (b.size());
+      S.mul (r, x);
+      r.sub (b);
+      if (r.norm() > tol*b.norm()) {
+         throw new TestException (
+            "residual "+r.norm()+" exceeds "+tol*b.norm());
+      }
+   }
+
+   void perturbValues (SparseBlockMatrix S, double eps) {
+      for (int bi=0; bi<S.numBlockRows(); bi++) {
+         for (MatrixBlock blk=S.firstBlockInRow(bi); blk!=null;
+              blk=blk.next()) {
+            if (blk.getBlockCol() != bi) {
+               // scale off-diagonal blocks, preserving symmetry
+               blk.scale (1+eps);
+            }
+         }
+      }
+   }
+
+   void testSolve (double dropTol) {
+      double tol = 1e-10;
+      SparseBlockMatrix S = createGridMatrix (12, 100.0);
+      VectorNd b = new VectorNd (S.rowSize());
+      VectorNd x = new VectorNd (S.rowSize());
+      b.setRandom();
+
+      CGSolver cg = new CGSolver();
+      cg.solve (x, S, b, tol, 1000);
+      int plainIters = cg.getNumIterations();
+
+      PreconditionedCGSolver solver = new PreconditionedCGSolver();
+      solver.setTolerance (tol);
+      solver.setMaxIterations (1000);
+      solver.setDropTolerance (dropTol);
+      x.setZero();
+      check ("no convergence", solver.solve (x, S, b));
+      checkSolution (S, x, b, 1e-6);
+      checkEquals ("rebuilds", solver.getNumPreconditionerRebuilds(), 1);
+      if (solver.getNumIterations() >= plainIters) {
+         throw new TestException (
+            "preconditioned iterations "+solver.getNumIterations()+
+            " not less than unpreconditioned iterations "+plainIters);
+      }
+
+      // small changes in the matrix should not cause a rebuild
+      for (int i=0; i<5; i++) {
+         perturbValues (S, 0.001);
+         x.setZero();
+         check ("no convergence", solver.solve (x, S, b));
+         checkSolution (S, x, b, 1e-6);
+      }
+      checkEquals ("rebuilds", solver.getNumPreconditionerRebuilds(), 1);
+      checkEquals ("solves", solver.getNumSolves(), 6);
+
+      // a large change should degrade convergence and cause a rebuild at
+      // the following solve
+      S = createGridMatrix (12, 10000.0);
+      x.setZero();
+      check ("no convergence", solver.solve (x, S, b));
+      checkSolution (S, x, b, 1e-6);
+      x.setZero();
+      check ("no convergence", solver.solve (x, S, b));
+      checkSolution (S, x, b, 1e-6);
+      checkEquals ("rebuilds", solver.getNumPreconditionerRebuilds(), 2);
+
+      // explicit invalidation
+      solver.invalidatePreconditioner();
+      x.setZero();
+      solver.solve (x, S, b);
+      checkEquals ("rebuilds", solver.getNumPreconditionerRebuilds(), 3);
+
+      // size change
+      S = createGridMatrix (10, 100.0);
+      b = new VectorNd (S.rowSize());
+      x = new VectorNd (S.rowSize());
+      b.setRandom();
+      check ("no convergence", solver.solve (x, S, b));
+      checkSolution (S, x, b, 1e-6);
+      checkEquals ("rebuilds", solver.getNumPreconditionerRebuilds(), 4);
+
+      solver.clearStatistics();
+      checkEquals ("rebuilds", solver.getNumPreconditionerRebuilds(), 0);
+      checkEquals ("solves", solver.getNumSolves(), 0);
+   }
+
+   public void test() {
+      testSolve (0);
+      testSolve (0.001);
+   }
+
+   public static void main (String[] args) {
+      PreconditionedCGSolverTest tester = new PreconditionedCGSolverTest();
+      RandomGenerator.setSeed (0x1234);
+      tester.runtest();
+   }
+}
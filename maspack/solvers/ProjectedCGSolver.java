@@ -11,6 +11,7 @@ import maspack.solvers.IterativeSolver.ToleranceType;
 import maspack.matrix.ImproperSizeException;
 import maspack.matrix.LinearTransformNd;
 import maspack.matrix.Matrix;
+import maspack.matrix.ParallelMatrixOps;
 import maspack.matrix.SparseMatrixCRS;
 import maspack.matrix.VectorNd;
 
@@ -31,6 +32,9 @@ public class ProjectedCGSolver {
    VectorNd dir = new VectorNd (0); // direction
    VectorNd A_dir = new VectorNd (0); // direction multiplied by A
 
+   // parallel kernels, or null if the solver is single-threaded
+   ParallelMatrixOps myParallelOps = null;
+
    // public enum ToleranceType
    // {
    // RelativeResidual,
@@ -54,6 +58,64 @@ public class ProjectedCGSolver {
       myTolType = type;
    }
 
+   /**
+    * Sets the number of threads used for matrix-vector products and vector
+    * operations, as described for {@link CGSolver#setNumThreads}.
+    *
+    * @param num number of threads
+    */
+   public void setNumThreads (int num) {
+      if (num > 1) {
+         if (myParallelOps == null) {
+            myParallelOps = new ParallelMatrixOps (num);
+         }
+         else {
+            myParallelOps.setNumThreads (num);
+         }
+      }
+      else if (myParallelOps != null) {
+         myParallelOps.shutdown();
+         myParallelOps = null;
+      }
+   }
+
+   /**
+    * Returns the number of threads used for matrix-vector products and
+    * vector operations.
+    *
+    * @return number of threads
+    */
+   public int getNumThreads() {
+      return myParallelOps != null ? myParallelOps.getNumThreads() : 1;
+   }
+
+   private void mul (VectorNd vr, LinearTransformNd A, VectorNd v1) {
+      if (myParallelOps != null) {
+         myParallelOps.mul (vr, A, v1);
+      }
+      else {
+         A.mul (vr, v1);
+      }
+   }
+
+   private double dot (VectorNd v1, VectorNd v2) {
+      if (myParallelOps != null) {
+         return myParallelOps.dot (v1, v2);
+      }
+      else {
+         return v1.dot (v2);
+      }
+   }
+
+   private void scaledAdd (VectorNd vr, double s, VectorNd v1, VectorNd v2) {
+      if (myParallelOps != null) {
+         myParallelOps.scaledAdd (vr, s, v1, v2);
+      }
+      else {
+         vr.scaledAdd (s, v1, v2);
+      }
+   }
+
    public int getMaxIterations() {
       return myMaxIter;
    }
@@ -180,7 +242,7 @@ public class ProjectedCGSolver {
          P_res.setSize (xsize);
       }
 
-      A.mul (res, x);
+      mul (res, A, x);
       res.sub (b, res);
       projectConstraints (res, null, G, g, Gdot);
       if (P != null) {
@@ -190,11 +252,11 @@ public class ProjectedCGSolver {
          dir.set (res);
       }
 
-      dnew = res.dot (dir);
+      dnew = dot (res, dir);
       double resLimit;
       switch (myTolType) {
          case RelativeResidual: {
-            resLimit = tol * tol * b.dot (b);
+            resLimit = tol * tol * dot (b, b);
             break;
          }
          case AbsoluteResidual:
@@ -216,35 +278,35 @@ public class ProjectedCGSolver {
          if (myTolType != ToleranceType.AbsoluteError && dnew <= resLimit) {
             break;
          }
-         A.mul (A_dir, dir);
+         mul (A_dir, A, dir);
          projectConstraints (A_dir, lam, G, g, Gdot);
          if (debug) {
             System.out.println ("  " + cnt + " " + dnew);
          }
-         double alpha = dnew / dir.dot (A_dir);
-         x.scaledAdd (alpha, dir, x);
+         double alpha = dnew / dot (dir, A_dir);
+         scaledAdd (x, alpha, dir, x);
          if (myTolType == ToleranceType.AbsoluteError) {
-            if (alpha * alpha * dir.normSquared() <= resLimit) {
+            if (alpha * alpha * dot (dir, dir) <= resLimit) {
                break;
             }
          }
          if (cnt > 0 && ((cnt % 100) == 0)) {
-            A.mul (res, x);
+            mul (res, A, x);
             res.sub (b, res);
          }
          else {
-            res.scaledAdd (-alpha, A_dir, res);
+            scaledAdd (res, -alpha, A_dir, res);
          }
          projectConstraints (res, null, G, g, Gdot);
          double dold = dnew;
          if (P != null) {
             P.mul (P_res, res);
-            dnew = res.dot (P_res);
-            dir.scaledAdd (dnew / dold, dir, P_res);
+            dnew = dot (res, P_res);
+            scaledAdd (dir, dnew / dold, dir, P_res);
          }
          else {
-            dnew = res.dot (res);
-            dir.scaledAdd (dnew / dold, dir, res);
+            dnew = dot (res, res);
+            scaledAdd (dir, dnew / dold, dir, res);
          }
          cnt++;
       }
@@ -0,0 +1,1571 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.solvers;
+
+import java.util.Arrays;
+
+import maspack.concurrency.ParallelLoopManager;
+import maspack.matrix.ImproperStateException;
+import maspack.matrix.Matrix;
+import maspack.matrix.Matrix.Partition;
+import maspack.matrix.NumericalException;
+import maspack.matrix.VectorNd;
+
+/**
+ * Pure Java direct solver for sparse symmetric matrices, which computes an
+ * L D L^T factorization using a supernodal multifrontal method. Since it does
+ * not depend on any native libraries, it can be used in environments where
+ * {@link PardisoSolver} is not available.
+ *
+ * <p>Analysis consists of a fill-reducing minimum degree ordering (computed
+ * on a compressed graph in which indistinguishable rows are merged),
+ * construction of the elimination tree, and symbolic factorization into
+ * fundamental supernodes. The numeric factorization processes the supernodes
+ * level by level in the supernodal elimination tree, so that independent
+ * subtrees can be factored concurrently, while the dense updates for large
+ * supernodes near the root are themselves divided among threads. The results
+ * do not depend on the number of threads.
+ *
+ * <p>No dynamic pivoting is performed. Instead, rows with zero diagonal
+ * entries (such as the constraint rows of a KKT system) are ordered after at
+ * least one of their neighbors, and any pivot whose magnitude is less than
+ * a small tolerance is perturbed. If pivots have been perturbed, solves are
+ * followed by iterative refinement. Only symmetric matrices are supported;
+ * matrices are supplied by their upper triangular parts.
+ */
+public class SupernodalSolver implements DirectSolver {
+
+   /**
+    * Indicates that no matrix has been analyzed.
+    */
+   public static final int UNSET = 0;
+
+   /**
+    * Indicates that a matrix has been analyzed but not factored.
+    */
+   public static final int ANALYZED = 1;
+
+   /**
+    * Indicates that a matrix has been analyzed and factored.
+    */
+   public static final int FACTORED = 2;
+
+   private static int myDefaultNumThreads = 1;
+
+   // number of pivot columns factored together within a supernode
+   private static final int PANEL_SIZE = 32;
+
+   private int myState = UNSET;
+   private int myNumThreads;
+   private ParallelLoopManager myLoopManager;
+   private int myPivotPerturbation = 12;
+   private int myMaxRefinementSteps = 2;
+   private int myNumRefinementSteps = 0;
+   private int myNumPerturbedPivots = 0;
+   private int myNumNegEigenvalues = 0;
+
+   // matrix supplied by analyze(Matrix,int,int), if any
+   private Matrix myMatrix;
+   private int mySize;
+   private int myType;
+   private int myNumVals;
+   // 1-based CRS structure and values of the upper triangle
+   private int[] myRowOffs = new int[0];
+   private int[] myColIdxs = new int[0];
+   private double[] myVals = new double[0];
+
+   // ordering: myPerm[k] gives the original index of the k-th pivot
+   private int[] myPerm;
+   private int[] myIperm;
+
+   // ordering of the leading submatrix, together with a signature of that
+   // submatrix's structure, so that the ordering can be reused when only
+   // the trailing rows change
+   private int[] myLeadPerm;
+   private int[] myLeadSignature;
+   private boolean myLeadOrderingReused = false;
+   private int myNumOrderings = 0;
+
+   // lower triangle of the permuted matrix in compressed column form, with
+   // myAValIdxs giving the location of each entry within myVals
+   private int[] myAColOffs;
+   private int[] myARowIdxs;
+   private int[] myAValIdxs;
+
+   // supernode s contains columns [mySuperCols[s], mySuperCols[s+1]),
+   // and mySuperRows[s] gives its sorted row structure, beginning with
+   // its own columns
+   private int myNumSupers;
+   private int[] mySuperCols;
+   private int[][] mySuperRows;
+   private int[] myChildOffs;
+   private int[] myChildIdxs;
+   // supernodes grouped by height in the supernodal elimination tree
+   private int[] myLevelOffs;
+   private int[] myLevelSupers;
+   private long myNumNonZerosInFactors;
+
+   // numeric factorization: column-major dense blocks of L for each
+   // supernode, and the diagonal D
+   private double[][] myL;
+   private double[] myD;
+   // update matrices passed from each supernode to its parent
+   private double[][] myUpdates;
+   private Workspace[] myWorkspaces;
+   private double[] mySolveBuf = new double[0];
+
+   /**
+    * Per-thread storage used during numeric factorization.
+    */
+   private class Workspace {
+      double[] myFront = new double[0];
+      int[] myRowMap;
+      int myNumPerturbed;
+      int myNumNegative;
+
+      Workspace (int size) {
+         myRowMap = new int[size];
+      }
+
+      double[] getFront (int size) {
+         if (myFront.length < size) {
+            myFront = new double[size];
+         }
+         return myFront;
+      }
+   }
+
+   /**
+    * Creates a new SupernodalSolver, using the default number of threads.
+    */
+   public SupernodalSolver() {
+      myNumThreads = myDefaultNumThreads;
+   }
+
+   /**
+    * Sets the default number of threads used by new solvers.
+    *
+    * @param num default number of threads. Values less than 1 are set to 1.
+    */
+   public static void setDefaultNumThreads (int num) {
+      myDefaultNumThreads = Math.max (num, 1);
+   }
+
+   /**
+    * Returns the default number of threads used by new solvers.
+    *
+    * @return default number of threads
+    */
+   public static int getDefaultNumThreads() {
+      return myDefaultNumThreads;
+   }
+
+   /**
+    * Sets the number of threads used by this solver for numeric
+    * factorization. Values less than 1 cause the default number of threads
+    * to be used.
+    *
+    * @param num number of threads
+    */
+   public synchronized void setNumThreads (int num) {
+      if (num < 1) {
+         num = myDefaultNumThreads;
+      }
+      if (num != myNumThreads) {
+         myNumThreads = num;
+         if (myLoopManager != null) {
+            myLoopManager.shutdown();
+            myLoopManager = null;
+         }
+         myWorkspaces = null;
+      }
+   }
+
+   /**
+    * Returns the number of threads used by this solver for numeric
+    * factorization.
+    *
+    * @return number of threads
+    */
+   public synchronized int getNumThreads() {
+      return myNumThreads;
+   }
+
+   /**
+    * Sets the pivot perturbation. Pivots whose magnitude is less than
+    * <code>10^(-n)</code> times the largest matrix entry are replaced by
+    * this value, with the sign of the original pivot. The default value is
+    * 12.
+    *
+    * @param n negative exponent of the pivot perturbation
+    */
+   public synchronized void setPivotPerturbation (int n) {
+      myPivotPerturbation = n;
+   }
+
+   /**
+    * Returns the pivot perturbation. See {@link #setPivotPerturbation}.
+    *
+    * @return negative exponent of the pivot perturbation
+    */
+   public synchronized int getPivotPerturbation() {
+      return myPivotPerturbation;
+   }
+
+   /**
+    * Sets the maximum number of iterative refinement steps performed by
+    * a solve when the factorization contains perturbed pivots. The default
+    * value is 2.
+    *
+    * @param nsteps maximum number of refinement steps
+    */
+   public synchronized void setMaxRefinementSteps (int nsteps) {
+      myMaxRefinementSteps = Math.max (nsteps, 0);
+   }
+
+   /**
+    * Returns the maximum number of iterative refinement steps.
+    *
+    * @return maximum number of refinement steps
+    */
+   public synchronized int getMaxRefinementSteps() {
+      return myMaxRefinementSteps;
+   }
+
+   /**
+    * Returns the number of iterative refinement steps performed by the most
+    * recent solve.
+    *
+    * @return number of refinement steps
+    */
+   public synchronized int getNumRefinementSteps() {
+      return myNumRefinementSteps;
+   }
+
+   /**
+    * Returns the state of this solver, which is either {@link #UNSET},
+    * {@link #ANALYZED}, or {@link #FACTORED}.
+    *
+    * @return solver state
+    */
+   public synchronized int getState() {
+      return myState;
+   }
+
+   /**
+    * Returns the size of the most recently analyzed matrix.
+    *
+    * @return matrix size
+    */
+   public synchronized int getSize() {
+      return mySize;
+   }
+
+   /**
+    * Returns the number of non-zero entries in the factor L, including the
+    * diagonal, as determined by the most recent analysis.
+    *
+    * @return number of non-zeros in L
+    */
+   public synchronized int getNumNonZerosInFactors() {
+      return (int)Math.min (myNumNonZerosInFactors, Integer.MAX_VALUE);
+   }
+
+   /**
+    * Returns the number of supernodes determined by the most recent
+    * analysis.
+    *
+    * @return number of supernodes
+    */
+   public synchronized int numSupernodes() {
+      return myNumSupers;
+   }
+
+   /**
+    * Returns the number of negative entries in D for the most recent
+    * factorization, which equals the number of negative eigenvalues of the
+    * matrix if no pivots were perturbed.
+    *
+    * @return number of negative pivots
+    */
+   public synchronized int getNumNegEigenvalues() {
+      return myNumNegEigenvalues;
+   }
+
+   /**
+    * Returns the number of pivots that were perturbed during the most
+    * recent factorization.
+    *
+    * @return number of perturbed pivots
+    */
+   public synchronized int getNumPerturbedPivots() {
+      return myNumPerturbedPivots;
+   }
+
+   /**
+    * Returns the fill-reducing permutation computed by the most recent
+    * analysis, such that entry <code>k</code> gives the original index
+    * of the <code>k</code>-th pivot. Used for testing.
+    *
+    * @return fill-reducing permutation
+    */
+   public synchronized int[] getPermutation() {
+      return myPerm != null ? myPerm.clone() : null;
+   }
+
+   private void checkType (int type) {
+      if ((type & Matrix.SYMMETRIC) == 0) {
+         throw new IllegalArgumentException (
+            "SupernodalSolver only supports symmetric matrices");
+      }
+   }
+
+   /**
+    * Sets the matrix associated with this solver and performs symbolic
+    * analysis on it. The matrix must be symmetric and only its upper
+    * triangular part is used. If <code>size</code> is less than the size of
+    * <code>M</code>, the analysis is done on the top-left principal
+    * submatrix of the indicated size. This solver retains a pointer to
+    * <code>M</code> until the next call to <code>analyze</code>.
+    *
+    * @param M supplies the matrix to be analyzed
+    * @param size size of the matrix to be analyzed
+    * @param type type of the matrix, which must include
+    * {@link Matrix#SYMMETRIC SYMMETRIC}
+    * @throws IllegalArgumentException if the matrix is not square, if
+    * <code>size</code> is out of bounds, or if the type is not symmetric
+    */
+   public synchronized void analyze (Matrix M, int size, int type) {
+      if (M.rowSize() != M.colSize()) {
+         throw new IllegalArgumentException ("Matrix is not square");
+      }
+      if (size < 0 || size > M.rowSize()) {
+         throw new IllegalArgumentException (
+            "Requested size " + size + " is out of bounds");
+      }
+      checkType (type);
+      int numVals = M.numNonZeroVals (Partition.UpperTriangular, size, size);
+      int[] rowOffs = new int[size+1];
+      int[] colIdxs = new int[numVals];
+      double[] vals = new double[numVals];
+      M.getCRSIndices (colIdxs, rowOffs, Partition.UpperTriangular, size, size);
+      M.getCRSValues (vals, Partition.UpperTriangular, size, size);
+      analyze (vals, colIdxs, rowOffs, size, type);
+      myMatrix = M;
+   }
+
+   /**
+    * Sets the matrix associated with this solver and performs symbolic
+    * analysis on it, using the upper triangular part of a symmetric matrix
+    * described in compressed row storage (CRS) format. The values are used
+    * to identify zero diagonal entries, which are ordered so as to avoid
+    * zero pivots. It is not possible to call {@link #factor() factor()}
+    * after calling this version of <code>analyze</code>, since it does not
+    * supply a matrix from which to obtain values.
+    *
+    * @param vals values of the non-zero matrix elements
+    * @param colIdxs 1-based column indices of the non-zero matrix elements
+    * @param rowOffs 1-based row start offsets into <code>vals</code> and
+    * <code>colIdxs</code>, corresponding to CRS format
+    * @param size size of the matrix to be analyzed
+    * @param type type of the matrix, which must include
+    * {@link Matrix#SYMMETRIC SYMMETRIC}
+    * @throws IllegalArgumentException if the CRS data structures are
+    * inconsistent, contain entries below the diagonal, or if the type is not
+    * symmetric
+    */
+   public synchronized void analyze (
+      double[] vals, int[] colIdxs, int[] rowOffs, int size, int type) {
+      analyze (vals, colIdxs, rowOffs, size, type, size);
+   }
+
+   /**
+    * Performs symbolic analysis on a matrix described in CRS format, as with
+    * {@link #analyze(double[],int[],int[],int,int)}, but computes the
+    * fill-reducing ordering only for the leading principal submatrix of size
+    * <code>leadSize</code>. Each of the remaining trailing rows is ordered
+    * immediately after the last of its neighbors within the leading
+    * submatrix. This is intended for KKT systems, in which the leading
+    * submatrix is the mass/stiffness matrix and the trailing rows are
+    * constraints whose structure changes frequently (such as with contact).
+    *
+    * <p>If the structure of the leading submatrix is the same as in the
+    * previous analysis, its ordering is reused, so that only the much
+    * cheaper symbolic factorization needs to be recomputed.
+    *
+    * @param vals values of the non-zero matrix elements
+    * @param colIdxs 1-based column indices of the non-zero matrix elements
+    * @param rowOffs 1-based row start offsets into <code>vals</code> and
+    * <code>colIdxs</code>, corresponding to CRS format
+    * @param size size of the matrix to be analyzed
+    * @param type type of the matrix, which must include
+    * {@link Matrix#SYMMETRIC SYMMETRIC}
+    * @param leadSize size of the leading submatrix
+    * @throws IllegalArgumentException if the CRS data structures are
+    * inconsistent, contain entries below the diagonal, if the type is not
+    * symmetric, or if <code>leadSize</code> is out of bounds
+    */
+   public synchronized void analyze (
+      double[] vals, int[] colIdxs, int[] rowOffs, int size, int type,
+      int leadSize) {
+
+      checkType (type);
+      if (leadSize < 0 || leadSize > size) {
+         throw new IllegalArgumentException (
+            "leadSize " + leadSize + " is out of bounds");
+      }
+      if (rowOffs.length < size+1) {
+         throw new IllegalArgumentException (
+            "rowOffs has length "+rowOffs.length+", expected at least "+
+            (size+1));
+      }
+      int numVals = rowOffs[size]-1;
+      if (colIdxs.length < numVals || vals.length < numVals) {
+         throw new IllegalArgumentException (
+            "colIdxs and/or vals have length less than " + numVals);
+      }
+      for (int i=0; i<size; i++) {
+         if (rowOffs[i+1] < rowOffs[i]) {
+            throw new IllegalArgumentException (
+               "row offsets are not monotone at row " + i);
+         }
+         for (int k=rowOffs[i]-1; k<rowOffs[i+1]-1; k++) {
+            int j = colIdxs[k]-1;
+            if (j < i || j >= size) {
+               throw new IllegalArgumentException (
+                  "column index "+(j+1)+" at row "+(i+1)+
+                  " is not in the upper triangle");
+            }
+         }
+      }
+      myMatrix = null;
+      myState = UNSET;
+      mySize = size;
+      myType = type;
+      myNumVals = numVals;
+      myRowOffs = Arrays.copyOf (rowOffs, size+1);
+      myColIdxs = Arrays.copyOf (colIdxs, numVals);
+      myVals = Arrays.copyOf (vals, numVals);
+
+      int[] signature = getLeadSignature (leadSize);
+      if (myLeadPerm != null && Arrays.equals (signature, myLeadSignature)) {
+         myLeadOrderingReused = true;
+      }
+      else {
+         myLeadPerm = computeOrdering (leadSize);
+         myLeadSignature = signature;
+         myLeadOrderingReused = false;
+         myNumOrderings++;
+      }
+      setPermutation (insertTrailingRows (myLeadPerm, leadSize));
+      buildPermutedMatrix();
+      int[] parent = computeEliminationTree();
+      int[] post = computePostorder (parent);
+      int[] perm = new int[size];
+      for (int k=0; k<size; k++) {
+         perm[k] = myPerm[post[k]];
+      }
+      setPermutation (perm);
+      buildPermutedMatrix();
+      parent = computeEliminationTree();
+      computeSupernodes (parent);
+
+      myL = new double[myNumSupers][];
+      myD = new double[size];
+      myUpdates = new double[myNumSupers][];
+      myWorkspaces = null;
+      myState = ANALYZED;
+   }
+
+   private void setPermutation (int[] perm) {
+      myPerm = perm;
+      myIperm = new int[perm.length];
+      for (int k=0; k<perm.length; k++) {
+         myIperm[perm[k]] = k;
+      }
+   }
+
+   /**
+    * Returns <code>true</code> if the most recent analysis reused the
+    * ordering of the leading submatrix from the analysis before it.
+    *
+    * @return <code>true</code> if the leading ordering was reused
+    */
+   public synchronized boolean lastAnalysisReusedOrdering() {
+      return myLeadOrderingReused;
+   }
+
+   /**
+    * Returns the number of fill-reducing orderings that have been computed
+    * by this solver. Analyses that reuse an existing ordering are not
+    * included.
+    *
+    * @return number of orderings computed
+    */
+   public synchronized int numOrderingsComputed() {
+      return myNumOrderings;
+   }
+
+   /**
+    * Returns a signature describing the structure of the leading principal
+    * submatrix of size n, including which diagonal entries are zero.
+    */
+   private int[] getLeadSignature (int n) {
+      int num = 0;
+      for (int i=0; i<n; i++) {
+         for (int k=myRowOffs[i]-1; k<myRowOffs[i+1]-1; k++) {
+            if (myColIdxs[k]-1 < n) {
+               num++;
+            }
+         }
+      }
+      int[] sig = new int[2*n+1+num];
+      int idx = n+1;
+      for (int i=0; i<n; i++) {
+         int zeroDiag = 1;
+         for (int k=myRowOffs[i]-1; k<myRowOffs[i+1]-1; k++) {
+            int j = myColIdxs[k]-1;
+            if (j < n) {
+               sig[idx++] = j;
+               if (j == i && myVals[k] != 0) {
+                  zeroDiag = 0;
+               }
+            }
+         }
+         sig[i+1] = idx;
+         sig[n+1+num+i] = zeroDiag;
+      }
+      return sig;
+   }
+
+   /**
+    * Extends an ordering of the leading n rows to all rows, by placing each
+    * trailing row immediately after the last of its neighbors in the leading
+    * rows. Trailing rows with no such neighbors are placed at the end.
+    */
+   private int[] insertTrailingRows (int[] leadPerm, int n) {
+      int size = mySize;
+      if (n == size) {
+         return leadPerm.clone();
+      }
+      int[] leadIperm = new int[n];
+      for (int k=0; k<n; k++) {
+         leadIperm[leadPerm[k]] = k;
+      }
+      // key[r] gives the position in leadPerm after which trailing row
+      // r is to be placed
+      int[] key = new int[size-n];
+      Arrays.fill (key, -1);
+      for (int i=0; i<n; i++) {
+         for (int k=myRowOffs[i]-1; k<myRowOffs[i+1]-1; k++) {
+            int j = myColIdxs[k]-1;
+            if (j >= n) {
+               key[j-n] = Math.max (key[j-n], leadIperm[i]);
+            }
+         }
+      }
+      int[] offs = new int[n+2];
+      for (int r=0; r<size-n; r++) {
+         if (key[r] == -1) {
+            key[r] = n;
+         }
+         offs[key[r]+1]++;
+      }
+      for (int p=0; p<=n; p++) {
+         offs[p+1] += offs[p];
+      }
+      int[] trailing = new int[size-n];
+      int[] cnts = Arrays.copyOf (offs, n+1);
+      for (int r=0; r<size-n; r++) {
+         trailing[cnts[key[r]]++] = r+n;
+      }
+      int[] perm = new int[size];
+      int k = 0;
+      for (int p=0; p<=n; p++) {
+         if (p < n) {
+            perm[k++] = leadPerm[p];
+         }
+         for (int l=offs[p]; l<offs[p+1]; l++) {
+            perm[k++] = trailing[l];
+         }
+      }
+      return perm;
+   }
+
+   /**
+    * Computes the fill-reducing ordering for the leading principal
+    * submatrix of size n. Rows with identical structure are first merged
+    * into weighted supervariables, which substantially reduces the size of
+    * the graph for matrices with block structure.
+    */
+   private int[] computeOrdering (int n) {
+
+      // build the symmetric adjacency structure, without the diagonal
+      int[] adjOffs = new int[n+1];
+      boolean[] zeroDiag = new boolean[n];
+      Arrays.fill (zeroDiag, true);
+      for (int i=0; i<n; i++) {
+         for (int k=myRowOffs[i]-1; k<myRowOffs[i+1]-1; k++) {
+            int j = myColIdxs[k]-1;
+            if (j >= n) {
+               continue;
+            }
+            if (j != i) {
+               adjOffs[i+1]++;
+               adjOffs[j+1]++;
+            }
+            else if (myVals[k] != 0) {
+               zeroDiag[i] = false;
+            }
+         }
+      }
+      for (int i=0; i<n; i++) {
+         adjOffs[i+1] += adjOffs[i];
+      }
+      int[] adjIdxs = new int[adjOffs[n]];
+      int[] offs = Arrays.copyOf (adjOffs, n);
+      for (int i=0; i<n; i++) {
+         for (int k=myRowOffs[i]-1; k<myRowOffs[i+1]-1; k++) {
+            int j = myColIdxs[k]-1;
+            if (j != i && j < n) {
+               adjIdxs[offs[i]++] = j;
+               adjIdxs[offs[j]++] = i;
+            }
+         }
+      }
+
+      // find supervariables: variables i and r are indistinguishable if
+      // adj(i)+{i} == adj(r)+{r}
+      int[] rep = new int[n];
+      int[] hashHead = new int[Math.max(n,1)];
+      int[] hashNext = new int[n];
+      Arrays.fill (hashHead, -1);
+      int[] mark = new int[n];
+      Arrays.fill (mark, -1);
+      for (int i=0; i<n; i++) {
+         long hash = i;
+         for (int k=adjOffs[i]; k<adjOffs[i+1]; k++) {
+            hash += adjIdxs[k];
+            mark[adjIdxs[k]] = i;
+         }
+         mark[i] = i;
+         int deg = adjOffs[i+1]-adjOffs[i];
+         int h = (int)(hash % n);
+         rep[i] = i;
+         for (int r=hashHead[h]; r!=-1; r=hashNext[r]) {
+            if (adjOffs[r+1]-adjOffs[r] == deg &&
+                zeroDiag[r] == zeroDiag[i] && mark[r] == i) {
+               boolean same = true;
+               for (int k=adjOffs[r]; k<adjOffs[r+1]; k++) {
+                  if (mark[adjIdxs[k]] != i) {
+                     same = false;
+                     break;
+                  }
+               }
+               if (same) {
+                  rep[i] = r;
+                  break;
+               }
+            }
+         }
+         if (rep[i] == i) {
+            hashNext[i] = hashHead[h];
+            hashHead[h] = i;
+         }
+      }
+
+      // build the compressed graph
+      int[] cidx = new int[n];
+      int nc = 0;
+      for (int i=0; i<n; i++) {
+         if (rep[i] == i) {
+            cidx[i] = nc++;
+         }
+         else {
+            cidx[i] = cidx[rep[i]];
+         }
+      }
+      int[] weights = new int[nc];
+      boolean[] delayed = new boolean[nc];
+      int[] repOf = new int[nc];
+      for (int i=0; i<n; i++) {
+         weights[cidx[i]]++;
+         if (rep[i] == i) {
+            repOf[cidx[i]] = i;
+            delayed[cidx[i]] = zeroDiag[i];
+         }
+      }
+      int[] cadjOffs = new int[nc+1];
+      int[] cadjIdxs = new int[adjOffs[n]];
+      Arrays.fill (mark, -1);
+      int num = 0;
+      for (int c=0; c<nc; c++) {
+         int r = repOf[c];
+         cadjOffs[c] = num;
+         mark[c] = c;
+         for (int k=adjOffs[r]; k<adjOffs[r+1]; k++) {
+            int d = cidx[adjIdxs[k]];
+            if (mark[d] != c) {
+               mark[d] = c;
+               cadjIdxs[num++] = d;
+            }
+         }
+      }
+      cadjOffs[nc] = num;
+
+      int[] corder = MinimumDegreeOrdering.computeOrdering (
+         nc, cadjOffs, cadjIdxs, weights, delayed);
+
+      // expand the ordering
+      int[] memberOffs = new int[nc+1];
+      for (int i=0; i<n; i++) {
+         memberOffs[cidx[i]+1]++;
+      }
+      for (int c=0; c<nc; c++) {
+         memberOffs[c+1] += memberOffs[c];
+      }
+      int[] members = new int[n];
+      int[] moffs = Arrays.copyOf (memberOffs, nc);
+      for (int i=0; i<n; i++) {
+         members[moffs[cidx[i]]++] = i;
+      }
+      int[] perm = new int[n];
+      int k = 0;
+      for (int l=0; l<nc; l++) {
+         int c = corder[l];
+         for (int m=memberOffs[c]; m<memberOffs[c+1]; m++) {
+            perm[k++] = members[m];
+         }
+      }
+      return perm;
+   }
+
+   /**
+    * Builds the lower triangle of the permuted matrix in compressed column
+    * form, with sorted row indices.
+    */
+   private void buildPermutedMatrix() {
+      int n = mySize;
+      int[] colOffs = new int[n+1];
+      for (int i=0; i<n; i++) {
+         for (int k=myRowOffs[i]-1; k<myRowOffs[i+1]-1; k++) {
+            int pi = myIperm[i];
+            int pj = myIperm[myColIdxs[k]-1];
+            colOffs[Math.min(pi,pj)+1]++;
+         }
+      }
+      int maxCol = 0;
+      for (int j=0; j<n; j++) {
+         maxCol = Math.max (maxCol, colOffs[j+1]);
+         colOffs[j+1] += colOffs[j];
+      }
+      int[] rowIdxs = new int[myNumVals];
+      int[] valIdxs = new int[myNumVals];
+      int[] offs = Arrays.copyOf (colOffs, n);
+      for (int i=0; i<n; i++) {
+         for (int k=myRowOffs[i]-1; k<myRowOffs[i+1]-1; k++) {
+            int pi = myIperm[i];
+            int pj = myIperm[myColIdxs[k]-1];
+            int col = Math.min (pi, pj);
+            rowIdxs[offs[col]] = Math.max (pi, pj);
+            valIdxs[offs[col]++] = k;
+         }
+      }
+      long[] keys = new long[maxCol];
+      for (int j=0; j<n; j++) {
+         int num = 0;
+         for (int p=colOffs[j]; p<colOffs[j+1]; p++) {
+            keys[num++] = (((long)rowIdxs[p]) << 32) | valIdxs[p];
+         }
+         Arrays.sort (keys, 0, num);
+         num = 0;
+         for (int p=colOffs[j]; p<colOffs[j+1]; p++) {
+            rowIdxs[p] = (int)(keys[num] >>> 32);
+            valIdxs[p] = (int)(keys[num] & 0xffffffffL);
+            num++;
+         }
+      }
+      myAColOffs = colOffs;
+      myARowIdxs = rowIdxs;
+      myAValIdxs = valIdxs;
+   }
+
+   /**
+    * Builds the lower triangle of the permuted matrix in compressed row form
+    * (excluding the diagonal), from the compressed column form.
+    */
+   private int[][] getLowerRowStructure() {
+      int n = mySize;
+      int[] rowOffs = new int[n+1];
+      for (int j=0; j<n; j++) {
+         for (int p=myAColOffs[j]; p<myAColOffs[j+1]; p++) {
+            if (myARowIdxs[p] != j) {
+               rowOffs[myARowIdxs[p]+1]++;
+            }
+         }
+      }
+      for (int i=0; i<n; i++) {
+         rowOffs[i+1] += rowOffs[i];
+      }
+      int[] colIdxs = new int[rowOffs[n]];
+      int[] offs = Arrays.copyOf (rowOffs, n);
+      for (int j=0; j<n; j++) {
+         for (int p=myAColOffs[j]; p<myAColOffs[j+1]; p++) {
+            int i = myARowIdxs[p];
+            if (i != j) {
+               colIdxs[offs[i]++] = j;
+            }
+         }
+      }
+      return new int[][] { rowOffs, colIdxs };
+   }
+
+   /**
+    * Computes the elimination tree of the permuted matrix, using Liu's
+    * algorithm with path compression.
+    */
+   private int[] computeEliminationTree() {
+      int n = mySize;
+      int[][] lower = getLowerRowStructure();
+      int[] rowOffs = lower[0];
+      int[] colIdxs = lower[1];
+      int[] parent = new int[n];
+      int[] ancestor = new int[n];
+      for (int i=0; i<n; i++) {
+         parent[i] = -1;
+         ancestor[i] = -1;
+         for (int p=rowOffs[i]; p<rowOffs[i+1]; p++) {
+            int r = colIdxs[p];
+            while (ancestor[r] != -1 && ancestor[r] != i) {
+               int t = ancestor[r];
+               ancestor[r] = i;
+               r = t;
+            }
+            if (ancestor[r] == -1) {
+               ancestor[r] = i;
+               parent[r] = i;
+            }
+         }
+      }
+      return parent;
+   }
+
+   /**
+    * Computes a postordering of a forest, with children visited in
+    * ascending order.
+    */
+   private int[] computePostorder (int[] parent) {
+      int n = parent.length;
+      int[] head = new int[n];
+      int[] next = new int[n];
+      Arrays.fill (head, -1);
+      for (int j=n-1; j>=0; j--) {
+         if (parent[j] != -1) {
+            next[j] = head[parent[j]];
+            head[parent[j]] = j;
+         }
+      }
+      int[] post = new int[n];
+      int[] stack = new int[n];
+      int k = 0;
+      for (int j=0; j<n; j++) {
+         if (parent[j] != -1) {
+            continue;
+         }
+         int top = 0;
+         stack[0] = j;
+         while (top >= 0) {
+            int p = stack[top];
+            int c = head[p];
+            if (c == -1) {
+               post[k++] = p;
+               top--;
+            }
+            else {
+               head[p] = next[c];
+               stack[++top] = c;
+            }
+         }
+      }
+      return post;
+   }
+
+   /**
+    * Computes the column counts of L, the fundamental supernodes and their
+    * row structures, and groups the supernodes into levels for parallel
+    * factorization. Assumes that the elimination tree is postordered.
+    */
+   private void computeSupernodes (int[] parent) {
+      int n = mySize;
+      int[][] lower = getLowerRowStructure();
+      int[] lrowOffs = lower[0];
+      int[] lcolIdxs = lower[1];
+
+      // column counts, found by traversing the row subtrees
+      int[] colCount = new int[n];
+      int[] mark = new int[n];
+      Arrays.fill (mark, -1);
+      int[] numChildren = new int[n];
+      for (int i=0; i<n; i++) {
+         colCount[i]++;
+         mark[i] = i;
+         for (int p=lrowOffs[i]; p<lrowOffs[i+1]; p++) {
+            int j = lcolIdxs[p];
+            while (mark[j] != i) {
+               colCount[j]++;
+               mark[j] = i;
+               j = parent[j];
+            }
+         }
+         if (parent[i] != -1) {
+            numChildren[parent[i]]++;
+         }
+      }
+
+      // fundamental supernodes
+      int[] superOf = new int[n];
+      int[] superCols = new int[n+1];
+      int ns = 0;
+      for (int j=0; j<n; j++) {
+         if (j > 0 && parent[j-1] == j && numChildren[j] == 1 &&
+             colCount[j-1] == colCount[j]+1) {
+            superOf[j] = ns-1;
+         }
+         else {
+            superCols[ns] = j;
+            superOf[j] = ns++;
+         }
+      }
+      superCols[ns] = n;
+      mySuperCols = Arrays.copyOf (superCols, ns+1);
+      myNumSupers = ns;
+
+      // supernodal elimination tree and children
+      int[] superParent = new int[ns];
+      myChildOffs = new int[ns+1];
+      for (int s=0; s<ns; s++) {
+         int p = parent[mySuperCols[s+1]-1];
+         superParent[s] = (p == -1 ? -1 : superOf[p]);
+         if (p != -1) {
+            myChildOffs[superParent[s]+1]++;
+         }
+      }
+      for (int s=0; s<ns; s++) {
+         myChildOffs[s+1] += myChildOffs[s];
+      }
+      myChildIdxs = new int[myChildOffs[ns]];
+      int[] offs = Arrays.copyOf (myChildOffs, ns);
+      for (int s=0; s<ns; s++) {
+         if (superParent[s] != -1) {
+            myChildIdxs[offs[superParent[s]]++] = s;
+         }
+      }
+
+      // row structures. Children always precede their parents.
+      mySuperRows = new int[ns][];
+      Arrays.fill (mark, -1);
+      int[] rows = new int[n];
+      myNumNonZerosInFactors = 0;
+      for (int s=0; s<ns; s++) {
+         int f = mySuperCols[s];
+         int l = mySuperCols[s+1];
+         int num = 0;
+         for (int j=f; j<l; j++) {
+            rows[num++] = j;
+            mark[j] = s;
+         }
+         for (int j=f; j<l; j++) {
+            for (int p=myAColOffs[j]; p<myAColOffs[j+1]; p++) {
+               int i = myARowIdxs[p];
+               if (mark[i] != s) {
+                  mark[i] = s;
+                  rows[num++] = i;
+               }
+            }
+         }
+         for (int k=myChildOffs[s]; k<myChildOffs[s+1]; k++) {
+            int c = myChildIdxs[k];
+            int[] crows = mySuperRows[c];
+            int kc = mySuperCols[c+1]-mySuperCols[c];
+            for (int r=kc; r<crows.length; r++) {
+               int i = crows[r];
+               if (mark[i] != s) {
+                  mark[i] = s;
+                  rows[num++] = i;
+               }
+            }
+         }
+         Arrays.sort (rows, l-f, num);
+         mySuperRows[s] = Arrays.copyOf (rows, num);
+         long ncols = l-f;
+         myNumNonZerosInFactors += ncols*num - ncols*(ncols-1)/2;
+      }
+
+      // group supernodes by height
+      int[] height = new int[ns];
+      int maxHeight = 0;
+      for (int s=0; s<ns; s++) {
+         int h = 0;
+         for (int k=myChildOffs[s]; k<myChildOffs[s+1]; k++) {
+            h = Math.max (h, height[myChildIdxs[k]]+1);
+         }
+         height[s] = h;
+         maxHeight = Math.max (maxHeight, h);
+      }
+      myLevelOffs = new int[maxHeight+2];
+      for (int s=0; s<ns; s++) {
+         myLevelOffs[height[s]+1]++;
+      }
+      for (int h=0; h<=maxHeight; h++) {
+         myLevelOffs[h+1] += myLevelOffs[h];
+      }
+      myLevelSupers = new int[ns];
+      offs = Arrays.copyOf (myLevelOffs, maxHeight+1);
+      for (int s=0; s<ns; s++) {
+         myLevelSupers[offs[height[s]]++] = s;
+      }
+   }
+
+   private ParallelLoopManager getLoopManager() {
+      if (myLoopManager == null) {
+         myLoopManager =
+            new ParallelLoopManager ("supernodalSolver", myNumThreads);
+      }
+      return myLoopManager;
+   }
+
+   /**
+    * Factors the matrix that was supplied by a previous call to
+    * {@link #analyze(Matrix,int,int) analyze(Matrix,int,int)} or
+    * {@link #analyzeAndFactor analyzeAndFactor()}, using its current
+    * numeric values.
+    *
+    * @throws ImproperStateException if not preceded by a call to
+    * {@link #analyze(Matrix,int,int) analyze(Matrix,int,int)} or
+    * {@link #analyzeAndFactor analyzeAndFactor()}
+    * @throws NumericalException if a zero pivot is encountered and pivot
+    * perturbation is disabled
+    */
+   public void factor() {
+      if (myMatrix == null) {
+         throw new ImproperStateException (
+            "analyze(Matrix) or analyzeAndFactor(Matrix) not previously called");
+      }
+      synchronized (this) {
+         myMatrix.getCRSValues (
+            myVals, Partition.UpperTriangular, mySize, mySize);
+         doFactor();
+      }
+   }
+
+   /**
+    * Factors the most recently analyzed matrix using the supplied numeric
+    * values, which must be arranged according to the CRS structure given to
+    * {@link #analyze(double[],int[],int[],int,int) analyze()}.
+    *
+    * @param vals non-zero matrix element values
+    * @throws ImproperStateException if no matrix has been analyzed
+    * @throws IllegalArgumentException if fewer values are supplied than
+    * the number of non-zero elements in the analyzed matrix
+    * @throws NumericalException if a zero pivot is encountered and pivot
+    * perturbation is disabled
+    */
+   public synchronized void factor (double[] vals) {
+      if (myState == UNSET) {
+         throw new ImproperStateException ("No matrix currently set");
+      }
+      if (vals.length < myNumVals) {
+         throw new IllegalArgumentException (
+            "Not enough values: vals.length=" + vals.length +
+            ", expected number is " + myNumVals);
+      }
+      System.arraycopy (vals, 0, myVals, 0, myNumVals);
+      doFactor();
+   }
+
+   private void doFactor() {
+      int nthreads = myNumThreads;
+      if (myWorkspaces == null) {
+         myWorkspaces = new Workspace[nthreads];
+         for (int i=0; i<nthreads; i++) {
+            myWorkspaces[i] = new Workspace (mySize);
+         }
+      }
+      for (Workspace ws : myWorkspaces) {
+         ws.myNumPerturbed = 0;
+         ws.myNumNegative = 0;
+      }
+      double maxAbs = 0;
+      for (int k=0; k<myNumVals; k++) {
+         maxAbs = Math.max (maxAbs, Math.abs (myVals[k]));
+      }
+      final double pivotTol = maxAbs*Math.pow (10, -myPivotPerturbation);
+      myState = ANALYZED;
+      try {
+         for (int h=0; h<myLevelOffs.length-1; h++) {
+            final int off = myLevelOffs[h];
+            final int num = myLevelOffs[h+1]-off;
+            if (num == 1 || nthreads == 1) {
+               for (int k=0; k<num; k++) {
+                  factorSupernode (
+                     myLevelSupers[off+k], myWorkspaces[0], pivotTol,
+                     nthreads > 1);
+               }
+            }
+            else {
+               getLoopManager().execute (
+                  num, new ParallelLoopManager.RangeTask() {
+                     public void run (int tidx, int start, int end) {
+                        for (int k=start; k<end; k++) {
+                           factorSupernode (
+                              myLevelSupers[off+k], myWorkspaces[tidx],
+                              pivotTol, false);
+                        }
+                     }
+                  });
+            }
+         }
+      }
+      finally {
+         Arrays.fill (myUpdates, null);
+      }
+      myNumPerturbedPivots = 0;
+      myNumNegEigenvalues = 0;
+      for (Workspace ws : myWorkspaces) {
+         myNumPerturbedPivots += ws.myNumPerturbed;
+         myNumNegEigenvalues += ws.myNumNegative;
+      }
+      myState = FACTORED;
+   }
+
+   /**
+    * Assembles the frontal matrix for supernode s, factors its pivot
+    * columns, and computes the update matrix to be passed to its parent.
+    */
+   private void factorSupernode (
+      int s, Workspace ws, double pivotTol, boolean parallelUpdate) {
+
+      int f = mySuperCols[s];
+      int k = mySuperCols[s+1]-f;
+      int[] rows = mySuperRows[s];
+      int m = rows.length;
+      double[] F = ws.getFront (m*m);
+      Arrays.fill (F, 0, m*m, 0);
+      int[] map = ws.myRowMap;
+      for (int r=0; r<m; r++) {
+         map[rows[r]] = r;
+      }
+
+      // assemble original entries
+      for (int j=f; j<f+k; j++) {
+         int coff = (j-f)*m;
+         for (int p=myAColOffs[j]; p<myAColOffs[j+1]; p++) {
+            F[map[myARowIdxs[p]] + coff] += myVals[myAValIdxs[p]];
+         }
+      }
+      // extend-add the update matrices of the children
+      for (int q=myChildOffs[s]; q<myChildOffs[s+1]; q++) {
+         int c = myChildIdxs[q];
+         double[] U = myUpdates[c];
+         int[] crows = mySuperRows[c];
+         int kc = mySuperCols[c+1]-mySuperCols[c];
+         int mc = crows.length-kc;
+         for (int b=0; b<mc; b++) {
+            int coff = map[crows[kc+b]]*m;
+            int uoff = b*mc;
+            for (int a=b; a<mc; a++) {
+               F[map[crows[kc+a]] + coff] += U[a + uoff];
+            }
+         }
+         myUpdates[c] = null;
+      }
+
+      // factor the pivot columns, in panels of PANEL_SIZE columns. Within
+      // each panel, columns are factored left-looking; each completed panel
+      // is then applied to the remaining pivot columns.
+      for (int p=0; p<k; p+=PANEL_SIZE) {
+         int pe = Math.min (p+PANEL_SIZE, k);
+         for (int j=p; j<pe; j++) {
+            updateColumn (F, m, f, p, j, j);
+            int joff = j*m;
+            double d = F[j + joff];
+            if (Math.abs (d) <= pivotTol) {
+               if (pivotTol == 0) {
+                  throw new NumericalException (
+                     "Zero pivot encountered at row " + myPerm[f+j]);
+               }
+               d = (d < 0 ? -pivotTol : pivotTol);
+               ws.myNumPerturbed++;
+            }
+            if (d < 0) {
+               ws.myNumNegative++;
+            }
+            myD[f+j] = d;
+            F[j + joff] = d;
+            double dinv = 1/d;
+            for (int i=j+1; i<m; i++) {
+               F[i + joff] *= dinv;
+            }
+         }
+         updateColumns (F, m, f, p, pe, pe, k, parallelUpdate);
+      }
+      double[] L = myL[s];
+      if (L == null || L.length != m*k) {
+         L = new double[m*k];
+         myL[s] = L;
+      }
+      System.arraycopy (F, 0, L, 0, m*k);
+
+      // compute the update matrix
+      int mc = m-k;
+      if (mc > 0) {
+         updateColumns (F, m, f, 0, k, k, m, parallelUpdate);
+         double[] U = new double[mc*mc];
+         for (int c=0; c<mc; c++) {
+            System.arraycopy (F, (k+c)+(k+c)*m, U, c+c*mc, mc-c);
+         }
+         myUpdates[s] = U;
+      }
+   }
+
+   /**
+    * Applies the updates from pivot columns [j0, j1) of a front to the
+    * target columns [t0, t1). If <code>parallel</code> is
+    * <code>true</code> and there are enough target columns, the work is
+    * divided among threads. Each column is updated in the same way
+    * regardless of the number of threads.
+    */
+   private void updateColumns (
+      final double[] F, final int m, final int f, final int j0, final int j1,
+      final int t0, final int t1, boolean parallel) {
+
+      final int ngroups = (t1-t0+3)/4;
+      if (parallel && t1-t0 > 64) {
+         final ParallelLoopManager mgr = getLoopManager();
+         final int nthreads = mgr.getNumThreads();
+         // column groups are interleaved among threads since their cost
+         // decreases with the column index
+         mgr.execute (
+            nthreads, new ParallelLoopManager.RangeTask() {
+               public void run (int tidx, int start, int end) {
+                  for (int t=start; t<end; t++) {
+                     for (int g=t; g<ngroups; g+=nthreads) {
+                        updateColumnGroup (F, m, f, j0, j1, t0+4*g, t1);
+                     }
+                  }
+               }
+            });
+      }
+      else {
+         for (int g=0; g<ngroups; g++) {
+            updateColumnGroup (F, m, f, j0, j1, t0+4*g, t1);
+         }
+      }
+   }
+
+   /**
+    * Applies the updates from pivot columns [j0, j1) to the group of up to
+    * four target columns beginning at column t, where t1 bounds the target
+    * columns.
+    */
+   private void updateColumnGroup (
+      double[] F, int m, int f, int j0, int j1, int t, int t1) {
+      if (t+4 <= t1) {
+         updateColumns4 (F, m, f, j0, j1, t);
+      }
+      else {
+         for ( ; t<t1; t++) {
+            updateColumn (F, m, f, j0, j1, t);
+         }
+      }
+   }
+
+   /**
+    * Applies the updates from pivot columns [j0, j1) of a front to column t
+    * of the front, for rows t and below. Pivot column j has been scaled by
+    * its pivot, which is stored in myD[f+j].
+    */
+   private void updateColumn (
+      double[] F, int m, int f, int j0, int j1, int t) {
+      int toff = t*m;
+      for (int j=j0; j<j1; j++) {
+         int joff = j*m;
+         double w = myD[f+j]*F[t + joff];
+         if (w != 0) {
+            for (int i=t; i<m; i++) {
+               F[i + toff] -= F[i + joff]*w;
+            }
+         }
+      }
+   }
+
+   /**
+    * Applies the updates from pivot columns [j0, j1) of a front to the four
+    * columns t, ..., t+3 of the front. Four pivot columns are applied to the
+    * four target columns at a time, which greatly reduces the memory traffic
+    * per operation. Entries above the diagonal in the target columns are
+    * not used, and are simply overwritten.
+    */
+   private void updateColumns4 (
+      double[] F, int m, int f, int j0, int j1, int t) {
+      int c0 = t*m;
+      int c1 = c0+m;
+      int c2 = c1+m;
+      int c3 = c2+m;
+      int j = j0;
+      for ( ; j+3<j1; j+=4) {
+         int o0 = j*m;
+         int o1 = o0+m;
+         int o2 = o1+m;
+         int o3 = o2+m;
+         double d0 = myD[f+j];
+         double d1 = myD[f+j+1];
+         double d2 = myD[f+j+2];
+         double d3 = myD[f+j+3];
+         // w_ab = d_b L(t+a,j+b)
+         double w00 = d0*F[t+o0], w01 = d1*F[t+o1];
+         double w02 = d2*F[t+o2], w03 = d3*F[t+o3];
+         double w10 = d0*F[t+1+o0], w11 = d1*F[t+1+o1];
+         double w12 = d2*F[t+1+o2], w13 = d3*F[t+1+o3];
+         double w20 = d0*F[t+2+o0], w21 = d1*F[t+2+o1];
+         double w22 = d2*F[t+2+o2], w23 = d3*F[t+2+o3];
+         double w30 = d0*F[t+3+o0], w31 = d1*F[t+3+o1];
+         double w32 = d2*F[t+3+o2], w33 = d3*F[t+3+o3];
+         for (int i=t; i<m; i++) {
+            double l0 = F[i+o0];
+            double l1 = F[i+o1];
+            double l2 = F[i+o2];
+            double l3 = F[i+o3];
+            F[i+c0] -= l0*w00 + l1*w01 + l2*w02 + l3*w03;
+            F[i+c1] -= l0*w10 + l1*w11 + l2*w12 + l3*w13;
+            F[i+c2] -= l0*w20 + l1*w21 + l2*w22 + l3*w23;
+            F[i+c3] -= l0*w30 + l1*w31 + l2*w32 + l3*w33;
+         }
+      }
+      for ( ; j<j1; j++) {
+         int joff = j*m;
+         double d = myD[f+j];
+         double w0 = d*F[t+joff];
+         double w1 = d*F[t+1+joff];
+         double w2 = d*F[t+2+joff];
+         double w3 = d*F[t+3+joff];
+         for (int i=t; i<m; i++) {
+            double l = F[i+joff];
+            F[i+c0] -= l*w0;
+            F[i+c1] -= l*w1;
+            F[i+c2] -= l*w2;
+            F[i+c3] -= l*w3;
+         }
+      }
+   }
+
+   /**
+    * Factors a matrix. This is equivalent to
+    * <pre>
+    *   analyze (M, M.rowSize(), Matrix.SYMMETRIC)
+    *   factor()
+    * </pre>
+    * Note that <code>M</code> is assumed to be symmetric.
+    *
+    * @param M matrix to factor
+    */
+   public void analyzeAndFactor (Matrix M) {
+      analyze (M, M.rowSize(), Matrix.SYMMETRIC);
+      factor();
+   }
+
+   private void checkSolveArgs (int xsize, int bsize) {
+      if (myState != FACTORED) {
+         throw new ImproperStateException ("Matrix not factored");
+      }
+      if (xsize < mySize) {
+         throw new IllegalArgumentException (
+            "x is too small: size="+xsize+", expected size is "+mySize);
+      }
+      if (bsize < mySize) {
+         throw new IllegalArgumentException (
+            "b is too small: size="+bsize+", expected size is "+mySize);
+      }
+   }
+
+   /**
+    * Solves the system
+    * <pre>
+    *  M x = b
+    * </pre>
+    * using the current factorization.
+    *
+    * @param x vector in which result is returned
+    * @param b right hand side vector
+    * @throws ImproperStateException if the matrix has not been factored
+    */
+   public void solve (VectorNd x, VectorNd b) {
+      checkSolveArgs (x.size(), b.size());
+      solve (x.getBuffer(), b.getBuffer());
+   }
+
+   /**
+    * Solves the system
+    * <pre>
+    *  M x = b
+    * </pre>
+    * using the current factorization. If any pivots were perturbed during
+    * the factorization, the solution is improved by iterative refinement.
+    *
+    * @param x array in which result is returned
+    * @param b right hand side array
+    * @throws ImproperStateException if the matrix has not been factored
+    */
+   public synchronized void solve (double[] x, double[] b) {
+      checkSolveArgs (x.length, b.length);
+      int n = mySize;
+      if (b == x) {
+         b = Arrays.copyOf (b, n);
+      }
+      doSolve (x, b);
+      myNumRefinementSteps = 0;
+      if (myNumPerturbedPivots > 0 && myMaxRefinementSteps > 0) {
+         double[] r = new double[n];
+         double[] dx = new double[n];
+         double bnorm = 0;
+         for (int i=0; i<n; i++) {
+            bnorm = Math.max (bnorm, Math.abs (b[i]));
+         }
+         for (int step=0; step<myMaxRefinementSteps; step++) {
+            computeResidual (r, x, b);
+            double rnorm = 0;
+            for (int i=0; i<n; i++) {
+               rnorm = Math.max (rnorm, Math.abs (r[i]));
+            }
+            if (rnorm <= 1e-15*bnorm) {
+               break;
+            }
+            doSolve (dx, r);
+            for (int i=0; i<n; i++) {
+               x[i] += dx[i];
+            }
+            myNumRefinementSteps++;
+         }
+      }
+   }
+
+   /**
+    * Computes r = b - M x, using the upper triangular CRS values.
+    */
+   private void computeResidual (double[] r, double[] x, double[] b) {
+      int n = mySize;
+      for (int i=0; i<n; i++) {
+         r[i] = b[i];
+      }
+      for (int i=0; i<n; i++) {
+         double sum = 0;
+         double xi = x[i];
+         for (int k=myRowOffs[i]-1; k<myRowOffs[i+1]-1; k++) {
+            int j = myColIdxs[k]-1;
+            double v = myVals[k];
+            sum += v*x[j];
+            if (j != i) {
+               r[j] -= v*xi;
+            }
+         }
+         r[i] -= sum;
+      }
+   }
+
+   private void doSolve (double[] x, double[] b) {
+      int n = mySize;
+      if (mySolveBuf.length < n) {
+         mySolveBuf = new double[n];
+      }
+      double[] y = mySolveBuf;
+      for (int k=0; k<n; k++) {
+         y[k] = b[myPerm[k]];
+      }
+      // forward substitution with L
+      for (int s=0; s<myNumSupers; s++) {
+         int f = mySuperCols[s];
+         int k = mySuperCols[s+1]-f;
+         int[] rows = mySuperRows[s];
+         int m = rows.length;
+         double[] L = myL[s];
+         for (int j=0; j<k; j++) {
+            double yj = y[f+j];
+            if (yj != 0) {
+               int joff = j*m;
+               for (int i=j+1; i<m; i++) {
+                  y[rows[i]] -= L[i + joff]*yj;
+               }
+            }
+         }
+      }
+      for (int k=0; k<n; k++) {
+         y[k] /= myD[k];
+      }
+      // backward substitution with L^T
+      for (int s=myNumSupers-1; s>=0; s--) {
+         int f = mySuperCols[s];
+         int k = mySuperCols[s+1]-f;
+         int[] rows = mySuperRows[s];
+         int m = rows.length;
+         double[] L = myL[s];
+         for (int j=k-1; j>=0; j--) {
+            int joff = j*m;
+            double sum = y[f+j];
+            for (int i=j+1; i<m; i++) {
+               sum -= L[i + joff]*y[rows[i]];
+            }
+            y[f+j] = sum;
+         }
+      }
+      for (int k=0; k<n; k++) {
+         x[myPerm[k]] = y[k];
+      }
+   }
+
+   /**
+    * Factors the current matrix and then solves <code>M x = b</code>.
+    * Since this solver does not support auto-iterative solving,
+    * <code>tolExp</code> is ignored.
+    *
+    * @param x vector in which result is returned
+    * @param b right hand side vector
+    * @param tolExp ignored
+    */
+   public void autoFactorAndSolve (VectorNd x, VectorNd b, int tolExp) {
+      factor();
+      solve (x, b);
+   }
+
+   /**
+    * Returns <code>false</code>, since this solver does not support
+    * auto-iterative solving.
+    *
+    * @return <code>false</code>
+    */
+   public boolean hasAutoIterativeSolving() {
+      return false;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public synchronized void dispose() {
+      if (myLoopManager != null) {
+         myLoopManager.shutdown();
+         myLoopManager = null;
+      }
+      myMatrix = null;
+      myL = null;
+      myD = null;
+      myUpdates = null;
+      myWorkspaces = null;
+      mySuperRows = null;
+      myLeadPerm = null;
+      myLeadSignature = null;
+      myState = UNSET;
+   }
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.solvers;
+
+import java.io.*;
+
+import maspack.util.*;
+import maspack.matrix.*;
+
+public class SupernodalSolverTest extends UnitTest {
+
+   private static double EPS = 1e-10;
+
+   /**
+    * Creates a symmetric positive definite matrix with the structure of a
+    * 3D grid of nodes, each having 3 degrees of freedom, similar to the
+    * stiffness matrix of a hexahedral FEM mesh.
+    */
+   SparseMatrixNd createGridMatrix (int nx, int ny, int nz) {
+      int numNodes = nx*ny*nz;
+      SparseMatrixNd S = new SparseMatrixNd (3*numNodes, 3*numNodes);
+      MatrixNd B = new MatrixNd (3, 3);
+      for (int i=0; i<nx; i++) {
+         for (int j=0; j<ny; j++) {
+            for (int k=0; k<nz; k++) {
+               int n0 = (i*ny + j)*nz + k;
+               for (int di=0; di<=1; di++) {
+                  for (int dj=0; dj<=1; dj++) {
+                     for (int dk=0; dk<=1; dk++) {
+                        if (i+di >= nx || j+dj >= ny || k+dk >= nz ||
+                            di+dj+dk == 0) {
+                           continue;
+                        }
+                        int n1 = ((i+di)*ny + (j+dj))*nz + (k+dk);
+                        B.setRandom();
+                        addCoupling (S, n0, n1, B);
+                     }
+                  }
+               }
+            }
+         }
+      }
+      // ensure the matrix is positive definite
+      for (int i=0; i<S.rowSize(); i++) {
+         S.set (i, i, S.get (i, i) + 0.1);
+      }
+      return S;
+   }
+
+   /**
+    * Adds the term [ B^T B, -B^T B; -B^T B, B^T B ] coupling nodes n0 and n1.
+    */
+   private void addCoupling (SparseMatrixNd S, int n0, int n1, MatrixNd B) {
+      MatrixNd K = new MatrixNd (3, 3);
+      K.mulTransposeLeft (B, B);
+      for (int a=0; a<3; a++) {
+         for (int b=0; b<3; b++) {
+            double k = K.get (a, b);
+            addEntry (S, 3*n0+a, 3*n0+b, k);
+            addEntry (S, 3*n1+a, 3*n1+b, k);
+            addEntry (S, 3*n0+a, 3*n1+b, -k);
+            addEntry (S, 3*n1+a, 3*n0+b, -k);
+         }
+      }
+   }
+
+   private void addEntry (SparseMatrixNd S, int i, int j, double val) {
+      S.set (i, j, S.get (i, j) + val);
+   }
+
+   /**
+    * Creates a KKT matrix [ M G^T ; G 0 ], where G contains a set of
+    * random sparse constraints.
+    */
+   SparseMatrixNd createKKTMatrix (SparseMatrixNd M, int numCons) {
+      int sizeM = M.rowSize();
+      SparseMatrixNd S = new SparseMatrixNd (sizeM+numCons, sizeM+numCons);
+      for (int i=0; i<sizeM; i++) {
+         for (int j=0; j<sizeM; j++) {
+            double val = M.get (i, j);
+            if (val != 0) {
+               S.set (i, j, val);
+            }
+         }
+      }
+      for (int c=0; c<numCons; c++) {
+         // each constraint couples a few randomly chosen variables
+         int nvars = RandomGenerator.nextInt (1, 6);
+         for (int k=0; k<nvars; k++) {
+            int j = RandomGenerator.nextInt (0, sizeM-1);
+            double val = RandomGenerator.nextDouble (-1, 1);
+            S.set (sizeM+c, j, val);
+            S.set (j, sizeM+c, val);
+         }
+      }
+      return S;
+   }
+
+   private VectorNd solve (SupernodalSolver solver, SparseMatrixNd S) {
+      int size = S.rowSize();
+      VectorNd b = new VectorNd (size);
+      VectorNd x = new VectorNd (size);
+      VectorNd r = new VectorNd (size);
+      b.setRandom();
+      solver.analyzeAndFactor (S);
+      solver.solve (x, b);
+      S.mul (r, x);
+      r.sub (b);
+      double err = r.norm()/b.norm();
+      if (err > EPS) {
+         throw new TestException (
+            "Relative residual is "+err+", size="+size+
+            ", perturbed pivots="+solver.getNumPerturbedPivots());
+      }
+      // refactor with the same structure and solve again
+      solver.factor();
+      VectorNd y = new VectorNd (size);
+      solver.solve (y, b);
+      checkEquals ("refactored solution", y, x);
+      return x;
+   }
+
+   private void testMatrix (SparseMatrixNd S) {
+      SupernodalSolver solver = new SupernodalSolver();
+      RandomGenerator.setSeed (0x1234);
+      VectorNd x1 = solve (solver, S);
+      solver.setNumThreads (4);
+      RandomGenerator.setSeed (0x1234);
+      VectorNd x4 = solve (solver, S);
+      // results should not depend on the number of threads
+      checkEquals ("multi-threaded solution", x4, x1);
+      solver.dispose();
+   }
+
+   void testOrdering (SparseMatrixNd S) {
+      SupernodalSolver solver = new SupernodalSolver();
+      solver.analyze (S, S.rowSize(), Matrix.SYMMETRIC);
+      int[] perm = solver.getPermutation();
+      boolean[] found = new boolean[perm.length];
+      for (int k=0; k<perm.length; k++) {
+         if (found[perm[k]]) {
+            throw new TestException (
+               "index "+perm[k]+" repeated in permutation");
+         }
+         found[perm[k]] = true;
+      }
+      // the ordering should produce much less fill than the dense factor
+      long n = S.rowSize();
+      check ("excessive fill in factor",
+             solver.getNumNonZerosInFactors() < n*(n+1)/4);
+   }
+
+   private void solveCRS (
+      SupernodalSolver solver, SparseMatrixNd S, int leadSize) {
+      int size = S.rowSize();
+      int numVals = S.numNonZeroVals (
+         Matrix.Partition.UpperTriangular, size, size);
+      int[] rowOffs = new int[size+1];
+      int[] colIdxs = new int[numVals];
+      double[] vals = new double[numVals];
+      S.getCRSIndices (
+         colIdxs, rowOffs, Matrix.Partition.UpperTriangular, size, size);
+      S.getCRSValues (vals, Matrix.Partition.UpperTriangular, size, size);
+      solver.analyze (
+         vals, colIdxs, rowOffs, size, Matrix.SYMMETRIC, leadSize);
+      solver.factor (vals);
+      VectorNd b = new VectorNd (size);
+      VectorNd x = new VectorNd (size);
+      VectorNd r = new VectorNd (size);
+      b.setRandom();
+      solver.solve (x, b);
+      S.mul (r, x);
+      r.sub (b);
+      double err = r.norm()/b.norm();
+      if (err > EPS) {
+         throw new TestException (
+            "Relative residual is "+err+", size="+size+
+            ", leadSize="+leadSize);
+      }
+   }
+
+   /**
+    * Tests that the ordering of the leading block of a KKT system is reused
+    * when only the constraint rows change.
+    */
+   void testOrderingReuse() {
+      SupernodalSolver solver = new SupernodalSolver();
+      SparseMatrixNd M = createGridMatrix (4, 5, 3);
+      int sizeM = M.rowSize();
+      solveCRS (solver, createKKTMatrix (M, 10), sizeM);
+      check ("ordering reused on first analysis",
+             !solver.lastAnalysisReusedOrdering());
+      for (int k=0; k<3; k++) {
+         solveCRS (solver, createKKTMatrix (M, 5+4*k), sizeM);
+         check ("ordering not reused", solver.lastAnalysisReusedOrdering());
+      }
+      checkEquals ("number of orderings", solver.numOrderingsComputed(), 1);
+      // changing the structure of M should force a new ordering
+      solveCRS (solver, createKKTMatrix (createGridMatrix (4, 5, 4), 8),
+                3*4*5*4);
+      check ("ordering reused after change in leading block",
+             !solver.lastAnalysisReusedOrdering());
+      checkEquals ("number of orderings", solver.numOrderingsComputed(), 2);
+      solver.dispose();
+   }
+
+   void testSmall() {
+      SparseMatrixNd S = new SparseMatrixNd (1, 1);
+      S.set (0, 0, 2.0);
+      testMatrix (S);
+      // diagonal matrix
+      S = new SparseMatrixNd (5, 5);
+      for (int i=0; i<5; i++) {
+         S.set (i, i, i+1.0);
+      }
+      testMatrix (S);
+      // indefinite matrix requiring a delayed pivot
+      S = new SparseMatrixNd (2, 2);
+      S.set (0, 1, 1.0);
+      S.set (1, 0, 1.0);
+      S.set (1, 1, 1.0);
+      testMatrix (S);
+   }
+
+   void testFromFile () {
+      SparseMatrixNd S = new SparseMatrixNd (2529, 2529);
+      try {
+         ReaderTokenizer rtok =
+            new ReaderTokenizer (new BufferedReader (new FileReader (
+                                                        "testMatrix.mat")));
+         S.scan (rtok);
+         rtok.close();
+      }
+      catch (IOException e) {
+         // file only available when run from this directory
+         return;
+      }
+      testMatrix (S);
+   }
+
+   public void test() {
+      testSmall();
+      SparseMatrixNd M = createGridMatrix (6, 5, 7);
+      testOrdering (M);
+      testMatrix (M);
+      testMatrix (createKKTMatrix (M, 40));
+      testMatrix (createKKTMatrix (createGridMatrix (3, 3, 3), 20));
+      testOrderingReuse();
+      testFromFile();
+   }
+
+   public static void main (String[] args) {
+      SupernodalSolverTest tester = new SupernodalSolverTest();
+      RandomGenerator.setSeed (0x1234);
+      tester.runtest();
+   }
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.solvers;
+
+import java.io.*;
+
+import maspack.matrix.*;
+import maspack.matrix.Matrix.Partition;
+import maspack.util.FunctionTimer;
+import maspack.util.NumberFormat;
+import maspack.util.ReaderTokenizer;
+import argparser.*;
+
+/**
+ * Compares the timing of {@link SupernodalSolver} with {@link PardisoSolver}
+ * (when available). Matrices can be read from files in the CRS format
+ * produced by {@link Matrix#write write()} with {@link
+ * Matrix.WriteFormat#CRS CRS} or {@link Matrix.WriteFormat#SYMMETRIC_CRS
+ * SYMMETRIC_CRS}, or by {@link KKTSolver#printLinearProblem
+ * printLinearProblem()}. Otherwise, a SparseBlockMatrix with the structure
+ * of a hexahedral FEM grid is created and used.
+ */
+public class SupernodalSolverTiming {
+
+   int myNumThreads = 1;
+   int myFactorCnt = 5;
+
+   /**
+    * Creates a symmetric positive definite SparseBlockMatrix with 3x3 blocks
+    * and the structure of the stiffness matrix for an n x n x n grid of
+    * hexahedral elements.
+    */
+   public static SparseBlockMatrix createGridMatrix (int n) {
+      int nn = n+1;
+      int numNodes = nn*nn*nn;
+      int[] sizes = new int[numNodes];
+      for (int i=0; i<numNodes; i++) {
+         sizes[i] = 3;
+      }
+      SparseBlockMatrix S = new SparseBlockMatrix (sizes, sizes);
+      Matrix3d B = new Matrix3d();
+      Matrix3d K = new Matrix3d();
+      for (int i=0; i<nn; i++) {
+         for (int j=0; j<nn; j++) {
+            for (int k=0; k<nn; k++) {
+               int n0 = (i*nn + j)*nn + k;
+               for (int di=0; di<=1; di++) {
+                  for (int dj=0; dj<=1; dj++) {
+                     for (int dk=0; dk<=1; dk++) {
+                        if (i+di >= nn || j+dj >= nn || k+dk >= nn ||
+                            di+dj+dk == 0) {
+                           continue;
+                        }
+                        int n1 = ((i+di)*nn + (j+dj))*nn + (k+dk);
+                        B.setRandom();
+                        K.mulTransposeLeft (B, B);
+                        addBlock (S, n0, n0, K, 1);
+                        addBlock (S, n1, n1, K, 1);
+                        addBlock (S, n0, n1, K, -1);
+                        addBlock (S, n1, n0, K, -1);
+                     }
+                  }
+               }
+               Matrix3d D = new Matrix3d();
+               D.setDiagonal (0.1, 0.1, 0.1);
+               addBlock (S, n0, n0, D, 1);
+            }
+         }
+      }
+      return S;
+   }
+
+   private static void addBlock (
+      SparseBlockMatrix S, int bi, int bj, Matrix3d K, double s) {
+      MatrixBlock blk = S.getBlock (bi, bj);
+      if (blk == null) {
+         blk = new Matrix3x3Block();
+         S.addBlock (bi, bj, blk);
+      }
+      Matrix3x3Block blk3 = (Matrix3x3Block)blk;
+      blk3.scaledAdd (s, K);
+   }
+
+   /**
+    * Reads a matrix in CRS format. If the file contains only upper
+    * triangular entries, or is prefixed by the word SYMMETRIC, the matrix
+    * is assumed to be symmetric.
+    */
+   public static SparseMatrixCRS readMatrix (String fileName)
+      throws IOException {
+      ReaderTokenizer rtok =
+         new ReaderTokenizer (new BufferedReader (new FileReader (fileName)));
+      try {
+         boolean symmetric = false;
+         if (rtok.nextToken() == ReaderTokenizer.TT_WORD) {
+            symmetric = rtok.sval.equals ("SYMMETRIC");
+         }
+         else {
+            rtok.pushBack();
+         }
+         int size = rtok.scanInteger();
+         int[] rowOffs = new int[size+1];
+         for (int i=0; i<size+1; i++) {
+            rowOffs[i] = rtok.scanInteger();
+         }
+         int nvals = rowOffs[size]-1;
+         int[] colIdxs = new int[nvals];
+         double[] vals = new double[nvals];
+         for (int i=0; i<nvals; i++) {
+            colIdxs[i] = rtok.scanInteger();
+         }
+         for (int i=0; i<nvals; i++) {
+            vals[i] = rtok.scanNumber();
+         }
+         if (!symmetric) {
+            symmetric = true;
+            for (int i=0; i<size && symmetric; i++) {
+               for (int k=rowOffs[i]-1; k<rowOffs[i+1]-1; k++) {
+                  if (colIdxs[k]-1 < i) {
+                     symmetric = false;
+                     break;
+                  }
+               }
+            }
+         }
+         SparseMatrixCRS M = new SparseMatrixCRS (size, size);
+         M.setCRSValues (
+            vals, colIdxs, rowOffs, nvals, size,
+            symmetric ? Partition.UpperTriangular : Partition.Full);
+         return M;
+      }
+      finally {
+         rtok.close();
+      }
+   }
+
+   private double residual (Matrix M, VectorNd x, VectorNd b) {
+      VectorNd r = new VectorNd (b.size());
+      M.mul (r, x);
+      r.sub (b);
+      return r.norm()/b.norm();
+   }
+
+   /**
+    * Times the analysis, factorization, and solution of a symmetric matrix,
+    * using SupernodalSolver and (if available) PardisoSolver.
+    */
+   public void time (Matrix M, String name) {
+      int size = M.rowSize();
+      FunctionTimer timer = new FunctionTimer();
+      VectorNd b = new VectorNd (size);
+      VectorNd x = new VectorNd (size);
+      b.setRandom();
+
+      System.out.println (
+         name + ": size=" + size + " nnz=" +
+         M.numNonZeroVals (Partition.UpperTriangular, size, size) +
+         " (upper)");
+
+      SupernodalSolver snode = new SupernodalSolver();
+      snode.setNumThreads (myNumThreads);
+      timer.start();
+      snode.analyze (M, size, Matrix.SYMMETRIC);
+      timer.stop();
+      String analyzeTime = timer.resultMsec(1);
+      snode.factor(); // warm up
+      timer.start();
+      for (int i=0; i<myFactorCnt; i++) {
+         snode.factor();
+      }
+      timer.stop();
+      String factorTime = timer.resultMsec(myFactorCnt);
+      timer.start();
+      snode.solve (x, b);
+      timer.stop();
+      System.out.println (
+         "  Supernodal: analyze=" + analyzeTime + " factor=" + factorTime +
+         " solve=" + timer.resultMsec(1) + " nnzL=" +
+         snode.getNumNonZerosInFactors() + " res=" + residual (M, x, b));
+      snode.dispose();
+
+      if (PardisoSolver.isAvailable()) {
+         PardisoSolver pardiso = new PardisoSolver();
+         pardiso.setNumThreads (myNumThreads);
+         timer.start();
+         pardiso.analyze (M, size, Matrix.SYMMETRIC);
+         timer.stop();
+         analyzeTime = timer.resultMsec(1);
+         pardiso.factor(); // warm up
+         timer.start();
+         for (int i=0; i<myFactorCnt; i++) {
+            pardiso.factor();
+         }
+         timer.stop();
+         factorTime = timer.resultMsec(myFactorCnt);
+         timer.start();
+         pardiso.solve (x, b);
+         timer.stop();
+         System.out.println (
+            "  Pardiso:    analyze=" + analyzeTime + " factor=" + factorTime +
+            " solve=" + timer.resultMsec(1) + " nnzL=" +
+            pardiso.getNumNonZerosInFactors() + " res=" + residual (M, x, b));
+         pardiso.dispose();
+      }
+      else {
+         System.out.println ("  Pardiso not available");
+      }
+   }
+
+   public static void main (String[] args) {
+      StringHolder fileName = new StringHolder (null);
+      StringHolder writeName = new StringHolder (null);
+      IntHolder gridSize = new IntHolder (12);
+      IntHolder numThreads = new IntHolder (1);
+      IntHolder factorCnt = new IntHolder (5);
+
+      ArgParser parser = new ArgParser ("java maspack.solvers.SupernodalSolverTiming");
+      parser.addOption ("-f %s # CRS matrix file", fileName);
+      parser.addOption (
+         "-write %s # write the generated grid matrix to a file", writeName);
+      parser.addOption ("-grid %d # elements per side of the grid", gridSize);
+      parser.addOption ("-threads %d # number of threads", numThreads);
+      parser.addOption ("-cnt %d # number of timed factorizations", factorCnt);
+      parser.matchAllArgs (args);
+
+      SupernodalSolverTiming timing = new SupernodalSolverTiming();
+      timing.myNumThreads = numThreads.value;
+      timing.myFactorCnt = Math.max (factorCnt.value, 1);
+      try {
+         if (fileName.value != null) {
+            timing.time (readMatrix (fileName.value), fileName.value);
+         }
+         else {
+            SparseBlockMatrix S = createGridMatrix (gridSize.value);
+            if (writeName.value != null) {
+               PrintWriter pw = new PrintWriter (
+                  new BufferedWriter (new FileWriter (writeName.value)));
+               S.write (
+                  pw, new NumberFormat ("%.16g"),
+                  Matrix.WriteFormat.SYMMETRIC_CRS);
+               pw.close();
+            }
+            timing.time (S, "grid" + gridSize.value);
+         }
+      }
+      catch (IOException e) {
+         e.printStackTrace();
+         System.exit (1);
+      }
+   }
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.util;
+
+import java.util.Arrays;
+
+/**
+ * Fast, lossless compression of byte arrays using the LZ4 block format.
+ * Compression uses a single hash table lookup per position, which trades
+ * compression ratio for speed; decompression is a simple copy loop. The
+ * output is compatible with other LZ4 block decoders, although no frame
+ * header or checksum is written.
+ *
+ * <p>An instance holds the hash table used for compression, and so should
+ * not be used by several threads at once. Decompression is static.
+ */
+public class LZ4Codec {
+
+   private static final int MIN_MATCH = 4;
+   // the last LAST_LITERALS bytes are always encoded as literals
+   private static final int LAST_LITERALS = 5;
+   // matches may not start within MF_LIMIT bytes of the end of the input
+   private static final int MF_LIMIT = 12;
+   private static final int MAX_OFFSET = 65535;
+   private static final int HASH_LOG = 14;
+
+   private int[] myHashTable = new int[1 << HASH_LOG];
+
+   public LZ4Codec() {
+   }
+
+   /**
+    * Returns the maximum number of bytes that may be produced by compressing
+    * an input of a given length.
+    *
+    * @param len input length
+    * @return maximum compressed length
+    */
+   public static int maxCompressedLength (int len) {
+      return len + len/255 + 16;
+   }
+
+   private static int readInt (byte[] buf, int off) {
+      return ((buf[off] & 0xff) |
+              (buf[off+1] & 0xff) << 8 |
+              (buf[off+2] & 0xff) << 16 |
+              (buf[off+3] & 0xff) << 24);
+   }
+
+   private static int writeLength (byte[] dst, int dp, int len) {
+      while (len >= 255) {
+         dst[dp++] = (byte)255;
+         len -= 255;
+      }
+      dst[dp++] = (byte)len;
+      return dp;
+   }
+
+   private static int writeLiterals (
+      byte[] dst, int dp, byte[] src, int sp, int litLen, int matchLen) {
+      int token = (litLen >= 15 ? 15 : litLen) << 4;
+      if (matchLen >= MIN_MATCH) {
+         int ml = matchLen - MIN_MATCH;
+         token |= (ml >= 15 ? 15 : ml);
+      }
+      dst[dp++] = (byte)token;
+      if (litLen >= 15) {
+         dp = writeLength (dst, dp, litLen-15);
+      }
+      System.arraycopy (src, sp, dst, dp, litLen);
+      return dp + litLen;
+   }
+
+   /**
+    * Compresses a range of bytes.
+    *
+    * @param src source array
+    * @param soff offset of the first source byte
+    * @param slen number of source bytes
+    * @param dst destination array. Must have at least {@link
+    * #maxCompressedLength maxCompressedLength(slen)} bytes available
+    * starting at <code>doff</code>.
+    * @param doff offset at which to start writing the compressed data
+    * @return number of compressed bytes written
+    */
+   public int compress (byte[] src, int soff, int slen, byte[] dst, int doff) {
+      int end = soff + slen;
+      int matchLimit = end - LAST_LITERALS;
+      int mfLimit = end - MF_LIMIT;
+      int anchor = soff;
+      int ip = soff;
+      int dp = doff;
+
+      if (slen > MF_LIMIT) {
+         Arrays.fill (myHashTable, -1);
+         int shift = 32 - HASH_LOG;
+         while (ip < mfLimit) {
+            int seq = readInt (src, ip);
+            int h = (seq * -1640531535) >>> shift;
+            int ref = myHashTable[h];
+            myHashTable[h] = ip;
+            if (ref < 0 || ip-ref > MAX_OFFSET || readInt (src, ref) != seq) {
+               ip++;
+               continue;
+            }
+            // extend the match backwards into the pending literals
+            while (ip > anchor && ref > soff && src[ip-1] == src[ref-1]) {
+               ip--;
+               ref--;
+            }
+            int len = MIN_MATCH;
+            while (ip+len < matchLimit && src[ip+len] == src[ref+len]) {
+               len++;
+            }
+            dp = writeLiterals (dst, dp, src, anchor, ip-anchor, len);
+            int off = ip - ref;
+            dst[dp++] = (byte)off;
+            dst[dp++] = (byte)(off >>> 8);
+            if (len-MIN_MATCH >= 15) {
+               dp = writeLength (dst, dp, len-MIN_MATCH-15);
+            }
+            ip += len;
+            anchor = ip;
+         }
+      }
+      // remaining bytes are written as literals
+      dp = writeLiterals (dst, dp, src, anchor, end-anchor, 0);
+      return dp - doff;
+   }
+
+   /**
+    * Decompresses data produced by {@link #compress}.
+    *
+    * @param src array containing the compressed data
+    * @param soff offset of the compressed data
+    * @param slen length of the compressed data
+    * @param dst destination array
+    * @param doff offset at which to start writing the decompressed data
+    * @param dlen expected length of the decompressed data
+    * @return number of decompressed bytes (equal to <code>dlen</code>)
+    * @throws IllegalArgumentException if the compressed data is malformed or
+    * does not decompress to <code>dlen</code> bytes
+    */
+   public static int decompress (
+      byte[] src, int soff, int slen, byte[] dst, int doff, int dlen) {
+      int sp = soff;
+      int send = soff + slen;
+      int dp = doff;
+      int dend = doff + dlen;
+      try {
+         while (sp < send) {
+            int token = src[sp++] & 0xff;
+            int litLen = token >>> 4;
+            if (litLen == 15) {
+               int b;
+               do {
+                  b = src[sp++] & 0xff;
+                  litLen += b;
+               }
+               while (b == 255);
+            }
+            if (sp+litLen > send || dp+litLen > dend) {
+               throw new IllegalArgumentException ("literals exceed bounds");
+            }
+            System.arraycopy (src, sp, dst, dp, litLen);
+            sp += litLen;
+            dp += litLen;
+            if (sp == send) {
+               break;
+            }
+            int off = (src[sp] & 0xff) | (src[sp+1] & 0xff) << 8;
+            sp += 2;
+            if (off == 0 || dp-off < doff) {
+               throw new IllegalArgumentException ("invalid match offset");
+            }
+            int len = token & 0xf;
+            if (len == 15) {
+               int b;
+               do {
+                  b = src[sp++] & 0xff;
+                  len += b;
+               }
+               while (b == 255);
+            }
+            len += MIN_MATCH;
+            if (dp+len > dend) {
+               throw new IllegalArgumentException ("match exceeds bounds");
+            }
+            int ref = dp - off;
+            if (off >= len) {
+               System.arraycopy (dst, ref, dst, dp, len);
+               dp += len;
+            }
+            else {
+               // overlapping copy
+               for (int i=0; i<len; i++) {
+                  dst[dp++] = dst[ref++];
+               }
+            }
+         }
+      }
+      catch (ArrayIndexOutOfBoundsException e) {
+         throw new IllegalArgumentException ("truncated compressed data");
+      }
+      if (dp != dend) {
+         throw new IllegalArgumentException (
+            "decompressed "+(dp-doff)+" bytes, expected "+dlen);
+      }
+      return dlen;
+   }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2026, by the Authors: agent
+ *
+ * This software is freely available under a 2-clause BSD license. Please see
+ * the LICENSE file in the ArtiSynth distribution directory for details.
+ */
+package maspack.util;
+
+import java.util.Arrays;
+
+public class LZ4CodecTest extends UnitTest {
+
+   LZ4Codec myCodec = new LZ4Codec();
+
+   int testRoundTrip (byte[] data) {
+      byte[] comp = new byte[LZ4Codec.maxCompressedLength (data.length)+3];
+      int clen = myCodec.compress (data, 0, data.length, comp, 3);
+      if (clen > LZ4Codec.maxCompressedLength (data.length)) {
+         throw new TestException (
+            "compressed length "+clen+" exceeds maximum");
+      }
+      byte[] result = new byte[data.length+5];
+      LZ4Codec.decompress (comp, 3, clen, result, 5, data.length);
+      if (!Arrays.equals (Arrays.copyOfRange (result, 5, result.length), data)) {
+         throw new TestException (
+            "decompressed data differs from original, length "+data.length);
+      }
+      return clen;
+   }
+
+   byte[] randomBytes (int len, int range) {
+      byte[] data = new byte[len];
+      for (int i=0; i<len; i++) {
+         data[i] = (byte)RandomGenerator.nextInt (0, range-1);
+      }
+      return data;
+   }
+
+   public void test() {
+      for (int len=0; len<40; len++) {
+         testRoundTrip (randomBytes (len, 256));
+         testRoundTrip (randomBytes (len, 2));
+      }
+      testRoundTrip (randomBytes (100000, 256));
+      int clen = testRoundTrip (randomBytes (100000, 4));
+      if (clen >= 100000) {
+         throw new TestException ("low entropy data was not compressed");
+      }
+      // long runs and long literals
+      byte[] data = new byte[300000];
+      System.arraycopy (randomBytes (1000, 256), 0, data, 5000, 1000);
+      clen = testRoundTrip (data);
+      if (clen > 5000) {
+         throw new TestException ("zero runs compressed to "+clen+" bytes");
+      }
+      // repeated blocks beyond the maximum match offset
+      byte[] block = randomBytes (70000, 256);
+      data = new byte[4*block.length];
+      for (int i=0; i<4; i++) {
+         System.arraycopy (block, 0, data, i*block.length, block.length);
+      }
+      testRoundTrip (data);
+
+      // malformed data should be detected
+      byte[] comp = new byte[LZ4Codec.maxCompressedLength (data.length)];
+      clen = myCodec.compress (data, 0, data.length, comp, 0);
+      try {
+         LZ4Codec.decompress (
+            comp, 0, clen/2, new byte[data.length], 0, data.length);
+         throw new TestException ("truncated data not detected");
+      }
+      catch (IllegalArgumentException e) {
+         // expected
+      }
+   }
+
+   public static void main (String[] args) {
+      LZ4CodecTest tester = new LZ4CodecTest();
+      RandomGenerator.setSeed (0x1234);
+      tester.runtest();
+   }
+}